@@ -15,8 +15,12 @@
  */
 package com.google.android.exoplayer2.upstream;
 
+import static java.lang.Math.min;
+
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.ByteArrayPool;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** Reads bytes from a data stream. */
 public interface DataReader {
@@ -37,4 +41,42 @@ public interface DataReader {
    * @throws IOException If an error occurs reading from the input.
    */
   int read(byte[] target, int offset, int length) throws IOException;
+
+  /**
+   * Reads up to {@link ByteBuffer#remaining()} bytes of data from the input into {@code target},
+   * starting at its position, and advances its position by the number of bytes read.
+   *
+   * <p>The behavior is otherwise the same as for {@link #read(byte[], int, int)}.
+   *
+   * <p>The default implementation reads into the array that backs {@code target} if it has one,
+   * and otherwise reads through a temporary array from the {@link ByteArrayPool#getShared() shared
+   * pool}. Implementations that can write into direct buffers without the intermediate copy should
+   * override it.
+   *
+   * @param target The buffer into which data should be written.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the input has ended.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  default int read(ByteBuffer target) throws IOException {
+    int length = target.remaining();
+    if (target.hasArray()) {
+      int position = target.position();
+      int bytesRead = read(target.array(), target.arrayOffset() + position, length);
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        target.position(position + bytesRead);
+      }
+      return bytesRead;
+    }
+    ByteArrayPool pool = ByteArrayPool.getShared();
+    byte[] scratch = pool.acquire(min(length, ByteArrayPool.MAX_POOLED_ARRAY_LENGTH));
+    try {
+      int bytesRead = read(scratch, /* offset= */ 0, min(length, scratch.length));
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        target.put(scratch, /* offset= */ 0, bytesRead);
+      }
+      return bytesRead;
+    } finally {
+      pool.release(scratch);
+    }
+  }
 }
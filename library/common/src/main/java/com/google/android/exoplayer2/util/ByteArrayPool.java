@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import java.util.ArrayList;
+
+/**
+ * A pool of byte arrays, for buffers that are used briefly and repeatedly, such as the data of the
+ * boxes that extractors parse.
+ *
+ * <p>Arrays are pooled in size classes whose lengths are powers of two, so {@link #acquire(int)}
+ * may return an array longer than requested. The contents of an acquired array are undefined.
+ * Arrays longer than {@link #MAX_POOLED_ARRAY_LENGTH} are allocated but not pooled, and arrays are
+ * discarded rather than pooled once the pool holds its maximum number of bytes.
+ *
+ * <p>The pool doesn't track the arrays that it's handed out, so that acquiring and releasing
+ * arrays doesn't allocate. Callers must keep track of the arrays they've acquired, and release each
+ * of them once. Releasing an array of a length that the pool doesn't use has no effect, and an
+ * array that's already held by the pool isn't pooled again.
+ *
+ * <p>This class is thread safe, so that one pool can be {@link #getShared() shared} by the
+ * extractors and decoders of all players.
+ */
+public final class ByteArrayPool {
+
+  /** The length of the longest array that's pooled. */
+  public static final int MAX_POOLED_ARRAY_LENGTH = 1 << 20;
+  /** The default maximum number of bytes held by a pool. */
+  public static final int DEFAULT_MAX_POOLED_BYTES = 4 * MAX_POOLED_ARRAY_LENGTH;
+
+  private static final int MIN_ARRAY_LENGTH_LOG2 = 6;
+  private static final int MAX_ARRAY_LENGTH_LOG2 = 20;
+
+  private static final ByteArrayPool SHARED = new ByteArrayPool(DEFAULT_MAX_POOLED_BYTES);
+
+  private final int maxPooledBytes;
+  private final ArrayList<ArrayList<byte[]>> pooledArrays;
+
+  private int pooledBytes;
+
+  /** Returns the pool that's shared by the extractors and decoders in the process. */
+  public static ByteArrayPool getShared() {
+    return SHARED;
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxPooledBytes The maximum number of bytes in the arrays held by the pool.
+   */
+  public ByteArrayPool(int maxPooledBytes) {
+    this.maxPooledBytes = maxPooledBytes;
+    pooledArrays = new ArrayList<>();
+    for (int i = MIN_ARRAY_LENGTH_LOG2; i <= MAX_ARRAY_LENGTH_LOG2; i++) {
+      pooledArrays.add(new ArrayList<>());
+    }
+  }
+
+  /**
+   * Returns an array of at least {@code minLength} bytes, which should be passed to {@link
+   * #release(byte[])} once it's no longer used.
+   *
+   * @param minLength The minimum length of the array.
+   * @return The array, whose contents are undefined.
+   */
+  public byte[] acquire(int minLength) {
+    checkArgument(minLength >= 0);
+    if (minLength > MAX_POOLED_ARRAY_LENGTH) {
+      return new byte[minLength];
+    }
+    int sizeClass = getSizeClass(minLength);
+    synchronized (this) {
+      ArrayList<byte[]> arrays = pooledArrays.get(sizeClass);
+      if (!arrays.isEmpty()) {
+        byte[] array = arrays.remove(arrays.size() - 1);
+        pooledBytes -= array.length;
+        return array;
+      }
+    }
+    return new byte[1 << (sizeClass + MIN_ARRAY_LENGTH_LOG2)];
+  }
+
+  /**
+   * Returns an array to the pool. The array must not be used after it's been released, and must be
+   * released only once. Arrays of lengths that the pool doesn't use are ignored.
+   *
+   * @param array An array returned by {@link #acquire(int)}.
+   */
+  public void release(byte[] array) {
+    int length = array.length;
+    if (length > MAX_POOLED_ARRAY_LENGTH) {
+      // The array wasn't pooled when it was acquired.
+      return;
+    }
+    int sizeClass = getSizeClass(length);
+    if (length != 1 << (sizeClass + MIN_ARRAY_LENGTH_LOG2)) {
+      // The array wasn't acquired from a pool.
+      return;
+    }
+    synchronized (this) {
+      ArrayList<byte[]> arrays = pooledArrays.get(sizeClass);
+      if (pooledBytes + length > maxPooledBytes || containsArray(arrays, array)) {
+        return;
+      }
+      arrays.add(array);
+      pooledBytes += length;
+    }
+  }
+
+  /** Returns the number of bytes in the arrays held by the pool. */
+  public synchronized int getPooledBytes() {
+    return pooledBytes;
+  }
+
+  /**
+   * Discards the arrays held by the pool. Arrays that have been acquired are still pooled when
+   * they're released.
+   */
+  public synchronized void clear() {
+    for (int i = 0; i < pooledArrays.size(); i++) {
+      pooledArrays.get(i).clear();
+    }
+    pooledBytes = 0;
+  }
+
+  /**
+   * Returns whether {@code arrays} contains {@code array}, which would be the case if it were
+   * released twice. The pool holds few arrays of each length in practice, so the search is short.
+   */
+  private static boolean containsArray(ArrayList<byte[]> arrays, byte[] array) {
+    for (int i = 0; i < arrays.size(); i++) {
+      if (arrays.get(i) == array) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the index of the size class of arrays that can hold {@code length} bytes. */
+  private static int getSizeClass(int length) {
+    if (length <= 1 << MIN_ARRAY_LENGTH_LOG2) {
+      return 0;
+    }
+    int lengthLog2 = 32 - Integer.numberOfLeadingZeros(length - 1);
+    return lengthLog2 - MIN_ARRAY_LENGTH_LOG2;
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link ByteArrayPool}. */
+@RunWith(AndroidJUnit4.class)
+public final class ByteArrayPoolTest {
+
+  @Test
+  public void acquire_roundsUpToPowerOfTwo() {
+    ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+
+    assertThat(pool.acquire(0).length).isEqualTo(64);
+    assertThat(pool.acquire(64).length).isEqualTo(64);
+    assertThat(pool.acquire(65).length).isEqualTo(128);
+    assertThat(pool.acquire(ByteArrayPool.MAX_POOLED_ARRAY_LENGTH).length)
+        .isEqualTo(ByteArrayPool.MAX_POOLED_ARRAY_LENGTH);
+  }
+
+  @Test
+  public void acquire_afterRelease_reusesArray() {
+    ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+    byte[] array = pool.acquire(100);
+
+    pool.release(array);
+
+    assertThat(pool.getPooledBytes()).isEqualTo(128);
+    assertThat(pool.acquire(120)).isSameInstanceAs(array);
+    assertThat(pool.getPooledBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void acquire_afterReleaseOfOtherSize_allocatesArray() {
+    ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+    byte[] array = pool.acquire(100);
+
+    pool.release(array);
+
+    assertThat(pool.acquire(200)).isNotSameInstanceAs(array);
+    assertThat(pool.getPooledBytes()).isEqualTo(128);
+  }
+
+  @Test
+  public void acquire_longerThanMaxPooledLength_allocatesExactLength() {
+    ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+    byte[] array = pool.acquire(ByteArrayPool.MAX_POOLED_ARRAY_LENGTH + 1);
+
+    pool.release(array);
+
+    assertThat(array.length).isEqualTo(ByteArrayPool.MAX_POOLED_ARRAY_LENGTH + 1);
+    assertThat(pool.getPooledBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void release_whenFull_discardsArray() {
+    ByteArrayPool pool = new ByteArrayPool(/* maxPooledBytes= */ 256);
+
+    pool.release(pool.acquire(256));
+    pool.release(pool.acquire(64));
+
+    assertThat(pool.getPooledBytes()).isEqualTo(256);
+  }
+
+  @Test
+  public void release_arrayNotFromPool_isIgnored() {
+    ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+
+    pool.release(new byte[100]);
+    pool.release(new byte[32]);
+
+    assertThat(pool.getPooledBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void release_arrayOfPooledLengthNotFromPool_poolsArray() {
+    ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+    ByteArrayPool otherPool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+
+    pool.release(new byte[128]);
+    pool.release(otherPool.acquire(128));
+
+    assertThat(pool.getPooledBytes()).isEqualTo(256);
+  }
+
+  @Test
+  public void release_twice_poolsArrayOnce() {
+    ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+    byte[] array = pool.acquire(100);
+
+    pool.release(array);
+    pool.release(array);
+
+    assertThat(pool.getPooledBytes()).isEqualTo(128);
+    assertThat(pool.acquire(100)).isSameInstanceAs(array);
+    assertThat(pool.acquire(100)).isNotSameInstanceAs(array);
+  }
+
+  @Test
+  public void release_afterClear_poolsArray() {
+    ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+    byte[] array = pool.acquire(100);
+
+    pool.clear();
+    pool.release(array);
+
+    assertThat(pool.getPooledBytes()).isEqualTo(128);
+  }
+
+  @Test
+  public void acquireAndRelease_afterFirstAcquire_doesNotAllocate() {
+    ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(threadMxBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocationMxBean =
+        (com.sun.management.ThreadMXBean) threadMxBean;
+    assumeTrue(allocationMxBean.isThreadAllocatedMemorySupported());
+    allocationMxBean.setThreadAllocatedMemoryEnabled(true);
+    long threadId = Thread.currentThread().getId();
+    ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+    pool.release(pool.acquire(100));
+
+    int iterationCount = 10_000;
+    long startAllocatedBytes = allocationMxBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < iterationCount; i++) {
+      pool.release(pool.acquire(100));
+    }
+    long allocatedBytes = allocationMxBean.getThreadAllocatedBytes(threadId) - startAllocatedBytes;
+
+    // Allow for allocations by the measurement itself, but not for any per-acquire allocation.
+    assertThat(allocatedBytes).isLessThan(iterationCount);
+  }
+
+  @Test
+  public void clear_discardsArrays() {
+    ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_MAX_POOLED_BYTES);
+    pool.release(pool.acquire(100));
+
+    pool.clear();
+
+    assertThat(pool.getPooledBytes()).isEqualTo(0);
+  }
+}
@@ -19,7 +19,10 @@ import static com.google.common.truth.Truth.assertThat;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -119,6 +122,48 @@ public final class NalUnitUtilTest {
     assertPrefixFlagsCleared(prefixFlags);
   }
 
+  @Test
+  public void findNalUnit_withRandomSplits_findsSameNalUnitsAsByteByByteSearch() {
+    Random random = new Random(/* seed= */ 0);
+    for (int iteration = 0; iteration < 300; iteration++) {
+      // Zeros, ones and threes make start codes and near misses frequent in two of every three
+      // iterations, one of which has long runs of zeros. They're rare in the others, where long
+      // runs without zero bytes are skipped.
+      int valueRange = iteration % 3 == 0 ? 4 : iteration % 3 == 1 ? 8 : 64;
+      byte[] data = new byte[1 + random.nextInt(500)];
+      for (int i = 0; i < data.length; i++) {
+        int value = random.nextInt(valueRange);
+        data[i] = (byte) (value < 3 ? 0 : value == 3 ? 1 : value == 4 ? 3 : 0xFF);
+      }
+      List<Integer> expectedOffsets = new ArrayList<>();
+      for (int i = 0; i + 3 < data.length; i++) {
+        if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+          expectedOffsets.add(i);
+        }
+      }
+
+      List<Integer> offsets = new ArrayList<>();
+      boolean[] prefixFlags = new boolean[3];
+      int chunkStart = 0;
+      while (chunkStart < data.length) {
+        int chunkEnd = Math.min(data.length, chunkStart + 1 + random.nextInt(100));
+        int searchStart = chunkStart;
+        while (true) {
+          int offset = NalUnitUtil.findNalUnit(data, searchStart, chunkEnd, prefixFlags);
+          if (offset == chunkEnd) {
+            break;
+          }
+          offsets.add(offset);
+          // Skip past the start code prefix, which may have begun in an earlier chunk.
+          searchStart = Math.max(searchStart, offset + 3);
+        }
+        chunkStart = chunkEnd;
+      }
+
+      assertThat(offsets).isEqualTo(expectedOffsets);
+    }
+  }
+
   @Test
   public void parseSpsNalUnit() {
     NalUnitUtil.SpsData data = NalUnitUtil.parseSpsNalUnit(SPS_TEST_DATA, SPS_TEST_DATA_OFFSET,
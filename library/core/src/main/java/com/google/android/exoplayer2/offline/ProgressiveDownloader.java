@@ -15,34 +15,49 @@
  */
 package com.google.android.exoplayer2.offline;
 
+import static java.lang.Math.min;
+
 import android.net.Uri;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.MediaItem;
 import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
 import com.google.android.exoplayer2.upstream.cache.CacheWriter;
+import com.google.android.exoplayer2.upstream.cache.ContentMetadata;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
 import com.google.android.exoplayer2.util.PriorityTaskManager.PriorityTooLowException;
 import com.google.android.exoplayer2.util.RunnableFutureTask;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /** A downloader for progressive media streams. */
 public final class ProgressiveDownloader implements Downloader {
 
+  /**
+   * The minimum number of bytes that aren't yet cached that are downloaded by each request, when
+   * the download is split into parallel requests.
+   */
+  public static final long MIN_PARALLEL_REQUEST_LENGTH_BYTES = 1024 * 1024;
+
   private final Executor executor;
   private final DataSpec dataSpec;
+  private final CacheDataSource.Factory cacheDataSourceFactory;
   private final CacheDataSource dataSource;
   private final CacheWriter cacheWriter;
+  private final int maxParallelRequests;
   @Nullable private final PriorityTaskManager priorityTaskManager;
+  private final ArrayList<RunnableFutureTask<?, ?>> activeRunnables;
 
   @Nullable private ProgressListener progressListener;
-  private volatile @MonotonicNonNull RunnableFutureTask<Void, IOException> downloadRunnable;
   private volatile boolean isCanceled;
 
   /** @deprecated Use {@link #ProgressiveDownloader(MediaItem, CacheDataSource.Factory)} instead. */
@@ -87,13 +102,41 @@ public final class ProgressiveDownloader implements Downloader {
    * @param mediaItem The media item with a uri to the stream to be downloaded.
    * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which the
    *     download will be written.
-   * @param executor An {@link Executor} used to make requests for the media being downloaded. In
-   *     the future, providing an {@link Executor} that uses multiple threads may speed up the
-   *     download by allowing parts of it to be executed in parallel.
+   * @param executor An {@link Executor} used to make requests for the media being downloaded.
    */
   public ProgressiveDownloader(
       MediaItem mediaItem, CacheDataSource.Factory cacheDataSourceFactory, Executor executor) {
+    this(mediaItem, cacheDataSourceFactory, executor, /* maxParallelRequests= */ 1);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * <p>If {@code maxParallelRequests} is greater than one, the data that isn't cached yet is split
+   * into up to that many byte ranges of roughly equal size, which are requested in parallel using
+   * separate {@link CacheDataSource} instances. Each range contains at least {@link
+   * #MIN_PARALLEL_REQUEST_LENGTH_BYTES} that aren't cached yet. Before splitting the download, a
+   * single request is made to determine the length of the media and whether the server supports
+   * range requests. If the length can't be determined, or if the server ignores range requests,
+   * the media is downloaded using a single request.
+   *
+   * @param mediaItem The media item with a uri to the stream to be downloaded.
+   * @param cacheDataSourceFactory A {@link CacheDataSource.Factory} for the cache into which the
+   *     download will be written.
+   * @param executor An {@link Executor} used to make requests for the media being downloaded. The
+   *     executor must be able to run {@code maxParallelRequests} tasks at the same time for the
+   *     requests to be made in parallel.
+   * @param maxParallelRequests The maximum number of requests to make in parallel.
+   */
+  public ProgressiveDownloader(
+      MediaItem mediaItem,
+      CacheDataSource.Factory cacheDataSourceFactory,
+      Executor executor,
+      int maxParallelRequests) {
+    Assertions.checkArgument(maxParallelRequests > 0);
     this.executor = Assertions.checkNotNull(executor);
+    this.cacheDataSourceFactory = cacheDataSourceFactory;
+    this.maxParallelRequests = maxParallelRequests;
     Assertions.checkNotNull(mediaItem.playbackProperties);
     dataSpec =
         new DataSpec.Builder()
@@ -112,55 +155,94 @@ public final class ProgressiveDownloader implements Downloader {
             /* temporaryBuffer= */ null,
             progressListener);
     priorityTaskManager = cacheDataSourceFactory.getUpstreamPriorityTaskManager();
+    activeRunnables = new ArrayList<>();
   }
 
   @Override
   public void download(@Nullable ProgressListener progressListener)
       throws IOException, InterruptedException {
     this.progressListener = progressListener;
-    downloadRunnable =
-        new RunnableFutureTask<Void, IOException>() {
-          @Override
-          protected Void doWork() throws IOException {
-            cacheWriter.cache();
-            return null;
-          }
-
-          @Override
-          protected void cancelWork() {
-            cacheWriter.cancel();
-          }
-        };
-
     if (priorityTaskManager != null) {
       priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
     }
     try {
-      boolean finished = false;
-      while (!finished && !isCanceled) {
+      @Nullable List<DataSpec> requestDataSpecs = null;
+      if (maxParallelRequests > 1) {
+        requestDataSpecs = splitIntoParallelRequests();
+      }
+      ArrayDeque<CacheWriterRunnable> pendingRunnables = new ArrayDeque<>();
+      if (requestDataSpecs == null) {
+        pendingRunnables.add(new CacheWriterRunnable(cacheWriter));
+      } else {
+        long contentLength = 0;
+        for (int i = 0; i < requestDataSpecs.size(); i++) {
+          contentLength += requestDataSpecs.get(i).length;
+        }
+        ParallelProgressNotifier progressNotifier =
+            new ParallelProgressNotifier(contentLength, requestDataSpecs.size());
+        for (int i = 0; i < requestDataSpecs.size(); i++) {
+          DataSpec requestDataSpec = requestDataSpecs.get(i);
+          if (i == requestDataSpecs.size() - 1 && dataSpec.length == C.LENGTH_UNSET) {
+            // Leave the last request unbounded, so that the content length is cached when it ends.
+            requestDataSpec = requestDataSpec.buildUpon().setLength(C.LENGTH_UNSET).build();
+          }
+          CacheWriter requestCacheWriter =
+              new CacheWriter(
+                  cacheDataSourceFactory.createDataSourceForDownloading(),
+                  requestDataSpec,
+                  /* allowShortContent= */ false,
+                  /* temporaryBuffer= */ null,
+                  progressNotifier.getProgressListener(i));
+          pendingRunnables.add(new CacheWriterRunnable(requestCacheWriter));
+        }
+      }
+      while (!isCanceled && !pendingRunnables.isEmpty()) {
+        // Block until there aren't any higher priority tasks.
         if (priorityTaskManager != null) {
           priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
         }
-        executor.execute(downloadRunnable);
-        try {
-          downloadRunnable.get();
-          finished = true;
-        } catch (ExecutionException e) {
-          Throwable cause = Assertions.checkNotNull(e.getCause());
-          if (cause instanceof PriorityTooLowException) {
-            // The next loop iteration will block until the task is able to proceed.
-          } else if (cause instanceof IOException) {
-            throw (IOException) cause;
-          } else {
-            // The cause must be an uncaught Throwable type.
-            Util.sneakyThrow(cause);
+        while (!pendingRunnables.isEmpty()) {
+          // A new runnable is needed for each execution, but the writer continues from where it
+          // stopped.
+          CacheWriterRunnable runnable =
+              new CacheWriterRunnable(pendingRunnables.removeFirst().cacheWriter);
+          addActiveRunnable(runnable);
+          executor.execute(runnable);
+        }
+        for (int i = activeRunnables.size() - 1; i >= 0; i--) {
+          CacheWriterRunnable activeRunnable = (CacheWriterRunnable) activeRunnables.get(i);
+          try {
+            activeRunnable.get();
+          } catch (ExecutionException e) {
+            Throwable cause = Assertions.checkNotNull(e.getCause());
+            if (cause instanceof PriorityTooLowException) {
+              // The writer will be executed again in the next loop iteration, which will block
+              // until the task is able to proceed.
+              pendingRunnables.addLast(activeRunnable);
+            } else if (cause instanceof IOException) {
+              throw (IOException) cause;
+            } else {
+              // The cause must be an uncaught Throwable type.
+              Util.sneakyThrow(cause);
+            }
           }
+          removeActiveRunnable(i);
         }
       }
     } finally {
-      // If the main download thread was interrupted as part of cancelation, then it's possible that
-      // the runnable is still doing work. We need to wait until it's finished before returning.
-      downloadRunnable.blockUntilFinished();
+      // If one of the runnables has thrown an exception, then it's possible there are other active
+      // runnables still doing work. Cancel them, and wait until they've finished. In addition to
+      // the failure case, we also need to wait for the case where the main download thread was
+      // interrupted as part of cancelation.
+      synchronized (activeRunnables) {
+        for (int i = 0; i < activeRunnables.size(); i++) {
+          activeRunnables.get(i).cancel(/* interruptIfRunning= */ true);
+        }
+      }
+      for (int i = activeRunnables.size() - 1; i >= 0; i--) {
+        activeRunnables.get(i).blockUntilFinished();
+        removeActiveRunnable(i);
+      }
       if (priorityTaskManager != null) {
         priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
       }
@@ -169,10 +251,11 @@ public final class ProgressiveDownloader implements Downloader {
 
   @Override
   public void cancel() {
-    isCanceled = true;
-    RunnableFutureTask<Void, IOException> downloadRunnable = this.downloadRunnable;
-    if (downloadRunnable != null) {
-      downloadRunnable.cancel(/* interruptIfRunning= */ true);
+    synchronized (activeRunnables) {
+      isCanceled = true;
+      for (int i = 0; i < activeRunnables.size(); i++) {
+        activeRunnables.get(i).cancel(/* interruptIfRunning= */ true);
+      }
     }
   }
 
@@ -181,6 +264,163 @@ public final class ProgressiveDownloader implements Downloader {
     dataSource.getCache().removeResource(dataSource.getCacheKeyFactory().buildCacheKey(dataSpec));
   }
 
+  /**
+   * Splits the data that isn't cached yet into byte ranges that can be requested in parallel.
+   *
+   * @return The {@link DataSpec DataSpecs} of the byte ranges, or {@code null} if the download
+   *     shouldn't be split.
+   * @throws InterruptedException If the thread on which the method is called is interrupted.
+   */
+  @Nullable
+  private List<DataSpec> splitIntoParallelRequests() throws InterruptedException {
+    Cache cache = dataSource.getCache();
+    String cacheKey = dataSource.getCacheKeyFactory().buildCacheKey(dataSpec);
+    long endPosition = C.POSITION_UNSET;
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      endPosition = dataSpec.position + dataSpec.length;
+    } else {
+      long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey));
+      if (contentLength != C.LENGTH_UNSET) {
+        endPosition = contentLength;
+      }
+    }
+    if (endPosition != C.POSITION_UNSET
+        && endPosition
+                - dataSpec.position
+                - cache.getCachedBytes(cacheKey, dataSpec.position, endPosition - dataSpec.position)
+            < 2 * MIN_PARALLEL_REQUEST_LENGTH_BYTES) {
+      return null;
+    }
+
+    // Request the data from the first byte after the first that isn't cached yet, to find out
+    // whether the server supports range requests and, if necessary, the length of the content. The
+    // request is made through the cache, so that it's subject to the same priority as the download
+    // and so that the content length is written to the cache metadata.
+    if (cacheDataSourceFactory.getUpstreamDataSourceFactory() == null) {
+      return null;
+    }
+    long probePosition = dataSpec.position + 1;
+    long cachedLength =
+        cache.getCachedLength(
+            cacheKey,
+            probePosition,
+            endPosition == C.POSITION_UNSET ? C.LENGTH_UNSET : endPosition - probePosition);
+    if (cachedLength > 0) {
+      probePosition += cachedLength;
+    }
+    DataSpec probeDataSpec =
+        dataSpec.buildUpon().setPosition(probePosition).setLength(C.LENGTH_UNSET).build();
+    CacheDataSource probeDataSource = cacheDataSourceFactory.createDataSourceForDownloading();
+    ProbeRunnable probeRunnable;
+    while (true) {
+      // Block until there aren't any higher priority tasks.
+      if (priorityTaskManager != null) {
+        priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
+      }
+      probeRunnable = new ProbeRunnable(probeDataSource, probeDataSpec);
+      addActiveRunnable(probeRunnable);
+      executor.execute(probeRunnable);
+      try {
+        probeRunnable.get();
+        break;
+      } catch (ExecutionException e) {
+        if (!(e.getCause() instanceof PriorityTooLowException)) {
+          // Fall back to downloading with a single request, which will report any persistent
+          // error.
+          return null;
+        }
+      } finally {
+        probeRunnable.blockUntilFinished();
+        removeActiveRunnable(probeRunnable);
+      }
+    }
+    if (!probeRunnable.supportsRangeRequests) {
+      return null;
+    }
+    if (endPosition == C.POSITION_UNSET) {
+      if (probeRunnable.length == C.LENGTH_UNSET) {
+        return null;
+      }
+      endPosition = probePosition + probeRunnable.length;
+    }
+
+    // Divide the data that isn't cached yet between the requests.
+    long uncachedBytes =
+        endPosition
+            - dataSpec.position
+            - cache.getCachedBytes(cacheKey, dataSpec.position, endPosition - dataSpec.position);
+    long requestCount = min(maxParallelRequests, uncachedBytes / MIN_PARALLEL_REQUEST_LENGTH_BYTES);
+    if (requestCount < 2) {
+      return null;
+    }
+    long uncachedBytesPerRequest = uncachedBytes / requestCount;
+    List<DataSpec> requestDataSpecs = new ArrayList<>();
+    long requestPosition = dataSpec.position;
+    long requestUncachedBytes = 0;
+    long position = dataSpec.position;
+    while (position < endPosition) {
+      long blockLength = cache.getCachedLength(cacheKey, position, endPosition - position);
+      if (blockLength > 0) {
+        position += blockLength;
+        continue;
+      }
+      // There's a hole of length -blockLength.
+      long holeEndPosition = position - blockLength;
+      while (requestDataSpecs.size() < requestCount - 1
+          && requestUncachedBytes + holeEndPosition - position >= uncachedBytesPerRequest) {
+        position += uncachedBytesPerRequest - requestUncachedBytes;
+        requestDataSpecs.add(buildRequestDataSpec(requestPosition, position));
+        requestPosition = position;
+        requestUncachedBytes = 0;
+      }
+      requestUncachedBytes += holeEndPosition - position;
+      position = holeEndPosition;
+    }
+    requestDataSpecs.add(buildRequestDataSpec(requestPosition, endPosition));
+    return requestDataSpecs;
+  }
+
+  private DataSpec buildRequestDataSpec(long position, long endPosition) {
+    return dataSpec.buildUpon().setPosition(position).setLength(endPosition - position).build();
+  }
+
+  private void addActiveRunnable(RunnableFutureTask<?, ?> runnable) throws InterruptedException {
+    synchronized (activeRunnables) {
+      if (isCanceled) {
+        throw new InterruptedException();
+      }
+      activeRunnables.add(runnable);
+    }
+  }
+
+  private void removeActiveRunnable(RunnableFutureTask<?, ?> runnable) {
+    synchronized (activeRunnables) {
+      activeRunnables.remove(runnable);
+    }
+  }
+
+  private void removeActiveRunnable(int index) {
+    synchronized (activeRunnables) {
+      activeRunnables.remove(index);
+    }
+  }
+
+  /**
+   * Returns whether the response to a range request indicates that the server supports range
+   * requests. Responses without headers, which aren't HTTP responses, are assumed to do so.
+   */
+  private static boolean supportsRangeRequests(Map<String, List<String>> responseHeaders) {
+    if (responseHeaders.isEmpty()) {
+      return true;
+    }
+    for (@Nullable String name : responseHeaders.keySet()) {
+      if ("Content-Range".equalsIgnoreCase(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void onProgress(long contentLength, long bytesCached, long newBytesCached) {
     if (progressListener == null) {
       return;
@@ -191,4 +431,80 @@ public final class ProgressiveDownloader implements Downloader {
             : ((bytesCached * 100f) / contentLength);
     progressListener.onProgress(contentLength, bytesCached, percentDownloaded);
   }
+
+  private static final class CacheWriterRunnable extends RunnableFutureTask<Void, IOException> {
+
+    public final CacheWriter cacheWriter;
+
+    public CacheWriterRunnable(CacheWriter cacheWriter) {
+      this.cacheWriter = cacheWriter;
+    }
+
+    @Override
+    protected Void doWork() throws IOException {
+      cacheWriter.cache();
+      return null;
+    }
+
+    @Override
+    protected void cancelWork() {
+      cacheWriter.cancel();
+    }
+  }
+
+  /**
+   * Opens a request and closes it without reading any data, recording the resolved length and
+   * whether the response indicates that the server supports range requests.
+   */
+  private static final class ProbeRunnable extends RunnableFutureTask<Void, IOException> {
+
+    private final CacheDataSource dataSource;
+    private final DataSpec dataSpec;
+
+    public volatile long length;
+    public volatile boolean supportsRangeRequests;
+
+    public ProbeRunnable(CacheDataSource dataSource, DataSpec dataSpec) {
+      this.dataSource = dataSource;
+      this.dataSpec = dataSpec;
+      length = C.LENGTH_UNSET;
+    }
+
+    @Override
+    protected Void doWork() throws IOException {
+      try {
+        length = dataSource.open(dataSpec);
+        supportsRangeRequests = supportsRangeRequests(dataSource.getResponseHeaders());
+      } finally {
+        dataSource.close();
+      }
+      return null;
+    }
+  }
+
+  /** Merges the progress of the {@link CacheWriter CacheWriters} of parallel requests. */
+  private final class ParallelProgressNotifier {
+
+    private final long contentLength;
+    private final long[] requestBytesCached;
+
+    private long bytesCached;
+
+    public ParallelProgressNotifier(long contentLength, int requestCount) {
+      this.contentLength = contentLength;
+      requestBytesCached = new long[requestCount];
+    }
+
+    public CacheWriter.ProgressListener getProgressListener(int requestIndex) {
+      return (requestLength, bytesCached, newBytesCached) ->
+          onProgress(requestIndex, bytesCached, newBytesCached);
+    }
+
+    private synchronized void onProgress(
+        int requestIndex, long requestBytesCached, long newBytesCached) {
+      bytesCached += requestBytesCached - this.requestBytesCached[requestIndex];
+      this.requestBytesCached[requestIndex] = requestBytesCached;
+      ProgressiveDownloader.this.onProgress(contentLength, bytesCached, newBytesCached);
+    }
+  }
 }
@@ -27,6 +27,7 @@ import com.google.android.exoplayer2.extractor.PositionHolder;
 import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
 import com.google.android.exoplayer2.upstream.DataReader;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.FileTypes;
 import com.google.android.exoplayer2.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
@@ -36,21 +37,36 @@ import java.util.Map;
 /**
  * {@link ProgressiveMediaExtractor} built on top of {@link Extractor} instances, whose
  * implementation classes are bundled in the app.
+ *
+ * <p>When there are several extractors to choose from, the first one is sniffed. If it can't read
+ * the stream, the start of the stream is peeked once, and the extractors ruled out by its magic
+ * bytes are skipped. The others are sniffed in order, so the extractor that's selected is the first
+ * one in the order of the {@link ExtractorsFactory} that can read the stream.
+ *
+ * <p>If the magic bytes are inconclusive and a {@link FileTypeCache} is set, the extractors for the
+ * file type previously found for the same host and file extension are sniffed first. If one of
+ * them can read the stream it's selected, without sniffing the extractors that come before it.
  */
 /* package */ final class BundledExtractorsAdapter implements ProgressiveMediaExtractor {
 
   private final ExtractorsFactory extractorsFactory;
+  @Nullable private final FileTypeCache fileTypeCache;
 
   @Nullable private Extractor extractor;
-  @Nullable private ExtractorInput extractorInput;
+  @Nullable private DefaultExtractorInput extractorInput;
+  private long previousInputsUpstreamReadCount;
 
   /**
    * Creates a holder that will select an extractor and initialize it using the specified output.
    *
    * @param extractorsFactory The {@link ExtractorsFactory} providing the extractors to choose from.
+   * @param fileTypeCache The {@link FileTypeCache} in which to look up and store the file type of
+   *     the stream, or null if file types shouldn't be cached.
    */
-  public BundledExtractorsAdapter(ExtractorsFactory extractorsFactory) {
+  public BundledExtractorsAdapter(
+      ExtractorsFactory extractorsFactory, @Nullable FileTypeCache fileTypeCache) {
     this.extractorsFactory = extractorsFactory;
+    this.fileTypeCache = fileTypeCache;
   }
 
   @Override
@@ -62,7 +78,12 @@ import java.util.Map;
       long length,
       ExtractorOutput output)
       throws IOException {
-    ExtractorInput extractorInput = new DefaultExtractorInput(dataReader, position, length);
+    if (this.extractorInput != null) {
+      previousInputsUpstreamReadCount += this.extractorInput.getUpstreamReadCount();
+    }
+    DefaultExtractorInput extractorInput =
+        new DefaultExtractorInput(
+            dataReader, position, length, extractorsFactory.getReadAheadBlockSize());
     this.extractorInput = extractorInput;
     if (extractor != null) {
       return;
@@ -71,36 +92,94 @@ import java.util.Map;
     if (extractors.length == 1) {
       this.extractor = extractors[0];
     } else {
-      for (Extractor extractor : extractors) {
-        try {
-          if (extractor.sniff(extractorInput)) {
-            this.extractor = extractor;
-            break;
-          }
-        } catch (EOFException e) {
-          // Do nothing.
-        } finally {
-          Assertions.checkState(this.extractor != null || extractorInput.getPosition() == position);
-          extractorInput.resetPeekPosition();
-        }
-      }
-      if (extractor == null) {
+      int extractorIndex = selectExtractor(extractors, extractorInput, uri, position);
+      if (extractorIndex == C.INDEX_UNSET) {
         throw new UnrecognizedInputFormatException(
             "None of the available extractors ("
                 + Util.getCommaDelimitedSimpleClassNames(extractors)
                 + ") could read the stream.",
             Assertions.checkNotNull(uri));
       }
+      extractor = extractors[extractorIndex];
+      if (fileTypeCache != null) {
+        fileTypeCache.putFileType(uri, FileTypeSniffer.getFileType(extractor));
+      }
     }
     extractor.init(output);
   }
 
+  /**
+   * Returns the index of the first of {@code extractors} that can read the stream, or {@link
+   * C#INDEX_UNSET} if none of them can read it.
+   */
+  private int selectExtractor(
+      Extractor[] extractors, ExtractorInput extractorInput, Uri uri, long position)
+      throws IOException {
+    if (extractors.length == 0) {
+      return C.INDEX_UNSET;
+    }
+    // The first extractor would be sniffed first in any case, so it's sniffed before peeking the
+    // magic bytes, which aren't needed if it can read the stream.
+    if (sniff(extractors[0], extractorInput, position)) {
+      return 0;
+    }
+    byte[] prefix = new byte[FileTypeSniffer.PREFIX_LENGTH];
+    int prefixLength = FileTypeSniffer.peekPrefix(extractorInput, prefix);
+    @FileTypes.Type int sniffedFileType = FileTypeSniffer.sniffFileType(prefix, prefixLength);
+    boolean[] skipped = new boolean[extractors.length];
+    skipped[0] = true;
+    for (int i = 1; i < extractors.length; i++) {
+      skipped[i] =
+          !FileTypeSniffer.mayReadStream(extractors[i], sniffedFileType, prefix, prefixLength);
+    }
+
+    @FileTypes.Type
+    int cachedFileType =
+        fileTypeCache != null && sniffedFileType == FileTypes.UNKNOWN
+            ? fileTypeCache.getFileType(uri)
+            : FileTypes.UNKNOWN;
+    if (cachedFileType != FileTypes.UNKNOWN) {
+      // The cached file type is trusted, so the extractors before the one found aren't sniffed.
+      for (int i = 1; i < extractors.length; i++) {
+        if (!skipped[i] && FileTypeSniffer.getFileType(extractors[i]) == cachedFileType) {
+          skipped[i] = true;
+          if (sniff(extractors[i], extractorInput, position)) {
+            return i;
+          }
+        }
+      }
+    }
+    for (int i = 1; i < extractors.length; i++) {
+      if (!skipped[i] && sniff(extractors[i], extractorInput, position)) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  private static boolean sniff(Extractor extractor, ExtractorInput extractorInput, long position)
+      throws IOException {
+    boolean canRead = false;
+    try {
+      canRead = extractor.sniff(extractorInput);
+    } catch (EOFException e) {
+      // Do nothing.
+    } finally {
+      Assertions.checkState(canRead || extractorInput.getPosition() == position);
+      extractorInput.resetPeekPosition();
+    }
+    return canRead;
+  }
+
   @Override
   public void release() {
     if (extractor != null) {
       extractor.release();
       extractor = null;
     }
+    if (extractorInput != null) {
+      previousInputsUpstreamReadCount += extractorInput.getUpstreamReadCount();
+    }
     extractorInput = null;
   }
 
@@ -111,6 +190,12 @@ import java.util.Map;
     }
   }
 
+  @Override
+  public long getUpstreamReadCount() {
+    return previousInputsUpstreamReadCount
+        + (extractorInput != null ? extractorInput.getUpstreamReadCount() : 0);
+  }
+
   @Override
   public long getCurrentInputPosition() {
     return extractorInput != null ? extractorInput.getPosition() : C.POSITION_UNSET;
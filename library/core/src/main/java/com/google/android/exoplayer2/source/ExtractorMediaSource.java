@@ -339,7 +339,10 @@ public final class ExtractorMediaSource extends CompositeMediaSource<Void> {
             extractorsFactory,
             DrmSessionManager.DRM_UNSUPPORTED,
             loadableLoadErrorHandlingPolicy,
-            continueLoadingCheckIntervalBytes);
+            continueLoadingCheckIntervalBytes,
+            /* loaderThreadPool= */ null,
+            C.PRIORITY_PLAYBACK,
+            /* fileTypeCache= */ null);
   }
 
   /**
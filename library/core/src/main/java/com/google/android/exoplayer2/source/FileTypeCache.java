@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.FileTypes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the {@link FileTypes.Type} of progressive streams by the host and file extension of their
+ * {@link Uri}, so that the extractors for that file type can be sniffed first, and the others
+ * skipped, when the magic bytes of a later stream from the same host with the same extension are
+ * inconclusive.
+ *
+ * <p>Instances are owned by a {@link ProgressiveMediaSource.Factory} and shared by the media
+ * sources it creates. They're safe to use from multiple threads.
+ */
+/* package */ final class FileTypeCache {
+
+  private static final int MAX_SIZE = 64;
+
+  private final LinkedHashMap<String, Integer> fileTypes;
+
+  public FileTypeCache() {
+    fileTypes =
+        new LinkedHashMap<String, Integer>(
+            /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_SIZE;
+          }
+        };
+  }
+
+  /**
+   * Returns the cached {@link FileTypes.Type} of streams with the host and file extension of {@code
+   * uri}, or {@link FileTypes#UNKNOWN} if there isn't one.
+   */
+  @FileTypes.Type
+  public synchronized int getFileType(Uri uri) {
+    @Nullable Integer fileType = fileTypes.get(getKey(uri));
+    return fileType != null ? fileType : FileTypes.UNKNOWN;
+  }
+
+  /** Caches the {@link FileTypes.Type} of a stream, by the host and file extension of its uri. */
+  public synchronized void putFileType(Uri uri, @FileTypes.Type int fileType) {
+    if (fileType != FileTypes.UNKNOWN) {
+      fileTypes.put(getKey(uri), fileType);
+    }
+  }
+
+  private static String getKey(Uri uri) {
+    @Nullable String host = uri.getHost();
+    @Nullable String lastPathSegment = uri.getLastPathSegment();
+    String extension = "";
+    if (lastPathSegment != null) {
+      int extensionIndex = lastPathSegment.lastIndexOf('.');
+      if (extensionIndex != -1) {
+        extension = lastPathSegment.substring(extensionIndex + 1);
+      }
+    }
+    return (host != null ? host : "") + '|' + extension;
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.amr.AmrExtractor;
+import com.google.android.exoplayer2.extractor.flac.FlacExtractor;
+import com.google.android.exoplayer2.extractor.flv.FlvExtractor;
+import com.google.android.exoplayer2.extractor.jpeg.JpegExtractor;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer2.extractor.ts.Ac3Extractor;
+import com.google.android.exoplayer2.extractor.ts.Ac4Extractor;
+import com.google.android.exoplayer2.extractor.ts.AdtsExtractor;
+import com.google.android.exoplayer2.extractor.ts.PsExtractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.extractor.wav.WavExtractor;
+import com.google.android.exoplayer2.util.FileTypes;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Infers the {@link FileTypes.Type} of a stream from the magic bytes at its start, and rules out
+ * the {@link Extractor Extractors} that can't read the stream, so that they don't need to be
+ * sniffed.
+ */
+/* package */ final class FileTypeSniffer {
+
+  /**
+   * The number of bytes peeked from the start of a stream. It covers the bytes inspected by the
+   * sniffers of the extractors that are ruled out from the start of a stream.
+   */
+  public static final int PREFIX_LENGTH = 1024;
+
+  private static final int TS_PACKET_SIZE = 188;
+  /** The number of packets whose sync bytes are checked by {@link TsExtractor#sniff}. */
+  private static final int TS_SNIFF_PACKET_COUNT = 5;
+  /** The number of bytes within which {@link MatroskaExtractor#sniff} finds the EBML ID. */
+  private static final int MATROSKA_SEARCH_LENGTH = 1023;
+  /** The number of bytes within which {@link Mp4Extractor#sniff} must find a compatible brand. */
+  private static final int MP4_SEARCH_LENGTH = 4 * 1024;
+  private static final int MP4_ATOM_HEADER_SIZE = 8;
+  private static final int MP4_LONG_ATOM_HEADER_SIZE = 16;
+  private static final int ID3_HEADER_LENGTH = 10;
+
+  private static final byte[] EBML_ID = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3};
+  private static final byte[] PS_PACK_START_CODE = {0x00, 0x00, 0x01, (byte) 0xBA};
+  private static final byte[] JPEG_START_OF_IMAGE = {(byte) 0xFF, (byte) 0xD8};
+  private static final String[] MP4_BOX_TYPES = {"ftyp", "styp", "moov", "moof", "sidx"};
+
+  private FileTypeSniffer() {}
+
+  /**
+   * Peeks the start of a stream and returns the {@link FileTypes.Type} indicated by its magic
+   * bytes. The peek position is reset before returning.
+   *
+   * @param input The {@link ExtractorInput} to peek from, with its peek position at the start of
+   *     the stream.
+   * @return The {@link FileTypes.Type}, or {@link FileTypes#UNKNOWN} if the magic bytes don't
+   *     indicate a single file type.
+   * @throws IOException If an error occurs peeking from the input.
+   */
+  @FileTypes.Type
+  public static int sniffFileType(ExtractorInput input) throws IOException {
+    byte[] prefix = new byte[PREFIX_LENGTH];
+    int length = peekPrefix(input, prefix);
+    return sniffFileType(prefix, length);
+  }
+
+  /**
+   * Peeks up to {@link #PREFIX_LENGTH} bytes from the start of a stream. Fewer bytes are peeked
+   * only if the end of the input is reached. The peek position is reset before returning.
+   *
+   * @param input The {@link ExtractorInput} to peek from, with its peek position at the start of
+   *     the stream.
+   * @param prefix An array of at least {@link #PREFIX_LENGTH} bytes into which to peek.
+   * @return The number of bytes peeked.
+   * @throws IOException If an error occurs peeking from the input.
+   */
+  public static int peekPrefix(ExtractorInput input, byte[] prefix) throws IOException {
+    int length = 0;
+    try {
+      while (length < PREFIX_LENGTH) {
+        int bytesPeeked = input.peek(prefix, length, PREFIX_LENGTH - length);
+        if (bytesPeeked == C.RESULT_END_OF_INPUT) {
+          break;
+        }
+        length += bytesPeeked;
+      }
+    } finally {
+      input.resetPeekPosition();
+    }
+    return length;
+  }
+
+  /**
+   * Returns the {@link FileTypes.Type} indicated by the magic bytes at the start of a stream.
+   *
+   * @param data The bytes at the start of the stream.
+   * @param length The number of valid bytes in {@code data}.
+   * @return The {@link FileTypes.Type}, or {@link FileTypes#UNKNOWN} if the magic bytes don't
+   *     indicate a single file type.
+   */
+  @FileTypes.Type
+  public static int sniffFileType(byte[] data, int length) {
+    // Signatures at a fixed position are checked first, so that a stream is never attributed to
+    // another file type if it has one of them. See mayReadStream.
+    if (startsWith(data, length, /* offset= */ 0, "OggS")) {
+      return FileTypes.OGG;
+    } else if (startsWith(data, length, /* offset= */ 0, "fLaC")) {
+      return FileTypes.FLAC;
+    } else if ((startsWith(data, length, /* offset= */ 0, "RIFF")
+            || startsWith(data, length, /* offset= */ 0, "RF64"))
+        && startsWith(data, length, /* offset= */ 8, "WAVE")) {
+      return FileTypes.WAV;
+    } else if (startsWith(data, length, /* offset= */ 0, "#!AMR")) {
+      return FileTypes.AMR;
+    } else if (startsWith(data, length, /* offset= */ 0, "FLV")) {
+      return FileTypes.FLV;
+    } else if (startsWith(data, length, /* offset= */ 0, PS_PACK_START_CODE)) {
+      return FileTypes.PS;
+    } else if (startsWith(data, length, /* offset= */ 0, JPEG_START_OF_IMAGE)) {
+      return FileTypes.JPEG;
+    }
+    if (length >= 8) {
+      for (String boxType : MP4_BOX_TYPES) {
+        if (startsWith(data, length, /* offset= */ 4, boxType)) {
+          return FileTypes.MP4;
+        }
+      }
+    }
+    if (startsWith(data, length, /* offset= */ 0, EBML_ID)) {
+      return FileTypes.MATROSKA;
+    } else if (isTsSyncPattern(data, length)) {
+      return FileTypes.TS;
+    }
+
+    // Audio elementary streams may be preceded by an ID3 tag.
+    int offset = 0;
+    if (startsWith(data, length, /* offset= */ 0, "ID3")) {
+      if (length < ID3_HEADER_LENGTH) {
+        return FileTypes.UNKNOWN;
+      }
+      boolean hasFooter = (data[5] & 0x10) != 0;
+      offset =
+          ID3_HEADER_LENGTH
+              + ((data[6] & 0x7F) << 21
+                  | (data[7] & 0x7F) << 14
+                  | (data[8] & 0x7F) << 7
+                  | (data[9] & 0x7F))
+              + (hasFooter ? ID3_HEADER_LENGTH : 0);
+    }
+    if (offset + 2 > length) {
+      return FileTypes.UNKNOWN;
+    }
+    if (startsWith(data, length, offset, "fLaC")) {
+      return FileTypes.FLAC;
+    }
+    int syncWord = (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    if (syncWord == 0x0B77) {
+      return FileTypes.AC3;
+    } else if (syncWord == 0xAC40 || syncWord == 0xAC41) {
+      return FileTypes.AC4;
+    } else if ((syncWord & 0xFFF6) == 0xFFF0) {
+      // An MPEG audio frame sync with layer 0, which is used by ADTS.
+      return FileTypes.ADTS;
+    } else if ((syncWord & 0xFFE0) == 0xFFE0 && (syncWord & 0x0006) != 0) {
+      return FileTypes.MP3;
+    }
+    return FileTypes.UNKNOWN;
+  }
+
+  /**
+   * Returns the {@link FileTypes.Type} read by an {@link Extractor}, or {@link FileTypes#UNKNOWN}
+   * if it's not one of the bundled extractors.
+   */
+  @FileTypes.Type
+  public static int getFileType(Extractor extractor) {
+    if (extractor instanceof Ac3Extractor) {
+      return FileTypes.AC3;
+    } else if (extractor instanceof Ac4Extractor) {
+      return FileTypes.AC4;
+    } else if (extractor instanceof AdtsExtractor) {
+      return FileTypes.ADTS;
+    } else if (extractor instanceof AmrExtractor) {
+      return FileTypes.AMR;
+    } else if (extractor instanceof FlacExtractor) {
+      return FileTypes.FLAC;
+    } else if (extractor instanceof FlvExtractor) {
+      return FileTypes.FLV;
+    } else if (extractor instanceof MatroskaExtractor) {
+      return FileTypes.MATROSKA;
+    } else if (extractor instanceof Mp3Extractor) {
+      return FileTypes.MP3;
+    } else if (extractor instanceof FragmentedMp4Extractor || extractor instanceof Mp4Extractor) {
+      return FileTypes.MP4;
+    } else if (extractor instanceof OggExtractor) {
+      return FileTypes.OGG;
+    } else if (extractor instanceof PsExtractor) {
+      return FileTypes.PS;
+    } else if (extractor instanceof TsExtractor) {
+      return FileTypes.TS;
+    } else if (extractor instanceof WavExtractor) {
+      return FileTypes.WAV;
+    } else if (extractor instanceof JpegExtractor) {
+      return FileTypes.JPEG;
+    }
+    return FileTypes.UNKNOWN;
+  }
+
+  /**
+   * Returns whether {@code extractor} may be able to read a stream, given the bytes at its start.
+   *
+   * <p>This method returns false only if sniffing the stream with {@code extractor} would fail. The
+   * extractors for file types with a signature at a fixed position at the start of the stream are
+   * ruled out if the magic bytes indicate another file type. The {@link Mp4Extractor}, {@link
+   * FragmentedMp4Extractor}, {@link MatroskaExtractor} and {@link TsExtractor} are ruled out if
+   * the atom header, EBML ID or sync bytes they look for aren't in the prefix. The other extractors
+   * search for sync words beyond the prefix, so they're never ruled out.
+   *
+   * @param extractor The extractor.
+   * @param sniffedFileType The {@link FileTypes.Type} returned by {@link #sniffFileType(byte[],
+   *     int)} for {@code data}.
+   * @param data The bytes at the start of the stream, as peeked by {@link
+   *     #peekPrefix(ExtractorInput, byte[])}.
+   * @param length The number of valid bytes in {@code data}. If less than {@link #PREFIX_LENGTH},
+   *     {@code data} holds the whole stream.
+   * @return Whether {@code extractor} may be able to read the stream.
+   */
+  public static boolean mayReadStream(
+      Extractor extractor, @FileTypes.Type int sniffedFileType, byte[] data, int length) {
+    @FileTypes.Type int fileType = getFileType(extractor);
+    switch (fileType) {
+      case FileTypes.MP4:
+        return mayBeMp4(data, length);
+      case FileTypes.MATROSKA:
+        return containsEbmlId(data, length);
+      case FileTypes.TS:
+        return hasTsSyncBytes(data, length);
+      default:
+        return !hasFixedPositionSignature(fileType)
+            || sniffedFileType == FileTypes.UNKNOWN
+            || sniffedFileType == fileType;
+    }
+  }
+
+  /**
+   * Returns the extractors that may be able to read a stream, in their original order. See {@link
+   * #mayReadStream(Extractor, int, byte[], int)}.
+   *
+   * @param extractors The extractors, in the order in which they should be sniffed.
+   * @param data The bytes at the start of the stream.
+   * @param length The number of valid bytes in {@code data}.
+   * @return The extractors that may be able to read the stream, in their original order.
+   */
+  public static Extractor[] removeExtractorsForOtherFileTypes(
+      Extractor[] extractors, byte[] data, int length) {
+    @FileTypes.Type int sniffedFileType = sniffFileType(data, length);
+    List<Extractor> remainingExtractors = new ArrayList<>(extractors.length);
+    for (Extractor extractor : extractors) {
+      if (mayReadStream(extractor, sniffedFileType, data, length)) {
+        remainingExtractors.add(extractor);
+      }
+    }
+    return remainingExtractors.toArray(new Extractor[0]);
+  }
+
+  /**
+   * Returns whether the extractor for {@code fileType} only reads streams that start with the
+   * signature of the file type, optionally preceded by an ID3 tag for FLAC.
+   */
+  private static boolean hasFixedPositionSignature(@FileTypes.Type int fileType) {
+    switch (fileType) {
+      case FileTypes.AMR:
+      case FileTypes.FLAC:
+      case FileTypes.FLV:
+      case FileTypes.JPEG:
+      case FileTypes.OGG:
+      case FileTypes.PS:
+      case FileTypes.WAV:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns whether the first atom header of the stream allows {@link Mp4Extractor#sniff} to find
+   * a compatible brand. An atom other than moov that's too large for the search length, or a moof
+   * or mvex atom before any ftyp atom, ends the search.
+   */
+  private static boolean mayBeMp4(byte[] data, int length) {
+    if (length < MP4_ATOM_HEADER_SIZE) {
+      return false;
+    }
+    long atomSize = readUnsignedInt(data, /* offset= */ 0);
+    int headerSize = MP4_ATOM_HEADER_SIZE;
+    if (atomSize == 1) {
+      if (length < MP4_LONG_ATOM_HEADER_SIZE) {
+        return false;
+      }
+      headerSize = MP4_LONG_ATOM_HEADER_SIZE;
+      atomSize = readUnsignedInt(data, /* offset= */ 8) << 32 | readUnsignedInt(data, /* offset= */ 12);
+      if (atomSize < 0) {
+        // The size doesn't fit in a long, so it's at least as large as the search length.
+        atomSize = Long.MAX_VALUE;
+      }
+    } else if (atomSize == 0) {
+      // The atom extends to the end of the input, whose length may not be known here.
+      return true;
+    }
+    if (atomSize < headerSize) {
+      return false;
+    }
+    if (startsWith(data, length, /* offset= */ 4, "moov")) {
+      return true;
+    }
+    return !startsWith(data, length, /* offset= */ 4, "moof")
+        && !startsWith(data, length, /* offset= */ 4, "mvex")
+        && atomSize < MP4_SEARCH_LENGTH;
+  }
+
+  /** Returns whether the EBML ID is where {@link MatroskaExtractor#sniff} searches for it. */
+  private static boolean containsEbmlId(byte[] data, int length) {
+    int searchLength = min(length, MATROSKA_SEARCH_LENGTH);
+    for (int offset = 0; offset + EBML_ID.length <= searchLength; offset++) {
+      if (startsWith(data, searchLength, offset, EBML_ID)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns whether the stream has the sync bytes that {@link TsExtractor#sniff} looks for. */
+  private static boolean hasTsSyncBytes(byte[] data, int length) {
+    if (length < TS_PACKET_SIZE * TS_SNIFF_PACKET_COUNT) {
+      return false;
+    }
+    for (int startPosition = 0; startPosition < TS_PACKET_SIZE; startPosition++) {
+      boolean foundSyncBytes = true;
+      for (int i = 0; i < TS_SNIFF_PACKET_COUNT; i++) {
+        if (data[startPosition + i * TS_PACKET_SIZE] != TsExtractor.TS_SYNC_BYTE) {
+          foundSyncBytes = false;
+          break;
+        }
+      }
+      if (foundSyncBytes) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long readUnsignedInt(byte[] data, int offset) {
+    return (data[offset] & 0xFFL) << 24
+        | (data[offset + 1] & 0xFFL) << 16
+        | (data[offset + 2] & 0xFFL) << 8
+        | (data[offset + 3] & 0xFFL);
+  }
+
+  private static boolean isTsSyncPattern(byte[] data, int length) {
+    // Require the sync byte at the start of at least two packets, and of the third if available.
+    if (length <= TS_PACKET_SIZE) {
+      return false;
+    }
+    for (int i = 0; i < length; i += TS_PACKET_SIZE) {
+      if (data[i] != TsExtractor.TS_SYNC_BYTE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean startsWith(byte[] data, int length, int offset, byte[] prefix) {
+    if (offset + prefix.length > length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (data[offset + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean startsWith(byte[] data, int length, int offset, String prefix) {
+    if (offset + prefix.length() > length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (data[offset + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -96,6 +96,12 @@ import java.util.Map;
     }
   }
 
+  @Override
+  public long getUpstreamReadCount() {
+    // MediaParser reads through its own input, whose reads aren't counted.
+    return C.LENGTH_UNSET;
+  }
+
   @Override
   public long getCurrentInputPosition() {
     return inputReaderAdapter.getPosition();
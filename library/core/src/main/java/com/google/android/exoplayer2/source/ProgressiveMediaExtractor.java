@@ -60,6 +60,12 @@ import java.util.Map;
    */
   void disableSeekingOnMp3Streams();
 
+  /**
+   * Returns the number of reads from the {@link DataReader DataReaders} passed to {@link #init},
+   * or {@link C#LENGTH_UNSET} if they aren't counted.
+   */
+  long getUpstreamReadCount();
+
   /**
    * Returns the current read position in the input stream, or {@link C#POSITION_UNSET} if no input
    * is available.
@@ -49,6 +49,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy.LoadErrorI
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
 import com.google.android.exoplayer2.upstream.Loader.Loadable;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.StatsDataSource;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.ConditionVariable;
@@ -159,6 +160,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    *     indexing. May be null.
    * @param continueLoadingCheckIntervalBytes The number of bytes that should be loaded between each
    *     invocation of {@link Callback#onContinueLoadingRequested(SequenceableLoader)}.
+   * @param loaderThreadPool A {@link LoaderThreadPool} on which to load, or null to load on a
+   *     thread of the period's own.
+   * @param loaderPriority The priority of the period's loads in the {@link LoaderThreadPool}.
+   * @param fileTypeCache The {@link FileTypeCache} used to select an extractor, or null.
    */
   // maybeFinishPrepare is not posted to the handler until initialization completes.
   @SuppressWarnings({
@@ -176,7 +181,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       Listener listener,
       Allocator allocator,
       @Nullable String customCacheKey,
-      int continueLoadingCheckIntervalBytes) {
+      int continueLoadingCheckIntervalBytes,
+      @Nullable LoaderThreadPool loaderThreadPool,
+      int loaderPriority,
+      @Nullable FileTypeCache fileTypeCache) {
     this.uri = uri;
     this.dataSource = dataSource;
     this.drmSessionManager = drmSessionManager;
@@ -187,8 +195,14 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     this.allocator = allocator;
     this.customCacheKey = customCacheKey;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
-    loader = new Loader("Loader:ProgressiveMediaPeriod");
-    this.progressiveMediaExtractor = new BundledExtractorsAdapter(extractorsFactory);
+    // Loads wait on loadCondition while the period doesn't need more data, holding their thread.
+    loader =
+        Loader.create(
+            "Loader:ProgressiveMediaPeriod",
+            loaderThreadPool,
+            loaderPriority,
+            /* loadsMayBlock= */ true);
+    this.progressiveMediaExtractor = new BundledExtractorsAdapter(extractorsFactory, fileTypeCache);
     loadCondition = new ConditionVariable();
     maybeFinishPrepareRunnable = this::maybeFinishPrepare;
     onContinueLoadingRequestedRunnable =
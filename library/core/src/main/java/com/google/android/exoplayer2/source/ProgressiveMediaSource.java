@@ -33,6 +33,7 @@ import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.TransferListener;
 
 /**
@@ -59,6 +60,9 @@ public final class ProgressiveMediaSource extends BaseMediaSource
     private DrmSessionManagerProvider drmSessionManagerProvider;
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private int continueLoadingCheckIntervalBytes;
+    @Nullable private LoaderThreadPool loaderThreadPool;
+    private int loaderPriority;
+    @Nullable private FileTypeCache fileTypeCache;
     @Nullable private String customCacheKey;
     @Nullable private Object tag;
 
@@ -84,6 +88,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       drmSessionManagerProvider = new DefaultDrmSessionManagerProvider();
       loadErrorHandlingPolicy = new DefaultLoadErrorHandlingPolicy();
       continueLoadingCheckIntervalBytes = DEFAULT_LOADING_CHECK_INTERVAL_BYTES;
+      loaderPriority = C.PRIORITY_PLAYBACK;
+      fileTypeCache = new FileTypeCache();
     }
 
     /**
@@ -149,6 +155,52 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets a {@link LoaderThreadPool} on which media periods load, with {@link
+     * C#PRIORITY_PLAYBACK}. See {@link #setLoaderThreadPool(LoaderThreadPool, int)}.
+     *
+     * @param loaderThreadPool The {@link LoaderThreadPool}, or {@code null}.
+     * @return This factory, for convenience.
+     */
+    public Factory setLoaderThreadPool(@Nullable LoaderThreadPool loaderThreadPool) {
+      return setLoaderThreadPool(loaderThreadPool, C.PRIORITY_PLAYBACK);
+    }
+
+    /**
+     * Sets a {@link LoaderThreadPool} on which media periods load, so that many media sources can
+     * share a bounded number of threads. The default value is {@code null}, in which case each
+     * media period loads on a thread of its own.
+     *
+     * @param loaderThreadPool The {@link LoaderThreadPool}, or {@code null}.
+     * @param loaderPriority The priority of the loads relative to those of other loaders using the
+     *     same pool. Higher values run first. {@link C#PRIORITY_PLAYBACK} is suitable for loads
+     *     needed for playback.
+     * @return This factory, for convenience.
+     */
+    public Factory setLoaderThreadPool(
+        @Nullable LoaderThreadPool loaderThreadPool, int loaderPriority) {
+      this.loaderThreadPool = loaderThreadPool;
+      this.loaderPriority = loaderPriority;
+      return this;
+    }
+
+    /**
+     * Sets whether the file type found for each stream is cached by the host and file extension of
+     * its URI, and shared by the media sources created by this factory. When the magic bytes at the
+     * start of a stream are inconclusive, the extractors for the cached file type are sniffed first,
+     * and one that can read the stream is selected even if an extractor that comes before it in the
+     * {@link ExtractorsFactory} could also read it. The default value is {@code true}.
+     *
+     * @param fileTypeCacheEnabled Whether to cache the file types of streams.
+     * @return This factory, for convenience.
+     */
+    public Factory setFileTypeCacheEnabled(boolean fileTypeCacheEnabled) {
+      if (fileTypeCacheEnabled != (fileTypeCache != null)) {
+        fileTypeCache = fileTypeCacheEnabled ? new FileTypeCache() : null;
+      }
+      return this;
+    }
+
     @Override
     public Factory setDrmSessionManagerProvider(
         @Nullable DrmSessionManagerProvider drmSessionManagerProvider) {
@@ -223,7 +275,10 @@ public final class ProgressiveMediaSource extends BaseMediaSource
           extractorsFactory,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
-          continueLoadingCheckIntervalBytes);
+          continueLoadingCheckIntervalBytes,
+          loaderThreadPool,
+          loaderPriority,
+          fileTypeCache);
     }
 
     @Override
@@ -245,6 +300,9 @@ public final class ProgressiveMediaSource extends BaseMediaSource
   private final DrmSessionManager drmSessionManager;
   private final LoadErrorHandlingPolicy loadableLoadErrorHandlingPolicy;
   private final int continueLoadingCheckIntervalBytes;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
+  private final int loaderPriority;
+  @Nullable private final FileTypeCache fileTypeCache;
 
   private boolean timelineIsPlaceholder;
   private long timelineDurationUs;
@@ -259,7 +317,10 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       ExtractorsFactory extractorsFactory,
       DrmSessionManager drmSessionManager,
       LoadErrorHandlingPolicy loadableLoadErrorHandlingPolicy,
-      int continueLoadingCheckIntervalBytes) {
+      int continueLoadingCheckIntervalBytes,
+      @Nullable LoaderThreadPool loaderThreadPool,
+      int loaderPriority,
+      @Nullable FileTypeCache fileTypeCache) {
     this.playbackProperties = checkNotNull(mediaItem.playbackProperties);
     this.mediaItem = mediaItem;
     this.dataSourceFactory = dataSourceFactory;
@@ -267,6 +328,9 @@ public final class ProgressiveMediaSource extends BaseMediaSource
     this.drmSessionManager = drmSessionManager;
     this.loadableLoadErrorHandlingPolicy = loadableLoadErrorHandlingPolicy;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
+    this.loaderThreadPool = loaderThreadPool;
+    this.loaderPriority = loaderPriority;
+    this.fileTypeCache = fileTypeCache;
     this.timelineIsPlaceholder = true;
     this.timelineDurationUs = C.TIME_UNSET;
   }
@@ -316,7 +380,10 @@ public final class ProgressiveMediaSource extends BaseMediaSource
         this,
         allocator,
         playbackProperties.customCacheKey,
-        continueLoadingCheckIntervalBytes);
+        continueLoadingCheckIntervalBytes,
+        loaderThreadPool,
+        loaderPriority,
+        fileTypeCache);
   }
 
   @Override
@@ -33,7 +33,16 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-/** A queue of media sample data. */
+/**
+ * A queue of media sample data.
+ *
+ * <p>If the {@link Allocator} makes {@link Allocation#isDirect() direct} allocations, sample data
+ * is held outside of the Java heap, and is copied directly from the allocations into direct decoder
+ * input buffers. Data from a {@link DataReader} is read into direct allocations using {@link
+ * DataReader#read(ByteBuffer)}, so readers that support it, such as {@link
+ * com.google.android.exoplayer2.upstream.FileDataSource}, don't copy it through the Java heap
+ * either.
+ */
 /* package */ class SampleDataQueue {
 
   private static final int INITIAL_SCRATCH_SIZE = 32;
@@ -167,11 +176,21 @@ import java.util.Arrays;
 
   public int sampleData(DataReader input, int length, boolean allowEndOfInput) throws IOException {
     length = preAppend(length);
-    int bytesAppended =
-        input.read(
-            writeAllocationNode.allocation.data,
-            writeAllocationNode.translateOffset(totalBytesWritten),
-            length);
+    int bytesAppended;
+    @Nullable ByteBuffer writeBuffer = writeAllocationNode.writeBuffer;
+    if (writeBuffer == null) {
+      bytesAppended =
+          input.read(
+              writeAllocationNode.allocation.data,
+              writeAllocationNode.translateOffset(totalBytesWritten),
+              length);
+    } else {
+      int offset = writeAllocationNode.translateOffset(totalBytesWritten);
+      writeBuffer.clear();
+      writeBuffer.limit(offset + length);
+      writeBuffer.position(offset);
+      bytesAppended = input.read(writeBuffer);
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -185,10 +204,18 @@ import java.util.Arrays;
   public void sampleData(ParsableByteArray buffer, int length) {
     while (length > 0) {
       int bytesAppended = preAppend(length);
-      buffer.readBytes(
-          writeAllocationNode.allocation.data,
-          writeAllocationNode.translateOffset(totalBytesWritten),
-          bytesAppended);
+      @Nullable ByteBuffer writeBuffer = writeAllocationNode.writeBuffer;
+      if (writeBuffer == null) {
+        buffer.readBytes(
+            writeAllocationNode.allocation.data,
+            writeAllocationNode.translateOffset(totalBytesWritten),
+            bytesAppended);
+      } else {
+        writeBuffer.clear();
+        writeBuffer.position(writeAllocationNode.translateOffset(totalBytesWritten));
+        writeBuffer.put(buffer.getData(), buffer.getPosition(), bytesAppended);
+        buffer.skipBytes(bytesAppended);
+      }
       length -= bytesAppended;
       postAppend(bytesAppended);
     }
@@ -404,8 +431,16 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
-      Allocation allocation = allocationNode.allocation;
-      target.put(allocation.data, allocationNode.translateOffset(absolutePosition), toCopy);
+      int offset = allocationNode.translateOffset(absolutePosition);
+      @Nullable ByteBuffer readBuffer = allocationNode.readBuffer;
+      if (readBuffer == null) {
+        target.put(allocationNode.allocation.data, offset, toCopy);
+      } else {
+        readBuffer.clear();
+        readBuffer.limit(offset + toCopy);
+        readBuffer.position(offset);
+        target.put(readBuffer);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -430,13 +465,16 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = min(remaining, (int) (allocationNode.endPosition - absolutePosition));
-      Allocation allocation = allocationNode.allocation;
-      System.arraycopy(
-          allocation.data,
-          allocationNode.translateOffset(absolutePosition),
-          target,
-          length - remaining,
-          toCopy);
+      int offset = allocationNode.translateOffset(absolutePosition);
+      @Nullable ByteBuffer readBuffer = allocationNode.readBuffer;
+      if (readBuffer == null) {
+        System.arraycopy(
+            allocationNode.allocation.data, offset, target, length - remaining, toCopy);
+      } else {
+        readBuffer.clear();
+        readBuffer.position(offset);
+        readBuffer.get(target, length - remaining, toCopy);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == allocationNode.endPosition) {
@@ -469,6 +507,17 @@ import java.util.Arrays;
     public boolean wasInitialized;
     /** The {@link Allocation}, or {@code null} if the node is not initialized. */
     @Nullable public Allocation allocation;
+    /**
+     * A view of the {@link Allocation#buffer} of a direct {@link #allocation}, for use by the
+     * loading thread, or {@code null} if the node is not initialized or the allocation isn't direct.
+     */
+    @Nullable public ByteBuffer writeBuffer;
+    /**
+     * A view of the {@link Allocation#buffer} of a direct {@link #allocation}, for use by the
+     * consuming thread, or {@code null} if the node is not initialized or the allocation isn't
+     * direct.
+     */
+    @Nullable public ByteBuffer readBuffer;
     /**
      * The next {@link AllocationNode} in the list, or {@code null} if the node has not been
      * initialized. Remains set after {@link #clear()}.
@@ -493,13 +542,17 @@ import java.util.Arrays;
      */
     public void initialize(Allocation allocation, AllocationNode next) {
       this.allocation = allocation;
+      if (allocation.buffer != null) {
+        writeBuffer = allocation.buffer.duplicate();
+        readBuffer = allocation.buffer.duplicate();
+      }
       this.next = next;
       wasInitialized = true;
     }
 
     /**
-     * Gets the offset into the {@link #allocation}'s {@link Allocation#data} that corresponds to
-     * the specified absolute position.
+     * Gets the offset into the {@link #allocation}'s {@link Allocation#data}, or its {@link
+     * Allocation#buffer} if it's direct, that corresponds to the specified absolute position.
      *
      * @param absolutePosition The absolute position.
      * @return The corresponding offset into the allocation's data.
@@ -515,6 +568,8 @@ import java.util.Arrays;
      */
     public AllocationNode clear() {
       allocation = null;
+      writeBuffer = null;
+      readBuffer = null;
       AllocationNode temp = next;
       next = null;
       return temp;
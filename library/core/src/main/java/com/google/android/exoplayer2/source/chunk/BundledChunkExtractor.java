@@ -47,6 +47,7 @@ public final class BundledChunkExtractor implements ExtractorOutput, ChunkExtrac
   private final int primaryTrackType;
   private final Format primaryTrackManifestFormat;
   private final SparseArray<BindingTrackOutput> bindingTrackOutputs;
+  private final int readAheadBlockSize;
 
   private boolean extractorInitialized;
   @Nullable private TrackOutputProvider trackOutputProvider;
@@ -65,9 +66,34 @@ public final class BundledChunkExtractor implements ExtractorOutput, ChunkExtrac
    */
   public BundledChunkExtractor(
       Extractor extractor, int primaryTrackType, Format primaryTrackManifestFormat) {
+    this(
+        extractor,
+        primaryTrackType,
+        primaryTrackManifestFormat,
+        /* readAheadBlockSize= */ C.LENGTH_UNSET);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param extractor The extractor to wrap.
+   * @param primaryTrackType The type of the primary track. Typically one of the {@link
+   *     com.google.android.exoplayer2.C} {@code TRACK_TYPE_*} constants.
+   * @param primaryTrackManifestFormat A manifest defined {@link Format} whose data should be merged
+   *     into any sample {@link Format} output from the {@link Extractor} for the primary track.
+   * @param readAheadBlockSize The number of bytes that the inputs of the extractor should read at a
+   *     time when less is requested, or {@link C#LENGTH_UNSET} if they should read only the
+   *     requested data.
+   */
+  public BundledChunkExtractor(
+      Extractor extractor,
+      int primaryTrackType,
+      Format primaryTrackManifestFormat,
+      int readAheadBlockSize) {
     this.extractor = extractor;
     this.primaryTrackType = primaryTrackType;
     this.primaryTrackManifestFormat = primaryTrackManifestFormat;
+    this.readAheadBlockSize = readAheadBlockSize;
     bindingTrackOutputs = new SparseArray<>();
   }
 
@@ -109,6 +135,11 @@ public final class BundledChunkExtractor implements ExtractorOutput, ChunkExtrac
     extractor.release();
   }
 
+  @Override
+  public int getReadAheadBlockSize() {
+    return readAheadBlockSize;
+  }
+
   @Override
   public boolean read(ExtractorInput input) throws IOException {
     int result = extractor.read(input, POSITION_HOLDER);
@@ -77,6 +77,15 @@ public interface ChunkExtractor {
   /** Releases any held resources. */
   void release();
 
+  /**
+   * Returns the number of bytes that the inputs passed to {@link #read(ExtractorInput)} should read
+   * at a time when less is requested, or {@link C#LENGTH_UNSET} if they should read only the
+   * requested data.
+   */
+  default int getReadAheadBlockSize() {
+    return C.LENGTH_UNSET;
+  }
+
   /**
    * Reads from the given {@link ExtractorInput}.
    *
@@ -20,7 +20,6 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
 import com.google.android.exoplayer2.extractor.Extractor;
-import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.source.chunk.ChunkExtractor.TrackOutputProvider;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
@@ -38,6 +37,7 @@ public final class InitializationChunk extends Chunk {
   private @MonotonicNonNull TrackOutputProvider trackOutputProvider;
   private long nextLoadPosition;
   private volatile boolean loadCanceled;
+  private volatile long upstreamReadCount;
 
   /**
    * @param dataSource The source from which the data should be loaded.
@@ -70,6 +70,11 @@ public final class InitializationChunk extends Chunk {
     this.trackOutputProvider = trackOutputProvider;
   }
 
+  /** Returns the number of reads from the data source while loading the chunk. */
+  public long getUpstreamReadCount() {
+    return upstreamReadCount;
+  }
+
   // Loadable implementation.
 
   @Override
@@ -87,14 +92,18 @@ public final class InitializationChunk extends Chunk {
     try {
       // Create and open the input.
       DataSpec loadDataSpec = dataSpec.subrange(nextLoadPosition);
-      ExtractorInput input =
+      DefaultExtractorInput input =
           new DefaultExtractorInput(
-              dataSource, loadDataSpec.position, dataSource.open(loadDataSpec));
+              dataSource,
+              loadDataSpec.position,
+              dataSource.open(loadDataSpec),
+              chunkExtractor.getReadAheadBlockSize());
       // Load and decode the initialization data.
       try {
         while (!loadCanceled && chunkExtractor.read(input)) {}
       } finally {
         nextLoadPosition = input.getPosition() - dataSpec.position;
+        upstreamReadCount += input.getUpstreamReadCount();
       }
     } finally {
       Util.closeQuietly(dataSource);
@@ -15,8 +15,12 @@
  */
 package com.google.android.exoplayer2.upstream;
 
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+
 /**
- * An allocation within a byte array.
+ * An allocation within a byte array, or within a direct {@link ByteBuffer}.
  * <p>
  * The allocation's length is obtained by calling {@link Allocator#getIndividualAllocationLength()}
  * on the {@link Allocator} from which it was obtained.
@@ -25,12 +29,22 @@ public final class Allocation {
 
   /**
    * The array containing the allocated space. The allocated space might not be at the start of the
-   * array, and so {@link #offset} must be used when indexing into it.
+   * array, and so {@link #offset} must be used when indexing into it. Empty if the allocated space
+   * is in {@link #buffer}.
    */
   public final byte[] data;
 
   /**
-   * The offset of the allocated space in {@link #data}.
+   * The direct buffer containing the allocated space, or null if the allocated space is in {@link
+   * #data}. The allocated space might not be at the start of the buffer, and so {@link #offset}
+   * must be used when indexing into it. The buffer may be shared with other allocations, so its
+   * position and limit must not be modified. Use {@link ByteBuffer#duplicate()} to obtain a buffer
+   * whose position and limit can be modified.
+   */
+  @Nullable public final ByteBuffer buffer;
+
+  /**
+   * The offset of the allocated space in {@link #data}, or in {@link #buffer} if it's non-null.
    */
   public final int offset;
 
@@ -41,6 +55,22 @@ public final class Allocation {
   public Allocation(byte[] data, int offset) {
     this.data = data;
     this.offset = offset;
+    buffer = null;
+  }
+
+  /**
+   * @param buffer The direct buffer containing the allocated space.
+   * @param offset The offset of the allocated space in {@code buffer}.
+   */
+  public Allocation(ByteBuffer buffer, int offset) {
+    this.buffer = buffer;
+    this.offset = offset;
+    data = Util.EMPTY_BYTE_ARRAY;
+  }
+
+  /** Returns whether the allocated space is in a direct {@link #buffer}. */
+  public boolean isDirect() {
+    return buffer != null;
   }
 
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+/**
+ * Estimates bandwidth from the network transfers observed by a {@link DefaultBandwidthMeter}.
+ *
+ * <p>Transfers are identified by the {@link DataSource} performing them. Several transfers may be
+ * in progress at the same time, using different {@link DataSource DataSources}.
+ *
+ * <p>The meter calls all methods while holding its lock, so implementations don't need to be
+ * thread-safe. The times passed to the methods are taken from the meter's clock.
+ */
+public interface BandwidthEstimator {
+
+  /** Returned by {@link #getBandwidthEstimate()} when no estimate is available yet. */
+  long ESTIMATE_NOT_AVAILABLE = Long.MIN_VALUE;
+
+  /**
+   * Called when a transfer is being initialized, before a request is made.
+   *
+   * @param source The {@link DataSource} performing the transfer.
+   * @param nowMs The current time, in milliseconds.
+   */
+  void onTransferInitializing(DataSource source, long nowMs);
+
+  /**
+   * Called when a transfer starts, once a response has been received.
+   *
+   * @param source The {@link DataSource} performing the transfer.
+   * @param nowMs The current time, in milliseconds.
+   */
+  void onTransferStart(DataSource source, long nowMs);
+
+  /**
+   * Called when bytes have been transferred.
+   *
+   * @param source The {@link DataSource} performing the transfer.
+   * @param bytesTransferred The number of bytes transferred since the last call.
+   * @param nowMs The current time, in milliseconds.
+   */
+  void onBytesTransferred(DataSource source, int bytesTransferred, long nowMs);
+
+  /**
+   * Called when a transfer ends.
+   *
+   * @param source The {@link DataSource} performing the transfer.
+   * @param nowMs The current time, in milliseconds.
+   */
+  void onTransferEnd(DataSource source, long nowMs);
+
+  /**
+   * Returns the bandwidth estimate in bits per second, or {@link #ESTIMATE_NOT_AVAILABLE} if too
+   * little has been transferred for an estimate.
+   */
+  long getBandwidthEstimate();
+
+  /**
+   * Discards everything observed so far, for example because the network type changed. Transfers
+   * in progress continue to be reported, and are measured from this point on.
+   *
+   * @param nowMs The current time, in milliseconds.
+   */
+  void reset(long nowMs);
+}
@@ -20,11 +20,17 @@ import static java.lang.Math.max;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
 
 /**
  * Default implementation of {@link Allocator}.
+ *
+ * <p>Allocations can optionally be made in direct {@link ByteBuffer ByteBuffers}, which keeps
+ * buffered media out of the Java heap. Data in direct allocations can be copied directly into other
+ * direct buffers, such as codec input buffers, but can't be accessed through {@link
+ * Allocation#data}.
  */
 public final class DefaultAllocator implements Allocator {
 
@@ -32,7 +38,9 @@ public final class DefaultAllocator implements Allocator {
 
   private final boolean trimOnReset;
   private final int individualAllocationSize;
+  private final boolean useDirectBuffers;
   @Nullable private final byte[] initialAllocationBlock;
+  @Nullable private final ByteBuffer initialAllocationBuffer;
   private final Allocation[] singleAllocationReleaseHolder;
 
   private int targetBufferSize;
@@ -63,20 +71,53 @@ public final class DefaultAllocator implements Allocator {
    */
   public DefaultAllocator(boolean trimOnReset, int individualAllocationSize,
       int initialAllocationCount) {
+    this(
+        trimOnReset,
+        individualAllocationSize,
+        initialAllocationCount,
+        /* useDirectBuffers= */ false);
+  }
+
+  /**
+   * Constructs an instance with some {@link Allocation}s created up front, optionally making
+   * allocations in direct {@link ByteBuffer ByteBuffers}.
+   *
+   * <p>Note: {@link Allocation}s created up front will never be discarded by {@link #trim()}. If
+   * {@code useDirectBuffers} is true, they're made in a single direct buffer.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationCount The number of allocations to create up front.
+   * @param useDirectBuffers Whether allocations are made in direct {@link ByteBuffer ByteBuffers}
+   *     rather than in byte arrays.
+   */
+  public DefaultAllocator(
+      boolean trimOnReset,
+      int individualAllocationSize,
+      int initialAllocationCount,
+      boolean useDirectBuffers) {
     Assertions.checkArgument(individualAllocationSize > 0);
     Assertions.checkArgument(initialAllocationCount >= 0);
     this.trimOnReset = trimOnReset;
     this.individualAllocationSize = individualAllocationSize;
+    this.useDirectBuffers = useDirectBuffers;
     this.availableCount = initialAllocationCount;
     this.availableAllocations = new Allocation[initialAllocationCount + AVAILABLE_EXTRA_CAPACITY];
-    if (initialAllocationCount > 0) {
-      initialAllocationBlock = new byte[initialAllocationCount * individualAllocationSize];
-      for (int i = 0; i < initialAllocationCount; i++) {
-        int allocationOffset = i * individualAllocationSize;
-        availableAllocations[i] = new Allocation(initialAllocationBlock, allocationOffset);
-      }
-    } else {
-      initialAllocationBlock = null;
+    initialAllocationBlock =
+        initialAllocationCount > 0 && !useDirectBuffers
+            ? new byte[initialAllocationCount * individualAllocationSize]
+            : null;
+    initialAllocationBuffer =
+        initialAllocationCount > 0 && useDirectBuffers
+            ? ByteBuffer.allocateDirect(initialAllocationCount * individualAllocationSize)
+            : null;
+    for (int i = 0; i < initialAllocationCount; i++) {
+      int allocationOffset = i * individualAllocationSize;
+      availableAllocations[i] =
+          initialAllocationBuffer != null
+              ? new Allocation(initialAllocationBuffer, allocationOffset)
+              : new Allocation(Assertions.checkNotNull(initialAllocationBlock), allocationOffset);
     }
     singleAllocationReleaseHolder = new Allocation[1];
   }
@@ -102,6 +143,8 @@ public final class DefaultAllocator implements Allocator {
     if (availableCount > 0) {
       allocation = Assertions.checkNotNull(availableAllocations[--availableCount]);
       availableAllocations[availableCount] = null;
+    } else if (useDirectBuffers) {
+      allocation = new Allocation(ByteBuffer.allocateDirect(individualAllocationSize), 0);
     } else {
       allocation = new Allocation(new byte[individualAllocationSize], 0);
     }
@@ -139,7 +182,7 @@ public final class DefaultAllocator implements Allocator {
       return;
     }
 
-    if (initialAllocationBlock != null) {
+    if (initialAllocationBlock != null || initialAllocationBuffer != null) {
       // Some allocations are backed by an initial block. We need to make sure that we hold onto all
       // such allocations. Re-order the available allocations so that the ones backed by the initial
       // block come first.
@@ -147,11 +190,11 @@ public final class DefaultAllocator implements Allocator {
       int highIndex = availableCount - 1;
       while (lowIndex <= highIndex) {
         Allocation lowAllocation = Assertions.checkNotNull(availableAllocations[lowIndex]);
-        if (lowAllocation.data == initialAllocationBlock) {
+        if (isInitialAllocation(lowAllocation)) {
           lowIndex++;
         } else {
           Allocation highAllocation = Assertions.checkNotNull(availableAllocations[highIndex]);
-          if (highAllocation.data != initialAllocationBlock) {
+          if (!isInitialAllocation(highAllocation)) {
             highIndex--;
           } else {
             availableAllocations[lowIndex++] = highAllocation;
@@ -182,4 +225,9 @@ public final class DefaultAllocator implements Allocator {
     return individualAllocationSize;
   }
 
+  private boolean isInitialAllocation(Allocation allocation) {
+    return allocation.isDirect()
+        ? allocation.buffer == initialAllocationBuffer
+        : allocation.data == initialAllocationBlock;
+  }
 }
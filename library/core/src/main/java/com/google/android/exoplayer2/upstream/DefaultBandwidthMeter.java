@@ -27,7 +27,6 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.BandwidthMeter.EventListener.EventDispatcher;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
-import com.google.android.exoplayer2.util.SlidingPercentile;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
@@ -42,10 +41,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 /**
  * Estimates bandwidth by listening to data transfers.
  *
- * <p>The bandwidth estimate is calculated using a {@link SlidingPercentile} and is updated each
- * time a transfer ends. The initial estimate is based on the current operator's network country
- * code or the locale of the user, as well as the network connection type. This can be configured in
- * the {@link Builder}.
+ * <p>The bandwidth estimate is calculated by a {@link BandwidthEstimator}, by default a {@link
+ * SlidingPercentileBandwidthEstimator}, and is updated as data is transferred. The initial estimate
+ * is based on the current operator's network country code or the locale of the user, as well as the
+ * network connection type. This can be configured in the {@link Builder}.
  */
 public final class DefaultBandwidthMeter implements BandwidthMeter, TransferListener {
 
@@ -105,6 +104,7 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
 
     private Map<Integer, Long> initialBitrateEstimates;
     private int slidingWindowMaxWeight;
+    @Nullable private BandwidthEstimator bandwidthEstimator;
     private Clock clock;
     private boolean resetOnNetworkTypeChange;
 
@@ -123,7 +123,8 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     }
 
     /**
-     * Sets the maximum weight for the sliding window.
+     * Sets the maximum weight for the sliding window. Ignored if a {@link BandwidthEstimator} is set
+     * with {@link #setBandwidthEstimator(BandwidthEstimator)}.
      *
      * @param slidingWindowMaxWeight The maximum weight for the sliding window.
      * @return This builder.
@@ -133,6 +134,20 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return this;
     }
 
+    /**
+     * Sets the {@link BandwidthEstimator} that estimates bandwidth from data transfers. The default
+     * is a {@link SlidingPercentileBandwidthEstimator}.
+     *
+     * <p>The estimator must not be used by another bandwidth meter.
+     *
+     * @param bandwidthEstimator The {@link BandwidthEstimator}.
+     * @return This builder.
+     */
+    public Builder setBandwidthEstimator(BandwidthEstimator bandwidthEstimator) {
+      this.bandwidthEstimator = bandwidthEstimator;
+      return this;
+    }
+
     /**
      * Sets the initial bitrate estimate in bits per second that should be assumed when a bandwidth
      * estimate is unavailable.
@@ -207,7 +222,9 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return new DefaultBandwidthMeter(
           context,
           initialBitrateEstimates,
-          slidingWindowMaxWeight,
+          bandwidthEstimator != null
+              ? bandwidthEstimator
+              : new SlidingPercentileBandwidthEstimator(slidingWindowMaxWeight),
           clock,
           resetOnNetworkTypeChange);
     }
@@ -259,13 +276,10 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     return singletonInstance;
   }
 
-  private static final int ELAPSED_MILLIS_FOR_ESTIMATE = 2000;
-  private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 512 * 1024;
-
   @Nullable private final Context context;
   private final ImmutableMap<Integer, Long> initialBitrateEstimates;
   private final EventDispatcher eventDispatcher;
-  private final SlidingPercentile slidingPercentile;
+  private final BandwidthEstimator bandwidthEstimator;
   private final Clock clock;
 
   private int streamCount;
@@ -273,8 +287,6 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   private long sampleBytesTransferred;
 
   @C.NetworkType private int networkType;
-  private long totalElapsedTimeMs;
-  private long totalBytesTransferred;
   private long bitrateEstimate;
   private long lastReportedBitrateEstimate;
 
@@ -287,7 +299,7 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     this(
         /* context= */ null,
         /* initialBitrateEstimates= */ ImmutableMap.of(),
-        DEFAULT_SLIDING_WINDOW_MAX_WEIGHT,
+        new SlidingPercentileBandwidthEstimator(DEFAULT_SLIDING_WINDOW_MAX_WEIGHT),
         Clock.DEFAULT,
         /* resetOnNetworkTypeChange= */ false);
   }
@@ -295,13 +307,13 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   private DefaultBandwidthMeter(
       @Nullable Context context,
       Map<Integer, Long> initialBitrateEstimates,
-      int maxWeight,
+      BandwidthEstimator bandwidthEstimator,
       Clock clock,
       boolean resetOnNetworkTypeChange) {
     this.context = context == null ? null : context.getApplicationContext();
     this.initialBitrateEstimates = ImmutableMap.copyOf(initialBitrateEstimates);
     this.eventDispatcher = new EventDispatcher();
-    this.slidingPercentile = new SlidingPercentile(maxWeight);
+    this.bandwidthEstimator = bandwidthEstimator;
     this.clock = clock;
     // Set the initial network type and bitrate estimate
     networkType = context == null ? C.NETWORK_TYPE_UNKNOWN : Util.getNetworkType(context);
@@ -351,8 +363,12 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   }
 
   @Override
-  public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
-    // Do nothing.
+  public synchronized void onTransferInitializing(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
+      return;
+    }
+    bandwidthEstimator.onTransferInitializing(source, clock.elapsedRealtime());
   }
 
   @Override
@@ -361,10 +377,12 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     if (!isTransferAtFullNetworkSpeed(dataSpec, isNetwork)) {
       return;
     }
+    long nowMs = clock.elapsedRealtime();
     if (streamCount == 0) {
-      sampleStartTimeMs = clock.elapsedRealtime();
+      sampleStartTimeMs = nowMs;
     }
     streamCount++;
+    bandwidthEstimator.onTransferStart(source, nowMs);
   }
 
   @Override
@@ -374,6 +392,8 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return;
     }
     sampleBytesTransferred += bytes;
+    bandwidthEstimator.onBytesTransferred(source, bytes, clock.elapsedRealtime());
+    updateBitrateEstimate();
   }
 
   @Override
@@ -383,16 +403,10 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     }
     Assertions.checkState(streamCount > 0);
     long nowMs = clock.elapsedRealtime();
+    bandwidthEstimator.onTransferEnd(source, nowMs);
+    updateBitrateEstimate();
     int sampleElapsedTimeMs = (int) (nowMs - sampleStartTimeMs);
-    totalElapsedTimeMs += sampleElapsedTimeMs;
-    totalBytesTransferred += sampleBytesTransferred;
     if (sampleElapsedTimeMs > 0) {
-      float bitsPerSecond = (sampleBytesTransferred * 8000f) / sampleElapsedTimeMs;
-      slidingPercentile.addSample((int) Math.sqrt(sampleBytesTransferred), bitsPerSecond);
-      if (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
-          || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
-        bitrateEstimate = (long) slidingPercentile.getPercentile(0.5f);
-      }
       maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
       sampleStartTimeMs = nowMs;
       sampleBytesTransferred = 0;
@@ -426,9 +440,14 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     // Reset the remainder of the state.
     sampleStartTimeMs = nowMs;
     sampleBytesTransferred = 0;
-    totalBytesTransferred = 0;
-    totalElapsedTimeMs = 0;
-    slidingPercentile.reset();
+    bandwidthEstimator.reset(nowMs);
+  }
+
+  private void updateBitrateEstimate() {
+    long bandwidthEstimate = bandwidthEstimator.getBandwidthEstimate();
+    if (bandwidthEstimate != BandwidthEstimator.ESTIMATE_NOT_AVAILABLE) {
+      bitrateEstimate = bandwidthEstimate;
+    }
   }
 
   private void maybeNotifyBandwidthSample(
@@ -23,6 +23,7 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -206,6 +207,11 @@ public final class DefaultDataSource implements DataSource {
     return Assertions.checkNotNull(dataSource).read(buffer, offset, readLength);
   }
 
+  @Override
+  public int read(ByteBuffer target) throws IOException {
+    return Assertions.checkNotNull(dataSource).read(target);
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
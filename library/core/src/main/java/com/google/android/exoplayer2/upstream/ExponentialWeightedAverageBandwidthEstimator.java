@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * A {@link BandwidthEstimator} that keeps two exponentially weighted moving averages of the
+ * throughput, one with a short half-life and one with a long half-life, and estimates the lower of
+ * the two.
+ *
+ * <p>The short half-life average follows a drop in throughput within a few seconds of transfer
+ * time, while the long half-life average keeps a short burst of throughput from raising the
+ * estimate. The half-lives are measured in time spent transferring, so that idle periods don't
+ * decay the averages.
+ *
+ * <p>Samples are taken in the same way as by {@link SlidingPercentileBandwidthEstimator}. Samples
+ * of fewer than {@link #DEFAULT_MIN_SAMPLE_BYTES} bytes are ignored, since the throughput of small
+ * transfers mostly reflects latency.
+ */
+public final class ExponentialWeightedAverageBandwidthEstimator implements BandwidthEstimator {
+
+  /** The default half-life of the fast moving average, in milliseconds. */
+  public static final long DEFAULT_FAST_HALF_LIFE_MS = 2_000;
+  /** The default half-life of the slow moving average, in milliseconds. */
+  public static final long DEFAULT_SLOW_HALF_LIFE_MS = 5_000;
+  /** The default minimum number of bytes in a sample for it to be taken into account. */
+  public static final int DEFAULT_MIN_SAMPLE_BYTES = 16 * 1024;
+
+  private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 128 * 1024;
+
+  private final MovingAverage fastAverage;
+  private final MovingAverage slowAverage;
+  private final int minSampleBytes;
+
+  private int streamCount;
+  private long sampleStartTimeMs;
+  private long sampleBytesTransferred;
+  private long totalBytesTransferred;
+
+  /** Creates an instance with default half-lives. */
+  public ExponentialWeightedAverageBandwidthEstimator() {
+    this(DEFAULT_FAST_HALF_LIFE_MS, DEFAULT_SLOW_HALF_LIFE_MS, DEFAULT_MIN_SAMPLE_BYTES);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param fastHalfLifeMs The half-life of the fast moving average, in milliseconds.
+   * @param slowHalfLifeMs The half-life of the slow moving average, in milliseconds.
+   * @param minSampleBytes The minimum number of bytes in a sample for it to be taken into account.
+   */
+  public ExponentialWeightedAverageBandwidthEstimator(
+      long fastHalfLifeMs, long slowHalfLifeMs, int minSampleBytes) {
+    Assertions.checkArgument(fastHalfLifeMs > 0 && fastHalfLifeMs <= slowHalfLifeMs);
+    fastAverage = new MovingAverage(fastHalfLifeMs);
+    slowAverage = new MovingAverage(slowHalfLifeMs);
+    this.minSampleBytes = minSampleBytes;
+  }
+
+  @Override
+  public void onTransferInitializing(DataSource source, long nowMs) {
+    // Do nothing.
+  }
+
+  @Override
+  public void onTransferStart(DataSource source, long nowMs) {
+    if (streamCount == 0) {
+      sampleStartTimeMs = nowMs;
+    }
+    streamCount++;
+  }
+
+  @Override
+  public void onBytesTransferred(DataSource source, int bytesTransferred, long nowMs) {
+    sampleBytesTransferred += bytesTransferred;
+  }
+
+  @Override
+  public void onTransferEnd(DataSource source, long nowMs) {
+    Assertions.checkState(streamCount > 0);
+    long sampleElapsedTimeMs = nowMs - sampleStartTimeMs;
+    if (sampleElapsedTimeMs > 0) {
+      addSample(sampleBytesTransferred, sampleElapsedTimeMs);
+      sampleStartTimeMs = nowMs;
+      sampleBytesTransferred = 0;
+    } // Else any sample bytes transferred will be carried forward into the next sample.
+    streamCount--;
+  }
+
+  @Override
+  public long getBandwidthEstimate() {
+    if (totalBytesTransferred < BYTES_TRANSFERRED_FOR_ESTIMATE || fastAverage.isEmpty()) {
+      return ESTIMATE_NOT_AVAILABLE;
+    }
+    return Math.round(Math.min(fastAverage.getAverage(), slowAverage.getAverage()));
+  }
+
+  @Override
+  public void reset(long nowMs) {
+    fastAverage.reset();
+    slowAverage.reset();
+    sampleStartTimeMs = nowMs;
+    sampleBytesTransferred = 0;
+    totalBytesTransferred = 0;
+  }
+
+  /**
+   * Adds a sample to the moving averages.
+   *
+   * @param bytes The number of bytes transferred.
+   * @param elapsedTimeMs The time taken to transfer the bytes, in milliseconds. Must be positive.
+   */
+  /* package */ void addSample(long bytes, long elapsedTimeMs) {
+    totalBytesTransferred += bytes;
+    if (bytes < minSampleBytes) {
+      return;
+    }
+    double bitsPerSecond = bytes * 8000d / elapsedTimeMs;
+    fastAverage.addSample(bitsPerSecond, elapsedTimeMs);
+    slowAverage.addSample(bitsPerSecond, elapsedTimeMs);
+  }
+
+  private static final class MovingAverage {
+
+    private final double halfLifeMs;
+
+    private double average;
+    private long totalWeightMs;
+
+    public MovingAverage(long halfLifeMs) {
+      this.halfLifeMs = halfLifeMs;
+    }
+
+    public void addSample(double value, long weightMs) {
+      double alpha = Math.pow(0.5, weightMs / halfLifeMs);
+      average = alpha * average + (1 - alpha) * value;
+      totalWeightMs += weightMs;
+    }
+
+    public boolean isEmpty() {
+      return totalWeightMs == 0;
+    }
+
+    public double getAverage() {
+      // The average starts at zero, which biases it low until enough samples have been added.
+      // Dividing by the total weight of the samples added so far removes this bias.
+      return average / (1 - Math.pow(0.5, totalWeightMs / halfLifeMs));
+    }
+
+    public void reset() {
+      average = 0;
+      totalWeightMs = 0;
+    }
+  }
+}
@@ -27,8 +27,14 @@ import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
-/** A {@link DataSource} for reading local files. */
+/**
+ * A {@link DataSource} for reading local files.
+ *
+ * <p>Reads into direct {@link ByteBuffer ByteBuffers} go through the file's channel, so that data
+ * isn't copied through the Java heap.
+ */
 public final class FileDataSource extends BaseDataSource {
 
   /** Thrown when a {@link FileDataSource} encounters an error reading a file. */
@@ -126,6 +132,38 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  @Override
+  public int read(ByteBuffer target) throws IOException {
+    if (target.hasArray()) {
+      // Reading a file channel into a heap buffer goes through a temporary direct buffer.
+      return super.read(target);
+    }
+    int readLength = target.remaining();
+    if (readLength == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    } else {
+      int bytesRead;
+      int limit = target.limit();
+      try {
+        target.limit(target.position() + (int) min(bytesRemaining, readLength));
+        bytesRead = castNonNull(file).getChannel().read(target);
+      } catch (IOException e) {
+        throw new FileDataSourceException(e);
+      } finally {
+        target.limit(limit);
+      }
+
+      if (bytesRead > 0) {
+        bytesRemaining -= bytesRead;
+        bytesTransferred(bytesRead);
+      }
+
+      return bytesRead;
+    }
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
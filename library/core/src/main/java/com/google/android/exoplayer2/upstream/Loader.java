@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -204,7 +205,8 @@ public final class Loader implements LoaderErrorThrower {
     }
   }
 
-  private final ExecutorService downloadExecutorService;
+  private final Executor downloadExecutor;
+  @Nullable private final ExecutorService downloadExecutorService;
 
   @Nullable private LoadTask<? extends Loadable> currentTask;
   @Nullable private IOException fatalError;
@@ -214,6 +216,46 @@ public final class Loader implements LoaderErrorThrower {
    */
   public Loader(String threadName) {
     this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    this.downloadExecutor = downloadExecutorService;
+  }
+
+  /**
+   * Creates a loader that loads on the threads of a shared {@link LoaderThreadPool}, rather than on
+   * a thread of its own.
+   *
+   * @param threadPool The {@link LoaderThreadPool}.
+   * @param priority The priority of the loader's loads relative to those of other loaders using the
+   *     same pool. Higher values run first. {@link C#PRIORITY_PLAYBACK} is suitable for loads
+   *     needed for playback.
+   * @param loadsMayBlock Whether the loader's loads may block while waiting to be allowed to
+   *     continue loading, in which case each load runs on a dedicated thread of the pool.
+   */
+  public Loader(LoaderThreadPool threadPool, int priority, boolean loadsMayBlock) {
+    this.downloadExecutorService = null;
+    this.downloadExecutor = threadPool.createSerialExecutor(priority, loadsMayBlock);
+  }
+
+  /**
+   * Creates a loader that loads on the threads of a shared {@link LoaderThreadPool} if one is
+   * given, or on a thread of its own otherwise.
+   *
+   * @param threadName A name for the loader's thread, if it has its own.
+   * @param threadPool The {@link LoaderThreadPool}, or null if the loader should have its own
+   *     thread.
+   * @param priority The priority of the loader's loads, if it uses a {@link LoaderThreadPool}. See
+   *     {@link #Loader(LoaderThreadPool, int, boolean)}.
+   * @param loadsMayBlock Whether the loader's loads may block while waiting to be allowed to
+   *     continue loading. See {@link #Loader(LoaderThreadPool, int, boolean)}.
+   * @return The loader.
+   */
+  public static Loader create(
+      String threadName,
+      @Nullable LoaderThreadPool threadPool,
+      int priority,
+      boolean loadsMayBlock) {
+    return threadPool != null
+        ? new Loader(threadPool, priority, loadsMayBlock)
+        : new Loader(threadName);
   }
 
   /**
@@ -295,9 +337,11 @@ public final class Loader implements LoaderErrorThrower {
       currentTask.cancel(true);
     }
     if (callback != null) {
-      downloadExecutorService.execute(new ReleaseTask(callback));
+      downloadExecutor.execute(new ReleaseTask(callback));
+    }
+    if (downloadExecutorService != null) {
+      downloadExecutorService.shutdown();
     }
-    downloadExecutorService.shutdown();
   }
 
   // LoaderErrorThrower implementation.
@@ -417,25 +461,24 @@ public final class Loader implements LoaderErrorThrower {
             TraceUtil.endSection();
           }
         }
-        synchronized (this) {
-          executorThread = null;
-          // Clear the interrupted flag if set, to avoid it leaking into a subsequent task.
-          Thread.interrupted();
-        }
+        clearExecutorThread();
         if (!released) {
           sendEmptyMessage(MSG_FINISH);
         }
       } catch (IOException e) {
+        clearExecutorThread();
         if (!released) {
           obtainMessage(MSG_IO_EXCEPTION, e).sendToTarget();
         }
       } catch (Exception e) {
+        clearExecutorThread();
         // This should never happen, but handle it anyway.
         Log.e(TAG, "Unexpected exception loading stream", e);
         if (!released) {
           obtainMessage(MSG_IO_EXCEPTION, new UnexpectedLoaderException(e)).sendToTarget();
         }
       } catch (OutOfMemoryError e) {
+        clearExecutorThread();
         // This can occur if a stream is malformed in a way that causes an extractor to think it
         // needs to allocate a large amount of memory. We don't want the process to die in this
         // case, but we do want the playback to fail.
@@ -444,6 +487,7 @@ public final class Loader implements LoaderErrorThrower {
           obtainMessage(MSG_IO_EXCEPTION, new UnexpectedLoaderException(e)).sendToTarget();
         }
       } catch (Error e) {
+        clearExecutorThread();
         // We'd hope that the platform would kill the process if an Error is thrown here, but the
         // executor may catch the error (b/20616433). Throw it here, but also pass and throw it from
         // the handler thread so that the process dies even if the executor behaves in this way.
@@ -508,9 +552,21 @@ public final class Loader implements LoaderErrorThrower {
       }
     }
 
+    /**
+     * Stops {@link #cancel(boolean)} from interrupting the thread that ran the load, which may go
+     * on to run other tasks.
+     */
+    private void clearExecutorThread() {
+      synchronized (this) {
+        executorThread = null;
+        // Clear the interrupted flag if set, to avoid it leaking into a subsequent task.
+        Thread.interrupted();
+      }
+    }
+
     private void execute() {
       currentError = null;
-      downloadExecutorService.execute(Assertions.checkNotNull(currentTask));
+      downloadExecutor.execute(Assertions.checkNotNull(currentTask));
     }
 
     private void finish() {
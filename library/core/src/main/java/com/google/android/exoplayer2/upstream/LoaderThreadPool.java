@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of threads that can be shared by many {@link Loader Loaders}, so that each
+ * {@link Loader} doesn't need a thread of its own.
+ *
+ * <p>Each {@link Loader} still runs its loads one at a time and in order. When there are more
+ * {@link Loader Loaders} with loads to run than there are threads, loads of {@link Loader Loaders}
+ * with a higher priority run first, and {@link Loader Loaders} with the same priority take turns.
+ *
+ * <p>A load holds a thread until it completes or is canceled. Some loads, such as those of
+ * progressive media, also hold their thread while waiting to be allowed to continue loading. {@link
+ * Loader Loaders} whose loads may block like this run them on dedicated threads, which don't count
+ * towards the maximum, so that they can't stop the loads of other {@link Loader Loaders} from
+ * running. Dedicated threads are reused by other such {@link Loader Loaders} once the load that
+ * held them ends.
+ *
+ * <p>Threads are created when needed, up to the maximum for the shared threads, and are stopped
+ * after they've been idle for a while.
+ */
+public final class LoaderThreadPool {
+
+  /** The default maximum number of threads. */
+  public static final int DEFAULT_MAX_THREAD_COUNT = 8;
+
+  private static final long KEEP_ALIVE_TIME_MS = 10_000;
+
+  private final ThreadPoolExecutor threadPoolExecutor;
+  private final ThreadPoolExecutor blockingTaskExecutor;
+  private final AtomicLong taskSequenceNumber;
+
+  /**
+   * Creates an instance with {@link #DEFAULT_MAX_THREAD_COUNT} threads at most.
+   *
+   * @param threadName A name for the pool's threads, to which a thread index is appended.
+   */
+  public LoaderThreadPool(String threadName) {
+    this(threadName, DEFAULT_MAX_THREAD_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param threadName A name for the pool's threads, to which a thread index is appended.
+   * @param maxThreadCount The maximum number of threads.
+   */
+  public LoaderThreadPool(String threadName, int maxThreadCount) {
+    Assertions.checkArgument(maxThreadCount > 0);
+    AtomicInteger threadIndex = new AtomicInteger();
+    ThreadFactory threadFactory =
+        runnable -> new Thread(runnable, threadName + ":" + threadIndex.getAndIncrement());
+    threadPoolExecutor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ maxThreadCount,
+            /* maximumPoolSize= */ maxThreadCount,
+            KEEP_ALIVE_TIME_MS,
+            TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(),
+            threadFactory);
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    // Each serial executor runs one task at a time, so this uses at most one thread per executor
+    // whose tasks may block.
+    blockingTaskExecutor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ 0,
+            /* maximumPoolSize= */ Integer.MAX_VALUE,
+            KEEP_ALIVE_TIME_MS,
+            TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(),
+            threadFactory);
+    taskSequenceNumber = new AtomicLong();
+  }
+
+  /** Returns the number of threads currently in the pool, including dedicated threads. */
+  public int getThreadCount() {
+    return threadPoolExecutor.getPoolSize() + blockingTaskExecutor.getPoolSize();
+  }
+
+  /**
+   * Creates an {@link Executor} for a single {@link Loader}, or for another user of the pool, which
+   * runs tasks one at a time, in the order in which they're given to it, on the pool's threads.
+   * Users that need to run several tasks at the same time can create an executor for each of them.
+   *
+   * @param priority The priority of the tasks. Higher values run first. {@link
+   *     C#PRIORITY_PLAYBACK} is suitable for loads needed for playback. Ignored if {@code
+   *     tasksMayBlock} is true.
+   * @param tasksMayBlock Whether the tasks may block while waiting for something other than data,
+   *     in which case they run on dedicated threads rather than on the shared ones.
+   */
+  public Executor createSerialExecutor(int priority, boolean tasksMayBlock) {
+    return new SerialExecutor(
+        priority, tasksMayBlock ? blockingTaskExecutor : threadPoolExecutor);
+  }
+
+  private final class SerialExecutor implements Executor {
+
+    private final int priority;
+    private final ThreadPoolExecutor targetExecutor;
+
+    @GuardedBy("this")
+    private final ArrayDeque<Runnable> pendingTasks;
+
+    @GuardedBy("this")
+    private boolean running;
+
+    public SerialExecutor(int priority, ThreadPoolExecutor targetExecutor) {
+      this.priority = priority;
+      this.targetExecutor = targetExecutor;
+      pendingTasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      synchronized (this) {
+        if (running) {
+          pendingTasks.add(task);
+          return;
+        }
+        running = true;
+      }
+      submit(task);
+    }
+
+    private void submit(Runnable task) {
+      targetExecutor.execute(
+          new PrioritizedTask(priority, taskSequenceNumber.getAndIncrement(), task, this));
+    }
+
+    private void onTaskFinished() {
+      @Nullable Runnable nextTask;
+      synchronized (this) {
+        nextTask = pendingTasks.poll();
+        if (nextTask == null) {
+          running = false;
+          return;
+        }
+      }
+      // Queue the next task behind those of other executors with the same priority, so that they
+      // take turns.
+      submit(nextTask);
+    }
+  }
+
+  private static final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+    private final int priority;
+    private final long sequenceNumber;
+    private final Runnable task;
+    private final SerialExecutor executor;
+
+    public PrioritizedTask(
+        int priority, long sequenceNumber, Runnable task, SerialExecutor executor) {
+      this.priority = priority;
+      this.sequenceNumber = sequenceNumber;
+      this.task = task;
+      this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+      try {
+        task.run();
+      } finally {
+        // Clear the interrupted flag if set, to avoid it leaking into another executor's task.
+        Thread.interrupted();
+        executor.onTaskFinished();
+      }
+    }
+
+    @Override
+    public int compareTo(PrioritizedTask other) {
+      if (priority != other.priority) {
+        return priority > other.priority ? -1 : 1;
+      }
+      return Long.compare(sequenceNumber, other.sequenceNumber);
+    }
+  }
+}
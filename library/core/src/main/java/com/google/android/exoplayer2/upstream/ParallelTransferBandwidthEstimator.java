@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.upstream.ExponentialWeightedAverageBandwidthEstimator.DEFAULT_FAST_HALF_LIFE_MS;
+import static com.google.android.exoplayer2.upstream.ExponentialWeightedAverageBandwidthEstimator.DEFAULT_MIN_SAMPLE_BYTES;
+import static com.google.android.exoplayer2.upstream.ExponentialWeightedAverageBandwidthEstimator.DEFAULT_SLOW_HALF_LIFE_MS;
+
+import java.util.HashSet;
+
+/**
+ * A {@link BandwidthEstimator} for transfers that run in parallel, such as the parts of a media
+ * file requested with several range requests at the same time.
+ *
+ * <p>The estimator tracks each transfer that's in progress. The time during which at least one
+ * transfer is in progress is split into windows of at least {@link
+ * #DEFAULT_MIN_SAMPLE_DURATION_MS}, and the bytes of all transfers in a window make up a sample.
+ * Samples are therefore taken while transfers are in progress, rather than only when a transfer
+ * ends, and aren't cut short by one of several parallel transfers ending. The samples are averaged
+ * in the same way as by {@link ExponentialWeightedAverageBandwidthEstimator}.
+ */
+public final class ParallelTransferBandwidthEstimator implements BandwidthEstimator {
+
+  /** The default minimum duration of a sample, in milliseconds. */
+  public static final long DEFAULT_MIN_SAMPLE_DURATION_MS = 250;
+
+  private final ExponentialWeightedAverageBandwidthEstimator averageEstimator;
+  private final HashSet<DataSource> activeTransfers;
+  private final long minSampleDurationMs;
+
+  private long sampleStartTimeMs;
+  private long sampleBytesTransferred;
+
+  /** Creates an instance with default parameters. */
+  public ParallelTransferBandwidthEstimator() {
+    this(DEFAULT_MIN_SAMPLE_DURATION_MS, DEFAULT_FAST_HALF_LIFE_MS, DEFAULT_SLOW_HALF_LIFE_MS);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param minSampleDurationMs The minimum duration of a sample taken while transfers are in
+   *     progress, in milliseconds.
+   * @param fastHalfLifeMs The half-life of the fast moving average, in milliseconds.
+   * @param slowHalfLifeMs The half-life of the slow moving average, in milliseconds.
+   */
+  public ParallelTransferBandwidthEstimator(
+      long minSampleDurationMs, long fastHalfLifeMs, long slowHalfLifeMs) {
+    this.minSampleDurationMs = minSampleDurationMs;
+    averageEstimator =
+        new ExponentialWeightedAverageBandwidthEstimator(
+            fastHalfLifeMs, slowHalfLifeMs, DEFAULT_MIN_SAMPLE_BYTES);
+    activeTransfers = new HashSet<>();
+  }
+
+  /** Returns the number of transfers in progress. */
+  public int getActiveTransferCount() {
+    return activeTransfers.size();
+  }
+
+  @Override
+  public void onTransferInitializing(DataSource source, long nowMs) {
+    // Do nothing.
+  }
+
+  @Override
+  public void onTransferStart(DataSource source, long nowMs) {
+    if (activeTransfers.isEmpty()) {
+      sampleStartTimeMs = nowMs;
+    }
+    activeTransfers.add(source);
+  }
+
+  @Override
+  public void onBytesTransferred(DataSource source, int bytesTransferred, long nowMs) {
+    if (!activeTransfers.contains(source)) {
+      return;
+    }
+    sampleBytesTransferred += bytesTransferred;
+    if (nowMs - sampleStartTimeMs >= minSampleDurationMs
+        && sampleBytesTransferred >= DEFAULT_MIN_SAMPLE_BYTES) {
+      endSample(nowMs);
+    }
+  }
+
+  @Override
+  public void onTransferEnd(DataSource source, long nowMs) {
+    if (!activeTransfers.remove(source)) {
+      return;
+    }
+    // The sample continues for as long as other transfers are in progress.
+    if (activeTransfers.isEmpty() && nowMs > sampleStartTimeMs) {
+      endSample(nowMs);
+    }
+  }
+
+  @Override
+  public long getBandwidthEstimate() {
+    return averageEstimator.getBandwidthEstimate();
+  }
+
+  @Override
+  public void reset(long nowMs) {
+    averageEstimator.reset(nowMs);
+    sampleStartTimeMs = nowMs;
+    sampleBytesTransferred = 0;
+  }
+
+  private void endSample(long nowMs) {
+    averageEstimator.addSample(sampleBytesTransferred, nowMs - sampleStartTimeMs);
+    sampleStartTimeMs = nowMs;
+    sampleBytesTransferred = 0;
+  }
+}
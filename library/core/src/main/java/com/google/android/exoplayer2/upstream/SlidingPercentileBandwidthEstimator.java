@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.SlidingPercentile;
+
+/**
+ * A {@link BandwidthEstimator} that takes the median of a {@link SlidingPercentile} of samples,
+ * weighted by the square root of the number of bytes in each sample.
+ *
+ * <p>A sample spans the time during which at least one transfer is in progress, and ends each time
+ * a transfer ends. Bytes of all transfers in progress count towards the sample. This is the
+ * estimator used by {@link DefaultBandwidthMeter} by default.
+ */
+public final class SlidingPercentileBandwidthEstimator implements BandwidthEstimator {
+
+  private static final int ELAPSED_MILLIS_FOR_ESTIMATE = 2000;
+  private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 512 * 1024;
+
+  private final SlidingPercentile slidingPercentile;
+
+  private int streamCount;
+  private long sampleStartTimeMs;
+  private long sampleBytesTransferred;
+  private long totalElapsedTimeMs;
+  private long totalBytesTransferred;
+  private long bandwidthEstimate;
+
+  /**
+   * Creates an instance.
+   *
+   * @param slidingWindowMaxWeight The maximum weight of the {@link SlidingPercentile}.
+   */
+  public SlidingPercentileBandwidthEstimator(int slidingWindowMaxWeight) {
+    slidingPercentile = new SlidingPercentile(slidingWindowMaxWeight);
+    bandwidthEstimate = ESTIMATE_NOT_AVAILABLE;
+  }
+
+  @Override
+  public void onTransferInitializing(DataSource source, long nowMs) {
+    // Do nothing.
+  }
+
+  @Override
+  public void onTransferStart(DataSource source, long nowMs) {
+    if (streamCount == 0) {
+      sampleStartTimeMs = nowMs;
+    }
+    streamCount++;
+  }
+
+  @Override
+  public void onBytesTransferred(DataSource source, int bytesTransferred, long nowMs) {
+    sampleBytesTransferred += bytesTransferred;
+  }
+
+  @Override
+  public void onTransferEnd(DataSource source, long nowMs) {
+    Assertions.checkState(streamCount > 0);
+    long sampleElapsedTimeMs = nowMs - sampleStartTimeMs;
+    totalElapsedTimeMs += sampleElapsedTimeMs;
+    totalBytesTransferred += sampleBytesTransferred;
+    if (sampleElapsedTimeMs > 0) {
+      float bitsPerSecond = (sampleBytesTransferred * 8000f) / sampleElapsedTimeMs;
+      slidingPercentile.addSample((int) Math.sqrt(sampleBytesTransferred), bitsPerSecond);
+      if (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
+          || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
+        bandwidthEstimate = (long) slidingPercentile.getPercentile(0.5f);
+      }
+      sampleStartTimeMs = nowMs;
+      sampleBytesTransferred = 0;
+    } // Else any sample bytes transferred will be carried forward into the next sample.
+    streamCount--;
+  }
+
+  @Override
+  public long getBandwidthEstimate() {
+    return bandwidthEstimate;
+  }
+
+  @Override
+  public void reset(long nowMs) {
+    slidingPercentile.reset();
+    sampleStartTimeMs = nowMs;
+    sampleBytesTransferred = 0;
+    totalElapsedTimeMs = 0;
+    totalBytesTransferred = 0;
+    bandwidthEstimate = ESTIMATE_NOT_AVAILABLE;
+  }
+}
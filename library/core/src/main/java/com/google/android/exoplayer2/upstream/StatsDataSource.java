@@ -20,6 +20,7 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -96,6 +97,15 @@ public final class StatsDataSource implements DataSource {
     return bytesRead;
   }
 
+  @Override
+  public int read(ByteBuffer target) throws IOException {
+    int bytesRead = dataSource.read(target);
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      this.bytesRead += bytesRead;
+    }
+    return bytesRead;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.WeakHashMap;
+
+/**
+ * A {@link BandwidthEstimator} that takes the time to first byte of transfers into account.
+ *
+ * <p>Other estimators measure throughput from the start of each transfer, once a response has been
+ * received, so the time spent waiting for a response isn't reflected in their estimates. On a
+ * network with a high latency, fetching a chunk of media then takes noticeably longer than its
+ * size divided by the estimate.
+ *
+ * <p>This estimator keeps a moving average of the time to first byte, measured from when a
+ * transfer is initialized to when it starts. Its estimate is that of a delegate estimator, reduced
+ * to the bitrate at which a chunk of media with a duration of {@code chunkDurationMs} can be
+ * fetched, including the time to first byte, in no more than {@code chunkDurationMs}.
+ */
+public final class TimeToFirstByteBandwidthEstimator implements BandwidthEstimator {
+
+  /** The default duration of a chunk of media, in milliseconds. */
+  public static final long DEFAULT_CHUNK_DURATION_MS = 4_000;
+
+  /** The weight of each new time to first byte in the moving average. */
+  private static final double TIME_TO_FIRST_BYTE_SMOOTHING_FACTOR = 0.3;
+  /** The maximum fraction by which the delegate estimate is reduced. */
+  private static final double MAX_REDUCTION = 0.75;
+
+  private final BandwidthEstimator delegate;
+  private final long chunkDurationMs;
+  // Weak keys, so that sources whose transfers failed to start aren't retained.
+  private final WeakHashMap<DataSource, Long> transferInitializingTimesMs;
+
+  private double timeToFirstByteEstimateMs;
+  private boolean hasTimeToFirstByteEstimate;
+
+  /**
+   * Creates an instance with a chunk duration of {@link #DEFAULT_CHUNK_DURATION_MS}.
+   *
+   * @param delegate The {@link BandwidthEstimator} that estimates the throughput of transfers.
+   */
+  public TimeToFirstByteBandwidthEstimator(BandwidthEstimator delegate) {
+    this(delegate, DEFAULT_CHUNK_DURATION_MS);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param delegate The {@link BandwidthEstimator} that estimates the throughput of transfers.
+   * @param chunkDurationMs The typical duration of a chunk of media, in milliseconds.
+   */
+  public TimeToFirstByteBandwidthEstimator(BandwidthEstimator delegate, long chunkDurationMs) {
+    Assertions.checkArgument(chunkDurationMs > 0);
+    this.delegate = delegate;
+    this.chunkDurationMs = chunkDurationMs;
+    transferInitializingTimesMs = new WeakHashMap<>();
+  }
+
+  /**
+   * Returns the moving average of the time to first byte, in milliseconds, or {@link C#TIME_UNSET}
+   * if no transfer has started yet.
+   */
+  public long getTimeToFirstByteEstimateMs() {
+    return hasTimeToFirstByteEstimate ? (long) timeToFirstByteEstimateMs : C.TIME_UNSET;
+  }
+
+  @Override
+  public void onTransferInitializing(DataSource source, long nowMs) {
+    transferInitializingTimesMs.put(source, nowMs);
+    delegate.onTransferInitializing(source, nowMs);
+  }
+
+  @Override
+  public void onTransferStart(DataSource source, long nowMs) {
+    @Nullable Long initializingTimeMs = transferInitializingTimesMs.remove(source);
+    if (initializingTimeMs != null) {
+      long timeToFirstByteMs = nowMs - initializingTimeMs;
+      timeToFirstByteEstimateMs =
+          hasTimeToFirstByteEstimate
+              ? TIME_TO_FIRST_BYTE_SMOOTHING_FACTOR * timeToFirstByteMs
+                  + (1 - TIME_TO_FIRST_BYTE_SMOOTHING_FACTOR) * timeToFirstByteEstimateMs
+              : timeToFirstByteMs;
+      hasTimeToFirstByteEstimate = true;
+    }
+    delegate.onTransferStart(source, nowMs);
+  }
+
+  @Override
+  public void onBytesTransferred(DataSource source, int bytesTransferred, long nowMs) {
+    delegate.onBytesTransferred(source, bytesTransferred, nowMs);
+  }
+
+  @Override
+  public void onTransferEnd(DataSource source, long nowMs) {
+    delegate.onTransferEnd(source, nowMs);
+  }
+
+  @Override
+  public long getBandwidthEstimate() {
+    long throughputEstimate = delegate.getBandwidthEstimate();
+    if (throughputEstimate == ESTIMATE_NOT_AVAILABLE || !hasTimeToFirstByteEstimate) {
+      return throughputEstimate;
+    }
+    // A chunk fetched at bitrate b takes timeToFirstByte + chunkDuration * b / throughput, which
+    // must not exceed chunkDuration.
+    double reduction = Math.min(MAX_REDUCTION, timeToFirstByteEstimateMs / chunkDurationMs);
+    return (long) (throughputEstimate * (1 - reduction));
+  }
+
+  @Override
+  public void reset(long nowMs) {
+    delegate.reset(nowMs);
+    transferInitializingTimesMs.clear();
+    hasTimeToFirstByteEstimate = false;
+    timeToFirstByteEstimateMs = 0;
+  }
+}
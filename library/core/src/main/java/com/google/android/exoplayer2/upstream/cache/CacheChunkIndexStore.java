@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.ChunkIndexStore;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer2.util.Log;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link ChunkIndexStore} that stores the chunk index of a resource in its {@link
+ * ContentMetadata} in a {@link Cache}, under {@link ContentMetadata#KEY_CHUNK_INDEX}.
+ *
+ * <p>The index is only stored if some of the content of the resource is cached, and if it's encoded
+ * in at most {@link #MAX_ENCODED_SIZE} bytes. It's removed from the cache with the content, when
+ * the last cached span of the resource is evicted or removed.
+ */
+public final class CacheChunkIndexStore implements ChunkIndexStore {
+
+  /** Factory for {@link CacheChunkIndexStore} instances. */
+  public static final class Factory implements ChunkIndexStore.Factory {
+
+    private final Cache cache;
+    private final CacheKeyFactory cacheKeyFactory;
+
+    /**
+     * Creates an instance that uses {@link CacheKeyFactory#DEFAULT}.
+     *
+     * @param cache The cache in which to store chunk indices.
+     */
+    public Factory(Cache cache) {
+      this(cache, CacheKeyFactory.DEFAULT);
+    }
+
+    /**
+     * @param cache The cache in which to store chunk indices.
+     * @param cacheKeyFactory The factory for the cache keys of resources, which should be the same
+     *     as that used to cache their content.
+     */
+    public Factory(Cache cache, CacheKeyFactory cacheKeyFactory) {
+      this.cache = cache;
+      this.cacheKeyFactory = cacheKeyFactory;
+    }
+
+    @Override
+    @Nullable
+    public ChunkIndexStore createChunkIndexStore(Uri uri) {
+      if (Uri.EMPTY.equals(uri)) {
+        return null;
+      }
+      return new CacheChunkIndexStore(cache, cacheKeyFactory.buildCacheKey(new DataSpec(uri)));
+    }
+  }
+
+  /**
+   * The maximum size of a stored chunk index, in bytes. An index of 9000 chunks, which is an hour
+   * of 400 ms fragments, is smaller.
+   */
+  public static final int MAX_ENCODED_SIZE = 256 * 1024;
+
+  private static final String TAG = "CacheChunkIndexStore";
+
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int CHUNK_SIZE = 28;
+
+  private final Cache cache;
+  private final String key;
+
+  /**
+   * @param cache The cache in which to store the chunk index.
+   * @param key The cache key of the resource.
+   */
+  public CacheChunkIndexStore(Cache cache, String key) {
+    this.cache = cache;
+    this.key = key;
+  }
+
+  @Override
+  @Nullable
+  public ChunkIndex getChunkIndex(long streamLength) {
+    @Nullable
+    byte[] data =
+        cache.getContentMetadata(key).get(ContentMetadata.KEY_CHUNK_INDEX, (byte[]) null);
+    if (data == null) {
+      return null;
+    }
+    try {
+      return decode(data, streamLength);
+    } catch (IOException e) {
+      Log.w(TAG, "Ignoring invalid chunk index", e);
+      return null;
+    }
+  }
+
+  @Override
+  public void putChunkIndex(ChunkIndex chunkIndex, long streamLength) {
+    if (HEADER_SIZE + (long) CHUNK_SIZE * chunkIndex.length > MAX_ENCODED_SIZE
+        || cache.getCachedSpans(key).isEmpty()) {
+      return;
+    }
+    try {
+      cache.applyContentMetadataMutations(
+          key,
+          new ContentMetadataMutations()
+              .set(ContentMetadata.KEY_CHUNK_INDEX, encode(chunkIndex, streamLength)));
+    } catch (CacheException e) {
+      Log.w(TAG, "Failed to store chunk index", e);
+    }
+  }
+
+  /* package */ static byte[] encode(ChunkIndex chunkIndex, long streamLength) {
+    ByteArrayOutputStream outputStream =
+        new ByteArrayOutputStream(HEADER_SIZE + CHUNK_SIZE * chunkIndex.length);
+    DataOutputStream output = new DataOutputStream(outputStream);
+    try {
+      output.writeInt(VERSION);
+      output.writeLong(streamLength);
+      output.writeInt(chunkIndex.length);
+      for (int i = 0; i < chunkIndex.length; i++) {
+        output.writeLong(chunkIndex.offsets[i]);
+        output.writeInt(chunkIndex.sizes[i]);
+        output.writeLong(chunkIndex.timesUs[i]);
+        output.writeLong(chunkIndex.durationsUs[i]);
+      }
+      output.flush();
+    } catch (IOException e) {
+      // Never happens when writing to a ByteArrayOutputStream.
+      throw new IllegalStateException(e);
+    }
+    return outputStream.toByteArray();
+  }
+
+  /**
+   * Returns the chunk index encoded by {@link #encode}, or null if it was built from a stream with
+   * a different length.
+   */
+  @Nullable
+  /* package */ static ChunkIndex decode(byte[] data, long streamLength) throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported chunk index version: " + version);
+    }
+    if (input.readLong() != streamLength) {
+      return null;
+    }
+    int length = input.readInt();
+    if (length <= 0 || length > data.length) {
+      throw new IOException("Invalid chunk count: " + length);
+    }
+    long[] offsets = new long[length];
+    int[] sizes = new int[length];
+    long[] timesUs = new long[length];
+    long[] durationsUs = new long[length];
+    for (int i = 0; i < length; i++) {
+      offsets[i] = input.readLong();
+      sizes[i] = input.readInt();
+      timesUs[i] = input.readLong();
+      durationsUs[i] = input.readLong();
+    }
+    return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
+  }
+}
@@ -35,11 +35,13 @@ import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.PriorityTaskManager;
+import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -97,7 +99,9 @@ public final class CacheDataSource implements DataSource {
      * Sets the {@link DataSource.Factory} for {@link DataSource DataSources} for reading from the
      * cache.
      *
-     * <p>The default is a {@link FileDataSource.Factory} in its default configuration.
+     * <p>The default is a {@link FileDataSource.Factory} in its default configuration. A {@link
+     * MappedFileDataSource.Factory} can be used instead to read cached data through memory
+     * mappings, which avoids a system call for each read.
      *
      * @param cacheReadDataSourceFactory The {@link DataSource.Factory} for reading from the cache.
      * @return This factory.
@@ -159,6 +163,15 @@ public final class CacheDataSource implements DataSource {
       return this;
     }
 
+    /**
+     * Returns the {@link DataSource.Factory} for upstream {@link DataSource DataSources}, or {@code
+     * null} if there is none.
+     */
+    @Nullable
+    public DataSource.Factory getUpstreamDataSourceFactory() {
+      return upstreamDataSourceFactory;
+    }
+
     /**
      * Sets an optional {@link PriorityTaskManager} to use when requesting data from upstream.
      *
@@ -586,6 +599,21 @@ public final class CacheDataSource implements DataSource {
 
   @Override
   public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    return readInternal(buffer, offset, readLength, /* target= */ null);
+  }
+
+  @Override
+  public int read(ByteBuffer target) throws IOException {
+    return readInternal(
+        Util.EMPTY_BYTE_ARRAY, /* offset= */ 0, /* readLength= */ target.remaining(), target);
+  }
+
+  /**
+   * Reads from the current source into {@code target} if it's non-null, or into {@code buffer}
+   * otherwise.
+   */
+  private int readInternal(
+      byte[] buffer, int offset, int readLength, @Nullable ByteBuffer target) throws IOException {
     DataSpec requestDataSpec = checkNotNull(this.requestDataSpec);
     if (readLength == 0) {
       return 0;
@@ -597,7 +625,11 @@ public final class CacheDataSource implements DataSource {
       if (readPosition >= checkCachePosition) {
         openNextSource(requestDataSpec, true);
       }
-      int bytesRead = checkNotNull(currentDataSource).read(buffer, offset, readLength);
+      DataSource currentDataSource = checkNotNull(this.currentDataSource);
+      int bytesRead =
+          target != null
+              ? currentDataSource.read(target)
+              : currentDataSource.read(buffer, offset, readLength);
       if (bytesRead != C.RESULT_END_OF_INPUT) {
         if (isReadingFromCache()) {
           totalCachedBytesRead += bytesRead;
@@ -611,7 +643,7 @@ public final class CacheDataSource implements DataSource {
       } else if (bytesRemaining > 0 || bytesRemaining == C.LENGTH_UNSET) {
         closeCurrentSource();
         openNextSource(requestDataSpec, false);
-        return read(buffer, offset, readLength);
+        return readInternal(buffer, offset, readLength, target);
       }
       return bytesRead;
     } catch (IOException e) {
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.ReusableBufferedOutputStream;
+import com.google.android.exoplayer2.util.Util;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A manifest of the spans in a {@link SimpleCache}, stored in the cache directory. Loading the
+ * spans from the manifest avoids listing every file in the cache directory.
+ *
+ * <p>The manifest isn't updated as spans are added and removed, so it may be out of date when it's
+ * loaded. The cache must validate the loaded spans against the cache directory.
+ */
+/* package */ final class CacheSpanManifest {
+
+  /** The name of the manifest file. */
+  public static final String FILE_NAME = "cached_spans.exm";
+
+  private static final int VERSION = 1;
+
+  private final File cacheDir;
+  private final AtomicFile atomicFile;
+
+  /** @param cacheDir The cache directory. */
+  public CacheSpanManifest(File cacheDir) {
+    this.cacheDir = cacheDir;
+    atomicFile = new AtomicFile(new File(cacheDir, FILE_NAME));
+  }
+
+  /**
+   * Loads the spans in the manifest. Doesn't access any of the span files.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param uid The cache UID.
+   * @param contentIndex The initialized content index, used to map span files to keys.
+   * @return The spans, or {@code null} if the manifest doesn't exist, was written for a different
+   *     cache UID, or can't be read.
+   */
+  @WorkerThread
+  @Nullable
+  public List<SimpleCacheSpan> load(long uid, CachedContentIndex contentIndex) {
+    if (!atomicFile.exists()) {
+      return null;
+    }
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(atomicFile.openRead()))) {
+      if (input.readInt() != VERSION || input.readLong() != uid) {
+        return null;
+      }
+      int directoryCount = input.readInt();
+      File[] directories = new File[directoryCount];
+      for (int i = 0; i < directoryCount; i++) {
+        String directoryName = input.readUTF();
+        directories[i] = directoryName.isEmpty() ? cacheDir : new File(cacheDir, directoryName);
+      }
+      int spanCount = input.readInt();
+      List<SimpleCacheSpan> spans = new ArrayList<>(spanCount);
+      for (int i = 0; i < spanCount; i++) {
+        int directoryIndex = input.readInt();
+        if (directoryIndex < 0 || directoryIndex >= directoryCount) {
+          return null;
+        }
+        File file = new File(directories[directoryIndex], input.readUTF());
+        long length = input.readLong();
+        long lastTouchTimestamp = input.readLong();
+        @Nullable
+        SimpleCacheSpan span =
+            SimpleCacheSpan.createCacheEntry(file, length, lastTouchTimestamp, contentIndex);
+        if (span != null) {
+          spans.add(span);
+        }
+      }
+      if (input.read() != -1) {
+        return null;
+      }
+      return spans;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Stores the spans of the given content.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param uid The cache UID.
+   * @param contents The content whose spans should be stored.
+   * @throws IOException If an error occurs storing the manifest.
+   */
+  @WorkerThread
+  public void store(long uid, Collection<CachedContent> contents) throws IOException {
+    HashMap<String, Integer> directoryIndices = new HashMap<>();
+    ArrayList<String> directoryNames = new ArrayList<>();
+    int spanCount = 0;
+    for (CachedContent cachedContent : contents) {
+      for (SimpleCacheSpan span : cachedContent.getSpans()) {
+        String directoryName = getDirectoryName(span);
+        if (!directoryIndices.containsKey(directoryName)) {
+          directoryIndices.put(directoryName, directoryNames.size());
+          directoryNames.add(directoryName);
+        }
+        spanCount++;
+      }
+    }
+
+    @Nullable DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new ReusableBufferedOutputStream(atomicFile.startWrite()));
+      output.writeInt(VERSION);
+      output.writeLong(uid);
+      output.writeInt(directoryNames.size());
+      for (int i = 0; i < directoryNames.size(); i++) {
+        output.writeUTF(directoryNames.get(i));
+      }
+      output.writeInt(spanCount);
+      for (CachedContent cachedContent : contents) {
+        for (SimpleCacheSpan span : cachedContent.getSpans()) {
+          output.writeInt(checkNotNull(directoryIndices.get(getDirectoryName(span))));
+          output.writeUTF(checkNotNull(span.file).getName());
+          output.writeLong(span.length);
+          output.writeLong(span.lastTouchTimestamp);
+        }
+      }
+      atomicFile.endWrite(output);
+      output = null;
+    } finally {
+      Util.closeQuietly(output);
+    }
+  }
+
+  /** Deletes the manifest. */
+  public void delete() {
+    atomicFile.delete();
+  }
+
+  private String getDirectoryName(SimpleCacheSpan span) {
+    @Nullable File directory = checkNotNull(span.file).getParentFile();
+    return directory == null || directory.equals(cacheDir) ? "" : directory.getName();
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Assertions.checkState;
+
+import androidx.annotation.Nullable;
+
+/**
+ * A queue of {@link CacheSpan CacheSpans} in least recently used order, used by {@link
+ * CacheEvictor} implementations that divide the cache into segments. Adding, removing and moving a
+ * span are O(1).
+ */
+/* package */ final class CacheSpanQueue {
+
+  /** A span in a {@link CacheSpanQueue}. A node is in at most one queue at a time. */
+  public static final class Node {
+
+    /** The span. Updated when the span is touched. */
+    public CacheSpan span;
+
+    @Nullable private CacheSpanQueue queue;
+    @Nullable private Node previous;
+    @Nullable private Node next;
+
+    public Node(CacheSpan span) {
+      this.span = span;
+    }
+
+    /** Returns the queue that contains this node, or {@code null} if it's not in a queue. */
+    @Nullable
+    public CacheSpanQueue getQueue() {
+      return queue;
+    }
+  }
+
+  @Nullable private Node first;
+  @Nullable private Node last;
+  private long bytes;
+
+  /** Returns the least recently used node, or {@code null} if the queue is empty. */
+  @Nullable
+  public Node first() {
+    return first;
+  }
+
+  /** Returns whether the queue is empty. */
+  public boolean isEmpty() {
+    return first == null;
+  }
+
+  /** Returns whether the queue contains a single node. */
+  public boolean hasSingleNode() {
+    return first != null && first == last;
+  }
+
+  /** Returns the total length of the spans in the queue. */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /** Adds a node that isn't in any queue as the most recently used node. */
+  public void addLast(Node node) {
+    checkState(node.queue == null);
+    node.queue = this;
+    node.previous = last;
+    node.next = null;
+    if (last != null) {
+      last.next = node;
+    } else {
+      first = node;
+    }
+    last = node;
+    bytes += node.span.length;
+  }
+
+  /** Removes a node from the queue. */
+  public void remove(Node node) {
+    checkState(node.queue == this);
+    if (node.previous != null) {
+      node.previous.next = node.next;
+    } else {
+      first = node.next;
+    }
+    if (node.next != null) {
+      node.next.previous = node.previous;
+    } else {
+      last = node.previous;
+    }
+    node.queue = null;
+    node.previous = null;
+    node.next = null;
+    bytes -= node.span.length;
+  }
+
+  /** Removes the least recently used node, returning it, or {@code null} if the queue is empty. */
+  @Nullable
+  public Node removeFirst() {
+    @Nullable Node node = first;
+    if (node != null) {
+      remove(node);
+    }
+    return node;
+  }
+}
@@ -28,6 +28,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.util.SparseArray;
 import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
@@ -36,6 +37,7 @@ import com.google.android.exoplayer2.database.DatabaseProvider;
 import com.google.android.exoplayer2.database.VersionTable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.AtomicFile;
+import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.ReusableBufferedOutputStream;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableSet;
@@ -45,9 +47,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -58,6 +63,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -67,14 +74,20 @@ import javax.crypto.spec.SecretKeySpec;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
-/** Maintains the index of cached content. */
+/**
+ * Maintains the index of cached content.
+ *
+ * <p>Methods that modify the index must not be called concurrently. {@link #get(String)}, {@link
+ * #getAll()} and {@link #getKeys()} may be called concurrently with modifications.
+ */
 /* package */ class CachedContentIndex {
 
   /* package */ static final String FILE_NAME_ATOMIC = "cached_content_index.exi";
+  /* package */ static final String FILE_NAME_JOURNAL = "cached_content_index.exj";
 
   private static final int INCREMENTAL_METADATA_READ_LENGTH = 10 * 1024 * 1024;
 
-  private final HashMap<String, CachedContent> keyToContent;
+  private final ConcurrentHashMap<String, CachedContent> keyToContent;
   /**
    * Maps assigned ids to their corresponding keys. Also contains (id -> null) entries for ids that
    * have been removed from the index since it was last stored. This prevents reuse of these ids,
@@ -106,8 +119,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
   /** Returns whether the file is an index file. */
   public static boolean isIndexFile(String fileName) {
-    // Atomic file backups add additional suffixes to the file name.
-    return fileName.startsWith(FILE_NAME_ATOMIC);
+    // Atomic file backups and journal compactions add additional suffixes to the file name.
+    return fileName.startsWith(FILE_NAME_ATOMIC) || fileName.startsWith(FILE_NAME_JOURNAL);
   }
 
   /**
@@ -139,6 +152,24 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         /* preferLegacyStorage= */ false);
   }
 
+  /**
+   * Creates an instance that stores the index in a journal file, to which each change is appended
+   * when the index is stored. Unencrypted legacy storage in the same directory is migrated to the
+   * journal.
+   *
+   * @param storageDir The directory in which the journal is stored.
+   */
+  public CachedContentIndex(File storageDir) {
+    keyToContent = new ConcurrentHashMap<>();
+    idToKey = new SparseArray<>();
+    removedIds = new SparseBooleanArray();
+    newIds = new SparseBooleanArray();
+    storage = new JournalStorage(storageDir);
+    previousStorage =
+        new LegacyStorage(
+            new File(storageDir, FILE_NAME_ATOMIC), /* secretKey= */ null, /* encrypt= */ false);
+  }
+
   /**
    * Creates an instance supporting either or both of database and legacy storage.
    *
@@ -161,7 +192,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       boolean legacyStorageEncrypt,
       boolean preferLegacyStorage) {
     checkState(databaseProvider != null || legacyStorageDir != null);
-    keyToContent = new HashMap<>();
+    keyToContent = new ConcurrentHashMap<>();
     idToKey = new SparseArray<>();
     removedIds = new SparseBooleanArray();
     newIds = new SparseBooleanArray();
@@ -257,8 +288,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   /**
    * Returns a read only collection of all {@link CachedContent CachedContents} in the index.
    *
-   * <p>Subsequent changes to the index are reflected in the returned collection. If the index is
-   * modified whilst iterating over the collection, the result of the iteration is undefined.
+   * <p>Subsequent changes to the index are reflected in the returned collection. Iteration over the
+   * collection is weakly consistent, meaning that it will not fail if the index is modified
+   * concurrently, but may or may not reflect such modifications.
    */
   public Collection<CachedContent> getAll() {
     return Collections.unmodifiableCollection(keyToContent.values());
@@ -310,9 +342,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
   /**
    * Returns a set of all content keys. The set is backed by the {@code keyToContent} map, so
-   * changes to the map are reflected in the set, and vice-versa. If the map is modified while an
-   * iteration over the set is in progress (except through the iterator's own remove operation), the
-   * results of the iteration are undefined.
+   * changes to the map are reflected in the set, and vice-versa. Iteration over the set is weakly
+   * consistent, meaning that it will not fail if the map is modified concurrently, but may or may
+   * not reflect such modifications.
    */
   public Set<String> getKeys() {
     return keyToContent.keySet();
@@ -462,7 +494,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      * @param idToKey The id to key map to populate with persisted data.
      * @throws IOException If an error occurs loading the index.
      */
-    void load(HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+    void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException;
 
     /**
@@ -472,17 +504,17 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeFully(HashMap<String, CachedContent> content) throws IOException;
+    void storeFully(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Ensures incremental changes to the index since the initial {@link #initialize(long)} or last
-     * {@link #storeFully(HashMap)} are persisted. The storage will have been notified of all such
+     * {@link #storeFully(Map)} are persisted. The storage will have been notified of all such
      * changes via {@link #onUpdate(CachedContent)} and {@link #onRemove(CachedContent, boolean)}.
      *
      * @param content The key to content map to persist.
      * @throws IOException If an error occurs persisting the index.
      */
-    void storeIncremental(HashMap<String, CachedContent> content) throws IOException;
+    void storeIncremental(Map<String, CachedContent> content) throws IOException;
 
     /**
      * Called when a {@link CachedContent} is added or updated.
@@ -556,7 +588,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       checkState(!changed);
       if (!readFile(content, idToKey)) {
         content.clear();
@@ -566,13 +598,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       writeFile(content);
       changed = false;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (!changed) {
         return;
       }
@@ -590,7 +622,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     private boolean readFile(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
       if (!atomicFile.exists()) {
         return true;
       }
@@ -645,7 +677,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return true;
     }
 
-    private void writeFile(HashMap<String, CachedContent> content) throws IOException {
+    private void writeFile(Map<String, CachedContent> content) throws IOException {
       @Nullable DataOutputStream output = null;
       try {
         OutputStream outputStream = atomicFile.startWrite();
@@ -809,7 +841,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
     @Override
     public void load(
-        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException {
       checkState(pendingUpdates.size() == 0);
       try {
@@ -852,7 +884,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
       try {
         SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
         writableDatabase.beginTransactionNonExclusive();
@@ -872,7 +904,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
       if (pendingUpdates.size() == 0) {
         return;
       }
@@ -980,4 +1012,449 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       return TABLE_PREFIX + hexUid;
     }
   }
+
+  /**
+   * {@link Storage} implementation that appends changes to a journal file.
+   *
+   * <p>The journal consists of a version header followed by records, each of which either adds or
+   * updates a {@link CachedContent}, or removes one. Each record is prefixed by its length and a
+   * checksum, so that a record that was only partially written (e.g., because the process was
+   * killed) is detected and discarded when the journal is loaded.
+   *
+   * <p>Once the journal is longer than {@link #MIN_COMPACTION_LENGTH}, and more than twice as long
+   * as a journal containing only the current records would be, a compacted journal is encoded and
+   * written on a background thread from a snapshot of the current records. Records appended in the
+   * meantime are copied to the compacted journal before it replaces the current one, which happens
+   * in a subsequent call to {@link #storeIncremental(Map)}.
+   */
+  private static final class JournalStorage implements Storage {
+
+    private static final String TAG = "JournalStorage";
+
+    private static final int VERSION = 1;
+    private static final int RECORD_TYPE_UPDATE = 0;
+    private static final int RECORD_TYPE_REMOVE = 1;
+
+    /** The length of the version header at the start of the journal. */
+    private static final int HEADER_LENGTH = 4;
+    /** The length of the length and checksum fields that prefix each record. */
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    private static final long MIN_COMPACTION_LENGTH = 64 * 1024;
+    private static final String COMPACTION_FILE_SUFFIX = ".compaction";
+
+    private final File file;
+    private final SparseArray<@NullableType CachedContent> pendingUpdates;
+    /** The length of the most recent update record for each id that's currently in the index. */
+    private final SparseIntArray recordLengths;
+
+    private long journalLength;
+    private long liveRecordsLength;
+    private boolean requiresFullStore;
+    @Nullable private Compaction compaction;
+
+    public JournalStorage(File directory) {
+      file = new File(directory, FILE_NAME_JOURNAL);
+      pendingUpdates = new SparseArray<>();
+      recordLengths = new SparseIntArray();
+      // Nothing can be appended until the journal has been loaded or fully stored.
+      requiresFullStore = true;
+    }
+
+    @Override
+    public void initialize(long uid) {
+      // Do nothing. Journal storage uses a separate file for each cache.
+    }
+
+    @Override
+    public boolean exists() {
+      return file.exists();
+    }
+
+    @Override
+    public void delete() {
+      abandonCompaction();
+      deleteCompactionFiles();
+      file.delete();
+    }
+
+    @Override
+    public void load(Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      checkState(pendingUpdates.size() == 0);
+      deleteCompactionFiles();
+      if (!file.exists() || !readFile(content, idToKey)) {
+        content.clear();
+        idToKey.clear();
+        storeFully(content);
+      }
+    }
+
+    @Override
+    public void storeFully(Map<String, CachedContent> content) throws IOException {
+      abandonCompaction();
+      byte[] journal = encodeJournal(content);
+      File tempFile = new File(file.getPath() + COMPACTION_FILE_SUFFIX);
+      writeFile(tempFile, journal, /* append= */ false);
+      if (!tempFile.renameTo(file)) {
+        tempFile.delete();
+        requiresFullStore = true;
+        throw new IOException("Failed to rename " + tempFile + " to " + file);
+      }
+      journalLength = journal.length;
+      requiresFullStore = false;
+      pendingUpdates.clear();
+    }
+
+    @Override
+    public void storeIncremental(Map<String, CachedContent> content) throws IOException {
+      if (requiresFullStore) {
+        storeFully(content);
+        return;
+      }
+      if (pendingUpdates.size() > 0) {
+        ByteArrayOutputStream recordsOutputStream = new ByteArrayOutputStream();
+        for (int i = 0; i < pendingUpdates.size(); i++) {
+          recordsOutputStream.write(
+              encodeRecord(pendingUpdates.keyAt(i), pendingUpdates.valueAt(i)));
+        }
+        byte[] records = recordsOutputStream.toByteArray();
+        try {
+          writeFile(file, records, /* append= */ true);
+        } catch (IOException e) {
+          // The journal may now end with a partially written record, after which any further
+          // records would be discarded when loading. Rewrite the whole journal next time instead.
+          requiresFullStore = true;
+          throw e;
+        }
+        journalLength += records.length;
+        pendingUpdates.clear();
+        if (compaction != null) {
+          compaction.appendedRecords.write(records);
+        }
+      }
+      if (compaction != null) {
+        maybeFinishCompaction();
+      } else if (journalLength > MIN_COMPACTION_LENGTH
+          && journalLength > 2 * (HEADER_LENGTH + liveRecordsLength)) {
+        startCompaction(content);
+      }
+    }
+
+    @Override
+    public void onUpdate(CachedContent cachedContent) {
+      pendingUpdates.put(cachedContent.id, cachedContent);
+    }
+
+    @Override
+    public void onRemove(CachedContent cachedContent, boolean neverStored) {
+      if (neverStored) {
+        pendingUpdates.delete(cachedContent.id);
+      } else {
+        pendingUpdates.put(cachedContent.id, null);
+      }
+    }
+
+    private boolean readFile(
+        Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+      recordLengths.clear();
+      liveRecordsLength = 0;
+      requiresFullStore = false;
+      long fileLength = file.length();
+      long validLength = HEADER_LENGTH;
+      try (DataInputStream input =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        if (input.readInt() != VERSION) {
+          return false;
+        }
+        CRC32 crc = new CRC32();
+        while (validLength + RECORD_HEADER_LENGTH <= fileLength) {
+          int recordLength = input.readInt();
+          int checksum = input.readInt();
+          if (recordLength <= 0
+              || validLength + RECORD_HEADER_LENGTH + recordLength > fileLength) {
+            // The record was only partially written.
+            break;
+          }
+          byte[] record = new byte[recordLength];
+          input.readFully(record);
+          crc.reset();
+          crc.update(record, 0, recordLength);
+          if ((int) crc.getValue() != checksum) {
+            // The record was only partially written.
+            break;
+          }
+          applyRecord(record, content, idToKey);
+          validLength += RECORD_HEADER_LENGTH + recordLength;
+        }
+      } catch (IOException e) {
+        return false;
+      }
+      journalLength = validLength;
+      if (validLength < fileLength) {
+        // Discard the partially written record, so that further records are appended after the
+        // last valid one.
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+          randomAccessFile.setLength(validLength);
+        } catch (IOException e) {
+          requiresFullStore = true;
+        }
+      }
+      return true;
+    }
+
+    private void applyRecord(
+        byte[] record,
+        Map<String, CachedContent> content,
+        SparseArray<@NullableType String> idToKey)
+        throws IOException {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+      int type = input.readByte();
+      int id = input.readInt();
+      removeLoadedContent(id, content, idToKey);
+      if (type == RECORD_TYPE_UPDATE) {
+        String key = input.readUTF();
+        DefaultContentMetadata metadata = readContentMetadata(input);
+        @Nullable CachedContent previousContent = content.get(key);
+        if (previousContent != null) {
+          removeLoadedContent(previousContent.id, content, idToKey);
+        }
+        content.put(key, new CachedContent(id, key, metadata));
+        idToKey.put(id, key);
+        int recordLength = RECORD_HEADER_LENGTH + record.length;
+        recordLengths.put(id, recordLength);
+        liveRecordsLength += recordLength;
+      } else if (type != RECORD_TYPE_REMOVE) {
+        throw new IOException("Unexpected record type: " + type);
+      }
+    }
+
+    private void removeLoadedContent(
+        int id, Map<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+      @Nullable String key = idToKey.get(id);
+      if (key != null) {
+        content.remove(key);
+        idToKey.remove(id);
+        liveRecordsLength -= recordLengths.get(id);
+        recordLengths.delete(id);
+      }
+    }
+
+    private void startCompaction(Map<String, CachedContent> content) {
+      // The recorded lengths of the current records are already correct, because the compacted
+      // journal contains the same records as were last appended for each id.
+      Compaction compaction =
+          new Compaction(
+              new File(file.getPath() + COMPACTION_FILE_SUFFIX + System.nanoTime()), content);
+      this.compaction = compaction;
+      new Thread("ExoPlayer:CacheIndexCompaction") {
+        @Override
+        public void run() {
+          compaction.write();
+        }
+      }.start();
+    }
+
+    private void maybeFinishCompaction() {
+      Compaction compaction = checkNotNull(this.compaction);
+      if (!compaction.finished) {
+        return;
+      }
+      this.compaction = null;
+      try {
+        @Nullable IOException error = compaction.error;
+        if (error != null) {
+          throw error;
+        }
+        byte[] appendedRecords = compaction.appendedRecords.toByteArray();
+        writeFile(compaction.file, appendedRecords, /* append= */ true);
+        if (!compaction.file.renameTo(file)) {
+          throw new IOException("Failed to rename " + compaction.file + " to " + file);
+        }
+        journalLength = compaction.journalLength + appendedRecords.length;
+      } catch (IOException e) {
+        // The current journal is still valid, so compaction can be attempted again later.
+        Log.w(TAG, "Failed to compact journal", e);
+        compaction.file.delete();
+      }
+    }
+
+    private void abandonCompaction() {
+      if (compaction != null) {
+        compaction.abandoned = true;
+        compaction.file.delete();
+        compaction = null;
+      }
+    }
+
+    private void deleteCompactionFiles() {
+      @Nullable File directory = file.getParentFile();
+      @Nullable File[] files = directory != null ? directory.listFiles() : null;
+      if (files == null) {
+        return;
+      }
+      String compactionFilePrefix = file.getName() + COMPACTION_FILE_SUFFIX;
+      for (File file : files) {
+        if (file.getName().startsWith(compactionFilePrefix)) {
+          file.delete();
+        }
+      }
+    }
+
+    /**
+     * Encodes a journal containing a record for each {@link CachedContent}, and updates the
+     * recorded lengths of the current records to match.
+     */
+    private byte[] encodeJournal(Map<String, CachedContent> content) throws IOException {
+      recordLengths.clear();
+      liveRecordsLength = 0;
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(outputStream);
+      output.writeInt(VERSION);
+      for (CachedContent cachedContent : content.values()) {
+        output.write(encodeRecord(cachedContent.id, cachedContent));
+      }
+      output.flush();
+      return outputStream.toByteArray();
+    }
+
+    /**
+     * Encodes a record, including its length and checksum, and updates the recorded length of the
+     * current record for {@code id} to match.
+     *
+     * @param id The id of the {@link CachedContent}.
+     * @param cachedContent The {@link CachedContent} to record, or {@code null} to record its
+     *     removal.
+     * @return The encoded record.
+     * @throws IOException If an error occurs encoding the record.
+     */
+    private byte[] encodeRecord(int id, @Nullable CachedContent cachedContent)
+        throws IOException {
+      byte[] record =
+          cachedContent != null
+              ? encodeRecord(id, cachedContent.key, cachedContent.getMetadata())
+              : encodeRecord(id, /* key= */ null, /* metadata= */ null);
+      liveRecordsLength -= recordLengths.get(id);
+      if (cachedContent != null) {
+        recordLengths.put(id, record.length);
+        liveRecordsLength += record.length;
+      } else {
+        recordLengths.delete(id);
+      }
+      return record;
+    }
+
+    /**
+     * Encodes a record, including its length and checksum.
+     *
+     * @param id The id of the {@link CachedContent}.
+     * @param key The key of the {@link CachedContent}, or {@code null} to record its removal.
+     * @param metadata The metadata of the {@link CachedContent}, or {@code null} to record its
+     *     removal.
+     * @return The encoded record.
+     * @throws IOException If an error occurs encoding the record.
+     */
+    private static byte[] encodeRecord(
+        int id, @Nullable String key, @Nullable DefaultContentMetadata metadata)
+        throws IOException {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(outputStream);
+      // Placeholders for the length and checksum, which are filled in below.
+      output.writeInt(0);
+      output.writeInt(0);
+      if (key != null && metadata != null) {
+        output.writeByte(RECORD_TYPE_UPDATE);
+        output.writeInt(id);
+        output.writeUTF(key);
+        writeContentMetadata(metadata, output);
+      } else {
+        output.writeByte(RECORD_TYPE_REMOVE);
+        output.writeInt(id);
+      }
+      output.flush();
+      byte[] record = outputStream.toByteArray();
+      int payloadLength = record.length - RECORD_HEADER_LENGTH;
+      CRC32 crc = new CRC32();
+      crc.update(record, RECORD_HEADER_LENGTH, payloadLength);
+      writeInt(record, /* offset= */ 0, payloadLength);
+      writeInt(record, /* offset= */ 4, (int) crc.getValue());
+      return record;
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+      data[offset] = (byte) (value >>> 24);
+      data[offset + 1] = (byte) (value >>> 16);
+      data[offset + 2] = (byte) (value >>> 8);
+      data[offset + 3] = (byte) value;
+    }
+
+    private static void writeFile(File file, byte[] data, boolean append) throws IOException {
+      try (FileOutputStream output = new FileOutputStream(file, append)) {
+        output.write(data);
+        output.getFD().sync();
+      }
+    }
+
+    /** A compacted journal that's encoded and written on a background thread. */
+    private static final class Compaction {
+
+      public final File file;
+      /** Records that have been appended to the current journal since the compaction started. */
+      public final ByteArrayOutputStream appendedRecords;
+
+      public volatile boolean finished;
+      public volatile boolean abandoned;
+      @Nullable public volatile IOException error;
+      /** The length of the compacted journal. Only valid once {@link #finished} is set. */
+      public long journalLength;
+
+      private final int[] ids;
+      private final String[] keys;
+      private final DefaultContentMetadata[] metadata;
+
+      /**
+       * Creates a compaction of a snapshot of {@code content}. Only the ids, keys and metadata are
+       * copied, because {@link DefaultContentMetadata} instances are immutable.
+       */
+      public Compaction(File file, Map<String, CachedContent> content) {
+        this.file = file;
+        appendedRecords = new ByteArrayOutputStream();
+        int size = content.size();
+        ids = new int[size];
+        keys = new String[size];
+        metadata = new DefaultContentMetadata[size];
+        int i = 0;
+        for (CachedContent cachedContent : content.values()) {
+          ids[i] = cachedContent.id;
+          keys[i] = cachedContent.key;
+          metadata[i] = cachedContent.getMetadata();
+          i++;
+        }
+      }
+
+      /** Encodes and writes the compacted journal. Called on the background thread. */
+      public void write() {
+        try {
+          ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+          DataOutputStream output = new DataOutputStream(outputStream);
+          output.writeInt(VERSION);
+          for (int i = 0; i < ids.length; i++) {
+            output.write(encodeRecord(ids[i], keys[i], metadata[i]));
+          }
+          output.flush();
+          byte[] journal = outputStream.toByteArray();
+          journalLength = journal.length;
+          if (!abandoned) {
+            writeFile(file, journal, /* append= */ false);
+          }
+        } catch (IOException e) {
+          error = e;
+        }
+        finished = true;
+        if (abandoned) {
+          file.delete();
+        }
+      }
+    }
+  }
 }
@@ -34,6 +34,15 @@ public interface ContentMetadata {
   String KEY_REDIRECTED_URI = "exo_redir";
   /** Key for content length in bytes (type: long). */
   String KEY_CONTENT_LENGTH = "exo_len";
+  /**
+   * Key for the time at which the content expires, in milliseconds since the epoch (type: long).
+   */
+  String KEY_EXPIRY_TIME_MS = "exo_exp";
+  /**
+   * Key for a chunk index that an extractor built by indexing the content (type: byte[], see
+   * {@link CacheChunkIndexStore}).
+   */
+  String KEY_CHUNK_INDEX = "exo_chunk_idx";
 
   /**
    * Returns a metadata value.
@@ -75,6 +84,14 @@ public interface ContentMetadata {
     return contentMetadata.get(KEY_CONTENT_LENGTH, C.LENGTH_UNSET);
   }
 
+  /**
+   * Returns the value stored under {@link #KEY_EXPIRY_TIME_MS}, or {@link C#TIME_UNSET} if not
+   * set.
+   */
+  static long getExpiryTimeMs(ContentMetadata contentMetadata) {
+    return contentMetadata.get(KEY_EXPIRY_TIME_MS, C.TIME_UNSET);
+  }
+
   /**
    * Returns the value stored under {@link #KEY_REDIRECTED_URI} as a {@link Uri}, or {code null} if
    * not set.
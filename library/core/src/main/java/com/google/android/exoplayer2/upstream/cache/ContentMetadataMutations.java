@@ -46,6 +46,23 @@ public class ContentMetadataMutations {
     return mutations.set(ContentMetadata.KEY_CONTENT_LENGTH, length);
   }
 
+  /**
+   * Adds a mutation to set the {@link ContentMetadata#KEY_EXPIRY_TIME_MS} value, or to remove any
+   * existing entry if {@link C#TIME_UNSET} is passed.
+   *
+   * @param mutations The mutations to modify.
+   * @param expiryTimeMs The time at which the content expires, in milliseconds since the epoch, or
+   *     {@link C#TIME_UNSET} to remove any existing entry.
+   * @return The mutations instance, for convenience.
+   */
+  public static ContentMetadataMutations setExpiryTimeMs(
+      ContentMetadataMutations mutations, long expiryTimeMs) {
+    if (expiryTimeMs == C.TIME_UNSET) {
+      return mutations.remove(ContentMetadata.KEY_EXPIRY_TIME_MS);
+    }
+    return mutations.set(ContentMetadata.KEY_EXPIRY_TIME_MS, expiryTimeMs);
+  }
+
   /**
    * Adds a mutation to set the {@link ContentMetadata#KEY_REDIRECTED_URI} value, or to remove any
    * existing entry if {@code null} is passed.
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static java.lang.Math.min;
+
+/**
+ * A count-min sketch that estimates how often items have been seen recently, using a fixed amount
+ * of memory.
+ *
+ * <p>Counters saturate at {@link #MAX_FREQUENCY}. Once the number of increments reaches ten times
+ * the width of the sketch, all counters are halved, so that estimates reflect recent history.
+ */
+/* package */ final class FrequencySketch {
+
+  /** The maximum frequency that can be estimated. */
+  public static final int MAX_FREQUENCY = 15;
+
+  private static final int DEPTH = 4;
+  private static final int[] SEEDS = {0x97CB3127, 0xB1DE2C2B, 0x5B7A7DD3, 0xC2B2AE35};
+
+  private final byte[] counters;
+  private final int widthMask;
+  private final int sampleSize;
+
+  private int additions;
+
+  /**
+   * Creates a sketch.
+   *
+   * @param expectedItemCount The expected number of distinct items. The width of the sketch is
+   *     this value rounded up to a power of two.
+   */
+  public FrequencySketch(int expectedItemCount) {
+    checkArgument(expectedItemCount > 0 && expectedItemCount <= 1 << 24);
+    int width = Integer.highestOneBit(expectedItemCount);
+    if (width < expectedItemCount) {
+      width <<= 1;
+    }
+    counters = new byte[DEPTH * width];
+    widthMask = width - 1;
+    sampleSize = 10 * width;
+  }
+
+  /** Records an occurrence of the item with the given hash. */
+  public void increment(int hash) {
+    boolean incremented = false;
+    for (int i = 0; i < DEPTH; i++) {
+      int index = indexOf(hash, i);
+      if (counters[index] < MAX_FREQUENCY) {
+        counters[index]++;
+        incremented = true;
+      }
+    }
+    if (incremented && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  /** Returns the estimated frequency of the item with the given hash. */
+  public int frequency(int hash) {
+    int frequency = MAX_FREQUENCY;
+    for (int i = 0; i < DEPTH; i++) {
+      frequency = min(frequency, counters[indexOf(hash, i)]);
+    }
+    return frequency;
+  }
+
+  private int indexOf(int hash, int row) {
+    int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+    h ^= h >>> 16;
+    return row * (widthMask + 1) + (h & widthMask);
+  }
+
+  private void reset() {
+    for (int i = 0; i < counters.length; i++) {
+      counters[i] = (byte) (counters[i] >> 1);
+    }
+    additions /= 2;
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.android.exoplayer2.util.Util.castNonNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.upstream.FileDataSource.FileDataSourceException;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A {@link DataSource} for reading immutable local files, such as the span files of a {@link
+ * SimpleCache}, through memory mappings.
+ *
+ * <p>Reads are served from a mapping of the file rather than through a read system call for each
+ * chunk. Mappings are shared between all instances created by the same {@link Factory}, which keeps
+ * the most recently used mappings open up to a total size in bytes. Repeatedly opening the same
+ * file, for example when seeking within a cached segment, therefore doesn't require the file to be
+ * opened and closed again. Mappings aren't released explicitly, since there's no public API for
+ * doing so. A mapping that's evicted from the cache is released when it's garbage collected, once
+ * no data source is reading from it.
+ *
+ * <p>Files must not be modified whilst they are mapped. Files that are larger than the maximum
+ * size of the cache are read using a {@link FileDataSource} instead.
+ *
+ * <p>To use this data source for reading from a cache, pass a {@link Factory} to {@link
+ * CacheDataSource.Factory#setCacheReadDataSourceFactory(DataSource.Factory)}.
+ */
+public final class MappedFileDataSource extends BaseDataSource {
+
+  /** {@link DataSource.Factory} for {@link MappedFileDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    /** The default maximum total size of the mappings kept open by a factory, in bytes. */
+    public static final long DEFAULT_MAX_MAPPED_BYTES = 64 * 1024 * 1024;
+
+    private final MappingCache mappingCache;
+
+    @Nullable private TransferListener listener;
+
+    /**
+     * Creates a factory that keeps up to {@link #DEFAULT_MAX_MAPPED_BYTES} of mappings open.
+     */
+    public Factory() {
+      this(DEFAULT_MAX_MAPPED_BYTES);
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param maxMappedBytes The maximum total size of the mappings to keep open, in bytes.
+     *     Mappings are evicted in least recently used order when the limit is exceeded. Files
+     *     larger than this size aren't mapped.
+     */
+    public Factory(long maxMappedBytes) {
+      checkArgument(maxMappedBytes > 0);
+      mappingCache = new MappingCache(maxMappedBytes);
+    }
+
+    /**
+     * Sets a {@link TransferListener} for {@link MappedFileDataSource} instances created by this
+     * factory.
+     *
+     * @param listener The {@link TransferListener}.
+     * @return This factory.
+     */
+    public Factory setListener(@Nullable TransferListener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    @Override
+    public MappedFileDataSource createDataSource() {
+      MappedFileDataSource dataSource = new MappedFileDataSource(mappingCache);
+      if (listener != null) {
+        dataSource.addTransferListener(listener);
+      }
+      return dataSource;
+    }
+
+    /** Returns the total size of the mappings kept open by the factory, in bytes. */
+    @VisibleForTesting
+    /* package */ long getCachedBytes() {
+      return mappingCache.getCachedBytes();
+    }
+  }
+
+  private final MappingCache mappingCache;
+
+  @Nullable private Uri uri;
+  @Nullable private ByteBuffer buffer;
+  @Nullable private FileDataSource fallbackDataSource;
+  private long bytesRemaining;
+  private boolean opened;
+
+  private MappedFileDataSource(MappingCache mappingCache) {
+    super(/* isNetwork= */ false);
+    this.mappingCache = mappingCache;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    Uri uri = dataSpec.uri;
+    this.uri = uri;
+
+    transferInitializing(dataSpec);
+
+    File file = new File(checkNotNull(uri.getPath()));
+    @Nullable MappedByteBuffer mapping;
+    try {
+      mapping = mappingCache.get(file);
+    } catch (IOException e) {
+      throw new FileDataSourceException(e);
+    }
+    if (mapping != null) {
+      long fileLength = mapping.capacity();
+      bytesRemaining =
+          dataSpec.length == C.LENGTH_UNSET ? fileLength - dataSpec.position : dataSpec.length;
+      if (dataSpec.position > fileLength
+          || bytesRemaining < 0
+          || dataSpec.position + bytesRemaining > fileLength) {
+        throw new FileDataSourceException(new EOFException());
+      }
+      // The duplicate keeps the mapping alive whilst it's being read, even if it's evicted.
+      ByteBuffer buffer = mapping.duplicate();
+      buffer.position((int) dataSpec.position);
+      this.buffer = buffer;
+    } else {
+      // The file is too large to be mapped.
+      fallbackDataSource = new FileDataSource();
+      bytesRemaining = fallbackDataSource.open(dataSpec);
+    }
+
+    opened = true;
+    transferStarted(dataSpec);
+
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    int bytesRead;
+    if (fallbackDataSource != null) {
+      bytesRead = fallbackDataSource.read(buffer, offset, readLength);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        return C.RESULT_END_OF_INPUT;
+      }
+    } else {
+      bytesRead = (int) min(bytesRemaining, readLength);
+      castNonNull(this.buffer).get(buffer, offset, bytesRead);
+    }
+    bytesRemaining -= bytesRead;
+    bytesTransferred(bytesRead);
+    return bytesRead;
+  }
+
+  @Override
+  public int read(ByteBuffer target) throws IOException {
+    int readLength = target.remaining();
+    if (readLength == 0) {
+      return 0;
+    } else if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    int bytesRead;
+    if (fallbackDataSource != null) {
+      bytesRead = fallbackDataSource.read(target);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        return C.RESULT_END_OF_INPUT;
+      }
+    } else {
+      ByteBuffer buffer = castNonNull(this.buffer);
+      bytesRead = (int) min(bytesRemaining, readLength);
+      int limit = buffer.limit();
+      buffer.limit(buffer.position() + bytesRead);
+      target.put(buffer);
+      buffer.limit(limit);
+    }
+    bytesRemaining -= bytesRead;
+    bytesTransferred(bytesRead);
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() throws IOException {
+    uri = null;
+    // The mapping remains open if it's still in the cache, so that it can be reused.
+    buffer = null;
+    try {
+      if (fallbackDataSource != null) {
+        fallbackDataSource.close();
+      }
+    } finally {
+      fallbackDataSource = null;
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+    }
+  }
+
+  /**
+   * A least recently used cache of read-only file mappings, keyed by file path and bounded by
+   * their total size.
+   */
+  private static final class MappingCache {
+
+    /** The maximum size of a file that can be mapped into a single {@link ByteBuffer}. */
+    private static final long MAX_MAPPING_SIZE = Integer.MAX_VALUE;
+
+    private final long maxMappedBytes;
+    private final LinkedHashMap<String, MappedByteBuffer> mappings;
+
+    private long cachedBytes;
+
+    public MappingCache(long maxMappedBytes) {
+      this.maxMappedBytes = maxMappedBytes;
+      mappings =
+          new LinkedHashMap<>(
+              /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true);
+    }
+
+    /**
+     * Returns a read-only mapping of the whole of {@code file}, or {@code null} if the file is too
+     * large to be mapped.
+     *
+     * @param file The file.
+     * @return The mapping, or {@code null} if the file is too large to be mapped.
+     * @throws IOException If an error occurs mapping the file.
+     */
+    @Nullable
+    public synchronized MappedByteBuffer get(File file) throws IOException {
+      String path = file.getAbsolutePath();
+      @Nullable MappedByteBuffer mapping = mappings.get(path);
+      // Checking the length guards against the file having been deleted and replaced by another
+      // file with the same path since it was mapped.
+      long fileLength = file.length();
+      if (mapping == null || mapping.capacity() != fileLength) {
+        if (mapping != null) {
+          mappings.remove(path);
+          cachedBytes -= mapping.capacity();
+        }
+        if (fileLength > min(maxMappedBytes, MAX_MAPPING_SIZE)) {
+          return null;
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+          FileChannel channel = randomAccessFile.getChannel();
+          // The mapping remains valid after the channel is closed.
+          mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mappings.put(path, mapping);
+        cachedBytes += fileLength;
+        trim();
+      }
+      return mapping;
+    }
+
+    public synchronized long getCachedBytes() {
+      return cachedBytes;
+    }
+
+    private void trim() {
+      Iterator<MappedByteBuffer> iterator = mappings.values().iterator();
+      while (cachedBytes > maxMappedBytes && iterator.hasNext()) {
+        cachedBytes -= iterator.next().capacity();
+        iterator.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.CacheSpanQueue.Node;
+import java.util.TreeMap;
+
+/**
+ * Evicts cache files using a segmented least recently used (SLRU) policy.
+ *
+ * <p>Spans enter a probationary segment when they're added to the cache, and are promoted to a
+ * protected segment when they're read from the cache. Spans are evicted from the probationary
+ * segment in least recently used order, and from the protected segment only once the probationary
+ * segment is empty. When the protected segment exceeds its share of the cache, its least recently
+ * used spans are demoted to the probationary segment. Unlike {@link LeastRecentlyUsedCacheEvictor},
+ * content that's read only once, such as a long title watched from start to end, therefore can't
+ * evict content that's read repeatedly.
+ *
+ * <p>Each callback runs in O(log n) time, where n is the number of spans in the cache.
+ */
+public final class SegmentedLruCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache that can be used by the protected segment. */
+  public static final float DEFAULT_PROTECTED_FRACTION = 0.8f;
+
+  private final long maxBytes;
+  private final long maxProtectedBytes;
+  private final TreeMap<CacheSpan, Node> nodes;
+  private final CacheSpanQueue probationary;
+  private final CacheSpanQueue protectedQueue;
+
+  /**
+   * Creates an evictor that allows up to {@link #DEFAULT_PROTECTED_FRACTION} of the cache to be
+   * used by the protected segment.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public SegmentedLruCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_PROTECTED_FRACTION);
+  }
+
+  /**
+   * Creates an evictor.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param protectedFraction The fraction of the cache that can be used by the protected segment,
+   *     in the range [0, 1].
+   */
+  public SegmentedLruCacheEvictor(long maxBytes, float protectedFraction) {
+    checkArgument(protectedFraction >= 0 && protectedFraction <= 1);
+    this.maxBytes = maxBytes;
+    maxProtectedBytes = (long) (maxBytes * (double) protectedFraction);
+    nodes = new TreeMap<>();
+    probationary = new CacheSpanQueue();
+    protectedQueue = new CacheSpanQueue();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    Node node = new Node(span);
+    nodes.put(span, node);
+    probationary.addLast(node);
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    @Nullable Node node = nodes.remove(span);
+    @Nullable CacheSpanQueue queue = node != null ? node.getQueue() : null;
+    if (queue != null) {
+      queue.remove(checkNotNull(node));
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable Node node = nodes.remove(oldSpan);
+    @Nullable CacheSpanQueue queue = node != null ? node.getQueue() : null;
+    if (node == null || queue == null) {
+      onSpanAdded(cache, newSpan);
+      return;
+    }
+    queue.remove(node);
+    node.span = newSpan;
+    nodes.put(newSpan, node);
+    protectedQueue.addLast(node);
+    while (protectedQueue.getBytes() > maxProtectedBytes && !protectedQueue.hasSingleNode()) {
+      probationary.addLast(checkNotNull(protectedQueue.removeFirst()));
+    }
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (probationary.getBytes() + protectedQueue.getBytes() + requiredSpace > maxBytes) {
+      @Nullable Node node = probationary.first();
+      if (node == null) {
+        node = protectedQueue.first();
+      }
+      if (node == null) {
+        return;
+      }
+      cache.removeSpan(node.span);
+    }
+  }
+}
@@ -16,7 +16,9 @@
 package com.google.android.exoplayer2.upstream.cache;
 
 import android.os.ConditionVariable;
+import android.os.SystemClock;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.database.DatabaseIOException;
@@ -30,6 +32,7 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Random;
@@ -45,6 +48,14 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  * <p>To delete a SimpleCache, use {@link #delete(File, DatabaseProvider)} rather than deleting the
  * directory and its contents directly. This is necessary to ensure that associated index data is
  * also removed.
+ *
+ * <p>State that's shared between keys (the index of keys, the file index, the evictor and the
+ * listeners) is guarded by the cache instance's monitor. The spans, locked ranges and metadata of
+ * each key are additionally guarded by one of a fixed number of key locks, to which keys are mapped
+ * by hash. Queries for a single key, and reads and writes of keys that are already indexed when the
+ * evictor does not require spans to be touched, only acquire the corresponding key lock. They
+ * therefore don't contend with operations on unrelated keys. Where both locks are required, the
+ * cache's monitor is always acquired first.
  */
 public final class SimpleCache implements Cache {
 
@@ -56,6 +67,8 @@ public final class SimpleCache implements Cache {
    * https://github.com/google/ExoPlayer/issues/4253.
    */
   private static final int SUBDIRECTORY_COUNT = 10;
+  /** The number of locks between which the per-key state of the cache is striped. */
+  private static final int KEY_LOCK_COUNT = 32;
 
   private static final String UID_FILE_SUFFIX = ".uid";
 
@@ -65,14 +78,21 @@ public final class SimpleCache implements Cache {
   private final CacheEvictor evictor;
   private final CachedContentIndex contentIndex;
   @Nullable private final CacheFileMetadataIndex fileIndex;
+  @Nullable private final CacheSpanManifest spanManifest;
   private final HashMap<String, ArrayList<Listener>> listeners;
   private final Random random;
   private final boolean touchCacheSpans;
+  private final KeyLock[] keyLocks;
+  private final ConditionVariable initializationCondition;
+  private final ConditionVariable validationCondition;
 
   private long uid;
   private long totalSpace;
-  private boolean released;
-  private @MonotonicNonNull CacheException initializationException;
+  private boolean requiresValidation;
+  private volatile boolean initialized;
+  private volatile long initializationTimeMs;
+  private volatile boolean released;
+  private volatile @MonotonicNonNull CacheException initializationException;
 
   /**
    * Returns whether {@code cacheFolder} is locked by a {@link SimpleCache} instance. To unlock the
@@ -237,14 +257,75 @@ public final class SimpleCache implements Cache {
             preferLegacyIndex),
         databaseProvider != null && !preferLegacyIndex
             ? new CacheFileMetadataIndex(databaseProvider)
-            : null);
+            : null,
+        /* lazyValidation= */ false);
+  }
+
+  /**
+   * Creates a cache whose index is stored in a journal file in the cache directory. The cache will
+   * delete any unrecognized files from the cache directory. Hence the directory cannot be used to
+   * store other files.
+   *
+   * <p>Storing the index appends only the changes made since it was last stored, so unlike the
+   * legacy index the cost of storing it doesn't grow with the number of keys in the cache. The
+   * journal is compacted on a background thread when it grows too large. An unencrypted legacy
+   * index in the cache directory is migrated to the journal.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @return The cache.
+   */
+  public static SimpleCache createWithJournalIndex(File cacheDir, CacheEvictor evictor) {
+    return new SimpleCache(
+        cacheDir,
+        evictor,
+        new CachedContentIndex(cacheDir),
+        /* fileIndex= */ null,
+        /* lazyValidation= */ false);
+  }
+
+  /**
+   * Creates a cache whose index is stored in a database, and which initializes from a manifest of
+   * its spans rather than by listing all of the files in the cache directory. The cache will delete
+   * any unrecognized files from the cache directory. Hence the directory cannot be used to store
+   * other files.
+   *
+   * <p>The manifest is stored in the cache directory when the cache is released. If a manifest
+   * stored by the previous instance is found, the cache trusts it and is initialized as soon as the
+   * manifest has been loaded. The cache then validates the loaded spans against the cache directory
+   * on a background thread, whilst it's in use. Spans whose files have been modified or deleted are
+   * removed, and files that aren't in the manifest are loaded or deleted as they would have been by
+   * a full initialization. If no manifest is found, for example because the previous instance
+   * wasn't released, the cache is initialized by listing the cache directory as usual.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which the cache index is stored.
+   * @return The cache.
+   */
+  public static SimpleCache createWithLazyValidation(
+      File cacheDir, CacheEvictor evictor, DatabaseProvider databaseProvider) {
+    return new SimpleCache(
+        cacheDir,
+        evictor,
+        new CachedContentIndex(
+            databaseProvider,
+            cacheDir,
+            /* legacyStorageSecretKey= */ null,
+            /* legacyStorageEncrypt= */ false,
+            /* preferLegacyStorage= */ false),
+        new CacheFileMetadataIndex(databaseProvider),
+        /* lazyValidation= */ true);
   }
 
   /* package */ SimpleCache(
       File cacheDir,
       CacheEvictor evictor,
       CachedContentIndex contentIndex,
-      @Nullable CacheFileMetadataIndex fileIndex) {
+      @Nullable CacheFileMetadataIndex fileIndex,
+      boolean lazyValidation) {
     if (!lockFolder(cacheDir)) {
       throw new IllegalStateException("Another SimpleCache instance uses the folder: " + cacheDir);
     }
@@ -253,13 +334,22 @@ public final class SimpleCache implements Cache {
     this.evictor = evictor;
     this.contentIndex = contentIndex;
     this.fileIndex = fileIndex;
+    spanManifest = lazyValidation ? new CacheSpanManifest(cacheDir) : null;
     listeners = new HashMap<>();
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
+    keyLocks = new KeyLock[KEY_LOCK_COUNT];
+    for (int i = 0; i < KEY_LOCK_COUNT; i++) {
+      keyLocks[i] = new KeyLock();
+    }
+    initializationCondition = new ConditionVariable();
+    validationCondition = new ConditionVariable();
     uid = UID_UNSET;
+    initializationTimeMs = C.TIME_UNSET;
 
     // Start cache initialization.
     final ConditionVariable conditionVariable = new ConditionVariable();
+    long initializationStartTimeMs = SystemClock.elapsedRealtime();
     new Thread("ExoPlayer:SimpleCacheInit") {
       @Override
       public void run() {
@@ -267,6 +357,16 @@ public final class SimpleCache implements Cache {
           conditionVariable.open();
           initialize();
           SimpleCache.this.evictor.onCacheInitialized();
+          initializationTimeMs = SystemClock.elapsedRealtime() - initializationStartTimeMs;
+          initialized = true;
+          initializationCondition.open();
+        }
+        try {
+          if (requiresValidation) {
+            validate();
+          }
+        } finally {
+          validationCondition.open();
         }
       }
     }.start();
@@ -278,12 +378,29 @@ public final class SimpleCache implements Cache {
    *
    * @throws CacheException If an error occurred during initialization.
    */
-  public synchronized void checkInitialization() throws CacheException {
+  public void checkInitialization() throws CacheException {
+    blockUntilInitialized();
     if (initializationException != null) {
       throw initializationException;
     }
   }
 
+  /**
+   * Returns the time taken to initialize the cache, in milliseconds, or {@link C#TIME_UNSET} if the
+   * cache hasn't been initialized yet. For a cache created by {@link
+   * #createWithLazyValidation(File, CacheEvictor, DatabaseProvider)}, this doesn't include the time
+   * taken to validate the cache in the background.
+   */
+  public long getInitializationTimeMs() {
+    return initializationTimeMs;
+  }
+
+  /** Blocks until the cache has been validated, or returns immediately if it doesn't need to be. */
+  @VisibleForTesting
+  /* package */ void blockUntilValidated() {
+    validationCondition.block();
+  }
+
   @Override
   public synchronized long getUid() {
     return uid;
@@ -300,6 +417,13 @@ public final class SimpleCache implements Cache {
       contentIndex.store();
     } catch (IOException e) {
       Log.e(TAG, "Storing index file failed", e);
+    }
+    try {
+      if (spanManifest != null && initializationException == null) {
+        spanManifest.store(uid, contentIndex.getAll());
+      }
+    } catch (IOException e) {
+      Log.e(TAG, "Storing span manifest failed", e);
     } finally {
       unlockFolder(cacheDir);
       released = true;
@@ -335,17 +459,21 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
     Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent == null || cachedContent.isEmpty()
-        ? new TreeSet<>()
-        : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    blockUntilInitialized();
+    synchronized (getKeyLock(key)) {
+      @Nullable CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent == null || cachedContent.isEmpty()
+          ? new TreeSet<>()
+          : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    }
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
+  public Set<String> getKeys() {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     return new HashSet<>(contentIndex.getKeys());
   }
 
@@ -356,48 +484,79 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized CacheSpan startReadWrite(String key, long position, long length)
+  public CacheSpan startReadWrite(String key, long position, long length)
       throws InterruptedException, CacheException {
     Assertions.checkState(!released);
     checkInitialization();
 
+    KeyLock keyLock = getKeyLock(key);
     while (true) {
-      CacheSpan span = startReadWriteNonBlocking(key, position, length);
+      long version;
+      synchronized (keyLock) {
+        version = keyLock.version;
+      }
+      @Nullable CacheSpan span = startReadWriteNonBlocking(key, position, length);
       if (span != null) {
         return span;
-      } else {
-        // Lock not available. We'll be woken up when a span is added, or when a locked span is
-        // released. We'll be able to make progress when either:
-        // 1. A span is added for the requested key that covers the requested position, in which
-        //    case a read can be started.
-        // 2. The lock for the requested key is released, in which case a write can be started.
-        wait();
+      }
+      // Lock not available. We'll be woken up when a span is added, or when a locked span is
+      // released. We'll be able to make progress when either:
+      // 1. A span is added for the requested key that covers the requested position, in which
+      //    case a read can be started.
+      // 2. The lock for the requested key is released, in which case a write can be started.
+      // Comparing versions ensures we don't miss a wake up that occurred since the attempt above.
+      synchronized (keyLock) {
+        while (keyLock.version == version) {
+          keyLock.wait();
+        }
       }
     }
   }
 
   @Override
   @Nullable
-  public synchronized CacheSpan startReadWriteNonBlocking(String key, long position, long length)
+  public CacheSpan startReadWriteNonBlocking(String key, long position, long length)
       throws CacheException {
     Assertions.checkState(!released);
     checkInitialization();
 
-    SimpleCacheSpan span = getSpan(key, position, length);
-
-    if (span.isCached) {
-      // Read case.
-      return touchSpan(key, span);
+    if (!touchCacheSpans) {
+      // Fast path, which only requires the key lock. Falls through to the slow path if the key
+      // isn't indexed yet, or if a stale span is found.
+      synchronized (getKeyLock(key)) {
+        @Nullable CachedContent cachedContent = contentIndex.get(key);
+        if (cachedContent != null) {
+          SimpleCacheSpan span = cachedContent.getSpan(position, length);
+          if (!span.isCached) {
+            // Write case.
+            return cachedContent.lockRange(position, span.length) ? span : null;
+          } else if (span.file.length() == span.length) {
+            // Read case.
+            return span;
+          }
+        }
+      }
     }
 
-    CachedContent cachedContent = contentIndex.getOrAdd(key);
-    if (cachedContent.lockRange(position, span.length)) {
-      // Write case.
-      return span;
-    }
+    synchronized (this) {
+      SimpleCacheSpan span = getSpan(key, position, length);
+
+      if (span.isCached) {
+        // Read case.
+        return touchSpan(key, span);
+      }
 
-    // Lock not available.
-    return null;
+      synchronized (getKeyLock(key)) {
+        CachedContent cachedContent = contentIndex.getOrAdd(key);
+        if (cachedContent.lockRange(position, span.length)) {
+          // Write case.
+          return span;
+        }
+      }
+
+      // Lock not available.
+      return null;
+    }
   }
 
   @Override
@@ -405,9 +564,12 @@ public final class SimpleCache implements Cache {
     Assertions.checkState(!released);
     checkInitialization();
 
-    CachedContent cachedContent = contentIndex.get(key);
-    Assertions.checkNotNull(cachedContent);
-    Assertions.checkState(cachedContent.isFullyLocked(position, length));
+    int id;
+    synchronized (getKeyLock(key)) {
+      CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(key));
+      Assertions.checkState(cachedContent.isFullyLocked(position, length));
+      id = cachedContent.id;
+    }
     if (!cacheDir.exists()) {
       // The cache directory has been deleted from underneath us. Recreate it, and remove in-memory
       // spans corresponding to cache files that no longer exist.
@@ -421,8 +583,7 @@ public final class SimpleCache implements Cache {
       createCacheDirectories(cacheSubDir);
     }
     long lastTouchTimestamp = System.currentTimeMillis();
-    return SimpleCacheSpan.getCacheFile(
-        cacheSubDir, cachedContent.id, position, lastTouchTimestamp);
+    return SimpleCacheSpan.getCacheFile(cacheSubDir, id, position, lastTouchTimestamp);
   }
 
   @Override
@@ -438,13 +599,15 @@ public final class SimpleCache implements Cache {
 
     SimpleCacheSpan span =
         Assertions.checkNotNull(SimpleCacheSpan.createCacheEntry(file, length, contentIndex));
-    CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
-    Assertions.checkState(cachedContent.isFullyLocked(span.position, span.length));
-
-    // Check if the span conflicts with the set content length
-    long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
-    if (contentLength != C.LENGTH_UNSET) {
-      Assertions.checkState((span.position + span.length) <= contentLength);
+    synchronized (getKeyLock(span.key)) {
+      CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
+      Assertions.checkState(cachedContent.isFullyLocked(span.position, span.length));
+
+      // Check if the span conflicts with the set content length
+      long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
+      if (contentLength != C.LENGTH_UNSET) {
+        Assertions.checkState((span.position + span.length) <= contentLength);
+      }
     }
 
     if (fileIndex != null) {
@@ -461,16 +624,28 @@ public final class SimpleCache implements Cache {
     } catch (IOException e) {
       throw new CacheException(e);
     }
-    notifyAll();
   }
 
   @Override
-  public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
+  public void releaseHoleSpan(CacheSpan holeSpan) {
     Assertions.checkState(!released);
-    CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(holeSpan.key));
-    cachedContent.unlockRange(holeSpan.position);
-    contentIndex.maybeRemove(cachedContent.key);
-    notifyAll();
+    KeyLock keyLock = getKeyLock(holeSpan.key);
+    boolean maybeRemovable;
+    synchronized (keyLock) {
+      CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(holeSpan.key));
+      cachedContent.unlockRange(holeSpan.position);
+      maybeRemovable = cachedContent.isEmpty() && cachedContent.isFullyUnlocked();
+      keyLock.onChanged();
+    }
+    if (maybeRemovable) {
+      // Removing the content modifies the index, which requires the cache's monitor. The content
+      // may have been locked again since the key lock was released, which maybeRemove checks.
+      synchronized (this) {
+        synchronized (keyLock) {
+          contentIndex.maybeRemove(holeSpan.key);
+        }
+      }
+    }
   }
 
   @Override
@@ -488,24 +663,32 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
+  public boolean isCached(String key, long position, long length) {
     Assertions.checkState(!released);
-    @Nullable CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
+    blockUntilInitialized();
+    synchronized (getKeyLock(key)) {
+      @Nullable CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent != null
+          && cachedContent.getCachedBytesLength(position, length) >= length;
+    }
   }
 
   @Override
-  public synchronized long getCachedLength(String key, long position, long length) {
+  public long getCachedLength(String key, long position, long length) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     if (length == C.LENGTH_UNSET) {
       length = Long.MAX_VALUE;
     }
-    @Nullable CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
+    synchronized (getKeyLock(key)) {
+      return getCachedLengthInternal(key, position, length);
+    }
   }
 
   @Override
-  public synchronized long getCachedBytes(String key, long position, long length) {
+  public long getCachedBytes(String key, long position, long length) {
+    Assertions.checkState(!released);
+    blockUntilInitialized();
     long endPosition = length == C.LENGTH_UNSET ? Long.MAX_VALUE : position + length;
     if (endPosition < 0) {
       // The calculation rolled over (length is probably Long.MAX_VALUE).
@@ -513,16 +696,19 @@ public final class SimpleCache implements Cache {
     }
     long currentPosition = position;
     long cachedBytes = 0;
-    while (currentPosition < endPosition) {
-      long maxRemainingLength = endPosition - currentPosition;
-      long blockLength = getCachedLength(key, currentPosition, maxRemainingLength);
-      if (blockLength > 0) {
-        cachedBytes += blockLength;
-      } else {
-        // There's a hole of length -blockLength.
-        blockLength = -blockLength;
+    // Hold the key lock throughout, so that the result is consistent.
+    synchronized (getKeyLock(key)) {
+      while (currentPosition < endPosition) {
+        long maxRemainingLength = endPosition - currentPosition;
+        long blockLength = getCachedLengthInternal(key, currentPosition, maxRemainingLength);
+        if (blockLength > 0) {
+          cachedBytes += blockLength;
+        } else {
+          // There's a hole of length -blockLength.
+          blockLength = -blockLength;
+        }
+        currentPosition += blockLength;
       }
-      currentPosition += blockLength;
     }
     return cachedBytes;
   }
@@ -533,7 +719,9 @@ public final class SimpleCache implements Cache {
     Assertions.checkState(!released);
     checkInitialization();
 
-    contentIndex.applyContentMetadataMutations(key, mutations);
+    synchronized (getKeyLock(key)) {
+      contentIndex.applyContentMetadataMutations(key, mutations);
+    }
     try {
       contentIndex.store();
     } catch (IOException e) {
@@ -542,9 +730,39 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized ContentMetadata getContentMetadata(String key) {
+  public ContentMetadata getContentMetadata(String key) {
     Assertions.checkState(!released);
-    return contentIndex.getContentMetadata(key);
+    blockUntilInitialized();
+    synchronized (getKeyLock(key)) {
+      return contentIndex.getContentMetadata(key);
+    }
+  }
+
+  /**
+   * Returns the length of the cached data block starting from {@code position} for {@code key}, or
+   * the negated length of the hole if {@code position} isn't cached. Must be called holding the key
+   * lock for {@code key}, once the cache has been initialized.
+   */
+  private long getCachedLengthInternal(String key, long position, long length) {
+    @Nullable CachedContent cachedContent = contentIndex.get(key);
+    return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
+  }
+
+  /**
+   * Blocks until the initialization thread has finished initializing the cache. Returns immediately
+   * if called from the initialization thread, which holds the cache lock throughout, so that the
+   * evictor and listeners can query the cache when notified of spans being added during
+   * initialization.
+   */
+  private void blockUntilInitialized() {
+    if (!initialized && !Thread.holdsLock(this)) {
+      initializationCondition.block();
+    }
+  }
+
+  /** Returns the lock guarding the per-key state of {@code key}. */
+  private KeyLock getKeyLock(String key) {
+    return keyLocks[(key.hashCode() & Integer.MAX_VALUE) % KEY_LOCK_COUNT];
   }
 
   /** Ensures that the cache's in-memory representation has been initialized. */
@@ -582,6 +800,21 @@ public final class SimpleCache implements Cache {
       contentIndex.initialize(uid);
       if (fileIndex != null) {
         fileIndex.initialize(uid);
+      }
+      if (spanManifest != null) {
+        @Nullable List<SimpleCacheSpan> spans = spanManifest.load(uid, contentIndex);
+        // Delete the manifest, so that it's not trusted again if this instance isn't released.
+        spanManifest.delete();
+        if (spans != null) {
+          for (int i = 0; i < spans.size(); i++) {
+            addSpan(spans.get(i));
+          }
+          // Empty content is removed, and the index stored, once the cache has been validated.
+          requiresValidation = true;
+          return;
+        }
+      }
+      if (fileIndex != null) {
         Map<String, CacheFileMetadata> fileMetadata = fileIndex.getAll();
         loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata);
         fileIndex.removeAll(fileMetadata.keySet());
@@ -632,9 +865,8 @@ public final class SimpleCache implements Cache {
       if (isRoot && fileName.indexOf('.') == -1) {
         loadDirectory(file, /* isRoot= */ false, file.listFiles(), fileMetadata);
       } else {
-        if (isRoot
-            && (CachedContentIndex.isIndexFile(fileName) || fileName.endsWith(UID_FILE_SUFFIX))) {
-          // Skip expected UID and index files in the root directory.
+        if (isRoot && isMetadataFile(fileName)) {
+          // Skip expected UID, index and manifest files in the root directory.
           continue;
         }
         long length = C.LENGTH_UNSET;
@@ -657,6 +889,163 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Validates spans loaded from the span manifest against the cache directory, after the cache has
+   * been initialized. The cache's monitor is only held for short periods, so that the cache can be
+   * used during validation. Returns early if the cache is released.
+   */
+  private void validate() {
+    @Nullable Map<String, CacheFileMetadata> fileMetadata = null;
+    if (fileIndex != null) {
+      try {
+        fileMetadata = fileIndex.getAll();
+      } catch (DatabaseIOException e) {
+        Log.w(TAG, "Failed to load file metadata", e);
+      }
+    }
+
+    // Remove spans whose files have been modified or deleted.
+    ArrayList<String> keys;
+    synchronized (this) {
+      if (released) {
+        return;
+      }
+      keys = new ArrayList<>(contentIndex.getKeys());
+    }
+    ArrayList<CacheSpan> spansToBeRemoved = new ArrayList<>();
+    for (int i = 0; i < keys.size(); i++) {
+      synchronized (this) {
+        if (released) {
+          return;
+        }
+        @Nullable CachedContent cachedContent = contentIndex.get(keys.get(i));
+        if (cachedContent != null) {
+          spansToBeRemoved.clear();
+          getStaleSpans(cachedContent, spansToBeRemoved);
+          for (int j = 0; j < spansToBeRemoved.size(); j++) {
+            removeSpanInternal(spansToBeRemoved.get(j));
+          }
+        }
+      }
+    }
+
+    // Load or delete files that aren't in the manifest.
+    if (!validateDirectory(cacheDir, /* isRoot= */ true, cacheDir.listFiles(), fileMetadata)) {
+      return;
+    }
+
+    synchronized (this) {
+      if (released) {
+        return;
+      }
+      if (fileIndex != null && fileMetadata != null) {
+        try {
+          fileIndex.removeAll(fileMetadata.keySet());
+        } catch (DatabaseIOException e) {
+          Log.w(TAG, "Failed to remove unused file metadata", e);
+        }
+      }
+      contentIndex.removeEmpty();
+      try {
+        contentIndex.store();
+      } catch (IOException e) {
+        Log.e(TAG, "Storing index file failed", e);
+      }
+    }
+  }
+
+  /**
+   * Validates the files in a cache directory. If the root directory is passed, also validates any
+   * subdirectories. Unlike {@link #loadDirectory}, empty subdirectories aren't deleted, since a
+   * file may be about to be written to them.
+   *
+   * @param directory The directory.
+   * @param isRoot Whether the directory is the root directory.
+   * @param files The files belonging to the directory.
+   * @param fileMetadata A mutable map containing cache file metadata, keyed by file name, from
+   *     which entries are removed for all validated files. May be null if no file metadata is
+   *     available.
+   * @return Whether validation should continue, which is false if the cache has been released.
+   */
+  private boolean validateDirectory(
+      File directory,
+      boolean isRoot,
+      @Nullable File[] files,
+      @Nullable Map<String, CacheFileMetadata> fileMetadata) {
+    if (files == null) {
+      return true;
+    }
+    for (File file : files) {
+      String fileName = file.getName();
+      if (isRoot && fileName.indexOf('.') == -1) {
+        if (!validateDirectory(file, /* isRoot= */ false, file.listFiles(), fileMetadata)) {
+          return false;
+        }
+      } else if (!isRoot || !isMetadataFile(fileName)) {
+        if (!validateFile(file, fileMetadata)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Validates a file in the cache directory. Files that belong to a span in the cache, or that are
+   * being written, are left alone. Other files are loaded as spans if possible, and deleted
+   * otherwise.
+   *
+   * @param file The file.
+   * @param fileMetadata A mutable map containing cache file metadata, keyed by file name, from
+   *     which the entry for the file is removed. May be null if no file metadata is available.
+   * @return Whether validation should continue, which is false if the cache has been released.
+   */
+  private synchronized boolean validateFile(
+      File file, @Nullable Map<String, CacheFileMetadata> fileMetadata) {
+    if (released) {
+      return false;
+    }
+    @Nullable
+    CacheFileMetadata metadata = fileMetadata != null ? fileMetadata.remove(file.getName()) : null;
+    @Nullable SimpleCacheSpan lookupSpan = SimpleCacheSpan.createLookup(file, contentIndex);
+    if (lookupSpan != null) {
+      synchronized (getKeyLock(lookupSpan.key)) {
+        @Nullable CachedContent cachedContent = contentIndex.get(lookupSpan.key);
+        if (cachedContent != null) {
+          SimpleCacheSpan span = cachedContent.getSpan(lookupSpan.position, /* length= */ 1);
+          if (span.isCached
+              ? file.equals(span.file)
+              : cachedContent.isFullyLocked(lookupSpan.position, /* length= */ 1)) {
+            return true;
+          }
+        }
+      }
+    }
+
+    // The length of the file is queried, since the file isn't known to have been committed.
+    @Nullable
+    SimpleCacheSpan span =
+        SimpleCacheSpan.createCacheEntry(
+            file,
+            C.LENGTH_UNSET,
+            metadata != null ? metadata.lastTouchTimestamp : C.TIME_UNSET,
+            contentIndex);
+    boolean isCovered = false;
+    if (span != null) {
+      synchronized (getKeyLock(span.key)) {
+        @Nullable CachedContent cachedContent = contentIndex.get(span.key);
+        isCovered =
+            cachedContent != null && cachedContent.getSpan(span.position, span.length).isCached;
+      }
+    }
+    if (span != null && !isCovered) {
+      addSpan(span);
+    } else {
+      file.delete();
+    }
+    return true;
+  }
+
   /**
    * Touches a cache span, returning the updated result. If the evictor does not require cache spans
    * to be touched, then this method does nothing and the span is returned without modification.
@@ -684,8 +1073,12 @@ public final class SimpleCache implements Cache {
       // updating the file index. Hence we only update the file if we don't have a file index.
       updateFile = true;
     }
-    SimpleCacheSpan newSpan =
-        contentIndex.get(key).setLastTouchTimestamp(span, lastTouchTimestamp, updateFile);
+    SimpleCacheSpan newSpan;
+    synchronized (getKeyLock(key)) {
+      newSpan =
+          Assertions.checkNotNull(contentIndex.get(key))
+              .setLastTouchTimestamp(span, lastTouchTimestamp, updateFile);
+    }
     notifySpanTouched(span, newSpan);
     return newSpan;
   }
@@ -700,12 +1093,15 @@ public final class SimpleCache implements Cache {
    * @return The corresponding cache {@link SimpleCacheSpan}.
    */
   private SimpleCacheSpan getSpan(String key, long position, long length) {
-    @Nullable CachedContent cachedContent = contentIndex.get(key);
-    if (cachedContent == null) {
-      return SimpleCacheSpan.createHole(key, position, length);
-    }
     while (true) {
-      SimpleCacheSpan span = cachedContent.getSpan(position, length);
+      SimpleCacheSpan span;
+      synchronized (getKeyLock(key)) {
+        @Nullable CachedContent cachedContent = contentIndex.get(key);
+        if (cachedContent == null) {
+          return SimpleCacheSpan.createHole(key, position, length);
+        }
+        span = cachedContent.getSpan(position, length);
+      }
       if (span.isCached && span.file.length() != span.length) {
         // The file has been modified or deleted underneath us. It's likely that other files will
         // have been modified too, so scan the whole in-memory representation.
@@ -722,15 +1118,22 @@ public final class SimpleCache implements Cache {
    * @param span The span to be added.
    */
   private void addSpan(SimpleCacheSpan span) {
-    contentIndex.getOrAdd(span.key).addSpan(span);
+    KeyLock keyLock = getKeyLock(span.key);
+    synchronized (keyLock) {
+      contentIndex.getOrAdd(span.key).addSpan(span);
+      keyLock.onChanged();
+    }
     totalSpace += span.length;
     notifySpanAdded(span);
   }
 
   private void removeSpanInternal(CacheSpan span) {
-    @Nullable CachedContent cachedContent = contentIndex.get(span.key);
-    if (cachedContent == null || !cachedContent.removeSpan(span)) {
-      return;
+    synchronized (getKeyLock(span.key)) {
+      @Nullable CachedContent cachedContent = contentIndex.get(span.key);
+      if (cachedContent == null || !cachedContent.removeSpan(span)) {
+        return;
+      }
+      contentIndex.maybeRemove(cachedContent.key);
     }
     totalSpace -= span.length;
     if (fileIndex != null) {
@@ -743,7 +1146,6 @@ public final class SimpleCache implements Cache {
         Log.w(TAG, "Failed to remove file index entry for: " + fileName);
       }
     }
-    contentIndex.maybeRemove(cachedContent.key);
     notifySpanRemoved(span);
   }
 
@@ -754,15 +1156,25 @@ public final class SimpleCache implements Cache {
   private void removeStaleSpans() {
     ArrayList<CacheSpan> spansToBeRemoved = new ArrayList<>();
     for (CachedContent cachedContent : contentIndex.getAll()) {
+      getStaleSpans(cachedContent, spansToBeRemoved);
+    }
+    for (int i = 0; i < spansToBeRemoved.size(); i++) {
+      removeSpanInternal(spansToBeRemoved.get(i));
+    }
+  }
+
+  /**
+   * Adds the spans of {@code cachedContent} for which the underlying file lengths no longer match
+   * to {@code staleSpans}.
+   */
+  private void getStaleSpans(CachedContent cachedContent, ArrayList<CacheSpan> staleSpans) {
+    synchronized (getKeyLock(cachedContent.key)) {
       for (CacheSpan span : cachedContent.getSpans()) {
         if (span.file.length() != span.length) {
-          spansToBeRemoved.add(span);
+          staleSpans.add(span);
         }
       }
     }
-    for (int i = 0; i < spansToBeRemoved.size(); i++) {
-      removeSpanInternal(spansToBeRemoved.get(i));
-    }
   }
 
   private void notifySpanRemoved(CacheSpan span) {
@@ -832,6 +1244,13 @@ public final class SimpleCache implements Cache {
     return uid;
   }
 
+  /** Returns whether a file in the root cache directory is a UID, index or manifest file. */
+  private boolean isMetadataFile(String fileName) {
+    return CachedContentIndex.isIndexFile(fileName)
+        || fileName.endsWith(UID_FILE_SUFFIX)
+        || (spanManifest != null && fileName.startsWith(CacheSpanManifest.FILE_NAME));
+  }
+
   private static long parseUid(String fileName) {
     return Long.parseLong(fileName.substring(0, fileName.indexOf('.')), /* radix= */ 16);
   }
@@ -852,4 +1271,23 @@ public final class SimpleCache implements Cache {
   private static synchronized void unlockFolder(File cacheDir) {
     lockedCacheDirs.remove(cacheDir.getAbsoluteFile());
   }
+
+  /** A lock guarding the per-key state of the keys that are mapped to it. */
+  private static final class KeyLock {
+
+    /**
+     * Incremented whenever a span is added or a locked range is released for any of the keys mapped
+     * to this lock. Must only be accessed whilst holding the lock.
+     */
+    public long version;
+
+    /**
+     * Wakes up threads waiting for a span to be added or for a locked range to be released. Must
+     * only be called whilst holding the lock.
+     */
+    public void onChanged() {
+      version++;
+      notifyAll();
+    }
+  }
 }
@@ -61,6 +61,29 @@ import java.util.regex.Pattern;
     return new SimpleCacheSpan(key, position, C.LENGTH_UNSET, C.TIME_UNSET, null);
   }
 
+  /**
+   * Creates a lookup span for the data stored in a cache file, without accessing the file.
+   *
+   * @param file The cache file.
+   * @param index The cached content index.
+   * @return The lookup span, or null if the file name is not that of a file created by the current
+   *     version of the cache, or if the id is not present in the content index.
+   */
+  @Nullable
+  public static SimpleCacheSpan createLookup(File file, CachedContentIndex index) {
+    Matcher matcher = CACHE_FILE_PATTERN_V3.matcher(file.getName());
+    if (!matcher.matches()) {
+      return null;
+    }
+    int id = Integer.parseInt(Assertions.checkNotNull(matcher.group(1)));
+    @Nullable String key = index.getKeyForId(id);
+    if (key == null) {
+      return null;
+    }
+    long position = Long.parseLong(Assertions.checkNotNull(matcher.group(2)));
+    return createLookup(key, position);
+  }
+
   /**
    * Creates a hole span.
    *
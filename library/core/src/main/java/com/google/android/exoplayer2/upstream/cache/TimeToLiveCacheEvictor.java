@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Clock;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Evicts cache files once they've expired, and delegates all other eviction decisions to another
+ * {@link CacheEvictor}.
+ *
+ * <p>A resource expires at the time stored under {@link ContentMetadata#KEY_EXPIRY_TIME_MS} in its
+ * {@link ContentMetadata}, which can be set using {@link
+ * ContentMetadataMutations#setExpiryTimeMs(ContentMetadataMutations, long)}. Spans of resources
+ * without an expiry time expire a default time to live after they're written, if one is specified.
+ * The expiry time of a span is read when it's added to the cache, and again whenever it's read from
+ * the cache if the delegate {@link CacheEvictor#requiresCacheSpanTouches() requires span touches}.
+ *
+ * <p>Expired spans are evicted when the cache is written to or read from, except that a span isn't
+ * evicted by the read that's about to use it. Each callback runs in O(log n) time, where n is the
+ * number of spans in the cache, plus O(log n) for each expired span that's evicted.
+ */
+public final class TimeToLiveCacheEvictor implements CacheEvictor {
+
+  private final CacheEvictor evictor;
+  private final long defaultTimeToLiveMs;
+  private final Clock clock;
+  private final TreeMap<CacheSpan, Entry> entries;
+  private final TreeSet<Entry> entriesByExpiryTime;
+
+  /**
+   * Creates an evictor.
+   *
+   * @param evictor The {@link CacheEvictor} to which eviction decisions other than expiry are
+   *     delegated.
+   * @param defaultTimeToLiveMs The time after which spans of resources without an expiry time
+   *     expire, counted from when they're written, or {@link C#TIME_UNSET} if such spans don't
+   *     expire.
+   */
+  public TimeToLiveCacheEvictor(CacheEvictor evictor, long defaultTimeToLiveMs) {
+    this(evictor, defaultTimeToLiveMs, Clock.DEFAULT);
+  }
+
+  @VisibleForTesting
+  /* package */ TimeToLiveCacheEvictor(
+      CacheEvictor evictor, long defaultTimeToLiveMs, Clock clock) {
+    this.evictor = evictor;
+    this.defaultTimeToLiveMs = defaultTimeToLiveMs;
+    this.clock = clock;
+    entries = new TreeMap<>();
+    entriesByExpiryTime = new TreeSet<>(TimeToLiveCacheEvictor::compare);
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return evictor.requiresCacheSpanTouches();
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    evictor.onCacheInitialized();
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    evictExpiredSpans(cache, /* spanInUse= */ null);
+    evictor.onStartFile(cache, key, position, length);
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    long expiryTimeMs = ContentMetadata.getExpiryTimeMs(cache.getContentMetadata(span.key));
+    if (expiryTimeMs == C.TIME_UNSET && defaultTimeToLiveMs != C.TIME_UNSET) {
+      expiryTimeMs = span.lastTouchTimestamp + defaultTimeToLiveMs;
+    }
+    Entry entry = new Entry(span, expiryTimeMs == C.TIME_UNSET ? Long.MAX_VALUE : expiryTimeMs);
+    entries.put(span, entry);
+    entriesByExpiryTime.add(entry);
+    evictor.onSpanAdded(cache, span);
+    evictExpiredSpans(cache, /* spanInUse= */ null);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    @Nullable Entry entry = entries.remove(span);
+    if (entry != null) {
+      entriesByExpiryTime.remove(entry);
+    }
+    evictor.onSpanRemoved(cache, span);
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable Entry entry = entries.remove(oldSpan);
+    if (entry != null) {
+      entriesByExpiryTime.remove(entry);
+      entry.span = newSpan;
+      long expiryTimeMs = ContentMetadata.getExpiryTimeMs(cache.getContentMetadata(newSpan.key));
+      if (expiryTimeMs != C.TIME_UNSET) {
+        entry.expiryTimeMs = expiryTimeMs;
+      }
+      entries.put(newSpan, entry);
+      entriesByExpiryTime.add(entry);
+    }
+    evictor.onSpanTouched(cache, oldSpan, newSpan);
+    evictExpiredSpans(cache, /* spanInUse= */ newSpan);
+  }
+
+  private void evictExpiredSpans(Cache cache, @Nullable CacheSpan spanInUse) {
+    long nowMs = clock.currentTimeMillis();
+    if (entriesByExpiryTime.isEmpty() || entriesByExpiryTime.first().expiryTimeMs > nowMs) {
+      return;
+    }
+    ArrayList<CacheSpan> expiredSpans = new ArrayList<>();
+    for (Entry entry : entriesByExpiryTime) {
+      if (entry.expiryTimeMs > nowMs) {
+        break;
+      }
+      if (entry.span != spanInUse) {
+        expiredSpans.add(entry.span);
+      }
+    }
+    for (int i = 0; i < expiredSpans.size(); i++) {
+      cache.removeSpan(expiredSpans.get(i));
+    }
+  }
+
+  private static int compare(Entry lhs, Entry rhs) {
+    if (lhs.expiryTimeMs != rhs.expiryTimeMs) {
+      return lhs.expiryTimeMs < rhs.expiryTimeMs ? -1 : 1;
+    }
+    // Use the standard compareTo method as a tie-break.
+    return lhs.span.compareTo(rhs.span);
+  }
+
+  private static final class Entry {
+
+    public CacheSpan span;
+    public long expiryTimeMs;
+
+    public Entry(CacheSpan span, long expiryTimeMs) {
+      this.span = span;
+      this.expiryTimeMs = expiryTimeMs;
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.CacheSpanQueue.Node;
+import java.util.TreeMap;
+
+/**
+ * Evicts cache files using a window TinyLFU (W-TinyLFU) policy.
+ *
+ * <p>Spans enter a small least recently used window when they're added to the cache. Spans that
+ * leave the window are only admitted to the main part of the cache if they've been used more
+ * frequently than the spans they would displace, with frequencies being estimated by a compact
+ * sketch of recent accesses. The main part of the cache is managed in the same way as by {@link
+ * SegmentedLruCacheEvictor}. Content that's used frequently therefore stays in the cache even if a
+ * large amount of content is added and read only once.
+ *
+ * <p>Each callback runs in O(log n) time, where n is the number of spans in the cache.
+ */
+public final class TinyLfuCacheEvictor implements CacheEvictor {
+
+  /** The default fraction of the cache that's used by the window. */
+  public static final float DEFAULT_WINDOW_FRACTION = 0.01f;
+  /** The default number of distinct spans for which frequencies are estimated. */
+  public static final int DEFAULT_EXPECTED_SPAN_COUNT = 8192;
+
+  /** The fraction of the main part of the cache that can be used by the protected segment. */
+  private static final float PROTECTED_FRACTION = 0.8f;
+
+  private final long maxBytes;
+  private final long maxWindowBytes;
+  private final long maxMainBytes;
+  private final long maxProtectedBytes;
+  private final FrequencySketch sketch;
+  private final TreeMap<CacheSpan, Node> nodes;
+  private final CacheSpanQueue window;
+  private final CacheSpanQueue probationary;
+  private final CacheSpanQueue protectedQueue;
+
+  /**
+   * Creates an evictor with a window of {@link #DEFAULT_WINDOW_FRACTION} of the cache, which
+   * estimates frequencies for {@link #DEFAULT_EXPECTED_SPAN_COUNT} distinct spans.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   */
+  public TinyLfuCacheEvictor(long maxBytes) {
+    this(maxBytes, DEFAULT_WINDOW_FRACTION, DEFAULT_EXPECTED_SPAN_COUNT);
+  }
+
+  /**
+   * Creates an evictor.
+   *
+   * @param maxBytes The maximum size of the cache, in bytes.
+   * @param windowFraction The fraction of the cache that's used by the window, in the range [0,
+   *     1].
+   * @param expectedSpanCount The number of distinct spans for which frequencies are estimated.
+   *     This should be at least the number of spans that fit into the cache. Larger values improve
+   *     the accuracy of the estimates, at the cost of using more memory.
+   */
+  public TinyLfuCacheEvictor(long maxBytes, float windowFraction, int expectedSpanCount) {
+    checkArgument(windowFraction >= 0 && windowFraction <= 1);
+    this.maxBytes = maxBytes;
+    maxWindowBytes = (long) (maxBytes * (double) windowFraction);
+    maxMainBytes = maxBytes - maxWindowBytes;
+    maxProtectedBytes = (long) (maxMainBytes * (double) PROTECTED_FRACTION);
+    sketch = new FrequencySketch(expectedSpanCount);
+    nodes = new TreeMap<>();
+    window = new CacheSpanQueue();
+    probationary = new CacheSpanQueue();
+    protectedQueue = new CacheSpanQueue();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    sketch.increment(hash(span));
+    Node node = new Node(span);
+    nodes.put(span, node);
+    window.addLast(node);
+    while (window.getBytes() > maxWindowBytes && !window.hasSingleNode()) {
+      admit(cache, checkNotNull(window.removeFirst()));
+    }
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    @Nullable Node node = nodes.remove(span);
+    @Nullable CacheSpanQueue queue = node != null ? node.getQueue() : null;
+    if (queue != null) {
+      queue.remove(checkNotNull(node));
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable Node node = nodes.remove(oldSpan);
+    @Nullable CacheSpanQueue queue = node != null ? node.getQueue() : null;
+    if (node == null || queue == null) {
+      onSpanAdded(cache, newSpan);
+      return;
+    }
+    sketch.increment(hash(newSpan));
+    queue.remove(node);
+    node.span = newSpan;
+    nodes.put(newSpan, node);
+    if (queue == window) {
+      window.addLast(node);
+      return;
+    }
+    protectedQueue.addLast(node);
+    while (protectedQueue.getBytes() > maxProtectedBytes && !protectedQueue.hasSingleNode()) {
+      probationary.addLast(checkNotNull(protectedQueue.removeFirst()));
+    }
+  }
+
+  /**
+   * Moves a span that's left the window into the main part of the cache if it's used more
+   * frequently than the spans that need to be evicted to make room for it, or evicts it otherwise.
+   */
+  private void admit(Cache cache, Node candidate) {
+    int candidateFrequency = sketch.frequency(hash(candidate.span));
+    while (probationary.getBytes() + protectedQueue.getBytes() + candidate.span.length
+        > maxMainBytes) {
+      @Nullable Node victim = probationary.first();
+      if (victim == null) {
+        victim = protectedQueue.first();
+      }
+      if (victim == null) {
+        break;
+      }
+      if (candidateFrequency <= sketch.frequency(hash(victim.span))) {
+        cache.removeSpan(candidate.span);
+        return;
+      }
+      cache.removeSpan(victim.span);
+    }
+    probationary.addLast(candidate);
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (window.getBytes() + probationary.getBytes() + protectedQueue.getBytes() + requiredSpace
+        > maxBytes) {
+      @Nullable Node node = probationary.first();
+      if (node == null) {
+        node = window.first();
+      }
+      if (node == null) {
+        node = protectedQueue.first();
+      }
+      if (node == null) {
+        return;
+      }
+      cache.removeSpan(node.span);
+    }
+  }
+
+  private static int hash(CacheSpan span) {
+    return 31 * span.key.hashCode() + (int) (span.position ^ (span.position >>> 32));
+  }
+}
@@ -16,24 +16,40 @@
 package com.google.android.exoplayer2.offline;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.assertThrows;
 
 import android.net.Uri;
+import androidx.annotation.Nullable;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.MediaItem;
 import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.CacheAsserts;
 import com.google.android.exoplayer2.testutil.FakeDataSet;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
 import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.testutil.WebServerDispatcher;
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer2.upstream.cache.Cache;
 import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
 import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
 import com.google.android.exoplayer2.upstream.cache.SimpleCache;
 import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -44,8 +60,15 @@ import org.junit.runner.RunWith;
 @RunWith(AndroidJUnit4.class)
 public class ProgressiveDownloaderTest {
 
+  private static final int PARALLEL_REQUESTS = 4;
+  private static final int MEDIA_LENGTH = 4 * 1024 * 1024;
+  private static final int THROTTLE_BYTES_PER_PERIOD = 64 * 1024;
+  private static final long THROTTLE_PERIOD_MS = 20;
+
   private File testDir;
   private Cache downloadCache;
+  private MockWebServer mockWebServer;
+  private ExecutorService executorService;
 
   @Before
   public void createDownloadCache() throws Exception {
@@ -59,12 +82,25 @@ public class ProgressiveDownloaderTest {
     downloadCache = new SimpleCache(testDir, new NoOpCacheEvictor(), databaseProvider);
   }
 
+  @Before
+  public void setUpServerAndExecutor() throws Exception {
+    mockWebServer = new MockWebServer();
+    mockWebServer.start();
+    executorService = Executors.newFixedThreadPool(PARALLEL_REQUESTS);
+  }
+
   @After
   public void deleteDownloadCache() {
     downloadCache.release();
     Util.recursiveDelete(testDir);
   }
 
+  @After
+  public void shutDownServerAndExecutor() throws Exception {
+    executorService.shutdown();
+    mockWebServer.shutdown();
+  }
+
   @Test
   public void download_afterSingleFailure_succeeds() throws Exception {
     Uri uri = Uri.parse("test:///test.mp4");
@@ -92,6 +128,176 @@ public class ProgressiveDownloaderTest {
     assertThat(progressListener.bytesDownloaded).isEqualTo(30);
   }
 
+  @Test
+  public void download_withParallelRequests_requestsEachPartOfMedia() throws Exception {
+    byte[] data = TestUtil.buildTestData(MEDIA_LENGTH);
+    Uri uri = startServer(data, /* supportsRangeRequests= */ true);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(downloadCache)
+            .setUpstreamDataSourceFactory(new DefaultHttpDataSource.Factory());
+    ProgressiveDownloader downloader =
+        new ProgressiveDownloader(
+            MediaItem.fromUri(uri), cacheDataSourceFactory, executorService, PARALLEL_REQUESTS);
+    TestProgressListener progressListener = new TestProgressListener();
+
+    downloader.download(progressListener);
+
+    CacheAsserts.assertDataCached(
+        downloadCache, new DataSpec.Builder().setUri(uri).build(), data);
+    assertThat(progressListener.bytesDownloaded).isEqualTo(MEDIA_LENGTH);
+    // One request to probe the server from the second byte, and one for each part of the media.
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(1 + PARALLEL_REQUESTS);
+    List<Long> requestPositions = new ArrayList<>();
+    for (int i = 0; i < mockWebServer.getRequestCount(); i++) {
+      requestPositions.add(getRequestPosition(mockWebServer.takeRequest()));
+    }
+    int partLength = MEDIA_LENGTH / PARALLEL_REQUESTS;
+    assertThat(requestPositions)
+        .containsExactly(1L, 0L, (long) partLength, 2L * partLength, 3L * partLength);
+  }
+
+  @Test
+  public void download_withParallelRequests_reportsSpeedupOverSingleRequest() throws Exception {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+    byte[] data = TestUtil.buildTestData(MEDIA_LENGTH);
+    Uri uri = startServer(data, /* supportsRangeRequests= */ true);
+    MediaItem mediaItem = MediaItem.fromUri(uri);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(downloadCache)
+            .setUpstreamDataSourceFactory(new DefaultHttpDataSource.Factory());
+
+    ProgressiveDownloader singleRequestDownloader =
+        new ProgressiveDownloader(
+            mediaItem, cacheDataSourceFactory, executorService, /* maxParallelRequests= */ 1);
+    long singleRequestStartTimeMs = System.currentTimeMillis();
+    singleRequestDownloader.download(/* progressListener= */ null);
+    long singleRequestDurationMs = System.currentTimeMillis() - singleRequestStartTimeMs;
+    singleRequestDownloader.remove();
+
+    ProgressiveDownloader parallelDownloader =
+        new ProgressiveDownloader(
+            mediaItem, cacheDataSourceFactory, executorService, PARALLEL_REQUESTS);
+    long parallelStartTimeMs = System.currentTimeMillis();
+    parallelDownloader.download(/* progressListener= */ null);
+    long parallelDurationMs = System.currentTimeMillis() - parallelStartTimeMs;
+
+    BenchmarkUtil.report(
+        "ProgressiveDownloader",
+        "single request: "
+            + singleRequestDurationMs
+            + "ms, "
+            + PARALLEL_REQUESTS
+            + " parallel requests: "
+            + parallelDurationMs
+            + "ms, speedup: "
+            + ((float) singleRequestDurationMs / parallelDurationMs));
+  }
+
+  @Test
+  public void download_withParallelRequests_withServerIgnoringRangeRequests_makesSingleRequest()
+      throws Exception {
+    byte[] data = TestUtil.buildTestData(MEDIA_LENGTH);
+    Uri uri = startServer(data, /* supportsRangeRequests= */ false);
+    MediaItem mediaItem = MediaItem.fromUri(uri);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(downloadCache)
+            .setUpstreamDataSourceFactory(new DefaultHttpDataSource.Factory());
+    ProgressiveDownloader downloader =
+        new ProgressiveDownloader(
+            mediaItem, cacheDataSourceFactory, executorService, PARALLEL_REQUESTS);
+    TestProgressListener progressListener = new TestProgressListener();
+
+    downloader.download(progressListener);
+
+    CacheAsserts.assertDataCached(
+        downloadCache, new DataSpec.Builder().setUri(uri).build(), data);
+    assertThat(progressListener.bytesDownloaded).isEqualTo(MEDIA_LENGTH);
+    // One request to probe the server, and one for the whole of the media.
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void download_withParallelRequests_withPartiallyCachedMedia_downloadsRemainingData()
+      throws Exception {
+    byte[] data = TestUtil.buildTestData(MEDIA_LENGTH);
+    Uri uri = startServer(data, /* supportsRangeRequests= */ true);
+    CacheDataSource.Factory cacheDataSourceFactory =
+        new CacheDataSource.Factory()
+            .setCache(downloadCache)
+            .setUpstreamDataSourceFactory(new DefaultHttpDataSource.Factory());
+    // Cache the first half of the media.
+    CacheDataSource dataSource = cacheDataSourceFactory.createDataSourceForDownloading();
+    dataSource.open(new DataSpec.Builder().setUri(uri).setLength(MEDIA_LENGTH / 2).build());
+    Util.readToEnd(dataSource);
+    dataSource.close();
+    int requestCount = mockWebServer.getRequestCount();
+    ProgressiveDownloader downloader =
+        new ProgressiveDownloader(
+            MediaItem.fromUri(uri), cacheDataSourceFactory, executorService, PARALLEL_REQUESTS);
+    TestProgressListener progressListener = new TestProgressListener();
+
+    downloader.download(progressListener);
+
+    CacheAsserts.assertDataCached(
+        downloadCache, new DataSpec.Builder().setUri(uri).build(), data);
+    assertThat(progressListener.bytesDownloaded).isEqualTo(MEDIA_LENGTH);
+    // The probe is made through the cache from the first byte that isn't cached, and the remaining
+    // half of the media is only large enough to be split into two requests.
+    assertThat(mockWebServer.getRequestCount() - requestCount).isEqualTo(1 + 2);
+    for (int i = 0; i < requestCount; i++) {
+      mockWebServer.takeRequest();
+    }
+    List<Long> requestPositions = new ArrayList<>();
+    for (int i = requestCount; i < mockWebServer.getRequestCount(); i++) {
+      requestPositions.add(getRequestPosition(mockWebServer.takeRequest()));
+    }
+    assertThat(requestPositions)
+        .containsExactly(MEDIA_LENGTH / 2L, MEDIA_LENGTH / 2L, 3L * MEDIA_LENGTH / 4);
+  }
+
+  /** Returns the position from which a recorded request asked for the media. */
+  private static long getRequestPosition(RecordedRequest request) {
+    @Nullable String range = request.getHeader("Range");
+    if (range == null) {
+      return 0;
+    }
+    // The range has the form bytes=<start>-[<end>].
+    return Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+  }
+
+  private Uri startServer(byte[] data, boolean supportsRangeRequests) {
+    WebServerDispatcher webServerDispatcher =
+        WebServerDispatcher.forResources(
+            ImmutableList.of(
+                new WebServerDispatcher.Resource.Builder()
+                    .setPath("/media.mp4")
+                    .setData(data)
+                    .supportsRangeRequests(supportsRangeRequests)
+                    .build()));
+    mockWebServer.setDispatcher(new ThrottlingDispatcher(webServerDispatcher));
+    return Uri.parse(mockWebServer.url("/media.mp4").toString());
+  }
+
+  /** Limits the rate at which each response body is sent, to simulate a slow connection. */
+  private static final class ThrottlingDispatcher extends Dispatcher {
+
+    private final Dispatcher dispatcher;
+
+    public ThrottlingDispatcher(Dispatcher dispatcher) {
+      this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+      return dispatcher
+          .dispatch(request)
+          .throttleBody(THROTTLE_BYTES_PER_PERIOD, THROTTLE_PERIOD_MS, MILLISECONDS);
+    }
+  }
+
   private static final class TestProgressListener implements Downloader.ProgressListener {
 
     public long bytesDownloaded;
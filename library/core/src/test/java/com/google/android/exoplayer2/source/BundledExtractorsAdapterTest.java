@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.ExtractorsFactory;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.flac.FlacExtractor;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.FileTypes;
+import com.google.common.collect.ImmutableMap;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link BundledExtractorsAdapter}. */
+@RunWith(AndroidJUnit4.class)
+public final class BundledExtractorsAdapterTest {
+
+  /** A URI without a file extension, so that extractors are created in the default order. */
+  private static final Uri URI = Uri.parse("https://example.com/media");
+  private static final Map<String, List<String>> EMPTY_HEADERS = Collections.emptyMap();
+
+  private static final ImmutableMap<String, String> CONTAINERS =
+      ImmutableMap.<String, String>builder()
+          .put("mp4", "media/mp4/sample.mp4")
+          .put("fmp4", "media/mp4/sample_fragmented.mp4")
+          .put("mkv", "media/mkv/sample.mkv")
+          .put("ts", "media/ts/sample_h264_mpeg_audio.ts")
+          .put("ps", "media/ts/sample_h262_mpeg_audio.ps")
+          .put("adts", "media/ts/sample_with_id3.adts")
+          .put("ac3", "media/ts/sample.ac3")
+          .put("ac4", "media/ts/sample.ac4")
+          .put("mp3", "media/mp3/bear-id3.mp3")
+          .put("ogg", "media/ogg/bear_vorbis.ogg")
+          .put("flac", "media/flac/bear.flac")
+          .put("wav", "media/wav/sample.wav")
+          .put("amr", "media/amr/sample_nb.amr")
+          .put("flv", "media/flv/sample.flv")
+          .build();
+
+  private static final int BENCHMARK_ITERATIONS = 20;
+
+  @Test
+  public void init_withUnknownUri_selectsSameExtractorAsSniffingInOrder() throws IOException {
+    for (Map.Entry<String, String> container : CONTAINERS.entrySet()) {
+      byte[] data = getData(container.getValue());
+      Extractor[] extractors = new DefaultExtractorsFactory().createExtractors(URI, EMPTY_HEADERS);
+      int index = getIndexOfFirstSniffingExtractor(extractors, data);
+      FileTypeCache fileTypeCache = new FileTypeCache();
+
+      readUntilFirstSample(
+          new BundledExtractorsAdapter(new DefaultExtractorsFactory(), fileTypeCache), URI, data);
+
+      assertWithMessage(container.getKey())
+          .that(fileTypeCache.getFileType(URI))
+          .isEqualTo(FileTypeSniffer.getFileType(extractors[index]));
+    }
+  }
+
+  @Test
+  public void init_withUriOrCachedFileType_selectsCachedOrFirstExtractorInFactoryOrder()
+      throws IOException {
+    Uri[] uris = {
+      Uri.parse("https://example.com/media.mp3"),
+      Uri.parse("https://example.com/media.aac"),
+      Uri.parse("https://example.com/media.ts"),
+      Uri.parse("https://example.com/media.mkv")
+    };
+    int[] cachedFileTypes = {FileTypes.UNKNOWN, FileTypes.MP3, FileTypes.ADTS, FileTypes.FLAC};
+    for (Map.Entry<String, String> container : CONTAINERS.entrySet()) {
+      byte[] data = getData(container.getValue());
+      for (Uri uri : uris) {
+        Extractor[] extractors =
+            new DefaultExtractorsFactory().createExtractors(uri, EMPTY_HEADERS);
+        @FileTypes.Type
+        int expectedFileType =
+            FileTypeSniffer.getFileType(
+                extractors[getIndexOfFirstSniffingExtractor(extractors, data)]);
+        for (int cachedFileType : cachedFileTypes) {
+          FileTypeCache fileTypeCache = new FileTypeCache();
+          fileTypeCache.putFileType(uri, cachedFileType);
+
+          readUntilFirstSample(
+              new BundledExtractorsAdapter(new DefaultExtractorsFactory(), fileTypeCache),
+              uri,
+              data);
+
+          // An extractor for the cached file type is selected over those before it if it can read
+          // the stream, which is only the case if the magic bytes were inconclusive.
+          if (canAnyExtractorOfFileTypeRead(extractors, cachedFileType, data)) {
+            assertWithMessage(container.getKey() + " " + uri + " " + cachedFileType)
+                .that(fileTypeCache.getFileType(uri))
+                .isAnyOf(expectedFileType, cachedFileType);
+          } else {
+            assertWithMessage(container.getKey() + " " + uri + " " + cachedFileType)
+                .that(fileTypeCache.getFileType(uri))
+                .isEqualTo(expectedFileType);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void init_withCachedFileType_selectsExtractorForInconclusiveMagicBytes()
+      throws IOException {
+    // The ID3 tag of this file is too long for its magic bytes to be found.
+    byte[] data = getData("media/flac/bear_with_id3.flac");
+    Uri uri = Uri.parse("https://example.com/audio.bin");
+    FileTypeCache fileTypeCache = new FileTypeCache();
+    fileTypeCache.putFileType(uri, FileTypes.FLAC);
+
+    readUntilFirstSample(
+        new BundledExtractorsAdapter(new DefaultExtractorsFactory(), fileTypeCache), uri, data);
+
+    assertThat(fileTypeCache.getFileType(uri)).isEqualTo(FileTypes.FLAC);
+  }
+
+  @Test
+  public void init_withCachedFileType_doesNotSniffEarlierExtractors() throws IOException {
+    byte[] data = getData("media/flac/bear_with_id3.flac");
+    Uri uri = Uri.parse("https://example.com/audio.bin");
+    SniffCountingExtractor firstExtractor = new SniffCountingExtractor();
+    SniffCountingExtractor secondExtractor = new SniffCountingExtractor();
+    ExtractorsFactory extractorsFactory =
+        () -> new Extractor[] {firstExtractor, secondExtractor, new FlacExtractor()};
+    FileTypeCache fileTypeCache = new FileTypeCache();
+
+    readUntilFirstSample(new BundledExtractorsAdapter(extractorsFactory, fileTypeCache), uri, data);
+    assertThat(fileTypeCache.getFileType(uri)).isEqualTo(FileTypes.FLAC);
+    assertThat(firstExtractor.sniffCount).isEqualTo(1);
+    assertThat(secondExtractor.sniffCount).isEqualTo(1);
+
+    readUntilFirstSample(new BundledExtractorsAdapter(extractorsFactory, fileTypeCache), uri, data);
+    // The first extractor is always sniffed, but the cached file type is found before the second.
+    assertThat(firstExtractor.sniffCount).isEqualTo(2);
+    assertThat(secondExtractor.sniffCount).isEqualTo(1);
+  }
+
+  @Test
+  public void read_withReadAheadBlockSize_readsFromDataReaderInBlocks() throws IOException {
+    byte[] data = getData("media/mp3/bear-id3.mp3");
+    BundledExtractorsAdapter adapter =
+        new BundledExtractorsAdapter(new DefaultExtractorsFactory(), /* fileTypeCache= */ null);
+    BundledExtractorsAdapter readAheadAdapter =
+        new BundledExtractorsAdapter(
+            new DefaultExtractorsFactory().setReadAheadBlockSize(/* readAheadBlockSize= */ 4096),
+            /* fileTypeCache= */ null);
+
+    FakeExtractorOutput output = readToEnd(adapter, data);
+    FakeExtractorOutput readAheadOutput = readToEnd(readAheadAdapter, data);
+
+    assertThat(readAheadOutput.trackOutputs.valueAt(0).getSampleCount())
+        .isEqualTo(output.trackOutputs.valueAt(0).getSampleCount());
+    // Without read-ahead, the extractor's reads of frame headers are each a read from the source.
+    assertThat(adapter.getUpstreamReadCount()).isGreaterThan(data.length / 4096 * 4L);
+    assertThat(readAheadAdapter.getUpstreamReadCount()).isAtMost(data.length / 4096 + 4L);
+  }
+
+  @Test
+  public void init_forEachContainer_reportsTimeToFirstSample() throws IOException {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+    StringBuilder results =
+        new StringBuilder("time to first sample (us), sequential -> single pass:");
+    for (Map.Entry<String, String> container : CONTAINERS.entrySet()) {
+      byte[] data = getData(container.getValue());
+      long sequentialTimeUs = 0;
+      long singlePassTimeUs = 0;
+      for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+        long startTimeNs = System.nanoTime();
+        readUntilFirstSample(
+            new BundledExtractorsAdapter(
+                new SequentialSniffingExtractorsFactory(data), /* fileTypeCache= */ null),
+            URI,
+            data);
+        sequentialTimeUs += (System.nanoTime() - startTimeNs) / 1000;
+        startTimeNs = System.nanoTime();
+        readUntilFirstSample(
+            new BundledExtractorsAdapter(new DefaultExtractorsFactory(), new FileTypeCache()),
+            URI,
+            data);
+        singlePassTimeUs += (System.nanoTime() - startTimeNs) / 1000;
+      }
+      results.append(
+          String.format(
+              Locale.US,
+              " %s=%d->%d",
+              container.getKey(),
+              sequentialTimeUs / BENCHMARK_ITERATIONS,
+              singlePassTimeUs / BENCHMARK_ITERATIONS));
+    }
+    BenchmarkUtil.report("BundledExtractorsAdapter", results.toString());
+  }
+
+  private static byte[] getData(String fileName) throws IOException {
+    return TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), fileName);
+  }
+
+  private static int getIndexOfFirstSniffingExtractor(Extractor[] extractors, byte[] data)
+      throws IOException {
+    for (int i = 0; i < extractors.length; i++) {
+      if (sniff(extractors[i], data)) {
+        return i;
+      }
+    }
+    throw new AssertionError("No extractor can read the data");
+  }
+
+  private static boolean canAnyExtractorOfFileTypeRead(
+      Extractor[] extractors, @FileTypes.Type int fileType, byte[] data) throws IOException {
+    for (Extractor extractor : extractors) {
+      if (FileTypeSniffer.getFileType(extractor) == fileType && sniff(extractor, data)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean sniff(Extractor extractor, byte[] data) throws IOException {
+    ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+    long length = dataSource.open(new DataSpec(URI));
+    ExtractorInput input = new DefaultExtractorInput(dataSource, /* position= */ 0, length);
+    try {
+      return extractor.sniff(input);
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  private static void readUntilFirstSample(BundledExtractorsAdapter adapter, Uri uri, byte[] data)
+      throws IOException {
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    PositionHolder positionHolder = new PositionHolder();
+    long position = 0;
+    while (true) {
+      ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+      long length =
+          dataSource.open(new DataSpec.Builder().setUri(uri).setPosition(position).build());
+      adapter.init(dataSource, uri, EMPTY_HEADERS, position, position + length, output);
+      int result = Extractor.RESULT_CONTINUE;
+      while (result == Extractor.RESULT_CONTINUE && !hasSample(output)) {
+        result = adapter.read(positionHolder);
+      }
+      if (result != Extractor.RESULT_SEEK) {
+        break;
+      }
+      position = positionHolder.position;
+    }
+    adapter.release();
+  }
+
+  private static FakeExtractorOutput readToEnd(BundledExtractorsAdapter adapter, byte[] data)
+      throws IOException {
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    PositionHolder positionHolder = new PositionHolder();
+    ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+    long length = dataSource.open(new DataSpec(URI));
+    adapter.init(dataSource, URI, EMPTY_HEADERS, /* position= */ 0, length, output);
+    int result = Extractor.RESULT_CONTINUE;
+    while (result == Extractor.RESULT_CONTINUE) {
+      result = adapter.read(positionHolder);
+    }
+    assertThat(result).isEqualTo(Extractor.RESULT_END_OF_INPUT);
+    return output;
+  }
+
+  private static boolean hasSample(FakeExtractorOutput output) {
+    for (int i = 0; i < output.trackOutputs.size(); i++) {
+      if (output.trackOutputs.valueAt(i).getSampleCount() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** An {@link Extractor} that can't read any stream, and counts the times it's sniffed. */
+  private static final class SniffCountingExtractor implements Extractor {
+
+    public int sniffCount;
+
+    @Override
+    public boolean sniff(ExtractorInput input) {
+      sniffCount++;
+      return false;
+    }
+
+    @Override
+    public void init(ExtractorOutput output) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void release() {
+      // Do nothing.
+    }
+  }
+
+  /**
+   * Sniffs the extractors of a {@link DefaultExtractorsFactory} in order, as was done before
+   * single-pass file type sniffing, and provides only the first one that can read the data.
+   */
+  private static final class SequentialSniffingExtractorsFactory implements ExtractorsFactory {
+
+    private final byte[] data;
+
+    public SequentialSniffingExtractorsFactory(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public Extractor[] createExtractors() {
+      return createExtractors(URI, EMPTY_HEADERS);
+    }
+
+    @Override
+    public Extractor[] createExtractors(Uri uri, Map<String, List<String>> headers) {
+      ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+      try {
+        long length = dataSource.open(new DataSpec(URI));
+        ExtractorInput input = new DefaultExtractorInput(dataSource, /* position= */ 0, length);
+        for (Extractor extractor : new DefaultExtractorsFactory().createExtractors(uri, headers)) {
+          try {
+            if (extractor.sniff(input)) {
+              return new Extractor[] {extractor};
+            }
+          } catch (EOFException e) {
+            // Do nothing.
+          } finally {
+            input.resetPeekPosition();
+          }
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      return new Extractor[0];
+    }
+  }
+}
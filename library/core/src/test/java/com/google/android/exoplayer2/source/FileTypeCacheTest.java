@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.FileTypes;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link FileTypeCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class FileTypeCacheTest {
+
+  @Test
+  public void getFileType_returnsFileTypeCachedForHostAndExtension() {
+    FileTypeCache fileTypeCache = new FileTypeCache();
+
+    fileTypeCache.putFileType(Uri.parse("https://example.com/a/audio.mp3"), FileTypes.MP3);
+
+    assertThat(fileTypeCache.getFileType(Uri.parse("https://example.com/b/other.mp3")))
+        .isEqualTo(FileTypes.MP3);
+    assertThat(fileTypeCache.getFileType(Uri.parse("https://example.com/a/audio.aac")))
+        .isEqualTo(FileTypes.UNKNOWN);
+    assertThat(fileTypeCache.getFileType(Uri.parse("https://example.org/a/audio.mp3")))
+        .isEqualTo(FileTypes.UNKNOWN);
+  }
+
+  @Test
+  public void getFileType_withOtherInstance_returnsUnknown() {
+    Uri uri = Uri.parse("https://example.com/audio.mp3");
+    new FileTypeCache().putFileType(uri, FileTypes.MP3);
+
+    assertThat(new FileTypeCache().getFileType(uri)).isEqualTo(FileTypes.UNKNOWN);
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static java.lang.Math.min;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.flac.FlacExtractor;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer2.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer2.extractor.ts.AdtsExtractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.FileTypes;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link FileTypeSniffer}. */
+@RunWith(AndroidJUnit4.class)
+public final class FileTypeSnifferTest {
+
+  @Test
+  public void sniffFileType_withContainers_returnsFileType() throws IOException {
+    assertThat(sniffFileType("media/mp4/sample.mp4")).isEqualTo(FileTypes.MP4);
+    assertThat(sniffFileType("media/mp4/sample_fragmented.mp4")).isEqualTo(FileTypes.MP4);
+    assertThat(sniffFileType("media/mkv/sample.mkv")).isEqualTo(FileTypes.MATROSKA);
+    assertThat(sniffFileType("media/ts/sample_h264_mpeg_audio.ts")).isEqualTo(FileTypes.TS);
+    assertThat(sniffFileType("media/ts/sample_h262_mpeg_audio.ps")).isEqualTo(FileTypes.PS);
+    assertThat(sniffFileType("media/ogg/bear_vorbis.ogg")).isEqualTo(FileTypes.OGG);
+    assertThat(sniffFileType("media/flv/sample.flv")).isEqualTo(FileTypes.FLV);
+    assertThat(sniffFileType("media/wav/sample.wav")).isEqualTo(FileTypes.WAV);
+    assertThat(sniffFileType("media/jpeg/pixel-motion-photo-shortened.jpg"))
+        .isEqualTo(FileTypes.JPEG);
+  }
+
+  @Test
+  public void sniffFileType_withElementaryStreams_returnsFileType() throws IOException {
+    assertThat(sniffFileType("media/ts/sample.adts")).isEqualTo(FileTypes.ADTS);
+    assertThat(sniffFileType("media/ts/sample_with_id3.adts")).isEqualTo(FileTypes.ADTS);
+    assertThat(sniffFileType("media/ts/sample.ac3")).isEqualTo(FileTypes.AC3);
+    assertThat(sniffFileType("media/ts/sample.eac3")).isEqualTo(FileTypes.AC3);
+    assertThat(sniffFileType("media/ts/sample.ac4")).isEqualTo(FileTypes.AC4);
+    assertThat(sniffFileType("media/mp3/bear-vbr-xing-header.mp3")).isEqualTo(FileTypes.MP3);
+    assertThat(sniffFileType("media/flac/bear.flac")).isEqualTo(FileTypes.FLAC);
+    assertThat(sniffFileType("media/amr/sample_nb.amr")).isEqualTo(FileTypes.AMR);
+  }
+
+  @Test
+  public void sniffFileType_withId3TagLongerThanPrefix_returnsUnknown() throws IOException {
+    assertThat(sniffFileType("media/flac/bear_with_id3.flac")).isEqualTo(FileTypes.UNKNOWN);
+  }
+
+  @Test
+  public void sniffFileType_withoutMagicBytes_returnsUnknown() throws IOException {
+    assertThat(sniffFileType("media/ts/sample_with_junk")).isEqualTo(FileTypes.UNKNOWN);
+    assertThat(FileTypeSniffer.sniffFileType(new byte[0], /* length= */ 0))
+        .isEqualTo(FileTypes.UNKNOWN);
+  }
+
+  @Test
+  public void sniffFileType_resetsPeekPosition() throws IOException {
+    byte[] data =
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "media/mp4/sample.mp4");
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+
+    FileTypeSniffer.sniffFileType(input);
+
+    assertThat(input.getPeekPosition()).isEqualTo(0);
+    assertThat(input.getPosition()).isEqualTo(0);
+  }
+
+  @Test
+  public void removeExtractorsForOtherFileTypes_keepsExtractorsThatSearchBeyondPrefixInOrder()
+      throws IOException {
+    byte[] data =
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "media/flac/bear.flac");
+    Extractor mp3Extractor = new Mp3Extractor();
+    Extractor oggExtractor = new OggExtractor();
+    Extractor fragmentedMp4Extractor = new FragmentedMp4Extractor();
+    Extractor matroskaExtractor = new MatroskaExtractor();
+    Extractor tsExtractor = new TsExtractor();
+    Extractor flacExtractor = new FlacExtractor();
+    Extractor adtsExtractor = new AdtsExtractor();
+    Extractor[] extractors = {
+      mp3Extractor,
+      oggExtractor,
+      fragmentedMp4Extractor,
+      matroskaExtractor,
+      tsExtractor,
+      flacExtractor,
+      adtsExtractor
+    };
+
+    Extractor[] remainingExtractors =
+        FileTypeSniffer.removeExtractorsForOtherFileTypes(extractors, data, data.length);
+
+    assertThat(remainingExtractors)
+        .asList()
+        .containsExactly(mp3Extractor, flacExtractor, adtsExtractor)
+        .inOrder();
+  }
+
+  @Test
+  public void removeExtractorsForOtherFileTypes_withoutMagicBytes_keepsExtractorsForFileType()
+      throws IOException {
+    // The ID3 tag of this file is too long for its magic bytes to be found.
+    byte[] data =
+        TestUtil.getByteArray(
+            ApplicationProvider.getApplicationContext(), "media/flac/bear_with_id3.flac");
+    Extractor oggExtractor = new OggExtractor();
+    Extractor fragmentedMp4Extractor = new FragmentedMp4Extractor();
+    Extractor flacExtractor = new FlacExtractor();
+    Extractor[] extractors = {oggExtractor, fragmentedMp4Extractor, flacExtractor};
+
+    Extractor[] remainingExtractors =
+        FileTypeSniffer.removeExtractorsForOtherFileTypes(
+            extractors, data, FileTypeSniffer.PREFIX_LENGTH);
+
+    assertThat(remainingExtractors).asList().containsExactly(oggExtractor, flacExtractor).inOrder();
+  }
+
+  @Test
+  public void removeExtractorsForOtherFileTypes_onlyRemovesExtractorsThatCantReadStream()
+      throws IOException {
+    String[] fileNames = {
+      "media/mp4/sample.mp4",
+      "media/mp4/sample_fragmented.mp4",
+      "media/mkv/sample.mkv",
+      "media/ts/sample_h264_mpeg_audio.ts",
+      "media/ts/sample_h262_mpeg_audio.ps",
+      "media/ogg/bear_vorbis.ogg",
+      "media/flv/sample.flv",
+      "media/wav/sample.wav",
+      "media/ts/sample_with_id3.adts",
+      "media/ts/sample.ac3",
+      "media/ts/sample.ac4",
+      "media/mp3/bear-id3.mp3",
+      "media/flac/bear.flac",
+      "media/flac/bear_with_id3.flac",
+      "media/amr/sample_nb.amr",
+      "media/ts/sample_with_junk"
+    };
+    for (String fileName : fileNames) {
+      byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), fileName);
+      Extractor[] extractors = new DefaultExtractorsFactory().createExtractors();
+      int prefixLength = min(data.length, FileTypeSniffer.PREFIX_LENGTH);
+      List<Extractor> remainingExtractors =
+          Arrays.asList(
+              FileTypeSniffer.removeExtractorsForOtherFileTypes(extractors, data, prefixLength));
+
+      for (Extractor extractor : extractors) {
+        if (!remainingExtractors.contains(extractor)) {
+          assertWithMessage(fileName + " " + extractor.getClass().getSimpleName())
+              .that(sniff(extractor, data))
+              .isFalse();
+        }
+      }
+    }
+  }
+
+  private static boolean sniff(Extractor extractor, byte[] data) throws IOException {
+    try {
+      return extractor.sniff(new FakeExtractorInput.Builder().setData(data).build());
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  private static int sniffFileType(String fileName) throws IOException {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), fileName);
+    return FileTypeSniffer.sniffFileType(new FakeExtractorInput.Builder().setData(data).build());
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.upstream.DataReader;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The copies made of each byte of a local file on its way from a {@link FileDataSource}, through a
+ * {@link DefaultExtractorInput} and a {@link SampleQueue}, into a direct decoder input buffer, as
+ * in progressive playback of a local file.
+ */
+/* package */ final class LocalFileSampleCopies {
+
+  /** The number of bytes read into arrays. */
+  public long bytesReadIntoArrays;
+  /** The number of bytes read straight into direct buffers. */
+  public long bytesReadIntoDirectBuffers;
+  /** The number of bytes read from the sample queue into the decoder input buffer. */
+  public long bytesReadFromQueue;
+  /** The duration of the read, in nanoseconds. */
+  public long durationNs;
+
+  private final boolean useDirectAllocations;
+
+  private LocalFileSampleCopies(boolean useDirectAllocations) {
+    this.useDirectAllocations = useDirectAllocations;
+  }
+
+  /**
+   * Reads a file of samples, and returns the copies that were made.
+   *
+   * @param file The file, made of {@code sampleCount} copies of {@code sampleData}.
+   * @param sampleData The data of each sample.
+   * @param sampleCount The number of samples.
+   * @param useDirectAllocations Whether the sample queue uses direct allocations.
+   * @param useDirectReads Whether the file is read straight into direct buffers. If false, it's
+   *     read into direct buffers via arrays, as readers without direct read support do.
+   * @return The copies that were made.
+   */
+  public static LocalFileSampleCopies read(
+      File file,
+      byte[] sampleData,
+      int sampleCount,
+      boolean useDirectAllocations,
+      boolean useDirectReads)
+      throws IOException {
+    int sampleSize = sampleData.length;
+    DefaultAllocator allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ true,
+            C.DEFAULT_BUFFER_SEGMENT_SIZE,
+            /* initialAllocationCount= */ 0,
+            useDirectAllocations);
+    SampleQueue sampleQueue = SampleQueue.createWithoutDrm(allocator);
+    sampleQueue.format(new Format.Builder().setSampleMimeType(MimeTypes.VIDEO_H264).build());
+    FormatHolder formatHolder = new FormatHolder();
+    // Like the codec input buffers of a decoder.
+    DecoderInputBuffer inputBuffer =
+        new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+    sampleQueue.read(
+        formatHolder, inputBuffer, /* formatRequired= */ false, /* loadingFinished= */ false);
+
+    FileDataSource dataSource = new FileDataSource();
+    CountingDataReader dataReader = new CountingDataReader(dataSource, useDirectReads);
+    LocalFileSampleCopies copies = new LocalFileSampleCopies(useDirectAllocations);
+    long startTimeNs = System.nanoTime();
+    try {
+      long length = dataSource.open(new DataSpec(Uri.fromFile(file)));
+      ExtractorInput input = new DefaultExtractorInput(dataReader, /* position= */ 0, length);
+      for (int i = 0; i < sampleCount; i++) {
+        int bytesRemaining = sampleSize;
+        while (bytesRemaining > 0) {
+          bytesRemaining -=
+              sampleQueue.sampleData(input, bytesRemaining, /* allowEndOfInput= */ false);
+        }
+        sampleQueue.sampleMetadata(
+            /* timeUs= */ i,
+            C.BUFFER_FLAG_KEY_FRAME,
+            sampleSize,
+            /* offset= */ 0,
+            /* cryptoData= */ null);
+        inputBuffer.clear();
+        int result =
+            sampleQueue.read(
+                formatHolder,
+                inputBuffer,
+                /* formatRequired= */ false,
+                /* loadingFinished= */ false);
+        assertThat(result).isEqualTo(C.RESULT_BUFFER_READ);
+        if (i == 0) {
+          assertThat(getData(inputBuffer)).isEqualTo(sampleData);
+        }
+        sampleQueue.discardToRead();
+      }
+    } finally {
+      dataSource.close();
+    }
+    copies.durationNs = System.nanoTime() - startTimeNs;
+    copies.bytesReadIntoArrays = dataReader.bytesReadIntoArrays;
+    copies.bytesReadIntoDirectBuffers = dataReader.bytesReadIntoDirectBuffers;
+    copies.bytesReadFromQueue = (long) sampleSize * sampleCount;
+    sampleQueue.release();
+    return copies;
+  }
+
+  /** Returns the number of bytes copied, counting a byte once for each copy. */
+  public long getBytesCopied() {
+    // Data read into arrays for a direct allocation is copied again, into the allocation.
+    long bytesCopiedIntoDirectAllocations = useDirectAllocations ? bytesReadIntoArrays : 0;
+    return bytesReadIntoArrays
+        + bytesCopiedIntoDirectAllocations
+        + bytesReadIntoDirectBuffers
+        + bytesReadFromQueue;
+  }
+
+  /** Returns the number of bytes copied into or out of arrays on the Java heap. */
+  public long getBytesCopiedThroughHeap() {
+    // Data in heap allocations is copied out of the heap again into the decoder input buffer.
+    long bytesCopiedOutOfHeap = useDirectAllocations ? bytesReadIntoArrays : bytesReadFromQueue;
+    return bytesReadIntoArrays + bytesCopiedOutOfHeap;
+  }
+
+  private static byte[] getData(DecoderInputBuffer inputBuffer) {
+    ByteBuffer data = inputBuffer.data.duplicate();
+    data.flip();
+    byte[] bytes = new byte[data.remaining()];
+    data.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * A {@link DataReader} that counts the bytes read into arrays and into direct buffers, and that
+   * optionally reads into direct buffers via arrays, as readers without direct read support do.
+   */
+  private static final class CountingDataReader implements DataReader {
+
+    private final DataReader dataReader;
+    private final boolean useDirectReads;
+
+    public long bytesReadIntoArrays;
+    public long bytesReadIntoDirectBuffers;
+
+    public CountingDataReader(DataReader dataReader, boolean useDirectReads) {
+      this.dataReader = dataReader;
+      this.useDirectReads = useDirectReads;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) throws IOException {
+      int bytesRead = dataReader.read(target, offset, length);
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        bytesReadIntoArrays += bytesRead;
+      }
+      return bytesRead;
+    }
+
+    @Override
+    public int read(ByteBuffer target) throws IOException {
+      if (!useDirectReads || target.hasArray()) {
+        // Reads into this reader's read(byte[], int, int), which counts the bytes.
+        return DataReader.super.read(target);
+      }
+      int bytesRead = dataReader.read(target);
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        bytesReadIntoDirectBuffers += bytesRead;
+      }
+      return bytesRead;
+    }
+  }
+}
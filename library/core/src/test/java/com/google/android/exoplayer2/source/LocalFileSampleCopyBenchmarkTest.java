@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the copies per byte and the throughput of reading a local file into a direct decoder
+ * input buffer through a {@link SampleQueue}, as in progressive playback of a local file. Only runs
+ * when benchmarks are enabled, see {@link BenchmarkUtil}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class LocalFileSampleCopyBenchmarkTest {
+
+  private static final int SAMPLE_SIZE = 256 * 1024;
+  private static final int SAMPLE_COUNT = 128;
+  private static final long FILE_LENGTH = (long) SAMPLE_SIZE * SAMPLE_COUNT;
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+  }
+
+  @Test
+  public void readFileToDirectBuffer() throws Exception {
+    byte[] sampleData = TestUtil.buildTestData(SAMPLE_SIZE);
+    File file = tempFolder.newFile();
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      for (int i = 0; i < SAMPLE_COUNT; i++) {
+        outputStream.write(sampleData);
+      }
+    }
+
+    // Warm up, so that the first measured read isn't slowed down by compilation.
+    for (boolean useDirectAllocations : new boolean[] {false, true}) {
+      LocalFileSampleCopies.read(
+          file, sampleData, SAMPLE_COUNT, useDirectAllocations, /* useDirectReads= */ true);
+    }
+
+    StringBuilder results = new StringBuilder();
+    appendResults(
+        results,
+        "heap allocations",
+        LocalFileSampleCopies.read(
+            file,
+            sampleData,
+            SAMPLE_COUNT,
+            /* useDirectAllocations= */ false,
+            /* useDirectReads= */ true));
+    appendResults(
+        results,
+        "direct allocations, read via arrays",
+        LocalFileSampleCopies.read(
+            file,
+            sampleData,
+            SAMPLE_COUNT,
+            /* useDirectAllocations= */ true,
+            /* useDirectReads= */ false));
+    appendResults(
+        results,
+        "direct allocations, read via ByteBuffers",
+        LocalFileSampleCopies.read(
+            file,
+            sampleData,
+            SAMPLE_COUNT,
+            /* useDirectAllocations= */ true,
+            /* useDirectReads= */ true));
+    BenchmarkUtil.report("LocalFileSampleCopy", results.toString());
+  }
+
+  private static void appendResults(
+      StringBuilder results, String label, LocalFileSampleCopies copies) {
+    results.append(
+        String.format(
+            Locale.US,
+            "%s: %.2f copies per byte, %.2f through the Java heap, %d MiB/s. ",
+            label,
+            (double) copies.getBytesCopied() / FILE_LENGTH,
+            (double) copies.getBytesCopiedThroughHeap() / FILE_LENGTH,
+            FILE_LENGTH * 1_000_000_000L / copies.durationNs / (1024 * 1024)));
+  }
+}
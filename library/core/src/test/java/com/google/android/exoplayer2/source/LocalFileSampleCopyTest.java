@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.io.File;
+import java.io.FileOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/** Tests the copies made of local file data on its way into a direct decoder input buffer. */
+@RunWith(AndroidJUnit4.class)
+public final class LocalFileSampleCopyTest {
+
+  private static final int SAMPLE_SIZE = 64 * 1024;
+  private static final int SAMPLE_COUNT = 16;
+  private static final long FILE_LENGTH = (long) SAMPLE_SIZE * SAMPLE_COUNT;
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private byte[] sampleData;
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    sampleData = TestUtil.buildTestData(SAMPLE_SIZE);
+    file = tempFolder.newFile();
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      for (int i = 0; i < SAMPLE_COUNT; i++) {
+        outputStream.write(sampleData);
+      }
+    }
+  }
+
+  @Test
+  public void read_withHeapAllocations_readsIntoArrays() throws Exception {
+    LocalFileSampleCopies copies =
+        LocalFileSampleCopies.read(
+            file,
+            sampleData,
+            SAMPLE_COUNT,
+            /* useDirectAllocations= */ false,
+            /* useDirectReads= */ true);
+
+    assertThat(copies.bytesReadIntoArrays).isEqualTo(FILE_LENGTH);
+    assertThat(copies.bytesReadIntoDirectBuffers).isEqualTo(0);
+    assertThat(copies.getBytesCopied()).isEqualTo(2 * FILE_LENGTH);
+    assertThat(copies.getBytesCopiedThroughHeap()).isEqualTo(2 * FILE_LENGTH);
+  }
+
+  @Test
+  public void read_withDirectAllocationsAndReads_doesNotCopyThroughHeap() throws Exception {
+    LocalFileSampleCopies copies =
+        LocalFileSampleCopies.read(
+            file,
+            sampleData,
+            SAMPLE_COUNT,
+            /* useDirectAllocations= */ true,
+            /* useDirectReads= */ true);
+
+    assertThat(copies.bytesReadIntoArrays).isEqualTo(0);
+    assertThat(copies.bytesReadIntoDirectBuffers).isEqualTo(FILE_LENGTH);
+    assertThat(copies.getBytesCopied()).isEqualTo(2 * FILE_LENGTH);
+    assertThat(copies.getBytesCopiedThroughHeap()).isEqualTo(0);
+  }
+
+  @Test
+  public void read_withDirectAllocationsWithoutDirectReads_readsViaArrays() throws Exception {
+    LocalFileSampleCopies copies =
+        LocalFileSampleCopies.read(
+            file,
+            sampleData,
+            SAMPLE_COUNT,
+            /* useDirectAllocations= */ true,
+            /* useDirectReads= */ false);
+
+    assertThat(copies.bytesReadIntoArrays).isEqualTo(FILE_LENGTH);
+    assertThat(copies.bytesReadIntoDirectBuffers).isEqualTo(0);
+    assertThat(copies.getBytesCopied()).isEqualTo(3 * FILE_LENGTH);
+    assertThat(copies.getBytesCopiedThroughHeap()).isEqualTo(2 * FILE_LENGTH);
+  }
+}
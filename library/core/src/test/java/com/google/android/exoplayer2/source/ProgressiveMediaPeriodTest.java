@@ -58,7 +58,10 @@ public final class ProgressiveMediaPeriodTest {
             sourceInfoRefreshListener,
             new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
             /* customCacheKey= */ null,
-            ProgressiveMediaSource.DEFAULT_LOADING_CHECK_INTERVAL_BYTES);
+            ProgressiveMediaSource.DEFAULT_LOADING_CHECK_INTERVAL_BYTES,
+            /* loaderThreadPool= */ null,
+            C.PRIORITY_PLAYBACK,
+            /* fileTypeCache= */ null);
 
     AtomicBoolean prepareCallbackCalled = new AtomicBoolean(false);
     AtomicBoolean sourceInfoRefreshCalledBeforeOnPrepared = new AtomicBoolean(false);
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.max;
+
+import android.os.Looper;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.drm.DrmSessionEventListener;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures how fast samples are copied through a {@link SampleQueue} into a direct buffer, and the
+ * garbage collection this causes, for heap and direct allocations. Only runs when benchmarks are
+ * enabled, see {@link BenchmarkUtil}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class SampleQueueBenchmarkTest {
+
+  private static final int SAMPLE_SIZE = 256 * 1024;
+  private static final int SAMPLE_COUNT = 500;
+
+  @Before
+  public void setUp() {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+  }
+
+  @Test
+  public void readToDirectBuffer_withHeapAndDirectAllocations() {
+    StringBuilder results = new StringBuilder();
+    for (boolean useDirectBuffers : new boolean[] {false, true}) {
+      DefaultAllocator allocator =
+          new DefaultAllocator(
+              /* trimOnReset= */ true,
+              C.DEFAULT_BUFFER_SEGMENT_SIZE,
+              /* initialAllocationCount= */ 0,
+              useDirectBuffers);
+      SampleQueue sampleQueue =
+          new SampleQueue(
+              allocator,
+              /* playbackLooper= */ Assertions.checkNotNull(Looper.myLooper()),
+              DrmSessionManager.DRM_UNSUPPORTED,
+              new DrmSessionEventListener.EventDispatcher());
+      FormatHolder formatHolder = new FormatHolder();
+      // Like the codec input buffers of a decoder for a high bitrate stream.
+      DecoderInputBuffer inputBuffer =
+          new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+      ParsableByteArray sampleData = new ParsableByteArray(TestUtil.buildTestData(SAMPLE_SIZE));
+      sampleQueue.format(new Format.Builder().setId("1").build());
+      sampleQueue.read(
+          formatHolder, inputBuffer, /* formatRequired= */ false, /* loadingFinished= */ false);
+
+      long gcCountBefore = getGcCount();
+      long gcTimeMsBefore = getGcTimeMs();
+      long startTimeNs = System.nanoTime();
+      for (int i = 0; i < SAMPLE_COUNT; i++) {
+        sampleData.setPosition(0);
+        sampleQueue.sampleData(sampleData, SAMPLE_SIZE);
+        sampleQueue.sampleMetadata(
+            /* timeUs= */ i,
+            C.BUFFER_FLAG_KEY_FRAME,
+            SAMPLE_SIZE,
+            /* offset= */ 0,
+            /* cryptoData= */ null);
+        inputBuffer.clear();
+        int result =
+            sampleQueue.read(
+                formatHolder,
+                inputBuffer,
+                /* formatRequired= */ false,
+                /* loadingFinished= */ false);
+        assertThat(result).isEqualTo(C.RESULT_BUFFER_READ);
+        sampleQueue.discardToRead();
+      }
+      long durationNs = System.nanoTime() - startTimeNs;
+      sampleQueue.release();
+
+      // Each sample is copied into the queue and out of it again.
+      long bytesCopied = 2L * SAMPLE_COUNT * SAMPLE_SIZE;
+      results.append(
+          String.format(
+              Locale.US,
+              " [%s: %d MiB/s, %d GCs, %d ms in GC]",
+              useDirectBuffers ? "direct" : "heap",
+              bytesCopied * C.NANOS_PER_SECOND / durationNs / (1024 * 1024),
+              getGcCount() - gcCountBefore,
+              getGcTimeMs() - gcTimeMsBefore));
+    }
+    BenchmarkUtil.report("SampleQueue", results.toString());
+  }
+
+  private static long getGcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += max(0, bean.getCollectionCount());
+    }
+    return count;
+  }
+
+  private static long getGcTimeMs() {
+    long timeMs = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      timeMs += max(0, bean.getCollectionTime());
+    }
+    return timeMs;
+  }
+}
@@ -27,6 +27,7 @@ import static java.util.Arrays.copyOfRange;
 import static org.junit.Assert.assertArrayEquals;
 import static org.mockito.Mockito.when;
 
+import android.net.Uri;
 import android.os.Looper;
 import androidx.annotation.Nullable;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -42,6 +43,8 @@ import com.google.android.exoplayer2.drm.ExoMediaCrypto;
 import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -62,6 +65,8 @@ import org.mockito.Mockito;
 public final class SampleQueueTest {
 
   private static final int ALLOCATION_SIZE = 16;
+  private static final int LARGE_SAMPLE_SIZE = C.DEFAULT_BUFFER_SEGMENT_SIZE * 3 + 7;
+  private static final int LARGE_SAMPLE_COUNT = 4;
 
   private static final Format FORMAT_1 = buildFormat(/* id= */ "1");
   private static final Format FORMAT_2 = buildFormat(/* id= */ "2");
@@ -370,6 +375,110 @@ public final class SampleQueueTest {
     assertAllocationCount(0);
   }
 
+  @Test
+  public void readMultiSamples_withDirectAllocations() {
+    useDirectAllocations();
+    writeTestData();
+    assertAllocationCount(10);
+    assertReadTestData();
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
+  @Test
+  public void readEncryptedSample_withDirectAllocations() {
+    useDirectAllocations();
+    when(mockDrmSession.getState()).thenReturn(DrmSession.STATE_OPENED_WITH_KEYS);
+    writeTestDataWithEncryptedSections();
+
+    assertReadFormat(/* formatRequired= */ false, FORMAT_ENCRYPTED_WITH_EXO_MEDIA_CRYPTO_TYPE);
+    assertReadEncryptedSample(/* sampleIndex= */ 0);
+    assertReadEncryptedSample(/* sampleIndex= */ 1);
+  }
+
+  @Test
+  public void sampleDataFromDataReader_withDirectAllocations_readsSampleData() throws IOException {
+    useDirectAllocations();
+    ByteArrayDataSource dataSource = new ByteArrayDataSource(DATA);
+    dataSource.open(new DataSpec(Uri.EMPTY));
+    sampleQueue.format(FORMAT_1);
+    int bytesWritten = 0;
+    while (bytesWritten < DATA.length) {
+      bytesWritten +=
+          sampleQueue.sampleData(
+              dataSource, DATA.length - bytesWritten, /* allowEndOfInput= */ false);
+    }
+    sampleQueue.sampleMetadata(
+        /* timeUs= */ 0,
+        C.BUFFER_FLAG_KEY_FRAME,
+        DATA.length,
+        /* offset= */ 0,
+        /* cryptoData= */ null);
+
+    assertReadFormat(/* formatRequired= */ false, FORMAT_1);
+    assertReadSample(
+        /* timeUs= */ 0,
+        /* isKeyFrame= */ true,
+        /* isDecodeOnly= */ false,
+        /* isEncrypted= */ false,
+        DATA,
+        /* offset= */ 0,
+        DATA.length);
+  }
+
+  @Test
+  public void readToDirectBuffer_withHeapAndDirectAllocations_readsLargeSamples() {
+    for (boolean useDirectBuffers : new boolean[] {false, true}) {
+      DefaultAllocator allocator =
+          new DefaultAllocator(
+              /* trimOnReset= */ true,
+              C.DEFAULT_BUFFER_SEGMENT_SIZE,
+              /* initialAllocationCount= */ 0,
+              useDirectBuffers);
+      SampleQueue sampleQueue =
+          new SampleQueue(
+              allocator,
+              /* playbackLooper= */ Assertions.checkNotNull(Looper.myLooper()),
+              mockDrmSessionManager,
+              eventDispatcher);
+      // Like the codec input buffers of a decoder for a high bitrate stream.
+      DecoderInputBuffer inputBuffer =
+          new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+      sampleQueue.format(FORMAT_1);
+      sampleQueue.read(
+          formatHolder, inputBuffer, /* formatRequired= */ false, /* loadingFinished= */ false);
+
+      for (int i = 0; i < LARGE_SAMPLE_COUNT; i++) {
+        // Each sample spans several allocations, and all but the first start mid-allocation.
+        byte[] sampleData = TestUtil.buildTestData(LARGE_SAMPLE_SIZE, /* seed= */ i);
+        sampleQueue.sampleData(new ParsableByteArray(sampleData), LARGE_SAMPLE_SIZE);
+        sampleQueue.sampleMetadata(
+            /* timeUs= */ i,
+            C.BUFFER_FLAG_KEY_FRAME,
+            LARGE_SAMPLE_SIZE,
+            /* offset= */ 0,
+            /* cryptoData= */ null);
+        inputBuffer.clear();
+        int result =
+            sampleQueue.read(
+                formatHolder,
+                inputBuffer,
+                /* formatRequired= */ false,
+                /* loadingFinished= */ false);
+
+        assertThat(result).isEqualTo(RESULT_BUFFER_READ);
+        assertThat(inputBuffer.data.isDirect()).isTrue();
+        byte[] readData = new byte[inputBuffer.data.position()];
+        inputBuffer.data.flip();
+        inputBuffer.data.get(readData);
+        assertThat(readData).isEqualTo(sampleData);
+        sampleQueue.discardToRead();
+      }
+      sampleQueue.release();
+      assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+    }
+  }
+
   @Test
   public void readMultiSamplesTwice() {
     writeTestData();
@@ -1393,6 +1502,21 @@ public final class SampleQueueTest {
         DATA, SAMPLE_SIZES, SAMPLE_OFFSETS, SAMPLE_TIMESTAMPS, SAMPLE_FORMATS, SAMPLE_FLAGS);
   }
 
+  private void useDirectAllocations() {
+    allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ false,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* useDirectBuffers= */ true);
+    sampleQueue =
+        new SampleQueue(
+            allocator,
+            /* playbackLooper= */ Assertions.checkNotNull(Looper.myLooper()),
+            mockDrmSessionManager,
+            eventDispatcher);
+  }
+
   private void writeTestDataWithEncryptedSections() {
     writeTestData(
         ENCRYPTED_SAMPLE_DATA,
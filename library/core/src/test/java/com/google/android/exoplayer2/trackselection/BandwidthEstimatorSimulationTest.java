@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.FakeMediaChunk;
+import com.google.android.exoplayer2.upstream.BandwidthEstimator;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.ExponentialWeightedAverageBandwidthEstimator;
+import com.google.android.exoplayer2.upstream.ParallelTransferBandwidthEstimator;
+import com.google.android.exoplayer2.upstream.SlidingPercentileBandwidthEstimator;
+import com.google.android.exoplayer2.upstream.TimeToFirstByteBandwidthEstimator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.common.base.Supplier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Replays network traces through an {@link AdaptiveTrackSelection} driven by a {@link
+ * DefaultBandwidthMeter} with each {@link BandwidthEstimator}, and checks the time spent
+ * rebuffering and the bitrates selected.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class BandwidthEstimatorSimulationTest {
+
+  private static final long CHUNK_DURATION_MS = 4_000;
+  private static final int CHUNK_COUNT = 75;
+  private static final long TARGET_BUFFER_MS = 20_000;
+  private static final long SIMULATION_STEP_MS = 100;
+  private static final long INITIAL_BITRATE_ESTIMATE = 1_000_000;
+
+  private static final int[] BITRATES = {250_000, 500_000, 1_000_000, 2_000_000, 4_000_000};
+
+  private static final String TRACE_CELLULAR_DROP = "cellular drop";
+  private static final String TRACE_FLUCTUATING = "fluctuating";
+  private static final String TRACE_HIGH_LATENCY = "high latency";
+
+  private static final String ESTIMATOR_SLIDING_PERCENTILE = "sliding percentile";
+  private static final String ESTIMATOR_DUAL_EWMA = "dual ewma";
+  private static final String ESTIMATOR_TTFB_AWARE_EWMA = "ttfb-aware ewma";
+  private static final String ESTIMATOR_PARALLEL = "parallel";
+
+  /** Network traces, by name. */
+  private static final Map<String, NetworkTrace> TRACES = new LinkedHashMap<>();
+
+  /** Factories of the {@link BandwidthEstimator BandwidthEstimators} to compare, by name. */
+  private static final Map<String, Supplier<BandwidthEstimator>> ESTIMATORS =
+      new LinkedHashMap<>();
+
+  static {
+    TRACES.put(
+        TRACE_CELLULAR_DROP,
+        new NetworkTrace(
+            /* timeToFirstByteMs= */ 150, 6000, 6000, 6000, 6000, 6000, 6000, 900, 900, 900, 900,
+            900, 900, 6000));
+    TRACES.put(
+        TRACE_FLUCTUATING,
+        new NetworkTrace(
+            /* timeToFirstByteMs= */ 250, 3500, 1200, 3500, 1200, 3500, 1200, 3500, 1200, 3500,
+            1200, 3500, 1200, 3500, 1200, 3500, 1200, 3500, 1200, 3500, 1200, 3500, 1200, 3500,
+            1200, 3500, 1200, 3500, 1200, 3500, 1200));
+    TRACES.put(TRACE_HIGH_LATENCY, new NetworkTrace(/* timeToFirstByteMs= */ 1200, 3000));
+
+    ESTIMATORS.put(
+        ESTIMATOR_SLIDING_PERCENTILE,
+        () ->
+            new SlidingPercentileBandwidthEstimator(
+                DefaultBandwidthMeter.DEFAULT_SLIDING_WINDOW_MAX_WEIGHT));
+    ESTIMATORS.put(ESTIMATOR_DUAL_EWMA, ExponentialWeightedAverageBandwidthEstimator::new);
+    ESTIMATORS.put(
+        ESTIMATOR_TTFB_AWARE_EWMA,
+        () ->
+            new TimeToFirstByteBandwidthEstimator(
+                new ExponentialWeightedAverageBandwidthEstimator(), CHUNK_DURATION_MS));
+    ESTIMATORS.put(ESTIMATOR_PARALLEL, ParallelTransferBandwidthEstimator::new);
+  }
+
+  @Test
+  public void simulatePlayback_withEachEstimator_onlyRebuffersForChunkInFlightWhenCapacityDrops() {
+    for (String traceName : TRACES.keySet()) {
+      for (String estimatorName : ESTIMATORS.keySet()) {
+        SimulationResult result = simulatePlayback(traceName, estimatorName);
+
+        String message = traceName + ", " + estimatorName;
+        assertWithMessage(message).that(result.chunkCount).isEqualTo(CHUNK_COUNT);
+        if (traceName.equals(TRACE_CELLULAR_DROP)) {
+          // Without chunk abandonment, the chunk in flight when capacity drops can't be helped.
+          assertWithMessage(message).that(result.rebufferTimeMs).isAtMost(CHUNK_DURATION_MS);
+        } else {
+          assertWithMessage(message).that(result.rebufferTimeMs).isEqualTo(0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void simulatePlayback_withMovingAverageEstimators_loadsAtMostOneChunkAboveCapacity() {
+    for (String traceName : TRACES.keySet()) {
+      int slidingPercentileOverCapacityChunkCount =
+          simulatePlayback(traceName, ESTIMATOR_SLIDING_PERCENTILE).overCapacityChunkCount;
+      for (String estimatorName :
+          new String[] {ESTIMATOR_DUAL_EWMA, ESTIMATOR_TTFB_AWARE_EWMA, ESTIMATOR_PARALLEL}) {
+        SimulationResult result = simulatePlayback(traceName, estimatorName);
+
+        String message = traceName + ", " + estimatorName;
+        assertWithMessage(message).that(result.overCapacityChunkCount).isAtMost(1);
+        assertWithMessage(message)
+            .that(result.overCapacityChunkCount)
+            .isAtMost(slidingPercentileOverCapacityChunkCount);
+      }
+    }
+  }
+
+  @Test
+  public void simulatePlayback_withHighLatency_timeToFirstByteEstimatorSelectsLowerBitrate() {
+    SimulationResult delegateResult = simulatePlayback(TRACE_HIGH_LATENCY, ESTIMATOR_DUAL_EWMA);
+    SimulationResult result = simulatePlayback(TRACE_HIGH_LATENCY, ESTIMATOR_TTFB_AWARE_EWMA);
+
+    assertThat(result.totalBitrate).isLessThan(delegateResult.totalBitrate);
+    assertThat(result.rebufferTimeMs).isEqualTo(0);
+  }
+
+  @Test
+  public void simulatePlayback_withEachEstimator_reportsRebufferTimeAndAverageBitrate() {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+    StringBuilder results = new StringBuilder();
+    for (String traceName : TRACES.keySet()) {
+      results.append('\n').append(traceName).append(':');
+      for (String estimatorName : ESTIMATORS.keySet()) {
+        SimulationResult result = simulatePlayback(traceName, estimatorName);
+        results.append(
+            String.format(
+                Locale.US,
+                " %s=[rebuffer %d ms, avg %d kbps, %d switches, %d above capacity]",
+                estimatorName,
+                result.rebufferTimeMs,
+                result.totalBitrate / result.chunkCount / 1000,
+                result.switchCount,
+                result.overCapacityChunkCount));
+      }
+    }
+    BenchmarkUtil.report("BandwidthEstimator simulation", results.toString());
+  }
+
+  private static SimulationResult simulatePlayback(String traceName, String estimatorName) {
+    return simulatePlayback(
+        checkNotNull(TRACES.get(traceName)), checkNotNull(ESTIMATORS.get(estimatorName)).get());
+  }
+
+  private static SimulationResult simulatePlayback(
+      NetworkTrace trace, BandwidthEstimator bandwidthEstimator) {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setInitialBitrateEstimate(INITIAL_BITRATE_ESTIMATE)
+            .setResetOnNetworkTypeChange(false)
+            .setBandwidthEstimator(bandwidthEstimator)
+            .setClock(clock)
+            .build();
+    Format[] formats = new Format[BITRATES.length];
+    for (int i = 0; i < BITRATES.length; i++) {
+      formats[i] =
+          new Format.Builder()
+              .setSampleMimeType(MimeTypes.VIDEO_H264)
+              .setAverageBitrate(BITRATES[i])
+              .setWidth(320 << i)
+              .setHeight(180 << i)
+              .build();
+    }
+    int[] tracks = new int[BITRATES.length];
+    for (int i = 0; i < tracks.length; i++) {
+      tracks[i] = i;
+    }
+    AdaptiveTrackSelection trackSelection =
+        new AdaptiveTrackSelection(new TrackGroup(formats), tracks, bandwidthMeter);
+    MediaChunkIterator[] mediaChunkIterators = new MediaChunkIterator[BITRATES.length];
+    for (int i = 0; i < mediaChunkIterators.length; i++) {
+      mediaChunkIterators[i] = MediaChunkIterator.EMPTY;
+    }
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com/chunk"));
+    Playback playback = new Playback(clock);
+    List<FakeMediaChunk> queue = new ArrayList<>();
+    SimulationResult result = new SimulationResult();
+    int previousBitrate = Format.NO_VALUE;
+
+    for (int chunkIndex = 0; chunkIndex < CHUNK_COUNT; chunkIndex++) {
+      long chunkStartTimeMs = chunkIndex * CHUNK_DURATION_MS;
+      while (chunkStartTimeMs - playback.positionMs > TARGET_BUFFER_MS - CHUNK_DURATION_MS) {
+        playback.advanceTime(SIMULATION_STEP_MS);
+      }
+      while (!queue.isEmpty() && queue.get(0).endTimeUs <= playback.positionMs * 1000) {
+        queue.remove(0);
+      }
+      trackSelection.updateSelectedTrack(
+          /* playbackPositionUs= */ playback.positionMs * 1000,
+          /* bufferedDurationUs= */ (chunkStartTimeMs - playback.positionMs) * 1000,
+          /* availableDurationUs= */ C.TIME_UNSET,
+          queue,
+          mediaChunkIterators);
+      Format format = trackSelection.getSelectedFormat();
+
+      long bytesRemaining = format.bitrate * CHUNK_DURATION_MS / 8000;
+      bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+      playback.advanceTime(trace.timeToFirstByteMs);
+      bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+      if (format.bitrate > trace.getCapacity(clock.elapsedRealtime())) {
+        result.overCapacityChunkCount++;
+      }
+      while (bytesRemaining > 0) {
+        long capacity = trace.getCapacity(clock.elapsedRealtime());
+        long bytes = Math.min(bytesRemaining, capacity * SIMULATION_STEP_MS / 8000);
+        // The last step of a transfer may be shorter.
+        playback.advanceTime((bytes * 8000 + capacity - 1) / capacity);
+        bandwidthMeter.onBytesTransferred(dataSource, dataSpec, /* isNetwork= */ true, (int) bytes);
+        bytesRemaining -= bytes;
+      }
+      bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+
+      playback.onChunkLoaded(chunkStartTimeMs + CHUNK_DURATION_MS);
+      queue.add(
+          new FakeMediaChunk(
+              format,
+              /* startTimeUs= */ chunkStartTimeMs * 1000,
+              /* endTimeUs= */ (chunkStartTimeMs + CHUNK_DURATION_MS) * 1000,
+              trackSelection.getSelectionReason()));
+      result.chunkCount++;
+      result.totalBitrate += format.bitrate;
+      if (previousBitrate != Format.NO_VALUE && previousBitrate != format.bitrate) {
+        result.switchCount++;
+      }
+      previousBitrate = format.bitrate;
+    }
+    result.rebufferTimeMs = playback.rebufferTimeMs;
+    return result;
+  }
+
+  /**
+   * A network whose capacity changes every 10 seconds, given in kbps. The last capacity is kept
+   * once the trace is exhausted.
+   */
+  private static final class NetworkTrace {
+
+    private static final long PERIOD_DURATION_MS = 10_000;
+
+    public final long timeToFirstByteMs;
+    private final int[] capacitiesKbps;
+
+    public NetworkTrace(long timeToFirstByteMs, int... capacitiesKbps) {
+      this.timeToFirstByteMs = timeToFirstByteMs;
+      this.capacitiesKbps = capacitiesKbps;
+    }
+
+    /** Returns the capacity at the given time, in bits per second. */
+    public long getCapacity(long timeMs) {
+      int index = (int) Math.min(timeMs / PERIOD_DURATION_MS, capacitiesKbps.length - 1);
+      return capacitiesKbps[index] * 1000L;
+    }
+  }
+
+  /** Plays out buffered media as time advances, and keeps track of the time spent rebuffering. */
+  private static final class Playback {
+
+    private final FakeClock clock;
+
+    public long positionMs;
+    public long rebufferTimeMs;
+
+    private long bufferedPositionMs;
+    private boolean started;
+
+    public Playback(FakeClock clock) {
+      this.clock = clock;
+    }
+
+    public void advanceTime(long timeMs) {
+      clock.advanceTime(timeMs);
+      if (!started) {
+        // Time before the first chunk is loaded is startup time, which isn't counted.
+        return;
+      }
+      long playedTimeMs = Math.min(timeMs, bufferedPositionMs - positionMs);
+      positionMs += playedTimeMs;
+      rebufferTimeMs += timeMs - playedTimeMs;
+    }
+
+    public void onChunkLoaded(long chunkEndTimeMs) {
+      bufferedPositionMs = chunkEndTimeMs;
+      started = true;
+    }
+  }
+
+  private static final class SimulationResult {
+
+    public int chunkCount;
+    public long totalBitrate;
+    public int switchCount;
+    /** The number of chunks whose bitrate was above the network capacity when they were loaded. */
+    public int overCapacityChunkCount;
+    public long rebufferTimeMs;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the throughput of {@link DefaultAllocator} when multiple threads allocate and release
+ * concurrently. Only runs when benchmarks are enabled, see {@link BenchmarkUtil}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultAllocatorBenchmarkTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+  private static final int[] THREAD_COUNTS = new int[] {1, 2, 4, 8};
+  private static final int ITERATIONS_PER_THREAD = 200_000;
+  /** The number of allocations each thread holds, like a sample queue's writer. */
+  private static final int HELD_ALLOCATION_COUNT = 16;
+
+  @Before
+  public void setUp() {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+  }
+
+  @Test
+  public void allocateAndRelease_onMultipleThreads() throws Exception {
+    StringBuilder results = new StringBuilder("allocate/release pairs per second:");
+    for (int threadCount : THREAD_COUNTS) {
+      DefaultAllocator allocator =
+          new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+      CountDownLatch startLatch = new CountDownLatch(1);
+      ArrayList<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < threadCount; i++) {
+        Thread thread =
+            new Thread(
+                () -> {
+                  Allocation[] heldAllocations = new Allocation[HELD_ALLOCATION_COUNT];
+                  try {
+                    startLatch.await();
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                  }
+                  for (int j = 0; j < ITERATIONS_PER_THREAD; j++) {
+                    int index = j % HELD_ALLOCATION_COUNT;
+                    if (heldAllocations[index] != null) {
+                      allocator.release(heldAllocations[index]);
+                    }
+                    heldAllocations[index] = allocator.allocate();
+                  }
+                  allocator.release(heldAllocations);
+                });
+        thread.start();
+        threads.add(thread);
+      }
+      long startTimeNs = System.nanoTime();
+      startLatch.countDown();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      long durationNs = System.nanoTime() - startTimeNs;
+
+      long operationsPerSecond =
+          (long) threadCount * ITERATIONS_PER_THREAD * 1_000_000_000L / durationNs;
+      results.append(' ').append(threadCount).append(" threads=").append(operationsPerSecond);
+    }
+    BenchmarkUtil.report("DefaultAllocator", results.toString());
+  }
+}
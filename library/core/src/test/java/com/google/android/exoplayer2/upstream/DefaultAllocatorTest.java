@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link DefaultAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  @Test
+  public void allocateAndRelease_updatesTotalBytesAllocated() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+    Allocation allocation3 = allocator.allocate();
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(3 * ALLOCATION_SIZE);
+
+    allocator.release(allocation1);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+
+    allocator.release(new Allocation[] {allocation2, allocation3});
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void allocate_afterRelease_reusesAllocation() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+    Allocation allocation = allocator.allocate();
+    allocator.release(allocation);
+
+    assertThat(allocator.allocate()).isSameInstanceAs(allocation);
+  }
+
+  @Test
+  public void allocate_afterReleaseOnOtherThread_reusesAllocation() throws Exception {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+    Allocation[] allocations = new Allocation[20];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+
+    runOnNewThread(() -> allocator.release(allocations));
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+
+    Allocation allocation = allocator.allocate();
+    assertThat(allocations).asList().contains(allocation);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void allocate_afterBulkRelease_reusesAllAllocations() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+    Allocation[] allocations = new Allocation[4];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    allocator.release(allocations);
+
+    ArrayList<Allocation> reusedAllocations = new ArrayList<>();
+    for (int i = 0; i < allocations.length; i++) {
+      reusedAllocations.add(allocator.allocate());
+    }
+
+    assertThat(reusedAllocations).containsExactlyElementsIn(allocations);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(4 * ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void trim_withAllocationInUse_keepsTotalBytesAllocated() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+    Allocation allocation = allocator.allocate();
+
+    allocator.trim();
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+
+    allocator.release(allocation);
+    allocator.trim();
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void setTargetBufferSize_belowAvailableBytes_discardsAvailableAllocations() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+    allocator.setTargetBufferSize(10 * ALLOCATION_SIZE);
+    Allocation allocation = allocator.allocate();
+    allocator.release(allocation);
+
+    allocator.setTargetBufferSize(0);
+
+    assertThat(allocator.allocate()).isNotSameInstanceAs(allocation);
+  }
+
+  @Test
+  public void trim_keepsAllocationsUpToTargetBufferSize() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+    allocator.setTargetBufferSize(2 * ALLOCATION_SIZE);
+    Allocation[] allocations = new Allocation[20];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    allocator.release(allocations);
+
+    allocator.trim();
+
+    ArrayList<Allocation> reusedAllocations = new ArrayList<>();
+    for (int i = 0; i < allocations.length; i++) {
+      Allocation allocation = allocator.allocate();
+      for (Allocation releasedAllocation : allocations) {
+        if (allocation == releasedAllocation) {
+          reusedAllocations.add(allocation);
+        }
+      }
+    }
+    assertThat(reusedAllocations).hasSize(2);
+  }
+
+  @Test
+  public void trim_keepsInitialAllocations() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ true, ALLOCATION_SIZE, /* initialAllocationCount= */ 5);
+    Allocation[] allocations = new Allocation[10];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    allocator.release(allocations);
+
+    allocator.reset();
+
+    int initialAllocationCount = 0;
+    for (int i = 0; i < allocations.length; i++) {
+      Allocation allocation = allocator.allocate();
+      if (allocation.data.length == 5 * ALLOCATION_SIZE) {
+        initialAllocationCount++;
+      }
+    }
+    assertThat(initialAllocationCount).isEqualTo(5);
+  }
+
+  @Test
+  public void allocate_withDirectBuffers_returnsDirectAllocations() {
+    DefaultAllocator allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ true,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 2,
+            /* useDirectBuffers= */ true);
+
+    Allocation[] allocations = new Allocation[3];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+      assertThat(allocations[i].isDirect()).isTrue();
+      assertThat(allocations[i].buffer.isDirect()).isTrue();
+      assertThat(allocations[i].buffer.capacity() - allocations[i].offset)
+          .isAtLeast(ALLOCATION_SIZE);
+    }
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(3 * ALLOCATION_SIZE);
+    allocator.release(allocations);
+    allocator.trim();
+
+    // The two allocations made up front share a buffer, and aren't discarded.
+    assertThat(allocator.allocate().buffer.capacity()).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(allocator.allocate().buffer.capacity()).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(allocator.allocate().buffer.capacity()).isEqualTo(ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void allocateAndRelease_onMultipleThreads_releasesAllAllocations() throws Exception {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE);
+    ArrayList<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                Allocation[] heldAllocations = new Allocation[16];
+                for (int j = 0; j < 10_000; j++) {
+                  int index = j % heldAllocations.length;
+                  if (heldAllocations[index] != null) {
+                    allocator.release(heldAllocations[index]);
+                  }
+                  heldAllocations[index] = allocator.allocate();
+                }
+                allocator.release(heldAllocations);
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  private static void runOnNewThread(Runnable runnable) throws InterruptedException {
+    Thread thread = new Thread(runnable);
+    thread.start();
+    thread.join();
+  }
+}
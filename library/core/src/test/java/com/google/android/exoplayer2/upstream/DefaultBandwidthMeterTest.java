@@ -543,6 +543,30 @@ public final class DefaultBandwidthMeterTest {
     assertThat(bitrateEstimatesAfterReset).isEqualTo(bitrateEstimatesWithNewInstance);
   }
 
+  @Test
+  public void bandwidthEstimator_providesBitrateEstimate() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBandwidthEstimator(new ParallelTransferBandwidthEstimator())
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://test.com"));
+
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    for (int i = 0; i < 10; i++) {
+      clock.advanceTime(100);
+      // 8 Mbps.
+      bandwidthMeter.onBytesTransferred(
+          dataSource, dataSpec, /* isNetwork= */ true, /* bytes= */ 100_000);
+    }
+
+    // The estimate is updated before the transfer ends.
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(8_000_000);
+  }
+
   @Test
   @SuppressWarnings("deprecation")
   public void defaultInitialBitrateEstimate_withoutContext_isReasonable() {
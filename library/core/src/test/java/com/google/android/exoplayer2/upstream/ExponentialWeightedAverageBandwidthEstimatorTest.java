@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link ExponentialWeightedAverageBandwidthEstimator}. */
+@RunWith(AndroidJUnit4.class)
+public final class ExponentialWeightedAverageBandwidthEstimatorTest {
+
+  private final DataSource dataSource = new FakeDataSource();
+
+  @Test
+  public void getBandwidthEstimate_beforeEnoughBytesTransferred_isNotAvailable() {
+    ExponentialWeightedAverageBandwidthEstimator estimator =
+        new ExponentialWeightedAverageBandwidthEstimator();
+
+    transfer(estimator, /* startTimeMs= */ 0, /* durationMs= */ 100, /* bytes= */ 64 * 1024);
+
+    assertThat(estimator.getBandwidthEstimate())
+        .isEqualTo(BandwidthEstimator.ESTIMATE_NOT_AVAILABLE);
+  }
+
+  @Test
+  public void getBandwidthEstimate_withConstantThroughput_returnsThroughput() {
+    ExponentialWeightedAverageBandwidthEstimator estimator =
+        new ExponentialWeightedAverageBandwidthEstimator();
+
+    // 500 KB per second is 4 Mbps.
+    transfer(estimator, /* startTimeMs= */ 0, /* durationMs= */ 1000, /* bytes= */ 500_000);
+    transfer(estimator, /* startTimeMs= */ 2000, /* durationMs= */ 1000, /* bytes= */ 500_000);
+
+    assertThat(estimator.getBandwidthEstimate()).isEqualTo(4_000_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_afterThroughputDrop_followsDropFasterThanSlidingPercentile() {
+    ExponentialWeightedAverageBandwidthEstimator estimator =
+        new ExponentialWeightedAverageBandwidthEstimator();
+    SlidingPercentileBandwidthEstimator slidingPercentileEstimator =
+        new SlidingPercentileBandwidthEstimator(
+            DefaultBandwidthMeter.DEFAULT_SLIDING_WINDOW_MAX_WEIGHT);
+    long timeMs = 0;
+    for (int i = 0; i < 10; i++) {
+      // 4 Mbps.
+      transfer(estimator, timeMs, /* durationMs= */ 1000, /* bytes= */ 500_000);
+      transfer(slidingPercentileEstimator, timeMs, /* durationMs= */ 1000, /* bytes= */ 500_000);
+      timeMs += 1000;
+    }
+
+    // 1 Mbps.
+    transfer(estimator, timeMs, /* durationMs= */ 4000, /* bytes= */ 500_000);
+    transfer(slidingPercentileEstimator, timeMs, /* durationMs= */ 4000, /* bytes= */ 500_000);
+
+    assertThat(estimator.getBandwidthEstimate()).isLessThan(2_000_000);
+    assertThat(slidingPercentileEstimator.getBandwidthEstimate()).isEqualTo(4_000_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_ignoresSmallSamples() {
+    ExponentialWeightedAverageBandwidthEstimator estimator =
+        new ExponentialWeightedAverageBandwidthEstimator();
+    transfer(estimator, /* startTimeMs= */ 0, /* durationMs= */ 1000, /* bytes= */ 500_000);
+
+    transfer(estimator, /* startTimeMs= */ 2000, /* durationMs= */ 500, /* bytes= */ 1000);
+
+    assertThat(estimator.getBandwidthEstimate()).isEqualTo(4_000_000);
+  }
+
+  @Test
+  public void reset_discardsSamples() {
+    ExponentialWeightedAverageBandwidthEstimator estimator =
+        new ExponentialWeightedAverageBandwidthEstimator();
+    transfer(estimator, /* startTimeMs= */ 0, /* durationMs= */ 1000, /* bytes= */ 500_000);
+
+    estimator.reset(/* nowMs= */ 1000);
+
+    assertThat(estimator.getBandwidthEstimate())
+        .isEqualTo(BandwidthEstimator.ESTIMATE_NOT_AVAILABLE);
+  }
+
+  private void transfer(
+      BandwidthEstimator estimator, long startTimeMs, long durationMs, int bytes) {
+    estimator.onTransferInitializing(dataSource, startTimeMs);
+    estimator.onTransferStart(dataSource, startTimeMs);
+    estimator.onBytesTransferred(dataSource, bytes, startTimeMs + durationMs);
+    estimator.onTransferEnd(dataSource, startTimeMs + durationMs);
+  }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.robolectric.RobolectricUtil.runMainLooperUntil;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link LoaderThreadPool}. */
+@RunWith(AndroidJUnit4.class)
+public final class LoaderThreadPoolTest {
+
+  private static final String THREAD_NAME = "LoaderThreadPoolTest";
+  private static final int PLAYLIST_ITEM_COUNT = 20;
+  private static final int LOADERS_PER_PLAYLIST_ITEM = 3;
+  private static final int LOADS_PER_LOADER = 5;
+
+  @Test
+  public void startLoading_withManyLoaders_usesAtMostMaxThreadCountThreads() throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(THREAD_NAME, /* maxThreadCount= */ 2);
+    Set<Thread> loadThreads = Collections.synchronizedSet(new HashSet<>());
+    AtomicInteger completedLoadCount = new AtomicInteger();
+    List<Loader> loaders = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      Loader loader = new Loader(threadPool, C.PRIORITY_PLAYBACK, /* loadsMayBlock= */ false);
+      loaders.add(loader);
+      loader.startLoading(
+          new FakeLoadable(
+              () -> {
+                loadThreads.add(Thread.currentThread());
+                Thread.sleep(10);
+              }),
+          new CountingCallback(completedLoadCount),
+          /* defaultMinRetryCount= */ 0);
+    }
+
+    runMainLooperUntil(() -> completedLoadCount.get() == 6);
+
+    assertThat(loadThreads.size()).isAtMost(2);
+    for (Thread thread : loadThreads) {
+      assertThat(thread.getName()).startsWith(THREAD_NAME);
+    }
+    for (Loader loader : loaders) {
+      loader.release();
+    }
+  }
+
+  @Test
+  public void cancelLoading_withSharedPool_interruptsLoadAndReportsCancellation()
+      throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(THREAD_NAME, /* maxThreadCount= */ 1);
+    Loader loader = new Loader(threadPool, C.PRIORITY_PLAYBACK, /* loadsMayBlock= */ false);
+    CountDownLatch loadStarted = new CountDownLatch(1);
+    AtomicBoolean loadInterrupted = new AtomicBoolean();
+    FakeLoadable loadable =
+        new FakeLoadable(
+            () -> {
+              loadStarted.countDown();
+              try {
+                Thread.sleep(10_000);
+              } catch (InterruptedException e) {
+                loadInterrupted.set(true);
+              }
+            });
+    AtomicBoolean loadCanceled = new AtomicBoolean();
+    loader.startLoading(
+        loadable,
+        new CountingCallback(new AtomicInteger()) {
+          @Override
+          public void onLoadCanceled(
+              FakeLoadable loadable,
+              long elapsedRealtimeMs,
+              long loadDurationMs,
+              boolean released) {
+            loadCanceled.set(true);
+          }
+        },
+        /* defaultMinRetryCount= */ 0);
+    assertThat(loadStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+    loader.cancelLoading();
+    runMainLooperUntil(loadCanceled::get);
+
+    assertThat(loadable.canceled).isTrue();
+    assertThat(loadInterrupted.get()).isTrue();
+    // The pool thread can run another load, without the interrupt leaking into it.
+    AtomicInteger completedLoadCount = new AtomicInteger();
+    AtomicBoolean nextLoadInterrupted = new AtomicBoolean();
+    loader.startLoading(
+        new FakeLoadable(() -> nextLoadInterrupted.set(Thread.currentThread().isInterrupted())),
+        new CountingCallback(completedLoadCount),
+        /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> completedLoadCount.get() == 1);
+    assertThat(nextLoadInterrupted.get()).isFalse();
+    loader.release();
+  }
+
+  @Test
+  public void release_withSharedPool_callsReleaseCallbackAfterLoadEnds() throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(THREAD_NAME, /* maxThreadCount= */ 2);
+    Loader loader = new Loader(threadPool, C.PRIORITY_PLAYBACK, /* loadsMayBlock= */ false);
+    CountDownLatch loadStarted = new CountDownLatch(1);
+    AtomicBoolean loadEnded = new AtomicBoolean();
+    ConditionVariable allowLoadToEnd = new ConditionVariable();
+    loader.startLoading(
+        new FakeLoadable(
+            () -> {
+              loadStarted.countDown();
+              allowLoadToEnd.blockUninterruptible();
+              loadEnded.set(true);
+            }),
+        new CountingCallback(new AtomicInteger()),
+        /* defaultMinRetryCount= */ 0);
+    assertThat(loadStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    AtomicBoolean loadEndedBeforeRelease = new AtomicBoolean();
+    CountDownLatch released = new CountDownLatch(1);
+
+    loader.release(
+        () -> {
+          loadEndedBeforeRelease.set(loadEnded.get());
+          released.countDown();
+        });
+    allowLoadToEnd.open();
+
+    assertThat(released.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(loadEndedBeforeRelease.get()).isTrue();
+  }
+
+  @Test
+  public void createSerialExecutor_runsHigherPriorityTasksFirst() throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(THREAD_NAME, /* maxThreadCount= */ 1);
+    Executor blockingExecutor =
+        threadPool.createSerialExecutor(C.PRIORITY_PLAYBACK, /* tasksMayBlock= */ false);
+    Executor lowPriorityExecutor =
+        threadPool.createSerialExecutor(C.PRIORITY_DOWNLOAD, /* tasksMayBlock= */ false);
+    Executor highPriorityExecutor =
+        threadPool.createSerialExecutor(C.PRIORITY_PLAYBACK, /* tasksMayBlock= */ false);
+    ConditionVariable blockingTaskStarted = new ConditionVariable();
+    ConditionVariable allowBlockingTaskToEnd = new ConditionVariable();
+    List<String> taskOrder = new CopyOnWriteArrayList<>();
+    CountDownLatch tasksFinished = new CountDownLatch(2);
+
+    blockingExecutor.execute(
+        () -> {
+          blockingTaskStarted.open();
+          allowBlockingTaskToEnd.blockUninterruptible();
+        });
+    blockingTaskStarted.blockUninterruptible();
+    lowPriorityExecutor.execute(new RecordingTask("low", taskOrder, tasksFinished));
+    highPriorityExecutor.execute(new RecordingTask("high", taskOrder, tasksFinished));
+    allowBlockingTaskToEnd.open();
+
+    assertThat(tasksFinished.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(taskOrder).containsExactly("high", "low").inOrder();
+  }
+
+  @Test
+  public void createSerialExecutor_withSamePriority_takesTurns() throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(THREAD_NAME, /* maxThreadCount= */ 1);
+    Executor executor1 =
+        threadPool.createSerialExecutor(C.PRIORITY_PLAYBACK, /* tasksMayBlock= */ false);
+    Executor executor2 =
+        threadPool.createSerialExecutor(C.PRIORITY_PLAYBACK, /* tasksMayBlock= */ false);
+    ConditionVariable blockingTaskStarted = new ConditionVariable();
+    ConditionVariable allowBlockingTaskToEnd = new ConditionVariable();
+    List<String> taskOrder = new CopyOnWriteArrayList<>();
+    CountDownLatch tasksFinished = new CountDownLatch(4);
+
+    executor1.execute(
+        () -> {
+          blockingTaskStarted.open();
+          allowBlockingTaskToEnd.blockUninterruptible();
+        });
+    blockingTaskStarted.blockUninterruptible();
+    executor1.execute(new RecordingTask("1a", taskOrder, tasksFinished));
+    executor1.execute(new RecordingTask("1b", taskOrder, tasksFinished));
+    executor2.execute(new RecordingTask("2a", taskOrder, tasksFinished));
+    executor2.execute(new RecordingTask("2b", taskOrder, tasksFinished));
+    allowBlockingTaskToEnd.open();
+
+    assertThat(tasksFinished.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(taskOrder).containsExactly("2a", "1a", "2b", "1b").inOrder();
+  }
+
+  @Test
+  public void startLoading_withBlockingLoadsFillingPool_runsOtherLoads() throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(THREAD_NAME, /* maxThreadCount= */ 1);
+    ConditionVariable allowBlockingLoadsToEnd = new ConditionVariable();
+    CountDownLatch blockingLoadsStarted = new CountDownLatch(2);
+    List<Loader> blockingLoaders = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      Loader loader = new Loader(threadPool, C.PRIORITY_PLAYBACK, /* loadsMayBlock= */ true);
+      blockingLoaders.add(loader);
+      loader.startLoading(
+          new FakeLoadable(
+              () -> {
+                blockingLoadsStarted.countDown();
+                allowBlockingLoadsToEnd.blockUninterruptible();
+              }),
+          new CountingCallback(new AtomicInteger()),
+          /* defaultMinRetryCount= */ 0);
+    }
+    assertThat(blockingLoadsStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    Loader loader = new Loader(threadPool, C.PRIORITY_PLAYBACK, /* loadsMayBlock= */ false);
+    AtomicInteger completedLoadCount = new AtomicInteger();
+
+    loader.startLoading(
+        new FakeLoadable(() -> {}),
+        new CountingCallback(completedLoadCount),
+        /* defaultMinRetryCount= */ 0);
+    runMainLooperUntil(() -> completedLoadCount.get() == 1);
+
+    assertThat(threadPool.getThreadCount()).isEqualTo(3);
+    allowBlockingLoadsToEnd.open();
+    loader.release();
+    for (Loader blockingLoader : blockingLoaders) {
+      blockingLoader.release();
+    }
+  }
+
+  @Test
+  public void create_withPriority_runsHigherPriorityLoadsFirst() throws Exception {
+    LoaderThreadPool threadPool = new LoaderThreadPool(THREAD_NAME, /* maxThreadCount= */ 1);
+    Executor blockingExecutor =
+        threadPool.createSerialExecutor(C.PRIORITY_PLAYBACK, /* tasksMayBlock= */ false);
+    ConditionVariable blockingTaskStarted = new ConditionVariable();
+    ConditionVariable allowBlockingTaskToEnd = new ConditionVariable();
+    blockingExecutor.execute(
+        () -> {
+          blockingTaskStarted.open();
+          allowBlockingTaskToEnd.blockUninterruptible();
+        });
+    blockingTaskStarted.blockUninterruptible();
+    Loader downloadLoader =
+        Loader.create(
+            THREAD_NAME, threadPool, C.PRIORITY_DOWNLOAD, /* loadsMayBlock= */ false);
+    Loader playbackLoader =
+        Loader.create(
+            THREAD_NAME, threadPool, C.PRIORITY_PLAYBACK, /* loadsMayBlock= */ false);
+    List<String> loadOrder = new CopyOnWriteArrayList<>();
+    AtomicInteger completedLoadCount = new AtomicInteger();
+
+    downloadLoader.startLoading(
+        new FakeLoadable(() -> loadOrder.add("download")),
+        new CountingCallback(completedLoadCount),
+        /* defaultMinRetryCount= */ 0);
+    playbackLoader.startLoading(
+        new FakeLoadable(() -> loadOrder.add("playback")),
+        new CountingCallback(completedLoadCount),
+        /* defaultMinRetryCount= */ 0);
+    allowBlockingTaskToEnd.open();
+    runMainLooperUntil(() -> completedLoadCount.get() == 2);
+
+    assertThat(loadOrder).containsExactly("playback", "download").inOrder();
+    downloadLoader.release();
+    playbackLoader.release();
+  }
+
+  @Test
+  public void startLoading_forConcatenatedPlaylist_usesAtMostMaxThreadCountThreads()
+      throws Exception {
+    Set<Thread> ownLoadThreads = Collections.synchronizedSet(new HashSet<>());
+    Set<Thread> sharedLoadThreads = Collections.synchronizedSet(new HashSet<>());
+
+    loadPlaylist(/* threadPool= */ null, ownLoadThreads);
+    loadPlaylist(
+        new LoaderThreadPool(THREAD_NAME, LoaderThreadPool.DEFAULT_MAX_THREAD_COUNT),
+        sharedLoadThreads);
+
+    assertThat(ownLoadThreads).hasSize(PLAYLIST_ITEM_COUNT * LOADERS_PER_PLAYLIST_ITEM);
+    assertThat(sharedLoadThreads.size()).isAtMost(LoaderThreadPool.DEFAULT_MAX_THREAD_COUNT);
+  }
+
+  @Test
+  public void startLoading_forConcatenatedPlaylist_reportsThreadCountAndMemory()
+      throws Exception {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+    String results =
+        "own threads: "
+            + loadPlaylist(
+                /* threadPool= */ null, Collections.synchronizedSet(new HashSet<>()))
+            + ", shared pool: "
+            + loadPlaylist(
+                new LoaderThreadPool(THREAD_NAME, LoaderThreadPool.DEFAULT_MAX_THREAD_COUNT),
+                Collections.synchronizedSet(new HashSet<>()));
+    BenchmarkUtil.report("LoaderThreadPool", results);
+  }
+
+  /**
+   * Creates loaders for each stream of each item of a playlist, runs loads on all of them, and
+   * returns a description of the number of threads used and the heap memory in use before the
+   * loaders are released.
+   *
+   * @param threadPool The {@link LoaderThreadPool} to use, or null for loaders with their own
+   *     threads.
+   * @param loadThreads A set to which the threads on which loads run are added.
+   */
+  private static String loadPlaylist(
+      @Nullable LoaderThreadPool threadPool, Set<Thread> loadThreads) throws Exception {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    long usedMemoryBefore = runtime.totalMemory() - runtime.freeMemory();
+    AtomicInteger completedLoadCount = new AtomicInteger();
+    List<Loader> loaders = new ArrayList<>();
+    for (int i = 0; i < PLAYLIST_ITEM_COUNT * LOADERS_PER_PLAYLIST_ITEM; i++) {
+      Loader loader =
+          Loader.create(
+              THREAD_NAME + ":" + i, threadPool, C.PRIORITY_PLAYBACK, /* loadsMayBlock= */ false);
+      loaders.add(loader);
+      startLoads(loader, loadThreads, completedLoadCount, LOADS_PER_LOADER);
+    }
+    int expectedLoadCount = PLAYLIST_ITEM_COUNT * LOADERS_PER_PLAYLIST_ITEM * LOADS_PER_LOADER;
+    runMainLooperUntil(() -> completedLoadCount.get() == expectedLoadCount);
+    int liveThreadCount = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().contains(THREAD_NAME)) {
+        liveThreadCount++;
+      }
+    }
+    System.gc();
+    long usedMemoryDelta = runtime.totalMemory() - runtime.freeMemory() - usedMemoryBefore;
+    for (Loader loader : loaders) {
+      loader.release();
+    }
+    return loadThreads.size()
+        + " threads used, "
+        + liveThreadCount
+        + " live, heap delta "
+        + usedMemoryDelta / 1024
+        + " KiB";
+  }
+
+  private static void startLoads(
+      Loader loader, Set<Thread> loadThreads, AtomicInteger completedLoadCount, int loadCount) {
+    if (loadCount == 0) {
+      return;
+    }
+    loader.startLoading(
+        new FakeLoadable(
+            () -> {
+              loadThreads.add(Thread.currentThread());
+              Thread.sleep(1);
+            }),
+        new CountingCallback(completedLoadCount) {
+          @Override
+          public void onLoadCompleted(
+              FakeLoadable loadable, long elapsedRealtimeMs, long loadDurationMs) {
+            super.onLoadCompleted(loadable, elapsedRealtimeMs, loadDurationMs);
+            startLoads(loader, loadThreads, completedLoadCount, loadCount - 1);
+          }
+        },
+        /* defaultMinRetryCount= */ 0);
+  }
+
+  private interface LoadBody {
+    void run() throws InterruptedException;
+  }
+
+  private static final class FakeLoadable implements Loader.Loadable {
+
+    private final LoadBody loadBody;
+
+    public volatile boolean canceled;
+
+    public FakeLoadable(LoadBody loadBody) {
+      this.loadBody = loadBody;
+    }
+
+    @Override
+    public void cancelLoad() {
+      canceled = true;
+    }
+
+    @Override
+    public void load() throws IOException {
+      try {
+        loadBody.run();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static class CountingCallback implements Loader.Callback<FakeLoadable> {
+
+    private final AtomicInteger completedLoadCount;
+
+    public CountingCallback(AtomicInteger completedLoadCount) {
+      this.completedLoadCount = completedLoadCount;
+    }
+
+    @Override
+    public void onLoadCompleted(
+        FakeLoadable loadable, long elapsedRealtimeMs, long loadDurationMs) {
+      completedLoadCount.incrementAndGet();
+    }
+
+    @Override
+    public void onLoadCanceled(
+        FakeLoadable loadable, long elapsedRealtimeMs, long loadDurationMs, boolean released) {}
+
+    @Override
+    public Loader.LoadErrorAction onLoadError(
+        FakeLoadable loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        IOException error,
+        int errorCount) {
+      return Loader.DONT_RETRY;
+    }
+  }
+
+  private static final class RecordingTask implements Runnable {
+
+    private final String name;
+    private final List<String> taskOrder;
+    private final CountDownLatch tasksFinished;
+
+    public RecordingTask(String name, List<String> taskOrder, CountDownLatch tasksFinished) {
+      this.name = name;
+      this.taskOrder = taskOrder;
+      this.tasksFinished = tasksFinished;
+    }
+
+    @Override
+    public void run() {
+      taskOrder.add(name);
+      tasksFinished.countDown();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link ParallelTransferBandwidthEstimator}. */
+@RunWith(AndroidJUnit4.class)
+public final class ParallelTransferBandwidthEstimatorTest {
+
+  @Test
+  public void getBandwidthEstimate_withParallelTransfers_returnsCombinedThroughput() {
+    ParallelTransferBandwidthEstimator estimator = new ParallelTransferBandwidthEstimator();
+    DataSource dataSource1 = new FakeDataSource();
+    DataSource dataSource2 = new FakeDataSource();
+
+    estimator.onTransferStart(dataSource1, /* nowMs= */ 0);
+    estimator.onTransferStart(dataSource2, /* nowMs= */ 0);
+    assertThat(estimator.getActiveTransferCount()).isEqualTo(2);
+    for (int timeMs = 100; timeMs <= 2000; timeMs += 100) {
+      // 1 Mbps for each transfer.
+      estimator.onBytesTransferred(dataSource1, /* bytesTransferred= */ 12_500, timeMs);
+      estimator.onBytesTransferred(dataSource2, /* bytesTransferred= */ 12_500, timeMs);
+    }
+    estimator.onTransferEnd(dataSource1, /* nowMs= */ 2000);
+    estimator.onTransferEnd(dataSource2, /* nowMs= */ 2000);
+
+    assertThat(estimator.getActiveTransferCount()).isEqualTo(0);
+    // Samples end between the bytes of the two transfers, so the estimate is only approximate.
+    assertThat((double) estimator.getBandwidthEstimate()).isWithin(100_000).of(2_000_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_duringLongTransfer_isUpdated() {
+    ParallelTransferBandwidthEstimator estimator = new ParallelTransferBandwidthEstimator();
+    DataSource dataSource = new FakeDataSource();
+
+    estimator.onTransferStart(dataSource, /* nowMs= */ 0);
+    for (int timeMs = 100; timeMs <= 2000; timeMs += 100) {
+      // 4 Mbps.
+      estimator.onBytesTransferred(dataSource, /* bytesTransferred= */ 50_000, timeMs);
+    }
+
+    assertThat(estimator.getBandwidthEstimate()).isEqualTo(4_000_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_whenOneOfParallelTransfersEnds_continuesSample() {
+    ParallelTransferBandwidthEstimator estimator = new ParallelTransferBandwidthEstimator();
+    DataSource dataSource1 = new FakeDataSource();
+    DataSource dataSource2 = new FakeDataSource();
+
+    estimator.onTransferStart(dataSource1, /* nowMs= */ 0);
+    estimator.onTransferStart(dataSource2, /* nowMs= */ 0);
+    estimator.onBytesTransferred(dataSource1, /* bytesTransferred= */ 100, /* nowMs= */ 10);
+    estimator.onTransferEnd(dataSource1, /* nowMs= */ 10);
+    // 2 Mbps over the whole second, including the bytes of the first transfer.
+    estimator.onBytesTransferred(dataSource2, /* bytesTransferred= */ 249_900, /* nowMs= */ 1000);
+    estimator.onTransferEnd(dataSource2, /* nowMs= */ 1000);
+
+    assertThat(estimator.getBandwidthEstimate()).isEqualTo(2_000_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_excludesIdleTimeBetweenTransfers() {
+    ParallelTransferBandwidthEstimator estimator = new ParallelTransferBandwidthEstimator();
+    DataSource dataSource = new FakeDataSource();
+
+    estimator.onTransferStart(dataSource, /* nowMs= */ 0);
+    estimator.onBytesTransferred(dataSource, /* bytesTransferred= */ 250_000, /* nowMs= */ 1000);
+    estimator.onTransferEnd(dataSource, /* nowMs= */ 1000);
+    estimator.onTransferStart(dataSource, /* nowMs= */ 5000);
+    estimator.onBytesTransferred(dataSource, /* bytesTransferred= */ 250_000, /* nowMs= */ 6000);
+    estimator.onTransferEnd(dataSource, /* nowMs= */ 6000);
+
+    assertThat(estimator.getBandwidthEstimate()).isEqualTo(2_000_000);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link TimeToFirstByteBandwidthEstimator}. */
+@RunWith(AndroidJUnit4.class)
+public final class TimeToFirstByteBandwidthEstimatorTest {
+
+  private final DataSource dataSource = new FakeDataSource();
+
+  @Test
+  public void getTimeToFirstByteEstimateMs_beforeTransfer_returnsTimeUnset() {
+    TimeToFirstByteBandwidthEstimator estimator =
+        new TimeToFirstByteBandwidthEstimator(new ExponentialWeightedAverageBandwidthEstimator());
+
+    assertThat(estimator.getTimeToFirstByteEstimateMs()).isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void getTimeToFirstByteEstimateMs_returnsMovingAverage() {
+    TimeToFirstByteBandwidthEstimator estimator =
+        new TimeToFirstByteBandwidthEstimator(new ExponentialWeightedAverageBandwidthEstimator());
+
+    transfer(estimator, /* startTimeMs= */ 0, /* timeToFirstByteMs= */ 100, /* bytes= */ 1000);
+    assertThat(estimator.getTimeToFirstByteEstimateMs()).isEqualTo(100);
+    transfer(estimator, /* startTimeMs= */ 1000, /* timeToFirstByteMs= */ 200, /* bytes= */ 1000);
+    assertThat(estimator.getTimeToFirstByteEstimateMs()).isEqualTo(130);
+  }
+
+  @Test
+  public void getBandwidthEstimate_reducesThroughputEstimateByTimeToFirstByte() {
+    ExponentialWeightedAverageBandwidthEstimator throughputEstimator =
+        new ExponentialWeightedAverageBandwidthEstimator();
+    TimeToFirstByteBandwidthEstimator estimator =
+        new TimeToFirstByteBandwidthEstimator(throughputEstimator, /* chunkDurationMs= */ 4000);
+
+    // 4 Mbps once started, with a time to first byte of a quarter of a chunk duration.
+    transfer(estimator, /* startTimeMs= */ 0, /* timeToFirstByteMs= */ 1000, /* bytes= */ 500_000);
+
+    assertThat(throughputEstimator.getBandwidthEstimate()).isEqualTo(4_000_000);
+    assertThat(estimator.getBandwidthEstimate()).isEqualTo(3_000_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_withoutThroughputEstimate_isNotAvailable() {
+    TimeToFirstByteBandwidthEstimator estimator =
+        new TimeToFirstByteBandwidthEstimator(new ExponentialWeightedAverageBandwidthEstimator());
+
+    transfer(estimator, /* startTimeMs= */ 0, /* timeToFirstByteMs= */ 100, /* bytes= */ 1000);
+
+    assertThat(estimator.getBandwidthEstimate())
+        .isEqualTo(BandwidthEstimator.ESTIMATE_NOT_AVAILABLE);
+  }
+
+  /** Performs a transfer whose body takes one second after the first byte. */
+  private void transfer(
+      BandwidthEstimator estimator, long startTimeMs, long timeToFirstByteMs, int bytes) {
+    long firstByteTimeMs = startTimeMs + timeToFirstByteMs;
+    estimator.onTransferInitializing(dataSource, startTimeMs);
+    estimator.onTransferStart(dataSource, firstByteTimeMs);
+    estimator.onBytesTransferred(dataSource, bytes, firstByteTimeMs + 1000);
+    estimator.onTransferEnd(dataSource, firstByteTimeMs + 1000);
+  }
+}
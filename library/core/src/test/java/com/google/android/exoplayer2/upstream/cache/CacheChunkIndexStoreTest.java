@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.ChunkIndexStore;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link CacheChunkIndexStore}. */
+@RunWith(AndroidJUnit4.class)
+public final class CacheChunkIndexStoreTest {
+
+  private static final Uri URI = Uri.parse("https://example.com/video.mp4");
+  private static final long STREAM_LENGTH = 3_000;
+
+  private File testDir;
+  private SimpleCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    testDir =
+        Util.createTempFile(ApplicationProvider.getApplicationContext(), "CacheChunkIndexStoreTest");
+    assertThat(testDir.delete()).isTrue();
+    assertThat(testDir.mkdirs()).isTrue();
+    cache =
+        new SimpleCache(
+            testDir, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+  }
+
+  @After
+  public void tearDown() {
+    cache.release();
+    Util.recursiveDelete(testDir);
+  }
+
+  @Test
+  public void getChunkIndex_afterPut_returnsEqualIndex() throws Exception {
+    addCachedSpan();
+    ChunkIndex chunkIndex = createChunkIndex();
+    new CacheChunkIndexStore.Factory(cache)
+        .createChunkIndexStore(URI)
+        .putChunkIndex(chunkIndex, STREAM_LENGTH);
+
+    ChunkIndex storedChunkIndex =
+        new CacheChunkIndexStore.Factory(cache)
+            .createChunkIndexStore(URI)
+            .getChunkIndex(STREAM_LENGTH);
+
+    assertThat(storedChunkIndex.offsets).isEqualTo(chunkIndex.offsets);
+    assertThat(storedChunkIndex.sizes).isEqualTo(chunkIndex.sizes);
+    assertThat(storedChunkIndex.timesUs).isEqualTo(chunkIndex.timesUs);
+    assertThat(storedChunkIndex.durationsUs).isEqualTo(chunkIndex.durationsUs);
+    assertThat(cache.getContentMetadata(URI.toString()).contains(ContentMetadata.KEY_CHUNK_INDEX))
+        .isTrue();
+  }
+
+  @Test
+  public void getChunkIndex_withDifferentStreamLength_returnsNull() throws Exception {
+    addCachedSpan();
+    ChunkIndexStore chunkIndexStore = new CacheChunkIndexStore(cache, URI.toString());
+    chunkIndexStore.putChunkIndex(createChunkIndex(), STREAM_LENGTH);
+
+    assertThat(chunkIndexStore.getChunkIndex(STREAM_LENGTH + 1)).isNull();
+  }
+
+  @Test
+  public void getChunkIndex_withoutPut_returnsNull() {
+    ChunkIndexStore chunkIndexStore = new CacheChunkIndexStore(cache, URI.toString());
+
+    assertThat(chunkIndexStore.getChunkIndex(STREAM_LENGTH)).isNull();
+  }
+
+  @Test
+  public void putChunkIndex_withoutCachedContent_doesNotStoreIndex() {
+    ChunkIndexStore chunkIndexStore = new CacheChunkIndexStore(cache, URI.toString());
+
+    chunkIndexStore.putChunkIndex(createChunkIndex(), STREAM_LENGTH);
+
+    assertThat(chunkIndexStore.getChunkIndex(STREAM_LENGTH)).isNull();
+    assertThat(cache.getContentMetadata(URI.toString()).contains(ContentMetadata.KEY_CHUNK_INDEX))
+        .isFalse();
+  }
+
+  @Test
+  public void putChunkIndex_withIndexLargerThanMaxSize_doesNotStoreIndex() throws Exception {
+    addCachedSpan();
+    ChunkIndexStore chunkIndexStore = new CacheChunkIndexStore(cache, URI.toString());
+    // Each chunk is encoded in 28 bytes, after a header.
+    int length = CacheChunkIndexStore.MAX_ENCODED_SIZE / 28;
+    long[] offsets = new long[length];
+    long[] timesUs = new long[length];
+    for (int i = 0; i < length; i++) {
+      offsets[i] = i;
+      timesUs[i] = i;
+    }
+
+    chunkIndexStore.putChunkIndex(
+        new ChunkIndex(new int[length], offsets, new long[length], timesUs), STREAM_LENGTH);
+
+    assertThat(chunkIndexStore.getChunkIndex(STREAM_LENGTH)).isNull();
+  }
+
+  @Test
+  public void getChunkIndex_afterContentRemoved_returnsNull() throws Exception {
+    addCachedSpan();
+    ChunkIndexStore chunkIndexStore = new CacheChunkIndexStore(cache, URI.toString());
+    chunkIndexStore.putChunkIndex(createChunkIndex(), STREAM_LENGTH);
+
+    cache.removeResource(URI.toString());
+
+    assertThat(chunkIndexStore.getChunkIndex(STREAM_LENGTH)).isNull();
+  }
+
+  @Test
+  public void createChunkIndexStore_withEmptyUri_returnsNull() {
+    assertThat(new CacheChunkIndexStore.Factory(cache).createChunkIndexStore(Uri.EMPTY)).isNull();
+  }
+
+  private void addCachedSpan() throws Exception {
+    String key = URI.toString();
+    CacheSpan holeSpan = cache.startReadWrite(key, /* position= */ 0, /* length= */ 100);
+    File file = cache.startFile(key, /* position= */ 0, /* length= */ 100);
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(TestUtil.buildTestData(/* length= */ 100));
+    }
+    cache.commitFile(file, /* length= */ 100);
+    cache.releaseHoleSpan(holeSpan);
+  }
+
+  private static ChunkIndex createChunkIndex() {
+    return new ChunkIndex(
+        /* sizes= */ new int[] {1_000, 1_200, 800},
+        /* offsets= */ new long[] {0, 1_000, 2_200},
+        /* durationsUs= */ new long[] {2_000_000, 2_000_000, 1_500_000},
+        /* timesUs= */ new long[] {0, 2_000_000, 4_000_000});
+  }
+}
@@ -77,11 +77,23 @@ public final class CacheDataSourceTest2 {
     testReads(true);
   }
 
+  @Test
+  public void testWithMappedCacheReads() throws IOException {
+    testReads(/* useEncryption= */ false, /* useMappedCacheReads= */ true);
+  }
+
   private void testReads(boolean useEncryption) throws IOException {
+    testReads(useEncryption, /* useMappedCacheReads= */ false);
+  }
+
+  private void testReads(boolean useEncryption, boolean useMappedCacheReads) throws IOException {
     FakeDataSource upstreamSource = buildFakeUpstreamSource();
     CacheDataSource source =
         buildCacheDataSource(
-            ApplicationProvider.getApplicationContext(), upstreamSource, useEncryption);
+            ApplicationProvider.getApplicationContext(),
+            upstreamSource,
+            useEncryption,
+            useMappedCacheReads);
     // First read, should arrive from upstream.
     testRead(END_ON_BOUNDARY, source);
     assertSingleOpen(upstreamSource, 0, OFFSET_ON_BOUNDARY);
@@ -150,8 +162,12 @@ public final class CacheDataSourceTest2 {
     return fakeDataSource;
   }
 
-  private static CacheDataSource buildCacheDataSource(Context context, DataSource upstreamSource,
-      boolean useAesEncryption) throws CacheException {
+  private static CacheDataSource buildCacheDataSource(
+      Context context,
+      DataSource upstreamSource,
+      boolean useAesEncryption,
+      boolean useMappedCacheReads)
+      throws CacheException {
     File cacheDir = context.getExternalCacheDir();
     Cache cache =
         new SimpleCache(
@@ -162,7 +178,10 @@ public final class CacheDataSourceTest2 {
 
     // Source and cipher
     final String secretKey = "testKey:12345678";
-    DataSource file = new FileDataSource();
+    DataSource file =
+        useMappedCacheReads
+            ? new MappedFileDataSource.Factory().createDataSource()
+            : new FileDataSource();
     DataSource cacheReadDataSource = useAesEncryption
         ? new AesCipherDataSource(Util.getUtf8Bytes(secretKey), file) : file;
 
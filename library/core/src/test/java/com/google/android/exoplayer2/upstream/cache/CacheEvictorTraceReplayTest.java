@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Replays cache access traces against {@link SimpleCache} instances using different {@link
+ * CacheEvictor} implementations, and compares their hit ratios. The time spent in each evictor is
+ * reported by a benchmark, which only runs when benchmarks are enabled, see {@link BenchmarkUtil}.
+ *
+ * <p>A trace has one access per line, in the form {@code <key> <position> <length>}, which is the
+ * cache key, position and length of a {@link com.google.android.exoplayer2.upstream.DataSpec}
+ * opened by {@link CacheDataSource}. Recorded traces can be replayed by passing them to {@link
+ * #parseTrace(String)} and {@link #replay(List, CacheEvictor)}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class CacheEvictorTraceReplayTest {
+
+  private static final int SEGMENT_LENGTH = 1024;
+  private static final long MAX_CACHE_BYTES = 100 * SEGMENT_LENGTH;
+  private static final long ACCESS_INTERVAL_MS = 1000;
+  private static final long TIME_TO_LIVE_MS = 100 * ACCESS_INTERVAL_MS;
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(cacheDir);
+  }
+
+  @Test
+  public void replay_popularPrefixesWithBingeSessions_scanResistantEvictorsHitMoreOften()
+      throws Exception {
+    List<Access> trace = parseTrace(generatePopularPrefixesWithBingeSessionsTrace());
+
+    ReplayResult leastRecentlyUsed =
+        replay(trace, new LeastRecentlyUsedCacheEvictor(MAX_CACHE_BYTES));
+    ReplayResult segmentedLru = replay(trace, new SegmentedLruCacheEvictor(MAX_CACHE_BYTES));
+    ReplayResult tinyLfu = replay(trace, newTinyLfuCacheEvictor());
+
+    String report =
+        String.format(
+            Locale.US,
+            "hit ratios LRU=%.3f SLRU=%.3f W-TinyLFU=%.3f",
+            leastRecentlyUsed.getHitRatio(),
+            segmentedLru.getHitRatio(),
+            tinyLfu.getHitRatio());
+    assertWithMessage(report)
+        .that(segmentedLru.getHitRatio())
+        .isGreaterThan(leastRecentlyUsed.getHitRatio());
+    assertWithMessage(report)
+        .that(tinyLfu.getHitRatio())
+        .isGreaterThan(leastRecentlyUsed.getHitRatio());
+  }
+
+  @Test
+  public void replay_withoutTimeToLive_timeToLiveEvictorHitsAsOftenAsDelegate() throws Exception {
+    List<Access> trace = parseTrace(generatePopularPrefixesWithBingeSessionsTrace());
+
+    // The segmented LRU evictor is used as the delegate because its decisions don't depend on the
+    // wall clock time at which spans are touched, so that replays are deterministic.
+    ReplayResult segmentedLru = replay(trace, new SegmentedLruCacheEvictor(MAX_CACHE_BYTES));
+    ReplayResult timeToLive =
+        replay(
+            trace,
+            new TimeToLiveCacheEvictor(
+                new SegmentedLruCacheEvictor(MAX_CACHE_BYTES),
+                /* defaultTimeToLiveMs= */ C.TIME_UNSET));
+
+    // Nothing expires, so all eviction decisions are made by the delegate.
+    assertThat(timeToLive.hits).isEqualTo(segmentedLru.hits);
+  }
+
+  @Test
+  public void replay_withTimeToLive_evictsExpiredSpansAndHitsLessOften() throws Exception {
+    List<Access> trace = parseTrace(generatePopularPrefixesWithBingeSessionsTrace());
+
+    ReplayResult segmentedLru =
+        replay(
+            trace,
+            new SegmentedLruCacheEvictor(MAX_CACHE_BYTES),
+            new FakeClock(/* initialTimeMs= */ 0),
+            TIME_TO_LIVE_MS);
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    ReplayResult timeToLive =
+        replay(
+            trace,
+            new TimeToLiveCacheEvictor(
+                new SegmentedLruCacheEvictor(MAX_CACHE_BYTES),
+                /* defaultTimeToLiveMs= */ C.TIME_UNSET,
+                clock),
+            clock,
+            TIME_TO_LIVE_MS);
+
+    // Without expiry, popular prefixes stay cached long after they've expired.
+    assertThat(segmentedLru.expiredSpanCount).isGreaterThan(0);
+    // Expired spans are evicted, except the one read by the last access if it had expired.
+    assertThat(timeToLive.expiredSpanCount).isAtMost(1);
+    // Expired spans are written again when they're next accessed, so fewer accesses hit.
+    assertThat(timeToLive.hits).isLessThan(segmentedLru.hits);
+  }
+
+  @Test
+  public void replay_popularPrefixesWithBingeSessions_reportsEvictorTime() throws Exception {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+    List<Access> trace = parseTrace(generatePopularPrefixesWithBingeSessionsTrace());
+
+    ReplayResult leastRecentlyUsed =
+        replay(trace, new LeastRecentlyUsedCacheEvictor(MAX_CACHE_BYTES));
+    ReplayResult segmentedLru = replay(trace, new SegmentedLruCacheEvictor(MAX_CACHE_BYTES));
+    ReplayResult tinyLfu = replay(trace, newTinyLfuCacheEvictor());
+    ReplayResult timeToLive = replay(trace, newTimeToLiveCacheEvictor());
+
+    BenchmarkUtil.report(
+        "CacheEvictor",
+        "LRU: "
+            + leastRecentlyUsed
+            + ", SLRU: "
+            + segmentedLru
+            + ", W-TinyLFU: "
+            + tinyLfu
+            + ", TTL(LRU): "
+            + timeToLive);
+  }
+
+  /**
+   * Parses a trace with one access per line, in the form {@code <key> <position> <length>}. Empty
+   * lines and lines starting with {@code #} are ignored.
+   */
+  public static List<Access> parseTrace(String trace) {
+    List<Access> accesses = new ArrayList<>();
+    for (String line : Util.split(trace, "\n")) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = Util.split(line, " ");
+      accesses.add(
+          new Access(fields[0], Long.parseLong(fields[1]), Integer.parseInt(fields[2])));
+    }
+    return accesses;
+  }
+
+  /**
+   * Replays a trace against a new {@link SimpleCache} that uses {@code evictor}. Accesses that miss
+   * the cache are written to it.
+   */
+  private ReplayResult replay(List<Access> trace, CacheEvictor evictor) throws IOException {
+    return replay(trace, evictor, /* clock= */ null, /* timeToLiveMs= */ C.TIME_UNSET);
+  }
+
+  /**
+   * Replays a trace against a new {@link SimpleCache} that uses {@code evictor}. Accesses that miss
+   * the cache are written to it.
+   *
+   * <p>If {@code clock} isn't null, it's advanced by {@link #ACCESS_INTERVAL_MS} before each
+   * access, and each write sets the expiry time of the resource to {@code timeToLiveMs} later, as a
+   * response with a max-age would. The expiry time is stored in the resource's {@link
+   * ContentMetadata} because {@link SimpleCache} stamps spans with the wall clock time, not that of
+   * {@code clock}.
+   */
+  private ReplayResult replay(
+      List<Access> trace, CacheEvictor evictor, @Nullable FakeClock clock, long timeToLiveMs)
+      throws IOException {
+    File replayCacheDir = new File(cacheDir, "replay" + cacheDir.list().length);
+    TimingCacheEvictor timingEvictor = new TimingCacheEvictor(evictor);
+    SimpleCache cache = SimpleCache.createWithJournalIndex(replayCacheDir, timingEvictor);
+    byte[] data = TestUtil.buildTestData(SEGMENT_LENGTH);
+    int hits = 0;
+    try {
+      for (int i = 0; i < trace.size(); i++) {
+        Access access = trace.get(i);
+        if (clock != null) {
+          clock.advanceTime(ACCESS_INTERVAL_MS);
+        }
+        CacheSpan span = cache.startReadWrite(access.key, access.position, access.length);
+        if (span.isCached) {
+          hits++;
+          continue;
+        }
+        File file = cache.startFile(access.key, access.position, access.length);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+          outputStream.write(data, 0, access.length);
+        }
+        if (clock != null) {
+          ContentMetadataMutations mutations = new ContentMetadataMutations();
+          ContentMetadataMutations.setExpiryTimeMs(
+              mutations, clock.currentTimeMillis() + timeToLiveMs);
+          cache.applyContentMetadataMutations(access.key, mutations);
+        }
+        cache.commitFile(file, access.length);
+        cache.releaseHoleSpan(span);
+      }
+      int expiredSpanCount = clock != null ? countExpiredSpans(cache, clock) : 0;
+      return new ReplayResult(trace.size(), hits, expiredSpanCount, timingEvictor.elapsedNs);
+    } catch (Cache.CacheException | InterruptedException e) {
+      throw new IOException(e);
+    } finally {
+      cache.release();
+    }
+  }
+
+  /** Returns the number of spans in {@code cache} whose resources have expired. */
+  private static int countExpiredSpans(Cache cache, FakeClock clock) {
+    int expiredSpanCount = 0;
+    for (String key : cache.getKeys()) {
+      long expiryTimeMs = ContentMetadata.getExpiryTimeMs(cache.getContentMetadata(key));
+      if (expiryTimeMs != C.TIME_UNSET && expiryTimeMs <= clock.currentTimeMillis()) {
+        expiredSpanCount += cache.getCachedSpans(key).size();
+      }
+    }
+    return expiredSpanCount;
+  }
+
+  private static CacheEvictor newTinyLfuCacheEvictor() {
+    return new TinyLfuCacheEvictor(
+        MAX_CACHE_BYTES,
+        TinyLfuCacheEvictor.DEFAULT_WINDOW_FRACTION,
+        /* expectedSpanCount= */ 1024);
+  }
+
+  private static CacheEvictor newTimeToLiveCacheEvictor() {
+    return new TimeToLiveCacheEvictor(
+        new LeastRecentlyUsedCacheEvictor(MAX_CACHE_BYTES),
+        /* defaultTimeToLiveMs= */ C.TIME_UNSET);
+  }
+
+  /**
+   * Generates a trace in which the first segments of a set of popular titles are accessed
+   * repeatedly, interleaved with binge sessions in which long titles are watched once from start
+   * to end.
+   */
+  private static String generatePopularPrefixesWithBingeSessionsTrace() {
+    Random random = new Random(/* seed= */ 0);
+    int popularTitleCount = 20;
+    int popularSegmentCount = 4;
+    int bingeTitleLength = 200;
+    StringBuilder trace = new StringBuilder();
+    int bingeTitle = 0;
+    int bingeSegment = 0;
+    for (int i = 0; i < 8000; i++) {
+      String key;
+      int segment;
+      if (random.nextBoolean()) {
+        // Popular titles are chosen with a skewed distribution.
+        double skew = random.nextDouble();
+        key = "popular" + (int) (skew * skew * popularTitleCount);
+        segment = random.nextInt(popularSegmentCount);
+      } else {
+        key = "binge" + bingeTitle;
+        segment = bingeSegment++;
+        if (bingeSegment == bingeTitleLength) {
+          bingeTitle++;
+          bingeSegment = 0;
+        }
+      }
+      trace
+          .append(key)
+          .append(' ')
+          .append((long) segment * SEGMENT_LENGTH)
+          .append(' ')
+          .append(SEGMENT_LENGTH)
+          .append('\n');
+    }
+    return trace.toString();
+  }
+
+  /** An access in a trace. */
+  public static final class Access {
+
+    public final String key;
+    public final long position;
+    public final int length;
+
+    public Access(String key, long position, int length) {
+      this.key = key;
+      this.position = position;
+      this.length = length;
+    }
+  }
+
+  private static final class ReplayResult {
+
+    public final int accesses;
+    public final int hits;
+    public final int expiredSpanCount;
+    public final long evictorTimeNs;
+
+    public ReplayResult(int accesses, int hits, int expiredSpanCount, long evictorTimeNs) {
+      this.accesses = accesses;
+      this.hits = hits;
+      this.expiredSpanCount = expiredSpanCount;
+      this.evictorTimeNs = evictorTimeNs;
+    }
+
+    public double getHitRatio() {
+      return (double) hits / accesses;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "hitRatio=%.3f evictorTimeMs=%.1f",
+          getHitRatio(),
+          evictorTimeNs / 1_000_000.0);
+    }
+  }
+
+  /**
+   * Measures the time spent in a {@link CacheEvictor}, including the time taken by the cache to
+   * remove the spans that it evicts.
+   */
+  private static final class TimingCacheEvictor implements CacheEvictor {
+
+    private final CacheEvictor evictor;
+
+    private long elapsedNs;
+    private int depth;
+    private long startTimeNs;
+
+    public TimingCacheEvictor(CacheEvictor evictor) {
+      this.evictor = evictor;
+    }
+
+    @Override
+    public boolean requiresCacheSpanTouches() {
+      return evictor.requiresCacheSpanTouches();
+    }
+
+    @Override
+    public void onCacheInitialized() {
+      evictor.onCacheInitialized();
+    }
+
+    @Override
+    public void onStartFile(Cache cache, String key, long position, long length) {
+      startTiming();
+      evictor.onStartFile(cache, key, position, length);
+      endTiming();
+    }
+
+    @Override
+    public void onSpanAdded(Cache cache, CacheSpan span) {
+      startTiming();
+      evictor.onSpanAdded(cache, span);
+      endTiming();
+    }
+
+    @Override
+    public void onSpanRemoved(Cache cache, CacheSpan span) {
+      startTiming();
+      evictor.onSpanRemoved(cache, span);
+      endTiming();
+    }
+
+    @Override
+    public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+      startTiming();
+      evictor.onSpanTouched(cache, oldSpan, newSpan);
+      endTiming();
+    }
+
+    private void startTiming() {
+      // Evicting a span causes nested calls, which are timed as part of the outermost call.
+      if (depth++ == 0) {
+        startTimeNs = System.nanoTime();
+      }
+    }
+
+    private void endTiming() {
+      if (--depth == 0) {
+        elapsedNs += System.nanoTime() - startTimeNs;
+      }
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the latency of {@link CachedContentIndex#store()} after a single update, for the legacy
+ * and journal storage. Only runs when benchmarks are enabled, see {@link BenchmarkUtil}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class CachedContentIndexBenchmarkTest {
+
+  private static final int UPDATE_COUNT = 20;
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+    cacheDir =
+        Util.createTempDirectory(
+            ApplicationProvider.getApplicationContext(), "CachedContentIndexBenchmark");
+  }
+
+  @After
+  public void tearDown() {
+    if (cacheDir != null) {
+      Util.recursiveDelete(cacheDir);
+    }
+  }
+
+  @Test
+  public void store_withIncreasingIndexSize() throws Exception {
+    StringBuilder results = new StringBuilder("mean store() latency for a single update (us):");
+    for (int keyCount : new int[] {100, 1_000, 10_000}) {
+      long legacyStoreUs = measureStoreUs(newLegacyInstance(), keyCount);
+      Util.recursiveDelete(cacheDir);
+      cacheDir.mkdirs();
+      long journalStoreUs = measureStoreUs(new CachedContentIndex(cacheDir), keyCount);
+      Util.recursiveDelete(cacheDir);
+      cacheDir.mkdirs();
+      results.append(
+          String.format(
+              Locale.US,
+              " [keys=%d legacy=%d journal=%d]",
+              keyCount,
+              legacyStoreUs,
+              journalStoreUs));
+    }
+    BenchmarkUtil.report("CachedContentIndex", results.toString());
+  }
+
+  /**
+   * Populates an index with {@code keyCount} keys, then updates one key and stores the index
+   * {@link #UPDATE_COUNT} times. Returns the mean duration of each of these stores, in
+   * microseconds.
+   */
+  private static long measureStoreUs(CachedContentIndex index, int keyCount) throws IOException {
+    index.initialize(/* uid= */ 0);
+    for (int i = 0; i < keyCount; i++) {
+      ContentMetadataMutations mutations = new ContentMetadataMutations();
+      ContentMetadataMutations.setContentLength(mutations, i);
+      index.applyContentMetadataMutations("key" + i, mutations);
+    }
+    index.store();
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < UPDATE_COUNT; i++) {
+      ContentMetadataMutations mutations = new ContentMetadataMutations();
+      ContentMetadataMutations.setContentLength(mutations, keyCount + i);
+      index.applyContentMetadataMutations("key" + (i % keyCount), mutations);
+      index.store();
+    }
+    return (System.nanoTime() - startTimeNs) / UPDATE_COUNT / 1000;
+  }
+
+  private CachedContentIndex newLegacyInstance() {
+    return new CachedContentIndex(
+        /* databaseProvider= */ null,
+        cacheDir,
+        /* legacyStorageSecretKey= */ null,
+        /* legacyStorageEncrypt= */ false,
+        /* preferLegacyStorage= */ true);
+  }
+}
@@ -308,6 +308,123 @@ public class CachedContentIndexTest {
     assertThat(index.get(cachedContent.key)).isNotNull();
   }
 
+  @Test
+  public void journalStoreAndLoad() throws Exception {
+    assertStoredAndLoadedEqual(newJournalInstance(), newJournalInstance());
+  }
+
+  @Test
+  public void journalStoreAndLoad_withRemovedContent() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    int id1 = index.assignIdForKey("key1");
+    int id2 = index.assignIdForKey("key2");
+    index.store();
+    index.maybeRemove("key1");
+    index.store();
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+
+    assertThat(index2.getKeys()).containsExactly("key2");
+    assertThat(index2.getKeyForId(id1)).isNull();
+    assertThat(index2.getKeyForId(id2)).isEqualTo("key2");
+  }
+
+  @Test
+  public void journalLoad_withPartiallyWrittenRecord_discardsRecord() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.assignIdForKey("key1");
+    index.store();
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    long journalLength = journalFile.length();
+    try (FileOutputStream output = new FileOutputStream(journalFile, /* append= */ true)) {
+      // A record length and checksum, followed by less data than the record length.
+      output.write(new byte[] {0, 0, 0, 100, 1, 2, 3, 4, 0, 0, 0, 2});
+    }
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("key1");
+    assertThat(journalFile.length()).isEqualTo(journalLength);
+
+    index2.assignIdForKey("key2");
+    index2.store();
+    CachedContentIndex index3 = newJournalInstance();
+    index3.initialize(/* uid= */ 0);
+    assertThat(index3.getKeys()).containsExactly("key1", "key2");
+  }
+
+  @Test
+  public void journalLoad_withLegacyIndex_migratesLegacyIndex() throws Exception {
+    File legacyIndexFile = new File(cacheDir, CachedContentIndex.FILE_NAME_ATOMIC);
+    FileOutputStream fos = new FileOutputStream(legacyIndexFile);
+    fos.write(testIndexV2File);
+    fos.close();
+
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+
+    assertThat(legacyIndexFile.exists()).isFalse();
+    assertThat(index2.getKeys()).containsExactly("ABCDE", "KLMNO");
+    assertThat(index2.assignIdForKey("ABCDE")).isEqualTo(5);
+    ContentMetadata metadata = index2.get("ABCDE").getMetadata();
+    assertThat(ContentMetadata.getContentLength(metadata)).isEqualTo(10);
+    assertThat(ContentMetadata.getRedirectedUri(metadata)).isEqualTo(Uri.parse("abcde"));
+  }
+
+  @Test
+  public void journalStore_withManyUpdates_compactsJournal() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.assignIdForKey("key1");
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    int updateCount = 0;
+    long maxJournalLength = 0;
+    // Update the same key until the journal has grown and then been compacted.
+    while (journalFile.length() >= maxJournalLength && updateCount < 100_000) {
+      maxJournalLength = journalFile.length();
+      ContentMetadataMutations mutations = new ContentMetadataMutations();
+      ContentMetadataMutations.setContentLength(mutations, ++updateCount);
+      index.applyContentMetadataMutations("key1", mutations);
+      index.store();
+    }
+
+    assertThat(journalFile.length()).isLessThan(maxJournalLength);
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("key1");
+    assertThat(ContentMetadata.getContentLength(index2.getContentMetadata("key1")))
+        .isEqualTo(updateCount);
+  }
+
+  @Test
+  public void journalStore_withManyKeys_appendsSingleRecordForUpdate() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    for (int i = 0; i < 10_000; i++) {
+      ContentMetadataMutations mutations = new ContentMetadataMutations();
+      ContentMetadataMutations.setContentLength(mutations, i);
+      index.applyContentMetadataMutations("key" + i, mutations);
+    }
+    index.store();
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    long journalLength = journalFile.length();
+
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setContentLength(mutations, 10_000);
+    index.applyContentMetadataMutations("key0", mutations);
+    index.store();
+
+    // A single record is appended, rather than the whole index being rewritten.
+    int maxRecordLength = 100;
+    assertThat(journalFile.length()).isGreaterThan(journalLength);
+    assertThat(journalFile.length()).isLessThan(journalLength + maxRecordLength);
+  }
+
   private void assertStoredAndLoadedEqual(CachedContentIndex index, CachedContentIndex index2)
       throws IOException {
     ContentMetadataMutations mutations1 = new ContentMetadataMutations();
@@ -332,6 +449,10 @@ public class CachedContentIndexTest {
     return new CachedContentIndex(TestUtil.getInMemoryDatabaseProvider());
   }
 
+  private CachedContentIndex newJournalInstance() {
+    return new CachedContentIndex(cacheDir);
+  }
+
   private CachedContentIndex newLegacyInstance() {
     return newLegacyInstance(null);
   }
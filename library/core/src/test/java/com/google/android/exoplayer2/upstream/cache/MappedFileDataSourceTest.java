@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MappedFileDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class MappedFileDataSourceTest {
+
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void read_afterFileReplaced_readsNewFile() throws Exception {
+    File file = tempFolder.newFile();
+    byte[] data = TestUtil.buildTestData(20);
+    Files.write(file.toPath(), data);
+    DataSource.Factory factory = new MappedFileDataSource.Factory();
+
+    assertThat(readFully(factory.createDataSource(), Uri.fromFile(file))).isEqualTo(data);
+
+    byte[] newData = TestUtil.buildTestData(30, /* seed= */ 1);
+    assertThat(file.delete()).isTrue();
+    Files.write(file.toPath(), newData);
+
+    assertThat(readFully(factory.createDataSource(), Uri.fromFile(file))).isEqualTo(newData);
+  }
+
+  @Test
+  public void read_withMoreDataThanMaxMappedBytes_readsAllFiles() throws Exception {
+    MappedFileDataSource.Factory factory =
+        new MappedFileDataSource.Factory(/* maxMappedBytes= */ 25);
+    File[] files = new File[5];
+    byte[][] data = new byte[files.length][];
+    for (int i = 0; i < files.length; i++) {
+      files[i] = tempFolder.newFile();
+      data[i] = TestUtil.buildTestData(/* length= */ 10 + i, /* seed= */ i);
+      Files.write(files[i].toPath(), data[i]);
+    }
+
+    for (int pass = 0; pass < 2; pass++) {
+      for (int i = 0; i < files.length; i++) {
+        assertThat(readFully(factory.createDataSource(), Uri.fromFile(files[i])))
+            .isEqualTo(data[i]);
+      }
+    }
+    assertThat(factory.getCachedBytes()).isAtMost(25);
+  }
+
+  @Test
+  public void read_afterMappingEvicted_readsFile() throws Exception {
+    File file1 = tempFolder.newFile();
+    File file2 = tempFolder.newFile();
+    byte[] data1 = TestUtil.buildTestData(/* length= */ 20, /* seed= */ 1);
+    byte[] data2 = TestUtil.buildTestData(/* length= */ 10, /* seed= */ 2);
+    Files.write(file1.toPath(), data1);
+    Files.write(file2.toPath(), data2);
+    MappedFileDataSource.Factory factory =
+        new MappedFileDataSource.Factory(/* maxMappedBytes= */ 25);
+    DataSource dataSource1 = factory.createDataSource();
+    dataSource1.open(new DataSpec(Uri.fromFile(file1)));
+
+    // Mapping the second file evicts the first, which the first data source can still read.
+    assertThat(readFully(factory.createDataSource(), Uri.fromFile(file2))).isEqualTo(data2);
+    assertThat(factory.getCachedBytes()).isEqualTo(10);
+    assertThat(Util.readToEnd(dataSource1)).isEqualTo(data1);
+    dataSource1.close();
+  }
+
+  @Test
+  public void read_fileLargerThanMaxMappedBytes_readsFileWithoutMapping() throws Exception {
+    File file = tempFolder.newFile();
+    byte[] data = TestUtil.buildTestData(30);
+    Files.write(file.toPath(), data);
+    MappedFileDataSource.Factory factory =
+        new MappedFileDataSource.Factory(/* maxMappedBytes= */ 25);
+
+    assertThat(readFully(factory.createDataSource(), Uri.fromFile(file))).isEqualTo(data);
+    assertThat(factory.getCachedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void open_withPositionBeyondEndOfFile_throwsIOException() throws Exception {
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), TestUtil.buildTestData(20));
+    DataSource dataSource = new MappedFileDataSource.Factory().createDataSource();
+
+    assertThrows(
+        IOException.class,
+        () ->
+            dataSource.open(
+                new DataSpec.Builder().setUri(Uri.fromFile(file)).setPosition(21).build()));
+  }
+
+  private static byte[] readFully(DataSource dataSource, Uri uri) throws IOException {
+    try {
+      dataSource.open(new DataSpec(uri));
+      return Util.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SegmentedLruCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public class SegmentedLruCacheEvictorTest {
+
+  private Cache cache;
+  private List<String> evictedKeys;
+  private SegmentedLruCacheEvictor evictor;
+
+  @Before
+  public void setUp() {
+    cache = mock(Cache.class);
+    evictedKeys = new ArrayList<>();
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              evictedKeys.add(span.key);
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+  }
+
+  @Test
+  public void contentBiggerThanMaxSizeDoesNotThrowException() {
+    evictor = new SegmentedLruCacheEvictor(/* maxBytes= */ 100);
+    evictor.onCacheInitialized();
+    evictor.onStartFile(cache, "key", 0, 101);
+  }
+
+  @Test
+  public void onSpanAdded_exceedingMaxBytes_evictsLeastRecentlyAddedSpan() {
+    evictor = new SegmentedLruCacheEvictor(/* maxBytes= */ 30);
+
+    evictor.onSpanAdded(cache, newSpan("a"));
+    evictor.onSpanAdded(cache, newSpan("b"));
+    evictor.onSpanAdded(cache, newSpan("c"));
+    evictor.onSpanAdded(cache, newSpan("d"));
+
+    assertThat(evictedKeys).containsExactly("a");
+  }
+
+  @Test
+  public void onSpanAdded_afterSpanTouched_evictsSpansThatWereNotTouchedFirst() {
+    evictor = new SegmentedLruCacheEvictor(/* maxBytes= */ 30);
+    CacheSpan spanA = newSpan("a");
+    evictor.onSpanAdded(cache, spanA);
+    evictor.onSpanTouched(cache, spanA, newSpan("a"));
+
+    for (int i = 0; i < 10; i++) {
+      evictor.onSpanAdded(cache, newSpan("scan" + i));
+    }
+
+    assertThat(evictedKeys).doesNotContain("a");
+    assertThat(evictedKeys).hasSize(8);
+  }
+
+  @Test
+  public void onSpanTouched_withProtectedSegmentFull_demotesLeastRecentlyUsedSpan() {
+    evictor = new SegmentedLruCacheEvictor(/* maxBytes= */ 40, /* protectedFraction= */ 0.5f);
+    CacheSpan spanA = newSpan("a");
+    CacheSpan spanB = newSpan("b");
+    CacheSpan spanC = newSpan("c");
+    evictor.onSpanAdded(cache, spanA);
+    evictor.onSpanAdded(cache, spanB);
+    evictor.onSpanAdded(cache, spanC);
+    evictor.onSpanTouched(cache, spanA, newSpan("a"));
+    evictor.onSpanTouched(cache, spanB, newSpan("b"));
+    evictor.onSpanTouched(cache, spanC, newSpan("c"));
+
+    // The protected segment can only hold two spans, so a has been demoted to the probationary
+    // segment, where it's older than the spans that are added next.
+    evictor.onSpanAdded(cache, newSpan("d"));
+    evictor.onSpanAdded(cache, newSpan("e"));
+    assertThat(evictedKeys).containsExactly("a");
+
+    evictor.onStartFile(cache, "f", /* position= */ 0, /* length= */ 20);
+    assertThat(evictedKeys).containsExactly("a", "d", "e").inOrder();
+  }
+
+  private static CacheSpan newSpan(String key) {
+    return new CacheSpan(
+        key,
+        /* position= */ 0,
+        /* length= */ 10,
+        /* lastTouchTimestamp= */ 0,
+        new File(key));
+  }
+}
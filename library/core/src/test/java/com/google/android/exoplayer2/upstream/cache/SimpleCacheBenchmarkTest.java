@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.C.LENGTH_UNSET;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the throughput of {@link SimpleCache} when threads write and read back different keys
+ * concurrently. Only runs when benchmarks are enabled, see {@link BenchmarkUtil}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class SimpleCacheBenchmarkTest {
+
+  private static final int SPANS_PER_THREAD = 200;
+  private static final int SPAN_LENGTH = 1024;
+  private static final int MAX_THREAD_COUNT = 8;
+
+  private File testDir;
+
+  @Before
+  public void setUp() throws Exception {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+    testDir =
+        Util.createTempFile(ApplicationProvider.getApplicationContext(), "SimpleCacheBenchmark");
+    assertThat(testDir.delete()).isTrue();
+    assertThat(testDir.mkdirs()).isTrue();
+  }
+
+  @After
+  public void tearDown() {
+    if (testDir != null) {
+      Util.recursiveDelete(testDir);
+    }
+  }
+
+  @Test
+  public void readWrite_differentKeysConcurrently() throws Exception {
+    StringBuilder results = new StringBuilder("ops/s by thread count:");
+    for (int threadCount = 1; threadCount <= MAX_THREAD_COUNT; threadCount *= 2) {
+      SimpleCache simpleCache =
+          SimpleCache.createWithJournalIndex(
+              new File(testDir, "cache" + threadCount), new NoOpCacheEvictor());
+      ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+      List<Future<?>> futures = new ArrayList<>();
+      byte[] data = TestUtil.buildTestData(SPAN_LENGTH);
+      long startTimeNs = System.nanoTime();
+      for (int i = 0; i < threadCount; i++) {
+        String key = "key" + i;
+        futures.add(
+            executorService.submit(
+                () -> {
+                  for (int j = 0; j < SPANS_PER_THREAD; j++) {
+                    int position = j * SPAN_LENGTH;
+                    CacheSpan holeSpan = simpleCache.startReadWrite(key, position, SPAN_LENGTH);
+                    File file = simpleCache.startFile(key, position, SPAN_LENGTH);
+                    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                      outputStream.write(data);
+                    }
+                    simpleCache.commitFile(file, SPAN_LENGTH);
+                    simpleCache.releaseHoleSpan(holeSpan);
+                    simpleCache.startReadWrite(key, position, SPAN_LENGTH);
+                    simpleCache.getCachedLength(key, /* position= */ 0, LENGTH_UNSET);
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      long elapsedTimeNs = System.nanoTime() - startTimeNs;
+      executorService.shutdown();
+      assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+      simpleCache.release();
+
+      // Each span is written and read back, which counts as two operations.
+      long operationsPerSecond =
+          2L * threadCount * SPANS_PER_THREAD * C.NANOS_PER_SECOND / elapsedTimeNs;
+      results.append(String.format(Locale.US, " %d=%d", threadCount, operationsPerSecond));
+    }
+    BenchmarkUtil.report("SimpleCache", results.toString());
+  }
+}
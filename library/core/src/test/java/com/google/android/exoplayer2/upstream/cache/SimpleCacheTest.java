@@ -32,8 +32,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -149,6 +157,221 @@ public class SimpleCacheTest {
         .isEqualTo(Uri.parse("https://redirect.google.com"));
   }
 
+  @Test
+  public void newInstance_withExistingCacheDirectory_withJournalIndex_loadsCachedData()
+      throws Exception {
+    SimpleCache simpleCache = SimpleCache.createWithJournalIndex(cacheDir, new NoOpCacheEvictor());
+
+    // Write some data and metadata to the cache.
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setRedirectedUri(mutations, Uri.parse("https://redirect.google.com"));
+    simpleCache.applyContentMetadataMutations(KEY_1, mutations);
+    simpleCache.release();
+
+    // Create a new instance pointing to the same directory.
+    simpleCache = SimpleCache.createWithJournalIndex(cacheDir, new NoOpCacheEvictor());
+
+    // Read the cached data and metadata back.
+    CacheSpan fileSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    assertCachedDataReadCorrect(fileSpan);
+    assertThat(ContentMetadata.getRedirectedUri(simpleCache.getContentMetadata(KEY_1)))
+        .isEqualTo(Uri.parse("https://redirect.google.com"));
+  }
+  @Test
+  public void newInstance_withLazyValidation_withManifest_loadsCachedData() throws Exception {
+    SimpleCache simpleCache = getLazilyValidatedSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    simpleCache.release();
+    assertThat(new File(cacheDir, CacheSpanManifest.FILE_NAME).exists()).isTrue();
+
+    simpleCache = getLazilyValidatedSimpleCache();
+    simpleCache.checkInitialization();
+
+    assertThat(simpleCache.getInitializationTimeMs()).isAtLeast(0);
+    // The manifest is deleted once it's been loaded.
+    assertThat(new File(cacheDir, CacheSpanManifest.FILE_NAME).exists()).isFalse();
+    CacheSpan fileSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    assertCachedDataReadCorrect(fileSpan);
+    simpleCache.blockUntilValidated();
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(1);
+  }
+
+  @Test
+  public void newInstance_withLazyValidation_withoutManifest_loadsCachedData() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    simpleCache.release();
+
+    simpleCache = getLazilyValidatedSimpleCache();
+
+    CacheSpan fileSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    assertCachedDataReadCorrect(fileSpan);
+  }
+
+  @Test
+  public void lazyValidation_withFileMissingFromManifest_loadsFile() throws Exception {
+    SimpleCache simpleCache = getLazilyValidatedSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    simpleCache.release();
+    File manifestFile = new File(cacheDir, CacheSpanManifest.FILE_NAME);
+    byte[] staleManifest = Util.toByteArray(new FileInputStream(manifestFile));
+    simpleCache = getLazilyValidatedSimpleCache();
+    holeSpan = simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_2, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    simpleCache.release();
+    // Replace the manifest with one that doesn't contain the span of KEY_2.
+    try (FileOutputStream outputStream = new FileOutputStream(manifestFile)) {
+      outputStream.write(staleManifest);
+    }
+
+    simpleCache = getLazilyValidatedSimpleCache();
+    simpleCache.blockUntilValidated();
+
+    CacheSpan fileSpan = simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET);
+    assertCachedDataReadCorrect(fileSpan);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(30);
+  }
+
+  @Test
+  public void lazyValidation_withDeletedFile_removesSpan() throws Exception {
+    SimpleCache simpleCache = getLazilyValidatedSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    File file = simpleCache.getCachedSpans(KEY_1).first().file;
+    simpleCache.release();
+    assertThat(file.delete()).isTrue();
+
+    simpleCache = getLazilyValidatedSimpleCache();
+    simpleCache.blockUntilValidated();
+
+    assertThat(simpleCache.getCachedSpans(KEY_1)).isEmpty();
+    assertThat(simpleCache.getKeys()).isEmpty();
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(0);
+  }
+
+  @Test
+  public void newInstance_withExistingCacheDirectory_evictorQueriesCacheWhileInitializing()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setContentLength(mutations, 15);
+    simpleCache.applyContentMetadataMutations(KEY_1, mutations);
+    simpleCache.release();
+
+    // Create a new instance whose evictor queries the cache as spans are added during
+    // initialization. This would deadlock if the queries blocked until initialization completed.
+    List<Long> contentLengths = new ArrayList<>();
+    List<Long> cachedLengths = new ArrayList<>();
+    CacheEvictor evictor =
+        new CacheEvictor() {
+          @Override
+          public boolean requiresCacheSpanTouches() {
+            return false;
+          }
+
+          @Override
+          public void onCacheInitialized() {}
+
+          @Override
+          public void onStartFile(Cache cache, String key, long position, long length) {}
+
+          @Override
+          public void onSpanAdded(Cache cache, CacheSpan span) {
+            contentLengths.add(ContentMetadata.getContentLength(cache.getContentMetadata(span.key)));
+            cachedLengths.add(cache.getCachedLength(span.key, 0, LENGTH_UNSET));
+          }
+
+          @Override
+          public void onSpanRemoved(Cache cache, CacheSpan span) {}
+
+          @Override
+          public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {}
+        };
+    simpleCache = new SimpleCache(cacheDir, evictor, databaseProvider);
+
+    assertThat(simpleCache.getKeys()).containsExactly(KEY_1);
+    assertThat(contentLengths).containsExactly(15L);
+    assertThat(cachedLengths).containsExactly(15L);
+  }
+
+  @Test
+  public void getCachedBytes_whileInitializing_returnsOnceInitialized() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_1, 0, 15);
+    addCache(simpleCache, KEY_1, 15, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    simpleCache.release();
+
+    // Hold up initialization after the first span has been added, until the query below is waiting
+    // for initialization to complete. The second span of the same key is added after that.
+    CountDownLatch initializing = new CountDownLatch(1);
+    CountDownLatch queryWaiting = new CountDownLatch(1);
+    CacheEvictor evictor =
+        new CacheEvictor() {
+          @Override
+          public boolean requiresCacheSpanTouches() {
+            return false;
+          }
+
+          @Override
+          public void onCacheInitialized() {}
+
+          @Override
+          public void onStartFile(Cache cache, String key, long position, long length) {}
+
+          @Override
+          public void onSpanAdded(Cache cache, CacheSpan span) {
+            if (initializing.getCount() > 0) {
+              initializing.countDown();
+              try {
+                queryWaiting.await(10, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+          }
+
+          @Override
+          public void onSpanRemoved(Cache cache, CacheSpan span) {}
+
+          @Override
+          public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {}
+        };
+    simpleCache = new SimpleCache(cacheDir, evictor, databaseProvider);
+    initializing.await();
+    SimpleCache initializingCache = simpleCache;
+    AtomicReference<Long> cachedBytes = new AtomicReference<>();
+    Thread queryThread =
+        new Thread(
+            () ->
+                cachedBytes.set(
+                    initializingCache.getCachedBytes(KEY_1, /* position= */ 0, LENGTH_UNSET)));
+    queryThread.start();
+    while (queryThread.isAlive() && queryThread.getState() != Thread.State.WAITING) {
+      Thread.sleep(/* millis= */ 1);
+    }
+    queryWaiting.countDown();
+    queryThread.join(/* millis= */ 10_000);
+
+    assertThat(queryThread.isAlive()).isFalse();
+    assertThat(cachedBytes.get()).isEqualTo(30L);
+  }
+
   @Test
   public void newInstance_withExistingCacheInstance_fails() {
     getSimpleCache();
@@ -650,7 +873,11 @@ public class SimpleCacheTest {
         Mockito.spy(new CachedContentIndex(TestUtil.getInMemoryDatabaseProvider()));
     SimpleCache simpleCache =
         new SimpleCache(
-            cacheDir, new LeastRecentlyUsedCacheEvictor(20), contentIndex, /* fileIndex= */ null);
+            cacheDir,
+            new LeastRecentlyUsedCacheEvictor(20),
+            contentIndex,
+            /* fileIndex= */ null,
+            /* lazyValidation= */ false);
 
     // Add some content.
     CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
@@ -676,6 +903,83 @@ public class SimpleCacheTest {
     assertThat(fileSpan.length).isEqualTo(15);
   }
 
+  @Test
+  public void startReadWrite_whenRangeLocked_blocksUntilSpanCommittedWithoutBlockingOtherKeys()
+      throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET);
+
+    CountDownLatch readerStarted = new CountDownLatch(1);
+    AtomicReference<CacheSpan> readSpan = new AtomicReference<>();
+    Thread readerThread =
+        new Thread(
+            () -> {
+              readerStarted.countDown();
+              try {
+                readSpan.set(simpleCache.startReadWrite(KEY_1, 0, LENGTH_UNSET));
+              } catch (InterruptedException | CacheException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    readerThread.start();
+    readerStarted.await();
+
+    // Whilst the reader is blocked, other keys can still be written and read.
+    CacheSpan otherHoleSpan = simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET);
+    addCache(simpleCache, KEY_2, 0, 15);
+    simpleCache.releaseHoleSpan(otherHoleSpan);
+    assertCachedDataReadCorrect(simpleCache.startReadWrite(KEY_2, 0, LENGTH_UNSET));
+    assertThat(readSpan.get()).isNull();
+
+    addCache(simpleCache, KEY_1, 0, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    readerThread.join(/* millis= */ 10_000);
+
+    assertThat(readerThread.isAlive()).isFalse();
+    assertCachedDataReadCorrect(readSpan.get());
+  }
+
+  @Test
+  public void readWrite_concurrentlyWithIncreasingThreadCount_cachesAllData() throws Exception {
+    int spansPerThread = 50;
+    int spanLength = 1024;
+    SimpleCache simpleCache = getSimpleCache();
+
+    for (int threadCount = 1; threadCount <= 8; threadCount *= 2) {
+      ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+      List<Future<?>> futures = new ArrayList<>();
+      String keyPrefix = "threads" + threadCount + "_key";
+      for (int i = 0; i < threadCount; i++) {
+        String key = keyPrefix + i;
+        futures.add(
+            executorService.submit(
+                () -> {
+                  for (int j = 0; j < spansPerThread; j++) {
+                    int position = j * spanLength;
+                    CacheSpan holeSpan = simpleCache.startReadWrite(key, position, spanLength);
+                    addCache(simpleCache, key, position, spanLength);
+                    simpleCache.releaseHoleSpan(holeSpan);
+                    assertCachedDataReadCorrect(
+                        simpleCache.startReadWrite(key, position, spanLength));
+                    assertThat(simpleCache.isCached(key, /* position= */ 0, position + spanLength))
+                        .isTrue();
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      executorService.shutdown();
+      assertThat(executorService.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+      for (int i = 0; i < threadCount; i++) {
+        assertThat(simpleCache.getCachedBytes(keyPrefix + i, /* position= */ 0, LENGTH_UNSET))
+            .isEqualTo((long) spansPerThread * spanLength);
+      }
+    }
+  }
+
   @Test
   public void usingReleasedCache_throwsException() {
     SimpleCache simpleCache = getSimpleCache();
@@ -689,6 +993,10 @@ public class SimpleCacheTest {
     return new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider);
   }
 
+  private SimpleCache getLazilyValidatedSimpleCache() {
+    return SimpleCache.createWithLazyValidation(cacheDir, new NoOpCacheEvictor(), databaseProvider);
+  }
+
   @Deprecated
   @SuppressWarnings("deprecation") // Testing deprecated behaviour.
   private SimpleCache getEncryptedSimpleCache(byte[] secretKey) {
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link TimeToLiveCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public class TimeToLiveCacheEvictorTest {
+
+  private Cache cache;
+  private List<String> evictedKeys;
+  private FakeClock clock;
+  private TimeToLiveCacheEvictor evictor;
+
+  @Before
+  public void setUp() {
+    cache = mock(Cache.class);
+    evictedKeys = new ArrayList<>();
+    clock = new FakeClock(/* initialTimeMs= */ 1000);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              evictedKeys.add(span.key);
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    when(cache.getContentMetadata(anyString())).thenReturn(DefaultContentMetadata.EMPTY);
+  }
+
+  @Test
+  public void onStartFile_afterDefaultTimeToLive_evictsExpiredSpans() {
+    evictor = newEvictor(/* defaultTimeToLiveMs= */ 500);
+    evictor.onSpanAdded(cache, newSpan("a", /* lastTouchTimestamp= */ 1000));
+    clock.advanceTime(200);
+    evictor.onSpanAdded(cache, newSpan("b", /* lastTouchTimestamp= */ 1200));
+
+    clock.advanceTime(400);
+    evictor.onStartFile(cache, "c", /* position= */ 0, /* length= */ 10);
+
+    assertThat(evictedKeys).containsExactly("a");
+  }
+
+  @Test
+  public void onStartFile_afterExpiryTimeInMetadata_evictsExpiredSpans() {
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setExpiryTimeMs(mutations, /* expiryTimeMs= */ 2000);
+    when(cache.getContentMetadata("a"))
+        .thenReturn(DefaultContentMetadata.EMPTY.copyWithMutationsApplied(mutations));
+    evictor = newEvictor(/* defaultTimeToLiveMs= */ C.TIME_UNSET);
+    evictor.onSpanAdded(cache, newSpan("a", /* lastTouchTimestamp= */ 1000));
+    evictor.onSpanAdded(cache, newSpan("b", /* lastTouchTimestamp= */ 1000));
+
+    clock.advanceTime(999);
+    evictor.onStartFile(cache, "c", /* position= */ 0, /* length= */ 10);
+    assertThat(evictedKeys).isEmpty();
+
+    clock.advanceTime(1);
+    evictor.onStartFile(cache, "c", /* position= */ 0, /* length= */ 10);
+    assertThat(evictedKeys).containsExactly("a");
+  }
+
+  @Test
+  public void onSpanTouched_withExpiredSpan_doesNotEvictTouchedSpan() {
+    evictor = newEvictor(/* defaultTimeToLiveMs= */ 500);
+    CacheSpan spanA = newSpan("a", /* lastTouchTimestamp= */ 1000);
+    CacheSpan spanB = newSpan("b", /* lastTouchTimestamp= */ 1000);
+    evictor.onSpanAdded(cache, spanA);
+    evictor.onSpanAdded(cache, spanB);
+
+    clock.advanceTime(500);
+    CacheSpan touchedSpanA = newSpan("a", /* lastTouchTimestamp= */ 1500);
+    evictor.onSpanTouched(cache, spanA, touchedSpanA);
+    assertThat(evictedKeys).containsExactly("b");
+
+    evictor.onStartFile(cache, "c", /* position= */ 0, /* length= */ 10);
+    assertThat(evictedKeys).containsExactly("b", "a").inOrder();
+  }
+
+  @Test
+  public void onSpanAdded_exceedingMaxBytesOfDelegate_evictsUsingDelegate() {
+    evictor =
+        new TimeToLiveCacheEvictor(
+            new LeastRecentlyUsedCacheEvictor(/* maxBytes= */ 20),
+            /* defaultTimeToLiveMs= */ C.TIME_UNSET,
+            clock);
+
+    evictor.onSpanAdded(cache, newSpan("a", /* lastTouchTimestamp= */ 1000));
+    evictor.onSpanAdded(cache, newSpan("b", /* lastTouchTimestamp= */ 1001));
+    evictor.onSpanAdded(cache, newSpan("c", /* lastTouchTimestamp= */ 1002));
+
+    assertThat(evictedKeys).containsExactly("a");
+  }
+
+  private TimeToLiveCacheEvictor newEvictor(long defaultTimeToLiveMs) {
+    return new TimeToLiveCacheEvictor(new NoOpCacheEvictor(), defaultTimeToLiveMs, clock);
+  }
+
+  private static CacheSpan newSpan(String key, long lastTouchTimestamp) {
+    return new CacheSpan(
+        key, /* position= */ 0, /* length= */ 10, lastTouchTimestamp, new File(key));
+  }
+}
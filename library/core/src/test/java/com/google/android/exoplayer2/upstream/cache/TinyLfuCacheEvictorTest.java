@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link TinyLfuCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public class TinyLfuCacheEvictorTest {
+
+  private Cache cache;
+  private List<String> evictedKeys;
+  private long cachedBytes;
+  private TinyLfuCacheEvictor evictor;
+
+  @Before
+  public void setUp() {
+    cache = mock(Cache.class);
+    evictedKeys = new ArrayList<>();
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              evictedKeys.add(span.key);
+              cachedBytes -= span.length;
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+  }
+
+  @Test
+  public void contentBiggerThanMaxSizeDoesNotThrowException() {
+    evictor = new TinyLfuCacheEvictor(/* maxBytes= */ 100);
+    evictor.onCacheInitialized();
+    evictor.onStartFile(cache, "key", 0, 101);
+  }
+
+  @Test
+  public void onSpanAdded_exceedingMaxBytes_keepsCacheWithinMaxBytes() {
+    evictor =
+        new TinyLfuCacheEvictor(
+            /* maxBytes= */ 100, /* windowFraction= */ 0.1f, /* expectedSpanCount= */ 64);
+
+    for (int i = 0; i < 50; i++) {
+      addSpan("key" + i);
+      assertThat(cachedBytes).isAtMost(100);
+    }
+
+    assertThat(evictedKeys).hasSize(40);
+  }
+
+  @Test
+  public void onSpanAdded_withFrequentlyUsedSpans_doesNotEvictThemForSpansUsedOnce() {
+    evictor =
+        new TinyLfuCacheEvictor(
+            /* maxBytes= */ 100, /* windowFraction= */ 0.1f, /* expectedSpanCount= */ 64);
+    List<CacheSpan> frequentlyUsedSpans = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      frequentlyUsedSpans.add(addSpan("frequent" + i));
+    }
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < frequentlyUsedSpans.size(); j++) {
+        CacheSpan oldSpan = frequentlyUsedSpans.get(j);
+        CacheSpan newSpan = newSpan(oldSpan.key);
+        evictor.onSpanTouched(cache, oldSpan, newSpan);
+        frequentlyUsedSpans.set(j, newSpan);
+      }
+    }
+
+    for (int i = 0; i < 100; i++) {
+      addSpan("scan" + i);
+    }
+
+    for (int i = 0; i < frequentlyUsedSpans.size(); i++) {
+      assertThat(evictedKeys).doesNotContain("frequent" + i);
+    }
+    assertThat(cachedBytes).isAtMost(100);
+  }
+
+  private CacheSpan addSpan(String key) {
+    CacheSpan span = newSpan(key);
+    cachedBytes += span.length;
+    evictor.onSpanAdded(cache, span);
+    return span;
+  }
+
+  private static CacheSpan newSpan(String key) {
+    return new CacheSpan(
+        key,
+        /* position= */ 0,
+        /* length= */ 10,
+        /* lastTouchTimestamp= */ 0,
+        new File(key));
+  }
+}
@@ -66,6 +66,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy.LoadErrorI
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
@@ -108,6 +109,8 @@ public final class DashMediaSource extends BaseMediaSource {
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private long targetLiveOffsetOverrideMs;
     private long fallbackTargetLiveOffsetMs;
+    @Nullable private LoaderThreadPool loaderThreadPool;
+    private int loaderPriority;
     @Nullable private ParsingLoadable.Parser<? extends DashManifest> manifestParser;
     private List<StreamKey> streamKeys;
     @Nullable private Object tag;
@@ -140,6 +143,7 @@ public final class DashMediaSource extends BaseMediaSource {
       loadErrorHandlingPolicy = new DefaultLoadErrorHandlingPolicy();
       targetLiveOffsetOverrideMs = C.TIME_UNSET;
       fallbackTargetLiveOffsetMs = DEFAULT_FALLBACK_TARGET_LIVE_OFFSET_MS;
+      loaderPriority = C.PRIORITY_PLAYBACK;
       compositeSequenceableLoaderFactory = new DefaultCompositeSequenceableLoaderFactory();
       streamKeys = Collections.emptyList();
     }
@@ -282,6 +286,35 @@ public final class DashMediaSource extends BaseMediaSource {
       return this;
     }
 
+    /**
+     * Sets a {@link LoaderThreadPool} on which the manifest and media chunks load, with {@link
+     * C#PRIORITY_PLAYBACK}. See {@link #setLoaderThreadPool(LoaderThreadPool, int)}.
+     *
+     * @param loaderThreadPool The {@link LoaderThreadPool}, or {@code null}.
+     * @return This factory, for convenience.
+     */
+    public Factory setLoaderThreadPool(@Nullable LoaderThreadPool loaderThreadPool) {
+      return setLoaderThreadPool(loaderThreadPool, C.PRIORITY_PLAYBACK);
+    }
+
+    /**
+     * Sets a {@link LoaderThreadPool} on which the manifest and media chunks load, so that many
+     * streams and media sources can share a bounded number of threads. The default value is {@code
+     * null}, in which case the manifest and each stream load on a thread of their own.
+     *
+     * @param loaderThreadPool The {@link LoaderThreadPool}, or {@code null}.
+     * @param loaderPriority The priority of the loads relative to those of other loaders using the
+     *     same pool. Higher values run first. {@link C#PRIORITY_PLAYBACK} is suitable for loads
+     *     needed for playback.
+     * @return This factory, for convenience.
+     */
+    public Factory setLoaderThreadPool(
+        @Nullable LoaderThreadPool loaderThreadPool, int loaderPriority) {
+      this.loaderThreadPool = loaderThreadPool;
+      this.loaderPriority = loaderPriority;
+      return this;
+    }
+
     /**
      * Returns a new {@link DashMediaSource} using the current parameters and the specified
      * sideloaded manifest.
@@ -344,7 +377,9 @@ public final class DashMediaSource extends BaseMediaSource {
           compositeSequenceableLoaderFactory,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
-          fallbackTargetLiveOffsetMs);
+          fallbackTargetLiveOffsetMs,
+          loaderThreadPool,
+          loaderPriority);
     }
 
     /** @deprecated Use {@link #createMediaSource(MediaItem)} instead. */
@@ -410,7 +445,9 @@ public final class DashMediaSource extends BaseMediaSource {
           compositeSequenceableLoaderFactory,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
-          fallbackTargetLiveOffsetMs);
+          fallbackTargetLiveOffsetMs,
+          loaderThreadPool,
+          loaderPriority);
     }
 
     @Override
@@ -450,6 +487,8 @@ public final class DashMediaSource extends BaseMediaSource {
   private final DrmSessionManager drmSessionManager;
   private final LoadErrorHandlingPolicy loadErrorHandlingPolicy;
   private final long fallbackTargetLiveOffsetMs;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
+  private final int loaderPriority;
   private final EventDispatcher manifestEventDispatcher;
   private final ParsingLoadable.Parser<? extends DashManifest> manifestParser;
   private final ManifestCallback manifestCallback;
@@ -490,7 +529,9 @@ public final class DashMediaSource extends BaseMediaSource {
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       DrmSessionManager drmSessionManager,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
-      long fallbackTargetLiveOffsetMs) {
+      long fallbackTargetLiveOffsetMs,
+      @Nullable LoaderThreadPool loaderThreadPool,
+      int loaderPriority) {
     this.mediaItem = mediaItem;
     this.liveConfiguration = mediaItem.liveConfiguration;
     this.manifestUri = checkNotNull(mediaItem.playbackProperties).uri;
@@ -502,6 +543,8 @@ public final class DashMediaSource extends BaseMediaSource {
     this.drmSessionManager = drmSessionManager;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.fallbackTargetLiveOffsetMs = fallbackTargetLiveOffsetMs;
+    this.loaderThreadPool = loaderThreadPool;
+    this.loaderPriority = loaderPriority;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
     sideloadedManifest = manifest != null;
     manifestEventDispatcher = createEventDispatcher(/* mediaPeriodId= */ null);
@@ -562,7 +605,12 @@ public final class DashMediaSource extends BaseMediaSource {
       processManifest(false);
     } else {
       dataSource = manifestDataSourceFactory.createDataSource();
-      loader = new Loader("Loader:DashMediaSource");
+      loader =
+          Loader.create(
+              "Loader:DashMediaSource",
+              loaderThreadPool,
+              loaderPriority,
+              /* loadsMayBlock= */ false);
       handler = Util.createHandlerForCurrentLooper();
       startLoadingManifest();
     }
@@ -595,7 +643,9 @@ public final class DashMediaSource extends BaseMediaSource {
             manifestLoadErrorThrower,
             allocator,
             compositeSequenceableLoaderFactory,
-            playerEmsgCallback);
+            playerEmsgCallback,
+            loaderThreadPool,
+            loaderPriority);
     periodsById.put(mediaPeriod.id, mediaPeriod);
     return mediaPeriod;
   }
@@ -53,6 +53,7 @@ import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
 import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
@@ -69,6 +70,8 @@ public class DefaultDashChunkSource implements DashChunkSource {
     private final DataSource.Factory dataSourceFactory;
     private final int maxSegmentsPerLoad;
 
+    private int readAheadBlockSize;
+
     public Factory(DataSource.Factory dataSourceFactory) {
       this(dataSourceFactory, /* maxSegmentsPerLoad= */ 1);
     }
@@ -76,6 +79,21 @@ public class DefaultDashChunkSource implements DashChunkSource {
     public Factory(DataSource.Factory dataSourceFactory, int maxSegmentsPerLoad) {
       this.dataSourceFactory = dataSourceFactory;
       this.maxSegmentsPerLoad = maxSegmentsPerLoad;
+      readAheadBlockSize = C.LENGTH_UNSET;
+    }
+
+    /**
+     * Sets the number of bytes that the inputs of the chunk extractors read at a time when less is
+     * requested. The default value is {@link C#LENGTH_UNSET}, for which only the requested data is
+     * read.
+     *
+     * @param readAheadBlockSize The read-ahead block size, in bytes, or {@link C#LENGTH_UNSET}.
+     * @return This factory, for convenience.
+     */
+    public Factory setReadAheadBlockSize(int readAheadBlockSize) {
+      Assertions.checkArgument(readAheadBlockSize > 0 || readAheadBlockSize == C.LENGTH_UNSET);
+      this.readAheadBlockSize = readAheadBlockSize;
+      return this;
     }
 
     @Override
@@ -107,7 +125,8 @@ public class DefaultDashChunkSource implements DashChunkSource {
           maxSegmentsPerLoad,
           enableEventMessageTrack,
           closedCaptionFormats,
-          playerEmsgHandler);
+          playerEmsgHandler,
+          readAheadBlockSize);
     }
 
   }
@@ -160,6 +179,57 @@ public class DefaultDashChunkSource implements DashChunkSource {
       boolean enableEventMessageTrack,
       List<Format> closedCaptionFormats,
       @Nullable PlayerTrackEmsgHandler playerTrackEmsgHandler) {
+    this(
+        manifestLoaderErrorThrower,
+        manifest,
+        periodIndex,
+        adaptationSetIndices,
+        trackSelection,
+        trackType,
+        dataSource,
+        elapsedRealtimeOffsetMs,
+        maxSegmentsPerLoad,
+        enableEventMessageTrack,
+        closedCaptionFormats,
+        playerTrackEmsgHandler,
+        /* readAheadBlockSize= */ C.LENGTH_UNSET);
+  }
+
+  /**
+   * @param manifestLoaderErrorThrower Throws errors affecting loading of manifests.
+   * @param manifest The initial manifest.
+   * @param periodIndex The index of the period in the manifest.
+   * @param adaptationSetIndices The indices of the adaptation sets in the period.
+   * @param trackSelection The track selection.
+   * @param trackType The type of the tracks in the selection.
+   * @param dataSource A {@link DataSource} suitable for loading the media data.
+   * @param elapsedRealtimeOffsetMs If known, an estimate of the instantaneous difference between
+   *     server-side unix time and {@link SystemClock#elapsedRealtime()} in milliseconds, specified
+   *     as the server's unix time minus the local elapsed time. Or {@link C#TIME_UNSET} if unknown.
+   * @param maxSegmentsPerLoad The maximum number of segments to combine into a single request. Note
+   *     that segments will only be combined if their {@link Uri}s are the same and if their data
+   *     ranges are adjacent.
+   * @param enableEventMessageTrack Whether to output an event message track.
+   * @param closedCaptionFormats The {@link Format Formats} of closed caption tracks to be output.
+   * @param playerTrackEmsgHandler The {@link PlayerTrackEmsgHandler} instance to handle emsg
+   *     messages targeting the player. Maybe null if this is not necessary.
+   * @param readAheadBlockSize The number of bytes that the inputs of the chunk extractors read at a
+   *     time when less is requested, or {@link C#LENGTH_UNSET} to read only the requested data.
+   */
+  public DefaultDashChunkSource(
+      LoaderErrorThrower manifestLoaderErrorThrower,
+      DashManifest manifest,
+      int periodIndex,
+      int[] adaptationSetIndices,
+      ExoTrackSelection trackSelection,
+      int trackType,
+      DataSource dataSource,
+      long elapsedRealtimeOffsetMs,
+      int maxSegmentsPerLoad,
+      boolean enableEventMessageTrack,
+      List<Format> closedCaptionFormats,
+      @Nullable PlayerTrackEmsgHandler playerTrackEmsgHandler,
+      int readAheadBlockSize) {
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.manifest = manifest;
     this.adaptationSetIndices = adaptationSetIndices;
@@ -184,7 +254,8 @@ public class DefaultDashChunkSource implements DashChunkSource {
               representation,
               enableEventMessageTrack,
               closedCaptionFormats,
-              playerTrackEmsgHandler);
+              playerTrackEmsgHandler,
+              readAheadBlockSize);
     }
   }
 
@@ -670,7 +741,8 @@ public class DefaultDashChunkSource implements DashChunkSource {
         Representation representation,
         boolean enableEventMessageTrack,
         List<Format> closedCaptionFormats,
-        @Nullable TrackOutput playerEmsgTrackOutput) {
+        @Nullable TrackOutput playerEmsgTrackOutput,
+        int readAheadBlockSize) {
       this(
           periodDurationUs,
           representation,
@@ -679,7 +751,8 @@ public class DefaultDashChunkSource implements DashChunkSource {
               representation,
               enableEventMessageTrack,
               closedCaptionFormats,
-              playerEmsgTrackOutput),
+              playerEmsgTrackOutput,
+              readAheadBlockSize),
           /* segmentNumShift= */ 0,
           representation.getIndex());
     }
@@ -807,7 +880,8 @@ public class DefaultDashChunkSource implements DashChunkSource {
         Representation representation,
         boolean enableEventMessageTrack,
         List<Format> closedCaptionFormats,
-        @Nullable TrackOutput playerEmsgTrackOutput) {
+        @Nullable TrackOutput playerEmsgTrackOutput,
+        int readAheadBlockSize) {
       String containerMimeType = representation.format.containerMimeType;
       Extractor extractor;
       if (MimeTypes.isText(containerMimeType)) {
@@ -833,7 +907,8 @@ public class DefaultDashChunkSource implements DashChunkSource {
                 closedCaptionFormats,
                 playerEmsgTrackOutput);
       }
-      return new BundledChunkExtractor(extractor, trackType, representation.format);
+      return new BundledChunkExtractor(
+          extractor, trackType, representation.format, readAheadBlockSize);
     }
   }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+
+/**
+ * Stores a {@link ChunkIndex} that an {@link Extractor} built by indexing a media stream, so that
+ * the stream can be seeked precisely without being indexed again when it's next extracted.
+ *
+ * <p>Each instance stores the index of a single stream. Implementations must be safe to access
+ * from multiple threads.
+ */
+public interface ChunkIndexStore {
+
+  /** Creates {@link ChunkIndexStore} instances. */
+  interface Factory {
+
+    /**
+     * Returns a store for the chunk index of the media at {@code uri}, or null if its chunk index
+     * can't be stored.
+     */
+    @Nullable
+    ChunkIndexStore createChunkIndexStore(Uri uri);
+  }
+
+  /**
+   * Returns the stored chunk index, or null if there isn't one for a stream of the specified
+   * length.
+   *
+   * @param streamLength The length of the stream, in bytes.
+   * @return The stored chunk index, or null.
+   */
+  @Nullable
+  ChunkIndex getChunkIndex(long streamLength);
+
+  /**
+   * Stores a chunk index, replacing any that was stored previously.
+   *
+   * @param chunkIndex The chunk index.
+   * @param streamLength The length of the stream the index was built from, in bytes.
+   */
+  void putChunkIndex(ChunkIndex chunkIndex, long streamLength);
+}
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.extractor;
 
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 
 import com.google.android.exoplayer2.C;
@@ -24,9 +25,19 @@ import com.google.android.exoplayer2.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
-/** An {@link ExtractorInput} that wraps a {@link DataReader}. */
+/**
+ * An {@link ExtractorInput} that wraps a {@link DataReader}.
+ *
+ * <p>By default, reads, skips and peeks read only the requested data from the {@link DataReader}.
+ * Extractors that read a few bytes at a time then cause a read from the {@link DataReader} for
+ * each of them, which is costly for sources with a high overhead per read. An input can instead
+ * be created with a read-ahead block size, in which case requests for less than a block are served
+ * from a buffer that's filled a block at a time. Larger requests are still read directly into their
+ * targets. {@link #getUpstreamReadCount()} returns the number of reads from the {@link
+ * DataReader}, which can be used to choose a block size for a type of source.
+ */
 public final class DefaultExtractorInput implements ExtractorInput {
 
   private static final int PEEK_MIN_FREE_SPACE_AFTER_RESIZE = 64 * 1024;
@@ -36,11 +47,15 @@ public final class DefaultExtractorInput implements ExtractorInput {
   private final byte[] scratchSpace;
   private final DataReader dataReader;
   private final long streamLength;
+  private final int readAheadBlockSize;
+  private final int peekMaxFreeSpace;
 
   private long position;
   private byte[] peekBuffer;
+  private int peekBufferOffset;
   private int peekBufferPosition;
   private int peekBufferLength;
+  private long upstreamReadCount;
 
   /**
    * @param dataReader The wrapped {@link DataReader}.
@@ -48,20 +63,72 @@ public final class DefaultExtractorInput implements ExtractorInput {
    * @param length The length of the stream, or {@link C#LENGTH_UNSET} if it is unknown.
    */
   public DefaultExtractorInput(DataReader dataReader, long position, long length) {
+    this(dataReader, position, length, /* readAheadBlockSize= */ C.LENGTH_UNSET);
+  }
+
+  /**
+   * @param dataReader The wrapped {@link DataReader}.
+   * @param position The initial position in the stream.
+   * @param length The length of the stream, or {@link C#LENGTH_UNSET} if it is unknown.
+   * @param readAheadBlockSize The number of bytes to read from the {@link DataReader} at a time
+   *     when less is requested, or {@link C#LENGTH_UNSET} to read only the requested data.
+   */
+  public DefaultExtractorInput(
+      DataReader dataReader, long position, long length, int readAheadBlockSize) {
+    Assertions.checkArgument(readAheadBlockSize > 0 || readAheadBlockSize == C.LENGTH_UNSET);
     this.dataReader = dataReader;
     this.position = position;
     this.streamLength = length;
+    this.readAheadBlockSize = readAheadBlockSize;
+    // Keep enough free space for a block, so that the buffer isn't shrunk after every block.
+    peekMaxFreeSpace =
+        max(PEEK_MAX_FREE_SPACE, readAheadBlockSize + PEEK_MIN_FREE_SPACE_AFTER_RESIZE);
     peekBuffer = new byte[PEEK_MIN_FREE_SPACE_AFTER_RESIZE];
     scratchSpace = new byte[SCRATCH_SPACE_SIZE];
   }
 
+  /** Returns the number of reads from the wrapped {@link DataReader}. */
+  public long getUpstreamReadCount() {
+    return upstreamReadCount;
+  }
+
   @Override
   public int read(byte[] target, int offset, int length) throws IOException {
     int bytesRead = readFromPeekBuffer(target, offset, length);
     if (bytesRead == 0) {
-      bytesRead =
-          readFromUpstream(
-              target, offset, length, /* bytesAlreadyRead= */ 0, /* allowEndOfInput= */ true);
+      if (shouldReadAhead(length)) {
+        bytesRead =
+            readAhead(/* bytesAlreadyRead= */ 0, /* allowEndOfInput= */ true)
+                ? readFromPeekBuffer(target, offset, length)
+                : C.RESULT_END_OF_INPUT;
+      } else {
+        bytesRead =
+            readFromUpstream(
+                target, offset, length, /* bytesAlreadyRead= */ 0, /* allowEndOfInput= */ true);
+      }
+    }
+    commitBytesRead(bytesRead);
+    return bytesRead;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Data that isn't in the peek buffer is read by the wrapped {@link DataReader} straight into
+   * {@code target}.
+   */
+  @Override
+  public int read(ByteBuffer target) throws IOException {
+    int bytesRead = readFromPeekBuffer(target);
+    if (bytesRead == 0) {
+      if (shouldReadAhead(target.remaining())) {
+        bytesRead =
+            readAhead(/* bytesAlreadyRead= */ 0, /* allowEndOfInput= */ true)
+                ? readFromPeekBuffer(target)
+                : C.RESULT_END_OF_INPUT;
+      } else {
+        bytesRead = readFromUpstream(target);
+      }
     }
     commitBytesRead(bytesRead);
     return bytesRead;
@@ -72,7 +139,14 @@ public final class DefaultExtractorInput implements ExtractorInput {
       throws IOException {
     int bytesRead = readFromPeekBuffer(target, offset, length);
     while (bytesRead < length && bytesRead != C.RESULT_END_OF_INPUT) {
-      bytesRead = readFromUpstream(target, offset, length, bytesRead, allowEndOfInput);
+      if (shouldReadAhead(length - bytesRead)) {
+        bytesRead =
+            readAhead(bytesRead, allowEndOfInput)
+                ? bytesRead + readFromPeekBuffer(target, offset + bytesRead, length - bytesRead)
+                : C.RESULT_END_OF_INPUT;
+      } else {
+        bytesRead = readFromUpstream(target, offset, length, bytesRead, allowEndOfInput);
+      }
     }
     commitBytesRead(bytesRead);
     return bytesRead != C.RESULT_END_OF_INPUT;
@@ -87,7 +161,15 @@ public final class DefaultExtractorInput implements ExtractorInput {
   public int skip(int length) throws IOException {
     int bytesSkipped = skipFromPeekBuffer(length);
     if (bytesSkipped == 0) {
-      bytesSkipped = readFromUpstream(scratchSpace, 0, min(length, scratchSpace.length), 0, true);
+      if (shouldReadAhead(length)) {
+        bytesSkipped =
+            readAhead(/* bytesAlreadyRead= */ 0, /* allowEndOfInput= */ true)
+                ? skipFromPeekBuffer(length)
+                : C.RESULT_END_OF_INPUT;
+      } else {
+        bytesSkipped =
+            readFromUpstream(scratchSpace, 0, min(length, scratchSpace.length), 0, true);
+      }
     }
     commitBytesRead(bytesSkipped);
     return bytesSkipped;
@@ -97,9 +179,17 @@ public final class DefaultExtractorInput implements ExtractorInput {
   public boolean skipFully(int length, boolean allowEndOfInput) throws IOException {
     int bytesSkipped = skipFromPeekBuffer(length);
     while (bytesSkipped < length && bytesSkipped != C.RESULT_END_OF_INPUT) {
-      int minLength = min(length, bytesSkipped + scratchSpace.length);
-      bytesSkipped =
-          readFromUpstream(scratchSpace, -bytesSkipped, minLength, bytesSkipped, allowEndOfInput);
+      if (shouldReadAhead(length - bytesSkipped)) {
+        bytesSkipped =
+            readAhead(bytesSkipped, allowEndOfInput)
+                ? bytesSkipped + skipFromPeekBuffer(length - bytesSkipped)
+                : C.RESULT_END_OF_INPUT;
+      } else {
+        int minLength = min(length, bytesSkipped + scratchSpace.length);
+        bytesSkipped =
+            readFromUpstream(
+                scratchSpace, -bytesSkipped, minLength, bytesSkipped, allowEndOfInput);
+      }
     }
     commitBytesRead(bytesSkipped);
     return bytesSkipped != C.RESULT_END_OF_INPUT;
@@ -116,21 +206,25 @@ public final class DefaultExtractorInput implements ExtractorInput {
     int peekBufferRemainingBytes = peekBufferLength - peekBufferPosition;
     int bytesPeeked;
     if (peekBufferRemainingBytes == 0) {
-      bytesPeeked =
+      int readLength = shouldReadAhead(length) ? readAheadBlockSize : length;
+      ensureSpaceForPeek(readLength);
+      int bytesRead =
           readFromUpstream(
               peekBuffer,
-              peekBufferPosition,
-              length,
+              peekBufferOffset + peekBufferPosition,
+              readLength,
               /* bytesAlreadyRead= */ 0,
               /* allowEndOfInput= */ true);
-      if (bytesPeeked == C.RESULT_END_OF_INPUT) {
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
         return C.RESULT_END_OF_INPUT;
       }
-      peekBufferLength += bytesPeeked;
+      peekBufferLength += bytesRead;
+      bytesPeeked = min(length, bytesRead);
     } else {
       bytesPeeked = min(length, peekBufferRemainingBytes);
     }
-    System.arraycopy(peekBuffer, peekBufferPosition, target, offset, bytesPeeked);
+    System.arraycopy(
+        peekBuffer, peekBufferOffset + peekBufferPosition, target, offset, bytesPeeked);
     peekBufferPosition += bytesPeeked;
     return bytesPeeked;
   }
@@ -141,7 +235,8 @@ public final class DefaultExtractorInput implements ExtractorInput {
     if (!advancePeekPosition(length, allowEndOfInput)) {
       return false;
     }
-    System.arraycopy(peekBuffer, peekBufferPosition - length, target, offset, length);
+    System.arraycopy(
+        peekBuffer, peekBufferOffset + peekBufferPosition - length, target, offset, length);
     return true;
   }
 
@@ -152,11 +247,18 @@ public final class DefaultExtractorInput implements ExtractorInput {
 
   @Override
   public boolean advancePeekPosition(int length, boolean allowEndOfInput) throws IOException {
-    ensureSpaceForPeek(length);
     int bytesPeeked = peekBufferLength - peekBufferPosition;
+    // Once data has to be read, read at least a block.
+    int readLength = bytesPeeked < length && shouldReadAhead(length) ? readAheadBlockSize : length;
+    ensureSpaceForPeek(readLength);
     while (bytesPeeked < length) {
       bytesPeeked =
-          readFromUpstream(peekBuffer, peekBufferPosition, length, bytesPeeked, allowEndOfInput);
+          readFromUpstream(
+              peekBuffer,
+              peekBufferOffset + peekBufferPosition,
+              readLength,
+              bytesPeeked,
+              allowEndOfInput);
       if (bytesPeeked == C.RESULT_END_OF_INPUT) {
         return false;
       }
@@ -200,14 +302,21 @@ public final class DefaultExtractorInput implements ExtractorInput {
 
   /**
    * Ensures {@code peekBuffer} is large enough to store at least {@code length} bytes from the
-   * current peek position.
+   * current peek position, moving the buffered data to the start of the buffer if necessary.
    */
   private void ensureSpaceForPeek(int length) {
     int requiredLength = peekBufferPosition + length;
-    if (requiredLength > peekBuffer.length) {
-      int newPeekCapacity = Util.constrainValue(peekBuffer.length * 2,
-          requiredLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE, requiredLength + PEEK_MAX_FREE_SPACE);
-      peekBuffer = Arrays.copyOf(peekBuffer, newPeekCapacity);
+    if (peekBufferOffset + requiredLength > peekBuffer.length) {
+      byte[] newPeekBuffer = peekBuffer;
+      if (requiredLength > peekBuffer.length) {
+        int newPeekCapacity = Util.constrainValue(peekBuffer.length * 2,
+            requiredLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE,
+            requiredLength + PEEK_MAX_FREE_SPACE);
+        newPeekBuffer = new byte[newPeekCapacity];
+      }
+      System.arraycopy(peekBuffer, peekBufferOffset, newPeekBuffer, 0, peekBufferLength);
+      peekBuffer = newPeekBuffer;
+      peekBufferOffset = 0;
     }
   }
 
@@ -236,7 +345,23 @@ public final class DefaultExtractorInput implements ExtractorInput {
       return 0;
     }
     int peekBytes = min(peekBufferLength, length);
-    System.arraycopy(peekBuffer, 0, target, offset, peekBytes);
+    System.arraycopy(peekBuffer, peekBufferOffset, target, offset, peekBytes);
+    updatePeekBuffer(peekBytes);
+    return peekBytes;
+  }
+
+  /**
+   * Reads from the peek buffer into a {@link ByteBuffer}.
+   *
+   * @param target The buffer into which data should be written.
+   * @return The number of bytes read.
+   */
+  private int readFromPeekBuffer(ByteBuffer target) {
+    if (peekBufferLength == 0) {
+      return 0;
+    }
+    int peekBytes = min(peekBufferLength, target.remaining());
+    target.put(peekBuffer, peekBufferOffset, peekBytes);
     updatePeekBuffer(peekBytes);
     return peekBytes;
   }
@@ -249,12 +374,47 @@ public final class DefaultExtractorInput implements ExtractorInput {
   private void updatePeekBuffer(int bytesConsumed) {
     peekBufferLength -= bytesConsumed;
     peekBufferPosition = 0;
-    byte[] newPeekBuffer = peekBuffer;
-    if (peekBufferLength < peekBuffer.length - PEEK_MAX_FREE_SPACE) {
-      newPeekBuffer = new byte[peekBufferLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE];
+    // The remaining data is moved to the start of the buffer only when space is needed after it.
+    peekBufferOffset = peekBufferLength == 0 ? 0 : peekBufferOffset + bytesConsumed;
+    if (peekBufferLength < peekBuffer.length - peekMaxFreeSpace) {
+      byte[] newPeekBuffer = new byte[peekBufferLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE];
+      System.arraycopy(peekBuffer, peekBufferOffset, newPeekBuffer, 0, peekBufferLength);
+      peekBuffer = newPeekBuffer;
+      peekBufferOffset = 0;
     }
-    System.arraycopy(peekBuffer, bytesConsumed, newPeekBuffer, 0, peekBufferLength);
-    peekBuffer = newPeekBuffer;
+  }
+
+  /** Returns whether a request for {@code length} bytes should be served by reading ahead. */
+  private boolean shouldReadAhead(int length) {
+    return readAheadBlockSize != C.LENGTH_UNSET && length > 0 && length < readAheadBlockSize;
+  }
+
+  /**
+   * Reads up to a block of data from the data reader into the peek buffer, which must be empty.
+   *
+   * @param bytesAlreadyRead The number of bytes already read by the request being served.
+   * @param allowEndOfInput True if encountering the end of the input having read no data is
+   *     allowed, and should result in false being returned. False if it should be considered an
+   *     error, causing an {@link EOFException} to be thrown.
+   * @return Whether any data was read, which is false if the input has ended.
+   * @throws EOFException If the end of input was encountered having read at least one byte, or if
+   *     no bytes were read and {@code allowEndOfInput} is false.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  private boolean readAhead(int bytesAlreadyRead, boolean allowEndOfInput) throws IOException {
+    ensureSpaceForPeek(readAheadBlockSize);
+    int bytesRead =
+        readFromUpstream(
+            peekBuffer,
+            peekBufferOffset - bytesAlreadyRead,
+            bytesAlreadyRead + readAheadBlockSize,
+            bytesAlreadyRead,
+            allowEndOfInput);
+    if (bytesRead == C.RESULT_END_OF_INPUT) {
+      return false;
+    }
+    peekBufferLength = bytesRead - bytesAlreadyRead;
+    return true;
   }
 
   /**
@@ -280,6 +440,7 @@ public final class DefaultExtractorInput implements ExtractorInput {
     if (Thread.interrupted()) {
       throw new InterruptedIOException();
     }
+    upstreamReadCount++;
     int bytesRead = dataReader.read(target, offset + bytesAlreadyRead, length - bytesAlreadyRead);
     if (bytesRead == C.RESULT_END_OF_INPUT) {
       if (bytesAlreadyRead == 0 && allowEndOfInput) {
@@ -290,6 +451,21 @@ public final class DefaultExtractorInput implements ExtractorInput {
     return bytesAlreadyRead + bytesRead;
   }
 
+  /**
+   * Reads from the data reader into a {@link ByteBuffer}.
+   *
+   * @param target The buffer into which data should be written.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the input has ended.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  private int readFromUpstream(ByteBuffer target) throws IOException {
+    if (Thread.interrupted()) {
+      throw new InterruptedIOException();
+    }
+    upstreamReadCount++;
+    return dataReader.read(target);
+  }
+
   /**
    * Advances the position by the specified number of bytes read.
    *
@@ -20,6 +20,7 @@ import static com.google.android.exoplayer2.util.FileTypes.inferFileTypeFromUri;
 
 import android.net.Uri;
 import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.extractor.amr.AmrExtractor;
 import com.google.android.exoplayer2.extractor.flac.FlacExtractor;
 import com.google.android.exoplayer2.extractor.flv.FlvExtractor;
@@ -37,10 +38,12 @@ import com.google.android.exoplayer2.extractor.ts.PsExtractor;
 import com.google.android.exoplayer2.extractor.ts.TsExtractor;
 import com.google.android.exoplayer2.extractor.ts.TsPayloadReader;
 import com.google.android.exoplayer2.extractor.wav.WavExtractor;
+import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.FileTypes;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -137,10 +140,15 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
   @TsExtractor.Mode private int tsMode;
   @DefaultTsPayloadReaderFactory.Flags private int tsFlags;
   private int tsTimestampSearchBytes;
+  private int tsBatchBufferSize;
+  @Nullable private ChunkIndexStore.Factory chunkIndexStoreFactory;
+  private int readAheadBlockSize;
 
   public DefaultExtractorsFactory() {
     tsMode = TsExtractor.MODE_SINGLE_PMT;
     tsTimestampSearchBytes = TsExtractor.DEFAULT_TIMESTAMP_SEARCH_BYTES;
+    tsBatchBufferSize = C.LENGTH_UNSET;
+    readAheadBlockSize = C.LENGTH_UNSET;
   }
 
   /**
@@ -290,6 +298,56 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
     return this;
   }
 
+  /**
+   * Sets the buffer size of {@link TsExtractor} instances created by the factory in batch mode, or
+   * {@link C#LENGTH_UNSET} to disable batch mode. Batch mode is disabled by default.
+   *
+   * @see TsExtractor#TsExtractor(int, TimestampAdjuster, TsPayloadReader.Factory, int, int)
+   * @param batchBufferSize The buffer size to use, in bytes, or {@link C#LENGTH_UNSET}.
+   * @return The factory, for convenience.
+   */
+  public synchronized DefaultExtractorsFactory setTsExtractorBatchBufferSize(int batchBufferSize) {
+    tsBatchBufferSize = batchBufferSize;
+    return this;
+  }
+
+  /**
+   * Sets the factory for stores of the chunk indices that extractors build by indexing the media,
+   * or null if built indices shouldn't be stored. Chunk indices are built by {@link
+   * FragmentedMp4Extractor} if {@link FragmentedMp4Extractor#FLAG_ENABLE_FRAGMENT_INDEXING} is
+   * set, and by {@link MatroskaExtractor} if {@link
+   * MatroskaExtractor#FLAG_ENABLE_CLUSTER_INDEXING} is set. The default value is null.
+   *
+   * @param chunkIndexStoreFactory The {@link ChunkIndexStore.Factory}, or null.
+   * @return The factory, for convenience.
+   */
+  public synchronized DefaultExtractorsFactory setChunkIndexStoreFactory(
+      @Nullable ChunkIndexStore.Factory chunkIndexStoreFactory) {
+    this.chunkIndexStoreFactory = chunkIndexStoreFactory;
+    return this;
+  }
+
+  /**
+   * Sets the number of bytes that the inputs of the extractors read at a time when less is
+   * requested. Extractors that read a few bytes at a time then cause fewer reads from sources with
+   * a high overhead per read. The default value is {@link C#LENGTH_UNSET}, for which only the
+   * requested data is read.
+   *
+   * @see DefaultExtractorInput
+   * @param readAheadBlockSize The read-ahead block size, in bytes, or {@link C#LENGTH_UNSET}.
+   * @return The factory, for convenience.
+   */
+  public synchronized DefaultExtractorsFactory setReadAheadBlockSize(int readAheadBlockSize) {
+    Assertions.checkArgument(readAheadBlockSize > 0 || readAheadBlockSize == C.LENGTH_UNSET);
+    this.readAheadBlockSize = readAheadBlockSize;
+    return this;
+  }
+
+  @Override
+  public synchronized int getReadAheadBlockSize() {
+    return readAheadBlockSize;
+  }
+
   @Override
   public synchronized Extractor[] createExtractors() {
     return createExtractors(Uri.EMPTY, new HashMap<>());
@@ -299,29 +357,35 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
   public synchronized Extractor[] createExtractors(
       Uri uri, Map<String, List<String>> responseHeaders) {
     List<Extractor> extractors = new ArrayList<>(/* initialCapacity= */ 14);
+    @Nullable
+    ChunkIndexStore chunkIndexStore =
+        chunkIndexStoreFactory != null ? chunkIndexStoreFactory.createChunkIndexStore(uri) : null;
 
     @FileTypes.Type
     int responseHeadersInferredFileType = inferFileTypeFromResponseHeaders(responseHeaders);
     if (responseHeadersInferredFileType != FileTypes.UNKNOWN) {
-      addExtractorsForFileType(responseHeadersInferredFileType, extractors);
+      addExtractorsForFileType(responseHeadersInferredFileType, chunkIndexStore, extractors);
     }
 
     @FileTypes.Type int uriInferredFileType = inferFileTypeFromUri(uri);
     if (uriInferredFileType != FileTypes.UNKNOWN
         && uriInferredFileType != responseHeadersInferredFileType) {
-      addExtractorsForFileType(uriInferredFileType, extractors);
+      addExtractorsForFileType(uriInferredFileType, chunkIndexStore, extractors);
     }
 
     for (int fileType : DEFAULT_EXTRACTOR_ORDER) {
       if (fileType != responseHeadersInferredFileType && fileType != uriInferredFileType) {
-        addExtractorsForFileType(fileType, extractors);
+        addExtractorsForFileType(fileType, chunkIndexStore, extractors);
       }
     }
 
     return extractors.toArray(new Extractor[extractors.size()]);
   }
 
-  private void addExtractorsForFileType(@FileTypes.Type int fileType, List<Extractor> extractors) {
+  private void addExtractorsForFileType(
+      @FileTypes.Type int fileType,
+      @Nullable ChunkIndexStore chunkIndexStore,
+      List<Extractor> extractors) {
     switch (fileType) {
       case FileTypes.AC3:
         extractors.add(new Ac3Extractor());
@@ -361,7 +425,7 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
         extractors.add(new FlvExtractor());
         break;
       case FileTypes.MATROSKA:
-        extractors.add(new MatroskaExtractor(matroskaFlags));
+        extractors.add(new MatroskaExtractor(matroskaFlags, chunkIndexStore));
         break;
       case FileTypes.MP3:
         extractors.add(
@@ -372,7 +436,14 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
                         : 0)));
         break;
       case FileTypes.MP4:
-        extractors.add(new FragmentedMp4Extractor(fragmentedMp4Flags));
+        extractors.add(
+            new FragmentedMp4Extractor(
+                fragmentedMp4Flags,
+                /* timestampAdjuster= */ null,
+                /* sideloadedTrack= */ null,
+                /* closedCaptionFormats= */ Collections.emptyList(),
+                /* additionalEmsgTrackOutput= */ null,
+                chunkIndexStore));
         extractors.add(new Mp4Extractor(mp4Flags));
         break;
       case FileTypes.OGG:
@@ -382,7 +453,13 @@ public final class DefaultExtractorsFactory implements ExtractorsFactory {
         extractors.add(new PsExtractor());
         break;
       case FileTypes.TS:
-        extractors.add(new TsExtractor(tsMode, tsFlags, tsTimestampSearchBytes));
+        extractors.add(
+            new TsExtractor(
+                tsMode,
+                new TimestampAdjuster(/* firstSampleTimestampUs= */ 0),
+                new DefaultTsPayloadReaderFactory(tsFlags),
+                tsTimestampSearchBytes,
+                tsBatchBufferSize));
         break;
       case FileTypes.WAV:
         extractors.add(new WavExtractor());
@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.extractor;
 
 import android.net.Uri;
+import com.google.android.exoplayer2.C;
 import java.util.List;
 import java.util.Map;
 
@@ -42,4 +43,14 @@ public interface ExtractorsFactory {
   default Extractor[] createExtractors(Uri uri, Map<String, List<String>> responseHeaders) {
     return createExtractors();
   }
+
+  /**
+   * Returns the number of bytes that the inputs of the extractors should read at a time when less
+   * is requested, or {@link C#LENGTH_UNSET} if they should read only the requested data.
+   *
+   * @see DefaultExtractorInput
+   */
+  default int getReadAheadBlockSize() {
+    return C.LENGTH_UNSET;
+  }
 }
@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.extractor;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /** An overridable {@link ExtractorInput} implementation forwarding all methods to another input. */
 public class ForwardingExtractorInput implements ExtractorInput {
@@ -31,6 +32,11 @@ public class ForwardingExtractorInput implements ExtractorInput {
     return input.read(target, offset, length);
   }
 
+  @Override
+  public int read(ByteBuffer target) throws IOException {
+    return input.read(target);
+  }
+
   @Override
   public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
       throws IOException {
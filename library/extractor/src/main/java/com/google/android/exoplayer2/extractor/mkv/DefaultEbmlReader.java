@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.extractor.mkv;
 
 
 import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
@@ -53,16 +54,19 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
   private final byte[] scratch;
   private final ArrayDeque<MasterElement> masterElementsStack;
+  private final ArrayDeque<MasterElement> recycledMasterElements;
   private final VarintReader varintReader;
 
   private @MonotonicNonNull EbmlProcessor processor;
   private @ElementState int elementState;
   private int elementId;
   private long elementContentSize;
+  private int elementHeaderSize;
 
   public DefaultEbmlReader() {
     scratch = new byte[8];
     masterElementsStack = new ArrayDeque<>();
+    recycledMasterElements = new ArrayDeque<>();
     varintReader = new VarintReader();
   }
 
@@ -74,7 +78,9 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   @Override
   public void reset() {
     elementState = ELEMENT_STATE_READ_ID;
-    masterElementsStack.clear();
+    while (!masterElementsStack.isEmpty()) {
+      recycledMasterElements.push(masterElementsStack.pop());
+    }
     varintReader.reset();
   }
 
@@ -84,7 +90,9 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     while (true) {
       MasterElement head = masterElementsStack.peek();
       if (head != null && input.getPosition() >= head.elementEndPosition) {
-        processor.endMasterElement(masterElementsStack.pop().elementId);
+        MasterElement masterElement = masterElementsStack.pop();
+        recycledMasterElements.push(masterElement);
+        processor.endMasterElement(masterElement.elementId);
         return true;
       }
 
@@ -103,6 +111,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
       if (elementState == ELEMENT_STATE_READ_CONTENT_SIZE) {
         elementContentSize = varintReader.readUnsignedVarint(input, false, true, MAX_LENGTH_BYTES);
+        elementHeaderSize = getIdLength(elementId) + varintReader.getLastLength();
         elementState = ELEMENT_STATE_READ_CONTENT;
       }
 
@@ -111,7 +120,13 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         case EbmlProcessor.ELEMENT_TYPE_MASTER:
           long elementContentPosition = input.getPosition();
           long elementEndPosition = elementContentPosition + elementContentSize;
-          masterElementsStack.push(new MasterElement(elementId, elementEndPosition));
+          @Nullable MasterElement masterElement = recycledMasterElements.poll();
+          if (masterElement == null) {
+            masterElement = new MasterElement();
+          }
+          masterElement.elementId = elementId;
+          masterElement.elementEndPosition = elementEndPosition;
+          masterElementsStack.push(masterElement);
           processor.startMasterElement(elementId, elementContentPosition, elementContentSize);
           elementState = ELEMENT_STATE_READ_ID;
           return true;
@@ -151,6 +166,11 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     }
   }
 
+  @Override
+  public int getElementHeaderSize() {
+    return elementHeaderSize;
+  }
+
   /**
    * Does a byte by byte search to try and find the next level 1 element. This method is called if
    * some invalid data is encountered in the parser.
@@ -237,19 +257,28 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     return new String(stringBytes, 0, trimmedLength);
   }
 
+  /** Returns the length of an element ID, whose length mask isn't removed. */
+  private static int getIdLength(int id) {
+    if ((id & 0xFFFFFF00) == 0) {
+      return 1;
+    } else if ((id & 0xFFFF0000) == 0) {
+      return 2;
+    } else if ((id & 0xFF000000) == 0) {
+      return 3;
+    } else {
+      return 4;
+    }
+  }
+
   /**
    * Used in {@link #masterElementsStack} to track when the current master element ends, so that
-   * {@link EbmlProcessor#endMasterElement(int)} can be called.
+   * {@link EbmlProcessor#endMasterElement(int)} can be called. Instances are recycled once the
+   * element ends, so that none are allocated while extracting the blocks of a stream.
    */
   private static final class MasterElement {
 
-    private final int elementId;
-    private final long elementEndPosition;
-
-    private MasterElement(int elementId, long elementEndPosition) {
-      this.elementId = elementId;
-      this.elementEndPosition = elementEndPosition;
-    }
+    private int elementId;
+    private long elementEndPosition;
 
   }
 
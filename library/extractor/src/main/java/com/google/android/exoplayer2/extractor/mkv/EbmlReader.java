@@ -52,4 +52,10 @@ import java.io.IOException;
    * @throws IOException If an error occurs reading from the input.
    */
   boolean read(ExtractorInput input) throws IOException;
+
+  /**
+   * Returns the size of the header of the element whose start or content was last passed to the
+   * {@link EbmlProcessor}, in bytes.
+   */
+  int getElementHeaderSize();
 }
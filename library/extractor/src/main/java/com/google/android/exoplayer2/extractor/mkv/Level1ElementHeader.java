@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mkv;
+
+import com.google.android.exoplayer2.C;
+
+/**
+ * The header of a level 1 element, parsed from peeked data so that the element can be skipped
+ * without reading its content. For clusters, the timecode at the start of the content is parsed
+ * too.
+ */
+/* package */ final class Level1ElementHeader {
+
+  /** The maximum size of an element header, which is a 4 byte ID followed by an 8 byte size. */
+  public static final int MAX_HEADER_SIZE = 12;
+  /**
+   * The number of bytes after the header of a cluster that should be available to {@link #parse}
+   * for the timecode of the cluster to be parsed.
+   */
+  public static final int CLUSTER_TIMECODE_SEARCH_SIZE = 52;
+
+  public static final int ID_CLUSTER = 0x1F43B675;
+
+  private static final int ID_TIME_CODE = 0xE7;
+  private static final int ID_CRC32 = 0xBF;
+  private static final int ID_VOID = 0xEC;
+  private static final int MAX_ID_BYTES = 4;
+  private static final int MAX_LENGTH_BYTES = 8;
+  private static final int MAX_CHILDREN_BEFORE_TIME_CODE = 2;
+
+  /** The ID of the element. */
+  public int id;
+  /** The size of the header, in bytes. */
+  public int headerSize;
+  /** The size of the content of the element in bytes, or {@link C#LENGTH_UNSET} if unknown. */
+  public long contentSize;
+  /**
+   * The unscaled timecode of the cluster, or {@link C#TIME_UNSET} if the element isn't a cluster
+   * or its timecode isn't at the start of the parsed content.
+   */
+  public long clusterTimecode;
+
+  /**
+   * Parses the header of an element.
+   *
+   * @param data The data containing the header.
+   * @param offset The offset of the header in {@code data}.
+   * @param limit The limit of the parsed data in {@code data}.
+   * @return Whether the data at {@code offset} is a valid element header.
+   */
+  public boolean parse(byte[] data, int offset, int limit) {
+    int idLength = getVarintLength(data, offset, limit, MAX_ID_BYTES);
+    if (idLength == C.LENGTH_UNSET) {
+      return false;
+    }
+    int sizeLength = getVarintLength(data, offset + idLength, limit, MAX_LENGTH_BYTES);
+    if (sizeLength == C.LENGTH_UNSET) {
+      return false;
+    }
+    id = (int) readVarint(data, offset, idLength, /* removeLengthMask= */ false);
+    headerSize = idLength + sizeLength;
+    contentSize = readSize(data, offset + idLength, sizeLength);
+    clusterTimecode =
+        id == ID_CLUSTER ? findClusterTimecode(data, offset + headerSize, limit) : C.TIME_UNSET;
+    return true;
+  }
+
+  private long findClusterTimecode(byte[] data, int offset, int limit) {
+    if (contentSize != C.LENGTH_UNSET && contentSize < limit - offset) {
+      limit = offset + (int) contentSize;
+    }
+    for (int i = 0; i <= MAX_CHILDREN_BEFORE_TIME_CODE; i++) {
+      int idLength = getVarintLength(data, offset, limit, MAX_ID_BYTES);
+      if (idLength == C.LENGTH_UNSET) {
+        return C.TIME_UNSET;
+      }
+      int sizeLength = getVarintLength(data, offset + idLength, limit, MAX_LENGTH_BYTES);
+      if (sizeLength == C.LENGTH_UNSET) {
+        return C.TIME_UNSET;
+      }
+      int childId = (int) readVarint(data, offset, idLength, /* removeLengthMask= */ false);
+      long childSize = readSize(data, offset + idLength, sizeLength);
+      int childContentOffset = offset + idLength + sizeLength;
+      if (childSize == C.LENGTH_UNSET || childSize > limit - childContentOffset) {
+        return C.TIME_UNSET;
+      }
+      if (childId == ID_TIME_CODE) {
+        if (childSize > 8) {
+          return C.TIME_UNSET;
+        }
+        long timecode = 0;
+        for (int j = 0; j < childSize; j++) {
+          timecode = (timecode << 8) | (data[childContentOffset + j] & 0xFF);
+        }
+        return timecode;
+      } else if (childId != ID_CRC32 && childId != ID_VOID) {
+        return C.TIME_UNSET;
+      }
+      offset = childContentOffset + (int) childSize;
+    }
+    return C.TIME_UNSET;
+  }
+
+  /**
+   * Returns the length of the varint at {@code offset}, or {@link C#LENGTH_UNSET} if it's invalid,
+   * longer than {@code maxLength} or not entirely before {@code limit}.
+   */
+  private static int getVarintLength(byte[] data, int offset, int limit, int maxLength) {
+    if (offset >= limit) {
+      return C.LENGTH_UNSET;
+    }
+    int length = VarintReader.parseUnsignedVarintLength(data[offset] & 0xFF);
+    return length == C.LENGTH_UNSET || length > maxLength || length > limit - offset
+        ? C.LENGTH_UNSET
+        : length;
+  }
+
+  /** Returns the size in a varint, or {@link C#LENGTH_UNSET} if it's the reserved unknown size. */
+  private static long readSize(byte[] data, int offset, int length) {
+    long size = readVarint(data, offset, length, /* removeLengthMask= */ true);
+    return size == (1L << (7 * length)) - 1 ? C.LENGTH_UNSET : size;
+  }
+
+  /** Reads a varint, as {@link VarintReader#assembleVarint} does, without copying it. */
+  private static long readVarint(byte[] data, int offset, int length, boolean removeLengthMask) {
+    long varint = data[offset] & 0xFFL;
+    if (removeLengthMask) {
+      varint &= 0xFF >> length;
+    }
+    for (int i = 1; i < length; i++) {
+      varint = (varint << 8) | (data[offset + i] & 0xFFL);
+    }
+    return varint;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mkv;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.BinarySearchSeeker;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+
+/**
+ * A {@link BinarySearchSeeker} for Matroska streams without cues.
+ *
+ * <p>This seeker searches for the cluster that contains the seek target by the timecodes at the
+ * start of clusters. The search always ends at the start of a cluster, so that extraction can
+ * continue from there.
+ */
+/* package */ final class MatroskaBinarySearchSeeker extends BinarySearchSeeker {
+
+  /**
+   * The minimum search range. Once the range is smaller, extraction continues from the start of the
+   * range, which is about as fast as skipping the rest of the range.
+   */
+  private static final int MINIMUM_SEARCH_RANGE_BYTES = 256 * 1024;
+  /** The number of bytes peeked at a time when searching for the start of a cluster. */
+  private static final int SEARCH_BLOCK_BYTES = 64 * 1024;
+  /**
+   * The maximum number of bytes read when searching for the start of a cluster. If none is found,
+   * the search position is assumed to be in the last cluster that starts before it.
+   */
+  private static final int MAX_SEARCH_BYTES = 16 * 1024 * 1024;
+
+  /**
+   * Creates an instance.
+   *
+   * @param timecodeScale The timecode scale of the segment, in nanoseconds.
+   * @param durationUs The duration of the segment, in microseconds.
+   * @param firstClusterPosition The position of the first cluster.
+   * @param firstClusterTimeUs The time of the first cluster, in microseconds.
+   * @param endPosition The position of the end of the last cluster.
+   */
+  public MatroskaBinarySearchSeeker(
+      long timecodeScale,
+      long durationUs,
+      long firstClusterPosition,
+      long firstClusterTimeUs,
+      long endPosition) {
+    super(
+        new DefaultSeekTimestampConverter(),
+        new ClusterTimecodeSeeker(timecodeScale, durationUs, endPosition),
+        durationUs,
+        /* floorTimePosition= */ firstClusterTimeUs,
+        /* ceilingTimePosition= */ durationUs + 1,
+        /* floorBytePosition= */ firstClusterPosition,
+        /* ceilingBytePosition= */ endPosition,
+        /* approxBytesPerFrame= */ 0,
+        MINIMUM_SEARCH_RANGE_BYTES);
+  }
+
+  /**
+   * A {@link TimestampSeeker} that finds the first cluster that starts at or after the search
+   * position, and the cluster after it, and compares their times to the target time.
+   */
+  private static final class ClusterTimecodeSeeker implements TimestampSeeker {
+
+    private final long timecodeScale;
+    private final long durationUs;
+    private final long endPosition;
+    private final byte[] searchBuffer;
+    private final Level1ElementHeader clusterHeader;
+
+    public ClusterTimecodeSeeker(long timecodeScale, long durationUs, long endPosition) {
+      this.timecodeScale = timecodeScale;
+      this.durationUs = durationUs;
+      this.endPosition = endPosition;
+      searchBuffer = new byte[SEARCH_BLOCK_BYTES];
+      clusterHeader = new Level1ElementHeader();
+    }
+
+    @Override
+    public TimestampSearchResult searchForTimestamp(ExtractorInput input, long targetTimeUs)
+        throws IOException {
+      long searchPosition = input.getPosition();
+      long clusterPosition = findCluster(input, searchPosition);
+      if (clusterPosition == C.POSITION_UNSET) {
+        // The target is in a cluster that starts before the search position.
+        return TimestampSearchResult.overestimatedResult(durationUs, searchPosition);
+      }
+      long clusterTimeUs = scaleTimecodeToUs(clusterHeader.clusterTimecode);
+      if (clusterTimeUs > targetTimeUs) {
+        return TimestampSearchResult.overestimatedResult(clusterTimeUs, searchPosition);
+      }
+      long nextClusterPosition = findCluster(input, clusterPosition + 1);
+      if (nextClusterPosition == C.POSITION_UNSET) {
+        return TimestampSearchResult.targetFoundResult(clusterPosition);
+      }
+      long nextClusterTimeUs = scaleTimecodeToUs(clusterHeader.clusterTimecode);
+      return nextClusterTimeUs > targetTimeUs
+          ? TimestampSearchResult.targetFoundResult(clusterPosition)
+          : TimestampSearchResult.underestimatedResult(nextClusterTimeUs, nextClusterPosition);
+    }
+
+    /**
+     * Skips to {@code position} and searches for the first cluster that starts at or after it,
+     * reading ahead a block at a time.
+     *
+     * @param input The input, whose position must not be after {@code position}.
+     * @param position The position from which to search.
+     * @return The position of the found cluster, whose header is parsed into {@link
+     *     #clusterHeader}, or {@link C#POSITION_UNSET} if no cluster starts before the end of the
+     *     stream or within {@link #MAX_SEARCH_BYTES} of {@code position}.
+     * @throws IOException If an error occurs reading from the input.
+     */
+    private long findCluster(ExtractorInput input, long position) throws IOException {
+      input.skipFully((int) (position - input.getPosition()));
+      long searchEndPosition = min(endPosition, position + MAX_SEARCH_BYTES);
+      while (input.getPosition() < searchEndPosition) {
+        long blockPosition = input.getPosition();
+        int blockSize = (int) min(SEARCH_BLOCK_BYTES, endPosition - blockPosition);
+        // Clusters with headers that continue past the end of the block are found in the next one.
+        int searchLimit =
+            blockPosition + blockSize == endPosition
+                ? blockSize
+                : blockSize
+                    - Level1ElementHeader.MAX_HEADER_SIZE
+                    - Level1ElementHeader.CLUSTER_TIMECODE_SEARCH_SIZE;
+        searchLimit = (int) min(searchLimit, searchEndPosition - blockPosition);
+        input.resetPeekPosition();
+        input.peekFully(searchBuffer, /* offset= */ 0, blockSize);
+        for (int i = 0; i < searchLimit; i++) {
+          if (searchBuffer[i] == 0x1F
+              && clusterHeader.parse(searchBuffer, i, blockSize)
+              && clusterHeader.id == Level1ElementHeader.ID_CLUSTER
+              && clusterHeader.clusterTimecode != C.TIME_UNSET) {
+            return blockPosition + i;
+          }
+        }
+        input.skipFully(searchLimit);
+      }
+      return C.POSITION_UNSET;
+    }
+
+    private long scaleTimecodeToUs(long timecode) {
+      return Util.scaleLargeTimestamp(timecode, timecodeScale, 1000);
+    }
+  }
+}
@@ -36,6 +36,7 @@ import com.google.android.exoplayer2.audio.MpegAudioUtil;
 import com.google.android.exoplayer2.drm.DrmInitData;
 import com.google.android.exoplayer2.drm.DrmInitData.SchemeData;
 import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.ChunkIndexStore;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
@@ -80,14 +81,14 @@ public class MatroskaExtractor implements Extractor {
   public static final ExtractorsFactory FACTORY = () -> new Extractor[] {new MatroskaExtractor()};
 
   /**
-   * Flags controlling the behavior of the extractor. Possible flag value is {@link
-   * #FLAG_DISABLE_SEEK_FOR_CUES}.
+   * Flags controlling the behavior of the extractor. Possible flag values are {@link
+   * #FLAG_DISABLE_SEEK_FOR_CUES} and {@link #FLAG_ENABLE_CLUSTER_INDEXING}.
    */
   @Documented
   @Retention(RetentionPolicy.SOURCE)
   @IntDef(
       flag = true,
-      value = {FLAG_DISABLE_SEEK_FOR_CUES})
+      value = {FLAG_DISABLE_SEEK_FOR_CUES, FLAG_ENABLE_CLUSTER_INDEXING})
   public @interface Flags {}
   /**
    * Flag to disable seeking for cues.
@@ -98,6 +99,20 @@ public class MatroskaExtractor implements Extractor {
    * media is treated as being unseekable.
    */
   public static final int FLAG_DISABLE_SEEK_FOR_CUES = 1;
+  /**
+   * Flag to make streams without cues seekable.
+   *
+   * <p>When this flag is set and the cues can't be used, extraction starts straight away and the
+   * clusters are indexed as they're extracted. Until every cluster has been indexed, seeking
+   * searches for the target cluster by the timecodes at the start of clusters. Once the stream has
+   * been extracted to its end, a {@link ChunkIndex} with an entry per cluster is output as the
+   * {@link SeekMap}. If a {@link ChunkIndexStore} is passed to the constructor, the complete index
+   * is stored, and a stored index is output straight away when the stream is next extracted.
+   *
+   * <p>Streams of unknown length are unseekable. Streams without a duration are unseekable until
+   * they've been indexed.
+   */
+  public static final int FLAG_ENABLE_CLUSTER_INDEXING = 1 << 1; // 2
 
   private static final String TAG = "MatroskaExtractor";
 
@@ -364,6 +379,8 @@ public class MatroskaExtractor implements Extractor {
   private final VarintReader varintReader;
   private final SparseArray<Track> tracks;
   private final boolean seekForCuesEnabled;
+  private final boolean clusterIndexingEnabled;
+  @Nullable private final ChunkIndexStore chunkIndexStore;
 
   // Temporary arrays.
   private final ParsableByteArray nalStartCode;
@@ -403,6 +420,18 @@ public class MatroskaExtractor implements Extractor {
   @Nullable private LongArray cueClusterPositions;
   private boolean seenClusterPositionForCurrentCuePoint;
 
+  // Cluster indexing related elements.
+  private long firstClusterPosition = C.POSITION_UNSET;
+  private boolean indexingClusters;
+  private boolean clusterIndexContiguous;
+  private long indexedStreamLength;
+  private long indexedStreamEndPosition;
+  private long indexedClusterPosition = C.POSITION_UNSET;
+  private long lastIndexedClusterPosition = C.POSITION_UNSET;
+  @Nullable private LongArray indexedClusterPositions;
+  @Nullable private LongArray indexedClusterTimesUs;
+  @Nullable private MatroskaBinarySearchSeeker binarySearchSeeker;
+
   // Reading state.
   private boolean haveOutputSample;
 
@@ -438,13 +467,29 @@ public class MatroskaExtractor implements Extractor {
   }
 
   public MatroskaExtractor(@Flags int flags) {
-    this(new DefaultEbmlReader(), flags);
+    this(flags, /* chunkIndexStore= */ null);
+  }
+
+  /**
+   * @param flags Flags that control the extractor's behavior.
+   * @param chunkIndexStore Stores the index built if {@link #FLAG_ENABLE_CLUSTER_INDEXING} is set.
+   *     Null if the index should be built each time the stream is extracted.
+   */
+  public MatroskaExtractor(@Flags int flags, @Nullable ChunkIndexStore chunkIndexStore) {
+    this(new DefaultEbmlReader(), flags, chunkIndexStore);
   }
 
   /* package */ MatroskaExtractor(EbmlReader reader, @Flags int flags) {
+    this(reader, flags, /* chunkIndexStore= */ null);
+  }
+
+  private MatroskaExtractor(
+      EbmlReader reader, @Flags int flags, @Nullable ChunkIndexStore chunkIndexStore) {
     this.reader = reader;
     this.reader.init(new InnerEbmlProcessor());
+    this.chunkIndexStore = chunkIndexStore;
     seekForCuesEnabled = (flags & FLAG_DISABLE_SEEK_FOR_CUES) == 0;
+    clusterIndexingEnabled = (flags & FLAG_ENABLE_CLUSTER_INDEXING) != 0;
     varintReader = new VarintReader();
     tracks = new SparseArray<>();
     scratch = new ParsableByteArray(4);
@@ -481,6 +526,12 @@ public class MatroskaExtractor implements Extractor {
     for (int i = 0; i < tracks.size(); i++) {
       tracks.valueAt(i).reset();
     }
+    // Indexing continues once the last indexed cluster is extracted again.
+    clusterIndexContiguous = false;
+    indexedClusterPosition = C.POSITION_UNSET;
+    if (timeUs != 0 && binarySearchSeeker != null && !isIndexedClusterPosition(position)) {
+      binarySearchSeeker.setSeekTargetUs(timeUs);
+    }
   }
 
   @Override
@@ -490,6 +541,9 @@ public class MatroskaExtractor implements Extractor {
 
   @Override
   public final int read(ExtractorInput input, PositionHolder seekPosition) throws IOException {
+    if (binarySearchSeeker != null && binarySearchSeeker.isSeeking()) {
+      return binarySearchSeeker.handlePendingSeek(input, seekPosition);
+    }
     haveOutputSample = false;
     boolean continueReading = true;
     while (continueReading && !haveOutputSample) {
@@ -497,8 +551,14 @@ public class MatroskaExtractor implements Extractor {
       if (continueReading && maybeSeekForCues(seekPosition, input.getPosition())) {
         return Extractor.RESULT_SEEK;
       }
+      if (!sentSeekMap && !indexingClusters && firstClusterPosition != C.POSITION_UNSET) {
+        startIndexingClusters(input);
+      }
     }
     if (!continueReading) {
+      if (indexingClusters && clusterIndexContiguous) {
+        endIndexingClusters();
+      }
       for (int i = 0; i < tracks.size(); i++) {
         Track track = tracks.valueAt(i);
         track.assertOutputInitialized();
@@ -659,11 +719,18 @@ public class MatroskaExtractor implements Extractor {
         seenClusterPositionForCurrentCuePoint = false;
         break;
       case ID_CLUSTER:
+        long clusterPosition = contentPosition - reader.getElementHeaderSize();
+        if (indexingClusters) {
+          onClusterStarted(clusterPosition);
+        }
         if (!sentSeekMap) {
           // We need to build cues before parsing the cluster.
           if (seekForCuesEnabled && cuesContentPosition != C.POSITION_UNSET) {
             // We know where the Cues element is located. Seek to request it.
             seekForCues = true;
+          } else if (clusterIndexingEnabled) {
+            // Index the clusters as they're extracted, starting with this one.
+            firstClusterPosition = clusterPosition;
           } else {
             // We don't know where the Cues element is located. It's most likely omitted. Allow
             // playback, but disable seeking.
@@ -918,6 +985,10 @@ public class MatroskaExtractor implements Extractor {
         break;
       case ID_TIME_CODE:
         clusterTimecodeUs = scaleTimecodeToUs(value);
+        if (indexedClusterPosition != C.POSITION_UNSET) {
+          indexCluster(indexedClusterPosition, clusterTimecodeUs);
+          indexedClusterPosition = C.POSITION_UNSET;
+        }
         break;
       case ID_BLOCK_DURATION:
         blockDurationUs = scaleTimecodeToUs(value);
@@ -1796,6 +1867,135 @@ public class MatroskaExtractor implements Extractor {
     return false;
   }
 
+  /**
+   * Starts indexing clusters, after the header of the first cluster has been read. A stored index is
+   * output if there's one for the stream. Otherwise clusters are indexed as they're extracted, and
+   * the seek map is output once the first cluster is indexed.
+   */
+  @RequiresNonNull("extractorOutput")
+  private void startIndexingClusters(ExtractorInput input) {
+    long inputLength = input.getLength();
+    @Nullable
+    ChunkIndex storedChunkIndex =
+        chunkIndexStore != null && inputLength != C.LENGTH_UNSET
+            ? chunkIndexStore.getChunkIndex(inputLength)
+            : null;
+    if (storedChunkIndex != null && storedChunkIndex.offsets[0] == firstClusterPosition) {
+      extractorOutput.seekMap(storedChunkIndex);
+      sentSeekMap = true;
+      return;
+    }
+    if (inputLength == C.LENGTH_UNSET) {
+      extractorOutput.seekMap(new SeekMap.Unseekable(durationUs));
+      sentSeekMap = true;
+      return;
+    }
+    indexingClusters = true;
+    clusterIndexContiguous = true;
+    indexedStreamLength = inputLength;
+    indexedStreamEndPosition = min(segmentContentPosition + segmentContentSize, inputLength);
+    indexedClusterPositions = new LongArray();
+    indexedClusterTimesUs = new LongArray();
+    indexedClusterPosition = firstClusterPosition;
+    if (durationUs == C.TIME_UNSET) {
+      extractorOutput.seekMap(new SeekMap.Unseekable(durationUs));
+      sentSeekMap = true;
+    }
+  }
+
+  /** Called when a cluster starts while clusters are being indexed. */
+  private void onClusterStarted(long clusterPosition) {
+    if (!clusterIndexContiguous) {
+      // The clusters after this one follow the last indexed cluster.
+      clusterIndexContiguous = clusterPosition == lastIndexedClusterPosition;
+    } else if (clusterPosition > lastIndexedClusterPosition) {
+      // The cluster is indexed once its timecode has been read.
+      indexedClusterPosition = clusterPosition;
+    }
+  }
+
+  /**
+   * Adds an entry for a cluster to the cluster index, and outputs a seek map that searches for
+   * clusters if it's the first one.
+   */
+  @RequiresNonNull("extractorOutput")
+  private void indexCluster(long clusterPosition, long timeUs) {
+    LongArray positions = checkNotNull(indexedClusterPositions);
+    LongArray timesUs = checkNotNull(indexedClusterTimesUs);
+    lastIndexedClusterPosition = clusterPosition;
+    // Clusters with timecodes that aren't increasing, such as those of tracks that are stored in
+    // separate clusters, are part of the previous entry. So are clusters that start at the end of
+    // the segment, as for cue points.
+    if ((timesUs.size() == 0 || timeUs > timesUs.get(timesUs.size() - 1))
+        && (durationUs == C.TIME_UNSET || timeUs < durationUs)) {
+      positions.add(clusterPosition);
+      timesUs.add(timeUs);
+    }
+    if (!sentSeekMap) {
+      if (positions.size() > 0) {
+        binarySearchSeeker =
+            new MatroskaBinarySearchSeeker(
+                timecodeScale,
+                durationUs,
+                /* firstClusterPosition= */ positions.get(0),
+                /* firstClusterTimeUs= */ timesUs.get(0),
+                /* endPosition= */ indexedStreamEndPosition);
+        extractorOutput.seekMap(binarySearchSeeker.getSeekMap());
+      } else {
+        extractorOutput.seekMap(new SeekMap.Unseekable(durationUs));
+      }
+      sentSeekMap = true;
+    }
+  }
+
+  /** Outputs and stores the index once every cluster of the stream has been indexed. */
+  @RequiresNonNull("extractorOutput")
+  private void endIndexingClusters() {
+    indexingClusters = false;
+    LongArray positions = checkNotNull(indexedClusterPositions);
+    long[] clusterTimesUs = checkNotNull(indexedClusterTimesUs).toArray();
+    int clusterCount = positions.size();
+    if (clusterCount == 0) {
+      return;
+    }
+    int[] sizes = new int[clusterCount];
+    long[] offsets = new long[clusterCount];
+    long[] durationsUs = new long[clusterCount];
+    for (int i = 0; i < clusterCount; i++) {
+      offsets[i] = positions.get(i);
+      long endPosition = i + 1 < clusterCount ? positions.get(i + 1) : indexedStreamEndPosition;
+      sizes[i] = (int) min(endPosition - offsets[i], Integer.MAX_VALUE);
+    }
+    for (int i = 0; i < clusterCount - 1; i++) {
+      durationsUs[i] = clusterTimesUs[i + 1] - clusterTimesUs[i];
+    }
+    int lastIndex = clusterCount - 1;
+    if (durationUs != C.TIME_UNSET) {
+      durationsUs[lastIndex] = max(0, durationUs - clusterTimesUs[lastIndex]);
+    } else if (clusterCount > 1) {
+      // Assume that the last cluster is as long as the one before it.
+      durationsUs[lastIndex] = durationsUs[lastIndex - 1];
+    }
+    ChunkIndex chunkIndex = new ChunkIndex(sizes, offsets, durationsUs, clusterTimesUs);
+    // Seeks to positions from the previous seek map still search for the target cluster.
+    extractorOutput.seekMap(chunkIndex);
+    if (chunkIndexStore != null) {
+      chunkIndexStore.putChunkIndex(chunkIndex, indexedStreamLength);
+    }
+  }
+
+  /** Returns whether {@code position} is the position of a cluster that's been indexed. */
+  private boolean isIndexedClusterPosition(long position) {
+    @Nullable LongArray positions = indexedClusterPositions;
+    if (positions == null) {
+      return false;
+    }
+    int index =
+        Util.binarySearchFloor(
+            positions, position, /* inclusive= */ true, /* stayInBounds= */ false);
+    return index >= 0 && positions.get(index) == position;
+  }
+
   private long scaleTimecodeToUs(long unscaledTimecode) throws ParserException {
     if (timecodeScale == C.TIME_UNSET) {
       throw new ParserException("Can't scale timecode prior to timecodeScale being set.");
@@ -1869,6 +2069,11 @@ public class MatroskaExtractor implements Extractor {
     @Override
     @ElementType
     public int getElementType(int id) {
+      if (id == ID_CUES && sentSeekMap) {
+        // The cues are only used to build the seek map, so skip them rather than parse them again
+        // each time they're reached.
+        return EbmlProcessor.ELEMENT_TYPE_UNKNOWN;
+      }
       return MatroskaExtractor.this.getElementType(id);
     }
 
@@ -205,6 +205,9 @@ import java.util.List;
   @SuppressWarnings("ConstantCaseForConstants")
   public static final int TYPE_moof = 0x6d6f6f66;
 
+  @SuppressWarnings("ConstantCaseForConstants")
+  public static final int TYPE_mfhd = 0x6d666864;
+
   @SuppressWarnings("ConstantCaseForConstants")
   public static final int TYPE_traf = 0x74726166;
 
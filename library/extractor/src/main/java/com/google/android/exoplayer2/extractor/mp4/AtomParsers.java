@@ -129,13 +129,58 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       if (track == null) {
         continue;
       }
-      Atom.ContainerAtom stblAtom =
-          checkNotNull(
-              checkNotNull(
-                      checkNotNull(atom.getContainerAtomOfType(Atom.TYPE_mdia))
-                          .getContainerAtomOfType(Atom.TYPE_minf))
-                  .getContainerAtomOfType(Atom.TYPE_stbl));
-      TrackSampleTable trackSampleTable = parseStbl(track, stblAtom, gaplessInfoHolder);
+      TrackSampleTable trackSampleTable = parseStbl(track, getStblAtom(atom), gaplessInfoHolder);
+      trackSampleTables.add(trackSampleTable);
+    }
+    return trackSampleTables;
+  }
+
+  /**
+   * Parse the trak atoms in a moov atom (defined in ISO/IEC 14496-12) into {@link
+   * PagedTrackSampleTable PagedTrackSampleTables}, which are expanded as their samples are
+   * accessed.
+   *
+   * @param moov Moov atom to decode.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @param ignoreEditLists Whether to ignore any edit lists in the trak boxes.
+   * @param isQuickTime True for QuickTime media. False otherwise.
+   * @param pageSampleCount The number of samples in each page of the sample tables.
+   * @return A list of {@link PagedTrackSampleTable} instances, or null if the sample table of a
+   *     track can't be paged, in which case {@link #parseTraks} should be used instead.
+   * @throws ParserException Thrown if the trak atoms can't be parsed.
+   */
+  @Nullable
+  public static List<PagedTrackSampleTable> parsePagedTraks(
+      Atom.ContainerAtom moov,
+      GaplessInfoHolder gaplessInfoHolder,
+      boolean ignoreEditLists,
+      boolean isQuickTime,
+      int pageSampleCount)
+      throws ParserException {
+    List<PagedTrackSampleTable> trackSampleTables = new ArrayList<>();
+    for (int i = 0; i < moov.containerChildren.size(); i++) {
+      Atom.ContainerAtom atom = moov.containerChildren.get(i);
+      if (atom.type != Atom.TYPE_trak) {
+        continue;
+      }
+      @Nullable
+      Track track =
+          parseTrak(
+              atom,
+              checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)),
+              /* duration= */ C.TIME_UNSET,
+              /* drmInitData= */ null,
+              ignoreEditLists,
+              isQuickTime);
+      if (track == null) {
+        continue;
+      }
+      @Nullable
+      PagedTrackSampleTable trackSampleTable =
+          parsePagedStbl(track, getStblAtom(atom), gaplessInfoHolder, pageSampleCount);
+      if (trackSampleTable == null) {
+        return null;
+      }
       trackSampleTables.add(trackSampleTable);
     }
     return trackSampleTables;
@@ -334,17 +379,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   private static TrackSampleTable parseStbl(
       Track track, Atom.ContainerAtom stblAtom, GaplessInfoHolder gaplessInfoHolder)
       throws ParserException {
-    SampleSizeBox sampleSizeBox;
-    @Nullable Atom.LeafAtom stszAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stsz);
-    if (stszAtom != null) {
-      sampleSizeBox = new StszSampleSizeBox(stszAtom, track.format);
-    } else {
-      @Nullable Atom.LeafAtom stz2Atom = stblAtom.getLeafAtomOfType(Atom.TYPE_stz2);
-      if (stz2Atom == null) {
-        throw new ParserException("Track has no sample table size information");
-      }
-      sampleSizeBox = new Stz2SampleSizeBox(stz2Atom);
-    }
+    SampleSizeBox sampleSizeBox = parseSampleSizeBox(track, stblAtom);
 
     int sampleCount = sampleSizeBox.getSampleCount();
     if (sampleCount == 0) {
@@ -697,6 +732,120 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
         editedDurationUs);
   }
 
+  /**
+   * Parses an stbl atom (defined in ISO/IEC 14496-12) into a {@link PagedTrackSampleTable}.
+   *
+   * @param track Track to which this sample table corresponds.
+   * @param stblAtom stbl (sample table) atom to decode.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @param pageSampleCount The number of samples in each page of the sample table.
+   * @return Sample table described by the stbl atom, or null if the samples need to be rechunked or
+   *     the edit list has more than one non-empty edit, which is only supported by {@link
+   *     #parseStbl}.
+   * @throws ParserException Thrown if the stbl atom can't be parsed.
+   */
+  @Nullable
+  private static PagedTrackSampleTable parsePagedStbl(
+      Track track,
+      Atom.ContainerAtom stblAtom,
+      GaplessInfoHolder gaplessInfoHolder,
+      int pageSampleCount)
+      throws ParserException {
+    SampleSizeBox sampleSizeBox = parseSampleSizeBox(track, stblAtom);
+    @Nullable String sampleMimeType = track.format.sampleMimeType;
+    if (sampleSizeBox.getFixedSampleSize() != C.LENGTH_UNSET
+        && (MimeTypes.AUDIO_RAW.equals(sampleMimeType)
+            || MimeTypes.AUDIO_MLAW.equals(sampleMimeType)
+            || MimeTypes.AUDIO_ALAW.equals(sampleMimeType))) {
+      // Fixed sample size raw audio may need to be rechunked.
+      return null;
+    }
+
+    boolean chunkOffsetsAreLongs = false;
+    @Nullable Atom.LeafAtom chunkOffsetsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stco);
+    if (chunkOffsetsAtom == null) {
+      chunkOffsetsAreLongs = true;
+      chunkOffsetsAtom = checkNotNull(stblAtom.getLeafAtomOfType(Atom.TYPE_co64));
+    }
+    @Nullable Atom.LeafAtom stssAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stss);
+    @Nullable Atom.LeafAtom cttsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_ctts);
+    PagedTrackSampleTable sampleTable =
+        new PagedTrackSampleTable(
+            track,
+            sampleSizeBox,
+            chunkOffsetsAtom.data,
+            chunkOffsetsAreLongs,
+            checkNotNull(stblAtom.getLeafAtomOfType(Atom.TYPE_stsc)).data,
+            checkNotNull(stblAtom.getLeafAtomOfType(Atom.TYPE_stts)).data,
+            cttsAtom != null ? cttsAtom.data : null,
+            stssAtom != null ? stssAtom.data : null,
+            pageSampleCount);
+    if (track.editListDurations == null || sampleTable.getSampleCount() == 0) {
+      return sampleTable;
+    }
+
+    // Edits that can be applied using gapless playback information leave the samples unchanged, as
+    // in parseStbl.
+    if (track.editListDurations.length == 1
+        && track.type == C.TRACK_TYPE_AUDIO
+        && sampleTable.getSampleCount() >= 2) {
+      long duration = sampleTable.getUnscaledDuration();
+      long editStartTime = checkNotNull(track.editListMediaTimes)[0];
+      long editEndTime = editStartTime + Util.scaleLargeTimestamp(track.editListDurations[0],
+          track.timescale, track.movieTimescale);
+      if (canApplyEditWithGaplessInfo(sampleTable, duration, editStartTime, editEndTime)) {
+        long paddingTimeUnits = duration - editEndTime;
+        long encoderDelay =
+            Util.scaleLargeTimestamp(
+                editStartTime - sampleTable.getUnscaledTimestamp(/* sampleIndex= */ 0),
+                track.format.sampleRate,
+                track.timescale);
+        long encoderPadding = Util.scaleLargeTimestamp(paddingTimeUnits,
+            track.format.sampleRate, track.timescale);
+        if ((encoderDelay != 0 || encoderPadding != 0) && encoderDelay <= Integer.MAX_VALUE
+            && encoderPadding <= Integer.MAX_VALUE) {
+          gaplessInfoHolder.encoderDelay = (int) encoderDelay;
+          gaplessInfoHolder.encoderPadding = (int) encoderPadding;
+          return sampleTable.copyWithDurationUs(
+              Util.scaleLargeTimestamp(
+                  track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale));
+        }
+      }
+    }
+
+    if (track.editListDurations.length == 1 && track.editListDurations[0] == 0) {
+      // Handled as a special case by parseStbl.
+      return null;
+    }
+
+    // The samples selected by a single non-empty edit are contiguous, so can be paged. Empty edits
+    // only delay the presentation of later samples.
+    long[] editListMediaTimes = checkNotNull(track.editListMediaTimes);
+    int editIndex = C.INDEX_UNSET;
+    long editStartTime = 0;
+    long editListDuration = 0;
+    for (int i = 0; i < track.editListDurations.length; i++) {
+      if (editListMediaTimes[i] != -1) {
+        if (editIndex != C.INDEX_UNSET) {
+          return null;
+        }
+        editIndex = i;
+        editStartTime = editListDuration;
+      }
+      editListDuration += track.editListDurations[i];
+    }
+    if (editIndex == C.INDEX_UNSET) {
+      return null;
+    }
+    return sampleTable.copyWithEdit(
+        editListMediaTimes[editIndex],
+        Util.scaleLargeTimestamp(
+            track.editListDurations[editIndex], track.timescale, track.movieTimescale),
+        /* omitClippedSample= */ track.type == C.TRACK_TYPE_AUDIO,
+        Util.scaleLargeTimestamp(editStartTime, C.MICROS_PER_SECOND, track.movieTimescale),
+        Util.scaleLargeTimestamp(editListDuration, C.MICROS_PER_SECOND, track.movieTimescale));
+  }
+
   @Nullable
   private static Metadata parseUdtaMeta(ParsableByteArray meta, int limit) {
     meta.skipBytes(Atom.HEADER_SIZE);
@@ -1631,6 +1780,44 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
         && editEndTime <= duration;
   }
 
+  /**
+   * Returns whether it's possible to apply the specified edit to a {@link PagedTrackSampleTable}
+   * using gapless playback info.
+   */
+  private static boolean canApplyEditWithGaplessInfo(
+      PagedTrackSampleTable sampleTable, long duration, long editStartTime, long editEndTime) {
+    int lastIndex = sampleTable.getSampleCount() - 1;
+    int latestDelayIndex = Util.constrainValue(MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    int earliestPaddingIndex =
+        Util.constrainValue(
+            sampleTable.getSampleCount() - MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    return sampleTable.getUnscaledTimestamp(/* sampleIndex= */ 0) <= editStartTime
+        && editStartTime < sampleTable.getUnscaledTimestamp(latestDelayIndex)
+        && sampleTable.getUnscaledTimestamp(earliestPaddingIndex) < editEndTime
+        && editEndTime <= duration;
+  }
+
+  private static Atom.ContainerAtom getStblAtom(Atom.ContainerAtom trakAtom) {
+    return checkNotNull(
+        checkNotNull(
+                checkNotNull(trakAtom.getContainerAtomOfType(Atom.TYPE_mdia))
+                    .getContainerAtomOfType(Atom.TYPE_minf))
+            .getContainerAtomOfType(Atom.TYPE_stbl));
+  }
+
+  private static SampleSizeBox parseSampleSizeBox(Track track, Atom.ContainerAtom stblAtom)
+      throws ParserException {
+    @Nullable Atom.LeafAtom stszAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stsz);
+    if (stszAtom != null) {
+      return new StszSampleSizeBox(stszAtom, track.format);
+    }
+    @Nullable Atom.LeafAtom stz2Atom = stblAtom.getLeafAtomOfType(Atom.TYPE_stz2);
+    if (stz2Atom == null) {
+      throw new ParserException("Track has no sample table size information");
+    }
+    return new Stz2SampleSizeBox(stz2Atom);
+  }
+
   private AtomParsers() {
     // Prevent instantiation.
   }
@@ -1720,7 +1907,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   /**
    * A box containing sample sizes (e.g. stsz, stz2).
    */
-  private interface SampleSizeBox {
+  /* package */ interface SampleSizeBox {
 
     /**
      * Returns the number of samples.
@@ -1732,6 +1919,12 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
     /** Returns the size for the next sample. */
     int readNextSampleSize();
+
+    /**
+     * Returns the size of the sample with the given index, without changing the position from which
+     * {@link #readNextSampleSize()} reads.
+     */
+    int getSampleSize(int sampleIndex);
   }
 
   /**
@@ -1739,6 +1932,8 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
    */
   /* package */ static final class StszSampleSizeBox implements SampleSizeBox {
 
+    private static final int ENTRIES_POSITION = Atom.FULL_HEADER_SIZE + 8;
+
     private final int fixedSampleSize;
     private final int sampleCount;
     private final ParsableByteArray data;
@@ -1780,6 +1975,24 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     public int readNextSampleSize() {
       return fixedSampleSize == C.LENGTH_UNSET ? data.readUnsignedIntToInt() : fixedSampleSize;
     }
+
+    @Override
+    public int getSampleSize(int sampleIndex) {
+      if (fixedSampleSize != C.LENGTH_UNSET) {
+        return fixedSampleSize;
+      }
+      byte[] bytes = data.getData();
+      int position = ENTRIES_POSITION + 4 * sampleIndex;
+      int sampleSize =
+          (bytes[position] & 0xFF) << 24
+              | (bytes[position + 1] & 0xFF) << 16
+              | (bytes[position + 2] & 0xFF) << 8
+              | (bytes[position + 3] & 0xFF);
+      if (sampleSize < 0) {
+        throw new IllegalStateException("Top bit not zero: " + sampleSize);
+      }
+      return sampleSize;
+    }
   }
 
   /**
@@ -1787,6 +2000,8 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
    */
   /* package */ static final class Stz2SampleSizeBox implements SampleSizeBox {
 
+    private static final int ENTRIES_POSITION = Atom.FULL_HEADER_SIZE + 8;
+
     private final ParsableByteArray data;
     private final int sampleCount;
     private final int fieldSize; // Can be 4, 8, or 16.
@@ -1831,6 +2046,21 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
         }
       }
     }
+
+    @Override
+    public int getSampleSize(int sampleIndex) {
+      byte[] bytes = data.getData();
+      if (fieldSize == 8) {
+        return bytes[ENTRIES_POSITION + sampleIndex] & 0xFF;
+      } else if (fieldSize == 16) {
+        int position = ENTRIES_POSITION + 2 * sampleIndex;
+        return (bytes[position] & 0xFF) << 8 | (bytes[position + 1] & 0xFF);
+      } else {
+        // fieldSize == 4.
+        int entryByte = bytes[ENTRIES_POSITION + sampleIndex / 2] & 0xFF;
+        return (sampleIndex % 2) == 0 ? (entryByte & 0xF0) >> 4 : entryByte & 0x0F;
+      }
+    }
   }
 
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+
+/**
+ * The timing of a track's fragment, parsed from a peeked moof box so that the fragment can be
+ * indexed or searched for without being extracted.
+ */
+/* package */ final class FragmentHeader {
+
+  /** The maximum size of a moof box that's parsed. */
+  public static final int MAX_MOOF_SIZE = 4 * 1024 * 1024;
+
+  /** The number of bytes peeked at a time when searching for a moof box. */
+  private static final int SEARCH_BLOCK_BYTES = 64 * 1024;
+
+  private final int trackId;
+  private final boolean isOnlyTrack;
+  private final long timescale;
+  private final int defaultSampleDuration;
+  private final long editListOffsetUs;
+  private final byte[] searchBuffer;
+  private final byte[] headerData;
+  private final ParsableByteArray moof;
+
+  /** The size of the moof box, in bytes. */
+  public int size;
+  /**
+   * The decode time of the first sample of the track's fragment in microseconds, or {@link
+   * C#TIME_UNSET} if the moof box doesn't contain a fragment of the track.
+   */
+  public long timeUs;
+  /**
+   * The duration of the track's fragment in microseconds, or {@link C#TIME_UNSET} if the moof box
+   * doesn't contain a fragment of the track.
+   */
+  public long durationUs;
+
+  /**
+   * Creates an instance.
+   *
+   * @param track The track whose fragments are parsed.
+   * @param defaultSampleDuration The default duration of the track's samples, from its trex box.
+   * @param isOnlyTrack Whether the track is the only track of the stream, in which case the track
+   *     IDs of fragments are ignored, as {@link FragmentedMp4Extractor} does.
+   */
+  public FragmentHeader(Track track, int defaultSampleDuration, boolean isOnlyTrack) {
+    this.defaultSampleDuration = defaultSampleDuration;
+    this.isOnlyTrack = isOnlyTrack;
+    trackId = track.id;
+    timescale = track.timescale;
+    editListOffsetUs = FragmentedMp4Extractor.getEditListOffsetUs(track);
+    searchBuffer = new byte[SEARCH_BLOCK_BYTES];
+    headerData = new byte[Atom.HEADER_SIZE];
+    moof = new ParsableByteArray();
+  }
+
+  /**
+   * Skips to {@code position} and searches for the first moof box that starts at or after it,
+   * reading ahead a block at a time.
+   *
+   * @param input The input, whose position must not be after {@code position}.
+   * @param position The position from which to search.
+   * @param endPosition The position before which the moof box must end.
+   * @return The position of the found moof box, which is parsed, or {@link C#POSITION_UNSET} if
+   *     there isn't one.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  public long find(ExtractorInput input, long position, long endPosition) throws IOException {
+    input.skipFully((int) (position - input.getPosition()));
+    while (endPosition - input.getPosition() >= Atom.HEADER_SIZE) {
+      long blockPosition = input.getPosition();
+      int blockSize = (int) min(SEARCH_BLOCK_BYTES, endPosition - blockPosition);
+      // Boxes with headers that continue past the end of the block are found in the next one.
+      int searchLimit = blockSize - Atom.HEADER_SIZE + 1;
+      input.resetPeekPosition();
+      input.peekFully(searchBuffer, /* offset= */ 0, blockSize);
+      for (int i = 0; i < searchLimit; i++) {
+        if (searchBuffer[i + 4] == 'm'
+            && searchBuffer[i + 5] == 'o'
+            && searchBuffer[i + 6] == 'o'
+            && searchBuffer[i + 7] == 'f'
+            && peek(input, blockPosition + i, endPosition)) {
+          return blockPosition + i;
+        }
+      }
+      input.skipFully(searchLimit);
+    }
+    return C.POSITION_UNSET;
+  }
+
+  /**
+   * Peeks and parses the box at {@code position}.
+   *
+   * @param input The input, whose position must not be after {@code position}.
+   * @param position The position of the box.
+   * @param endPosition The position before which the box must end.
+   * @return Whether the box is a valid moof box, whose fragment of the track has a tfdt box if it
+   *     has one.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  public boolean peek(ExtractorInput input, long position, long endPosition) throws IOException {
+    input.resetPeekPosition();
+    input.advancePeekPosition((int) (position - input.getPosition()));
+    if (!input.peekFully(
+        headerData, /* offset= */ 0, Atom.HEADER_SIZE, /* allowEndOfInput= */ true)) {
+      return false;
+    }
+    long moofSize =
+        ((headerData[0] & 0xFFL) << 24)
+            | ((headerData[1] & 0xFF) << 16)
+            | ((headerData[2] & 0xFF) << 8)
+            | (headerData[3] & 0xFF);
+    return moofSize <= endPosition - position && peekPayload(input, headerData, moofSize);
+  }
+
+  /**
+   * Peeks and parses the payload of a box whose header has been read.
+   *
+   * @param input The input, positioned after the header.
+   * @param headerData The header, which must not be an extended size header.
+   * @param size The size of the box.
+   * @return Whether the box is a valid moof box, whose fragment of the track has a tfdt box if it
+   *     has one.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  public boolean peekPayload(ExtractorInput input, byte[] headerData, long size)
+      throws IOException {
+    if (size < Atom.HEADER_SIZE || size > MAX_MOOF_SIZE) {
+      return false;
+    }
+    moof.reset((int) size);
+    System.arraycopy(headerData, 0, moof.getData(), 0, Atom.HEADER_SIZE);
+    moof.skipBytes(4);
+    if (moof.readInt() != Atom.TYPE_moof) {
+      return false;
+    }
+    this.size = (int) size;
+    input.peekFully(moof.getData(), Atom.HEADER_SIZE, this.size - Atom.HEADER_SIZE);
+    return parseMoof();
+  }
+
+  private boolean parseMoof() {
+    timeUs = C.TIME_UNSET;
+    durationUs = C.TIME_UNSET;
+    boolean hasMfhd = false;
+    while (moof.bytesLeft() >= Atom.HEADER_SIZE) {
+      int childPosition = moof.getPosition();
+      int childSize = moof.readInt();
+      int childType = moof.readInt();
+      int childEndPosition = childPosition + childSize;
+      if (childSize < Atom.HEADER_SIZE || childEndPosition > moof.limit()) {
+        return false;
+      }
+      if (childType == Atom.TYPE_mfhd) {
+        hasMfhd = true;
+      } else if (childType == Atom.TYPE_traf && !parseTraf(childEndPosition)) {
+        return false;
+      }
+      moof.setPosition(childEndPosition);
+    }
+    return hasMfhd && moof.bytesLeft() == 0;
+  }
+
+  private boolean parseTraf(int trafEndPosition) {
+    boolean isTrack = false;
+    long decodeTime = C.TIME_UNSET;
+    long duration = 0;
+    int defaultSampleDuration = this.defaultSampleDuration;
+    while (trafEndPosition - moof.getPosition() >= Atom.HEADER_SIZE) {
+      int childPosition = moof.getPosition();
+      int childSize = moof.readInt();
+      int childType = moof.readInt();
+      if (childSize < Atom.HEADER_SIZE || childPosition + childSize > trafEndPosition) {
+        return false;
+      }
+      if (childType == Atom.TYPE_tfhd) {
+        int atomFlags = Atom.parseFullAtomFlags(moof.readInt());
+        isTrack = moof.readInt() == trackId || isOnlyTrack;
+        if (!isTrack) {
+          return true;
+        }
+        moof.skipBytes(
+            ((atomFlags & 0x01 /* base_data_offset_present */) != 0 ? 8 : 0)
+                + ((atomFlags & 0x02 /* default_sample_description_index_present */) != 0
+                    ? 4
+                    : 0));
+        if ((atomFlags & 0x08 /* default_sample_duration_present */) != 0) {
+          defaultSampleDuration = moof.readInt();
+        }
+      } else if (childType == Atom.TYPE_tfdt) {
+        int version = Atom.parseFullAtomVersion(moof.readInt());
+        decodeTime = version == 1 ? moof.readUnsignedLongToLong() : moof.readUnsignedInt();
+      } else if (childType == Atom.TYPE_trun) {
+        duration += parseTrunDuration(moof, defaultSampleDuration);
+      }
+      moof.setPosition(childPosition + childSize);
+    }
+    if (isTrack) {
+      if (decodeTime == C.TIME_UNSET) {
+        return false;
+      }
+      timeUs =
+          Util.scaleLargeTimestamp(decodeTime, C.MICROS_PER_SECOND, timescale) - editListOffsetUs;
+      durationUs = Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, timescale);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the sum of the durations of the samples in a trun atom (defined in 14496-12), in the
+   * track's timescale.
+   *
+   * @param trun The trun atom, positioned after its header.
+   * @param defaultSampleDuration The duration of samples if the atom doesn't define durations.
+   */
+  private static long parseTrunDuration(ParsableByteArray trun, int defaultSampleDuration) {
+    int atomFlags = Atom.parseFullAtomFlags(trun.readInt());
+    int sampleCount = trun.readUnsignedIntToInt();
+    if ((atomFlags & 0x100 /* sample_duration_present */) == 0) {
+      return (long) sampleCount * defaultSampleDuration;
+    }
+    trun.skipBytes(
+        ((atomFlags & 0x01 /* data_offset_present */) != 0 ? 4 : 0)
+            + ((atomFlags & 0x04 /* first_sample_flags_present */) != 0 ? 4 : 0));
+    // The duration, size, flags and composition time offset fields of a sample are each present if
+    // the corresponding flag is set.
+    int sampleFieldsSize = 4 * Integer.bitCount(atomFlags & 0xF00);
+    long duration = 0;
+    for (int i = 0; i < sampleCount && trun.bytesLeft() >= sampleFieldsSize; i++) {
+      duration += trun.readUnsignedInt();
+      trun.skipBytes(sampleFieldsSize - 4);
+    }
+    return duration;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.BinarySearchSeeker;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import java.io.IOException;
+
+/**
+ * A {@link BinarySearchSeeker} for fragmented MP4 streams without a sidx box.
+ *
+ * <p>This seeker searches for the fragment that contains the seek target by the decode times in the
+ * moof boxes of a track. The search always ends at the start of a moof box, so that extraction can
+ * continue from there.
+ */
+/* package */ final class FragmentedMp4BinarySearchSeeker extends BinarySearchSeeker {
+
+  /**
+   * The minimum search range. Once the range is smaller, extraction continues from the start of the
+   * range, which is about as fast as skipping the rest of the range.
+   */
+  private static final int MINIMUM_SEARCH_RANGE_BYTES = 256 * 1024;
+  /**
+   * The maximum number of bytes read when searching for a moof box. If none is found, the search
+   * position is assumed to be in the last fragment that starts before it.
+   */
+  private static final int MAX_SEARCH_BYTES = 16 * 1024 * 1024;
+
+  /**
+   * Creates an instance.
+   *
+   * @param fragmentHeader The parser for the fragments of the track whose times are searched.
+   * @param durationUs The duration of the stream, in microseconds.
+   * @param firstFragmentPosition The position of the first moof box.
+   * @param firstFragmentTimeUs The decode time of the first fragment, in microseconds.
+   * @param endPosition The position of the end of the stream.
+   */
+  public FragmentedMp4BinarySearchSeeker(
+      FragmentHeader fragmentHeader,
+      long durationUs,
+      long firstFragmentPosition,
+      long firstFragmentTimeUs,
+      long endPosition) {
+    super(
+        new DefaultSeekTimestampConverter(),
+        new FragmentTimestampSeeker(fragmentHeader, durationUs, endPosition),
+        durationUs,
+        /* floorTimePosition= */ firstFragmentTimeUs,
+        /* ceilingTimePosition= */ durationUs + 1,
+        /* floorBytePosition= */ firstFragmentPosition,
+        /* ceilingBytePosition= */ endPosition,
+        /* approxBytesPerFrame= */ 0,
+        MINIMUM_SEARCH_RANGE_BYTES);
+  }
+
+  /**
+   * A {@link TimestampSeeker} that finds the first fragment of the track that starts at or after
+   * the search position, and the fragment after it, and compares their times to the target time.
+   */
+  private static final class FragmentTimestampSeeker implements TimestampSeeker {
+
+    private final FragmentHeader fragmentHeader;
+    private final long durationUs;
+    private final long endPosition;
+
+    public FragmentTimestampSeeker(
+        FragmentHeader fragmentHeader, long durationUs, long endPosition) {
+      this.fragmentHeader = fragmentHeader;
+      this.durationUs = durationUs;
+      this.endPosition = endPosition;
+    }
+
+    @Override
+    public TimestampSearchResult searchForTimestamp(ExtractorInput input, long targetTimeUs)
+        throws IOException {
+      long searchPosition = input.getPosition();
+      long fragmentPosition = findFragment(input, searchPosition);
+      if (fragmentPosition == C.POSITION_UNSET) {
+        // The target is in a fragment that starts before the search position.
+        return TimestampSearchResult.overestimatedResult(durationUs, searchPosition);
+      }
+      long fragmentTimeUs = fragmentHeader.timeUs;
+      if (fragmentTimeUs > targetTimeUs) {
+        return TimestampSearchResult.overestimatedResult(fragmentTimeUs, searchPosition);
+      }
+      long nextFragmentPosition = findFragment(input, fragmentPosition + fragmentHeader.size);
+      if (nextFragmentPosition == C.POSITION_UNSET) {
+        return TimestampSearchResult.targetFoundResult(fragmentPosition);
+      }
+      long nextFragmentTimeUs = fragmentHeader.timeUs;
+      return nextFragmentTimeUs > targetTimeUs
+          ? TimestampSearchResult.targetFoundResult(fragmentPosition)
+          : TimestampSearchResult.underestimatedResult(nextFragmentTimeUs, nextFragmentPosition);
+    }
+
+    /**
+     * Returns the position of the first moof box that starts at or after {@code position} and
+     * contains a fragment of the track, or {@link C#POSITION_UNSET} if none starts before the end
+     * of the stream or within {@link #MAX_SEARCH_BYTES} of {@code position}.
+     */
+    private long findFragment(ExtractorInput input, long position) throws IOException {
+      long searchEndPosition = min(endPosition, position + MAX_SEARCH_BYTES);
+      while (true) {
+        long moofPosition = fragmentHeader.find(input, position, searchEndPosition);
+        if (moofPosition == C.POSITION_UNSET || fragmentHeader.timeUs != C.TIME_UNSET) {
+          return moofPosition;
+        }
+        position = moofPosition + fragmentHeader.size;
+      }
+    }
+  }
+}
@@ -21,6 +21,7 @@ import static com.google.android.exoplayer2.util.Assertions.checkState;
 import static com.google.android.exoplayer2.util.Util.castNonNull;
 import static com.google.android.exoplayer2.util.Util.nullSafeArrayCopy;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 import android.util.Pair;
 import android.util.SparseArray;
@@ -34,6 +35,7 @@ import com.google.android.exoplayer2.drm.DrmInitData;
 import com.google.android.exoplayer2.drm.DrmInitData.SchemeData;
 import com.google.android.exoplayer2.extractor.CeaUtil;
 import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.ChunkIndexStore;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
@@ -46,7 +48,9 @@ import com.google.android.exoplayer2.extractor.mp4.Atom.ContainerAtom;
 import com.google.android.exoplayer2.extractor.mp4.Atom.LeafAtom;
 import com.google.android.exoplayer2.metadata.emsg.EventMessage;
 import com.google.android.exoplayer2.metadata.emsg.EventMessageEncoder;
+import com.google.android.exoplayer2.util.ByteArrayPool;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.LongArray;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.NalUnitUtil;
 import com.google.android.exoplayer2.util.ParsableByteArray;
@@ -74,7 +78,8 @@ public class FragmentedMp4Extractor implements Extractor {
   /**
    * Flags controlling the behavior of the extractor. Possible flag values are {@link
    * #FLAG_WORKAROUND_EVERY_VIDEO_FRAME_IS_SYNC_FRAME}, {@link #FLAG_WORKAROUND_IGNORE_TFDT_BOX},
-   * {@link #FLAG_ENABLE_EMSG_TRACK} and {@link #FLAG_WORKAROUND_IGNORE_EDIT_LISTS}.
+   * {@link #FLAG_ENABLE_EMSG_TRACK}, {@link #FLAG_WORKAROUND_IGNORE_EDIT_LISTS} and {@link
+   * #FLAG_ENABLE_FRAGMENT_INDEXING}.
    */
   @Documented
   @Retention(RetentionPolicy.SOURCE)
@@ -84,7 +89,8 @@ public class FragmentedMp4Extractor implements Extractor {
         FLAG_WORKAROUND_EVERY_VIDEO_FRAME_IS_SYNC_FRAME,
         FLAG_WORKAROUND_IGNORE_TFDT_BOX,
         FLAG_ENABLE_EMSG_TRACK,
-        FLAG_WORKAROUND_IGNORE_EDIT_LISTS
+        FLAG_WORKAROUND_IGNORE_EDIT_LISTS,
+        FLAG_ENABLE_FRAGMENT_INDEXING
       })
   public @interface Flags {}
   /**
@@ -105,9 +111,34 @@ public class FragmentedMp4Extractor implements Extractor {
 
   /** Flag to ignore any edit lists in the stream. */
   public static final int FLAG_WORKAROUND_IGNORE_EDIT_LISTS = 1 << 4; // 16
+  /**
+   * Flag to make streams without a sidx box seekable. Extraction starts straight away, and the
+   * fragments are indexed as they're extracted. Until every fragment has been indexed, seeking
+   * searches for the target fragment by the decode times in the moof boxes. If the stream doesn't
+   * declare its duration, the duration is found from the last fragments of the stream first. Once
+   * the stream has been extracted to its end, a {@link ChunkIndex} with an entry per fragment is
+   * output as the {@link SeekMap}.
+   *
+   * <p>If a {@link ChunkIndexStore} is passed to the extractor, the complete index is stored, and
+   * a stored index is output straight away when the stream is next extracted.
+   *
+   * <p>The stream stays unseekable if its length is unknown, or if fragments don't have tfdt boxes
+   * or they are ignored using {@link #FLAG_WORKAROUND_IGNORE_TFDT_BOX}. It's unseekable until it's
+   * been indexed if its duration is neither declared nor found from its last fragments.
+   */
+  public static final int FLAG_ENABLE_FRAGMENT_INDEXING = 1 << 5; // 32
 
   private static final String TAG = "FragmentedMp4Extractor";
 
+  /**
+   * When indexing fragments of a stream with an undeclared duration, the number of bytes at the end
+   * of the stream that are first searched for the last fragments. The number is quadrupled until a
+   * fragment is found or it reaches {@link #MAX_END_SEARCH_BYTES}.
+   */
+  private static final long INITIAL_END_SEARCH_BYTES = 256 * 1024;
+  /** The maximum number of bytes at the end of the stream that are searched. */
+  private static final long MAX_END_SEARCH_BYTES = 16 * 1024 * 1024;
+
   @SuppressWarnings("ConstantCaseForConstants")
   private static final int SAMPLE_GROUP_TYPE_seig = 0x73656967;
   private static final byte[] PIFF_SAMPLE_ENCRYPTION_BOX_EXTENDED_TYPE =
@@ -124,6 +155,7 @@ public class FragmentedMp4Extractor implements Extractor {
   private static final int STATE_READING_ENCRYPTION_DATA = 2;
   private static final int STATE_READING_SAMPLE_START = 3;
   private static final int STATE_READING_SAMPLE_CONTINUE = 4;
+  private static final int STATE_SEARCHING_LAST_FRAGMENTS = 5;
 
   // Workarounds.
   @Flags private final int flags;
@@ -150,8 +182,11 @@ public class FragmentedMp4Extractor implements Extractor {
   // Parser state.
   private final ParsableByteArray atomHeader;
   private final ArrayDeque<ContainerAtom> containerAtoms;
+  private final ByteArrayPool atomDataPool;
+  private final ArrayList<byte[]> pooledAtomData;
   private final ArrayDeque<MetadataSampleInfo> pendingMetadataSampleInfos;
   @Nullable private final TrackOutput additionalEmsgTrackOutput;
+  @Nullable private final ChunkIndexStore chunkIndexStore;
 
   private int parserState;
   private int atomType;
@@ -178,6 +213,21 @@ public class FragmentedMp4Extractor implements Extractor {
   // Whether extractorOutput.seekMap has been called.
   private boolean haveOutputSeekMap;
 
+  // Fragment indexing state.
+  @Nullable private TrackBundle indexedTrackBundle;
+  @Nullable private FragmentHeader fragmentHeader;
+  @Nullable private FragmentedMp4BinarySearchSeeker binarySearchSeeker;
+  @Nullable private LongArray indexedFragmentPositions;
+  @Nullable private LongArray indexedFragmentTimesUs;
+  private boolean indexingFragments;
+  private long indexedStreamLength;
+  private long firstFragmentPosition;
+  private long firstFragmentTimeUs;
+  private long indexScanPosition;
+  private long indexedMoofPosition;
+  private long lastIndexedFragmentDurationUs;
+  private long endSearchBytes;
+
   public FragmentedMp4Extractor() {
     this(0);
   }
@@ -248,11 +298,41 @@ public class FragmentedMp4Extractor implements Extractor {
       @Nullable Track sideloadedTrack,
       List<Format> closedCaptionFormats,
       @Nullable TrackOutput additionalEmsgTrackOutput) {
+    this(
+        flags,
+        timestampAdjuster,
+        sideloadedTrack,
+        closedCaptionFormats,
+        additionalEmsgTrackOutput,
+        /* chunkIndexStore= */ null);
+  }
+
+  /**
+   * @param flags Flags that control the extractor's behavior.
+   * @param timestampAdjuster Adjusts sample timestamps. May be null if no adjustment is needed.
+   * @param sideloadedTrack Sideloaded track information, in the case that the extractor will not
+   *     receive a moov box in the input data. Null if a moov box is expected.
+   * @param closedCaptionFormats For tracks that contain SEI messages, the formats of the closed
+   *     caption channels to expose.
+   * @param additionalEmsgTrackOutput An extra track output that will receive all emsg messages
+   *     targeting the player, even if {@link #FLAG_ENABLE_EMSG_TRACK} is not set. Null if special
+   *     handling of emsg messages for players is not required.
+   * @param chunkIndexStore Stores the index built if {@link #FLAG_ENABLE_FRAGMENT_INDEXING} is set.
+   *     Null if the index should be built each time the stream is extracted.
+   */
+  public FragmentedMp4Extractor(
+      @Flags int flags,
+      @Nullable TimestampAdjuster timestampAdjuster,
+      @Nullable Track sideloadedTrack,
+      List<Format> closedCaptionFormats,
+      @Nullable TrackOutput additionalEmsgTrackOutput,
+      @Nullable ChunkIndexStore chunkIndexStore) {
     this.flags = flags;
     this.timestampAdjuster = timestampAdjuster;
     this.sideloadedTrack = sideloadedTrack;
     this.closedCaptionFormats = Collections.unmodifiableList(closedCaptionFormats);
     this.additionalEmsgTrackOutput = additionalEmsgTrackOutput;
+    this.chunkIndexStore = chunkIndexStore;
     eventMessageEncoder = new EventMessageEncoder();
     atomHeader = new ParsableByteArray(Atom.LONG_HEADER_SIZE);
     nalStartCode = new ParsableByteArray(NalUnitUtil.NAL_START_CODE);
@@ -261,11 +341,14 @@ public class FragmentedMp4Extractor implements Extractor {
     scratchBytes = new byte[16];
     scratch = new ParsableByteArray(scratchBytes);
     containerAtoms = new ArrayDeque<>();
+    atomDataPool = ByteArrayPool.getShared();
+    pooledAtomData = new ArrayList<>();
     pendingMetadataSampleInfos = new ArrayDeque<>();
     trackBundles = new SparseArray<>();
     durationUs = C.TIME_UNSET;
     pendingSeekTimeUs = C.TIME_UNSET;
     segmentIndexEarliestPresentationTimeUs = C.TIME_UNSET;
+    indexedMoofPosition = C.POSITION_UNSET;
     extractorOutput = ExtractorOutput.PLACEHOLDER;
     emsgTrackOutputs = new TrackOutput[0];
     ceaTrackOutputs = new TrackOutput[0];
@@ -313,16 +396,24 @@ public class FragmentedMp4Extractor implements Extractor {
     pendingMetadataSampleBytes = 0;
     pendingSeekTimeUs = timeUs;
     containerAtoms.clear();
+    releasePooledAtomData();
     enterReadingAtomHeaderState();
+    indexedMoofPosition = C.POSITION_UNSET;
+    if (timeUs != 0 && binarySearchSeeker != null && !isIndexedFragmentPosition(position)) {
+      binarySearchSeeker.setSeekTargetUs(timeUs);
+    }
   }
 
   @Override
   public void release() {
-    // Do nothing
+    releasePooledAtomData();
   }
 
   @Override
   public int read(ExtractorInput input, PositionHolder seekPosition) throws IOException {
+    if (binarySearchSeeker != null && binarySearchSeeker.isSeeking()) {
+      return binarySearchSeeker.handlePendingSeek(input, seekPosition);
+    }
     while (true) {
       switch (parserState) {
         case STATE_READING_ATOM_HEADER:
@@ -336,6 +427,9 @@ public class FragmentedMp4Extractor implements Extractor {
         case STATE_READING_ENCRYPTION_DATA:
           readEncryptionData(input);
           break;
+        case STATE_SEARCHING_LAST_FRAGMENTS:
+          searchLastFragments(input, seekPosition);
+          return RESULT_SEEK;
         default:
           if (readSample(input)) {
             return RESULT_CONTINUE;
@@ -387,8 +481,26 @@ public class FragmentedMp4Extractor implements Extractor {
     if (atomType == Atom.TYPE_moof || atomType == Atom.TYPE_mdat) {
       if (!haveOutputSeekMap) {
         // This must be the first moof or mdat in the stream.
-        extractorOutput.seekMap(new SeekMap.Unseekable(durationUs, atomPosition));
-        haveOutputSeekMap = true;
+        if (atomType == Atom.TYPE_moof && shouldIndexFragments(input)) {
+          startIndexingFragments(input, atomPosition);
+          if (parserState == STATE_SEARCHING_LAST_FRAGMENTS) {
+            return true;
+          }
+        } else {
+          extractorOutput.seekMap(new SeekMap.Unseekable(durationUs, atomPosition));
+          haveOutputSeekMap = true;
+        }
+      }
+    }
+
+    if (indexingFragments && containerAtoms.isEmpty() && atomPosition == indexScanPosition) {
+      // The box follows the last box that was indexed.
+      indexScanPosition = atomPosition + atomSize;
+      if (atomType == Atom.TYPE_moof) {
+        // The fragment is indexed once the moof box has been parsed.
+        indexedMoofPosition = atomPosition;
+      } else {
+        maybeEndIndexingFragments();
       }
     }
 
@@ -426,7 +538,19 @@ public class FragmentedMp4Extractor implements Extractor {
       if (atomSize > Integer.MAX_VALUE) {
         throw new ParserException("Leaf atom with length > 2147483647 (unsupported).");
       }
-      ParsableByteArray atomData = new ParsableByteArray((int) atomSize);
+      ParsableByteArray atomData;
+      if (atomType != Atom.TYPE_pssh
+          && !containerAtoms.isEmpty()
+          && containerAtoms.peekLast().type == Atom.TYPE_moof) {
+        // The children of moof boxes are parsed when the moof box ends, and no references to
+        // their data are kept after that, except to the data of pssh boxes. So the data of the
+        // other children can be pooled, which avoids allocating it for each fragment.
+        byte[] pooledData = atomDataPool.acquire((int) atomSize);
+        pooledAtomData.add(pooledData);
+        atomData = new ParsableByteArray(pooledData, (int) atomSize);
+      } else {
+        atomData = new ParsableByteArray((int) atomSize);
+      }
       System.arraycopy(atomHeader.getData(), 0, atomData.getData(), 0, Atom.HEADER_SIZE);
       this.atomData = atomData;
       parserState = STATE_READING_ATOM_PAYLOAD;
@@ -457,9 +581,264 @@ public class FragmentedMp4Extractor implements Extractor {
     while (!containerAtoms.isEmpty() && containerAtoms.peek().endPosition == atomEndPosition) {
       onContainerAtomRead(containerAtoms.pop());
     }
+    if (containerAtoms.isEmpty()) {
+      releasePooledAtomData();
+    }
     enterReadingAtomHeaderState();
   }
 
+  private void releasePooledAtomData() {
+    for (int i = 0; i < pooledAtomData.size(); i++) {
+      atomDataPool.release(pooledAtomData.get(i));
+    }
+    pooledAtomData.clear();
+  }
+
+  private boolean shouldIndexFragments(ExtractorInput input) {
+    return (flags & FLAG_ENABLE_FRAGMENT_INDEXING) != 0
+        && (flags & FLAG_WORKAROUND_IGNORE_TFDT_BOX) == 0
+        && sideloadedTrack == null
+        && trackBundles.size() > 0
+        && input.getLength() != C.LENGTH_UNSET;
+  }
+
+  /**
+   * Starts indexing fragments, after the header of the first moof box has been read. A stored
+   * index is output if there's one for the stream. Otherwise a seek map that searches for
+   * fragments is output if the duration of the stream is known, and the last fragments of the
+   * stream are searched for its duration if it isn't.
+   */
+  private void startIndexingFragments(ExtractorInput input, long moofPosition) throws IOException {
+    long streamLength = input.getLength();
+    @Nullable
+    ChunkIndex chunkIndex =
+        chunkIndexStore != null ? chunkIndexStore.getChunkIndex(streamLength) : null;
+    if (chunkIndex != null && chunkIndex.offsets[0] == moofPosition) {
+      extractorOutput.seekMap(chunkIndex);
+      haveOutputSeekMap = true;
+      return;
+    }
+    // Index the fragments of the first video track, or of the first track if there's no video.
+    TrackBundle indexedTrackBundle = trackBundles.valueAt(0);
+    for (int i = 0; i < trackBundles.size(); i++) {
+      if (trackBundles.valueAt(i).moovSampleTable.track.type == C.TRACK_TYPE_VIDEO) {
+        indexedTrackBundle = trackBundles.valueAt(i);
+        break;
+      }
+    }
+    FragmentHeader fragmentHeader =
+        new FragmentHeader(
+            indexedTrackBundle.moovSampleTable.track,
+            indexedTrackBundle.defaultSampleValues.duration,
+            /* isOnlyTrack= */ trackBundles.size() == 1);
+    if (atomHeaderBytesRead != Atom.HEADER_SIZE
+        || !fragmentHeader.peekPayload(input, atomHeader.getData(), atomSize)) {
+      extractorOutput.seekMap(new SeekMap.Unseekable(durationUs, moofPosition));
+      haveOutputSeekMap = true;
+      return;
+    }
+    this.indexedTrackBundle = indexedTrackBundle;
+    this.fragmentHeader = fragmentHeader;
+    indexedFragmentPositions = new LongArray();
+    indexedFragmentTimesUs = new LongArray();
+    indexingFragments = true;
+    indexedStreamLength = streamLength;
+    firstFragmentPosition = moofPosition;
+    firstFragmentTimeUs = fragmentHeader.timeUs != C.TIME_UNSET ? fragmentHeader.timeUs : 0;
+    indexScanPosition = moofPosition;
+    lastIndexedFragmentDurationUs = 0;
+    if (durationUs != C.TIME_UNSET) {
+      outputBinarySearchSeekMap(durationUs);
+    } else {
+      endSearchBytes = INITIAL_END_SEARCH_BYTES;
+      parserState = STATE_SEARCHING_LAST_FRAGMENTS;
+    }
+  }
+
+  /**
+   * Searches the end of the stream for its last fragments to find its duration, and then requires
+   * a seek back to the first moof box. If the whole stream is searched, its index is output.
+   *
+   * @param input The input.
+   * @param seekPosition The holder for the position of the next seek, which is always required.
+   * @throws IOException If an error occurs reading from the input.
+   */
+  private void searchLastFragments(ExtractorInput input, PositionHolder seekPosition)
+      throws IOException {
+    long searchStartPosition = max(firstFragmentPosition, indexedStreamLength - endSearchBytes);
+    if (input.getPosition() != searchStartPosition) {
+      seekPosition.position = searchStartPosition;
+      return;
+    }
+    FragmentHeader fragmentHeader = checkNotNull(this.fragmentHeader);
+    long fragmentPosition = fragmentHeader.find(input, searchStartPosition, indexedStreamLength);
+    if (fragmentPosition == C.POSITION_UNSET
+        && searchStartPosition > firstFragmentPosition
+        && endSearchBytes < MAX_END_SEARCH_BYTES) {
+      // The last moof box is before the searched range.
+      endSearchBytes *= 4;
+      seekPosition.position = max(firstFragmentPosition, indexedStreamLength - endSearchBytes);
+      return;
+    }
+
+    // Walk the top level boxes from the found moof box to the end of the stream.
+    LongArray positions = new LongArray();
+    LongArray timesUs = new LongArray();
+    long lastFragmentDurationUs = 0;
+    long boxPosition = fragmentPosition;
+    boolean reachedEnd = false;
+    while (boxPosition != C.POSITION_UNSET) {
+      if (boxPosition == indexedStreamLength) {
+        reachedEnd = true;
+        break;
+      }
+      input.skipFully((int) (boxPosition - input.getPosition()));
+      input.resetPeekPosition();
+      if (!input.peekFully(scratchBytes, 0, Atom.HEADER_SIZE, /* allowEndOfInput= */ true)) {
+        break;
+      }
+      scratch.setPosition(0);
+      long boxSize = scratch.readUnsignedInt();
+      int boxType = scratch.readInt();
+      if (boxSize == Atom.DEFINES_LARGE_SIZE) {
+        input.peekFully(scratchBytes, Atom.HEADER_SIZE, Atom.LONG_HEADER_SIZE - Atom.HEADER_SIZE);
+        boxSize = scratch.readUnsignedLongToLong();
+      } else if (boxSize == Atom.EXTENDS_TO_END_SIZE) {
+        boxSize = indexedStreamLength - boxPosition;
+      }
+      if (boxSize < Atom.HEADER_SIZE || boxSize > indexedStreamLength - boxPosition) {
+        break;
+      }
+      if (boxType == Atom.TYPE_moof) {
+        if (!fragmentHeader.peek(input, boxPosition, indexedStreamLength)) {
+          break;
+        }
+        if (fragmentHeader.timeUs != C.TIME_UNSET) {
+          positions.add(boxPosition);
+          timesUs.add(fragmentHeader.timeUs);
+          lastFragmentDurationUs = fragmentHeader.durationUs;
+        }
+      }
+      boxPosition += boxSize;
+    }
+
+    if (reachedEnd && fragmentPosition == firstFragmentPosition && positions.size() > 0) {
+      // The whole stream has been searched.
+      indexedFragmentPositions = positions;
+      indexedFragmentTimesUs = timesUs;
+      lastIndexedFragmentDurationUs = lastFragmentDurationUs;
+      indexScanPosition = indexedStreamLength;
+      endIndexingFragments();
+    } else if (reachedEnd && positions.size() > 0) {
+      outputBinarySearchSeekMap(
+          /* durationUs= */ timesUs.get(timesUs.size() - 1) + lastFragmentDurationUs);
+    } else {
+      extractorOutput.seekMap(new SeekMap.Unseekable(durationUs, firstFragmentPosition));
+      haveOutputSeekMap = true;
+    }
+    enterReadingAtomHeaderState();
+    seekPosition.position = firstFragmentPosition;
+  }
+
+  private void outputBinarySearchSeekMap(long durationUs) {
+    FragmentedMp4BinarySearchSeeker binarySearchSeeker =
+        new FragmentedMp4BinarySearchSeeker(
+            checkNotNull(fragmentHeader),
+            durationUs,
+            firstFragmentPosition,
+            firstFragmentTimeUs,
+            /* endPosition= */ indexedStreamLength);
+    this.binarySearchSeeker = binarySearchSeeker;
+    extractorOutput.seekMap(binarySearchSeeker.getSeekMap());
+    haveOutputSeekMap = true;
+  }
+
+  /**
+   * Adds an entry for a moof box that's been parsed to the fragment index, if it contains a
+   * fragment of the indexed track. Indexing stops if the fragment doesn't have a tfdt box.
+   */
+  private void indexFragment(ContainerAtom moof, long moofPosition) {
+    TrackBundle indexedTrackBundle = checkNotNull(this.indexedTrackBundle);
+    for (int i = 0; i < moof.containerChildren.size(); i++) {
+      ContainerAtom traf = moof.containerChildren.get(i);
+      @Nullable LeafAtom tfhdAtom = traf.getLeafAtomOfType(Atom.TYPE_tfhd);
+      if (traf.type != Atom.TYPE_traf || tfhdAtom == null) {
+        continue;
+      }
+      ParsableByteArray tfhd = tfhdAtom.data;
+      tfhd.setPosition(Atom.FULL_HEADER_SIZE);
+      if (getTrackBundle(trackBundles, tfhd.readInt()) != indexedTrackBundle) {
+        continue;
+      }
+      @Nullable LeafAtom tfdtAtom = traf.getLeafAtomOfType(Atom.TYPE_tfdt);
+      if (tfdtAtom == null) {
+        indexingFragments = false;
+        return;
+      }
+      Track track = indexedTrackBundle.moovSampleTable.track;
+      long decodeTime = parseTfdt(tfdtAtom.data);
+      // The decode time after parsing the fragment is that of the next fragment.
+      long duration = indexedTrackBundle.fragment.nextFragmentDecodeTime - decodeTime;
+      checkNotNull(indexedFragmentPositions).add(moofPosition);
+      checkNotNull(indexedFragmentTimesUs)
+          .add(
+              Util.scaleLargeTimestamp(decodeTime, C.MICROS_PER_SECOND, track.timescale)
+                  - getEditListOffsetUs(track));
+      lastIndexedFragmentDurationUs =
+          Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, track.timescale);
+      break;
+    }
+    maybeEndIndexingFragments();
+  }
+
+  private void maybeEndIndexingFragments() {
+    if (indexScanPosition >= indexedStreamLength) {
+      endIndexingFragments();
+    }
+  }
+
+  /** Outputs and stores the index once every fragment of the stream has been indexed. */
+  private void endIndexingFragments() {
+    indexingFragments = false;
+    LongArray positions = checkNotNull(indexedFragmentPositions);
+    long[] fragmentTimesUs = checkNotNull(indexedFragmentTimesUs).toArray();
+    int fragmentCount = positions.size();
+    if (fragmentCount == 0) {
+      return;
+    }
+    int[] sizes = new int[fragmentCount];
+    long[] offsets = new long[fragmentCount];
+    long[] durationsUs = new long[fragmentCount];
+    for (int i = 0; i < fragmentCount; i++) {
+      offsets[i] = positions.get(i);
+      long endPosition = i + 1 < fragmentCount ? positions.get(i + 1) : indexedStreamLength;
+      sizes[i] = (int) min(endPosition - offsets[i], Integer.MAX_VALUE);
+      durationsUs[i] =
+          i + 1 < fragmentCount
+              ? fragmentTimesUs[i + 1] - fragmentTimesUs[i]
+              : lastIndexedFragmentDurationUs;
+    }
+    ChunkIndex chunkIndex = new ChunkIndex(sizes, offsets, durationsUs, fragmentTimesUs);
+    // Seeks to positions from the previous seek map still search for the target fragment.
+    extractorOutput.seekMap(chunkIndex);
+    haveOutputSeekMap = true;
+    if (chunkIndexStore != null) {
+      chunkIndexStore.putChunkIndex(chunkIndex, indexedStreamLength);
+    }
+  }
+
+  /** Returns whether {@code position} is the position of a fragment that's been indexed. */
+  private boolean isIndexedFragmentPosition(long position) {
+    @Nullable LongArray positions = indexedFragmentPositions;
+    if (positions == null) {
+      return false;
+    }
+    int index =
+        Util.binarySearchFloor(
+            positions, position, /* inclusive= */ true, /* stayInBounds= */ false);
+    return index >= 0 && positions.get(index) == position;
+  }
+
   private void onLeafAtomRead(LeafAtom leaf, long inputPosition) throws ParserException {
     if (!containerAtoms.isEmpty()) {
       containerAtoms.peek().add(leaf);
@@ -558,6 +937,10 @@ public class FragmentedMp4Extractor implements Extractor {
 
   private void onMoofContainerAtomRead(ContainerAtom moof) throws ParserException {
     parseMoof(moof, trackBundles, flags, scratchBytes);
+    if (indexedMoofPosition != C.POSITION_UNSET) {
+      indexFragment(moof, indexedMoofPosition);
+      indexedMoofPosition = C.POSITION_UNSET;
+    }
 
     @Nullable DrmInitData drmInitData = getDrmInitDataFromAtoms(moof.leafChildren);
     if (drmInitData != null) {
@@ -927,6 +1310,21 @@ public class FragmentedMp4Extractor implements Extractor {
     return trackBundles.get(trackId);
   }
 
+  /**
+   * Returns the offset to the entire timeline of a track, in microseconds. In the presence of
+   * B-frames this is usually used to ensure that the first frame's presentation timestamp is zero.
+   */
+  /* package */ static long getEditListOffsetUs(Track track) {
+    // Currently we only support a single edit that moves the entire media timeline (indicated by
+    // duration == 0). Other uses of edit lists are uncommon and unsupported.
+    if (track.editListDurations != null && track.editListDurations.length == 1
+        && track.editListDurations[0] == 0) {
+      return Util.scaleLargeTimestamp(
+          castNonNull(track.editListMediaTimes)[0], C.MICROS_PER_SECOND, track.timescale);
+    }
+    return 0;
+  }
+
   /**
    * Parses a tfdt atom (defined in 14496-12).
    *
@@ -983,18 +1381,7 @@ public class FragmentedMp4Extractor implements Extractor {
     boolean sampleCompositionTimeOffsetsPresent =
         (atomFlags & 0x800 /* sample_composition_time_offsets_present */) != 0;
 
-    // Offset to the entire video timeline. In the presence of B-frames this is usually used to
-    // ensure that the first frame's presentation timestamp is zero.
-    long edtsOffsetUs = 0;
-
-    // Currently we only support a single edit that moves the entire media timeline (indicated by
-    // duration == 0). Other uses of edit lists are uncommon and unsupported.
-    if (track.editListDurations != null && track.editListDurations.length == 1
-        && track.editListDurations[0] == 0) {
-      edtsOffsetUs =
-          Util.scaleLargeTimestamp(
-              castNonNull(track.editListMediaTimes)[0], C.MICROS_PER_SECOND, track.timescale);
-    }
+    long edtsOffsetUs = getEditListOffsetUs(track);
 
     int[] sampleSizeTable = fragment.sampleSizeTable;
     int[] sampleCompositionTimeOffsetUsTable = fragment.sampleCompositionTimeOffsetUsTable;
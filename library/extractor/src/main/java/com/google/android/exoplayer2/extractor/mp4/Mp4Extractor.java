@@ -68,8 +68,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
   /**
    * Flags controlling the behavior of the extractor. Possible flag values are {@link
-   * #FLAG_WORKAROUND_IGNORE_EDIT_LISTS}, {@link #FLAG_READ_MOTION_PHOTO_METADATA} and {@link
-   * #FLAG_READ_SEF_DATA}.
+   * #FLAG_WORKAROUND_IGNORE_EDIT_LISTS}, {@link #FLAG_READ_MOTION_PHOTO_METADATA}, {@link
+   * #FLAG_READ_SEF_DATA} and {@link #FLAG_LAZY_SAMPLE_TABLES}.
    */
   @Documented
   @Retention(RetentionPolicy.SOURCE)
@@ -78,7 +78,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       value = {
         FLAG_WORKAROUND_IGNORE_EDIT_LISTS,
         FLAG_READ_MOTION_PHOTO_METADATA,
-        FLAG_READ_SEF_DATA
+        FLAG_READ_SEF_DATA,
+        FLAG_LAZY_SAMPLE_TABLES
       })
   public @interface Flags {}
   /** Flag to ignore any edit lists in the stream. */
@@ -96,6 +97,15 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    * videos.
    */
   public static final int FLAG_READ_SEF_DATA = 1 << 2;
+  /**
+   * Flag to expand the sample tables of tracks in pages of samples as playback and seeking reach
+   * them, rather than all at once when the moov atom has been read. This reduces the time taken to
+   * prepare and the memory used by long files.
+   *
+   * <p>If the edit list of a track has more than one non-empty edit, or if its samples need to be
+   * rechunked, the sample tables of all tracks are expanded up front as if the flag wasn't set.
+   */
+  public static final int FLAG_LAZY_SAMPLE_TABLES = 1 << 3;
 
   /** Parser states. */
   @Documented
@@ -163,6 +173,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private Mp4Track @MonotonicNonNull [] tracks;
 
   private long @MonotonicNonNull [][] accumulatedSampleSizes;
+  private PagedAccumulatedSampleSize @MonotonicNonNull [] pagedAccumulatedSampleSizes;
   private int firstVideoTrackIndex;
   private long durationUs;
   @FileType private int fileType;
@@ -282,19 +293,19 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
     // If we have a video track, use it to establish one or two seek points.
     if (firstVideoTrackIndex != C.INDEX_UNSET) {
-      TrackSampleTable sampleTable = tracks[firstVideoTrackIndex].sampleTable;
+      SampleTable sampleTable = tracks[firstVideoTrackIndex].sampleTable;
       int sampleIndex = getSynchronizationSampleIndex(sampleTable, timeUs);
       if (sampleIndex == C.INDEX_UNSET) {
         return new SeekPoints(SeekPoint.START);
       }
-      long sampleTimeUs = sampleTable.timestampsUs[sampleIndex];
+      long sampleTimeUs = sampleTable.getTimestampUs(sampleIndex);
       firstTimeUs = sampleTimeUs;
-      firstOffset = sampleTable.offsets[sampleIndex];
-      if (sampleTimeUs < timeUs && sampleIndex < sampleTable.sampleCount - 1) {
+      firstOffset = sampleTable.getOffset(sampleIndex);
+      if (sampleTimeUs < timeUs && sampleIndex < sampleTable.getSampleCount() - 1) {
         int secondSampleIndex = sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs);
         if (secondSampleIndex != C.INDEX_UNSET && secondSampleIndex != sampleIndex) {
-          secondTimeUs = sampleTable.timestampsUs[secondSampleIndex];
-          secondOffset = sampleTable.offsets[secondSampleIndex];
+          secondTimeUs = sampleTable.getTimestampUs(secondSampleIndex);
+          secondOffset = sampleTable.getOffset(secondSampleIndex);
         }
       }
     } else {
@@ -305,7 +316,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     // Take into account other tracks.
     for (int i = 0; i < tracks.length; i++) {
       if (i != firstVideoTrackIndex) {
-        TrackSampleTable sampleTable = tracks[i].sampleTable;
+        SampleTable sampleTable = tracks[i].sampleTable;
         firstOffset = maybeAdjustSeekOffset(sampleTable, firstTimeUs, firstOffset);
         if (secondTimeUs != C.TIME_UNSET) {
           secondOffset = maybeAdjustSeekOffset(sampleTable, secondTimeUs, secondOffset);
@@ -484,39 +495,52 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
 
     boolean ignoreEditLists = (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0;
-    List<TrackSampleTable> trackSampleTables =
-        parseTraks(
-            moov,
-            gaplessInfoHolder,
-            /* duration= */ C.TIME_UNSET,
-            /* drmInitData= */ null,
-            ignoreEditLists,
-            isQuickTime,
-            /* modifyTrackFunction= */ track -> track);
+    @Nullable List<PagedTrackSampleTable> pagedTrackSampleTables = null;
+    if ((flags & FLAG_LAZY_SAMPLE_TABLES) != 0) {
+      pagedTrackSampleTables =
+          AtomParsers.parsePagedTraks(
+              moov,
+              gaplessInfoHolder,
+              ignoreEditLists,
+              isQuickTime,
+              PagedTrackSampleTable.DEFAULT_PAGE_SAMPLE_COUNT);
+    }
+    List<? extends SampleTable> trackSampleTables =
+        pagedTrackSampleTables != null
+            ? pagedTrackSampleTables
+            : parseTraks(
+                moov,
+                gaplessInfoHolder,
+                /* duration= */ C.TIME_UNSET,
+                /* drmInitData= */ null,
+                ignoreEditLists,
+                isQuickTime,
+                /* modifyTrackFunction= */ track -> track);
 
     ExtractorOutput extractorOutput = checkNotNull(this.extractorOutput);
+    List<PagedTrackSampleTable> pagedSampleTables = new ArrayList<>();
     int trackCount = trackSampleTables.size();
     for (int i = 0; i < trackCount; i++) {
-      TrackSampleTable trackSampleTable = trackSampleTables.get(i);
-      if (trackSampleTable.sampleCount == 0) {
+      SampleTable trackSampleTable = trackSampleTables.get(i);
+      if (trackSampleTable.getSampleCount() == 0) {
         continue;
       }
-      Track track = trackSampleTable.track;
+      Track track = trackSampleTable.getTrack();
       long trackDurationUs =
-          track.durationUs != C.TIME_UNSET ? track.durationUs : trackSampleTable.durationUs;
+          track.durationUs != C.TIME_UNSET ? track.durationUs : trackSampleTable.getDurationUs();
       durationUs = max(durationUs, trackDurationUs);
       Mp4Track mp4Track = new Mp4Track(track, trackSampleTable,
           extractorOutput.track(i, track.type));
 
       // Each sample has up to three bytes of overhead for the start code that replaces its length.
       // Allow ten source samples per output sample, like the platform extractor.
-      int maxInputSize = trackSampleTable.maximumSize + 3 * 10;
+      int maxInputSize = trackSampleTable.getMaximumSize() + 3 * 10;
       Format.Builder formatBuilder = track.format.buildUpon();
       formatBuilder.setMaxInputSize(maxInputSize);
       if (track.type == C.TRACK_TYPE_VIDEO
           && trackDurationUs > 0
-          && trackSampleTable.sampleCount > 1) {
-        float frameRate = trackSampleTable.sampleCount / (trackDurationUs / 1000000f);
+          && trackSampleTable.getSampleCount() > 1) {
+        float frameRate = trackSampleTable.getSampleCount() / (trackDurationUs / 1000000f);
         formatBuilder.setFrameRate(frameRate);
       }
 
@@ -534,11 +558,25 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         firstVideoTrackIndex = tracks.size();
       }
       tracks.add(mp4Track);
+      if (pagedTrackSampleTables != null) {
+        pagedSampleTables.add(pagedTrackSampleTables.get(i));
+      }
     }
     this.firstVideoTrackIndex = firstVideoTrackIndex;
     this.durationUs = durationUs;
     this.tracks = tracks.toArray(new Mp4Track[0]);
-    accumulatedSampleSizes = calculateAccumulatedSampleSizes(this.tracks);
+    if (pagedTrackSampleTables != null) {
+      // Accumulated sample sizes are estimated from the paged sample tables as they're needed.
+      PagedTrackSampleTable[] pagedSampleTablesArray =
+          pagedSampleTables.toArray(new PagedTrackSampleTable[0]);
+      pagedAccumulatedSampleSizes = new PagedAccumulatedSampleSize[pagedSampleTablesArray.length];
+      for (int i = 0; i < pagedSampleTablesArray.length; i++) {
+        pagedAccumulatedSampleSizes[i] =
+            new PagedAccumulatedSampleSize(pagedSampleTablesArray, /* trackIndex= */ i);
+      }
+    } else {
+      accumulatedSampleSizes = calculateAccumulatedSampleSizes(this.tracks);
+    }
 
     extractorOutput.endTracks();
     extractorOutput.seekMap(this);
@@ -570,8 +608,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     Mp4Track track = castNonNull(tracks)[sampleTrackIndex];
     TrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
-    int sampleSize = track.sampleTable.sizes[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex);
+    int sampleSize = track.sampleTable.getSize(sampleIndex);
     long skipAmount = position - inputPosition + sampleBytesRead;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
       positionHolder.position = position;
@@ -636,8 +674,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         sampleCurrentNalBytesRemaining -= writtenBytes;
       }
     }
-    trackOutput.sampleMetadata(track.sampleTable.timestampsUs[sampleIndex],
-        track.sampleTable.flags[sampleIndex], sampleSize, 0, null);
+    trackOutput.sampleMetadata(track.sampleTable.getTimestampUs(sampleIndex),
+        track.sampleTable.getFlags(sampleIndex), sampleSize, 0, null);
     track.sampleIndex++;
     sampleTrackIndex = C.INDEX_UNSET;
     sampleBytesRead = 0;
@@ -670,11 +708,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     for (int trackIndex = 0; trackIndex < castNonNull(tracks).length; trackIndex++) {
       Mp4Track track = tracks[trackIndex];
       int sampleIndex = track.sampleIndex;
-      if (sampleIndex == track.sampleTable.sampleCount) {
+      if (sampleIndex == track.sampleTable.getSampleCount()) {
         continue;
       }
-      long sampleOffset = track.sampleTable.offsets[sampleIndex];
-      long sampleAccumulatedBytes = castNonNull(accumulatedSampleSizes)[trackIndex][sampleIndex];
+      long sampleOffset = track.sampleTable.getOffset(sampleIndex);
+      long sampleAccumulatedBytes = getAccumulatedSampleSize(trackIndex, sampleIndex);
       long skipAmount = sampleOffset - inputPosition;
       boolean requiresReload = skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE;
       if ((!requiresReload && preferredRequiresReload)
@@ -703,7 +741,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   @RequiresNonNull("tracks")
   private void updateSampleIndices(long timeUs) {
     for (Mp4Track track : tracks) {
-      TrackSampleTable sampleTable = track.sampleTable;
+      SampleTable sampleTable = track.sampleTable;
       int sampleIndex = sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs);
       if (sampleIndex == C.INDEX_UNSET) {
         // Handle the case where the requested time is before the first synchronization sample.
@@ -713,6 +751,19 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
   }
 
+  /**
+   * Returns the accumulated size of all samples which need to be read before a sample can be used.
+   *
+   * <p>For paged sample tables the size is estimated by sample time, assuming that the samples of
+   * each track are in timestamp order.
+   */
+  private long getAccumulatedSampleSize(int trackIndex, int sampleIndex) {
+    if (accumulatedSampleSizes != null) {
+      return accumulatedSampleSizes[trackIndex][sampleIndex];
+    }
+    return castNonNull(pagedAccumulatedSampleSizes)[trackIndex].get(sampleIndex);
+  }
+
   /** Processes the end of stream in case there is not atom left to read. */
   private void processEndOfStreamReadingAtomHeader() {
     if (fileType == FILE_TYPE_HEIC && (flags & FLAG_READ_MOTION_PHOTO_METADATA) != 0) {
@@ -760,8 +811,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     long[] nextSampleTimesUs = new long[tracks.length];
     boolean[] tracksFinished = new boolean[tracks.length];
     for (int i = 0; i < tracks.length; i++) {
-      accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.sampleCount];
-      nextSampleTimesUs[i] = tracks[i].sampleTable.timestampsUs[0];
+      accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.getSampleCount()];
+      nextSampleTimesUs[i] = tracks[i].sampleTable.getTimestampUs(0);
     }
     long accumulatedSampleSize = 0;
     int finishedTracks = 0;
@@ -776,11 +827,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
       int trackSampleIndex = nextSampleIndex[minTimeTrackIndex];
       accumulatedSampleSizes[minTimeTrackIndex][trackSampleIndex] = accumulatedSampleSize;
-      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.sizes[trackSampleIndex];
+      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.getSize(trackSampleIndex);
       nextSampleIndex[minTimeTrackIndex] = ++trackSampleIndex;
       if (trackSampleIndex < accumulatedSampleSizes[minTimeTrackIndex].length) {
         nextSampleTimesUs[minTimeTrackIndex] =
-            tracks[minTimeTrackIndex].sampleTable.timestampsUs[trackSampleIndex];
+            tracks[minTimeTrackIndex].sampleTable.getTimestampUs(trackSampleIndex);
       } else {
         tracksFinished[minTimeTrackIndex] = true;
         finishedTracks++;
@@ -799,12 +850,12 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    * @return The adjusted offset.
    */
   private static long maybeAdjustSeekOffset(
-      TrackSampleTable sampleTable, long seekTimeUs, long offset) {
+      SampleTable sampleTable, long seekTimeUs, long offset) {
     int sampleIndex = getSynchronizationSampleIndex(sampleTable, seekTimeUs);
     if (sampleIndex == C.INDEX_UNSET) {
       return offset;
     }
-    long sampleOffset = sampleTable.offsets[sampleIndex];
+    long sampleOffset = sampleTable.getOffset(sampleIndex);
     return min(sampleOffset, offset);
   }
 
@@ -819,7 +870,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    *     the first synchronization sample if located after {@code timeUs}, or {@link C#INDEX_UNSET}
    *     if there are no synchronization samples in the table.
    */
-  private static int getSynchronizationSampleIndex(TrackSampleTable sampleTable, long timeUs) {
+  private static int getSynchronizationSampleIndex(SampleTable sampleTable, long timeUs) {
     int sampleIndex = sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs);
     if (sampleIndex == C.INDEX_UNSET) {
       // Handle the case where the requested time is before the first synchronization sample.
@@ -897,15 +948,91 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         || atom == Atom.TYPE_meta;
   }
 
+  /**
+   * Estimates the accumulated sample sizes of the samples of a track with a paged sample table, as
+   * the size of the samples of all tracks that are before each sample in time.
+   *
+   * <p>The estimate for the track's current sample is kept, and updated from the samples in between
+   * when the next sample is requested. It's only recomputed by searching the sample tables when
+   * another sample is requested, for example after a seek.
+   */
+  private static final class PagedAccumulatedSampleSize {
+
+    private final PagedTrackSampleTable[] sampleTables;
+    private final int trackIndex;
+    /** The number of samples of each track before {@link #timeUs}. */
+    private final int[] sampleCountsBefore;
+
+    private int sampleIndex;
+    private long timeUs;
+    private long accumulatedSampleSize;
+
+    public PagedAccumulatedSampleSize(PagedTrackSampleTable[] sampleTables, int trackIndex) {
+      this.sampleTables = sampleTables;
+      this.trackIndex = trackIndex;
+      sampleCountsBefore = new int[sampleTables.length];
+      sampleIndex = C.INDEX_UNSET;
+    }
+
+    /** Returns the estimated accumulated sample size of a sample of the track. */
+    public long get(int sampleIndex) {
+      if (sampleIndex == this.sampleIndex) {
+        return accumulatedSampleSize;
+      } else if (this.sampleIndex != C.INDEX_UNSET && sampleIndex == this.sampleIndex + 1) {
+        moveToNextSample();
+      } else {
+        moveToSample(sampleIndex);
+      }
+      return accumulatedSampleSize;
+    }
+
+    private void moveToSample(int sampleIndex) {
+      this.sampleIndex = sampleIndex;
+      timeUs = sampleTables[trackIndex].getTimestampUs(sampleIndex);
+      accumulatedSampleSize = 0;
+      for (int i = 0; i < sampleTables.length; i++) {
+        int sampleCount =
+            i == trackIndex ? sampleIndex : sampleTables[i].getSampleCountBefore(timeUs);
+        sampleCountsBefore[i] = sampleCount;
+        accumulatedSampleSize += sampleTables[i].getSizeOfSamplesBefore(sampleCount);
+      }
+    }
+
+    private void moveToNextSample() {
+      accumulatedSampleSize += sampleTables[trackIndex].getSize(sampleIndex);
+      sampleIndex++;
+      sampleCountsBefore[trackIndex] = sampleIndex;
+      timeUs = sampleTables[trackIndex].getTimestampUs(sampleIndex);
+      for (int i = 0; i < sampleTables.length; i++) {
+        if (i == trackIndex) {
+          continue;
+        }
+        PagedTrackSampleTable sampleTable = sampleTables[i];
+        int sampleCount = sampleCountsBefore[i];
+        while (sampleCount < sampleTable.getSampleCount()
+            && sampleTable.getTimestampUs(sampleCount) < timeUs) {
+          accumulatedSampleSize += sampleTable.getSize(sampleCount);
+          sampleCount++;
+        }
+        // The timestamp decreases if the track's samples are reordered.
+        while (sampleCount > 0 && sampleTable.getTimestampUs(sampleCount - 1) >= timeUs) {
+          sampleCount--;
+          accumulatedSampleSize -= sampleTable.getSize(sampleCount);
+        }
+        sampleCountsBefore[i] = sampleCount;
+      }
+    }
+  }
+
   private static final class Mp4Track {
 
     public final Track track;
-    public final TrackSampleTable sampleTable;
+    public final SampleTable sampleTable;
     public final TrackOutput trackOutput;
 
     public int sampleIndex;
 
-    public Mp4Track(Track track, TrackSampleTable sampleTable, TrackOutput trackOutput) {
+    public Mp4Track(Track track, SampleTable sampleTable, TrackOutput trackOutput) {
       this.track = track;
       this.sampleTable = sampleTable;
       this.trackOutput = trackOutput;
@@ -0,0 +1,805 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.mp4.AtomParsers.SampleSizeBox;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sample table for a track in an MP4 file, which is expanded from the boxes of the stbl atom in
+ * pages of samples as they're accessed.
+ *
+ * <p>When the table is created, the sample boxes are read once to find the synchronization samples,
+ * the maximum sample size and the state needed to start reading the boxes at the first sample of
+ * each page. The offsets, sizes, timestamps and flags of the samples in a page are only expanded
+ * when one of its samples is accessed, and at most {@link #MAX_EXPANDED_PAGES} pages are kept.
+ *
+ * <p>An edit list with a single non-empty edit can be applied with {@link #copyWithEdit}, as the
+ * edited samples are then a contiguous range of the samples in the sample boxes.
+ *
+ * <p>Instances are safe to access from multiple threads.
+ */
+/* package */ final class PagedTrackSampleTable implements SampleTable {
+
+  /** The default number of samples in a page. */
+  public static final int DEFAULT_PAGE_SAMPLE_COUNT = 4096;
+
+  /** The maximum number of expanded pages kept by each sample table. */
+  private static final int MAX_EXPANDED_PAGES = 4;
+
+  private static final String TAG = "PagedTrackSampleTable";
+
+  private final Track track;
+  private final SampleSizeBox sampleSizeBox;
+  private final int pageSampleCount;
+  private final SampleCursor[] pageCursors;
+  /** The timestamps of the first sample of each page, in the track's timescale. */
+  private final long[] pageTimestamps;
+  /** The number of samples in the sample boxes, before any edit is applied. */
+  private final int uneditedSampleCount;
+  /** The indices of synchronization samples, or null if all samples are synchronization samples. */
+  @Nullable private final int[] synchronizationSampleIndices;
+  private final long totalSize;
+  private final long unscaledDuration;
+
+  /** The index of the first sample of the table in the sample boxes. */
+  private final int firstSampleIndex;
+  private final int sampleCount;
+  private final int maximumSize;
+  private final long durationUs;
+  /** The media time of the start of the edit in the track's timescale, or {@link C#TIME_UNSET}. */
+  private final long editMediaTime;
+  private final long editStartTimeUs;
+  private final long[] pageTimestampsUs;
+
+  // Accessed in synchronized methods only.
+  private final LinkedHashMap<Integer, Page> expandedPages;
+  @Nullable private Page lastPage;
+
+  /**
+   * Creates a sample table, reading the sample boxes once.
+   *
+   * @param track The track corresponding to this sample table.
+   * @param sampleSizeBox The stsz or stz2 box of the track.
+   * @param chunkOffsets The stco or co64 box of the track.
+   * @param chunkOffsetsAreLongs Whether {@code chunkOffsets} is a co64 box.
+   * @param stsc The stsc box of the track.
+   * @param stts The stts box of the track.
+   * @param ctts The ctts box of the track, or null if it doesn't have one.
+   * @param stss The stss box of the track, or null if it doesn't have one.
+   * @param pageSampleCount The number of samples in a page.
+   */
+  public PagedTrackSampleTable(
+      Track track,
+      SampleSizeBox sampleSizeBox,
+      ParsableByteArray chunkOffsets,
+      boolean chunkOffsetsAreLongs,
+      ParsableByteArray stsc,
+      ParsableByteArray stts,
+      @Nullable ParsableByteArray ctts,
+      @Nullable ParsableByteArray stss,
+      int pageSampleCount) {
+    Assertions.checkArgument(pageSampleCount > 0);
+    this.track = track;
+    this.sampleSizeBox = sampleSizeBox;
+    this.pageSampleCount = pageSampleCount;
+
+    int nextSynchronizationSampleIndex = C.INDEX_UNSET;
+    int remainingSynchronizationSamples = 0;
+    if (stss != null) {
+      stss.setPosition(Atom.FULL_HEADER_SIZE);
+      remainingSynchronizationSamples = stss.readUnsignedIntToInt();
+      if (remainingSynchronizationSamples > 0) {
+        nextSynchronizationSampleIndex = stss.readUnsignedIntToInt() - 1;
+      } else {
+        // Ignore empty stss boxes, which causes all samples to be treated as sync samples.
+        stss = null;
+      }
+    }
+    int[] synchronizationSampleIndices = new int[remainingSynchronizationSamples];
+    int synchronizationSampleCount = 0;
+
+    int sampleCount = sampleSizeBox.getSampleCount();
+    int pageCount = (sampleCount + pageSampleCount - 1) / pageSampleCount;
+    pageCursors = new SampleCursor[pageCount];
+    pageTimestamps = new long[pageCount];
+    int maximumSize = 0;
+    long totalSize = 0;
+    long unscaledDuration = 0;
+    if (sampleCount > 0) {
+      SampleCursor cursor =
+          new SampleCursor(sampleSizeBox, chunkOffsets, chunkOffsetsAreLongs, stsc, stts, ctts);
+      for (int i = 0; i < sampleCount; i++) {
+        boolean isPageStart = i % pageSampleCount == 0;
+        if (isPageStart) {
+          pageCursors[i / pageSampleCount] = cursor.copy();
+        }
+        if (!cursor.moveToNextSample()) {
+          Log.w(TAG, "Unexpected end of chunk data");
+          sampleCount = i;
+          break;
+        }
+        if (isPageStart) {
+          pageTimestamps[i / pageSampleCount] = cursor.timestamp;
+        }
+        if (cursor.size > maximumSize) {
+          maximumSize = cursor.size;
+        }
+        if (i == nextSynchronizationSampleIndex) {
+          synchronizationSampleIndices[synchronizationSampleCount++] = i;
+          remainingSynchronizationSamples--;
+          if (remainingSynchronizationSamples > 0) {
+            nextSynchronizationSampleIndex =
+                Assertions.checkNotNull(stss).readUnsignedIntToInt() - 1;
+          }
+        }
+      }
+      totalSize = cursor.sizeOfPreviousSamples;
+      unscaledDuration = cursor.timestampTimeUnits + cursor.timestampOffset;
+    }
+    uneditedSampleCount = sampleCount;
+    this.synchronizationSampleIndices =
+        stss == null
+            ? null
+            : Arrays.copyOf(synchronizationSampleIndices, synchronizationSampleCount);
+    this.totalSize = totalSize;
+    this.unscaledDuration = unscaledDuration;
+    firstSampleIndex = 0;
+    this.sampleCount = sampleCount;
+    this.maximumSize = maximumSize;
+    durationUs = Util.scaleLargeTimestamp(unscaledDuration, C.MICROS_PER_SECOND, track.timescale);
+    editMediaTime = C.TIME_UNSET;
+    editStartTimeUs = 0;
+    pageTimestampsUs = getPageTimestampsUs();
+    expandedPages = newExpandedPagesMap();
+  }
+
+  private PagedTrackSampleTable(
+      PagedTrackSampleTable other,
+      int firstSampleIndex,
+      int sampleCount,
+      int maximumSize,
+      long durationUs,
+      long editMediaTime,
+      long editStartTimeUs) {
+    track = other.track;
+    sampleSizeBox = other.sampleSizeBox;
+    pageSampleCount = other.pageSampleCount;
+    pageCursors = other.pageCursors;
+    pageTimestamps = other.pageTimestamps;
+    uneditedSampleCount = other.uneditedSampleCount;
+    synchronizationSampleIndices = other.synchronizationSampleIndices;
+    totalSize = other.totalSize;
+    unscaledDuration = other.unscaledDuration;
+    this.firstSampleIndex = firstSampleIndex;
+    this.sampleCount = sampleCount;
+    this.maximumSize = maximumSize;
+    this.durationUs = durationUs;
+    this.editMediaTime = editMediaTime;
+    this.editStartTimeUs = editStartTimeUs;
+    pageTimestampsUs = getPageTimestampsUs();
+    expandedPages = newExpandedPagesMap();
+  }
+
+  /** Returns a copy of this sample table with the specified duration. */
+  public PagedTrackSampleTable copyWithDurationUs(long durationUs) {
+    return new PagedTrackSampleTable(
+        this,
+        firstSampleIndex,
+        sampleCount,
+        maximumSize,
+        durationUs,
+        editMediaTime,
+        editStartTimeUs);
+  }
+
+  /**
+   * Returns a copy of this sample table with an edit applied, selecting and retiming samples in
+   * the same way as {@link AtomParsers} does when it applies an edit list with one non-empty edit
+   * to an expanded sample table. Must not be called on a table that's already edited.
+   *
+   * @param editMediaTime The media time of the start of the edit, in the track's timescale.
+   * @param editDuration The duration of the edit, in the track's timescale.
+   * @param omitClippedSample Whether to omit any sample at the end point of the edit.
+   * @param editStartTimeUs The presentation time of the start of the edit, in microseconds.
+   * @param durationUs The duration of the edited track, in microseconds.
+   * @return The edited sample table.
+   */
+  public PagedTrackSampleTable copyWithEdit(
+      long editMediaTime,
+      long editDuration,
+      boolean omitClippedSample,
+      long editStartTimeUs,
+      long durationUs) {
+    Assertions.checkState(this.editMediaTime == C.TIME_UNSET);
+    int startIndex = 0;
+    int endIndex = 0;
+    if (uneditedSampleCount > 0) {
+      startIndex = binarySearchUnscaledTimestamps(editMediaTime);
+      if (startIndex < 0) {
+        startIndex = -(startIndex + 2);
+      } else {
+        while (--startIndex >= 0 && getUnscaledTimestamp(startIndex) == editMediaTime) {}
+        startIndex++;
+      }
+      startIndex = max(0, startIndex);
+      long editEndTime = editMediaTime + editDuration;
+      endIndex = binarySearchUnscaledTimestamps(editEndTime);
+      if (endIndex < 0) {
+        endIndex = ~endIndex;
+      } else {
+        while (++endIndex < uneditedSampleCount
+            && getUnscaledTimestamp(endIndex) == editEndTime) {}
+        if (omitClippedSample) {
+          endIndex--;
+        }
+      }
+    }
+    if (startIndex < endIndex && synchronizationSampleIndices != null) {
+      // Advance to the next sync sample, as AtomParsers does.
+      int index =
+          Util.binarySearchCeil(
+              synchronizationSampleIndices,
+              startIndex,
+              /* inclusive= */ true,
+              /* stayInBounds= */ false);
+      startIndex =
+          index < synchronizationSampleIndices.length
+              ? min(synchronizationSampleIndices[index], endIndex)
+              : endIndex;
+    }
+    startIndex = min(startIndex, endIndex);
+    int editedMaximumSize = maximumSize;
+    if (startIndex != 0 || endIndex != uneditedSampleCount) {
+      editedMaximumSize = 0;
+      for (int i = startIndex; i < endIndex; i++) {
+        editedMaximumSize = max(editedMaximumSize, sampleSizeBox.getSampleSize(i));
+      }
+    }
+    return new PagedTrackSampleTable(
+        this,
+        startIndex,
+        /* sampleCount= */ endIndex - startIndex,
+        editedMaximumSize,
+        durationUs,
+        editMediaTime,
+        editStartTimeUs);
+  }
+
+  /**
+   * Returns the timestamp of a sample in the track's timescale, before any edit list is applied.
+   * The sample's page is not expanded.
+   *
+   * @param sampleIndex The index of the sample in the sample boxes, which is the same as its index
+   *     in the table if no edit is applied.
+   */
+  public long getUnscaledTimestamp(int sampleIndex) {
+    SampleCursor cursor = pageCursors[sampleIndex / pageSampleCount].copy();
+    for (int i = sampleIndex - sampleIndex % pageSampleCount; i <= sampleIndex; i++) {
+      cursor.moveToNextSample();
+    }
+    return cursor.timestamp;
+  }
+
+  /** Returns the duration of the samples in the track's timescale, before any edit is applied. */
+  public long getUnscaledDuration() {
+    return unscaledDuration;
+  }
+
+  /**
+   * Returns the number of samples with timestamps before {@code timeUs}, assuming samples are in
+   * timestamp order. Only the page containing the last such sample is expanded.
+   */
+  public int getSampleCountBefore(long timeUs) {
+    if (sampleCount == 0) {
+      return 0;
+    }
+    int pageIndex = Util.binarySearchFloor(
+        pageTimestampsUs, timeUs, /* inclusive= */ false, /* stayInBounds= */ true);
+    Page page = getPage(pageIndex * pageSampleCount);
+    int index =
+        Util.binarySearchCeil(
+            page.timestampsUs, timeUs, /* inclusive= */ true, /* stayInBounds= */ false);
+    while (index > 0 && page.timestampsUs[index - 1] == timeUs) {
+      index--;
+    }
+    return Util.constrainValue(page.firstSampleIndex + index - firstSampleIndex, 0, sampleCount);
+  }
+
+  /** Returns the total size of the samples before {@code sampleIndex}, in bytes. */
+  public long getSizeOfSamplesBefore(int sampleIndex) {
+    return getSizeOfUneditedSamplesBefore(firstSampleIndex + sampleIndex)
+        - getSizeOfUneditedSamplesBefore(firstSampleIndex);
+  }
+
+  // SampleTable implementation.
+
+  @Override
+  public Track getTrack() {
+    return track;
+  }
+
+  @Override
+  public int getSampleCount() {
+    return sampleCount;
+  }
+
+  @Override
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  @Override
+  public long getDurationUs() {
+    return durationUs;
+  }
+
+  @Override
+  public long getOffset(int sampleIndex) {
+    int uneditedSampleIndex = firstSampleIndex + sampleIndex;
+    Page page = getPage(uneditedSampleIndex);
+    return page.offsets[uneditedSampleIndex - page.firstSampleIndex];
+  }
+
+  @Override
+  public int getSize(int sampleIndex) {
+    int uneditedSampleIndex = firstSampleIndex + sampleIndex;
+    Page page = getPage(uneditedSampleIndex);
+    return page.sizes[uneditedSampleIndex - page.firstSampleIndex];
+  }
+
+  @Override
+  public long getTimestampUs(int sampleIndex) {
+    int uneditedSampleIndex = firstSampleIndex + sampleIndex;
+    Page page = getPage(uneditedSampleIndex);
+    return page.timestampsUs[uneditedSampleIndex - page.firstSampleIndex];
+  }
+
+  @Override
+  @C.BufferFlags
+  public int getFlags(int sampleIndex) {
+    int uneditedSampleIndex = firstSampleIndex + sampleIndex;
+    Page page = getPage(uneditedSampleIndex);
+    return page.flags[uneditedSampleIndex - page.firstSampleIndex];
+  }
+
+  @Override
+  public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
+    // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
+    // Frames are not reordered past synchronization samples so this works in practice.
+    int startIndex = binarySearchTimestamps(timeUs);
+    if (startIndex < 0) {
+      startIndex = -(startIndex + 2);
+    } else {
+      while (--startIndex >= 0 && getTimestampUs(startIndex) == timeUs) {}
+      startIndex++;
+    }
+    if (startIndex < 0) {
+      return C.INDEX_UNSET;
+    } else if (synchronizationSampleIndices == null) {
+      return startIndex;
+    }
+    int index =
+        Util.binarySearchFloor(
+            synchronizationSampleIndices,
+            firstSampleIndex + startIndex,
+            /* inclusive= */ true,
+            /* stayInBounds= */ false);
+    return index >= 0 && synchronizationSampleIndices[index] >= firstSampleIndex
+        ? synchronizationSampleIndices[index] - firstSampleIndex
+        : C.INDEX_UNSET;
+  }
+
+  @Override
+  public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
+    int startIndex = binarySearchTimestamps(timeUs);
+    if (startIndex < 0) {
+      startIndex = ~startIndex;
+    } else {
+      while (++startIndex < sampleCount && getTimestampUs(startIndex) == timeUs) {}
+      startIndex--;
+    }
+    if (startIndex >= sampleCount) {
+      return C.INDEX_UNSET;
+    } else if (synchronizationSampleIndices == null) {
+      return startIndex;
+    }
+    int index =
+        Util.binarySearchCeil(
+            synchronizationSampleIndices,
+            firstSampleIndex + startIndex,
+            /* inclusive= */ true,
+            /* stayInBounds= */ false);
+    return index < synchronizationSampleIndices.length
+            && synchronizationSampleIndices[index] < firstSampleIndex + sampleCount
+        ? synchronizationSampleIndices[index] - firstSampleIndex
+        : C.INDEX_UNSET;
+  }
+
+  // Internal methods.
+
+  /**
+   * Searches the sample timestamps with the same algorithm as {@link
+   * Arrays#binarySearch(long[], long)} on an expanded array.
+   *
+   * <p>The page to search is found from the timestamps of the first sample of each page, and only
+   * that page is expanded. Samples in earlier and later pages are treated as having earlier and
+   * later timestamps, so the result only differs from searching the expanded array if samples are
+   * reordered across a page boundary.
+   */
+  private int binarySearchTimestamps(long timeUs) {
+    if (sampleCount == 0) {
+      return -1;
+    }
+    int pageIndex =
+        Util.binarySearchFloor(
+            pageTimestampsUs, timeUs, /* inclusive= */ false, /* stayInBounds= */ true);
+    pageIndex =
+        Util.constrainValue(
+            pageIndex,
+            firstSampleIndex / pageSampleCount,
+            (firstSampleIndex + sampleCount - 1) / pageSampleCount);
+    Page page = getPage(pageIndex * pageSampleCount);
+    int pageStartIndex = page.firstSampleIndex - firstSampleIndex;
+    int pageEndIndex = pageStartIndex + page.timestampsUs.length;
+    int low = 0;
+    int high = sampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (mid < pageStartIndex) {
+        low = mid + 1;
+      } else if (mid >= pageEndIndex) {
+        high = mid - 1;
+      } else {
+        long midTimeUs = page.timestampsUs[mid - pageStartIndex];
+        if (midTimeUs < timeUs) {
+          low = mid + 1;
+        } else if (midTimeUs > timeUs) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+    }
+    if (low == pageEndIndex && low < sampleCount && getTimestampUs(low) == timeUs) {
+      // The first sample of the next page has the timestamp.
+      return low;
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * Searches the unedited, unscaled sample timestamps with the same algorithm as {@link
+   * Arrays#binarySearch(long[], long)}, without expanding any pages.
+   */
+  private int binarySearchUnscaledTimestamps(long timestamp) {
+    int low = 0;
+    int high = uneditedSampleCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midTimestamp = getUnscaledTimestamp(mid);
+      if (midTimestamp < timestamp) {
+        low = mid + 1;
+      } else if (midTimestamp > timestamp) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  private long getSizeOfUneditedSamplesBefore(int uneditedSampleIndex) {
+    if (uneditedSampleIndex == uneditedSampleCount) {
+      return totalSize;
+    }
+    Page page = getPage(uneditedSampleIndex);
+    return page.sizesOfPreviousSamples[uneditedSampleIndex - page.firstSampleIndex];
+  }
+
+  private long[] getPageTimestampsUs() {
+    long[] pageTimestampsUs = new long[pageTimestamps.length];
+    for (int i = 0; i < pageTimestamps.length; i++) {
+      pageTimestampsUs[i] = toTimestampUs(pageTimestamps[i]);
+    }
+    return pageTimestampsUs;
+  }
+
+  /** Returns the presentation time of a timestamp in the track's timescale, in microseconds. */
+  private long toTimestampUs(long timestamp) {
+    if (editMediaTime == C.TIME_UNSET) {
+      return Util.scaleLargeTimestamp(timestamp, C.MICROS_PER_SECOND, track.timescale);
+    }
+    return editStartTimeUs
+        + Util.scaleLargeTimestamp(
+            max(0, timestamp - editMediaTime), C.MICROS_PER_SECOND, track.timescale);
+  }
+
+  private synchronized Page getPage(int uneditedSampleIndex) {
+    int pageIndex = uneditedSampleIndex / pageSampleCount;
+    @Nullable Page page = lastPage;
+    if (page != null && page.index == pageIndex) {
+      return page;
+    }
+    page = expandedPages.get(pageIndex);
+    if (page == null) {
+      page = expandPage(pageIndex);
+      expandedPages.put(pageIndex, page);
+    }
+    lastPage = page;
+    return page;
+  }
+
+  private Page expandPage(int pageIndex) {
+    int pageFirstSampleIndex = pageIndex * pageSampleCount;
+    int pageLength = min(pageSampleCount, uneditedSampleCount - pageFirstSampleIndex);
+    Page page = new Page(pageIndex, pageFirstSampleIndex, pageLength);
+    SampleCursor cursor = pageCursors[pageIndex].copy();
+    int nextSynchronizationSampleIndex = C.INDEX_UNSET;
+    int synchronizationSampleIndex = 0;
+    if (synchronizationSampleIndices != null) {
+      synchronizationSampleIndex =
+          Util.binarySearchCeil(
+              synchronizationSampleIndices,
+              pageFirstSampleIndex,
+              /* inclusive= */ true,
+              /* stayInBounds= */ false);
+      if (synchronizationSampleIndex < synchronizationSampleIndices.length) {
+        nextSynchronizationSampleIndex = synchronizationSampleIndices[synchronizationSampleIndex];
+      }
+    }
+    for (int i = 0; i < pageLength; i++) {
+      page.sizesOfPreviousSamples[i] = cursor.sizeOfPreviousSamples;
+      cursor.moveToNextSample();
+      page.offsets[i] = cursor.offset;
+      page.sizes[i] = cursor.size;
+      page.timestampsUs[i] = cursor.timestamp;
+      // All samples are synchronization samples if the stss is not present.
+      if (synchronizationSampleIndices == null) {
+        page.flags[i] = C.BUFFER_FLAG_KEY_FRAME;
+      } else if (pageFirstSampleIndex + i == nextSynchronizationSampleIndex) {
+        page.flags[i] = C.BUFFER_FLAG_KEY_FRAME;
+        synchronizationSampleIndex++;
+        nextSynchronizationSampleIndex =
+            synchronizationSampleIndex < synchronizationSampleIndices.length
+                ? synchronizationSampleIndices[synchronizationSampleIndex]
+                : C.INDEX_UNSET;
+      }
+    }
+    int lastSampleIndex = firstSampleIndex + sampleCount - 1;
+    if (pageFirstSampleIndex <= lastSampleIndex
+        && lastSampleIndex < pageFirstSampleIndex + pageLength) {
+      page.flags[lastSampleIndex - pageFirstSampleIndex] |= C.BUFFER_FLAG_LAST_SAMPLE;
+    }
+    if (editMediaTime == C.TIME_UNSET) {
+      Util.scaleLargeTimestampsInPlace(page.timestampsUs, C.MICROS_PER_SECOND, track.timescale);
+    } else {
+      for (int i = 0; i < pageLength; i++) {
+        page.timestampsUs[i] = toTimestampUs(page.timestampsUs[i]);
+      }
+    }
+    return page;
+  }
+
+  private static LinkedHashMap<Integer, Page> newExpandedPagesMap() {
+    return new LinkedHashMap<Integer, Page>(
+        /* initialCapacity= */ MAX_EXPANDED_PAGES + 1,
+        /* loadFactor= */ 0.75f,
+        /* accessOrder= */ true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+        return size() > MAX_EXPANDED_PAGES;
+      }
+    };
+  }
+
+  /** The expanded samples of a page. */
+  private static final class Page {
+
+    public final int index;
+    public final int firstSampleIndex;
+    public final long[] offsets;
+    public final int[] sizes;
+    public final long[] timestampsUs;
+    public final int[] flags;
+    public final long[] sizesOfPreviousSamples;
+
+    public Page(int index, int firstSampleIndex, int length) {
+      this.index = index;
+      this.firstSampleIndex = firstSampleIndex;
+      offsets = new long[length];
+      sizes = new int[length];
+      timestampsUs = new long[length];
+      flags = new int[length];
+      sizesOfPreviousSamples = new long[length];
+    }
+  }
+
+  /**
+   * Reads the samples of a track from its sample boxes in order, in the same way as {@link
+   * AtomParsers} does when it expands a whole sample table.
+   */
+  private static final class SampleCursor {
+
+    private final SampleSizeBox sampleSizeBox;
+    private final boolean chunkOffsetsAreLongs;
+    private final ParsableByteArray chunkOffsets;
+    private final ParsableByteArray stsc;
+    private final ParsableByteArray stts;
+    @Nullable private final ParsableByteArray ctts;
+    private final int chunkCount;
+
+    /** The offset of the sample that was moved to. */
+    public long offset;
+    /** The size of the sample that was moved to. */
+    public int size;
+    /** The timestamp of the sample that was moved to, in the track's timescale. */
+    public long timestamp;
+    /** The size of the samples before the next one. */
+    public long sizeOfPreviousSamples;
+    /** The decoding timestamp of the next sample, in the track's timescale. */
+    public long timestampTimeUnits;
+    /** The timestamp offset of the sample that was moved to, in the track's timescale. */
+    public int timestampOffset;
+
+    private int sampleIndex;
+    private int chunkIndex;
+    private int samplesPerChunk;
+    private int nextSamplesPerChunkChangeIndex;
+    private int remainingSamplesPerChunkChanges;
+    private int remainingSamplesInChunk;
+    private long nextSampleOffset;
+    private int remainingTimestampDeltaChanges;
+    private int remainingSamplesAtTimestampDelta;
+    private int timestampDeltaInTimeUnits;
+    private int remainingTimestampOffsetChanges;
+    private int remainingSamplesAtTimestampOffset;
+
+    public SampleCursor(
+        SampleSizeBox sampleSizeBox,
+        ParsableByteArray chunkOffsets,
+        boolean chunkOffsetsAreLongs,
+        ParsableByteArray stsc,
+        ParsableByteArray stts,
+        @Nullable ParsableByteArray ctts) {
+      this.sampleSizeBox = sampleSizeBox;
+      this.chunkOffsetsAreLongs = chunkOffsetsAreLongs;
+      this.chunkOffsets = chunkOffsets;
+      this.stsc = stsc;
+      this.stts = stts;
+      this.ctts = ctts;
+      chunkOffsets.setPosition(Atom.FULL_HEADER_SIZE);
+      chunkCount = chunkOffsets.readUnsignedIntToInt();
+      stsc.setPosition(Atom.FULL_HEADER_SIZE);
+      remainingSamplesPerChunkChanges = stsc.readUnsignedIntToInt();
+      Assertions.checkState(stsc.readInt() == 1, "first_chunk must be 1");
+      chunkIndex = -1;
+      stts.setPosition(Atom.FULL_HEADER_SIZE);
+      remainingTimestampDeltaChanges = stts.readUnsignedIntToInt() - 1;
+      remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
+      timestampDeltaInTimeUnits = stts.readUnsignedIntToInt();
+      if (ctts != null) {
+        ctts.setPosition(Atom.FULL_HEADER_SIZE);
+        remainingTimestampOffsetChanges = ctts.readUnsignedIntToInt();
+      }
+    }
+
+    private SampleCursor(SampleCursor other) {
+      sampleSizeBox = other.sampleSizeBox;
+      chunkOffsetsAreLongs = other.chunkOffsetsAreLongs;
+      chunkOffsets = copyOf(other.chunkOffsets);
+      stsc = copyOf(other.stsc);
+      stts = copyOf(other.stts);
+      ctts = other.ctts != null ? copyOf(other.ctts) : null;
+      chunkCount = other.chunkCount;
+      offset = other.offset;
+      size = other.size;
+      timestamp = other.timestamp;
+      sizeOfPreviousSamples = other.sizeOfPreviousSamples;
+      timestampTimeUnits = other.timestampTimeUnits;
+      timestampOffset = other.timestampOffset;
+      sampleIndex = other.sampleIndex;
+      chunkIndex = other.chunkIndex;
+      samplesPerChunk = other.samplesPerChunk;
+      nextSamplesPerChunkChangeIndex = other.nextSamplesPerChunkChangeIndex;
+      remainingSamplesPerChunkChanges = other.remainingSamplesPerChunkChanges;
+      remainingSamplesInChunk = other.remainingSamplesInChunk;
+      nextSampleOffset = other.nextSampleOffset;
+      remainingTimestampDeltaChanges = other.remainingTimestampDeltaChanges;
+      remainingSamplesAtTimestampDelta = other.remainingSamplesAtTimestampDelta;
+      timestampDeltaInTimeUnits = other.timestampDeltaInTimeUnits;
+      remainingTimestampOffsetChanges = other.remainingTimestampOffsetChanges;
+      remainingSamplesAtTimestampOffset = other.remainingSamplesAtTimestampOffset;
+    }
+
+    /** Returns a cursor that reads from the same position, independently of this one. */
+    public SampleCursor copy() {
+      return new SampleCursor(this);
+    }
+
+    /**
+     * Moves to the next sample, updating {@link #offset}, {@link #size} and {@link #timestamp}.
+     * Returns false if the chunk data ended before the sample.
+     */
+    public boolean moveToNextSample() {
+      // Advance to the next chunk if necessary.
+      while (remainingSamplesInChunk == 0) {
+        if (++chunkIndex == chunkCount) {
+          return false;
+        }
+        nextSampleOffset =
+            chunkOffsetsAreLongs
+                ? chunkOffsets.readUnsignedLongToLong()
+                : chunkOffsets.readUnsignedInt();
+        if (chunkIndex == nextSamplesPerChunkChangeIndex) {
+          samplesPerChunk = stsc.readUnsignedIntToInt();
+          stsc.skipBytes(4); // Skip sample_description_index
+          nextSamplesPerChunkChangeIndex =
+              --remainingSamplesPerChunkChanges > 0
+                  ? (stsc.readUnsignedIntToInt() - 1)
+                  : C.INDEX_UNSET;
+        }
+        remainingSamplesInChunk = samplesPerChunk;
+      }
+
+      // Add on the timestamp offset if ctts is present.
+      if (ctts != null) {
+        while (remainingSamplesAtTimestampOffset == 0 && remainingTimestampOffsetChanges > 0) {
+          remainingSamplesAtTimestampOffset = ctts.readUnsignedIntToInt();
+          timestampOffset = ctts.readInt();
+          remainingTimestampOffsetChanges--;
+        }
+        remainingSamplesAtTimestampOffset--;
+      }
+
+      offset = nextSampleOffset;
+      size = sampleSizeBox.getSampleSize(sampleIndex);
+      timestamp = timestampTimeUnits + timestampOffset;
+
+      // Add on the duration of this sample.
+      timestampTimeUnits += timestampDeltaInTimeUnits;
+      remainingSamplesAtTimestampDelta--;
+      if (remainingSamplesAtTimestampDelta == 0 && remainingTimestampDeltaChanges > 0) {
+        remainingSamplesAtTimestampDelta = stts.readUnsignedIntToInt();
+        timestampDeltaInTimeUnits = stts.readInt();
+        remainingTimestampDeltaChanges--;
+      }
+
+      nextSampleOffset += size;
+      sizeOfPreviousSamples += size;
+      remainingSamplesInChunk--;
+      sampleIndex++;
+      return true;
+    }
+
+    private static ParsableByteArray copyOf(ParsableByteArray data) {
+      ParsableByteArray copy = new ParsableByteArray(data.getData(), data.limit());
+      copy.setPosition(data.getPosition());
+      return copy;
+    }
+  }
+}
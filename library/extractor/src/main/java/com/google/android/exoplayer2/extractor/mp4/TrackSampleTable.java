@@ -22,7 +22,7 @@ import com.google.android.exoplayer2.util.Util;
 /**
  * Sample table for a track in an MP4 file.
  */
-/* package */ final class TrackSampleTable {
+/* package */ final class TrackSampleTable implements SampleTable {
 
   /** The track corresponding to this sample table. */
   public final Track track;
@@ -66,13 +66,47 @@ import com.google.android.exoplayer2.util.Util;
     }
   }
 
-  /**
-   * Returns the sample index of the closest synchronization sample at or before the given
-   * timestamp, if one is available.
-   *
-   * @param timeUs Timestamp adjacent to which to find a synchronization sample.
-   * @return Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
-   */
+  @Override
+  public Track getTrack() {
+    return track;
+  }
+
+  @Override
+  public int getSampleCount() {
+    return sampleCount;
+  }
+
+  @Override
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  @Override
+  public long getDurationUs() {
+    return durationUs;
+  }
+
+  @Override
+  public long getOffset(int sampleIndex) {
+    return offsets[sampleIndex];
+  }
+
+  @Override
+  public int getSize(int sampleIndex) {
+    return sizes[sampleIndex];
+  }
+
+  @Override
+  public long getTimestampUs(int sampleIndex) {
+    return timestampsUs[sampleIndex];
+  }
+
+  @Override
+  public int getFlags(int sampleIndex) {
+    return flags[sampleIndex];
+  }
+
+  @Override
   public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
     // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
     // Frames are not reordered past synchronization samples so this works in practice.
@@ -85,13 +119,7 @@ import com.google.android.exoplayer2.util.Util;
     return C.INDEX_UNSET;
   }
 
-  /**
-   * Returns the sample index of the closest synchronization sample at or after the given timestamp,
-   * if one is available.
-   *
-   * @param timeUs Timestamp adjacent to which to find a synchronization sample.
-   * @return index Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
-   */
+  @Override
   public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
     int startIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
     for (int i = startIndex; i < timestampsUs.length; i++) {
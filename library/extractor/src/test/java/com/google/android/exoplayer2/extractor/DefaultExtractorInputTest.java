@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.extractor;
 
 import static com.google.android.exoplayer2.C.RESULT_END_OF_INPUT;
 import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
 import static java.util.Arrays.copyOf;
 import static java.util.Arrays.copyOfRange;
 import static org.junit.Assert.fail;
@@ -24,11 +25,15 @@ import static org.junit.Assert.fail;
 import android.net.Uri;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -92,6 +97,39 @@ public class DefaultExtractorInputTest {
         .isEqualTo(Arrays.copyOf(target, TEST_DATA.length - 1));
   }
 
+  @Test
+  public void readToDirectBuffer_afterPeek() throws Exception {
+    DefaultExtractorInput input = createDefaultExtractorInput();
+    ByteBuffer target = ByteBuffer.allocateDirect(TEST_DATA.length);
+
+    input.advancePeekPosition(3);
+    int bytesReadFromPeekBuffer = input.read(target);
+    int bytesReadFromUpstream = input.read(target);
+
+    assertThat(bytesReadFromPeekBuffer).isEqualTo(3);
+    // buildTestDataSource sets up reads of three bytes.
+    assertThat(bytesReadFromUpstream).isEqualTo(3);
+    assertThat(target.position()).isEqualTo(6);
+    assertThat(input.getPosition()).isEqualTo(6);
+    byte[] data = new byte[6];
+    target.flip();
+    target.get(data);
+    assertThat(data).isEqualTo(Arrays.copyOf(TEST_DATA, 6));
+  }
+
+  @Test
+  public void readToDirectBuffer_endOfInput() throws Exception {
+    DefaultExtractorInput input = createDefaultExtractorInput();
+    ByteBuffer target = ByteBuffer.allocateDirect(TEST_DATA.length);
+
+    input.skipFully(TEST_DATA.length);
+    int bytesRead = input.read(target);
+
+    assertThat(bytesRead).isEqualTo(RESULT_END_OF_INPUT);
+    assertThat(target.position()).isEqualTo(0);
+    assertThat(input.getPosition()).isEqualTo(TEST_DATA.length);
+  }
+
   @Test
   public void readEndOfInputBeforeFirstByteRead() throws Exception {
     DefaultExtractorInput input = createDefaultExtractorInput();
@@ -602,6 +640,147 @@ public class DefaultExtractorInputTest {
     }
   }
 
+  @Test
+  public void readAhead_smallReads_readsBlocksFromUpstream() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    FakeDataSource dataSource = new FakeDataSource();
+    dataSource.getDataSet().newDefaultData().appendReadData(data);
+    dataSource.open(new DataSpec(Uri.parse(TEST_URI)));
+    DefaultExtractorInput input =
+        new DefaultExtractorInput(
+            dataSource, /* position= */ 0, C.LENGTH_UNSET, /* readAheadBlockSize= */ 100);
+    byte[] target = new byte[data.length];
+
+    for (int i = 0; i < 250; i++) {
+      input.readFully(target, /* offset= */ i, /* length= */ 1);
+    }
+    input.skipFully(/* length= */ 10);
+    input.peekFully(target, /* offset= */ 260, /* length= */ 5);
+
+    assertThat(input.getUpstreamReadCount()).isEqualTo(3);
+    assertThat(input.getPosition()).isEqualTo(260);
+    assertThat(input.getPeekPosition()).isEqualTo(265);
+    assertThat(copyOf(target, 250)).isEqualTo(copyOf(data, 250));
+    assertThat(copyOfRange(target, 260, 265)).isEqualTo(copyOfRange(data, 260, 265));
+  }
+
+  @Test
+  public void readAhead_largeRead_readsDirectlyFromUpstream() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    FakeDataSource dataSource = new FakeDataSource();
+    dataSource.getDataSet().newDefaultData().appendReadData(data);
+    dataSource.open(new DataSpec(Uri.parse(TEST_URI)));
+    DefaultExtractorInput input =
+        new DefaultExtractorInput(
+            dataSource, /* position= */ 0, C.LENGTH_UNSET, /* readAheadBlockSize= */ 100);
+    byte[] target = new byte[data.length];
+
+    input.readFully(target, /* offset= */ 0, /* length= */ 10);
+    input.readFully(target, /* offset= */ 10, /* length= */ 500);
+
+    // The first read reads a block, of which the second read uses the rest before reading the
+    // remainder directly.
+    assertThat(input.getUpstreamReadCount()).isEqualTo(2);
+    assertThat(input.getPosition()).isEqualTo(510);
+    assertThat(copyOf(target, 510)).isEqualTo(copyOf(data, 510));
+  }
+
+  @Test
+  public void readAhead_endOfInput() throws Exception {
+    DefaultExtractorInput input =
+        new DefaultExtractorInput(
+            buildDataSource(), /* position= */ 0, C.LENGTH_UNSET, /* readAheadBlockSize= */ 100);
+    byte[] target = new byte[TEST_DATA.length];
+
+    input.skipFully(TEST_DATA.length);
+
+    assertThat(input.read(target, /* offset= */ 0, /* length= */ 1)).isEqualTo(RESULT_END_OF_INPUT);
+    assertThat(input.skip(/* length= */ 1)).isEqualTo(RESULT_END_OF_INPUT);
+    assertThat(input.peek(target, /* offset= */ 0, /* length= */ 1))
+        .isEqualTo(RESULT_END_OF_INPUT);
+    assertThat(input.readFully(target, /* offset= */ 0, /* length= */ 1, true)).isFalse();
+    try {
+      input.readFully(target, /* offset= */ 0, /* length= */ 1);
+      fail();
+    } catch (EOFException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void readAhead_randomOperations_returnStreamData() throws Exception {
+    Random random = new Random(/* seed= */ 1234);
+    byte[] data = TestUtil.buildTestData(/* length= */ 20_000, random);
+    DefaultExtractorInput input =
+        new DefaultExtractorInput(
+            buildRandomlySegmentedDataSource(data, random),
+            /* position= */ 0,
+            data.length,
+            /* readAheadBlockSize= */ 256);
+
+    while (input.getPosition() < data.length) {
+      int position = (int) input.getPosition();
+      int peekPosition = (int) input.getPeekPosition();
+      // Fully reading, skipping or peeking past the end of the data is tested elsewhere.
+      int length = random.nextInt(min(data.length - peekPosition, 600) + 1);
+      byte[] target = new byte[length];
+      switch (random.nextInt(7)) {
+        case 0:
+          int bytesRead = input.read(target, /* offset= */ 0, length);
+          assertThat(copyOf(target, bytesRead))
+              .isEqualTo(copyOfRange(data, position, position + bytesRead));
+          assertThat(input.getPosition()).isEqualTo(position + bytesRead);
+          break;
+        case 1:
+          ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+          int bytesReadToBuffer = input.read(buffer);
+          buffer.flip();
+          byte[] bufferData = new byte[buffer.remaining()];
+          buffer.get(bufferData);
+          assertThat(bufferData)
+              .isEqualTo(copyOfRange(data, position, position + bytesReadToBuffer));
+          assertThat(input.getPosition()).isEqualTo(position + bytesReadToBuffer);
+          break;
+        case 2:
+          input.readFully(target, /* offset= */ 0, length);
+          assertThat(target).isEqualTo(copyOfRange(data, position, position + length));
+          break;
+        case 3:
+          input.skipFully(length);
+          assertThat(input.getPosition()).isEqualTo(position + length);
+          break;
+        case 4:
+          int bytesPeeked = input.peek(target, /* offset= */ 0, length);
+          assertThat(copyOf(target, bytesPeeked))
+              .isEqualTo(copyOfRange(data, peekPosition, peekPosition + bytesPeeked));
+          assertThat(input.getPeekPosition()).isEqualTo(peekPosition + bytesPeeked);
+          break;
+        case 5:
+          input.peekFully(target, /* offset= */ 0, length);
+          assertThat(target).isEqualTo(copyOfRange(data, peekPosition, peekPosition + length));
+          break;
+        default:
+          input.resetPeekPosition();
+          assertThat(input.getPeekPosition()).isEqualTo(position);
+          break;
+      }
+    }
+  }
+
+  private static FakeDataSource buildRandomlySegmentedDataSource(byte[] data, Random random)
+      throws IOException {
+    FakeDataSource dataSource = new FakeDataSource();
+    FakeDataSet.FakeData fakeData = dataSource.getDataSet().newDefaultData();
+    int position = 0;
+    while (position < data.length) {
+      int segmentLength = min(data.length - position, 1 + random.nextInt(500));
+      fakeData.appendReadData(copyOfRange(data, position, position + segmentLength));
+      position += segmentLength;
+    }
+    dataSource.open(new DataSpec(Uri.parse(TEST_URI)));
+    return dataSource;
+  }
+
   private static FakeDataSource buildDataSource() throws Exception {
     FakeDataSource testDataSource = new FakeDataSource();
     testDataSource.getDataSet().newDefaultData()
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.testutil.ExtractorAsserts.ExtractorFactory;
+import com.google.android.exoplayer2.upstream.DataReader;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * An extraction of a {@link SyntheticStream}, as if by a player that prepares, seeks and plays,
+ * which counts the reads of each step.
+ */
+public final class ExtractionSession implements ExtractorOutput {
+
+  private final SyntheticStream stream;
+  private final Extractor extractor;
+  private final PositionHolder positionHolder;
+
+  @Nullable public SeekMap seekMap;
+  public int seekMapCount;
+  public long firstSampleTimeUs;
+  public long lastSampleTimeUs;
+  public int openCount;
+  public long bytesRead;
+  public long timeNs;
+
+  private ExtractorInput input;
+
+  public ExtractionSession(SyntheticStream stream, ExtractorFactory extractorFactory) {
+    this.stream = stream;
+    extractor = extractorFactory.create();
+    positionHolder = new PositionHolder();
+    firstSampleTimeUs = C.TIME_UNSET;
+    lastSampleTimeUs = C.TIME_UNSET;
+    extractor.init(this);
+  }
+
+  /**
+   * Measures preparing and seeking to {@code seekTimeUs} in {@code stream}:
+   *
+   * <ul>
+   *   <li>Without indexing, by reading from the start to the target.
+   *   <li>With indexing, before the index is complete, and playing from the start to the end
+   *       afterwards, which completes the index.
+   *   <li>With the index stored by the previous step.
+   * </ul>
+   *
+   * @param stream The stream.
+   * @param seekTimeUs The seek target, in microseconds.
+   * @param unindexedExtractorFactory A factory for extractors that don't index the stream.
+   * @param indexingExtractorFactory A factory for extractors that index the stream, which must
+   *     share a single {@link ChunkIndexStore}.
+   * @return A description of the reads and latency of each step.
+   */
+  public static String measureSeekWithIndexing(
+      SyntheticStream stream,
+      long seekTimeUs,
+      ExtractorFactory unindexedExtractorFactory,
+      ExtractorFactory indexingExtractorFactory)
+      throws IOException {
+    StringBuilder results =
+        new StringBuilder(
+            String.format(
+                Locale.US,
+                "seek to %d s in %d byte stream:",
+                seekTimeUs / C.MICROS_PER_SECOND,
+                stream.length));
+
+    ExtractionSession session = new ExtractionSession(stream, unindexedExtractorFactory);
+    session.prepare();
+    results.append(" unindexed: prepare [").append(session);
+    session.readUntil(seekTimeUs);
+    results.append("] read to target [").append(session).append(']');
+
+    session = new ExtractionSession(stream, indexingExtractorFactory);
+    session.prepare();
+    results.append(" indexing: prepare [").append(session);
+    session.seekTo(seekTimeUs);
+    results.append("] seek [").append(session);
+    session.seekTo(/* timeUs= */ 0);
+    session.readToEnd();
+    results.append("] play to end [").append(session).append(']');
+
+    session = new ExtractionSession(stream, indexingExtractorFactory);
+    session.prepare();
+    results.append(" stored index: prepare [").append(session);
+    session.seekTo(seekTimeUs);
+    results.append("] seek [").append(session).append(']');
+    return results.toString();
+  }
+
+  /** Extracts from the start of the stream until the seek map and the first sample are output. */
+  public void prepare() throws IOException {
+    startStep();
+    open(/* position= */ 0);
+    while (seekMap == null || lastSampleTimeUs == C.TIME_UNSET) {
+      assertThat(read()).isTrue();
+    }
+    endStep();
+  }
+
+  /**
+   * Seeks using the seek map, and extracts until a sample at or after {@code timeUs}. {@link
+   * #firstSampleTimeUs} is the time of the first sample that's output after the seek.
+   */
+  public void seekTo(long timeUs) throws IOException {
+    startStep();
+    SeekPoint seekPoint = checkNotNull(seekMap).getSeekPoints(timeUs).first;
+    extractor.seek(seekPoint.position, timeUs);
+    open(seekPoint.position);
+    readUntilInternal(timeUs);
+    endStep();
+  }
+
+  /**
+   * Seeks to the start of the stream, as a player does when it restarts extraction, and extracts
+   * until the first sample.
+   */
+  public void restart() throws IOException {
+    startStep();
+    extractor.seek(/* position= */ 0, /* timeUs= */ 0);
+    open(/* position= */ 0);
+    readUntilInternal(/* timeUs= */ 0);
+    endStep();
+  }
+
+  /** Extracts from the current position until a sample at or after {@code timeUs}. */
+  public void readUntil(long timeUs) throws IOException {
+    startStep();
+    readUntilInternal(timeUs);
+    endStep();
+  }
+
+  /** Extracts from the current position to the end of the stream. */
+  public void readToEnd() throws IOException {
+    startStep();
+    while (read()) {}
+    endStep();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.US, "%d opens, %d bytes, %d ms", openCount, bytesRead, timeNs / 1_000_000);
+  }
+
+  private void startStep() {
+    openCount = -stream.openCount;
+    bytesRead = -stream.bytesRead;
+    timeNs = -System.nanoTime();
+    firstSampleTimeUs = C.TIME_UNSET;
+    lastSampleTimeUs = C.TIME_UNSET;
+  }
+
+  private void endStep() {
+    openCount += stream.openCount;
+    bytesRead += stream.bytesRead;
+    timeNs += System.nanoTime();
+  }
+
+  private void readUntilInternal(long timeUs) throws IOException {
+    while (lastSampleTimeUs == C.TIME_UNSET || lastSampleTimeUs < timeUs) {
+      assertThat(read()).isTrue();
+    }
+  }
+
+  /** Reads from the extractor, and returns whether the end of the input hasn't been reached. */
+  private boolean read() throws IOException {
+    int result = extractor.read(input, positionHolder);
+    if (result == Extractor.RESULT_SEEK) {
+      open(positionHolder.position);
+    } else if (result == Extractor.RESULT_END_OF_INPUT) {
+      return false;
+    } else {
+      assertThat(result).isEqualTo(Extractor.RESULT_CONTINUE);
+    }
+    return true;
+  }
+
+  private void open(long position) {
+    input = new DefaultExtractorInput(stream.open(position), position, stream.length);
+  }
+
+  // ExtractorOutput implementation.
+
+  @Override
+  public TrackOutput track(int id, int type) {
+    DummyTrackOutput dummyTrackOutput = new DummyTrackOutput();
+    return new TrackOutput() {
+      @Override
+      public void format(Format format) {
+        // Do nothing.
+      }
+
+      @Override
+      public int sampleData(
+          DataReader input, int length, boolean allowEndOfInput, int sampleDataPart)
+          throws IOException {
+        return dummyTrackOutput.sampleData(input, length, allowEndOfInput, sampleDataPart);
+      }
+
+      @Override
+      public void sampleData(ParsableByteArray data, int length, int sampleDataPart) {
+        data.skipBytes(length);
+      }
+
+      @Override
+      public void sampleMetadata(
+          long timeUs, int flags, int size, int offset, @Nullable CryptoData cryptoData) {
+        if (firstSampleTimeUs == C.TIME_UNSET) {
+          firstSampleTimeUs = timeUs;
+        }
+        lastSampleTimeUs = timeUs;
+      }
+    };
+  }
+
+  @Override
+  public void endTracks() {
+    // Do nothing.
+  }
+
+  @Override
+  public void seekMap(SeekMap seekMap) {
+    this.seekMap = seekMap;
+    seekMapCount++;
+  }
+
+  private static SeekMap checkNotNull(@Nullable SeekMap seekMap) {
+    assertThat(seekMap).isNotNull();
+    return seekMap;
+  }
+
+  /** A {@link ChunkIndexStore} that holds a single index in memory. */
+  public static final class InMemoryChunkIndexStore implements ChunkIndexStore {
+
+    public int putCount;
+
+    @Nullable private ChunkIndex chunkIndex;
+    private long streamLength;
+
+    @Override
+    @Nullable
+    public synchronized ChunkIndex getChunkIndex(long streamLength) {
+      return this.streamLength == streamLength ? chunkIndex : null;
+    }
+
+    @Override
+    public synchronized void putChunkIndex(ChunkIndex chunkIndex, long streamLength) {
+      this.chunkIndex = chunkIndex;
+      this.streamLength = streamLength;
+      putCount++;
+    }
+  }
+}
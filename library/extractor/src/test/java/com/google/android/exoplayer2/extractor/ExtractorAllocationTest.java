@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static java.lang.Math.max;
+import static org.junit.Assume.assumeTrue;
+
+import android.util.SparseArray;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer2.extractor.ts.AdtsExtractor;
+import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataReader;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Guards against regressions in the rate at which extractors allocate memory once they've been
+ * prepared.
+ *
+ * <p>Each test extracts an asset to the end, and then seeks to its first seek point and extracts it
+ * again several times with the same extractor. The bytes allocated by the repeated extractions,
+ * including those allocated by the seeks, are divided by the duration of the media extracted. Each
+ * budget is just above the highest rate measured for the extractor, so that an allocation per
+ * sample or per fragment exceeds it.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class ExtractorAllocationTest {
+
+  private static final int MEASURED_EXTRACTION_COUNT = 20;
+
+  @Test
+  public void fragmentedMp4Extractor() throws Exception {
+    assertAllocationRate(
+        new FragmentedMp4Extractor(),
+        "media/mp4/sample_fragmented_seekable.mp4",
+        /* budget= */ 1500);
+  }
+
+  @Test
+  public void mp4Extractor() throws Exception {
+    assertAllocationRate(new Mp4Extractor(), "media/mp4/sample.mp4", /* budget= */ 400);
+  }
+
+  @Test
+  public void matroskaExtractor() throws Exception {
+    assertAllocationRate(new MatroskaExtractor(), "media/mkv/sample.mkv", /* budget= */ 500);
+  }
+
+  @Test
+  public void matroskaExtractor_withSubtitles() throws Exception {
+    assertAllocationRate(
+        new MatroskaExtractor(), "media/mkv/sample_with_srt.mkv", /* budget= */ 2000);
+  }
+
+  @Test
+  public void tsExtractor() throws Exception {
+    assertAllocationRate(
+        new TsExtractor(), "media/ts/sample_h264_mpeg_audio.ts", /* budget= */ 3000);
+  }
+
+  @Test
+  public void adtsExtractor() throws Exception {
+    assertAllocationRate(
+        new AdtsExtractor(AdtsExtractor.FLAG_ENABLE_CONSTANT_BITRATE_SEEKING),
+        "media/ts/sample.adts",
+        /* budget= */ 150);
+  }
+
+  @Test
+  public void mp3Extractor() throws Exception {
+    assertAllocationRate(
+        new Mp3Extractor(), "media/mp3/bear-vbr-xing-header.mp3", /* budget= */ 150);
+  }
+
+  @Test
+  public void oggExtractor() throws Exception {
+    assertAllocationRate(new OggExtractor(), "media/ogg/bear_vorbis.ogg", /* budget= */ 300);
+  }
+
+  /**
+   * Asserts that the extractor allocates at most {@code budget} bytes per second of media
+   * extracted, once it's been prepared.
+   */
+  private static void assertAllocationRate(Extractor extractor, String file, long budget)
+      throws IOException {
+    ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(threadMxBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocationMxBean =
+        (com.sun.management.ThreadMXBean) threadMxBean;
+    assumeTrue(allocationMxBean.isThreadAllocatedMemorySupported());
+    allocationMxBean.setThreadAllocatedMemoryEnabled(true);
+    long threadId = Thread.currentThread().getId();
+
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), file);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    DiscardingExtractorOutput output = new DiscardingExtractorOutput();
+    PositionHolder positionHolder = new PositionHolder();
+    extractor.init(output);
+    extractAll(extractor, input, positionHolder);
+    long durationUs = output.largestSampleTimeUs;
+    assertThat(durationUs).isGreaterThan(0);
+    assertThat(output.seekMap.isSeekable()).isTrue();
+    SeekPoint seekPoint = output.seekMap.getSeekPoints(/* timeUs= */ 0).first;
+
+    long startAllocatedBytes = allocationMxBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < MEASURED_EXTRACTION_COUNT; i++) {
+      extractor.seek(seekPoint.position, seekPoint.timeUs);
+      input.setPosition((int) seekPoint.position);
+      extractAll(extractor, input, positionHolder);
+    }
+    long allocatedBytes = allocationMxBean.getThreadAllocatedBytes(threadId) - startAllocatedBytes;
+
+    long bytesPerSecond =
+        allocatedBytes * C.MICROS_PER_SECOND / (durationUs * MEASURED_EXTRACTION_COUNT);
+    assertWithMessage(
+            String.format(
+                Locale.US,
+                "%s allocated %d bytes per second of %s",
+                extractor,
+                bytesPerSecond,
+                file))
+        .that(bytesPerSecond)
+        .isAtMost(budget);
+  }
+
+  private static void extractAll(
+      Extractor extractor, FakeExtractorInput input, PositionHolder positionHolder)
+      throws IOException {
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(input, positionHolder);
+      if (result == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+      }
+    }
+  }
+
+  /** An {@link ExtractorOutput} whose tracks discard their samples. */
+  private static final class DiscardingExtractorOutput implements ExtractorOutput {
+
+    private final SparseArray<TrackOutput> trackOutputs;
+
+    @Nullable public SeekMap seekMap;
+    public long largestSampleTimeUs;
+
+    public DiscardingExtractorOutput() {
+      trackOutputs = new SparseArray<>();
+    }
+
+    @Override
+    public TrackOutput track(int id, int type) {
+      @Nullable TrackOutput trackOutput = trackOutputs.get(id);
+      if (trackOutput == null) {
+        trackOutput = new DiscardingTrackOutput();
+        trackOutputs.put(id, trackOutput);
+      }
+      return trackOutput;
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      this.seekMap = seekMap;
+    }
+
+    private final class DiscardingTrackOutput implements TrackOutput {
+
+      private final DummyTrackOutput dummyTrackOutput;
+
+      public DiscardingTrackOutput() {
+        dummyTrackOutput = new DummyTrackOutput();
+      }
+
+      @Override
+      public void format(Format format) {
+        // Do nothing.
+      }
+
+      @Override
+      public int sampleData(
+          DataReader input, int length, boolean allowEndOfInput, int sampleDataPart)
+          throws IOException {
+        return dummyTrackOutput.sampleData(input, length, allowEndOfInput, sampleDataPart);
+      }
+
+      @Override
+      public void sampleData(ParsableByteArray data, int length, int sampleDataPart) {
+        data.skipBytes(length);
+      }
+
+      @Override
+      public void sampleMetadata(
+          long timeUs, int flags, int size, int offset, @Nullable CryptoData cryptoData) {
+        largestSampleTimeUs = max(largestSampleTimeUs, timeUs);
+      }
+    }
+  }
+}
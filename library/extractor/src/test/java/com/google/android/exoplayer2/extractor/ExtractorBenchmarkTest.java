@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static java.lang.Math.min;
+
+import android.content.Context;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.Dumper;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.FakeTrackOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Extracts every media asset in the testdata module, other than header-only sniffing fixtures,
+ * with the extractor from {@link DefaultExtractorsFactory} that sniffs it, and reports the
+ * throughput, sample rate and allocations of each extraction.
+ *
+ * <p>Assets are extracted in parallel on one thread per core. Each asset is extracted several times
+ * by new extractors, and the fastest extraction is reported. The extractions must not fail and must
+ * all produce the same output. Whether the output matches the asset's prerecorded dump file, if it
+ * has one, is reported rather than asserted, as some dump files are recorded with non-default
+ * extractor flags.
+ *
+ * <p>The report is written as JSON to {@link #REPORT_PATH}, relative to the module directory, so
+ * that it can be collected for regression tracking. Only runs when benchmarks are enabled, see
+ * {@link BenchmarkUtil}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class ExtractorBenchmarkTest {
+
+  private static final String REPORT_PATH = "build/reports/benchmarks/extractors.json";
+  private static final String[] MEDIA_DIRECTORIES =
+      new String[] {"amr", "flac", "flv", "jpeg", "mka", "mkv", "mp3", "mp4", "ogg", "ts", "wav"};
+  /** The suffix of assets that hold only a container header, for sniffing tests. */
+  private static final String HEADER_ONLY_SUFFIX = "_header";
+  private static final int ROUNDS = 3;
+
+  private static final String DUMP_MATCH = "match";
+  private static final String DUMP_MISMATCH = "mismatch";
+  private static final String DUMP_NONE = "none";
+
+  @Before
+  public void setUp() {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+  }
+
+  @Test
+  public void extract_allTestdataAssets_reportsThroughputAndAllocations() throws Exception {
+    Context context = ApplicationProvider.getApplicationContext();
+    // Assets are loaded on the test thread, so that only the extractions run in parallel.
+    List<Asset> assets = new ArrayList<>();
+    for (String directory : MEDIA_DIRECTORIES) {
+      String assetDirectory = "media/" + directory;
+      for (String fileName : context.getAssets().list(assetDirectory)) {
+        if (fileName.endsWith(HEADER_ONLY_SUFFIX)) {
+          continue;
+        }
+        String path = assetDirectory + "/" + fileName;
+        assets.add(
+            new Asset(path, TestUtil.getByteArray(context, path), readDumpFile(context, path)));
+      }
+    }
+    assertThat(assets).isNotEmpty();
+
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+    List<Future<AssetResult>> futures = new ArrayList<>();
+    long startTimeNs = System.nanoTime();
+    for (Asset asset : assets) {
+      futures.add(executorService.submit(() -> benchmark(asset)));
+    }
+    List<AssetResult> results = new ArrayList<>();
+    for (Future<AssetResult> future : futures) {
+      results.add(future.get());
+    }
+    long elapsedTimeNs = System.nanoTime() - startTimeNs;
+    executorService.shutdown();
+
+    Set<String> extractorNames = new TreeSet<>();
+    for (Extractor extractor : new DefaultExtractorsFactory().createExtractors()) {
+      extractorNames.add(extractor.getClass().getSimpleName());
+    }
+    List<String> errors = new ArrayList<>();
+    JSONArray assetReports = new JSONArray();
+    for (AssetResult result : results) {
+      if (result.error != null) {
+        errors.add(result.path + ": " + result.error);
+      }
+      if (result.extractorName != null) {
+        extractorNames.remove(result.extractorName);
+      }
+      assetReports.put(result.toJson());
+    }
+    JSONObject report =
+        new JSONObject()
+            .put("threads", threadCount)
+            .put("rounds", ROUNDS)
+            .put("elapsedMs", elapsedTimeNs / 1_000_000)
+            .put("assets", assetReports)
+            .put("extractorsWithoutAssets", new JSONArray(extractorNames));
+    writeReport(report);
+
+    BenchmarkUtil.report("Extractors", summarize(results));
+    assertWithMessage("Extractions failed: %s", errors).that(errors).isEmpty();
+  }
+
+  private static AssetResult benchmark(Asset asset) {
+    AssetResult result = new AssetResult(asset.path, asset.data.length);
+    try {
+      int extractorIndex = sniff(asset.data);
+      if (extractorIndex == C.INDEX_UNSET) {
+        return result;
+      }
+      ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+      @Nullable com.sun.management.ThreadMXBean allocationMxBean = null;
+      if (threadMxBean instanceof com.sun.management.ThreadMXBean) {
+        allocationMxBean = (com.sun.management.ThreadMXBean) threadMxBean;
+        if (allocationMxBean.isThreadAllocatedMemorySupported()) {
+          allocationMxBean.setThreadAllocatedMemoryEnabled(true);
+        } else {
+          allocationMxBean = null;
+        }
+      }
+      long threadId = Thread.currentThread().getId();
+
+      for (int round = 0; round < ROUNDS; round++) {
+        Extractor extractor = new DefaultExtractorsFactory().createExtractors()[extractorIndex];
+        result.extractorName = extractor.getClass().getSimpleName();
+        FakeExtractorInput input = new FakeExtractorInput.Builder().setData(asset.data).build();
+        // Some streams repeat formats between samples, as ExtractorAsserts allows for.
+        FakeExtractorOutput output =
+            new FakeExtractorOutput(
+                (id, type) -> new FakeTrackOutput(/* deduplicateConsecutiveFormats= */ true));
+        long startAllocatedBytes =
+            allocationMxBean != null ? allocationMxBean.getThreadAllocatedBytes(threadId) : 0;
+        long startTimeNs = System.nanoTime();
+        extractor.init(output);
+        extractAll(extractor, input);
+        long elapsedTimeNs = System.nanoTime() - startTimeNs;
+        long allocatedBytes =
+            allocationMxBean != null
+                ? allocationMxBean.getThreadAllocatedBytes(threadId) - startAllocatedBytes
+                : C.LENGTH_UNSET;
+
+        String dump = new Dumper().add(output).toString();
+        if (round == 0) {
+          result.dump = dump;
+          result.sampleCount = getSampleCount(output);
+          result.elapsedTimeNs = elapsedTimeNs;
+          result.allocatedBytes = allocatedBytes;
+        } else if (!dump.equals(result.dump)) {
+          result.error = "Output of round " + round + " differs from round 0";
+          return result;
+        } else {
+          result.elapsedTimeNs = min(result.elapsedTimeNs, elapsedTimeNs);
+          result.allocatedBytes = min(result.allocatedBytes, allocatedBytes);
+        }
+      }
+      if (asset.dumpFile == null) {
+        result.dumpStatus = DUMP_NONE;
+      } else {
+        result.dumpStatus = asset.dumpFile.equals(result.dump) ? DUMP_MATCH : DUMP_MISMATCH;
+      }
+    } catch (IOException | RuntimeException e) {
+      result.error = e.toString();
+    }
+    return result;
+  }
+
+  /**
+   * Returns the index in {@link DefaultExtractorsFactory#createExtractors()} of the first extractor
+   * that sniffs {@code data}, or {@link C#INDEX_UNSET} if none does.
+   */
+  private static int sniff(byte[] data) throws IOException {
+    Extractor[] extractors = new DefaultExtractorsFactory().createExtractors();
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    for (int i = 0; i < extractors.length; i++) {
+      try {
+        if (extractors[i].sniff(input)) {
+          return i;
+        }
+      } catch (EOFException e) {
+        // Do nothing.
+      } finally {
+        input.resetPeekPosition();
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  private static void extractAll(Extractor extractor, FakeExtractorInput input)
+      throws IOException {
+    PositionHolder positionHolder = new PositionHolder();
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(input, positionHolder);
+      if (result == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+      }
+    }
+  }
+
+  private static int getSampleCount(FakeExtractorOutput output) {
+    int sampleCount = 0;
+    for (int i = 0; i < output.trackOutputs.size(); i++) {
+      sampleCount += output.trackOutputs.valueAt(i).getSampleCount();
+    }
+    return sampleCount;
+  }
+
+  /** Returns the contents of the dump file of a full extraction of an asset, if there is one. */
+  @Nullable
+  private static String readDumpFile(Context context, String path) throws IOException {
+    try {
+      String dumpFilesPrefix = "extractordumps" + path.substring("media".length());
+      return TestUtil.getString(context, dumpFilesPrefix + ".0.dump");
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static void writeReport(JSONObject report) throws IOException, JSONException {
+    File file = new File(REPORT_PATH);
+    File directory = file.getParentFile();
+    if (directory != null && !directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Failed to create " + directory);
+    }
+    try (OutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(Util.getUtf8Bytes(report.toString(/* indentSpaces= */ 2)));
+    }
+  }
+
+  private static String summarize(List<AssetResult> results) {
+    StringBuilder summary = new StringBuilder("extractor benchmark (fastest of rounds):\n");
+    for (AssetResult result : results) {
+      if (result.extractorName == null || result.error != null) {
+        continue;
+      }
+      summary.append(
+          String.format(
+              Locale.US,
+              "%s %s: %.1f MB/s, %d samples/s, %d bytes allocated, dump %s\n",
+              result.path,
+              result.extractorName,
+              result.getMegabytesPerSecond(),
+              result.getSamplesPerSecond(),
+              result.allocatedBytes,
+              result.dumpStatus));
+    }
+    return summary.toString();
+  }
+
+  private static final class Asset {
+
+    public final String path;
+    public final byte[] data;
+    @Nullable public final String dumpFile;
+
+    public Asset(String path, byte[] data, @Nullable String dumpFile) {
+      this.path = path;
+      this.data = data;
+      this.dumpFile = dumpFile;
+    }
+  }
+
+  private static final class AssetResult {
+
+    public final String path;
+    public final int length;
+
+    @Nullable public String extractorName;
+    @Nullable public String dump;
+    @Nullable public String dumpStatus;
+    @Nullable public String error;
+    public int sampleCount;
+    public long elapsedTimeNs;
+    public long allocatedBytes;
+
+    public AssetResult(String path, int length) {
+      this.path = path;
+      this.length = length;
+    }
+
+    public double getMegabytesPerSecond() {
+      return elapsedTimeNs == 0 ? 0 : length * 1000.0 / elapsedTimeNs;
+    }
+
+    public long getSamplesPerSecond() {
+      return elapsedTimeNs == 0 ? 0 : sampleCount * C.NANOS_PER_SECOND / elapsedTimeNs;
+    }
+
+    public JSONObject toJson() throws JSONException {
+      JSONObject json = new JSONObject().put("path", path).put("bytes", length);
+      if (error != null) {
+        return json.put("error", error);
+      }
+      if (extractorName == null) {
+        // No extractor sniffed the asset.
+        return json;
+      }
+      return json.put("extractor", extractorName)
+          .put("samples", sampleCount)
+          .put("elapsedNs", elapsedTimeNs)
+          .put("megabytesPerSecond", getMegabytesPerSecond())
+          .put("samplesPerSecond", getSamplesPerSecond())
+          .put("allocatedBytes", allocatedBytes)
+          .put("dump", dumpStatus);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataReader;
+
+/**
+ * A media stream that's generated as it's read, so that long streams don't need to be held in
+ * memory, and which counts the readers opened and the bytes read.
+ */
+public abstract class SyntheticStream {
+
+  public final long length;
+  public final long durationUs;
+  public int openCount;
+  public long bytesRead;
+
+  /**
+   * @param length The length of the stream, in bytes.
+   * @param durationUs The duration of the stream, in microseconds.
+   */
+  protected SyntheticStream(long length, long durationUs) {
+    this.length = length;
+    this.durationUs = durationUs;
+  }
+
+  /** Returns a reader that reads the stream from {@code position}. */
+  public final DataReader open(long position) {
+    openCount++;
+    return new DataReader() {
+      private long readPosition = position;
+
+      @Override
+      public int read(byte[] target, int offset, int length) {
+        if (readPosition == SyntheticStream.this.length) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        int bytesRead = (int) min(length, SyntheticStream.this.length - readPosition);
+        for (int i = 0; i < bytesRead; ) {
+          i += readAt(readPosition + i, target, offset + i, bytesRead - i);
+        }
+        readPosition += bytesRead;
+        SyntheticStream.this.bytesRead += bytesRead;
+        return bytesRead;
+      }
+    };
+  }
+
+  /**
+   * Reads at least one and at most {@code length} bytes of the stream from {@code position}.
+   *
+   * @param position The position to read from, which is before the end of the stream.
+   * @param target The array into which the bytes should be written.
+   * @param offset The offset in {@code target} at which the bytes should be written.
+   * @param length The maximum number of bytes to read.
+   * @return The number of bytes read.
+   */
+  protected abstract int readAt(long position, byte[] target, int offset, int length);
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mkv;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.ExtractionSession;
+import com.google.android.exoplayer2.extractor.ExtractionSession.InMemoryChunkIndexStore;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the reads and latency of preparing and seeking in long Matroska streams without cues,
+ * with and without {@link MatroskaExtractor#FLAG_ENABLE_CLUSTER_INDEXING} and a stored cluster
+ * index, and in streams whose clusters have unknown sizes. The streams are an hour long, with the
+ * cluster size of an 8 Mbps stream. Only runs when benchmarks are enabled, see {@link
+ * BenchmarkUtil}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class ClusterIndexingBenchmarkTest {
+
+  private static final int CLUSTER_COUNT = 3_600;
+  private static final int CLUSTER_SIZE = 8_000_000 / 8;
+  private static final long SEEK_TIME_US = 1_800_000_000;
+
+  private static final int FLAGS_UNINDEXED = MatroskaExtractor.FLAG_DISABLE_SEEK_FOR_CUES;
+  private static final int FLAGS_INDEXED =
+      MatroskaExtractor.FLAG_DISABLE_SEEK_FOR_CUES | MatroskaExtractor.FLAG_ENABLE_CLUSTER_INDEXING;
+
+  @Before
+  public void setUp() {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+  }
+
+  @Test
+  public void seek_inLongStreamWithoutCues() throws Exception {
+    SyntheticMatroskaStream stream =
+        new SyntheticMatroskaStream(
+            CLUSTER_COUNT,
+            CLUSTER_SIZE,
+            /* clusterSizesKnown= */ true,
+            /* durationKnown= */ true);
+    InMemoryChunkIndexStore chunkIndexStore = new InMemoryChunkIndexStore();
+    StringBuilder results =
+        new StringBuilder(
+            ExtractionSession.measureSeekWithIndexing(
+                stream,
+                SEEK_TIME_US,
+                () -> new MatroskaExtractor(FLAGS_UNINDEXED, /* chunkIndexStore= */ null),
+                () -> new MatroskaExtractor(FLAGS_INDEXED, chunkIndexStore)));
+
+    SyntheticMatroskaStream streamWithUnknownClusterSizes =
+        new SyntheticMatroskaStream(
+            CLUSTER_COUNT,
+            CLUSTER_SIZE,
+            /* clusterSizesKnown= */ false,
+            /* durationKnown= */ true);
+    ExtractionSession session =
+        new ExtractionSession(
+            streamWithUnknownClusterSizes,
+            () -> new MatroskaExtractor(FLAGS_INDEXED, new InMemoryChunkIndexStore()));
+    session.prepare();
+    results.append(" unknown cluster sizes: prepare [").append(session);
+    session.seekTo(SEEK_TIME_US);
+    results.append("] seek [").append(session).append(']');
+
+    BenchmarkUtil.report("ClusterIndexing", results.toString());
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mkv;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.ExtractionSession;
+import com.google.android.exoplayer2.extractor.ExtractionSession.InMemoryChunkIndexStore;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests {@link MatroskaExtractor#FLAG_ENABLE_CLUSTER_INDEXING}. */
+@RunWith(AndroidJUnit4.class)
+public final class MatroskaExtractorClusterIndexingTest {
+
+  private static final int CLUSTER_COUNT = 200;
+  private static final int CLUSTER_SIZE = 100_000;
+  private static final long CLUSTER_DURATION_US =
+      SyntheticMatroskaStream.CLUSTER_DURATION_MS * 1_000;
+  private static final int FLAGS =
+      MatroskaExtractor.FLAG_DISABLE_SEEK_FOR_CUES | MatroskaExtractor.FLAG_ENABLE_CLUSTER_INDEXING;
+
+  private SyntheticMatroskaStream stream;
+  private InMemoryChunkIndexStore chunkIndexStore;
+
+  @Before
+  public void setUp() {
+    stream = createStream(/* clusterSizesKnown= */ true, /* durationKnown= */ true);
+    chunkIndexStore = new InMemoryChunkIndexStore();
+  }
+
+  @Test
+  public void prepare_readsFirstClusterOnly() throws Exception {
+    ExtractionSession session = createSession(stream);
+
+    session.prepare();
+
+    SeekMap seekMap = session.seekMap;
+    assertThat(seekMap.isSeekable()).isTrue();
+    assertThat(seekMap).isNotInstanceOf(ChunkIndex.class);
+    assertThat(seekMap.getDurationUs()).isEqualTo(stream.durationUs);
+    assertThat(session.firstSampleTimeUs).isEqualTo(0);
+    assertThat(session.openCount).isEqualTo(1);
+    assertThat(session.bytesRead).isAtMost(stream.getClusterPosition(/* clusterIndex= */ 1));
+    assertThat(chunkIndexStore.putCount).isEqualTo(0);
+  }
+
+  @Test
+  public void seekTo_beforeIndexing_startsFromClusterContainingTarget() throws Exception {
+    ExtractionSession session = createSession(stream);
+    session.prepare();
+    long targetTimeUs = stream.durationUs * 3 / 5 + CLUSTER_DURATION_US / 2;
+
+    session.seekTo(targetTimeUs);
+
+    assertThat(session.firstSampleTimeUs).isAtMost(targetTimeUs);
+    assertThat(session.firstSampleTimeUs).isGreaterThan(targetTimeUs - CLUSTER_DURATION_US);
+    // The search reads much less than the media before the target.
+    assertThat(session.bytesRead).isLessThan(stream.length / 5);
+  }
+
+  @Test
+  public void readToEnd_outputsAndStoresIndexOfEveryCluster() throws Exception {
+    ExtractionSession session = createSession(stream);
+    session.prepare();
+
+    session.readToEnd();
+
+    assertThat(session.seekMap).isInstanceOf(ChunkIndex.class);
+    ChunkIndex chunkIndex = (ChunkIndex) session.seekMap;
+    assertThat(chunkIndex.length).isEqualTo(CLUSTER_COUNT);
+    for (int i = 0; i < CLUSTER_COUNT; i++) {
+      assertThat(chunkIndex.offsets[i]).isEqualTo(stream.getClusterPosition(i));
+      assertThat(chunkIndex.sizes[i]).isEqualTo(CLUSTER_SIZE);
+      assertThat(chunkIndex.timesUs[i]).isEqualTo(i * CLUSTER_DURATION_US);
+    }
+    assertThat(chunkIndex.getDurationUs()).isEqualTo(stream.durationUs);
+    assertThat(chunkIndexStore.putCount).isEqualTo(1);
+    assertThat(chunkIndexStore.getChunkIndex(stream.length)).isSameInstanceAs(chunkIndex);
+  }
+
+  @Test
+  public void readToEnd_afterSeekBack_completesIndex() throws Exception {
+    ExtractionSession session = createSession(stream);
+    session.prepare();
+    session.seekTo(stream.durationUs / 2);
+    session.seekTo(/* timeUs= */ 0);
+
+    session.readToEnd();
+
+    assertThat(session.seekMap).isInstanceOf(ChunkIndex.class);
+    assertThat(((ChunkIndex) session.seekMap).length).isEqualTo(CLUSTER_COUNT);
+  }
+
+  @Test
+  public void readToEnd_afterSeekForward_doesNotOutputIndex() throws Exception {
+    ExtractionSession session = createSession(stream);
+    session.prepare();
+    session.seekTo(stream.durationUs / 2);
+
+    session.readToEnd();
+
+    assertThat(session.seekMap).isNotInstanceOf(ChunkIndex.class);
+    assertThat(chunkIndexStore.putCount).isEqualTo(0);
+  }
+
+  @Test
+  public void prepare_withStoredIndex_outputsIndexWithoutSeeking() throws Exception {
+    ExtractionSession firstSession = createSession(stream);
+    firstSession.prepare();
+    firstSession.readToEnd();
+    ExtractionSession session = createSession(stream);
+
+    session.prepare();
+    long targetTimeUs = stream.durationUs / 3;
+    session.seekTo(targetTimeUs);
+
+    assertThat(session.seekMapCount).isEqualTo(1);
+    assertThat(session.seekMap).isSameInstanceAs(firstSession.seekMap);
+    assertThat(session.openCount).isEqualTo(1);
+    assertThat(session.firstSampleTimeUs).isAtMost(targetTimeUs);
+    assertThat(session.firstSampleTimeUs).isGreaterThan(targetTimeUs - CLUSTER_DURATION_US);
+  }
+
+  @Test
+  public void seekTo_withUnknownClusterSizes_startsFromClusterContainingTarget() throws Exception {
+    stream = createStream(/* clusterSizesKnown= */ false, /* durationKnown= */ true);
+    ExtractionSession session = createSession(stream);
+    session.prepare();
+    long targetTimeUs = stream.durationUs / 4 + CLUSTER_DURATION_US / 2;
+
+    session.seekTo(targetTimeUs);
+    session.seekTo(/* timeUs= */ 0);
+    session.readToEnd();
+
+    assertThat(session.seekMap).isInstanceOf(ChunkIndex.class);
+    assertThat(((ChunkIndex) session.seekMap).length).isEqualTo(CLUSTER_COUNT);
+    session.seekTo(targetTimeUs);
+    assertThat(session.firstSampleTimeUs).isAtMost(targetTimeUs);
+    assertThat(session.firstSampleTimeUs).isGreaterThan(targetTimeUs - CLUSTER_DURATION_US);
+  }
+
+  @Test
+  public void prepare_withoutDuration_outputsUnseekableSeekMapUntilIndexed() throws Exception {
+    stream = createStream(/* clusterSizesKnown= */ true, /* durationKnown= */ false);
+    ExtractionSession session = createSession(stream);
+
+    session.prepare();
+
+    assertThat(session.seekMap.isSeekable()).isFalse();
+    assertThat(session.seekMap.getDurationUs()).isEqualTo(C.TIME_UNSET);
+    assertThat(session.openCount).isEqualTo(1);
+
+    session.readToEnd();
+
+    assertThat(session.seekMap).isInstanceOf(ChunkIndex.class);
+    ChunkIndex chunkIndex = (ChunkIndex) session.seekMap;
+    assertThat(chunkIndex.length).isEqualTo(CLUSTER_COUNT);
+    // The last cluster is assumed to be as long as the one before it.
+    assertThat(chunkIndex.getDurationUs()).isEqualTo(stream.durationUs);
+  }
+
+  @Test
+  public void prepare_withoutFlag_outputsUnseekableSeekMap() throws Exception {
+    ExtractionSession session =
+        new ExtractionSession(
+            stream,
+            () ->
+                new MatroskaExtractor(
+                    MatroskaExtractor.FLAG_DISABLE_SEEK_FOR_CUES, chunkIndexStore));
+
+    session.prepare();
+    session.readToEnd();
+
+    assertThat(session.seekMap.isSeekable()).isFalse();
+    assertThat(chunkIndexStore.putCount).isEqualTo(0);
+  }
+
+  private static SyntheticMatroskaStream createStream(
+      boolean clusterSizesKnown, boolean durationKnown) {
+    return new SyntheticMatroskaStream(
+        CLUSTER_COUNT, CLUSTER_SIZE, clusterSizesKnown, durationKnown);
+  }
+
+  private ExtractionSession createSession(SyntheticMatroskaStream stream) {
+    return new ExtractionSession(stream, () -> new MatroskaExtractor(FLAGS, chunkIndexStore));
+  }
+}
@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.extractor.mkv;
 
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
+import com.google.android.exoplayer2.testutil.ExtractorAsserts.AssertionConfig;
 import com.google.common.collect.ImmutableList;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -40,6 +41,20 @@ public final class MatroskaExtractorTest {
         MatroskaExtractor::new, "media/mkv/sample.mkv", simulationConfig);
   }
 
+  @Test
+  public void mkvSample_withClusterIndexing() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        () ->
+            new MatroskaExtractor(
+                MatroskaExtractor.FLAG_DISABLE_SEEK_FOR_CUES
+                    | MatroskaExtractor.FLAG_ENABLE_CLUSTER_INDEXING),
+        "media/mkv/sample.mkv",
+        new AssertionConfig.Builder()
+            .setDumpFilesPrefix("extractordumps/mkv/sample.mkv_cluster_indexed")
+            .build(),
+        simulationConfig);
+  }
+
   @Test
   public void mkvSample_withSubripSubtitles() throws Exception {
     ExtractorAsserts.assertBehavior(
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mkv;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.extractor.SyntheticStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * A Matroska stream without cues, with a single PCM audio track, made of a header followed by one
+ * second clusters that each contain a timecode and a single block whose data is zeros.
+ */
+/* package */ final class SyntheticMatroskaStream extends SyntheticStream {
+
+  /** The duration of each cluster, in milliseconds. */
+  public static final long CLUSTER_DURATION_MS = 1_000;
+
+  private static final int ID_EBML = 0x1A45DFA3;
+  private static final int ID_DOC_TYPE = 0x4282;
+  private static final int ID_SEGMENT = 0x18538067;
+  private static final int ID_INFO = 0x1549A966;
+  private static final int ID_TIMECODE_SCALE = 0x2AD7B1;
+  private static final int ID_DURATION = 0x4489;
+  private static final int ID_TRACKS = 0x1654AE6B;
+  private static final int ID_TRACK_ENTRY = 0xAE;
+  private static final int ID_TRACK_NUMBER = 0xD7;
+  private static final int ID_CODEC_ID = 0x86;
+  private static final int ID_AUDIO = 0xE1;
+  private static final int ID_CHANNELS = 0x9F;
+  private static final int ID_SAMPLING_FREQUENCY = 0xB5;
+  private static final int ID_AUDIO_BIT_DEPTH = 0x6264;
+  private static final int ID_CLUSTER = 0x1F43B675;
+  private static final int ID_TIME_CODE = 0xE7;
+  private static final int ID_SIMPLE_BLOCK = 0xA3;
+
+  private static final int SIZE_LENGTH = 8;
+  private static final long UNKNOWN_SIZE = (1L << (7 * SIZE_LENGTH)) - 1;
+  private static final int TIME_CODE_SIZE = 4;
+  private static final int SIMPLE_BLOCK_HEADER_SIZE = 4;
+
+  public final int clusterSize;
+
+  private final byte[] header;
+  private final byte[] clusterHeader;
+  private final int timecodeOffset;
+
+  /**
+   * Creates an instance.
+   *
+   * @param clusterCount The number of clusters.
+   * @param clusterSize The size of each cluster, in bytes.
+   * @param clusterSizesKnown Whether the sizes of the clusters are written, rather than unknown.
+   * @param durationKnown Whether the duration of the segment is written.
+   */
+  public SyntheticMatroskaStream(
+      int clusterCount, int clusterSize, boolean clusterSizesKnown, boolean durationKnown) {
+    this(
+        createHeader(clusterCount, clusterSize, durationKnown),
+        clusterCount,
+        clusterSize,
+        clusterSizesKnown);
+  }
+
+  private SyntheticMatroskaStream(
+      byte[] header, int clusterCount, int clusterSize, boolean clusterSizesKnown) {
+    super(
+        /* length= */ header.length + (long) clusterSize * clusterCount,
+        /* durationUs= */ clusterCount * CLUSTER_DURATION_MS * 1_000);
+    this.header = header;
+    this.clusterSize = clusterSize;
+    int clusterContentSize = clusterSize - 4 - SIZE_LENGTH;
+    int blockSize = clusterContentSize - (1 + SIZE_LENGTH + TIME_CODE_SIZE) - (1 + SIZE_LENGTH);
+    clusterHeader =
+        concat(
+            id(ID_CLUSTER),
+            uint(
+                (clusterSizesKnown ? clusterContentSize : UNKNOWN_SIZE)
+                    | (1L << (7 * SIZE_LENGTH)),
+                SIZE_LENGTH),
+            element(ID_TIME_CODE, new byte[TIME_CODE_SIZE]),
+            id(ID_SIMPLE_BLOCK),
+            uint(blockSize | (1L << (7 * SIZE_LENGTH)), SIZE_LENGTH),
+            // The track number, the relative timecode and the keyframe flag.
+            new byte[] {(byte) 0x81, 0, 0, (byte) 0x80});
+    timecodeOffset = 4 + SIZE_LENGTH + 1 + SIZE_LENGTH;
+  }
+
+  /** Returns the position of the cluster with the specified index. */
+  public long getClusterPosition(int clusterIndex) {
+    return header.length + (long) clusterSize * clusterIndex;
+  }
+
+  @Override
+  protected int readAt(long position, byte[] target, int offset, int length) {
+    if (position < header.length) {
+      int bytesRead = (int) min(length, header.length - position);
+      System.arraycopy(header, (int) position, target, offset, bytesRead);
+      return bytesRead;
+    }
+    int clusterIndex = (int) ((position - header.length) / clusterSize);
+    int clusterOffset = (int) ((position - header.length) % clusterSize);
+    int bytesRead = min(length, clusterSize - clusterOffset);
+    if (clusterOffset >= clusterHeader.length) {
+      Arrays.fill(target, offset, offset + bytesRead, (byte) 0);
+      return bytesRead;
+    }
+    bytesRead = min(bytesRead, clusterHeader.length - clusterOffset);
+    byte[] timecode = uint(clusterIndex * CLUSTER_DURATION_MS, TIME_CODE_SIZE);
+    System.arraycopy(timecode, 0, clusterHeader, timecodeOffset, TIME_CODE_SIZE);
+    System.arraycopy(clusterHeader, clusterOffset, target, offset, bytesRead);
+    return bytesRead;
+  }
+
+  private static byte[] createHeader(int clusterCount, int clusterSize, boolean durationKnown) {
+    byte[] timecodeScale =
+        element(ID_TIMECODE_SCALE, uint(/* value= */ 1_000_000, /* length= */ 3));
+    byte[] info =
+        durationKnown
+            ? concat(
+                timecodeScale,
+                element(
+                    ID_DURATION,
+                    uint(
+                        Double.doubleToLongBits(clusterCount * CLUSTER_DURATION_MS),
+                        /* length= */ 8)))
+            : timecodeScale;
+    byte[] audio =
+        concat(
+            element(ID_CHANNELS, uint(/* value= */ 2, /* length= */ 1)),
+            element(
+                ID_SAMPLING_FREQUENCY,
+                uint(Double.doubleToLongBits(48_000), /* length= */ 8)),
+            element(ID_AUDIO_BIT_DEPTH, uint(/* value= */ 16, /* length= */ 1)));
+    byte[] trackEntry =
+        concat(
+            element(ID_TRACK_NUMBER, uint(/* value= */ 1, /* length= */ 1)),
+            element(ID_CODEC_ID, "A_PCM/INT/LIT".getBytes()),
+            element(ID_AUDIO, audio));
+    byte[] segmentChildren =
+        concat(element(ID_INFO, info), element(ID_TRACKS, element(ID_TRACK_ENTRY, trackEntry)));
+    long segmentSize = segmentChildren.length + (long) clusterSize * clusterCount;
+    return concat(
+        element(ID_EBML, element(ID_DOC_TYPE, "matroska".getBytes())),
+        id(ID_SEGMENT),
+        uint(segmentSize | (1L << (7 * SIZE_LENGTH)), SIZE_LENGTH),
+        segmentChildren);
+  }
+
+  private static byte[] element(int id, byte[] content) {
+    return concat(id(id), uint(content.length | (1L << (7 * SIZE_LENGTH)), SIZE_LENGTH), content);
+  }
+
+  private static byte[] id(int id) {
+    int length = (id & 0xFF000000) != 0 ? 4 : (id & 0xFF0000) != 0 ? 3 : (id & 0xFF00) != 0 ? 2 : 1;
+    return uint(id, length);
+  }
+
+  private static byte[] uint(long value, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = length - 1; i >= 0; i--) {
+      bytes[i] = (byte) value;
+      value >>= 8;
+    }
+    return bytes;
+  }
+
+  private static byte[] concat(byte[]... arrays) {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    for (byte[] array : arrays) {
+      outputStream.write(array, /* off= */ 0, array.length);
+    }
+    return outputStream.toByteArray();
+  }
+}
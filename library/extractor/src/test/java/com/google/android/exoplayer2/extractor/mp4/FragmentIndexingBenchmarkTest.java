@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.ExtractionSession;
+import com.google.android.exoplayer2.extractor.ExtractionSession.InMemoryChunkIndexStore;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the reads and latency of preparing and seeking in a long fragmented MP4 stream without
+ * a sidx box, with and without {@link FragmentedMp4Extractor#FLAG_ENABLE_FRAGMENT_INDEXING} and a
+ * stored fragment index. The stream is an hour long, with the fragment size of an 8 Mbps stream.
+ * Only runs when benchmarks are enabled, see {@link BenchmarkUtil}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class FragmentIndexingBenchmarkTest {
+
+  private static final int FRAGMENT_COUNT = 7_200;
+  private static final int FRAGMENT_SIZE = 8_000_000 / 8 / 2;
+  private static final long SEEK_TIME_US = 1_800_000_000;
+
+  @Before
+  public void setUp() {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+  }
+
+  @Test
+  public void seek_inLongStreamWithoutSidx() throws Exception {
+    SyntheticFragmentedMp4Stream stream =
+        new SyntheticFragmentedMp4Stream(FRAGMENT_COUNT, FRAGMENT_SIZE);
+    InMemoryChunkIndexStore chunkIndexStore = new InMemoryChunkIndexStore();
+
+    String results =
+        ExtractionSession.measureSeekWithIndexing(
+            stream,
+            SEEK_TIME_US,
+            () ->
+                FragmentedMp4ExtractorFragmentIndexingTest.createExtractor(
+                    /* flags= */ 0, /* chunkIndexStore= */ null),
+            () ->
+                FragmentedMp4ExtractorFragmentIndexingTest.createExtractor(
+                    FragmentedMp4Extractor.FLAG_ENABLE_FRAGMENT_INDEXING, chunkIndexStore));
+
+    BenchmarkUtil.report("FragmentIndexing", results);
+  }
+}
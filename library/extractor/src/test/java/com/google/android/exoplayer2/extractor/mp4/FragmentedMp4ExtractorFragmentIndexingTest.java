@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.android.exoplayer2.extractor.mp4.SyntheticFragmentedMp4Stream.FRAGMENT_DURATION_US;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.ChunkIndexStore;
+import com.google.android.exoplayer2.extractor.ExtractionSession;
+import com.google.android.exoplayer2.extractor.ExtractionSession.InMemoryChunkIndexStore;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests {@link FragmentedMp4Extractor#FLAG_ENABLE_FRAGMENT_INDEXING}. */
+@RunWith(AndroidJUnit4.class)
+public final class FragmentedMp4ExtractorFragmentIndexingTest {
+
+  private static final int FRAGMENT_COUNT = 200;
+  private static final int FRAGMENT_SIZE = 100_000;
+
+  private SyntheticFragmentedMp4Stream stream;
+  private InMemoryChunkIndexStore chunkIndexStore;
+
+  @Before
+  public void setUp() throws Exception {
+    stream = new SyntheticFragmentedMp4Stream(FRAGMENT_COUNT, FRAGMENT_SIZE);
+    chunkIndexStore = new InMemoryChunkIndexStore();
+  }
+
+  @Test
+  public void prepare_readsFirstFragmentAndEndOfStreamOnly() throws Exception {
+    ExtractionSession session = createSession();
+
+    session.prepare();
+
+    SeekMap seekMap = session.seekMap;
+    assertThat(seekMap.isSeekable()).isTrue();
+    assertThat(seekMap).isNotInstanceOf(ChunkIndex.class);
+    assertThat(seekMap.getDurationUs()).isEqualTo(stream.durationUs);
+    assertThat(session.firstSampleTimeUs).isEqualTo(0);
+    // The first fragment is read once to start extraction and once after the end of the stream is
+    // searched for its duration, which reads at most a few hundred kilobytes.
+    assertThat(session.openCount).isAtMost(3);
+    assertThat(session.bytesRead).isLessThan(2L * FRAGMENT_SIZE + 512 * 1024);
+    assertThat(chunkIndexStore.putCount).isEqualTo(0);
+  }
+
+  @Test
+  public void seekTo_beforeIndexing_startsFromFragmentContainingTarget() throws Exception {
+    ExtractionSession session = createSession();
+    session.prepare();
+    long targetTimeUs = stream.durationUs * 3 / 5 + FRAGMENT_DURATION_US / 2;
+
+    session.seekTo(targetTimeUs);
+
+    assertThat(session.firstSampleTimeUs).isAtMost(targetTimeUs);
+    assertThat(session.firstSampleTimeUs).isGreaterThan(targetTimeUs - FRAGMENT_DURATION_US);
+    // The search reads much less than the media before the target.
+    assertThat(session.bytesRead).isLessThan(stream.length / 5);
+  }
+
+  @Test
+  public void restart_readsFromStartWithoutSearching() throws Exception {
+    ExtractionSession session = createSession();
+    session.prepare();
+
+    session.restart();
+
+    assertThat(session.firstSampleTimeUs).isEqualTo(0);
+    assertThat(session.openCount).isEqualTo(1);
+  }
+
+  @Test
+  public void readToEnd_outputsAndStoresIndexOfEveryFragment() throws Exception {
+    ExtractionSession session = createSession();
+    session.prepare();
+
+    session.readToEnd();
+
+    assertThat(session.seekMap).isInstanceOf(ChunkIndex.class);
+    ChunkIndex chunkIndex = (ChunkIndex) session.seekMap;
+    assertThat(chunkIndex.length).isEqualTo(FRAGMENT_COUNT);
+    for (int i = 0; i < FRAGMENT_COUNT; i++) {
+      assertThat(chunkIndex.offsets[i]).isEqualTo(stream.getFragmentPosition(i));
+      assertThat(chunkIndex.sizes[i]).isEqualTo(FRAGMENT_SIZE);
+      assertThat(chunkIndex.timesUs[i]).isEqualTo(i * FRAGMENT_DURATION_US);
+    }
+    assertThat(chunkIndex.getDurationUs()).isEqualTo(stream.durationUs);
+    assertThat(chunkIndexStore.putCount).isEqualTo(1);
+    assertThat(chunkIndexStore.getChunkIndex(stream.length)).isSameInstanceAs(chunkIndex);
+  }
+
+  @Test
+  public void readToEnd_afterSeekBack_completesIndex() throws Exception {
+    ExtractionSession session = createSession();
+    session.prepare();
+    session.seekTo(stream.durationUs / 2);
+    session.seekTo(/* timeUs= */ 0);
+
+    session.readToEnd();
+
+    assertThat(session.seekMap).isInstanceOf(ChunkIndex.class);
+    assertThat(((ChunkIndex) session.seekMap).length).isEqualTo(FRAGMENT_COUNT);
+  }
+
+  @Test
+  public void readToEnd_afterSeekForward_doesNotOutputIndex() throws Exception {
+    ExtractionSession session = createSession();
+    session.prepare();
+    session.seekTo(stream.durationUs / 2);
+
+    session.readToEnd();
+
+    assertThat(session.seekMap).isNotInstanceOf(ChunkIndex.class);
+    assertThat(chunkIndexStore.putCount).isEqualTo(0);
+  }
+
+  @Test
+  public void prepare_withStoredIndex_outputsIndexWithoutSeeking() throws Exception {
+    ExtractionSession firstSession = createSession();
+    firstSession.prepare();
+    firstSession.readToEnd();
+    ExtractionSession session = createSession();
+
+    session.prepare();
+    long targetTimeUs = stream.durationUs / 3;
+    session.seekTo(targetTimeUs);
+
+    assertThat(session.seekMapCount).isEqualTo(1);
+    assertThat(session.seekMap).isSameInstanceAs(firstSession.seekMap);
+    assertThat(session.openCount).isEqualTo(1);
+    assertThat(session.firstSampleTimeUs).isAtMost(targetTimeUs);
+    assertThat(session.firstSampleTimeUs).isGreaterThan(targetTimeUs - FRAGMENT_DURATION_US);
+  }
+
+  @Test
+  public void prepare_withoutFlag_outputsUnseekableSeekMap() throws Exception {
+    ExtractionSession session =
+        new ExtractionSession(stream, () -> createExtractor(/* flags= */ 0, chunkIndexStore));
+
+    session.prepare();
+
+    assertThat(session.seekMap.isSeekable()).isFalse();
+    assertThat(session.openCount).isEqualTo(1);
+  }
+
+  private ExtractionSession createSession() {
+    return new ExtractionSession(
+        stream,
+        () ->
+            createExtractor(FragmentedMp4Extractor.FLAG_ENABLE_FRAGMENT_INDEXING, chunkIndexStore));
+  }
+
+  /* package */ static FragmentedMp4Extractor createExtractor(
+      @FragmentedMp4Extractor.Flags int flags, @Nullable ChunkIndexStore chunkIndexStore) {
+    return new FragmentedMp4Extractor(
+        flags,
+        /* timestampAdjuster= */ null,
+        /* sideloadedTrack= */ null,
+        /* closedCaptionFormats= */ ImmutableList.of(),
+        /* additionalEmsgTrackOutput= */ null,
+        chunkIndexStore);
+  }
+}
@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.extractor.mp4;
 
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
+import com.google.android.exoplayer2.testutil.ExtractorAsserts.AssertionConfig;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts.ExtractorFactory;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.common.collect.ImmutableList;
@@ -114,6 +115,22 @@ public final class FragmentedMp4ExtractorTest {
         simulationConfig);
   }
 
+  @Test
+  public void sampleWithOpusTrack_withFragmentIndexing() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        () ->
+            new FragmentedMp4Extractor(
+                FragmentedMp4Extractor.FLAG_ENABLE_FRAGMENT_INDEXING,
+                /* timestampAdjuster= */ null,
+                /* sideloadedTrack= */ null,
+                /* closedCaptionFormats= */ ImmutableList.of()),
+        "media/mp4/sample_opus_fragmented.mp4",
+        new AssertionConfig.Builder()
+            .setDumpFilesPrefix("extractordumps/mp4/sample_opus_fragmented_indexed.mp4")
+            .build(),
+        simulationConfig);
+  }
+
   @Test
   public void samplePartiallyFragmented() throws Exception {
     ExtractorAsserts.assertBehavior(
@@ -84,4 +84,28 @@ public final class Mp4ExtractorTest {
     ExtractorAsserts.assertBehavior(
         Mp4Extractor::new, "media/mp4/sample_opus.mp4", simulationConfig);
   }
+
+  @Test
+  public void mp4Sample_withLazySampleTables() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        () -> new Mp4Extractor(Mp4Extractor.FLAG_LAZY_SAMPLE_TABLES),
+        "media/mp4/sample.mp4",
+        simulationConfig);
+  }
+
+  @Test
+  public void mp4SampleWithAc3Track_withLazySampleTables() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        () -> new Mp4Extractor(Mp4Extractor.FLAG_LAZY_SAMPLE_TABLES),
+        "media/mp4/sample_ac3.mp4",
+        simulationConfig);
+  }
+
+  @Test
+  public void mp4SampleWithOpusTrack_withLazySampleTables() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        () -> new Mp4Extractor(Mp4Extractor.FLAG_LAZY_SAMPLE_TABLES),
+        "media/mp4/sample_opus.mp4",
+        simulationConfig);
+  }
 }
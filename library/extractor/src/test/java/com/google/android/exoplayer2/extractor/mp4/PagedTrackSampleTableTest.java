@@ -0,0 +1,602 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.GaplessInfoHolder;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.FakeTrackOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link PagedTrackSampleTable}. */
+@RunWith(AndroidJUnit4.class)
+public final class PagedTrackSampleTableTest {
+
+  private static final String[] FILES = {
+    "media/mp4/sample.mp4",
+    "media/mp4/sample_ac3.mp4",
+    "media/mp4/sample_ac4.mp4",
+    "media/mp4/sample_opus.mp4",
+    "media/mp4/sample_android_slow_motion.mp4"
+  };
+  private static final int PAGE_SAMPLE_COUNT = 7;
+
+  private static final int DURATION_SECONDS = 10 * 60 * 60;
+  private static final int VIDEO_TIMESCALE = 30_000;
+  private static final int VIDEO_SAMPLES_PER_SECOND = 30;
+  private static final int VIDEO_SAMPLE_DURATION = VIDEO_TIMESCALE / VIDEO_SAMPLES_PER_SECOND;
+  private static final int VIDEO_SAMPLES_PER_SYNCHRONIZATION_SAMPLE = 60;
+  private static final int AUDIO_TIMESCALE = 48_000;
+  private static final int AUDIO_SAMPLE_DURATION = 1024;
+  private static final int AUDIO_SAMPLES_PER_CHUNK = 47;
+  /** The movie timescale of the mvhd box that's copied from the test asset. */
+  private static final int MOVIE_TIMESCALE = 1000;
+  private static final int MVHD_DURATION_OFFSET = Atom.FULL_HEADER_SIZE + 12;
+  private static final int TKHD_DURATION_OFFSET = Atom.FULL_HEADER_SIZE + 16;
+
+  @Test
+  public void parsePagedTraks_matchesExpandedSampleTables() throws IOException {
+    for (String file : FILES) {
+      byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), file);
+      GaplessInfoHolder gaplessInfoHolder = new GaplessInfoHolder();
+      List<TrackSampleTable> trackSampleTables =
+          AtomParsers.parseTraks(
+              parseMoov(data),
+              gaplessInfoHolder,
+              /* duration= */ C.TIME_UNSET,
+              /* drmInitData= */ null,
+              /* ignoreEditLists= */ false,
+              /* isQuickTime= */ false,
+              /* modifyTrackFunction= */ track -> track);
+      GaplessInfoHolder pagedGaplessInfoHolder = new GaplessInfoHolder();
+      @Nullable
+      List<PagedTrackSampleTable> pagedTrackSampleTables =
+          AtomParsers.parsePagedTraks(
+              parseMoov(data),
+              pagedGaplessInfoHolder,
+              /* ignoreEditLists= */ false,
+              /* isQuickTime= */ false,
+              PAGE_SAMPLE_COUNT);
+
+      assertWithMessage(file).that(pagedTrackSampleTables).isNotNull();
+      assertThat(pagedTrackSampleTables).hasSize(trackSampleTables.size());
+      assertThat(pagedGaplessInfoHolder.encoderDelay).isEqualTo(gaplessInfoHolder.encoderDelay);
+      assertThat(pagedGaplessInfoHolder.encoderPadding)
+          .isEqualTo(gaplessInfoHolder.encoderPadding);
+      for (int i = 0; i < trackSampleTables.size(); i++) {
+        assertSampleTablesEqual(pagedTrackSampleTables.get(i), trackSampleTables.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void parsePagedTraks_withLongFile_matchesExpandedSampleTables() throws IOException {
+    byte[] data = buildLongFile(/* durationSeconds= */ 600);
+    List<TrackSampleTable> trackSampleTables =
+        AtomParsers.parseTraks(
+            parseMoov(data),
+            new GaplessInfoHolder(),
+            /* duration= */ C.TIME_UNSET,
+            /* drmInitData= */ null,
+            /* ignoreEditLists= */ false,
+            /* isQuickTime= */ false,
+            /* modifyTrackFunction= */ track -> track);
+    @Nullable
+    List<PagedTrackSampleTable> pagedTrackSampleTables =
+        AtomParsers.parsePagedTraks(
+            parseMoov(data),
+            new GaplessInfoHolder(),
+            /* ignoreEditLists= */ false,
+            /* isQuickTime= */ false,
+            PagedTrackSampleTable.DEFAULT_PAGE_SAMPLE_COUNT);
+
+    assertThat(pagedTrackSampleTables).isNotNull();
+    assertThat(pagedTrackSampleTables).hasSize(2);
+    for (int i = 0; i < trackSampleTables.size(); i++) {
+      assertSampleTablesEqual(pagedTrackSampleTables.get(i), trackSampleTables.get(i));
+    }
+  }
+
+  @Test
+  public void getSampleCountBefore_returnsCountOfEarlierSamples() throws IOException {
+    byte[] data = buildLongFile(/* durationSeconds= */ 60);
+    PagedTrackSampleTable audioSampleTable =
+        AtomParsers.parsePagedTraks(
+                parseMoov(data),
+                new GaplessInfoHolder(),
+                /* ignoreEditLists= */ false,
+                /* isQuickTime= */ false,
+                PAGE_SAMPLE_COUNT)
+            .get(1);
+
+    long sampleDurationUs = C.MICROS_PER_SECOND * AUDIO_SAMPLE_DURATION / AUDIO_TIMESCALE;
+    assertThat(audioSampleTable.getSampleCountBefore(/* timeUs= */ -1)).isEqualTo(0);
+    assertThat(audioSampleTable.getSampleCountBefore(/* timeUs= */ 0)).isEqualTo(0);
+    assertThat(audioSampleTable.getSampleCountBefore(/* timeUs= */ 1)).isEqualTo(1);
+    assertThat(audioSampleTable.getSampleCountBefore(100 * sampleDurationUs)).isEqualTo(100);
+    assertThat(audioSampleTable.getSampleCountBefore(Long.MAX_VALUE))
+        .isEqualTo(audioSampleTable.getSampleCount());
+  }
+
+  @Test
+  public void read_withLongFile_matchesExpandedSampleTables() throws IOException {
+    byte[] data = buildLongFile(/* durationSeconds= */ 600);
+    ExtractionResult expandedResult = extractFirstSample(data, /* flags= */ 0);
+    ExtractionResult pagedResult =
+        extractFirstSample(data, Mp4Extractor.FLAG_LAZY_SAMPLE_TABLES);
+
+    assertThat(pagedResult.firstSampleTimeUs).isEqualTo(expandedResult.firstSampleTimeUs);
+    assertThat(pagedResult.durationUs).isEqualTo(expandedResult.durationUs);
+    assertThat(pagedResult.seekPoints).isEqualTo(expandedResult.seekPoints);
+  }
+
+  @Test
+  public void read_withLongFile_outputsSamplesAndSeeksAsExpandedSampleTables()
+      throws IOException {
+    byte[] data = buildLongFile(/* durationSeconds= */ 20, /* chunkCount= */ 20);
+    List<Long> expandedSeekPositions = new ArrayList<>();
+    FakeExtractorOutput expandedOutput =
+        extractAllSamples(data, /* flags= */ 0, expandedSeekPositions);
+    List<Long> pagedSeekPositions = new ArrayList<>();
+    FakeExtractorOutput pagedOutput =
+        extractAllSamples(data, Mp4Extractor.FLAG_LAZY_SAMPLE_TABLES, pagedSeekPositions);
+
+    assertThat(pagedSeekPositions).isEqualTo(expandedSeekPositions);
+    assertThat(pagedOutput.trackOutputs.size()).isEqualTo(2);
+    for (int i = 0; i < expandedOutput.trackOutputs.size(); i++) {
+      FakeTrackOutput expandedTrackOutput = expandedOutput.trackOutputs.valueAt(i);
+      FakeTrackOutput pagedTrackOutput = pagedOutput.trackOutputs.valueAt(i);
+      assertThat(pagedTrackOutput.getSampleCount()).isGreaterThan(0);
+      assertThat(pagedTrackOutput.getSampleTimesUs())
+          .isEqualTo(expandedTrackOutput.getSampleTimesUs());
+      for (int j = 0; j < expandedTrackOutput.getSampleCount(); j++) {
+        assertThat(pagedTrackOutput.getSampleFlags(j))
+            .isEqualTo(expandedTrackOutput.getSampleFlags(j));
+        assertThat(pagedTrackOutput.getSampleData(j))
+            .isEqualTo(expandedTrackOutput.getSampleData(j));
+      }
+    }
+  }
+
+  @Test
+  public void read_withTenHourFile_reportsTimeToFirstSampleAndHeapUse() throws IOException {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+    byte[] data = buildLongFile(DURATION_SECONDS);
+    ExtractionResult expandedResult = extractFirstSample(data, /* flags= */ 0);
+    ExtractionResult pagedResult =
+        extractFirstSample(data, Mp4Extractor.FLAG_LAZY_SAMPLE_TABLES);
+
+    assertThat(pagedResult.seekPoints).isEqualTo(expandedResult.seekPoints);
+    BenchmarkUtil.report(
+        "PagedTrackSampleTable",
+        String.format(
+            Locale.US,
+            "%d byte moov, expanded -> paged: time to first sample %d -> %d ms, heap %d -> %d KiB",
+            getMoovSize(data),
+            expandedResult.timeToFirstSampleMs,
+            pagedResult.timeToFirstSampleMs,
+            expandedResult.heapBytes / 1024,
+            pagedResult.heapBytes / 1024));
+  }
+
+  private static void assertSampleTablesEqual(
+      PagedTrackSampleTable pagedSampleTable, TrackSampleTable sampleTable) {
+    assertThat(pagedSampleTable.getTrack().format).isEqualTo(sampleTable.track.format);
+    assertThat(pagedSampleTable.getSampleCount()).isEqualTo(sampleTable.sampleCount);
+    assertThat(pagedSampleTable.getMaximumSize()).isEqualTo(sampleTable.maximumSize);
+    assertThat(pagedSampleTable.getDurationUs()).isEqualTo(sampleTable.durationUs);
+    long sizeOfPreviousSamples = 0;
+    for (int i = 0; i < sampleTable.sampleCount; i++) {
+      assertThat(pagedSampleTable.getOffset(i)).isEqualTo(sampleTable.offsets[i]);
+      assertThat(pagedSampleTable.getSize(i)).isEqualTo(sampleTable.sizes[i]);
+      assertThat(pagedSampleTable.getTimestampUs(i)).isEqualTo(sampleTable.timestampsUs[i]);
+      assertThat(pagedSampleTable.getFlags(i)).isEqualTo(sampleTable.flags[i]);
+      assertThat(pagedSampleTable.getSizeOfSamplesBefore(i)).isEqualTo(sizeOfPreviousSamples);
+      sizeOfPreviousSamples += sampleTable.sizes[i];
+    }
+    assertThat(pagedSampleTable.getSizeOfSamplesBefore(sampleTable.sampleCount))
+        .isEqualTo(sizeOfPreviousSamples);
+    long[] timesUs = {-1, 0, sampleTable.durationUs / 3, sampleTable.durationUs, Long.MAX_VALUE};
+    for (long timeUs : timesUs) {
+      assertSynchronizationSamplesEqual(pagedSampleTable, sampleTable, timeUs);
+    }
+    for (int i = 0; i < sampleTable.sampleCount; i += 1 + sampleTable.sampleCount / 100) {
+      long timeUs = sampleTable.timestampsUs[i];
+      assertSynchronizationSamplesEqual(pagedSampleTable, sampleTable, timeUs - 1);
+      assertSynchronizationSamplesEqual(pagedSampleTable, sampleTable, timeUs);
+      assertSynchronizationSamplesEqual(pagedSampleTable, sampleTable, timeUs + 1);
+    }
+  }
+
+  private static void assertSynchronizationSamplesEqual(
+      PagedTrackSampleTable pagedSampleTable, TrackSampleTable sampleTable, long timeUs) {
+    assertThat(pagedSampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs))
+        .isEqualTo(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(timeUs));
+    assertThat(pagedSampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs))
+        .isEqualTo(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs));
+  }
+
+  private static ExtractionResult extractFirstSample(byte[] data, int flags) throws IOException {
+    long heapBytesBefore = getUsedHeapBytes();
+    long startTimeNs = System.nanoTime();
+    Mp4Extractor extractor = new Mp4Extractor(flags);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    PositionHolder positionHolder = new PositionHolder();
+    long position = 0;
+    while (output.trackOutputs.size() == 0
+        || output.trackOutputs.valueAt(0).getSampleCount() == 0) {
+      ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+      long length =
+          dataSource.open(new DataSpec.Builder().setUri(Uri.EMPTY).setPosition(position).build());
+      ExtractorInput input = new DefaultExtractorInput(dataSource, position, position + length);
+      int result = Extractor.RESULT_CONTINUE;
+      while (result == Extractor.RESULT_CONTINUE
+          && (output.trackOutputs.size() == 0
+              || output.trackOutputs.valueAt(0).getSampleCount() == 0)) {
+        result = extractor.read(input, positionHolder);
+      }
+      if (result == Extractor.RESULT_SEEK) {
+        position = positionHolder.position;
+      }
+    }
+    ExtractionResult result = new ExtractionResult();
+    result.timeToFirstSampleMs = (System.nanoTime() - startTimeNs) / 1_000_000;
+    result.heapBytes = getUsedHeapBytes() - heapBytesBefore;
+    result.firstSampleTimeUs = output.trackOutputs.valueAt(0).getSampleTimeUs(0);
+    SeekMap seekMap = output.seekMap;
+    result.durationUs = seekMap.getDurationUs();
+    result.seekPoints = seekMap.getSeekPoints(seekMap.getDurationUs() / 2);
+    return result;
+  }
+
+  /**
+   * Extracts all samples, adding the position of each seek requested by the extractor to {@code
+   * seekPositions}.
+   */
+  private static FakeExtractorOutput extractAllSamples(
+      byte[] data, int flags, List<Long> seekPositions) throws IOException {
+    Mp4Extractor extractor = new Mp4Extractor(flags);
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    PositionHolder positionHolder = new PositionHolder();
+    long position = 0;
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      ByteArrayDataSource dataSource = new ByteArrayDataSource(data);
+      long length =
+          dataSource.open(new DataSpec.Builder().setUri(Uri.EMPTY).setPosition(position).build());
+      ExtractorInput input = new DefaultExtractorInput(dataSource, position, position + length);
+      do {
+        result = extractor.read(input, positionHolder);
+      } while (result == Extractor.RESULT_CONTINUE);
+      if (result == Extractor.RESULT_SEEK) {
+        position = positionHolder.position;
+        seekPositions.add(position);
+      }
+    }
+    return output;
+  }
+
+  private static long getUsedHeapBytes() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /** Parses the moov atom of an MP4 file, as {@link Mp4Extractor} does. */
+  private static Atom.ContainerAtom parseMoov(byte[] data) {
+    ParsableByteArray file = new ParsableByteArray(data);
+    while (file.bytesLeft() > 0) {
+      int atomPosition = file.getPosition();
+      int atomSize = file.readInt();
+      int atomType = file.readInt();
+      if (atomType == Atom.TYPE_moov) {
+        return parseContainerAtom(data, atomType, atomPosition, atomPosition + atomSize);
+      }
+      file.setPosition(atomPosition + atomSize);
+    }
+    throw new IllegalArgumentException("No moov atom");
+  }
+
+  private static Atom.ContainerAtom parseContainerAtom(
+      byte[] data, int type, int position, int endPosition) {
+    Atom.ContainerAtom containerAtom = new Atom.ContainerAtom(type, endPosition);
+    ParsableByteArray atom = new ParsableByteArray(data, endPosition);
+    atom.setPosition(position + Atom.HEADER_SIZE);
+    while (atom.bytesLeft() > 0) {
+      int childPosition = atom.getPosition();
+      int childSize = atom.readInt();
+      int childType = atom.readInt();
+      if (childType == Atom.TYPE_trak
+          || childType == Atom.TYPE_mdia
+          || childType == Atom.TYPE_minf
+          || childType == Atom.TYPE_stbl
+          || childType == Atom.TYPE_edts) {
+        containerAtom.add(
+            parseContainerAtom(data, childType, childPosition, childPosition + childSize));
+      } else {
+        byte[] childData = new byte[childSize];
+        System.arraycopy(data, childPosition, childData, 0, childSize);
+        containerAtom.add(new Atom.LeafAtom(childType, new ParsableByteArray(childData)));
+      }
+      atom.setPosition(childPosition + childSize);
+    }
+    return containerAtom;
+  }
+
+  private static int getMoovSize(byte[] data) {
+    ParsableByteArray file = new ParsableByteArray(data);
+    while (true) {
+      int atomSize = file.readInt();
+      if (file.readInt() == Atom.TYPE_moov) {
+        return atomSize;
+      }
+      file.skipBytes(atomSize - Atom.HEADER_SIZE);
+    }
+  }
+
+  /**
+   * Returns an MP4 file with an interleaved 30 fps video track with B-frames and an AAC audio
+   * track, with sample tables for the given duration. Only the start of the media data is
+   * included.
+   */
+  private static byte[] buildLongFile(int durationSeconds) throws IOException {
+    return buildLongFile(durationSeconds, /* chunkCount= */ 2);
+  }
+
+  /**
+   * Returns an MP4 file as {@link #buildLongFile(int)}, including the media data of the first
+   * {@code chunkCount} chunks of each track.
+   */
+  private static byte[] buildLongFile(int durationSeconds, int chunkCount) throws IOException {
+    byte[] sample =
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "media/mp4/sample.mp4");
+    Atom.ContainerAtom sampleMoov = parseMoov(sample);
+    Atom.ContainerAtom videoTrak = sampleMoov.containerChildren.get(0);
+    Atom.ContainerAtom audioTrak = sampleMoov.containerChildren.get(1);
+
+    int videoSampleCount = durationSeconds * VIDEO_SAMPLES_PER_SECOND;
+    int audioSampleCount = durationSeconds * AUDIO_SAMPLES_PER_CHUNK;
+    int videoChunkSize = 0;
+    int[] videoSampleSizes = new int[VIDEO_SAMPLES_PER_SECOND];
+    for (int i = 0; i < VIDEO_SAMPLES_PER_SECOND; i++) {
+      videoSampleSizes[i] = i % VIDEO_SAMPLES_PER_SYNCHRONIZATION_SAMPLE == 0 ? 5000 : 400 + i;
+      videoChunkSize += videoSampleSizes[i];
+    }
+    int audioChunkSize = 0;
+    int[] audioSampleSizes = new int[AUDIO_SAMPLES_PER_CHUNK];
+    for (int i = 0; i < AUDIO_SAMPLES_PER_CHUNK; i++) {
+      audioSampleSizes[i] = 180 + i;
+      audioChunkSize += audioSampleSizes[i];
+    }
+
+    ByteBuffer videoStsz = ByteBuffer.allocate(8 + 4 * videoSampleCount);
+    videoStsz.putInt(0).putInt(videoSampleCount);
+    for (int i = 0; i < videoSampleCount; i++) {
+      videoStsz.putInt(videoSampleSizes[i % VIDEO_SAMPLES_PER_SECOND]);
+    }
+    ByteBuffer audioStsz = ByteBuffer.allocate(8 + 4 * audioSampleCount);
+    audioStsz.putInt(0).putInt(audioSampleCount);
+    for (int i = 0; i < audioSampleCount; i++) {
+      audioStsz.putInt(audioSampleSizes[i % AUDIO_SAMPLES_PER_CHUNK]);
+    }
+    // B-frames are presented after the following frame.
+    ByteBuffer videoCtts = ByteBuffer.allocate(4 + 8 * videoSampleCount);
+    videoCtts.putInt(videoSampleCount);
+    for (int i = 0; i < videoSampleCount; i++) {
+      videoCtts.putInt(1).putInt(i % 2 == 0 ? 2 * VIDEO_SAMPLE_DURATION : 0);
+    }
+    int synchronizationSampleCount =
+        (videoSampleCount + VIDEO_SAMPLES_PER_SYNCHRONIZATION_SAMPLE - 1)
+            / VIDEO_SAMPLES_PER_SYNCHRONIZATION_SAMPLE;
+    ByteBuffer videoStss = ByteBuffer.allocate(4 + 4 * synchronizationSampleCount);
+    videoStss.putInt(synchronizationSampleCount);
+    for (int i = 0; i < videoSampleCount; i += VIDEO_SAMPLES_PER_SYNCHRONIZATION_SAMPLE) {
+      videoStss.putInt(i + 1);
+    }
+
+    // The moov size doesn't depend on the chunk offsets, so build it once to find the offset of
+    // the media data.
+    int moovSize =
+        buildMoov(
+                sampleMoov,
+                videoTrak,
+                audioTrak,
+                durationSeconds,
+                videoStsz.array(),
+                audioStsz.array(),
+                videoCtts.array(),
+                videoStss.array(),
+                new int[durationSeconds],
+                new int[durationSeconds])
+            .length;
+    byte[] ftyp = box("ftyp", Util.getUtf8Bytes("isom\0\0\0\0isom"));
+    int mdatDataOffset = ftyp.length + moovSize + Atom.HEADER_SIZE;
+    int[] videoChunkOffsets = new int[durationSeconds];
+    int[] audioChunkOffsets = new int[durationSeconds];
+    for (int i = 0; i < durationSeconds; i++) {
+      videoChunkOffsets[i] = mdatDataOffset + i * (videoChunkSize + audioChunkSize);
+      audioChunkOffsets[i] = videoChunkOffsets[i] + videoChunkSize;
+    }
+    byte[] moov =
+        buildMoov(
+            sampleMoov,
+            videoTrak,
+            audioTrak,
+            durationSeconds,
+            videoStsz.array(),
+            audioStsz.array(),
+            videoCtts.array(),
+            videoStss.array(),
+            videoChunkOffsets,
+            audioChunkOffsets);
+    ByteBuffer mdatHeader = ByteBuffer.allocate(Atom.HEADER_SIZE);
+    mdatHeader.putInt(Atom.HEADER_SIZE + durationSeconds * (videoChunkSize + audioChunkSize));
+    mdatHeader.put(Util.getUtf8Bytes("mdat"));
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    file.write(ftyp);
+    file.write(moov);
+    file.write(mdatHeader.array());
+    // Include the first chunks only.
+    file.write(new byte[chunkCount * (videoChunkSize + audioChunkSize)]);
+    return file.toByteArray();
+  }
+
+  private static byte[] buildMoov(
+      Atom.ContainerAtom sampleMoov,
+      Atom.ContainerAtom videoTrak,
+      Atom.ContainerAtom audioTrak,
+      int durationSeconds,
+      byte[] videoStsz,
+      byte[] audioStsz,
+      byte[] videoCtts,
+      byte[] videoStss,
+      int[] videoChunkOffsets,
+      int[] audioChunkOffsets)
+      throws IOException {
+    byte[] videoStbl =
+        box(
+            "stbl",
+            getStsd(videoTrak),
+            fullBox(
+                "stts",
+                intArray(1, durationSeconds * VIDEO_SAMPLES_PER_SECOND, VIDEO_SAMPLE_DURATION)),
+            fullBox("ctts", videoCtts),
+            fullBox("stss", videoStss),
+            fullBox("stsc", intArray(1, 1, VIDEO_SAMPLES_PER_SECOND, 1)),
+            fullBox("stsz", videoStsz),
+            fullBox("stco", chunkOffsets(videoChunkOffsets)));
+    byte[] audioStbl =
+        box(
+            "stbl",
+            getStsd(audioTrak),
+            fullBox(
+                "stts",
+                intArray(1, durationSeconds * AUDIO_SAMPLES_PER_CHUNK, AUDIO_SAMPLE_DURATION)),
+            fullBox("stsc", intArray(1, 1, AUDIO_SAMPLES_PER_CHUNK, 1)),
+            fullBox("stsz", audioStsz),
+            fullBox("stco", chunkOffsets(audioChunkOffsets)));
+    return box(
+        "moov",
+        withDuration(
+            getLeafData(sampleMoov, Atom.TYPE_mvhd), MVHD_DURATION_OFFSET, durationSeconds),
+        buildTrak(videoTrak, VIDEO_TIMESCALE, durationSeconds, videoStbl),
+        buildTrak(audioTrak, AUDIO_TIMESCALE, durationSeconds, audioStbl));
+  }
+
+  private static byte[] buildTrak(
+      Atom.ContainerAtom trak, int timescale, int durationSeconds, byte[] stbl)
+      throws IOException {
+    Atom.ContainerAtom mdia = trak.getContainerAtomOfType(Atom.TYPE_mdia);
+    // Version, flags, creation time, modification time, timescale, duration, language, quality.
+    byte[] mdhd = fullBox("mdhd", intArray(0, 0, timescale, 0, 0x55C40000));
+    return box(
+        "trak",
+        withDuration(getLeafData(trak, Atom.TYPE_tkhd), TKHD_DURATION_OFFSET, durationSeconds),
+        box("mdia", mdhd, getLeafData(mdia, Atom.TYPE_hdlr), box("minf", stbl)));
+  }
+
+  private static byte[] getStsd(Atom.ContainerAtom trak) {
+    return getLeafData(
+        trak.getContainerAtomOfType(Atom.TYPE_mdia)
+            .getContainerAtomOfType(Atom.TYPE_minf)
+            .getContainerAtomOfType(Atom.TYPE_stbl),
+        Atom.TYPE_stsd);
+  }
+
+  /** Returns a copy of a version 0 mvhd or tkhd box with its duration set. */
+  private static byte[] withDuration(byte[] box, int durationOffset, int durationSeconds) {
+    ByteBuffer copy = ByteBuffer.wrap(box.clone());
+    copy.putInt(durationOffset, durationSeconds * MOVIE_TIMESCALE);
+    return copy.array();
+  }
+
+  private static byte[] getLeafData(Atom.ContainerAtom containerAtom, int type) {
+    return containerAtom.getLeafAtomOfType(type).data.getData();
+  }
+
+  private static byte[] chunkOffsets(int[] chunkOffsets) {
+    ByteBuffer stco = ByteBuffer.allocate(4 + 4 * chunkOffsets.length);
+    stco.putInt(chunkOffsets.length);
+    for (int chunkOffset : chunkOffsets) {
+      stco.putInt(chunkOffset);
+    }
+    return stco.array();
+  }
+
+  private static byte[] intArray(int... values) {
+    ByteBuffer buffer = ByteBuffer.allocate(4 * values.length);
+    for (int value : values) {
+      buffer.putInt(value);
+    }
+    return buffer.array();
+  }
+
+  private static byte[] fullBox(String type, byte[] payload) throws IOException {
+    return box(type, new byte[4], payload);
+  }
+
+  private static byte[] box(String type, byte[]... payloads) throws IOException {
+    int size = Atom.HEADER_SIZE;
+    for (byte[] payload : payloads) {
+      size += payload.length;
+    }
+    ByteArrayOutputStream box = new ByteArrayOutputStream(size);
+    box.write(intArray(size));
+    box.write(Util.getUtf8Bytes(type));
+    for (byte[] payload : payloads) {
+      box.write(payload);
+    }
+    return box.toByteArray();
+  }
+
+  private static final class ExtractionResult {
+
+    public long timeToFirstSampleMs;
+    public long heapBytes;
+    public long firstSampleTimeUs;
+    public long durationUs;
+    @Nullable public SeekMap.SeekPoints seekPoints;
+  }
+}
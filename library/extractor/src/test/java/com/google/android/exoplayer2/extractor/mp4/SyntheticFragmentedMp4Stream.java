@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static java.lang.Math.min;
+
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.exoplayer2.extractor.SyntheticStream;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A fragmented MP4 stream without a sidx box, made of the header of an asset followed by copies of
+ * its first fragment with rewritten decode times, whose media data boxes are padded with zeros.
+ */
+/* package */ final class SyntheticFragmentedMp4Stream extends SyntheticStream {
+
+  /** The duration of each fragment, in microseconds. */
+  public static final long FRAGMENT_DURATION_US = 500_000;
+
+  private static final String ASSET = "media/mp4/sample_opus_fragmented.mp4";
+  private static final int HEADER_SIZE = 564;
+  private static final int FIRST_FRAGMENT_SIZE = 16_992;
+  private static final int TFDT_VALUE_OFFSET = 60;
+
+  public final int fragmentCount;
+  public final int fragmentSize;
+
+  private final byte[] header;
+  private final byte[] fragment;
+
+  /**
+   * Creates an instance.
+   *
+   * @param fragmentCount The number of fragments.
+   * @param fragmentSize The size of each fragment, in bytes.
+   */
+  public SyntheticFragmentedMp4Stream(int fragmentCount, int fragmentSize) throws IOException {
+    super(
+        /* length= */ HEADER_SIZE + (long) fragmentSize * fragmentCount,
+        /* durationUs= */ fragmentCount * FRAGMENT_DURATION_US);
+    this.fragmentCount = fragmentCount;
+    this.fragmentSize = fragmentSize;
+    byte[] asset = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), ASSET);
+    header = Arrays.copyOf(asset, HEADER_SIZE);
+    fragment = Arrays.copyOfRange(asset, HEADER_SIZE, HEADER_SIZE + FIRST_FRAGMENT_SIZE);
+    int moofSize = new ParsableByteArray(fragment).readInt();
+    putInt(fragment, moofSize, fragmentSize - moofSize);
+  }
+
+  /** Returns the position of the fragment with the specified index. */
+  public long getFragmentPosition(int fragmentIndex) {
+    return HEADER_SIZE + (long) fragmentSize * fragmentIndex;
+  }
+
+  @Override
+  protected int readAt(long position, byte[] target, int offset, int length) {
+    if (position < HEADER_SIZE) {
+      int bytesRead = (int) min(length, HEADER_SIZE - position);
+      System.arraycopy(header, (int) position, target, offset, bytesRead);
+      return bytesRead;
+    }
+    int fragmentIndex = (int) ((position - HEADER_SIZE) / fragmentSize);
+    int fragmentOffset = (int) ((position - HEADER_SIZE) % fragmentSize);
+    int bytesRead = min(length, fragmentSize - fragmentOffset);
+    if (fragmentOffset >= fragment.length) {
+      Arrays.fill(target, offset, offset + bytesRead, (byte) 0);
+      return bytesRead;
+    }
+    bytesRead = min(bytesRead, fragment.length - fragmentOffset);
+    putInt(fragment, TFDT_VALUE_OFFSET, (int) (fragmentIndex * FRAGMENT_DURATION_US));
+    System.arraycopy(fragment, fragmentOffset, target, offset, bytesRead);
+    return bytesRead;
+  }
+
+  private static void putInt(byte[] data, int offset, int value) {
+    data[offset] = (byte) (value >> 24);
+    data[offset + 1] = (byte) (value >> 16);
+    data[offset + 2] = (byte) (value >> 8);
+    data[offset + 3] = (byte) value;
+  }
+}
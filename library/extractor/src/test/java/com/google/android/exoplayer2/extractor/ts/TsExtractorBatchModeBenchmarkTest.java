@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.ts;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
+import com.google.android.exoplayer2.extractor.DummyTrackOutput;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataReader;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.TimestampAdjuster;
+import java.io.IOException;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares extracting HLS transport stream segments one packet per {@link TsExtractor#read} call
+ * with extracting them in batch mode. Only runs when benchmarks are enabled, see {@link
+ * BenchmarkUtil}.
+ *
+ * <p>The test assets are low bitrate, so segments with the size of six second segments at 6 and 16
+ * Mbps are made by repeating an asset.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class TsExtractorBatchModeBenchmarkTest {
+
+  private static final String ASSET = "media/ts/sample_h264_mpeg_audio.ts";
+  private static final long SEGMENT_DURATION_US = 6_000_000;
+  private static final int[] BITRATES = {6_000_000, 16_000_000};
+  private static final int ROUNDS = 10;
+
+  @Before
+  public void setUp() {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+  }
+
+  @Test
+  public void read_withHighBitrateSegments_reportsReadCallsAndThroughput() throws IOException {
+    byte[] asset = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), ASSET);
+    StringBuilder results = new StringBuilder("single packet -> batch mode:");
+    for (int bitrate : BITRATES) {
+      byte[] segment = buildSegment(asset, (int) (bitrate * SEGMENT_DURATION_US / 8_000_000));
+      // Alternate between the modes and keep the fastest round of each, to reduce the effect of
+      // just-in-time compilation and garbage collection.
+      ExtractionResult singlePacketResult = null;
+      ExtractionResult batchModeResult = null;
+      for (int round = 0; round < ROUNDS; round++) {
+        singlePacketResult =
+            fastest(singlePacketResult, extract(segment, /* batchBufferSize= */ C.LENGTH_UNSET));
+        batchModeResult =
+            fastest(batchModeResult, extract(segment, TsExtractor.DEFAULT_BATCH_BUFFER_SIZE));
+      }
+      assertThat(batchModeResult.sampleCount).isEqualTo(singlePacketResult.sampleCount);
+      assertThat(batchModeResult.sampleCount).isGreaterThan(0);
+      results.append(
+          String.format(
+              Locale.US,
+              " %d kbps (%d bytes)=[%d->%d read calls, %d->%d bytes/sec]",
+              bitrate / 1000,
+              segment.length,
+              singlePacketResult.readCallCount,
+              batchModeResult.readCallCount,
+              singlePacketResult.getThroughput(segment.length),
+              batchModeResult.getThroughput(segment.length)));
+    }
+    BenchmarkUtil.report("TsExtractorBatchMode", results.toString());
+  }
+
+  private static byte[] buildSegment(byte[] asset, int minLength) {
+    int repetitions = (minLength + asset.length - 1) / asset.length;
+    byte[] segment = new byte[asset.length * repetitions];
+    for (int i = 0; i < repetitions; i++) {
+      System.arraycopy(asset, 0, segment, i * asset.length, asset.length);
+    }
+    return segment;
+  }
+
+  private static ExtractionResult extract(byte[] segment, int batchBufferSize)
+      throws IOException {
+    TsExtractor extractor =
+        new TsExtractor(
+            TsExtractor.MODE_HLS,
+            new TimestampAdjuster(/* firstSampleTimestampUs= */ 0),
+            new DefaultTsPayloadReaderFactory(),
+            TsExtractor.DEFAULT_TIMESTAMP_SEARCH_BYTES,
+            batchBufferSize);
+    SampleCountingExtractorOutput output = new SampleCountingExtractorOutput();
+    extractor.init(output);
+    ByteArrayDataSource dataSource = new ByteArrayDataSource(segment);
+    long startTimeNs = System.nanoTime();
+    long length = dataSource.open(new DataSpec(Uri.EMPTY));
+    ExtractorInput input = new DefaultExtractorInput(dataSource, /* position= */ 0, length);
+    PositionHolder positionHolder = new PositionHolder();
+    ExtractionResult result = new ExtractionResult();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult == Extractor.RESULT_CONTINUE) {
+      readResult = extractor.read(input, positionHolder);
+      result.readCallCount++;
+    }
+    result.elapsedTimeNs = System.nanoTime() - startTimeNs;
+    assertThat(readResult).isEqualTo(Extractor.RESULT_END_OF_INPUT);
+    result.sampleCount = output.sampleCount;
+    return result;
+  }
+
+  private static ExtractionResult fastest(
+      @Nullable ExtractionResult result1, ExtractionResult result2) {
+    return result1 == null || result2.elapsedTimeNs < result1.elapsedTimeNs ? result2 : result1;
+  }
+
+  private static final class ExtractionResult {
+
+    public int readCallCount;
+    public int sampleCount;
+    public long elapsedTimeNs;
+
+    public long getThroughput(long bytes) {
+      return bytes * C.NANOS_PER_SECOND / elapsedTimeNs;
+    }
+  }
+
+  /**
+   * Discards sample data and counts samples, so that copying sample data doesn't dominate the
+   * measurement.
+   */
+  private static final class SampleCountingExtractorOutput implements ExtractorOutput {
+
+    public int sampleCount;
+
+    @Override
+    public TrackOutput track(int id, int type) {
+      DummyTrackOutput dummyTrackOutput = new DummyTrackOutput();
+      return new TrackOutput() {
+        @Override
+        public void format(Format format) {
+          // Do nothing.
+        }
+
+        @Override
+        public int sampleData(
+            DataReader input, int length, boolean allowEndOfInput, int sampleDataPart)
+            throws IOException {
+          return dummyTrackOutput.sampleData(input, length, allowEndOfInput, sampleDataPart);
+        }
+
+        @Override
+        public void sampleData(ParsableByteArray data, int length, int sampleDataPart) {
+          data.skipBytes(length);
+        }
+
+        @Override
+        public void sampleMetadata(
+            long timeUs, int flags, int size, int offset, @Nullable CryptoData cryptoData) {
+          sampleCount++;
+        }
+      };
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+  }
+}
@@ -146,6 +146,45 @@ public final class TsExtractorTest {
         TsExtractor::new, "media/ts/sample_with_junk", simulationConfig);
   }
 
+  @Test
+  public void sampleWithH262AndMpegAudio_batchMode() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        TsExtractorTest::createBatchModeExtractor,
+        "media/ts/sample_h262_mpeg_audio.ts",
+        simulationConfig);
+  }
+
+  @Test
+  public void sampleWithH264AndMpegAudio_batchMode() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        TsExtractorTest::createBatchModeExtractor,
+        "media/ts/sample_h264_mpeg_audio.ts",
+        simulationConfig);
+  }
+
+  @Test
+  public void sampleWithH265_batchMode() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        TsExtractorTest::createBatchModeExtractor, "media/ts/sample_h265.ts", simulationConfig);
+  }
+
+  @Test
+  public void sampleWithScte35_batchMode() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        TsExtractorTest::createBatchModeExtractor,
+        "media/ts/sample_scte35.ts",
+        new ExtractorAsserts.AssertionConfig.Builder()
+            .setDeduplicateConsecutiveFormats(true)
+            .build(),
+        simulationConfig);
+  }
+
+  @Test
+  public void streamWithJunkData_batchMode() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        TsExtractorTest::createBatchModeExtractor, "media/ts/sample_with_junk", simulationConfig);
+  }
+
   @Test
   public void customPesReader() throws Exception {
     CustomTsPayloadReaderFactory factory = new CustomTsPayloadReaderFactory(true, false);
@@ -210,6 +249,15 @@ public final class TsExtractorTest {
     assertThat(factory.sdtReader.consumedSdts).isEqualTo(2);
   }
 
+  private static TsExtractor createBatchModeExtractor() {
+    return new TsExtractor(
+        TsExtractor.MODE_SINGLE_PMT,
+        new TimestampAdjuster(/* firstSampleTimestampUs= */ 0),
+        new DefaultTsPayloadReaderFactory(),
+        TsExtractor.DEFAULT_TIMESTAMP_SEARCH_BYTES,
+        TsExtractor.DEFAULT_BATCH_BUFFER_SIZE);
+  }
+
   private static final class CustomTsPayloadReaderFactory implements TsPayloadReader.Factory {
 
     private final boolean provideSdtReader;
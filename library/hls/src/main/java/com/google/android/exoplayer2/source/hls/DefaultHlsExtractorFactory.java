@@ -15,12 +15,14 @@
  */
 package com.google.android.exoplayer2.source.hls;
 
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
 import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
 
 import android.annotation.SuppressLint;
 import android.net.Uri;
 import android.text.TextUtils;
 import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
@@ -31,6 +33,7 @@ import com.google.android.exoplayer2.extractor.ts.Ac4Extractor;
 import com.google.android.exoplayer2.extractor.ts.AdtsExtractor;
 import com.google.android.exoplayer2.extractor.ts.DefaultTsPayloadReaderFactory;
 import com.google.android.exoplayer2.extractor.ts.TsExtractor;
+import com.google.android.exoplayer2.extractor.ts.TsPayloadReader;
 import com.google.android.exoplayer2.metadata.Metadata;
 import com.google.android.exoplayer2.util.FileTypes;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -62,6 +65,8 @@ public final class DefaultHlsExtractorFactory implements HlsExtractorFactory {
 
   @DefaultTsPayloadReaderFactory.Flags private final int payloadReaderFactoryFlags;
   private final boolean exposeCea608WhenMissingDeclarations;
+  private final int readAheadBlockSize;
+  private final int tsBatchBufferSize;
 
   /**
    * Equivalent to {@link #DefaultHlsExtractorFactory(int, boolean) new
@@ -84,8 +89,65 @@ public final class DefaultHlsExtractorFactory implements HlsExtractorFactory {
    */
   public DefaultHlsExtractorFactory(
       int payloadReaderFactoryFlags, boolean exposeCea608WhenMissingDeclarations) {
+    this(
+        payloadReaderFactoryFlags,
+        exposeCea608WhenMissingDeclarations,
+        /* readAheadBlockSize= */ C.LENGTH_UNSET);
+  }
+
+  /**
+   * Creates a factory for HLS segment extractors.
+   *
+   * @param payloadReaderFactoryFlags Flags to add when constructing any {@link
+   *     DefaultTsPayloadReaderFactory} instances. Other flags may be added on top of {@code
+   *     payloadReaderFactoryFlags} when creating {@link DefaultTsPayloadReaderFactory}.
+   * @param exposeCea608WhenMissingDeclarations Whether created {@link TsExtractor} instances should
+   *     expose a CEA-608 track should the master playlist contain no Closed Captions declarations.
+   *     If the master playlist contains any Closed Captions declarations, this flag is ignored.
+   * @param readAheadBlockSize The number of bytes that the inputs of the extractors read at a time
+   *     when less is requested, or {@link C#LENGTH_UNSET} to read only the requested data.
+   */
+  public DefaultHlsExtractorFactory(
+      int payloadReaderFactoryFlags,
+      boolean exposeCea608WhenMissingDeclarations,
+      int readAheadBlockSize) {
+    this(
+        payloadReaderFactoryFlags,
+        exposeCea608WhenMissingDeclarations,
+        readAheadBlockSize,
+        /* tsBatchBufferSize= */ C.LENGTH_UNSET);
+  }
+
+  /**
+   * Creates a factory for HLS segment extractors.
+   *
+   * @param payloadReaderFactoryFlags Flags to add when constructing any {@link
+   *     DefaultTsPayloadReaderFactory} instances. Other flags may be added on top of {@code
+   *     payloadReaderFactoryFlags} when creating {@link DefaultTsPayloadReaderFactory}.
+   * @param exposeCea608WhenMissingDeclarations Whether created {@link TsExtractor} instances should
+   *     expose a CEA-608 track should the master playlist contain no Closed Captions declarations.
+   *     If the master playlist contains any Closed Captions declarations, this flag is ignored.
+   * @param readAheadBlockSize The number of bytes that the inputs of the extractors read at a time
+   *     when less is requested, or {@link C#LENGTH_UNSET} to read only the requested data.
+   * @param tsBatchBufferSize The buffer size of created {@link TsExtractor} instances in batch
+   *     mode, or {@link C#LENGTH_UNSET} to disable batch mode. See {@link
+   *     TsExtractor#TsExtractor(int, TimestampAdjuster, TsPayloadReader.Factory, int, int)}.
+   */
+  public DefaultHlsExtractorFactory(
+      int payloadReaderFactoryFlags,
+      boolean exposeCea608WhenMissingDeclarations,
+      int readAheadBlockSize,
+      int tsBatchBufferSize) {
+    checkArgument(readAheadBlockSize > 0 || readAheadBlockSize == C.LENGTH_UNSET);
     this.payloadReaderFactoryFlags = payloadReaderFactoryFlags;
     this.exposeCea608WhenMissingDeclarations = exposeCea608WhenMissingDeclarations;
+    this.readAheadBlockSize = readAheadBlockSize;
+    this.tsBatchBufferSize = tsBatchBufferSize;
+  }
+
+  @Override
+  public int getReadAheadBlockSize() {
+    return readAheadBlockSize;
   }
 
   @Override
@@ -170,7 +232,8 @@ public final class DefaultHlsExtractorFactory implements HlsExtractorFactory {
             exposeCea608WhenMissingDeclarations,
             format,
             muxedCaptionFormats,
-            timestampAdjuster);
+            timestampAdjuster,
+            tsBatchBufferSize);
       default:
         return null;
     }
@@ -181,7 +244,8 @@ public final class DefaultHlsExtractorFactory implements HlsExtractorFactory {
       boolean exposeCea608WhenMissingDeclarations,
       Format format,
       @Nullable List<Format> muxedCaptionFormats,
-      TimestampAdjuster timestampAdjuster) {
+      TimestampAdjuster timestampAdjuster,
+      int batchBufferSize) {
     @DefaultTsPayloadReaderFactory.Flags
     int payloadReaderFactoryFlags =
         DefaultTsPayloadReaderFactory.FLAG_IGNORE_SPLICE_INFO_STREAM
@@ -214,7 +278,9 @@ public final class DefaultHlsExtractorFactory implements HlsExtractorFactory {
     return new TsExtractor(
         TsExtractor.MODE_HLS,
         timestampAdjuster,
-        new DefaultTsPayloadReaderFactory(payloadReaderFactoryFlags, muxedCaptionFormats));
+        new DefaultTsPayloadReaderFactory(payloadReaderFactoryFlags, muxedCaptionFormats),
+        TsExtractor.DEFAULT_TIMESTAMP_SEARCH_BYTES,
+        batchBufferSize);
   }
 
   private static FragmentedMp4Extractor createFragmentedMp4Extractor(
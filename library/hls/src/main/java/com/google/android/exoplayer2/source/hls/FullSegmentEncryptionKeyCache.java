@@ -25,6 +25,9 @@ import java.util.Map;
  * LRU cache that holds up to {@code maxSize} full-segment-encryption keys. Which each addition,
  * once the cache's size exceeds {@code maxSize}, the oldest item (according to insertion order) is
  * removed.
+ *
+ * <p>The cache is thread-safe, so that it can be shared by chunk sources running on different
+ * playback threads.
  */
 /* package */ final class FullSegmentEncryptionKeyCache {
 
@@ -46,20 +49,37 @@ import java.util.Map;
    * null or not present in the cache.
    */
   @Nullable
-  public byte[] get(@Nullable Uri uri) {
+  public synchronized byte[] get(@Nullable Uri uri) {
     if (uri == null) {
       return null;
     }
     return backingMap.get(uri);
   }
 
+  /**
+   * Returns the {@code encryptionKey} cached against this {@code uri}, or null if {@code uri} is
+   * null or not present in the cache. If present, the entry is reinserted so that it becomes the
+   * newest item in the cache, and isn't evicted by the following additions.
+   */
+  @Nullable
+  public synchronized byte[] getAndRefresh(@Nullable Uri uri) {
+    if (uri == null) {
+      return null;
+    }
+    @Nullable byte[] encryptionKey = backingMap.remove(uri);
+    if (encryptionKey != null) {
+      backingMap.put(uri, encryptionKey);
+    }
+    return encryptionKey;
+  }
+
   /**
    * Inserts an entry into the cache.
    *
    * @throws NullPointerException if {@code uri} or {@code encryptionKey} are null.
    */
   @Nullable
-  public byte[] put(Uri uri, byte[] encryptionKey) {
+  public synchronized byte[] put(Uri uri, byte[] encryptionKey) {
     return backingMap.put(Assertions.checkNotNull(uri), Assertions.checkNotNull(encryptionKey));
   }
 
@@ -68,7 +88,7 @@ import java.util.Map;
    *
    * @throws NullPointerException if {@code uri} is null.
    */
-  public boolean containsUri(Uri uri) {
+  public synchronized boolean containsUri(Uri uri) {
     return backingMap.containsKey(Assertions.checkNotNull(uri));
   }
 
@@ -79,7 +99,7 @@ import java.util.Map;
    * @throws NullPointerException if {@code uri} is null.
    */
   @Nullable
-  public byte[] remove(Uri uri) {
+  public synchronized byte[] remove(Uri uri) {
     return backingMap.remove(Assertions.checkNotNull(uri));
   }
 }
@@ -40,6 +40,7 @@ import com.google.android.exoplayer2.trackselection.BaseTrackSelection;
 import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
 import com.google.android.exoplayer2.util.UriUtil;
@@ -113,10 +114,10 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   public static final int CHUNK_PUBLICATION_STATE_REMOVED = 2;
 
   /**
-   * The maximum number of keys that the key cache can hold. This value must be 2 or greater in
-   * order to hold initialization segment and media segment keys simultaneously.
+   * The number of segments or parts, starting with the one to load, whose keys are prefetched in
+   * each variant.
    */
-  private static final int KEY_CACHE_SIZE = 4;
+  private static final int KEY_PREFETCH_SEGMENT_COUNT = 3;
 
   private final HlsExtractorFactory extractorFactory;
   private final DataSource mediaDataSource;
@@ -128,6 +129,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   private final TrackGroup trackGroup;
   @Nullable private final List<Format> muxedCaptionFormats;
   private final FullSegmentEncryptionKeyCache keyCache;
+  private final int segmentPrefetchCount;
+  @Nullable private final HlsSegmentPrefetcher segmentPrefetcher;
+  @Nullable private final HlsKeyPrefetcher keyPrefetcher;
 
   private boolean isTimestampMaster;
   private byte[] scratchSpace;
@@ -158,6 +162,15 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    *     provider.
    * @param muxedCaptionFormats List of muxed caption {@link Format}s. Null if no closed caption
    *     information is available in the master playlist.
+   * @param keyCache The {@link FullSegmentEncryptionKeyCache} that holds the full segment
+   *     encryption keys. It may be shared with other chunk sources.
+   * @param segmentPrefetchCount The number of segments following the one being loaded to prefetch
+   *     in parallel, together with their initialization segments and keys, or 0 to disable
+   *     prefetching.
+   * @param loaderThreadPool The {@link LoaderThreadPool} on which to prefetch segments, or null to
+   *     use {@link HlsSegmentPrefetcher#getSharedThreadPool()}.
+   * @param prefetchEncryptionKeys Whether to load the keys of the upcoming segments of all the
+   *     variants that can be adapted between into {@code keyCache} ahead of need.
    */
   public HlsChunkSource(
       HlsExtractorFactory extractorFactory,
@@ -167,21 +180,48 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       HlsDataSourceFactory dataSourceFactory,
       @Nullable TransferListener mediaTransferListener,
       TimestampAdjusterProvider timestampAdjusterProvider,
-      @Nullable List<Format> muxedCaptionFormats) {
+      @Nullable List<Format> muxedCaptionFormats,
+      FullSegmentEncryptionKeyCache keyCache,
+      int segmentPrefetchCount,
+      @Nullable LoaderThreadPool loaderThreadPool,
+      boolean prefetchEncryptionKeys) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
     this.playlistUrls = playlistUrls;
     this.playlistFormats = playlistFormats;
     this.timestampAdjusterProvider = timestampAdjusterProvider;
     this.muxedCaptionFormats = muxedCaptionFormats;
-    keyCache = new FullSegmentEncryptionKeyCache(KEY_CACHE_SIZE);
+    this.keyCache = keyCache;
+    this.segmentPrefetchCount = segmentPrefetchCount;
     scratchSpace = Util.EMPTY_BYTE_ARRAY;
     liveEdgeInPeriodTimeUs = C.TIME_UNSET;
-    mediaDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA);
+    DataSource mediaDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA);
     if (mediaTransferListener != null) {
       mediaDataSource.addTransferListener(mediaTransferListener);
     }
-    encryptionDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_DRM);
+    DataSource encryptionDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_DRM);
+    if (segmentPrefetchCount > 0) {
+      // The segment being loaded is prefetched too, so that it loads in parallel with the others.
+      segmentPrefetcher =
+          new HlsSegmentPrefetcher(
+              dataSourceFactory,
+              mediaTransferListener,
+              loaderThreadPool != null
+                  ? loaderThreadPool
+                  : HlsSegmentPrefetcher.getSharedThreadPool(),
+              /* maxParallelLoads= */ segmentPrefetchCount + 1,
+              HlsSegmentPrefetcher.DEFAULT_MAX_BUFFER_BYTES);
+      mediaDataSource = segmentPrefetcher.createDataSource(mediaDataSource);
+      encryptionDataSource = segmentPrefetcher.createDataSource(encryptionDataSource);
+    } else {
+      segmentPrefetcher = null;
+    }
+    this.mediaDataSource = mediaDataSource;
+    this.encryptionDataSource = encryptionDataSource;
+    keyPrefetcher =
+        prefetchEncryptionKeys
+            ? new HlsKeyPrefetcher(dataSourceFactory, mediaTransferListener, keyCache)
+            : null;
     trackGroup = new TrackGroup(playlistFormats);
     // Use only non-trickplay variants for preparation. See [Internal ref: b/161529098].
     ArrayList<Integer> initialTrackSelection = new ArrayList<>();
@@ -237,6 +277,16 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     fatalError = null;
   }
 
+  /** Releases the source. */
+  public void release() {
+    if (segmentPrefetcher != null) {
+      segmentPrefetcher.release();
+    }
+    if (keyPrefetcher != null) {
+      keyPrefetcher.release();
+    }
+  }
+
   /**
    * Sets whether this chunk source is responsible for initializing timestamp adjusters.
    *
@@ -423,18 +473,38 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     seenExpectedPlaylistError = false;
     expectedPlaylistUrl = null;
 
-    // Check if the media segment or its initialization segment are fully encrypted.
+    if (segmentPrefetcher != null) {
+      updateSegmentPrefetcher(
+          segmentPrefetcher,
+          mediaPlaylist,
+          segmentBaseHolder,
+          /* loadsInitSegment= */ previous == null || selectedTrackIndex != oldTrackIndex);
+    }
+    if (keyPrefetcher != null) {
+      prefetchEncryptionKeys(
+          keyPrefetcher,
+          previous,
+          selectedTrackIndex,
+          mediaPlaylist,
+          segmentBaseHolder,
+          loadPositionUs);
+    }
+
+    // Check if the media segment or its initialization segment are fully encrypted. Each key is
+    // read from the cache once, as other chunk sources sharing the cache may evict it meanwhile.
     @Nullable
     Uri initSegmentKeyUri =
         getFullEncryptionKeyUri(mediaPlaylist, segmentBaseHolder.segmentBase.initializationSegment);
-    out.chunk = maybeCreateEncryptionChunkFor(initSegmentKeyUri, selectedTrackIndex);
-    if (out.chunk != null) {
+    @Nullable byte[] initSegmentKey = keyCache.getAndRefresh(initSegmentKeyUri);
+    if (initSegmentKeyUri != null && initSegmentKey == null) {
+      out.chunk = createEncryptionKeyChunk(initSegmentKeyUri, selectedTrackIndex);
       return;
     }
     @Nullable
     Uri mediaSegmentKeyUri = getFullEncryptionKeyUri(mediaPlaylist, segmentBaseHolder.segmentBase);
-    out.chunk = maybeCreateEncryptionChunkFor(mediaSegmentKeyUri, selectedTrackIndex);
-    if (out.chunk != null) {
+    @Nullable byte[] mediaSegmentKey = keyCache.getAndRefresh(mediaSegmentKeyUri);
+    if (mediaSegmentKeyUri != null && mediaSegmentKey == null) {
+      out.chunk = createEncryptionKeyChunk(mediaSegmentKeyUri, selectedTrackIndex);
       return;
     }
     out.chunk =
@@ -452,8 +522,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             isTimestampMaster,
             timestampAdjusterProvider,
             previous,
-            /* mediaSegmentKey= */ keyCache.get(mediaSegmentKeyUri),
-            /* initSegmentKey= */ keyCache.get(initSegmentKeyUri));
+            mediaSegmentKey,
+            initSegmentKey);
   }
 
   @Nullable
@@ -753,31 +823,178 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             : (mediaPlaylist.getEndTimeUs() - playlistTracker.getInitialStartTimeUs());
   }
 
-  @Nullable
-  private Chunk maybeCreateEncryptionChunkFor(@Nullable Uri keyUri, int selectedTrackIndex) {
-    if (keyUri == null) {
-      return null;
-    }
-
-    @Nullable byte[] encryptionKey = keyCache.remove(keyUri);
-    if (encryptionKey != null) {
-      // The key was present in the key cache. We re-insert it to prevent it from being evicted by
-      // the following key addition. Note that removal of the key is necessary to affect the
-      // eviction order.
-      keyCache.put(keyUri, encryptionKey);
-      return null;
-    }
-    DataSpec dataSpec =
-        new DataSpec.Builder().setUri(keyUri).setFlags(DataSpec.FLAG_ALLOW_GZIP).build();
+  private Chunk createEncryptionKeyChunk(Uri keyUri, int selectedTrackIndex) {
     return new EncryptionKeyChunk(
         encryptionDataSource,
-        dataSpec,
+        createEncryptionKeyDataSpec(keyUri),
         playlistFormats[selectedTrackIndex],
         trackSelection.getSelectionReason(),
         trackSelection.getSelectionData(),
         scratchSpace);
   }
 
+  /**
+   * Requests prefetches of the segment to load, of the {@link #segmentPrefetchCount} segments that
+   * follow it, and of the initialization segments and keys that they need. Prefetches of other
+   * segments, such as those of a variant that was switched away from, are canceled.
+   *
+   * @param segmentPrefetcher The {@link HlsSegmentPrefetcher}.
+   * @param mediaPlaylist The media playlist to which the segment to load belongs.
+   * @param segmentBaseHolder The segment to load.
+   * @param loadsInitSegment Whether the initialization segment of the segment to load is loaded
+   *     with it, which is the case if it doesn't follow a segment of the same variant.
+   */
+  private void updateSegmentPrefetcher(
+      HlsSegmentPrefetcher segmentPrefetcher,
+      HlsMediaPlaylist mediaPlaylist,
+      SegmentBaseHolder segmentBaseHolder,
+      boolean loadsInitSegment) {
+    List<DataSpec> mediaDataSpecs = new ArrayList<>();
+    List<DataSpec> keyDataSpecs = new ArrayList<>();
+    @Nullable SegmentBaseHolder holder = segmentBaseHolder;
+    @Nullable HlsMediaPlaylist.SegmentBase previousSegmentBase = null;
+    for (int i = 0; i <= segmentPrefetchCount && holder != null && !holder.isPreload; i++) {
+      HlsMediaPlaylist.SegmentBase segmentBase = holder.segmentBase;
+      @Nullable Segment initSegment = segmentBase.initializationSegment;
+      // An initialization segment is loaded when the extractor can't be reused.
+      boolean initSegmentRequired =
+          previousSegmentBase == null
+              ? loadsInitSegment
+              : initSegment != previousSegmentBase.initializationSegment
+                  || segmentBase.relativeDiscontinuitySequence
+                      != previousSegmentBase.relativeDiscontinuitySequence;
+      if (initSegment != null && initSegmentRequired) {
+        maybeAddEncryptionKeyDataSpec(keyDataSpecs, mediaPlaylist, initSegment);
+        mediaDataSpecs.add(
+            new DataSpec(
+                UriUtil.resolveToUri(mediaPlaylist.baseUri, initSegment.url),
+                initSegment.byteRangeOffset,
+                initSegment.byteRangeLength));
+      }
+      maybeAddEncryptionKeyDataSpec(keyDataSpecs, mediaPlaylist, segmentBase);
+      mediaDataSpecs.add(
+          new DataSpec(
+              UriUtil.resolveToUri(mediaPlaylist.baseUri, segmentBase.url),
+              segmentBase.byteRangeOffset,
+              segmentBase.byteRangeLength));
+      previousSegmentBase = segmentBase;
+      holder = getFollowingSegmentHolder(mediaPlaylist, holder);
+    }
+    segmentPrefetcher.update(mediaDataSpecs, keyDataSpecs);
+  }
+
+  /**
+   * Requests prefetches of the keys needed by the segment to load and the segments that follow it,
+   * and by the corresponding segments of the other variants in the track selection, so that
+   * switching between variants doesn't wait for key loads.
+   *
+   * @param keyPrefetcher The {@link HlsKeyPrefetcher}.
+   * @param previous The most recently loaded media chunk.
+   * @param selectedTrackIndex The index of the selected variant in the track group.
+   * @param mediaPlaylist The media playlist of the selected variant.
+   * @param segmentBaseHolder The segment to load.
+   * @param loadPositionUs The current load position relative to the period start in microseconds.
+   */
+  private void prefetchEncryptionKeys(
+      HlsKeyPrefetcher keyPrefetcher,
+      @Nullable HlsMediaChunk previous,
+      int selectedTrackIndex,
+      HlsMediaPlaylist mediaPlaylist,
+      SegmentBaseHolder segmentBaseHolder,
+      long loadPositionUs) {
+    // Keys of the selected variant come first, as they're needed first.
+    List<Uri> keyUris = new ArrayList<>();
+    addEncryptionKeyUris(keyUris, mediaPlaylist, segmentBaseHolder);
+    for (int i = 0; i < trackSelection.length(); i++) {
+      int trackIndex = trackSelection.getIndexInTrackGroup(i);
+      Uri playlistUrl = playlistUrls[trackIndex];
+      if (trackIndex == selectedTrackIndex || !playlistTracker.isSnapshotValid(playlistUrl)) {
+        continue;
+      }
+      @Nullable
+      HlsMediaPlaylist playlist =
+          playlistTracker.getPlaylistSnapshot(playlistUrl, /* isForPlayback= */ false);
+      // Playlist snapshot is valid (checked by if() above) so playlist must be non-null.
+      checkNotNull(playlist);
+      long startOfPlaylistInPeriodUs =
+          playlist.startTimeUs - playlistTracker.getInitialStartTimeUs();
+      Pair<Long, Integer> mediaSequenceAndPartIndex =
+          getNextMediaSequenceAndPartIndex(
+              previous,
+              /* switchingTrack= */ true,
+              playlist,
+              startOfPlaylistInPeriodUs,
+              loadPositionUs);
+      if (mediaSequenceAndPartIndex.first < playlist.mediaSequence) {
+        continue;
+      }
+      @Nullable
+      SegmentBaseHolder holder =
+          getNextSegmentHolder(
+              playlist, mediaSequenceAndPartIndex.first, mediaSequenceAndPartIndex.second);
+      if (holder != null) {
+        addEncryptionKeyUris(keyUris, playlist, holder);
+      }
+    }
+    keyPrefetcher.prefetch(keyUris);
+  }
+
+  /**
+   * Adds the distinct URIs of the keys needed by the given segment and the segments that follow it,
+   * up to {@link #KEY_PREFETCH_SEGMENT_COUNT} segments, to {@code keyUris}.
+   */
+  private static void addEncryptionKeyUris(
+      List<Uri> keyUris, HlsMediaPlaylist mediaPlaylist, SegmentBaseHolder segmentBaseHolder) {
+    @Nullable SegmentBaseHolder holder = segmentBaseHolder;
+    for (int i = 0; i < KEY_PREFETCH_SEGMENT_COUNT && holder != null; i++) {
+      @Nullable
+      Uri initSegmentKeyUri =
+          getFullEncryptionKeyUri(mediaPlaylist, holder.segmentBase.initializationSegment);
+      if (initSegmentKeyUri != null && !keyUris.contains(initSegmentKeyUri)) {
+        keyUris.add(initSegmentKeyUri);
+      }
+      @Nullable Uri keyUri = getFullEncryptionKeyUri(mediaPlaylist, holder.segmentBase);
+      if (keyUri != null && !keyUris.contains(keyUri)) {
+        keyUris.add(keyUri);
+      }
+      holder = getFollowingSegmentHolder(mediaPlaylist, holder);
+    }
+  }
+
+  @Nullable
+  private static SegmentBaseHolder getFollowingSegmentHolder(
+      HlsMediaPlaylist mediaPlaylist, SegmentBaseHolder segmentBaseHolder) {
+    return segmentBaseHolder.partIndex == C.INDEX_UNSET
+        ? getNextSegmentHolder(
+            mediaPlaylist,
+            segmentBaseHolder.mediaSequence + 1,
+            /* nextPartIndex= */ C.INDEX_UNSET)
+        : getNextSegmentHolder(
+            mediaPlaylist, segmentBaseHolder.mediaSequence, segmentBaseHolder.partIndex + 1);
+  }
+
+  private void maybeAddEncryptionKeyDataSpec(
+      List<DataSpec> keyDataSpecs,
+      HlsMediaPlaylist mediaPlaylist,
+      HlsMediaPlaylist.SegmentBase segmentBase) {
+    @Nullable Uri keyUri = getFullEncryptionKeyUri(mediaPlaylist, segmentBase);
+    // Keys are loaded into the key cache instead when key prefetching is enabled.
+    if (keyUri == null || keyPrefetcher != null || keyCache.containsUri(keyUri)) {
+      return;
+    }
+    for (int i = 0; i < keyDataSpecs.size(); i++) {
+      if (keyDataSpecs.get(i).uri.equals(keyUri)) {
+        return;
+      }
+    }
+    keyDataSpecs.add(createEncryptionKeyDataSpec(keyUri));
+  }
+
+  /** Returns the {@link DataSpec} to load the key with the given URI. */
+  /* package */ static DataSpec createEncryptionKeyDataSpec(Uri keyUri) {
+    return new DataSpec.Builder().setUri(keyUri).setFlags(DataSpec.FLAG_ALLOW_GZIP).build();
+  }
+
   @Nullable
   private static Uri getFullEncryptionKeyUri(
       HlsMediaPlaylist playlist, @Nullable HlsMediaPlaylist.SegmentBase segmentBase) {
@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.source.hls;
 
 import android.net.Uri;
 import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
@@ -57,4 +58,12 @@ public interface HlsExtractorFactory {
       Map<String, List<String>> responseHeaders,
       ExtractorInput sniffingExtractorInput)
       throws IOException;
+
+  /**
+   * Returns the number of bytes that the inputs of the created extractors should read at a time
+   * when less is requested, or {@link C#LENGTH_UNSET} if they should read only the requested data.
+   */
+  default int getReadAheadBlockSize() {
+    return C.LENGTH_UNSET;
+  }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads full segment encryption keys into a {@link FullSegmentEncryptionKeyCache} ahead of the
+ * chunks that need them.
+ *
+ * <p>Keys are loaded in batches, one after the other, on a single background thread. Keys that are
+ * already cached, queued or loading aren't requested again. A key whose load fails is left to the
+ * chunk that needs it, which loads it on demand.
+ */
+/* package */ final class HlsKeyPrefetcher {
+
+  private static final String THREAD_NAME = "ExoPlayer:HlsKeyPrefetcher";
+  private static final long KEEP_ALIVE_TIME_MS = 10_000;
+
+  private final HlsDataSourceFactory dataSourceFactory;
+  @Nullable private final TransferListener transferListener;
+  private final FullSegmentEncryptionKeyCache keyCache;
+  private final ThreadPoolExecutor threadPoolExecutor;
+
+  @GuardedBy("this")
+  private final ArrayDeque<Uri> queuedKeyUris;
+
+  @GuardedBy("this")
+  @Nullable
+  private Uri loadingKeyUri;
+
+  @GuardedBy("this")
+  private boolean isLoading;
+
+  @GuardedBy("this")
+  private boolean released;
+
+  /**
+   * Creates an instance.
+   *
+   * @param dataSourceFactory An {@link HlsDataSourceFactory} to create the {@link DataSource} that
+   *     loads the keys.
+   * @param transferListener The transfer listener which should be informed of key data transfers.
+   *     May be null if no listener is available.
+   * @param keyCache The {@link FullSegmentEncryptionKeyCache} into which the keys are loaded.
+   */
+  public HlsKeyPrefetcher(
+      HlsDataSourceFactory dataSourceFactory,
+      @Nullable TransferListener transferListener,
+      FullSegmentEncryptionKeyCache keyCache) {
+    this.dataSourceFactory = dataSourceFactory;
+    this.transferListener = transferListener;
+    this.keyCache = keyCache;
+    threadPoolExecutor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ 1,
+            /* maximumPoolSize= */ 1,
+            KEEP_ALIVE_TIME_MS,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> new Thread(runnable, THREAD_NAME));
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    queuedKeyUris = new ArrayDeque<>();
+  }
+
+  /**
+   * Requests the keys with the given URIs to be loaded into the key cache.
+   *
+   * @param keyUris The URIs of the keys to load, in the order in which they're needed.
+   */
+  public synchronized void prefetch(List<Uri> keyUris) {
+    if (released) {
+      return;
+    }
+    for (int i = 0; i < keyUris.size(); i++) {
+      Uri keyUri = keyUris.get(i);
+      if (!keyUri.equals(loadingKeyUri)
+          && !queuedKeyUris.contains(keyUri)
+          && !keyCache.containsUri(keyUri)) {
+        queuedKeyUris.add(keyUri);
+      }
+    }
+    if (!isLoading && !queuedKeyUris.isEmpty()) {
+      isLoading = true;
+      threadPoolExecutor.execute(this::loadQueuedKeys);
+    }
+  }
+
+  /** Cancels the queued key loads and releases the loading thread. */
+  public synchronized void release() {
+    released = true;
+    queuedKeyUris.clear();
+    threadPoolExecutor.shutdown();
+  }
+
+  private void loadQueuedKeys() {
+    DataSource dataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_DRM);
+    if (transferListener != null) {
+      dataSource.addTransferListener(transferListener);
+    }
+    while (true) {
+      Uri keyUri;
+      synchronized (this) {
+        loadingKeyUri = null;
+        if (queuedKeyUris.isEmpty()) {
+          isLoading = false;
+          return;
+        }
+        keyUri = queuedKeyUris.remove();
+        loadingKeyUri = keyUri;
+      }
+      try {
+        dataSource.open(HlsChunkSource.createEncryptionKeyDataSpec(keyUri));
+        keyCache.put(keyUri, Util.readToEnd(dataSource));
+      } catch (IOException e) {
+        // Ignore. The chunk that needs the key loads it again, and handles the error if it recurs.
+      } finally {
+        Util.closeQuietly(dataSource);
+      }
+    }
+  }
+}
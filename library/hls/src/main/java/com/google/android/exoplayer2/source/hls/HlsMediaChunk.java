@@ -231,6 +231,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   private int nextLoadPosition;
   private boolean initDataLoadRequired;
   private volatile boolean loadCanceled;
+  private volatile long upstreamReadCount;
   private boolean loadCompleted;
   private ImmutableList<Integer> sampleQueueFirstSampleIndices;
   private boolean extractorInvalidated;
@@ -324,6 +325,14 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     return sampleQueueFirstSampleIndices.get(sampleQueueIndex);
   }
 
+  /**
+   * Returns the number of reads from the data sources while loading the chunk and its
+   * initialization segment.
+   */
+  public long getUpstreamReadCount() {
+    return upstreamReadCount;
+  }
+
   /** Prevents the extractor from being reused by a following media chunk. */
   public void invalidateExtractor() {
     extractorInvalidated = true;
@@ -409,6 +418,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    * concludes (because of a thrown exception or because the operation finishes), the number of fed
    * bytes is written to {@code nextLoadPosition}.
    */
+  @SuppressWarnings("NonAtomicVolatileUpdate")
   @RequiresNonNull("output")
   private void feedDataToExtractor(
       DataSource dataSource, DataSpec dataSpec, boolean dataIsEncrypted) throws IOException {
@@ -426,7 +436,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       skipLoadedBytes = false;
     }
     try {
-      ExtractorInput input = prepareExtraction(dataSource, loadDataSpec);
+      DefaultExtractorInput input = prepareExtraction(dataSource, loadDataSpec);
       if (skipLoadedBytes) {
         input.skipFully(nextLoadPosition);
       }
@@ -442,6 +452,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         }
       } finally {
         nextLoadPosition = (int) (input.getPosition() - dataSpec.position);
+        upstreamReadCount += input.getUpstreamReadCount();
       }
     } finally {
       Util.closeQuietly(dataSource);
@@ -454,7 +465,8 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       throws IOException {
     long bytesToRead = dataSource.open(dataSpec);
     DefaultExtractorInput extractorInput =
-        new DefaultExtractorInput(dataSource, dataSpec.position, bytesToRead);
+        new DefaultExtractorInput(
+            dataSource, dataSpec.position, bytesToRead, extractorFactory.getReadAheadBlockSize());
 
     if (extractor == null) {
       long id3Timestamp = peekId3PrivTimestamp(extractorInput);
@@ -43,6 +43,7 @@ import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -80,6 +81,11 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
   private final boolean allowChunklessPreparation;
   private final @HlsMediaSource.MetadataType int metadataType;
   private final boolean useSessionKeys;
+  private final FullSegmentEncryptionKeyCache keyCache;
+  private final int segmentPrefetchCount;
+  private final boolean prefetchEncryptionKeys;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
+  private final int loaderPriority;
 
   @Nullable private Callback callback;
   private int pendingPrepareCount;
@@ -108,6 +114,15 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
    *     SequenceableLoader}s for when this media source loads data from multiple streams.
    * @param allowChunklessPreparation Whether chunkless preparation is allowed.
    * @param useSessionKeys Whether to use #EXT-X-SESSION-KEY tags.
+   * @param keyCache The {@link FullSegmentEncryptionKeyCache} for the full segment encryption keys,
+   *     which may be shared with other periods.
+   * @param segmentPrefetchCount The number of upcoming segments to prefetch in parallel with the
+   *     segment being loaded, or 0 to disable prefetching.
+   * @param prefetchEncryptionKeys Whether to load the keys of upcoming segments into {@code
+   *     keyCache} ahead of need.
+   * @param loaderThreadPool A {@link LoaderThreadPool} on which to load chunks and prefetch
+   *     segments, or null to load the chunks of each stream on a thread of its own.
+   * @param loaderPriority The priority of the loads in the {@link LoaderThreadPool}.
    */
   public HlsMediaPeriod(
       HlsExtractorFactory extractorFactory,
@@ -122,7 +137,12 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
       boolean allowChunklessPreparation,
       @HlsMediaSource.MetadataType int metadataType,
-      boolean useSessionKeys) {
+      boolean useSessionKeys,
+      FullSegmentEncryptionKeyCache keyCache,
+      int segmentPrefetchCount,
+      boolean prefetchEncryptionKeys,
+      @Nullable LoaderThreadPool loaderThreadPool,
+      int loaderPriority) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
     this.dataSourceFactory = dataSourceFactory;
@@ -136,6 +156,11 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.keyCache = keyCache;
+    this.segmentPrefetchCount = segmentPrefetchCount;
+    this.prefetchEncryptionKeys = prefetchEncryptionKeys;
+    this.loaderThreadPool = loaderThreadPool;
+    this.loaderPriority = loaderPriority;
     compositeSequenceableLoader =
         compositeSequenceableLoaderFactory.createCompositeSequenceableLoader();
     streamWrapperIndices = new IdentityHashMap<>();
@@ -750,7 +775,11 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
             dataSourceFactory,
             mediaTransferListener,
             timestampAdjusterProvider,
-            muxedCaptionFormats);
+            muxedCaptionFormats,
+            keyCache,
+            segmentPrefetchCount,
+            loaderThreadPool,
+            prefetchEncryptionKeys);
     return new HlsSampleStreamWrapper(
         trackType,
         /* callback= */ this,
@@ -763,7 +792,9 @@ public final class HlsMediaPeriod implements MediaPeriod, HlsSampleStreamWrapper
         drmEventDispatcher,
         loadErrorHandlingPolicy,
         eventDispatcher,
-        metadataType);
+        metadataType,
+        loaderThreadPool,
+        loaderPriority);
   }
 
   private static Map<String, DrmInitData> deriveOverridingDrmInitData(
@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2.source.hls;
 
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
 import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
 import static java.lang.annotation.RetentionPolicy.SOURCE;
 
@@ -52,6 +53,7 @@ import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
@@ -91,10 +93,19 @@ public final class HlsMediaSource extends BaseMediaSource
   /** Type for ESMG metadata in HLS streams. */
   public static final int METADATA_TYPE_EMSG = 3;
 
+  /**
+   * The maximum number of full segment encryption keys held by the key cache shared by the sources
+   * that a {@link Factory} creates. Each chunk source needs room for 2 keys, to hold the keys of an
+   * initialization segment and of a media segment simultaneously, and prefetched keys need room
+   * too.
+   */
+  private static final int KEY_CACHE_SIZE = 32;
+
   /** Factory for {@link HlsMediaSource}s. */
   public static final class Factory implements MediaSourceFactory {
 
     private final HlsDataSourceFactory hlsDataSourceFactory;
+    private final FullSegmentEncryptionKeyCache keyCache;
 
     private HlsExtractorFactory extractorFactory;
     private HlsPlaylistParserFactory playlistParserFactory;
@@ -106,6 +117,10 @@ public final class HlsMediaSource extends BaseMediaSource
     private boolean allowChunklessPreparation;
     @MetadataType private int metadataType;
     private boolean useSessionKeys;
+    private int segmentPrefetchCount;
+    private boolean prefetchEncryptionKeys;
+    @Nullable private LoaderThreadPool loaderThreadPool;
+    private int loaderPriority;
     private List<StreamKey> streamKeys;
     @Nullable private Object tag;
     private long elapsedRealTimeOffsetMs;
@@ -129,6 +144,7 @@ public final class HlsMediaSource extends BaseMediaSource
      */
     public Factory(HlsDataSourceFactory hlsDataSourceFactory) {
       this.hlsDataSourceFactory = checkNotNull(hlsDataSourceFactory);
+      keyCache = new FullSegmentEncryptionKeyCache(KEY_CACHE_SIZE);
       drmSessionManagerProvider = new DefaultDrmSessionManagerProvider();
       playlistParserFactory = new DefaultHlsPlaylistParserFactory();
       playlistTrackerFactory = DefaultHlsPlaylistTracker.FACTORY;
@@ -136,6 +152,7 @@ public final class HlsMediaSource extends BaseMediaSource
       loadErrorHandlingPolicy = new DefaultLoadErrorHandlingPolicy();
       compositeSequenceableLoaderFactory = new DefaultCompositeSequenceableLoaderFactory();
       metadataType = METADATA_TYPE_ID3;
+      loaderPriority = C.PRIORITY_PLAYBACK;
       streamKeys = Collections.emptyList();
       elapsedRealTimeOffsetMs = C.TIME_UNSET;
     }
@@ -281,6 +298,74 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the number of upcoming segments to prefetch in parallel with the segment being loaded
+     * (defaults to 0, which disables prefetching).
+     *
+     * <p>Prefetching requests the segments, and the initialization segments and keys that they
+     * need, before they're loaded, and holds them in memory. This hides the request latency of
+     * each segment behind the loading of the previous ones, which helps on high latency
+     * connections, at the cost of loading segments that may not be used after a track selection
+     * change.
+     *
+     * @param segmentPrefetchCount The number of segments to prefetch.
+     * @return This factory, for convenience.
+     */
+    public Factory setSegmentPrefetchCount(int segmentPrefetchCount) {
+      checkArgument(segmentPrefetchCount >= 0);
+      this.segmentPrefetchCount = segmentPrefetchCount;
+      return this;
+    }
+
+    /**
+     * Sets whether to load the full segment encryption keys of upcoming segments ahead of need
+     * (defaults to false).
+     *
+     * <p>Keys are held in a cache that all the sources created by this factory share. When enabled,
+     * the keys of the segments that follow the one being loaded are loaded into the cache in the
+     * background, for the selected variant and for the variants that the track selection may
+     * switch to. This keeps key loads off the critical path of segment loads and variant switches,
+     * at the cost of loading keys of variants that may not be played.
+     *
+     * @param prefetchEncryptionKeys Whether to prefetch full segment encryption keys.
+     * @return This factory, for convenience.
+     */
+    public Factory setPrefetchEncryptionKeys(boolean prefetchEncryptionKeys) {
+      this.prefetchEncryptionKeys = prefetchEncryptionKeys;
+      return this;
+    }
+
+    /**
+     * Sets a {@link LoaderThreadPool} on which the media chunks load and segments are prefetched,
+     * with {@link C#PRIORITY_PLAYBACK}. See {@link #setLoaderThreadPool(LoaderThreadPool, int)}.
+     *
+     * @param loaderThreadPool The {@link LoaderThreadPool}, or {@code null}.
+     * @return This factory, for convenience.
+     */
+    public Factory setLoaderThreadPool(@Nullable LoaderThreadPool loaderThreadPool) {
+      return setLoaderThreadPool(loaderThreadPool, C.PRIORITY_PLAYBACK);
+    }
+
+    /**
+     * Sets a {@link LoaderThreadPool} on which the media chunks load and segments are prefetched,
+     * so that many streams and media sources can share a bounded number of threads. The default
+     * value is {@code null}, in which case each stream loads on a thread of its own, and segments
+     * are prefetched on a pool that's shared by all media sources. Playlists always load on threads
+     * of their own.
+     *
+     * @param loaderThreadPool The {@link LoaderThreadPool}, or {@code null}.
+     * @param loaderPriority The priority of the loads relative to those of other loaders using the
+     *     same pool. Higher values run first. {@link C#PRIORITY_PLAYBACK} is suitable for loads
+     *     needed for playback.
+     * @return This factory, for convenience.
+     */
+    public Factory setLoaderThreadPool(
+        @Nullable LoaderThreadPool loaderThreadPool, int loaderPriority) {
+      this.loaderThreadPool = loaderThreadPool;
+      this.loaderPriority = loaderPriority;
+      return this;
+    }
+
     @Override
     public Factory setDrmSessionManagerProvider(
         @Nullable DrmSessionManagerProvider drmSessionManagerProvider) {
@@ -399,7 +484,12 @@ public final class HlsMediaSource extends BaseMediaSource
           elapsedRealTimeOffsetMs,
           allowChunklessPreparation,
           metadataType,
-          useSessionKeys);
+          useSessionKeys,
+          keyCache,
+          segmentPrefetchCount,
+          prefetchEncryptionKeys,
+          loaderThreadPool,
+          loaderPriority);
     }
 
     @Override
@@ -417,6 +507,11 @@ public final class HlsMediaSource extends BaseMediaSource
   private final boolean allowChunklessPreparation;
   private final @MetadataType int metadataType;
   private final boolean useSessionKeys;
+  private final FullSegmentEncryptionKeyCache keyCache;
+  private final int segmentPrefetchCount;
+  private final boolean prefetchEncryptionKeys;
+  @Nullable private final LoaderThreadPool loaderThreadPool;
+  private final int loaderPriority;
   private final HlsPlaylistTracker playlistTracker;
   private final long elapsedRealTimeOffsetMs;
   private final MediaItem mediaItem;
@@ -435,7 +530,12 @@ public final class HlsMediaSource extends BaseMediaSource
       long elapsedRealTimeOffsetMs,
       boolean allowChunklessPreparation,
       @MetadataType int metadataType,
-      boolean useSessionKeys) {
+      boolean useSessionKeys,
+      FullSegmentEncryptionKeyCache keyCache,
+      int segmentPrefetchCount,
+      boolean prefetchEncryptionKeys,
+      @Nullable LoaderThreadPool loaderThreadPool,
+      int loaderPriority) {
     this.playbackProperties = checkNotNull(mediaItem.playbackProperties);
     this.mediaItem = mediaItem;
     this.liveConfiguration = mediaItem.liveConfiguration;
@@ -449,6 +549,11 @@ public final class HlsMediaSource extends BaseMediaSource
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.keyCache = keyCache;
+    this.segmentPrefetchCount = segmentPrefetchCount;
+    this.prefetchEncryptionKeys = prefetchEncryptionKeys;
+    this.loaderThreadPool = loaderThreadPool;
+    this.loaderPriority = loaderPriority;
   }
 
   /**
@@ -498,7 +603,12 @@ public final class HlsMediaSource extends BaseMediaSource
         compositeSequenceableLoaderFactory,
         allowChunklessPreparation,
         metadataType,
-        useSessionKeys);
+        useSessionKeys,
+        keyCache,
+        segmentPrefetchCount,
+        prefetchEncryptionKeys,
+        loaderThreadPool,
+        loaderPriority);
   }
 
   @Override
@@ -61,6 +61,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -196,6 +197,9 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
    * @param loadErrorHandlingPolicy A {@link LoadErrorHandlingPolicy}.
    * @param mediaSourceEventDispatcher A dispatcher to notify of {@link MediaSourceEventListener}
    *     events.
+   * @param loaderThreadPool A {@link LoaderThreadPool} on which to load chunks, or null to load on
+   *     a thread of the wrapper's own.
+   * @param loaderPriority The priority of the wrapper's loads in the {@link LoaderThreadPool}.
    */
   public HlsSampleStreamWrapper(
       int trackType,
@@ -209,7 +213,9 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
       DrmSessionEventListener.EventDispatcher drmEventDispatcher,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       MediaSourceEventListener.EventDispatcher mediaSourceEventDispatcher,
-      @HlsMediaSource.MetadataType int metadataType) {
+      @HlsMediaSource.MetadataType int metadataType,
+      @Nullable LoaderThreadPool loaderThreadPool,
+      int loaderPriority) {
     this.trackType = trackType;
     this.callback = callback;
     this.chunkSource = chunkSource;
@@ -221,7 +227,13 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.mediaSourceEventDispatcher = mediaSourceEventDispatcher;
     this.metadataType = metadataType;
-    loader = new Loader("Loader:HlsSampleStreamWrapper");
+    // Media chunks may wait for the timestamp adjuster to be initialized by another wrapper.
+    loader =
+        Loader.create(
+            "Loader:HlsSampleStreamWrapper",
+            loaderThreadPool,
+            loaderPriority,
+            /* loadsMayBlock= */ true);
     nextChunkHolder = new HlsChunkSource.HlsChunkHolder();
     sampleQueueTrackIds = new int[0];
     sampleQueueMappingDoneByType = new HashSet<>(MAPPABLE_TYPES.size());
@@ -543,6 +555,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     for (SampleQueue sampleQueue : sampleQueues) {
       sampleQueue.release();
     }
+    chunkSource.release();
   }
 
   public void setIsTimestampMaster(boolean isTimestampMaster) {
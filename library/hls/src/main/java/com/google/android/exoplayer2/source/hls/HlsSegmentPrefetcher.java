@@ -0,0 +1,577 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.ByteArrayPool;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * Loads media segments, initialization segments and keys in parallel, ahead of the chunks that
+ * need them.
+ *
+ * <p>Prefetched data is held in memory, up to a maximum number of bytes, and is served by the
+ * {@link DataSource DataSources} returned by {@link #createDataSource(DataSource)}. A data source
+ * that opens a {@link DataSpec} whose prefetch is still in progress reads the data as it arrives.
+ * Data that isn't prefetched, or whose prefetch fails or is canceled, is read from upstream.
+ *
+ * <p>Only data that hasn't been read yet counts towards the maximum, as the memory of the data that
+ * has been read is freed. When the maximum is reached, the prefetch of the data that's being read,
+ * or that's needed next, waits for the reader to free memory, so that data larger than the maximum
+ * is still read from the prefetch. Other prefetches stop, and the data that they didn't load is
+ * read from upstream.
+ *
+ * <p>Prefetches load on the threads of a {@link LoaderThreadPool}, in memory obtained from the
+ * {@link ByteArrayPool#getShared() shared ByteArrayPool}.
+ */
+/* package */ final class HlsSegmentPrefetcher {
+
+  /** The default maximum number of prefetched bytes to hold in memory. */
+  public static final int DEFAULT_MAX_BUFFER_BYTES = 8 * 1024 * 1024;
+
+  private static final String THREAD_NAME = "ExoPlayer:HlsSegmentPrefetcher";
+  private static final int ALLOCATION_SIZE = 32 * 1024;
+  private static final int RESULT_PREFETCH_STOPPED = Integer.MIN_VALUE;
+
+  @Nullable private static LoaderThreadPool sharedThreadPool;
+
+  private final HlsDataSourceFactory dataSourceFactory;
+  @Nullable private final TransferListener transferListener;
+  private final int maxBufferBytes;
+  private final ByteArrayPool byteArrayPool;
+
+  @GuardedBy("this")
+  private final List<Prefetch> prefetches;
+
+  @GuardedBy("this")
+  private final ArrayDeque<Prefetch> pendingPrefetches;
+
+  @GuardedBy("this")
+  private final ArrayDeque<Executor> idleExecutors;
+
+  @GuardedBy("this")
+  private int bufferedBytes;
+
+  @GuardedBy("this")
+  private boolean released;
+
+  /**
+   * Returns the {@link LoaderThreadPool} on which prefetches load when the media source doesn't
+   * set one. Its threads stop when they're idle, so it doesn't hold threads when there's nothing to
+   * prefetch.
+   */
+  public static synchronized LoaderThreadPool getSharedThreadPool() {
+    if (sharedThreadPool == null) {
+      sharedThreadPool = new LoaderThreadPool(THREAD_NAME);
+    }
+    return sharedThreadPool;
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param dataSourceFactory An {@link HlsDataSourceFactory} to create the {@link DataSource
+   *     DataSources} for the prefetches.
+   * @param transferListener The transfer listener which should be informed of prefetch data
+   *     transfers. May be null if no listener is available.
+   * @param threadPool The {@link LoaderThreadPool} on which the prefetches load.
+   * @param maxParallelLoads The maximum number of prefetches to load at the same time.
+   * @param maxBufferBytes The maximum number of prefetched bytes that haven't been read to hold in
+   *     memory.
+   */
+  public HlsSegmentPrefetcher(
+      HlsDataSourceFactory dataSourceFactory,
+      @Nullable TransferListener transferListener,
+      LoaderThreadPool threadPool,
+      int maxParallelLoads,
+      int maxBufferBytes) {
+    this.dataSourceFactory = dataSourceFactory;
+    this.transferListener = transferListener;
+    this.maxBufferBytes = maxBufferBytes;
+    byteArrayPool = ByteArrayPool.getShared();
+    prefetches = new ArrayList<>();
+    pendingPrefetches = new ArrayDeque<>();
+    idleExecutors = new ArrayDeque<>();
+    for (int i = 0; i < maxParallelLoads; i++) {
+      // Prefetches may wait for the reader to free memory, so they run on dedicated threads.
+      idleExecutors.add(
+          threadPool.createSerialExecutor(C.PRIORITY_PLAYBACK, /* tasksMayBlock= */ true));
+    }
+  }
+
+  /**
+   * Returns a {@link DataSource} that serves prefetched data, and reads from {@code upstream}
+   * otherwise.
+   */
+  public DataSource createDataSource(DataSource upstream) {
+    return new PrefetchingDataSource(upstream);
+  }
+
+  /**
+   * Sets the data to prefetch. Prefetches of other data that isn't being read are canceled, so
+   * that switching to another variant cancels the prefetches of the abandoned one.
+   *
+   * @param mediaDataSpecs The {@link DataSpec DataSpecs} of the media and initialization segments
+   *     to prefetch, in the order in which they're needed.
+   * @param keyDataSpecs The {@link DataSpec DataSpecs} of the keys to prefetch.
+   */
+  public synchronized void update(List<DataSpec> mediaDataSpecs, List<DataSpec> keyDataSpecs) {
+    if (released) {
+      return;
+    }
+    for (int i = prefetches.size() - 1; i >= 0; i--) {
+      Prefetch prefetch = prefetches.get(i);
+      if (!prefetch.isReading
+          && indexOf(mediaDataSpecs, prefetch.dataSpec) == C.INDEX_UNSET
+          && indexOf(keyDataSpecs, prefetch.dataSpec) == C.INDEX_UNSET) {
+        prefetches.remove(i);
+        cancel(prefetch);
+      }
+    }
+    // Keys are small and block the segments that need them, so they're requested first.
+    startPrefetches(keyDataSpecs, C.DATA_TYPE_DRM);
+    startPrefetches(mediaDataSpecs, C.DATA_TYPE_MEDIA);
+  }
+
+  /** Cancels all prefetches and frees their memory. */
+  public synchronized void release() {
+    released = true;
+    for (int i = 0; i < prefetches.size(); i++) {
+      cancel(prefetches.get(i));
+    }
+    prefetches.clear();
+  }
+
+  /** Returns the number of prefetched bytes that haven't been read. */
+  @VisibleForTesting
+  /* package */ synchronized int getBufferedBytes() {
+    return bufferedBytes;
+  }
+
+  @GuardedBy("this")
+  private void startPrefetches(List<DataSpec> dataSpecs, @C.DataType int dataType) {
+    for (int i = 0; i < dataSpecs.size() && bufferedBytes < maxBufferBytes; i++) {
+      DataSpec dataSpec = dataSpecs.get(i);
+      if (findPrefetch(dataSpec) == null) {
+        Prefetch prefetch = new Prefetch(dataSpec, dataType);
+        prefetches.add(prefetch);
+        pendingPrefetches.add(prefetch);
+      }
+    }
+    maybeStartLoads();
+  }
+
+  @GuardedBy("this")
+  private void maybeStartLoads() {
+    while (!pendingPrefetches.isEmpty() && !idleExecutors.isEmpty()) {
+      Prefetch prefetch = pendingPrefetches.remove();
+      Executor executor = idleExecutors.remove();
+      executor.execute(
+          () -> {
+            try {
+              load(prefetch);
+            } finally {
+              onLoadEnded(executor);
+            }
+          });
+    }
+  }
+
+  @GuardedBy("this")
+  private void cancel(Prefetch prefetch) {
+    prefetch.canceled = true;
+    pendingPrefetches.remove(prefetch);
+    bufferedBytes -= prefetch.allocationCount * ALLOCATION_SIZE;
+    prefetch.allocationCount = 0;
+    if (!prefetch.loading || prefetch.finished) {
+      // Otherwise the memory is freed when the load finishes, as it may still be written to.
+      releaseAllocations(prefetch);
+    }
+    // Wake up any reader waiting for the prefetch, so that it continues from upstream, and any
+    // prefetch waiting for memory.
+    notifyAll();
+  }
+
+  @GuardedBy("this")
+  private void releaseAllocations(Prefetch prefetch) {
+    for (int i = 0; i < prefetch.allocations.size(); i++) {
+      @Nullable byte[] allocation = prefetch.allocations.get(i);
+      if (allocation != null) {
+        byteArrayPool.release(allocation);
+      }
+    }
+    prefetch.allocations.clear();
+  }
+
+  /**
+   * Returns whether the prefetch is being read, or is the first of its type that will be read, in
+   * which case its reader will free the memory that it holds.
+   */
+  @GuardedBy("this")
+  private boolean isReadNext(Prefetch prefetch) {
+    if (prefetch.isReading) {
+      return true;
+    }
+    for (int i = 0; i < prefetches.size(); i++) {
+      Prefetch otherPrefetch = prefetches.get(i);
+      if (otherPrefetch.dataType == prefetch.dataType) {
+        return otherPrefetch == prefetch;
+      }
+    }
+    return false;
+  }
+
+  @GuardedBy("this")
+  @Nullable
+  private Prefetch findPrefetch(DataSpec dataSpec) {
+    for (int i = 0; i < prefetches.size(); i++) {
+      Prefetch prefetch = prefetches.get(i);
+      if (isSameData(prefetch.dataSpec, dataSpec)) {
+        return prefetch;
+      }
+    }
+    return null;
+  }
+
+  // Called on the loading threads.
+
+  private void load(Prefetch prefetch) {
+    if (!onLoadStarted(prefetch)) {
+      return;
+    }
+    DataSource dataSource = dataSourceFactory.createDataSource(prefetch.dataType);
+    if (transferListener != null) {
+      dataSource.addTransferListener(transferListener);
+    }
+    boolean completed = false;
+    try {
+      long length = dataSource.open(prefetch.dataSpec);
+      onOpened(prefetch, length, dataSource.getResponseHeaders());
+      @Nullable byte[] allocation = null;
+      int allocationOffset = ALLOCATION_SIZE;
+      while (true) {
+        if (allocationOffset == ALLOCATION_SIZE) {
+          allocation = maybeAllocate(prefetch);
+          if (allocation == null) {
+            // The prefetch was canceled, or the buffer is full of data that won't be read soon.
+            break;
+          }
+          allocationOffset = 0;
+        }
+        int bytesRead =
+            dataSource.read(
+                checkNotNull(allocation), allocationOffset, ALLOCATION_SIZE - allocationOffset);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          completed = true;
+          break;
+        }
+        allocationOffset += bytesRead;
+        onBytesLoaded(prefetch, bytesRead);
+      }
+    } catch (IOException e) {
+      // Do nothing. The data that wasn't prefetched will be read from upstream.
+    } finally {
+      Util.closeQuietly(dataSource);
+      onLoadFinished(prefetch, completed);
+    }
+  }
+
+  private synchronized boolean onLoadStarted(Prefetch prefetch) {
+    prefetch.loading = !prefetch.canceled;
+    return prefetch.loading;
+  }
+
+  private synchronized void onOpened(
+      Prefetch prefetch, long length, Map<String, List<String>> responseHeaders) {
+    prefetch.length = length;
+    prefetch.responseHeaders = responseHeaders;
+    prefetch.opened = true;
+    notifyAll();
+  }
+
+  @Nullable
+  private synchronized byte[] maybeAllocate(Prefetch prefetch) throws InterruptedIOException {
+    // Waiting is only worthwhile if reading the prefetch's own data will free memory.
+    while (!prefetch.canceled
+        && bufferedBytes + ALLOCATION_SIZE > maxBufferBytes
+        && prefetch.allocationCount > 0
+        && isReadNext(prefetch)) {
+      waitForUpdate();
+    }
+    if (prefetch.canceled || bufferedBytes + ALLOCATION_SIZE > maxBufferBytes) {
+      return null;
+    }
+    byte[] allocation = byteArrayPool.acquire(ALLOCATION_SIZE);
+    prefetch.allocations.add(allocation);
+    prefetch.allocationCount++;
+    bufferedBytes += ALLOCATION_SIZE;
+    return allocation;
+  }
+
+  private synchronized void onBytesLoaded(Prefetch prefetch, int bytesLoaded) {
+    prefetch.bytesLoaded += bytesLoaded;
+    notifyAll();
+  }
+
+  private synchronized void onLoadFinished(Prefetch prefetch, boolean completed) {
+    prefetch.completed = completed;
+    prefetch.finished = true;
+    if (prefetch.canceled) {
+      releaseAllocations(prefetch);
+    }
+    notifyAll();
+  }
+
+  private synchronized void onLoadEnded(Executor executor) {
+    idleExecutors.add(executor);
+    if (!released) {
+      maybeStartLoads();
+    }
+  }
+
+  // Called by the prefetching data sources.
+
+  @Nullable
+  private synchronized Prefetch acquirePrefetch(DataSpec dataSpec) {
+    @Nullable Prefetch prefetch = findPrefetch(dataSpec);
+    if (prefetch == null || prefetch.isReading) {
+      return null;
+    }
+    prefetch.isReading = true;
+    return prefetch;
+  }
+
+  /** Waits until the prefetch is opened, and returns whether opening it succeeded. */
+  private synchronized boolean awaitOpened(Prefetch prefetch) throws InterruptedIOException {
+    while (!prefetch.opened && !prefetch.finished && !prefetch.canceled) {
+      waitForUpdate();
+    }
+    return prefetch.opened;
+  }
+
+  /**
+   * Reads prefetched data, waiting for it to be loaded if necessary.
+   *
+   * @return The number of bytes read, {@link C#RESULT_END_OF_INPUT} if all of the data has been
+   *     read, or {@link #RESULT_PREFETCH_STOPPED} if the prefetch stopped before loading the
+   *     requested data.
+   */
+  private synchronized int readPrefetch(
+      Prefetch prefetch, long position, byte[] buffer, int offset, int length)
+      throws InterruptedIOException {
+    while (position >= prefetch.bytesLoaded && !prefetch.finished && !prefetch.canceled) {
+      waitForUpdate();
+    }
+    if (prefetch.canceled) {
+      // The prefetch's memory may have been freed.
+      return RESULT_PREFETCH_STOPPED;
+    }
+    if (position < prefetch.bytesLoaded) {
+      int allocationIndex = (int) (position / ALLOCATION_SIZE);
+      int allocationOffset = (int) (position % ALLOCATION_SIZE);
+      int bytesToRead =
+          (int)
+              min(
+                  min(length, ALLOCATION_SIZE - allocationOffset),
+                  prefetch.bytesLoaded - position);
+      byte[] allocation = checkNotNull(prefetch.allocations.get(allocationIndex));
+      System.arraycopy(allocation, allocationOffset, buffer, offset, bytesToRead);
+      if (allocationOffset + bytesToRead == ALLOCATION_SIZE) {
+        // The reader is past the allocation, so its memory can be used for more data.
+        prefetch.allocations.set(allocationIndex, null);
+        prefetch.allocationCount--;
+        bufferedBytes -= ALLOCATION_SIZE;
+        byteArrayPool.release(allocation);
+        notifyAll();
+      }
+      return bytesToRead;
+    }
+    return prefetch.completed ? C.RESULT_END_OF_INPUT : RESULT_PREFETCH_STOPPED;
+  }
+
+  private synchronized void releasePrefetch(Prefetch prefetch) {
+    if (prefetches.remove(prefetch)) {
+      cancel(prefetch);
+    }
+  }
+
+  @GuardedBy("this")
+  private void waitForUpdate() throws InterruptedIOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private static int indexOf(List<DataSpec> dataSpecs, DataSpec dataSpec) {
+    for (int i = 0; i < dataSpecs.size(); i++) {
+      if (isSameData(dataSpecs.get(i), dataSpec)) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  private static boolean isSameData(DataSpec dataSpec, DataSpec otherDataSpec) {
+    return dataSpec.position == otherDataSpec.position
+        && dataSpec.length == otherDataSpec.length
+        && dataSpec.uri.equals(otherDataSpec.uri);
+  }
+
+  private static final class Prefetch {
+
+    public final DataSpec dataSpec;
+    @C.DataType public final int dataType;
+    /** The allocations holding the loaded data, or null for those that have been read. */
+    public final List<@NullableType byte[]> allocations;
+
+    public Map<String, List<String>> responseHeaders;
+    public long length;
+    public long bytesLoaded;
+    public int allocationCount;
+    public boolean loading;
+    public boolean opened;
+    public boolean finished;
+    public boolean completed;
+    public boolean canceled;
+    public boolean isReading;
+
+    public Prefetch(DataSpec dataSpec, @C.DataType int dataType) {
+      this.dataSpec = dataSpec;
+      this.dataType = dataType;
+      allocations = new ArrayList<>();
+      responseHeaders = Collections.emptyMap();
+      length = C.LENGTH_UNSET;
+    }
+  }
+
+  private final class PrefetchingDataSource implements DataSource {
+
+    private final DataSource upstream;
+
+    @Nullable private DataSpec dataSpec;
+    @Nullable private Prefetch prefetch;
+    @Nullable private Uri uri;
+    private Map<String, List<String>> responseHeaders;
+    private long bytesRead;
+    private boolean upstreamOpened;
+
+    public PrefetchingDataSource(DataSource upstream) {
+      this.upstream = upstream;
+      responseHeaders = Collections.emptyMap();
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      // Only transfers from upstream are reported. Prefetch transfers are reported by the
+      // prefetcher.
+      upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      this.dataSpec = dataSpec;
+      uri = dataSpec.uri;
+      bytesRead = 0;
+      @Nullable Prefetch prefetch = acquirePrefetch(dataSpec);
+      if (prefetch != null) {
+        if (awaitOpened(prefetch)) {
+          this.prefetch = prefetch;
+          responseHeaders = prefetch.responseHeaders;
+          return dataSpec.length != C.LENGTH_UNSET ? dataSpec.length : prefetch.length;
+        }
+        // The prefetch failed before loading any data.
+        releasePrefetch(prefetch);
+      }
+      return openUpstream(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      if (readLength == 0) {
+        return 0;
+      }
+      @Nullable Prefetch prefetch = this.prefetch;
+      if (prefetch != null) {
+        int result = readPrefetch(prefetch, bytesRead, buffer, offset, readLength);
+        if (result != RESULT_PREFETCH_STOPPED) {
+          if (result != C.RESULT_END_OF_INPUT) {
+            bytesRead += result;
+          }
+          return result;
+        }
+        // The prefetch stopped before loading all of the data. Read the remainder from upstream.
+        releasePrefetch(prefetch);
+        this.prefetch = null;
+        openUpstream(checkNotNull(dataSpec).subrange(bytesRead));
+      }
+      return upstream.read(buffer, offset, readLength);
+    }
+
+    @Override
+    @Nullable
+    public Uri getUri() {
+      return upstreamOpened ? upstream.getUri() : uri;
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return upstreamOpened ? upstream.getResponseHeaders() : responseHeaders;
+    }
+
+    @Override
+    public void close() throws IOException {
+      dataSpec = null;
+      uri = null;
+      responseHeaders = Collections.emptyMap();
+      if (prefetch != null) {
+        releasePrefetch(prefetch);
+        prefetch = null;
+      }
+      if (upstreamOpened) {
+        upstreamOpened = false;
+        upstream.close();
+      }
+    }
+
+    private long openUpstream(DataSpec dataSpec) throws IOException {
+      upstreamOpened = true;
+      return upstream.open(dataSpec);
+    }
+  }
+}
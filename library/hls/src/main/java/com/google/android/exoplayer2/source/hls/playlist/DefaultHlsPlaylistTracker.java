@@ -77,6 +77,9 @@ public final class DefaultHlsPlaylistTracker
   @Nullable private HlsMediaPlaylist primaryMediaPlaylistSnapshot;
   private boolean isLive;
   private long initialStartTimeUs;
+  private int deltaUpdateCount;
+  private int deltaUpdateFailureCount;
+  private long deltaUpdateBytesSaved;
 
   /**
    * Creates an instance.
@@ -121,6 +124,31 @@ public final class DefaultHlsPlaylistTracker
     initialStartTimeUs = C.TIME_UNSET;
   }
 
+  /**
+   * Returns the number of media playlists that have been loaded as delta updates, as defined by
+   * #EXT-X-SKIP, and merged with the previous snapshots.
+   */
+  public int getDeltaUpdateCount() {
+    return deltaUpdateCount;
+  }
+
+  /**
+   * Returns the number of delta updates that couldn't be merged with the previous snapshots, and
+   * were followed by full reloads.
+   */
+  public int getDeltaUpdateFailureCount() {
+    return deltaUpdateFailureCount;
+  }
+
+  /**
+   * Returns an estimate of the number of bytes not loaded thanks to delta updates. The size of the
+   * full playlist that each delta update replaced is estimated from the size per segment of the
+   * last full playlist loaded.
+   */
+  public long getDeltaUpdateBytesSaved() {
+    return deltaUpdateBytesSaved;
+  }
+
   // HlsPlaylistTracker implementation.
 
   @Override
@@ -220,7 +248,7 @@ public final class DefaultHlsPlaylistTracker
 
   @Override
   public void refreshPlaylist(Uri url) {
-    playlistBundles.get(url).loadPlaylist();
+    playlistBundles.get(url).loadPlaylist(/* allowDeltaUpdates= */ true);
   }
 
   @Override
@@ -258,7 +286,7 @@ public final class DefaultHlsPlaylistTracker
       // We don't need to load the playlist again. We can use the same result.
       primaryBundle.processLoadedPlaylist((HlsMediaPlaylist) result, loadEventInfo);
     } else {
-      primaryBundle.loadPlaylist();
+      primaryBundle.loadPlaylist(/* allowDeltaUpdates= */ false);
     }
     loadErrorHandlingPolicy.onLoadTaskConcluded(loadable.loadTaskId);
     eventDispatcher.loadCompleted(loadEventInfo, C.DATA_TYPE_MANIFEST);
@@ -496,6 +524,7 @@ public final class DefaultHlsPlaylistTracker
     private final DataSource mediaPlaylistDataSource;
 
     @Nullable private HlsMediaPlaylist playlistSnapshot;
+    private double fullPlaylistBytesPerSegment;
     private long lastSnapshotLoadMs;
     private long lastSnapshotChangeMs;
     private long earliestNextLoadTimeMs;
@@ -526,8 +555,15 @@ public final class DefaultHlsPlaylistTracker
           || lastSnapshotLoadMs + snapshotValidityDurationMs > currentTimeMs;
     }
 
-    public void loadPlaylist() {
-      loadPlaylistInternal(playlistUrl);
+    /**
+     * Loads the playlist. The request is never a blocking playlist reload, so that the new
+     * snapshot is returned as soon as possible.
+     *
+     * @param allowDeltaUpdates Whether a delta update may be requested, if the server supports
+     *     them and the current snapshot is recent enough.
+     */
+    public void loadPlaylist(boolean allowDeltaUpdates) {
+      loadPlaylistInternal(allowDeltaUpdates ? getMediaPlaylistUriForRefresh() : playlistUrl);
     }
 
     public void maybeThrowPlaylistRefreshError() throws IOException {
@@ -613,8 +649,11 @@ public final class DefaultHlsPlaylistTracker
           // Intercept failed delta updates and blocking requests producing a Bad Request (400) and
           // Service Unavailable (503). In such cases, force a full, non-blocking request (see RFC
           // 8216, section 6.2.5.2 and 6.3.7).
+          if (deltaUpdateFailed) {
+            deltaUpdateFailureCount++;
+          }
           earliestNextLoadTimeMs = SystemClock.elapsedRealtime();
-          loadPlaylist();
+          loadPlaylist(/* allowDeltaUpdates= */ false);
           castNonNull(eventDispatcher)
               .loadError(loadEventInfo, loadable.type, error, /* wasCanceled= */ true);
           return Loader.DONT_RETRY;
@@ -698,6 +737,7 @@ public final class DefaultHlsPlaylistTracker
       @Nullable HlsMediaPlaylist oldPlaylist = playlistSnapshot;
       long currentTimeMs = SystemClock.elapsedRealtime();
       lastSnapshotLoadMs = currentTimeMs;
+      updateDeltaUpdateStatistics(loadedPlaylist, loadEventInfo.bytesLoaded);
       playlistSnapshot = getLatestPlaylistSnapshot(oldPlaylist, loadedPlaylist);
       if (playlistSnapshot != oldPlaylist) {
         playlistError = null;
@@ -751,10 +791,23 @@ public final class DefaultHlsPlaylistTracker
       }
     }
 
+    private void updateDeltaUpdateStatistics(HlsMediaPlaylist loadedPlaylist, long bytesLoaded) {
+      int segmentCount = loadedPlaylist.segments.size();
+      if (loadedPlaylist.skippedSegmentCount > 0) {
+        deltaUpdateCount++;
+        if (fullPlaylistBytesPerSegment > 0) {
+          long estimatedFullPlaylistBytes = (long) (fullPlaylistBytesPerSegment * segmentCount);
+          deltaUpdateBytesSaved += max(0, estimatedFullPlaylistBytes - bytesLoaded);
+        }
+      } else if (segmentCount > 0) {
+        fullPlaylistBytesPerSegment = (double) bytesLoaded / segmentCount;
+      }
+    }
+
     private Uri getMediaPlaylistUriForReload() {
+      boolean requestDeltaUpdate = canRequestDeltaUpdate();
       if (playlistSnapshot == null
-          || (playlistSnapshot.serverControl.skipUntilUs == C.TIME_UNSET
-              && !playlistSnapshot.serverControl.canBlockReload)) {
+          || (!requestDeltaUpdate && !playlistSnapshot.serverControl.canBlockReload)) {
         return playlistUrl;
       }
       Uri.Builder uriBuilder = playlistUrl.buildUpon();
@@ -772,13 +825,42 @@ public final class DefaultHlsPlaylistTracker
           uriBuilder.appendQueryParameter(BLOCK_PART_PARAM, String.valueOf(targetPartIndex));
         }
       }
-      if (playlistSnapshot.serverControl.skipUntilUs != C.TIME_UNSET) {
-        uriBuilder.appendQueryParameter(
-            SKIP_PARAM, playlistSnapshot.serverControl.canSkipDateRanges ? "v2" : "YES");
+      if (requestDeltaUpdate) {
+        uriBuilder.appendQueryParameter(SKIP_PARAM, getSkipParamValue(playlistSnapshot));
       }
       return uriBuilder.build();
     }
 
+    /** Returns the URI to refresh the playlist with, requesting a delta update if possible. */
+    private Uri getMediaPlaylistUriForRefresh() {
+      @Nullable HlsMediaPlaylist playlistSnapshot = this.playlistSnapshot;
+      if (playlistSnapshot == null || !canRequestDeltaUpdate()) {
+        return playlistUrl;
+      }
+      return playlistUrl
+          .buildUpon()
+          .appendQueryParameter(SKIP_PARAM, getSkipParamValue(playlistSnapshot))
+          .build();
+    }
+
+    /**
+     * Returns whether a delta update can be requested for the current snapshot. The server must
+     * advertise a skip boundary, and the snapshot must be no older than half the skip boundary when
+     * the request is made (see RFC 8216bis, section 6.3.7).
+     */
+    private boolean canRequestDeltaUpdate() {
+      if (playlistSnapshot == null || playlistSnapshot.serverControl.skipUntilUs == C.TIME_UNSET) {
+        return false;
+      }
+      long loadTimeMs = max(SystemClock.elapsedRealtime(), earliestNextLoadTimeMs);
+      long snapshotAgeMs = loadTimeMs - lastSnapshotLoadMs;
+      return snapshotAgeMs <= C.usToMs(playlistSnapshot.serverControl.skipUntilUs) / 2;
+    }
+
+    private String getSkipParamValue(HlsMediaPlaylist playlistSnapshot) {
+      return playlistSnapshot.serverControl.canSkipDateRanges ? "v2" : "YES";
+    }
+
     /**
      * Excludes the playlist.
      *
@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import java.util.Arrays;
+
+/**
+ * Tokenizes the attribute list of an HLS playlist tag, as defined in RFC 8216 Section 4.2.
+ *
+ * <p>A line is tokenized in a single pass by {@link #reset(String)}, which records where the name
+ * and value of each attribute start and end. Values are only copied out of the line when they're
+ * read as strings. An instance can be reset with each line of a playlist, so that the same slots
+ * are used for all of them.
+ *
+ * <p>Tokenizing is lenient. Whitespace around names and unquoted values is ignored, anything
+ * between the closing quote of a value and the next comma is skipped, and attributes without a
+ * value are dropped. Empty values are treated as absent. For attributes that occur more than once,
+ * the first occurrence is used.
+ *
+ * <p>Quoted values are read up to their closing quote, so they may contain commas. A comma followed
+ * by an attribute name and an equals sign inside a quoted value is taken to mean that the quote
+ * should have been closed before the comma, and the attribute is tokenized as well, following the
+ * quoted attribute. The quoted value itself is unchanged.
+ */
+/* package */ final class HlsAttributeList {
+
+  /** Returned by {@link #parseDigits(String, int, int)} if the digits are malformed. */
+  public static final long DIGITS_MALFORMED = -1;
+
+  private static final String BOOLEAN_TRUE = "YES";
+  private static final String BOOLEAN_FALSE = "NO";
+  private static final int INITIAL_CAPACITY = 16;
+  /** The largest integer below which all integers are exactly representable as doubles. */
+  private static final long MAX_EXACT_DOUBLE_MANTISSA = 1L << 53;
+  /** Powers of ten that are exactly representable as doubles. */
+  private static final double[] EXACT_POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+    1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private String line;
+  private int size;
+  private int[] nameStarts;
+  private int[] nameEnds;
+  private int[] valueStarts;
+  private int[] valueEnds;
+  private boolean[] valuesQuoted;
+
+  public HlsAttributeList() {
+    line = "";
+    nameStarts = new int[INITIAL_CAPACITY];
+    nameEnds = new int[INITIAL_CAPACITY];
+    valueStarts = new int[INITIAL_CAPACITY];
+    valueEnds = new int[INITIAL_CAPACITY];
+    valuesQuoted = new boolean[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Tokenizes the attribute list of a tag line, which is everything after the first colon.
+   *
+   * @param line The tag line.
+   */
+  public void reset(String line) {
+    this.line = line;
+    size = 0;
+    int length = line.length();
+    int position = line.indexOf(':') + 1;
+    if (position == 0) {
+      return;
+    }
+    while (position < length) {
+      position = skipWhitespace(line, position, length);
+      int nameStart = position;
+      while (position < length && line.charAt(position) != '=' && line.charAt(position) != ',') {
+        position++;
+      }
+      if (position == length || line.charAt(position) == ',') {
+        // The attribute has no value.
+        position++;
+        continue;
+      }
+      int nameEnd = trimTrailingWhitespace(line, nameStart, position);
+      position = skipWhitespace(line, position + 1, length);
+      int valueStart;
+      int valueEnd;
+      if (position < length && line.charAt(position) == '"') {
+        valueStart = position + 1;
+        valueEnd = line.indexOf('"', valueStart);
+        if (valueEnd == -1) {
+          // The quoted string isn't terminated.
+          return;
+        }
+        position = line.indexOf(',', valueEnd + 1);
+        add(nameStart, nameEnd, valueStart, valueEnd, /* quoted= */ true);
+        addEmbeddedAttributes(valueStart, valueEnd);
+      } else {
+        valueStart = position;
+        position = line.indexOf(',', position);
+        valueEnd = trimTrailingWhitespace(line, valueStart, position == -1 ? length : position);
+        add(nameStart, nameEnd, valueStart, valueEnd, /* quoted= */ false);
+      }
+      if (position == -1) {
+        return;
+      }
+      position++;
+    }
+  }
+
+  /** Returns the tokenized line. */
+  public String getLine() {
+    return line;
+  }
+
+  /** Returns whether the attribute list contains a non-empty value for {@code name}. */
+  public boolean contains(String name) {
+    return indexOf(name) != C.INDEX_UNSET;
+  }
+
+  /** Returns the value of an attribute, or null if it's absent or empty. */
+  @Nullable
+  public String getString(String name) {
+    int index = indexOf(name);
+    return index == C.INDEX_UNSET ? null : line.substring(valueStarts[index], valueEnds[index]);
+  }
+
+  /**
+   * Returns the value of a quoted-string attribute without its quotes, or null if it's absent,
+   * empty or not quoted.
+   */
+  @Nullable
+  public String getQuotedString(String name) {
+    int index = indexOf(name);
+    return index == C.INDEX_UNSET || !valuesQuoted[index]
+        ? null
+        : line.substring(valueStarts[index], valueEnds[index]);
+  }
+
+  /** Returns whether the value of an attribute is equal to {@code value}. */
+  public boolean valueEquals(String name, String value) {
+    int index = indexOf(name);
+    return index != C.INDEX_UNSET
+        && valueEnds[index] - valueStarts[index] == value.length()
+        && line.startsWith(value, valueStarts[index]);
+  }
+
+  /**
+   * Returns the value of a decimal integer attribute, or {@code defaultValue} if it's absent or
+   * malformed.
+   */
+  public long getLong(String name, long defaultValue) {
+    int index = indexOf(name);
+    if (index == C.INDEX_UNSET) {
+      return defaultValue;
+    }
+    long value = parseDigits(line, valueStarts[index], valueEnds[index]);
+    return value == DIGITS_MALFORMED ? defaultValue : value;
+  }
+
+  /**
+   * Returns the value of a signed decimal floating-point attribute, or {@code defaultValue} if it's
+   * absent or malformed.
+   */
+  public double getDouble(String name, double defaultValue) {
+    int index = indexOf(name);
+    if (index == C.INDEX_UNSET) {
+      return defaultValue;
+    }
+    double value = parseDecimal(line, valueStarts[index], valueEnds[index]);
+    return Double.isNaN(value) ? defaultValue : value;
+  }
+
+  /**
+   * Returns the value of a boolean attribute, or {@code defaultValue} if it's absent or neither
+   * {@code YES} nor {@code NO}.
+   */
+  public boolean getBoolean(String name, boolean defaultValue) {
+    if (valueEquals(name, BOOLEAN_TRUE)) {
+      return true;
+    } else if (valueEquals(name, BOOLEAN_FALSE)) {
+      return false;
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Parses the decimal digits in {@code string} between {@code start} and {@code end}.
+   *
+   * @return The parsed value, or {@link #DIGITS_MALFORMED} if the range is empty, contains anything
+   *     other than digits, or overflows a long.
+   */
+  public static long parseDigits(String string, int start, int end) {
+    if (start >= end) {
+      return DIGITS_MALFORMED;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = string.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+        return DIGITS_MALFORMED;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * Parses a signed decimal number without an exponent in {@code string} between {@code start} and
+   * {@code end}.
+   *
+   * <p>The result is the same as that of {@link Double#parseDouble(String)}. Numbers with up to 15
+   * significant digits are parsed without allocating.
+   *
+   * @return The parsed value, or {@link Double#NaN} if the range is empty or malformed.
+   */
+  public static double parseDecimal(String string, int start, int end) {
+    boolean negative = start < end && string.charAt(start) == '-';
+    int position = negative ? start + 1 : start;
+    long mantissa = 0;
+    int digitCount = 0;
+    int fractionDigitCount = 0;
+    boolean seenPoint = false;
+    for (; position < end; position++) {
+      char c = string.charAt(position);
+      if (c == '.' && !seenPoint) {
+        seenPoint = true;
+      } else if (c >= '0' && c <= '9') {
+        if (mantissa < MAX_EXACT_DOUBLE_MANTISSA / 10) {
+          mantissa = mantissa * 10 + (c - '0');
+          if (seenPoint) {
+            fractionDigitCount++;
+          }
+        } else {
+          // Too many significant digits to parse exactly here.
+          mantissa = -1;
+          break;
+        }
+        digitCount++;
+      } else {
+        return Double.NaN;
+      }
+    }
+    if (digitCount == 0) {
+      return Double.NaN;
+    }
+    double value;
+    if (mantissa >= 0 && fractionDigitCount < EXACT_POWERS_OF_TEN.length) {
+      // Both operands are exact, so the quotient is correctly rounded like Double.parseDouble.
+      value = mantissa / EXACT_POWERS_OF_TEN[fractionDigitCount];
+    } else {
+      try {
+        value = Double.parseDouble(string.substring(negative ? start + 1 : start, end));
+      } catch (NumberFormatException e) {
+        return Double.NaN;
+      }
+    }
+    return negative ? -value : value;
+  }
+
+  private int indexOf(String name) {
+    int nameLength = name.length();
+    for (int i = 0; i < size; i++) {
+      if (nameEnds[i] - nameStarts[i] == nameLength
+          && valueEnds[i] > valueStarts[i]
+          && line.startsWith(name, nameStarts[i])) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  /**
+   * Tokenizes the unquoted attributes that follow commas inside the quoted value between {@code
+   * start} and {@code end}.
+   */
+  private void addEmbeddedAttributes(int start, int end) {
+    int position = line.indexOf(',', start);
+    while (position != -1 && position < end) {
+      int nameStart = position + 1;
+      int nameEnd = nameStart;
+      while (nameEnd < end && isAttributeNameChar(line.charAt(nameEnd))) {
+        nameEnd++;
+      }
+      position = line.indexOf(',', nameEnd);
+      if (nameEnd > nameStart && nameEnd < end && line.charAt(nameEnd) == '=') {
+        int valueEnd = position == -1 || position > end ? end : position;
+        add(nameStart, nameEnd, nameEnd + 1, valueEnd, /* quoted= */ false);
+      }
+    }
+  }
+
+  private void add(int nameStart, int nameEnd, int valueStart, int valueEnd, boolean quoted) {
+    if (size == nameStarts.length) {
+      int newCapacity = size * 2;
+      nameStarts = Arrays.copyOf(nameStarts, newCapacity);
+      nameEnds = Arrays.copyOf(nameEnds, newCapacity);
+      valueStarts = Arrays.copyOf(valueStarts, newCapacity);
+      valueEnds = Arrays.copyOf(valueEnds, newCapacity);
+      valuesQuoted = Arrays.copyOf(valuesQuoted, newCapacity);
+    }
+    nameStarts[size] = nameStart;
+    nameEnds[size] = nameEnd;
+    valueStarts[size] = valueStart;
+    valueEnds[size] = valueEnd;
+    valuesQuoted[size] = quoted;
+    size++;
+  }
+
+  private static boolean isAttributeNameChar(char c) {
+    return (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-';
+  }
+
+  private static int skipWhitespace(String string, int position, int end) {
+    while (position < end && Character.isWhitespace(string.charAt(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  private static int trimTrailingWhitespace(String string, int start, int end) {
+    while (end > start && Character.isWhitespace(string.charAt(end - 1))) {
+      end--;
+    }
+    return end;
+  }
+}
@@ -171,7 +171,8 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
     }
 
     public Segment copyWith(long relativeStartTimeUs, int relativeDiscontinuitySequence) {
-      List<Part> updatedParts = new ArrayList<>();
+      // Segments without parts share the immutable empty list.
+      List<Part> updatedParts = parts.isEmpty() ? parts : new ArrayList<>(parts.size());
       long relativePartStartTimeUs = relativeStartTimeUs;
       for (int i = 0; i < parts.size(); i++) {
         Part part = parts.get(i);
@@ -455,6 +456,60 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
   public final long durationUs;
   /** The attributes of the #EXT-X-SERVER-CONTROL header. */
   public final ServerControl serverControl;
+  /**
+   * The number of segments that were skipped by the delta update from which the playlist was
+   * merged, as defined by #EXT-X-SKIP, or 0 if the playlist was loaded in full.
+   */
+  public final int skippedSegmentCount;
+
+  /**
+   * @deprecated Use {@link #HlsMediaPlaylist(int, String, List, long, long, boolean, int, long,
+   *     int, long, long, boolean, boolean, boolean, DrmInitData, List, List, ServerControl, Map,
+   *     int)} instead.
+   */
+  @Deprecated
+  public HlsMediaPlaylist(
+      @PlaylistType int playlistType,
+      String baseUri,
+      List<String> tags,
+      long startOffsetUs,
+      long startTimeUs,
+      boolean hasDiscontinuitySequence,
+      int discontinuitySequence,
+      long mediaSequence,
+      int version,
+      long targetDurationUs,
+      long partTargetDurationUs,
+      boolean hasIndependentSegments,
+      boolean hasEndTag,
+      boolean hasProgramDateTime,
+      @Nullable DrmInitData protectionSchemes,
+      List<Segment> segments,
+      List<Part> trailingParts,
+      ServerControl serverControl,
+      Map<Uri, RenditionReport> renditionReports) {
+    this(
+        playlistType,
+        baseUri,
+        tags,
+        startOffsetUs,
+        startTimeUs,
+        hasDiscontinuitySequence,
+        discontinuitySequence,
+        mediaSequence,
+        version,
+        targetDurationUs,
+        partTargetDurationUs,
+        hasIndependentSegments,
+        hasEndTag,
+        hasProgramDateTime,
+        protectionSchemes,
+        segments,
+        trailingParts,
+        serverControl,
+        renditionReports,
+        /* skippedSegmentCount= */ 0);
+  }
 
   /**
    * @param playlistType See {@link #playlistType}.
@@ -475,6 +530,7 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
    * @param trailingParts See {@link #trailingParts}.
    * @param serverControl See {@link #serverControl}
    * @param renditionReports See {@link #renditionReports}.
+   * @param skippedSegmentCount See {@link #skippedSegmentCount}.
    */
   public HlsMediaPlaylist(
       @PlaylistType int playlistType,
@@ -495,7 +551,8 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
       List<Segment> segments,
       List<Part> trailingParts,
       ServerControl serverControl,
-      Map<Uri, RenditionReport> renditionReports) {
+      Map<Uri, RenditionReport> renditionReports,
+      int skippedSegmentCount) {
     super(baseUri, tags, hasIndependentSegments);
     this.playlistType = playlistType;
     this.startTimeUs = startTimeUs;
@@ -523,6 +580,7 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
     this.startOffsetUs = startOffsetUs == C.TIME_UNSET ? C.TIME_UNSET
         : startOffsetUs >= 0 ? startOffsetUs : durationUs + startOffsetUs;
     this.serverControl = serverControl;
+    this.skippedSegmentCount = skippedSegmentCount;
   }
 
   @Override
@@ -590,7 +648,8 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         segments,
         trailingParts,
         serverControl,
-        renditionReports);
+        renditionReports,
+        skippedSegmentCount);
   }
 
   /**
@@ -620,7 +679,8 @@ public final class HlsMediaPlaylist extends HlsPlaylist {
         segments,
         trailingParts,
         serverControl,
-        renditionReports);
+        renditionReports,
+        skippedSegmentCount);
   }
 
 }
@@ -59,8 +59,6 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.qual.EnsuresNonNullIf;
 import org.checkerframework.checker.nullness.qual.PolyNull;
 
@@ -125,95 +123,66 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       "urn:uuid:edef8ba9-79d6-4ace-a3c8-27dcd51d21ed";
   private static final String KEYFORMAT_WIDEVINE_PSSH_JSON = "com.widevine";
 
-  private static final String BOOLEAN_TRUE = "YES";
-  private static final String BOOLEAN_FALSE = "NO";
-
   private static final String ATTR_CLOSED_CAPTIONS_NONE = "CLOSED-CAPTIONS=NONE";
 
-  private static final Pattern REGEX_AVERAGE_BANDWIDTH =
-      Pattern.compile("AVERAGE-BANDWIDTH=(\\d+)\\b");
-  private static final Pattern REGEX_VIDEO = Pattern.compile("VIDEO=\"(.+?)\"");
-  private static final Pattern REGEX_AUDIO = Pattern.compile("AUDIO=\"(.+?)\"");
-  private static final Pattern REGEX_SUBTITLES = Pattern.compile("SUBTITLES=\"(.+?)\"");
-  private static final Pattern REGEX_CLOSED_CAPTIONS = Pattern.compile("CLOSED-CAPTIONS=\"(.+?)\"");
-  private static final Pattern REGEX_BANDWIDTH = Pattern.compile("[^-]BANDWIDTH=(\\d+)\\b");
-  private static final Pattern REGEX_CHANNELS = Pattern.compile("CHANNELS=\"(.+?)\"");
-  private static final Pattern REGEX_CODECS = Pattern.compile("CODECS=\"(.+?)\"");
-  private static final Pattern REGEX_RESOLUTION = Pattern.compile("RESOLUTION=(\\d+x\\d+)");
-  private static final Pattern REGEX_FRAME_RATE = Pattern.compile("FRAME-RATE=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_TARGET_DURATION = Pattern.compile(TAG_TARGET_DURATION
-      + ":(\\d+)\\b");
-  private static final Pattern REGEX_ATTR_DURATION = Pattern.compile("DURATION=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_PART_TARGET_DURATION =
-      Pattern.compile("PART-TARGET=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_VERSION = Pattern.compile(TAG_VERSION + ":(\\d+)\\b");
-  private static final Pattern REGEX_PLAYLIST_TYPE = Pattern.compile(TAG_PLAYLIST_TYPE
-      + ":(.+)\\b");
-  private static final Pattern REGEX_CAN_SKIP_UNTIL =
-      Pattern.compile("CAN-SKIP-UNTIL=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_CAN_SKIP_DATE_RANGES =
-      compileBooleanAttrPattern("CAN-SKIP-DATERANGES");
-  private static final Pattern REGEX_SKIPPED_SEGMENTS =
-      Pattern.compile("SKIPPED-SEGMENTS=(\\d+)\\b");
-  private static final Pattern REGEX_HOLD_BACK = Pattern.compile("[:|,]HOLD-BACK=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_PART_HOLD_BACK =
-      Pattern.compile("PART-HOLD-BACK=([\\d\\.]+)\\b");
-  private static final Pattern REGEX_CAN_BLOCK_RELOAD =
-      compileBooleanAttrPattern("CAN-BLOCK-RELOAD");
-  private static final Pattern REGEX_MEDIA_SEQUENCE = Pattern.compile(TAG_MEDIA_SEQUENCE
-      + ":(\\d+)\\b");
-  private static final Pattern REGEX_MEDIA_DURATION = Pattern.compile(TAG_MEDIA_DURATION
-      + ":([\\d\\.]+)\\b");
-  private static final Pattern REGEX_MEDIA_TITLE =
-      Pattern.compile(TAG_MEDIA_DURATION + ":[\\d\\.]+\\b,(.+)");
-  private static final Pattern REGEX_LAST_MSN = Pattern.compile("LAST-MSN" + "=(\\d+)\\b");
-  private static final Pattern REGEX_LAST_PART = Pattern.compile("LAST-PART" + "=(\\d+)\\b");
-  private static final Pattern REGEX_TIME_OFFSET = Pattern.compile("TIME-OFFSET=(-?[\\d\\.]+)\\b");
-  private static final Pattern REGEX_BYTERANGE = Pattern.compile(TAG_BYTERANGE
-      + ":(\\d+(?:@\\d+)?)\\b");
-  private static final Pattern REGEX_ATTR_BYTERANGE =
-      Pattern.compile("BYTERANGE=\"(\\d+(?:@\\d+)?)\\b\"");
-  private static final Pattern REGEX_BYTERANGE_START = Pattern.compile("BYTERANGE-START=(\\d+)\\b");
-  private static final Pattern REGEX_BYTERANGE_LENGTH =
-      Pattern.compile("BYTERANGE-LENGTH=(\\d+)\\b");
-  private static final Pattern REGEX_METHOD =
-      Pattern.compile(
-          "METHOD=("
-              + METHOD_NONE
-              + "|"
-              + METHOD_AES_128
-              + "|"
-              + METHOD_SAMPLE_AES
-              + "|"
-              + METHOD_SAMPLE_AES_CENC
-              + "|"
-              + METHOD_SAMPLE_AES_CTR
-              + ")"
-              + "\\s*(?:,|$)");
-  private static final Pattern REGEX_KEYFORMAT = Pattern.compile("KEYFORMAT=\"(.+?)\"");
-  private static final Pattern REGEX_KEYFORMATVERSIONS =
-      Pattern.compile("KEYFORMATVERSIONS=\"(.+?)\"");
-  private static final Pattern REGEX_URI = Pattern.compile("URI=\"(.+?)\"");
-  private static final Pattern REGEX_IV = Pattern.compile("IV=([^,.*]+)");
-  private static final Pattern REGEX_TYPE = Pattern.compile("TYPE=(" + TYPE_AUDIO + "|" + TYPE_VIDEO
-      + "|" + TYPE_SUBTITLES + "|" + TYPE_CLOSED_CAPTIONS + ")");
-  private static final Pattern REGEX_PRELOAD_HINT_TYPE =
-      Pattern.compile("TYPE=(" + TYPE_PART + "|" + TYPE_MAP + ")");
-  private static final Pattern REGEX_LANGUAGE = Pattern.compile("LANGUAGE=\"(.+?)\"");
-  private static final Pattern REGEX_NAME = Pattern.compile("NAME=\"(.+?)\"");
-  private static final Pattern REGEX_GROUP_ID = Pattern.compile("GROUP-ID=\"(.+?)\"");
-  private static final Pattern REGEX_CHARACTERISTICS = Pattern.compile("CHARACTERISTICS=\"(.+?)\"");
-  private static final Pattern REGEX_INSTREAM_ID =
-      Pattern.compile("INSTREAM-ID=\"((?:CC|SERVICE)\\d+)\"");
-  private static final Pattern REGEX_AUTOSELECT = compileBooleanAttrPattern("AUTOSELECT");
-  private static final Pattern REGEX_DEFAULT = compileBooleanAttrPattern("DEFAULT");
-  private static final Pattern REGEX_FORCED = compileBooleanAttrPattern("FORCED");
-  private static final Pattern REGEX_INDEPENDENT = compileBooleanAttrPattern("INDEPENDENT");
-  private static final Pattern REGEX_GAP = compileBooleanAttrPattern("GAP");
-  private static final Pattern REGEX_VALUE = Pattern.compile("VALUE=\"(.+?)\"");
-  private static final Pattern REGEX_IMPORT = Pattern.compile("IMPORT=\"(.+?)\"");
-  private static final Pattern REGEX_VARIABLE_REFERENCE =
-      Pattern.compile("\\{\\$([a-zA-Z0-9\\-_]+)\\}");
+  private static final String ATTR_AVERAGE_BANDWIDTH = "AVERAGE-BANDWIDTH";
+  private static final String ATTR_VIDEO = "VIDEO";
+  private static final String ATTR_AUDIO = "AUDIO";
+  private static final String ATTR_SUBTITLES = "SUBTITLES";
+  private static final String ATTR_CLOSED_CAPTIONS = "CLOSED-CAPTIONS";
+  private static final String ATTR_BANDWIDTH = "BANDWIDTH";
+  private static final String ATTR_CHANNELS = "CHANNELS";
+  private static final String ATTR_CODECS = "CODECS";
+  private static final String ATTR_RESOLUTION = "RESOLUTION";
+  private static final String ATTR_FRAME_RATE = "FRAME-RATE";
+  private static final String ATTR_DURATION = "DURATION";
+  private static final String ATTR_PART_TARGET = "PART-TARGET";
+  private static final String ATTR_CAN_SKIP_UNTIL = "CAN-SKIP-UNTIL";
+  private static final String ATTR_CAN_SKIP_DATE_RANGES = "CAN-SKIP-DATERANGES";
+  private static final String ATTR_SKIPPED_SEGMENTS = "SKIPPED-SEGMENTS";
+  private static final String ATTR_HOLD_BACK = "HOLD-BACK";
+  private static final String ATTR_PART_HOLD_BACK = "PART-HOLD-BACK";
+  private static final String ATTR_CAN_BLOCK_RELOAD = "CAN-BLOCK-RELOAD";
+  private static final String ATTR_LAST_MSN = "LAST-MSN";
+  private static final String ATTR_LAST_PART = "LAST-PART";
+  private static final String ATTR_TIME_OFFSET = "TIME-OFFSET";
+  private static final String ATTR_BYTERANGE = "BYTERANGE";
+  private static final String ATTR_BYTERANGE_START = "BYTERANGE-START";
+  private static final String ATTR_BYTERANGE_LENGTH = "BYTERANGE-LENGTH";
+  private static final String ATTR_METHOD = "METHOD";
+  private static final String ATTR_KEYFORMAT = "KEYFORMAT";
+  private static final String ATTR_KEYFORMATVERSIONS = "KEYFORMATVERSIONS";
+  private static final String ATTR_URI = "URI";
+  private static final String ATTR_IV = "IV";
+  private static final String ATTR_TYPE = "TYPE";
+  private static final String ATTR_LANGUAGE = "LANGUAGE";
+  private static final String ATTR_NAME = "NAME";
+  private static final String ATTR_GROUP_ID = "GROUP-ID";
+  private static final String ATTR_CHARACTERISTICS = "CHARACTERISTICS";
+  private static final String ATTR_INSTREAM_ID = "INSTREAM-ID";
+  private static final String ATTR_AUTOSELECT = "AUTOSELECT";
+  private static final String ATTR_DEFAULT = "DEFAULT";
+  private static final String ATTR_FORCED = "FORCED";
+  private static final String ATTR_INDEPENDENT = "INDEPENDENT";
+  private static final String ATTR_GAP = "GAP";
+  private static final String ATTR_VALUE = "VALUE";
+  private static final String ATTR_IMPORT = "IMPORT";
+
+  private static final String[] METHODS =
+      new String[] {
+        METHOD_NONE,
+        METHOD_AES_128,
+        METHOD_SAMPLE_AES,
+        METHOD_SAMPLE_AES_CENC,
+        METHOD_SAMPLE_AES_CTR
+      };
+  private static final String[] MEDIA_TYPES =
+      new String[] {TYPE_AUDIO, TYPE_VIDEO, TYPE_SUBTITLES, TYPE_CLOSED_CAPTIONS};
+  private static final String[] PRELOAD_HINT_TYPES = new String[] {TYPE_PART, TYPE_MAP};
+
+  private static final String INSTREAM_ID_CC = "CC";
+  private static final String INSTREAM_ID_SERVICE = "SERVICE";
+  private static final String VARIABLE_REFERENCE_START = "{$";
 
   private final HlsMasterPlaylist masterPlaylist;
   @Nullable private final HlsMediaPlaylist previousMediaPlaylist;
@@ -232,7 +201,9 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
    *
    * @param masterPlaylist The master playlist from which media playlists will inherit attributes.
    * @param previousMediaPlaylist The previous media playlist from which the new media playlist may
-   *     inherit skipped segments.
+   *     inherit skipped segments. Segments that are unchanged since the previous media playlist are
+   *     reused rather than created again. If their start time in the playlist changed, as when a
+   *     sliding live window advances, a copy that shares all their other fields is created instead.
    */
   public HlsPlaylistParser(
       HlsMasterPlaylist masterPlaylist, @Nullable HlsMediaPlaylist previousMediaPlaylist) {
@@ -244,6 +215,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   public HlsPlaylist parse(Uri uri, InputStream inputStream) throws IOException {
     BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
     Queue<String> extraLines = new ArrayDeque<>();
+    HlsAttributeList attributes = new HlsAttributeList();
     String line;
     try {
       if (!checkPlaylistHeader(reader)) {
@@ -256,7 +228,8 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           // Do nothing.
         } else if (line.startsWith(TAG_STREAM_INF)) {
           extraLines.add(line);
-          return parseMasterPlaylist(new LineIterator(extraLines, reader), uri.toString());
+          return parseMasterPlaylist(
+              new LineIterator(extraLines, reader), attributes, uri.toString());
         } else if (line.startsWith(TAG_TARGET_DURATION)
             || line.startsWith(TAG_MEDIA_SEQUENCE)
             || line.startsWith(TAG_MEDIA_DURATION)
@@ -270,6 +243,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
               masterPlaylist,
               previousMediaPlaylist,
               new LineIterator(extraLines, reader),
+              attributes,
               uri.toString());
         } else {
           extraLines.add(line);
@@ -310,8 +284,8 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return c;
   }
 
-  private static HlsMasterPlaylist parseMasterPlaylist(LineIterator iterator, String baseUri)
-      throws IOException {
+  private static HlsMasterPlaylist parseMasterPlaylist(
+      LineIterator iterator, HlsAttributeList attributes, String baseUri) throws IOException {
     HashMap<Uri, ArrayList<VariantInfo>> urlToVariantInfos = new HashMap<>();
     HashMap<String, String> variableDefinitions = new HashMap<>();
     ArrayList<Variant> variants = new ArrayList<>();
@@ -338,9 +312,10 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       boolean isIFrameOnlyVariant = line.startsWith(TAG_I_FRAME_STREAM_INF);
 
       if (line.startsWith(TAG_DEFINE)) {
+        attributes.reset(line);
         variableDefinitions.put(
-            /* key= */ parseStringAttr(line, REGEX_NAME, variableDefinitions),
-            /* value= */ parseStringAttr(line, REGEX_VALUE, variableDefinitions));
+            /* key= */ parseStringAttr(attributes, ATTR_NAME, variableDefinitions),
+            /* value= */ parseStringAttr(attributes, ATTR_VALUE, variableDefinitions));
       } else if (line.equals(TAG_INDEPENDENT_SEGMENTS)) {
         hasIndependentSegmentsTag = true;
       } else if (line.startsWith(TAG_MEDIA)) {
@@ -348,53 +323,60 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         // tags.
         mediaTags.add(line);
       } else if (line.startsWith(TAG_SESSION_KEY)) {
+        attributes.reset(line);
         String keyFormat =
-            parseOptionalStringAttr(line, REGEX_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
-        SchemeData schemeData = parseDrmSchemeData(line, keyFormat, variableDefinitions);
+            parseOptionalStringAttr(
+                attributes, ATTR_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
+        SchemeData schemeData = parseDrmSchemeData(attributes, keyFormat, variableDefinitions);
         if (schemeData != null) {
-          String method = parseStringAttr(line, REGEX_METHOD, variableDefinitions);
+          String method = parseEnumeratedAttr(attributes, ATTR_METHOD, METHODS);
           String scheme = parseEncryptionScheme(method);
           sessionKeyDrmInitData.add(new DrmInitData(scheme, schemeData));
         }
       } else if (line.startsWith(TAG_STREAM_INF) || isIFrameOnlyVariant) {
         noClosedCaptions |= line.contains(ATTR_CLOSED_CAPTIONS_NONE);
+        attributes.reset(line);
         int roleFlags = isIFrameOnlyVariant ? C.ROLE_FLAG_TRICK_PLAY : 0;
-        int peakBitrate = parseIntAttr(line, REGEX_BANDWIDTH);
-        int averageBitrate = parseOptionalIntAttr(line, REGEX_AVERAGE_BANDWIDTH, -1);
-        String codecs = parseOptionalStringAttr(line, REGEX_CODECS, variableDefinitions);
-        String resolutionString =
-            parseOptionalStringAttr(line, REGEX_RESOLUTION, variableDefinitions);
-        int width;
-        int height;
+        int peakBitrate = parseIntAttr(attributes, ATTR_BANDWIDTH);
+        int averageBitrate = (int) attributes.getLong(ATTR_AVERAGE_BANDWIDTH, -1);
+        String codecs = parseOptionalStringAttr(attributes, ATTR_CODECS, variableDefinitions);
+        int width = Format.NO_VALUE;
+        int height = Format.NO_VALUE;
+        @Nullable String resolutionString = attributes.getString(ATTR_RESOLUTION);
         if (resolutionString != null) {
-          String[] widthAndHeight = Util.split(resolutionString, "x");
-          width = Integer.parseInt(widthAndHeight[0]);
-          height = Integer.parseInt(widthAndHeight[1]);
-          if (width <= 0 || height <= 0) {
+          int separatorIndex = resolutionString.indexOf('x');
+          long parsedWidth = HlsAttributeList.parseDigits(resolutionString, 0, separatorIndex);
+          long parsedHeight =
+              HlsAttributeList.parseDigits(
+                  resolutionString, separatorIndex + 1, resolutionString.length());
+          if (parsedWidth > 0
+              && parsedWidth <= Integer.MAX_VALUE
+              && parsedHeight > 0
+              && parsedHeight <= Integer.MAX_VALUE) {
+            width = (int) parsedWidth;
+            height = (int) parsedHeight;
+          } else {
             // Resolution string is invalid.
-            width = Format.NO_VALUE;
-            height = Format.NO_VALUE;
           }
-        } else {
-          width = Format.NO_VALUE;
-          height = Format.NO_VALUE;
         }
         float frameRate = Format.NO_VALUE;
-        String frameRateString =
-            parseOptionalStringAttr(line, REGEX_FRAME_RATE, variableDefinitions);
-        if (frameRateString != null) {
+        @Nullable String frameRateString = attributes.getString(ATTR_FRAME_RATE);
+        if (frameRateString != null
+            && !Double.isNaN(
+                HlsAttributeList.parseDecimal(frameRateString, 0, frameRateString.length()))) {
           frameRate = Float.parseFloat(frameRateString);
         }
-        String videoGroupId = parseOptionalStringAttr(line, REGEX_VIDEO, variableDefinitions);
-        String audioGroupId = parseOptionalStringAttr(line, REGEX_AUDIO, variableDefinitions);
+        String videoGroupId = parseOptionalStringAttr(attributes, ATTR_VIDEO, variableDefinitions);
+        String audioGroupId = parseOptionalStringAttr(attributes, ATTR_AUDIO, variableDefinitions);
         String subtitlesGroupId =
-            parseOptionalStringAttr(line, REGEX_SUBTITLES, variableDefinitions);
+            parseOptionalStringAttr(attributes, ATTR_SUBTITLES, variableDefinitions);
         String closedCaptionsGroupId =
-            parseOptionalStringAttr(line, REGEX_CLOSED_CAPTIONS, variableDefinitions);
+            parseOptionalStringAttr(attributes, ATTR_CLOSED_CAPTIONS, variableDefinitions);
         Uri uri;
         if (isIFrameOnlyVariant) {
           uri =
-              UriUtil.resolveToUri(baseUri, parseStringAttr(line, REGEX_URI, variableDefinitions));
+              UriUtil.resolveToUri(
+                  baseUri, parseStringAttr(attributes, ATTR_URI, variableDefinitions));
         } else if (!iterator.hasNext()) {
           throw new ParserException("#EXT-X-STREAM-INF must be followed by another line");
         } else {
@@ -455,22 +437,25 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
     for (int i = 0; i < mediaTags.size(); i++) {
       line = mediaTags.get(i);
-      String groupId = parseStringAttr(line, REGEX_GROUP_ID, variableDefinitions);
-      String name = parseStringAttr(line, REGEX_NAME, variableDefinitions);
+      attributes.reset(line);
+      String groupId = parseStringAttr(attributes, ATTR_GROUP_ID, variableDefinitions);
+      String name = parseStringAttr(attributes, ATTR_NAME, variableDefinitions);
       Format.Builder formatBuilder =
           new Format.Builder()
               .setId(groupId + ":" + name)
               .setLabel(name)
               .setContainerMimeType(MimeTypes.APPLICATION_M3U8)
-              .setSelectionFlags(parseSelectionFlags(line))
-              .setRoleFlags(parseRoleFlags(line, variableDefinitions))
-              .setLanguage(parseOptionalStringAttr(line, REGEX_LANGUAGE, variableDefinitions));
+              .setSelectionFlags(parseSelectionFlags(attributes))
+              .setRoleFlags(parseRoleFlags(attributes, variableDefinitions))
+              .setLanguage(
+                  parseOptionalStringAttr(attributes, ATTR_LANGUAGE, variableDefinitions));
 
-      @Nullable String referenceUri = parseOptionalStringAttr(line, REGEX_URI, variableDefinitions);
+      @Nullable
+      String referenceUri = parseOptionalStringAttr(attributes, ATTR_URI, variableDefinitions);
       @Nullable Uri uri = referenceUri == null ? null : UriUtil.resolveToUri(baseUri, referenceUri);
       Metadata metadata =
           new Metadata(new HlsTrackMetadataEntry(groupId, name, Collections.emptyList()));
-      switch (parseStringAttr(line, REGEX_TYPE, variableDefinitions)) {
+      switch (parseEnumeratedAttr(attributes, ATTR_TYPE, MEDIA_TYPES)) {
         case TYPE_VIDEO:
           @Nullable Variant variant = getVariantWithVideoGroup(variants, groupId);
           if (variant != null) {
@@ -502,7 +487,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
           @Nullable
           String channelsString =
-              parseOptionalStringAttr(line, REGEX_CHANNELS, variableDefinitions);
+              parseOptionalStringAttr(attributes, ATTR_CHANNELS, variableDefinitions);
           if (channelsString != null) {
             int channelCount = Integer.parseInt(Util.splitAtFirst(channelsString, "/")[0]);
             formatBuilder.setChannelCount(channelCount);
@@ -539,21 +524,31 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
           break;
         case TYPE_CLOSED_CAPTIONS:
-          String instreamId = parseStringAttr(line, REGEX_INSTREAM_ID, variableDefinitions);
-          int accessibilityChannel;
-          if (instreamId.startsWith("CC")) {
+          String instreamId = parseStringAttr(attributes, ATTR_INSTREAM_ID, variableDefinitions);
+          long accessibilityChannel;
+          if (instreamId.startsWith(INSTREAM_ID_CC)) {
             sampleMimeType = MimeTypes.APPLICATION_CEA608;
-            accessibilityChannel = Integer.parseInt(instreamId.substring(2));
-          } else /* starts with SERVICE */ {
+            accessibilityChannel =
+                HlsAttributeList.parseDigits(
+                    instreamId, INSTREAM_ID_CC.length(), instreamId.length());
+          } else if (instreamId.startsWith(INSTREAM_ID_SERVICE)) {
             sampleMimeType = MimeTypes.APPLICATION_CEA708;
-            accessibilityChannel = Integer.parseInt(instreamId.substring(7));
+            accessibilityChannel =
+                HlsAttributeList.parseDigits(
+                    instreamId, INSTREAM_ID_SERVICE.length(), instreamId.length());
+          } else {
+            throw new ParserException("Invalid " + ATTR_INSTREAM_ID + " in " + line);
+          }
+          if (accessibilityChannel == HlsAttributeList.DIGITS_MALFORMED
+              || accessibilityChannel > Integer.MAX_VALUE) {
+            throw new ParserException("Invalid " + ATTR_INSTREAM_ID + " in " + line);
           }
           if (muxedCaptionFormats == null) {
             muxedCaptionFormats = new ArrayList<>();
           }
           formatBuilder
               .setSampleMimeType(sampleMimeType)
-              .setAccessibilityChannel(accessibilityChannel);
+              .setAccessibilityChannel((int) accessibilityChannel);
           muxedCaptionFormats.add(formatBuilder.build());
           // TODO: Remove muxedCaptionFormats and add a Rendition with a null uri to closedCaptions.
           break;
@@ -619,6 +614,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       HlsMasterPlaylist masterPlaylist,
       @Nullable HlsMediaPlaylist previousMediaPlaylist,
       LineIterator iterator,
+      HlsAttributeList attributes,
       String baseUri)
       throws IOException {
     @HlsMediaPlaylist.PlaylistType int playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_UNKNOWN;
@@ -637,6 +633,7 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     @Nullable Part preloadPart = null;
     Map<Uri, RenditionReport> renditionReports = new HashMap<>();
     List<String> tags = new ArrayList<>();
+    int skippedSegmentCount = 0;
 
     long segmentDurationUs = 0;
     String segmentTitle = "";
@@ -677,7 +674,9 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       }
 
       if (line.startsWith(TAG_PLAYLIST_TYPE)) {
-        String playlistTypeString = parseStringAttr(line, REGEX_PLAYLIST_TYPE, variableDefinitions);
+        String playlistTypeString =
+            replaceVariableReferences(
+                parseTagValue(line, TAG_PLAYLIST_TYPE).trim(), variableDefinitions);
         if ("VOD".equals(playlistTypeString)) {
           playlistType = HlsMediaPlaylist.PLAYLIST_TYPE_VOD;
         } else if ("EVENT".equals(playlistTypeString)) {
@@ -686,15 +685,21 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       } else if (line.equals(TAG_IFRAME)) {
         isIFrameOnly = true;
       } else if (line.startsWith(TAG_START)) {
-        startOffsetUs = (long) (parseDoubleAttr(line, REGEX_TIME_OFFSET) * C.MICROS_PER_SECOND);
+        attributes.reset(line);
+        startOffsetUs =
+            (long) (parseDoubleAttr(attributes, ATTR_TIME_OFFSET) * C.MICROS_PER_SECOND);
       } else if (line.startsWith(TAG_SERVER_CONTROL)) {
-        serverControl = parseServerControl(line);
+        attributes.reset(line);
+        serverControl = parseServerControl(attributes);
       } else if (line.startsWith(TAG_PART_INF)) {
-        double partTargetDurationSeconds = parseDoubleAttr(line, REGEX_PART_TARGET_DURATION);
+        attributes.reset(line);
+        double partTargetDurationSeconds = parseDoubleAttr(attributes, ATTR_PART_TARGET);
         partTargetDurationUs = (long) (partTargetDurationSeconds * C.MICROS_PER_SECOND);
       } else if (line.startsWith(TAG_INIT_SEGMENT)) {
-        String uri = parseStringAttr(line, REGEX_URI, variableDefinitions);
-        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE, variableDefinitions);
+        attributes.reset(line);
+        String uri = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
+        String byteRange =
+            parseOptionalStringAttr(attributes, ATTR_BYTERANGE, variableDefinitions);
         if (byteRange != null) {
           String[] splitByteRange = Util.split(byteRange, "@");
           segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
@@ -715,17 +720,23 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
                 segmentByteRangeLength,
                 fullSegmentEncryptionKeyUri,
                 fullSegmentEncryptionIV);
+        if (previousMediaPlaylist != null) {
+          initializationSegment =
+              reuseInitializationSegment(
+                  previousMediaPlaylist, segmentMediaSequence, initializationSegment);
+        }
         segmentByteRangeOffset = 0;
         segmentByteRangeLength = C.LENGTH_UNSET;
       } else if (line.startsWith(TAG_TARGET_DURATION)) {
-        targetDurationUs = parseIntAttr(line, REGEX_TARGET_DURATION) * C.MICROS_PER_SECOND;
+        targetDurationUs = parseTagLongValue(line, TAG_TARGET_DURATION) * C.MICROS_PER_SECOND;
       } else if (line.startsWith(TAG_MEDIA_SEQUENCE)) {
-        mediaSequence = parseLongAttr(line, REGEX_MEDIA_SEQUENCE);
+        mediaSequence = parseTagLongValue(line, TAG_MEDIA_SEQUENCE);
         segmentMediaSequence = mediaSequence;
       } else if (line.startsWith(TAG_VERSION)) {
-        version = parseIntAttr(line, REGEX_VERSION);
+        version = (int) parseTagLongValue(line, TAG_VERSION);
       } else if (line.startsWith(TAG_DEFINE)) {
-        String importName = parseOptionalStringAttr(line, REGEX_IMPORT, variableDefinitions);
+        attributes.reset(line);
+        String importName = parseOptionalStringAttr(attributes, ATTR_IMPORT, variableDefinitions);
         if (importName != null) {
           String value = masterPlaylist.variableDefinitions.get(importName);
           if (value != null) {
@@ -735,15 +746,28 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         } else {
           variableDefinitions.put(
-              parseStringAttr(line, REGEX_NAME, variableDefinitions),
-              parseStringAttr(line, REGEX_VALUE, variableDefinitions));
+              parseStringAttr(attributes, ATTR_NAME, variableDefinitions),
+              parseStringAttr(attributes, ATTR_VALUE, variableDefinitions));
         }
       } else if (line.startsWith(TAG_MEDIA_DURATION)) {
-        segmentDurationUs =
-            (long) (parseDoubleAttr(line, REGEX_MEDIA_DURATION) * C.MICROS_PER_SECOND);
-        segmentTitle = parseOptionalStringAttr(line, REGEX_MEDIA_TITLE, "", variableDefinitions);
+        // #EXTINF:<duration>,[<title>]
+        int durationStart = parseTagValueStart(line, TAG_MEDIA_DURATION);
+        int durationEnd = durationStart;
+        while (durationEnd < line.length() && isDecimalChar(line.charAt(durationEnd))) {
+          durationEnd++;
+        }
+        double durationSeconds = HlsAttributeList.parseDecimal(line, durationStart, durationEnd);
+        if (Double.isNaN(durationSeconds)) {
+          throw new ParserException("Invalid duration in " + line);
+        }
+        segmentDurationUs = (long) (durationSeconds * C.MICROS_PER_SECOND);
+        segmentTitle =
+            durationEnd + 1 < line.length() && line.charAt(durationEnd) == ','
+                ? replaceVariableReferences(line.substring(durationEnd + 1), variableDefinitions)
+                : "";
       } else if (line.startsWith(TAG_SKIP)) {
-        int skippedSegmentCount = parseIntAttr(line, REGEX_SKIPPED_SEGMENTS);
+        attributes.reset(line);
+        skippedSegmentCount = parseIntAttr(attributes, ATTR_SKIPPED_SEGMENTS);
         checkState(previousMediaPlaylist != null && segments.isEmpty());
         int startIndex = (int) (mediaSequence - castNonNull(previousMediaPlaylist).mediaSequence);
         int endIndex = startIndex + skippedSegmentCount;
@@ -780,20 +804,27 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           segmentMediaSequence++;
         }
       } else if (line.startsWith(TAG_KEY)) {
-        String method = parseStringAttr(line, REGEX_METHOD, variableDefinitions);
+        attributes.reset(line);
+        String method = parseEnumeratedAttr(attributes, ATTR_METHOD, METHODS);
         String keyFormat =
-            parseOptionalStringAttr(line, REGEX_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
+            parseOptionalStringAttr(
+                attributes, ATTR_KEYFORMAT, KEYFORMAT_IDENTITY, variableDefinitions);
         fullSegmentEncryptionKeyUri = null;
         fullSegmentEncryptionIV = null;
         if (METHOD_NONE.equals(method)) {
           currentSchemeDatas.clear();
           cachedDrmInitData = null;
         } else /* !METHOD_NONE.equals(method) */ {
-          fullSegmentEncryptionIV = parseOptionalStringAttr(line, REGEX_IV, variableDefinitions);
+          fullSegmentEncryptionIV = attributes.getString(ATTR_IV);
+          if (fullSegmentEncryptionIV != null) {
+            fullSegmentEncryptionIV =
+                replaceVariableReferences(fullSegmentEncryptionIV, variableDefinitions);
+          }
           if (KEYFORMAT_IDENTITY.equals(keyFormat)) {
             if (METHOD_AES_128.equals(method)) {
               // The segment is fully encrypted using an identity key.
-              fullSegmentEncryptionKeyUri = parseStringAttr(line, REGEX_URI, variableDefinitions);
+              fullSegmentEncryptionKeyUri =
+                  parseStringAttr(attributes, ATTR_URI, variableDefinitions);
             } else {
               // Do nothing. Samples are encrypted using an identity key, but this is not supported.
               // Hopefully, a traditional DRM alternative is also provided.
@@ -802,7 +833,8 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
             if (encryptionScheme == null) {
               encryptionScheme = parseEncryptionScheme(method);
             }
-            SchemeData schemeData = parseDrmSchemeData(line, keyFormat, variableDefinitions);
+            SchemeData schemeData =
+                parseDrmSchemeData(attributes, keyFormat, variableDefinitions);
             if (schemeData != null) {
               cachedDrmInitData = null;
               currentSchemeDatas.put(keyFormat, schemeData);
@@ -810,12 +842,24 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
       } else if (line.startsWith(TAG_BYTERANGE)) {
-        String byteRange = parseStringAttr(line, REGEX_BYTERANGE, variableDefinitions);
-        String[] splitByteRange = Util.split(byteRange, "@");
-        segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
-        if (splitByteRange.length > 1) {
-          segmentByteRangeOffset = Long.parseLong(splitByteRange[1]);
+        // #EXT-X-BYTERANGE:<n>[@<o>]
+        int byteRangeStart = parseTagValueStart(line, TAG_BYTERANGE);
+        int offsetSeparatorIndex = line.indexOf('@', byteRangeStart);
+        long byteRangeLength =
+            HlsAttributeList.parseDigits(
+                line,
+                byteRangeStart,
+                offsetSeparatorIndex == -1 ? line.length() : offsetSeparatorIndex);
+        long byteRangeOffset =
+            offsetSeparatorIndex == -1
+                ? segmentByteRangeOffset
+                : HlsAttributeList.parseDigits(line, offsetSeparatorIndex + 1, line.length());
+        if (byteRangeLength == HlsAttributeList.DIGITS_MALFORMED
+            || byteRangeOffset == HlsAttributeList.DIGITS_MALFORMED) {
+          throw new ParserException("Invalid byte range in " + line);
         }
+        segmentByteRangeLength = byteRangeLength;
+        segmentByteRangeOffset = byteRangeOffset;
       } else if (line.startsWith(TAG_DISCONTINUITY_SEQUENCE)) {
         hasDiscontinuitySequence = true;
         playlistDiscontinuitySequence = Integer.parseInt(line.substring(line.indexOf(':') + 1));
@@ -834,14 +878,15 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
       } else if (line.equals(TAG_ENDLIST)) {
         hasEndTag = true;
       } else if (line.startsWith(TAG_RENDITION_REPORT)) {
+        attributes.reset(line);
         long defaultValue = mediaSequence + segments.size() - (trailingParts.isEmpty() ? 1 : 0);
-        long lastMediaSequence = parseOptionalLongAttr(line, REGEX_LAST_MSN, defaultValue);
+        long lastMediaSequence = attributes.getLong(ATTR_LAST_MSN, defaultValue);
         List<Part> lastParts =
             trailingParts.isEmpty() ? Iterables.getLast(segments).parts : trailingParts;
         int defaultPartIndex =
             partTargetDurationUs != C.TIME_UNSET ? lastParts.size() - 1 : C.INDEX_UNSET;
-        int lastPartIndex = parseOptionalIntAttr(line, REGEX_LAST_PART, defaultPartIndex);
-        String uri = parseStringAttr(line, REGEX_URI, variableDefinitions);
+        int lastPartIndex = (int) attributes.getLong(ATTR_LAST_PART, defaultPartIndex);
+        String uri = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
         Uri playlistUri = Uri.parse(UriUtil.resolve(baseUri, uri));
         renditionReports.put(
             playlistUri, new RenditionReport(playlistUri, lastMediaSequence, lastPartIndex));
@@ -849,15 +894,16 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         if (preloadPart != null) {
           continue;
         }
-        String type = parseStringAttr(line, REGEX_PRELOAD_HINT_TYPE, variableDefinitions);
+        attributes.reset(line);
+        String type = parseEnumeratedAttr(attributes, ATTR_TYPE, PRELOAD_HINT_TYPES);
         if (!TYPE_PART.equals(type)) {
           continue;
         }
-        String url = parseStringAttr(line, REGEX_URI, variableDefinitions);
+        String url = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
         long byteRangeStart =
-            parseOptionalLongAttr(line, REGEX_BYTERANGE_START, /* defaultValue= */ C.LENGTH_UNSET);
+            attributes.getLong(ATTR_BYTERANGE_START, /* defaultValue= */ C.LENGTH_UNSET);
         long byteRangeLength =
-            parseOptionalLongAttr(line, REGEX_BYTERANGE_LENGTH, /* defaultValue= */ C.LENGTH_UNSET);
+            attributes.getLong(ATTR_BYTERANGE_LENGTH, /* defaultValue= */ C.LENGTH_UNSET);
         @Nullable
         String segmentEncryptionIV =
             getSegmentEncryptionIV(
@@ -888,20 +934,21 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
                   /* isPreload= */ true);
         }
       } else if (line.startsWith(TAG_PART)) {
+        attributes.reset(line);
         @Nullable
         String segmentEncryptionIV =
             getSegmentEncryptionIV(
                 segmentMediaSequence, fullSegmentEncryptionKeyUri, fullSegmentEncryptionIV);
-        String url = parseStringAttr(line, REGEX_URI, variableDefinitions);
+        String url = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
         long partDurationUs =
-            (long) (parseDoubleAttr(line, REGEX_ATTR_DURATION) * C.MICROS_PER_SECOND);
-        boolean isIndependent =
-            parseOptionalBooleanAttribute(line, REGEX_INDEPENDENT, /* defaultValue= */ false);
+            (long) (parseDoubleAttr(attributes, ATTR_DURATION) * C.MICROS_PER_SECOND);
+        boolean isIndependent = attributes.getBoolean(ATTR_INDEPENDENT, /* defaultValue= */ false);
         // The first part of a segment is always independent if the segments are independent.
         isIndependent |= hasIndependentSegmentsTag && trailingParts.isEmpty();
-        boolean isGap = parseOptionalBooleanAttribute(line, REGEX_GAP, /* defaultValue= */ false);
+        boolean isGap = attributes.getBoolean(ATTR_GAP, /* defaultValue= */ false);
         @Nullable
-        String byteRange = parseOptionalStringAttr(line, REGEX_ATTR_BYTERANGE, variableDefinitions);
+        String byteRange =
+            parseOptionalStringAttr(attributes, ATTR_BYTERANGE, variableDefinitions);
         long partByteRangeLength = C.LENGTH_UNSET;
         if (byteRange != null) {
           String[] splitByteRange = Util.split(byteRange, "@");
@@ -974,26 +1021,54 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
 
-        segments.add(
-            new Segment(
-                segmentUri,
-                initializationSegment != null ? initializationSegment : inferredInitSegment,
-                segmentTitle,
-                segmentDurationUs,
-                relativeDiscontinuitySequence,
-                segmentStartTimeUs,
-                cachedDrmInitData,
-                fullSegmentEncryptionKeyUri,
-                segmentEncryptionIV,
-                segmentByteRangeOffset,
-                segmentByteRangeLength,
-                hasGapTag,
-                trailingParts));
+        @Nullable
+        Segment segmentInitializationSegment =
+            initializationSegment != null ? initializationSegment : inferredInitSegment;
+        @Nullable Segment segment = null;
+        if (previousMediaPlaylist != null && trailingParts.isEmpty()) {
+          segment =
+              findUnchangedSegment(
+                  previousMediaPlaylist,
+                  /* mediaSequence= */ segmentMediaSequence - 1,
+                  segmentUri,
+                  segmentInitializationSegment,
+                  segmentTitle,
+                  segmentDurationUs,
+                  cachedDrmInitData,
+                  fullSegmentEncryptionKeyUri,
+                  segmentEncryptionIV,
+                  segmentByteRangeOffset,
+                  segmentByteRangeLength,
+                  hasGapTag);
+        }
+        if (segment == null) {
+          segment =
+              new Segment(
+                  segmentUri,
+                  segmentInitializationSegment,
+                  segmentTitle,
+                  segmentDurationUs,
+                  relativeDiscontinuitySequence,
+                  segmentStartTimeUs,
+                  cachedDrmInitData,
+                  fullSegmentEncryptionKeyUri,
+                  segmentEncryptionIV,
+                  segmentByteRangeOffset,
+                  segmentByteRangeLength,
+                  hasGapTag,
+                  trailingParts);
+          trailingParts = new ArrayList<>();
+        } else if (segment.relativeStartTimeUs != segmentStartTimeUs
+            || segment.relativeDiscontinuitySequence != relativeDiscontinuitySequence) {
+          // The segment is unchanged, but its position in the playlist isn't. This still allocates
+          // a segment per reused entry, as the start time is relative to the playlist start.
+          segment = segment.copyWith(segmentStartTimeUs, relativeDiscontinuitySequence);
+        }
+        segments.add(segment);
         segmentStartTimeUs += segmentDurationUs;
         partStartTimeUs = segmentStartTimeUs;
         segmentDurationUs = 0;
         segmentTitle = "";
-        trailingParts = new ArrayList<>();
         if (segmentByteRangeLength != C.LENGTH_UNSET) {
           segmentByteRangeOffset += segmentByteRangeLength;
         }
@@ -1025,7 +1100,8 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         segments,
         trailingParts,
         serverControl,
-        renditionReports);
+        renditionReports,
+        skippedSegmentCount);
   }
 
   private static DrmInitData getPlaylistProtectionSchemes(
@@ -1037,6 +1113,85 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return new DrmInitData(encryptionScheme, playlistSchemeDatas);
   }
 
+  /**
+   * Returns the segment of {@code previousMediaPlaylist} with the given media sequence number if
+   * it's equal to the segment described by the other arguments, except for its position in the
+   * playlist, or null otherwise. Segments with parts are never returned.
+   */
+  @Nullable
+  private static Segment findUnchangedSegment(
+      HlsMediaPlaylist previousMediaPlaylist,
+      long mediaSequence,
+      String url,
+      @Nullable Segment initializationSegment,
+      String title,
+      long durationUs,
+      @Nullable DrmInitData drmInitData,
+      @Nullable String fullSegmentEncryptionKeyUri,
+      @Nullable String encryptionIV,
+      long byteRangeOffset,
+      long byteRangeLength,
+      boolean hasGapTag) {
+    long index = mediaSequence - previousMediaPlaylist.mediaSequence;
+    if (index < 0 || index >= previousMediaPlaylist.segments.size()) {
+      return null;
+    }
+    Segment segment = previousMediaPlaylist.segments.get((int) index);
+    return segment.durationUs == durationUs
+            && segment.byteRangeOffset == byteRangeOffset
+            && segment.byteRangeLength == byteRangeLength
+            && segment.hasGapTag == hasGapTag
+            && segment.parts.isEmpty()
+            && segment.url.equals(url)
+            && segment.title.equals(title)
+            && Util.areEqual(segment.fullSegmentEncryptionKeyUri, fullSegmentEncryptionKeyUri)
+            && Util.areEqual(segment.encryptionIV, encryptionIV)
+            && Util.areEqual(segment.drmInitData, drmInitData)
+            && areInitializationSegmentsEqual(segment.initializationSegment, initializationSegment)
+        ? segment
+        : null;
+  }
+
+  /**
+   * Returns the initialization segment that applies to the segment of {@code
+   * previousMediaPlaylist} with the given media sequence number, or to its last segment, if it's
+   * equal to {@code initializationSegment}. Returns {@code initializationSegment} otherwise.
+   */
+  private static Segment reuseInitializationSegment(
+      HlsMediaPlaylist previousMediaPlaylist, long mediaSequence, Segment initializationSegment) {
+    List<Segment> previousSegments = previousMediaPlaylist.segments;
+    if (previousSegments.isEmpty()) {
+      return initializationSegment;
+    }
+    long index = mediaSequence - previousMediaPlaylist.mediaSequence;
+    Segment previousSegment =
+        index >= 0 && index < previousSegments.size()
+            ? previousSegments.get((int) index)
+            : Iterables.getLast(previousSegments);
+    @Nullable Segment previousInitializationSegment = previousSegment.initializationSegment;
+    return previousInitializationSegment != null
+            && areInitializationSegmentsEqual(previousInitializationSegment, initializationSegment)
+        ? previousInitializationSegment
+        : initializationSegment;
+  }
+
+  private static boolean areInitializationSegmentsEqual(
+      @Nullable Segment initializationSegment, @Nullable Segment otherInitializationSegment) {
+    if (initializationSegment == otherInitializationSegment) {
+      return true;
+    } else if (initializationSegment == null || otherInitializationSegment == null) {
+      return false;
+    }
+    return initializationSegment.byteRangeOffset == otherInitializationSegment.byteRangeOffset
+        && initializationSegment.byteRangeLength == otherInitializationSegment.byteRangeLength
+        && initializationSegment.url.equals(otherInitializationSegment.url)
+        && Util.areEqual(
+            initializationSegment.fullSegmentEncryptionKeyUri,
+            otherInitializationSegment.fullSegmentEncryptionKeyUri)
+        && Util.areEqual(
+            initializationSegment.encryptionIV, otherInitializationSegment.encryptionIV);
+  }
+
   @Nullable
   private static String getSegmentEncryptionIV(
       long segmentMediaSequence,
@@ -1051,24 +1206,25 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
   }
 
   @C.SelectionFlags
-  private static int parseSelectionFlags(String line) {
+  private static int parseSelectionFlags(HlsAttributeList attributes) {
     int flags = 0;
-    if (parseOptionalBooleanAttribute(line, REGEX_DEFAULT, false)) {
+    if (attributes.getBoolean(ATTR_DEFAULT, false)) {
       flags |= C.SELECTION_FLAG_DEFAULT;
     }
-    if (parseOptionalBooleanAttribute(line, REGEX_FORCED, false)) {
+    if (attributes.getBoolean(ATTR_FORCED, false)) {
       flags |= C.SELECTION_FLAG_FORCED;
     }
-    if (parseOptionalBooleanAttribute(line, REGEX_AUTOSELECT, false)) {
+    if (attributes.getBoolean(ATTR_AUTOSELECT, false)) {
       flags |= C.SELECTION_FLAG_AUTOSELECT;
     }
     return flags;
   }
 
   @C.RoleFlags
-  private static int parseRoleFlags(String line, Map<String, String> variableDefinitions) {
+  private static int parseRoleFlags(
+      HlsAttributeList attributes, Map<String, String> variableDefinitions) {
     String concatenatedCharacteristics =
-        parseOptionalStringAttr(line, REGEX_CHARACTERISTICS, variableDefinitions);
+        parseOptionalStringAttr(attributes, ATTR_CHARACTERISTICS, variableDefinitions);
     if (TextUtils.isEmpty(concatenatedCharacteristics)) {
       return 0;
     }
@@ -1091,20 +1247,20 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
   @Nullable
   private static SchemeData parseDrmSchemeData(
-      String line, String keyFormat, Map<String, String> variableDefinitions)
+      HlsAttributeList attributes, String keyFormat, Map<String, String> variableDefinitions)
       throws ParserException {
     String keyFormatVersions =
-        parseOptionalStringAttr(line, REGEX_KEYFORMATVERSIONS, "1", variableDefinitions);
+        parseOptionalStringAttr(attributes, ATTR_KEYFORMATVERSIONS, "1", variableDefinitions);
     if (KEYFORMAT_WIDEVINE_PSSH_BINARY.equals(keyFormat)) {
-      String uriString = parseStringAttr(line, REGEX_URI, variableDefinitions);
+      String uriString = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
       return new SchemeData(
           C.WIDEVINE_UUID,
           MimeTypes.VIDEO_MP4,
           Base64.decode(uriString.substring(uriString.indexOf(',')), Base64.DEFAULT));
     } else if (KEYFORMAT_WIDEVINE_PSSH_JSON.equals(keyFormat)) {
-      return new SchemeData(C.WIDEVINE_UUID, "hls", Util.getUtf8Bytes(line));
+      return new SchemeData(C.WIDEVINE_UUID, "hls", Util.getUtf8Bytes(attributes.getLine()));
     } else if (KEYFORMAT_PLAYREADY.equals(keyFormat) && "1".equals(keyFormatVersions)) {
-      String uriString = parseStringAttr(line, REGEX_URI, variableDefinitions);
+      String uriString = parseStringAttr(attributes, ATTR_URI, variableDefinitions);
       byte[] data = Base64.decode(uriString.substring(uriString.indexOf(',')), Base64.DEFAULT);
       byte[] psshData = PsshAtomUtil.buildPsshAtom(C.PLAYREADY_UUID, data);
       return new SchemeData(C.PLAYREADY_UUID, MimeTypes.VIDEO_MP4, psshData);
@@ -1112,28 +1268,27 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return null;
   }
 
-  private static HlsMediaPlaylist.ServerControl parseServerControl(String line) {
+  private static HlsMediaPlaylist.ServerControl parseServerControl(HlsAttributeList attributes) {
     double skipUntilSeconds =
-        parseOptionalDoubleAttr(line, REGEX_CAN_SKIP_UNTIL, /* defaultValue= */ C.TIME_UNSET);
+        attributes.getDouble(ATTR_CAN_SKIP_UNTIL, /* defaultValue= */ C.TIME_UNSET);
     long skipUntilUs =
         skipUntilSeconds == C.TIME_UNSET
             ? C.TIME_UNSET
             : (long) (skipUntilSeconds * C.MICROS_PER_SECOND);
     boolean canSkipDateRanges =
-        parseOptionalBooleanAttribute(line, REGEX_CAN_SKIP_DATE_RANGES, /* defaultValue= */ false);
-    double holdBackSeconds =
-        parseOptionalDoubleAttr(line, REGEX_HOLD_BACK, /* defaultValue= */ C.TIME_UNSET);
+        attributes.getBoolean(ATTR_CAN_SKIP_DATE_RANGES, /* defaultValue= */ false);
+    double holdBackSeconds = attributes.getDouble(ATTR_HOLD_BACK, /* defaultValue= */ C.TIME_UNSET);
     long holdBackUs =
         holdBackSeconds == C.TIME_UNSET
             ? C.TIME_UNSET
             : (long) (holdBackSeconds * C.MICROS_PER_SECOND);
-    double partHoldBackSeconds = parseOptionalDoubleAttr(line, REGEX_PART_HOLD_BACK, C.TIME_UNSET);
+    double partHoldBackSeconds = attributes.getDouble(ATTR_PART_HOLD_BACK, C.TIME_UNSET);
     long partHoldBackUs =
         partHoldBackSeconds == C.TIME_UNSET
             ? C.TIME_UNSET
             : (long) (partHoldBackSeconds * C.MICROS_PER_SECOND);
     boolean canBlockReload =
-        parseOptionalBooleanAttribute(line, REGEX_CAN_BLOCK_RELOAD, /* defaultValue= */ false);
+        attributes.getBoolean(ATTR_CAN_BLOCK_RELOAD, /* defaultValue= */ false);
 
     return new HlsMediaPlaylist.ServerControl(
         skipUntilUs, canSkipDateRanges, holdBackUs, partHoldBackUs, canBlockReload);
@@ -1145,99 +1300,152 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         : C.CENC_TYPE_cbcs;
   }
 
-  private static int parseIntAttr(String line, Pattern pattern) throws ParserException {
-    return Integer.parseInt(parseStringAttr(line, pattern, Collections.emptyMap()));
-  }
-
-  private static int parseOptionalIntAttr(String line, Pattern pattern, int defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return Integer.parseInt(checkNotNull(matcher.group(1)));
+  private static int parseIntAttr(HlsAttributeList attributes, String name)
+      throws ParserException {
+    long value = attributes.getLong(name, /* defaultValue= */ HlsAttributeList.DIGITS_MALFORMED);
+    if (value == HlsAttributeList.DIGITS_MALFORMED || value > Integer.MAX_VALUE) {
+      throw new ParserException("Couldn't parse " + name + " in " + attributes.getLine());
     }
-    return defaultValue;
-  }
-
-  private static long parseLongAttr(String line, Pattern pattern) throws ParserException {
-    return Long.parseLong(parseStringAttr(line, pattern, Collections.emptyMap()));
+    return (int) value;
   }
 
-  private static long parseOptionalLongAttr(String line, Pattern pattern, long defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return Long.parseLong(checkNotNull(matcher.group(1)));
+  private static double parseDoubleAttr(HlsAttributeList attributes, String name)
+      throws ParserException {
+    double value = attributes.getDouble(name, /* defaultValue= */ Double.NaN);
+    if (Double.isNaN(value)) {
+      throw new ParserException("Couldn't parse " + name + " in " + attributes.getLine());
     }
-    return defaultValue;
+    return value;
   }
 
-  private static double parseDoubleAttr(String line, Pattern pattern) throws ParserException {
-    return Double.parseDouble(parseStringAttr(line, pattern, Collections.emptyMap()));
+  /**
+   * Returns the value of an enumerated-string attribute, which must be one of {@code values}.
+   *
+   * @return The element of {@code values} equal to the attribute's value.
+   * @throws ParserException If the attribute is absent or has none of the values.
+   */
+  private static String parseEnumeratedAttr(
+      HlsAttributeList attributes, String name, String[] values) throws ParserException {
+    for (String value : values) {
+      if (attributes.valueEquals(name, value)) {
+        return value;
+      }
+    }
+    throw new ParserException("Couldn't match " + name + " in " + attributes.getLine());
   }
 
   private static String parseStringAttr(
-      String line, Pattern pattern, Map<String, String> variableDefinitions)
+      HlsAttributeList attributes, String name, Map<String, String> variableDefinitions)
       throws ParserException {
-    String value = parseOptionalStringAttr(line, pattern, variableDefinitions);
+    String value = parseOptionalStringAttr(attributes, name, variableDefinitions);
     if (value != null) {
       return value;
     } else {
-      throw new ParserException("Couldn't match " + pattern.pattern() + " in " + line);
+      throw new ParserException("Couldn't match " + name + " in " + attributes.getLine());
     }
   }
 
   private static @Nullable String parseOptionalStringAttr(
-      String line, Pattern pattern, Map<String, String> variableDefinitions) {
-    return parseOptionalStringAttr(line, pattern, null, variableDefinitions);
+      HlsAttributeList attributes, String name, Map<String, String> variableDefinitions) {
+    return parseOptionalStringAttr(attributes, name, null, variableDefinitions);
   }
 
   private static @PolyNull String parseOptionalStringAttr(
-      String line,
-      Pattern pattern,
+      HlsAttributeList attributes,
+      String name,
       @PolyNull String defaultValue,
       Map<String, String> variableDefinitions) {
-    Matcher matcher = pattern.matcher(line);
-    @PolyNull String value = matcher.find() ? checkNotNull(matcher.group(1)) : defaultValue;
+    @Nullable String quotedValue = attributes.getQuotedString(name);
+    @PolyNull String value = quotedValue != null ? quotedValue : defaultValue;
     return variableDefinitions.isEmpty() || value == null
         ? value
         : replaceVariableReferences(value, variableDefinitions);
   }
 
-  private static double parseOptionalDoubleAttr(String line, Pattern pattern, double defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return Double.parseDouble(checkNotNull(matcher.group(1)));
+  /**
+   * Returns the index of the value of a tag of the form {@code <tag>:<value>}.
+   *
+   * @throws ParserException If the tag isn't followed by a colon.
+   */
+  private static int parseTagValueStart(String line, String tag) throws ParserException {
+    if (line.length() <= tag.length() || line.charAt(tag.length()) != ':') {
+      throw new ParserException("Couldn't find the value of " + tag + " in " + line);
+    }
+    return tag.length() + 1;
+  }
+
+  private static String parseTagValue(String line, String tag) throws ParserException {
+    return line.substring(parseTagValueStart(line, tag));
+  }
+
+  /**
+   * Returns the decimal integer at the start of the value of a tag of the form {@code
+   * <tag>:<value>}.
+   *
+   * @throws ParserException If the value doesn't start with a decimal integer.
+   */
+  private static long parseTagLongValue(String line, String tag) throws ParserException {
+    int start = parseTagValueStart(line, tag);
+    int end = start;
+    while (end < line.length() && isDigit(line.charAt(end))) {
+      end++;
     }
-    return defaultValue;
+    long value = HlsAttributeList.parseDigits(line, start, end);
+    if (value == HlsAttributeList.DIGITS_MALFORMED
+        || (end < line.length() && isWordChar(line.charAt(end)))) {
+      throw new ParserException("Couldn't parse the value of " + tag + " in " + line);
+    }
+    return value;
   }
 
   private static String replaceVariableReferences(
       String string, Map<String, String> variableDefinitions) {
-    Matcher matcher = REGEX_VARIABLE_REFERENCE.matcher(string);
-    // TODO: Replace StringBuffer with StringBuilder once Java 9 is available.
-    StringBuffer stringWithReplacements = new StringBuffer();
-    while (matcher.find()) {
-      String groupName = matcher.group(1);
-      if (variableDefinitions.containsKey(groupName)) {
-        matcher.appendReplacement(
-            stringWithReplacements, Matcher.quoteReplacement(variableDefinitions.get(groupName)));
+    int referenceStart = string.indexOf(VARIABLE_REFERENCE_START);
+    if (referenceStart == -1) {
+      return string;
+    }
+    StringBuilder stringWithReplacements = new StringBuilder();
+    int position = 0;
+    while (referenceStart != -1) {
+      int nameStart = referenceStart + VARIABLE_REFERENCE_START.length();
+      int nameEnd = nameStart;
+      while (nameEnd < string.length() && isVariableNameChar(string.charAt(nameEnd))) {
+        nameEnd++;
+      }
+      if (nameEnd > nameStart && nameEnd < string.length() && string.charAt(nameEnd) == '}') {
+        @Nullable String value = variableDefinitions.get(string.substring(nameStart, nameEnd));
+        if (value != null) {
+          stringWithReplacements.append(string, position, referenceStart).append(value);
+          position = nameEnd + 1;
+        } else {
+          // The variable is not defined. The value is ignored.
+        }
+        referenceStart = string.indexOf(VARIABLE_REFERENCE_START, nameEnd + 1);
       } else {
-        // The variable is not defined. The value is ignored.
+        referenceStart = string.indexOf(VARIABLE_REFERENCE_START, referenceStart + 1);
       }
     }
-    matcher.appendTail(stringWithReplacements);
-    return stringWithReplacements.toString();
+    return stringWithReplacements.append(string, position, string.length()).toString();
   }
 
-  private static boolean parseOptionalBooleanAttribute(
-      String line, Pattern pattern, boolean defaultValue) {
-    Matcher matcher = pattern.matcher(line);
-    if (matcher.find()) {
-      return BOOLEAN_TRUE.equals(matcher.group(1));
-    }
-    return defaultValue;
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isDecimalChar(char c) {
+    return isDigit(c) || c == '.';
+  }
+
+  private static boolean isWordChar(char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
   }
 
-  private static Pattern compileBooleanAttrPattern(String attribute) {
-    return Pattern.compile(attribute + "=(" + BOOLEAN_FALSE + "|" + BOOLEAN_TRUE + ")");
+  private static boolean isVariableNameChar(char c) {
+    return isDigit(c)
+        || (c >= 'a' && c <= 'z')
+        || (c >= 'A' && c <= 'Z')
+        || c == '-'
+        || c == '_';
   }
 
   private static class LineIterator {
@@ -119,4 +119,20 @@ public class FullSegmentEncryptionKeyCacheTest {
     assertThat(cache.containsUri(firstUri)).isFalse();
     assertThat(cache.containsUri(secondUri)).isTrue();
   }
+
+  @Test
+  public void getAndRefreshChangesAgeForRemoval() {
+    FullSegmentEncryptionKeyCache cache = new FullSegmentEncryptionKeyCache(/* maxSize= */ 2);
+
+    cache.put(firstUri, encryptionKey);
+    cache.put(secondUri, new byte[] {1, 2, 3, 4});
+    assertThat(cache.getAndRefresh(firstUri)).isEqualTo(encryptionKey);
+    cache.put(Uri.parse("www.nest.com"), new byte[] {1, 2, 3, 4});
+
+    // secondUri is removed before firstUri, which was refreshed
+    assertThat(cache.containsUri(firstUri)).isTrue();
+    assertThat(cache.containsUri(secondUri)).isFalse();
+    assertThat(cache.getAndRefresh(secondUri)).isNull();
+    assertThat(cache.getAndRefresh(null)).isNull();
+  }
 }
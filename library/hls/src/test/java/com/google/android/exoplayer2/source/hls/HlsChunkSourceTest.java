@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.hls.playlist.HlsMediaPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistTracker;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.checkerframework.checker.nullness.qual.EnsuresNonNull;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link HlsChunkSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class HlsChunkSourceTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  private static final int SEGMENT_COUNT = 5;
+  private static final int SEGMENT_LENGTH = 100_000;
+  private static final int KEY_LENGTH = 16;
+
+  private TestDataSourceFactory dataSourceFactory;
+  private LoaderThreadPool loaderThreadPool;
+  private FullSegmentEncryptionKeyCache keyCache;
+  private @MonotonicNonNull HlsChunkSource chunkSource;
+
+  @Before
+  public void setUp() {
+    dataSourceFactory = new TestDataSourceFactory();
+    loaderThreadPool = new LoaderThreadPool("HlsChunkSourceTest");
+    keyCache = new FullSegmentEncryptionKeyCache(/* maxSize= */ 4);
+  }
+
+  @After
+  public void tearDown() {
+    dataSourceFactory.openAllowed.open();
+    if (chunkSource != null) {
+      chunkSource.release();
+    }
+  }
+
+  @Test
+  public void getNextChunk_withSegmentPrefetchCount_prefetchesFollowingSegments()
+      throws Exception {
+    createChunkSource(
+        /* variantCount= */ 1,
+        /* encrypted= */ false,
+        /* segmentPrefetchCount= */ 2,
+        /* prefetchEncryptionKeys= */ false);
+
+    HlsChunkSource.HlsChunkHolder holder = new HlsChunkSource.HlsChunkHolder();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        /* allowEndOfStream= */ true,
+        holder);
+    dataSourceFactory.waitForOpenCount(3);
+
+    assertThat(holder.chunk).isInstanceOf(HlsMediaChunk.class);
+    // The segment to load is prefetched along with the two that follow it.
+    assertThat(dataSourceFactory.getOpenedUris())
+        .containsExactly(
+            getSegmentUri(/* variantIndex= */ 0, /* segmentIndex= */ 0),
+            getSegmentUri(/* variantIndex= */ 0, /* segmentIndex= */ 1),
+            getSegmentUri(/* variantIndex= */ 0, /* segmentIndex= */ 2));
+  }
+
+  @Test
+  public void release_cancelsSegmentPrefetches() throws Exception {
+    createChunkSource(
+        /* variantCount= */ 1,
+        /* encrypted= */ false,
+        /* segmentPrefetchCount= */ 2,
+        /* prefetchEncryptionKeys= */ false);
+    dataSourceFactory.openAllowed.close();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        /* allowEndOfStream= */ true,
+        new HlsChunkSource.HlsChunkHolder());
+    dataSourceFactory.waitForOpenCount(3);
+
+    chunkSource.release();
+    dataSourceFactory.openAllowed.open();
+    dataSourceFactory.waitForCloseCount(3);
+
+    assertThat(dataSourceFactory.getOpenedUris()).hasSize(3);
+    assertThat(dataSourceFactory.bytesRead.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void getNextChunk_afterVariantSwitch_findsPrefetchedKeyInCache() throws Exception {
+    createChunkSource(
+        /* variantCount= */ 2,
+        /* encrypted= */ true,
+        /* segmentPrefetchCount= */ 0,
+        /* prefetchEncryptionKeys= */ true);
+    HlsChunkSource.HlsChunkHolder holder = new HlsChunkSource.HlsChunkHolder();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        /* allowEndOfStream= */ true,
+        holder);
+    // The key of the variant that may be switched to is loaded along with the selected one.
+    waitForKey(getKeyUri(/* variantIndex= */ 0));
+    waitForKey(getKeyUri(/* variantIndex= */ 1));
+
+    switchToSecondVariant();
+    holder.clear();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        /* allowEndOfStream= */ true,
+        holder);
+
+    assertThat(holder.chunk).isInstanceOf(HlsMediaChunk.class);
+    HlsMediaChunk mediaChunk = (HlsMediaChunk) checkNotNull(holder.chunk);
+    assertThat(mediaChunk.trackFormat.id).isEqualTo("1");
+    assertThat(mediaChunk.dataSpec.uri)
+        .isEqualTo(getSegmentUri(/* variantIndex= */ 1, /* segmentIndex= */ 0));
+    assertThat(dataSourceFactory.getOpenedUris())
+        .containsExactly(getKeyUri(/* variantIndex= */ 0), getKeyUri(/* variantIndex= */ 1));
+  }
+
+  @Test
+  public void getNextChunk_afterVariantSwitchWithoutKeyPrefetching_loadsKey() throws Exception {
+    createChunkSource(
+        /* variantCount= */ 2,
+        /* encrypted= */ true,
+        /* segmentPrefetchCount= */ 0,
+        /* prefetchEncryptionKeys= */ false);
+    keyCache.put(getKeyUri(/* variantIndex= */ 0), TestUtil.buildTestData(KEY_LENGTH));
+    HlsChunkSource.HlsChunkHolder holder = new HlsChunkSource.HlsChunkHolder();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        /* allowEndOfStream= */ true,
+        holder);
+    assertThat(holder.chunk).isInstanceOf(HlsMediaChunk.class);
+
+    switchToSecondVariant();
+    holder.clear();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        /* allowEndOfStream= */ true,
+        holder);
+
+    // The chunk source has to load the key before it can load the segment.
+    assertThat(holder.chunk).isNotInstanceOf(HlsMediaChunk.class);
+    assertThat(checkNotNull(holder.chunk).dataSpec.uri)
+        .isEqualTo(getKeyUri(/* variantIndex= */ 1));
+    assertThat(dataSourceFactory.getOpenedUris()).isEmpty();
+  }
+
+  /**
+   * Creates a chunk source for a stream with the given number of variants, whose segments are
+   * encrypted with a distinct full segment key per variant if {@code encrypted} is true.
+   */
+  @EnsuresNonNull("chunkSource")
+  private void createChunkSource(
+      int variantCount, boolean encrypted, int segmentPrefetchCount, boolean prefetchEncryptionKeys)
+      throws IOException {
+    HlsPlaylistTracker playlistTracker = mock(HlsPlaylistTracker.class);
+    when(playlistTracker.isSnapshotValid(any())).thenReturn(true);
+    Uri[] playlistUris = new Uri[variantCount];
+    Format[] playlistFormats = new Format[variantCount];
+    for (int variantIndex = 0; variantIndex < variantCount; variantIndex++) {
+      StringBuilder playlistString =
+          new StringBuilder(
+              "#EXTM3U\n"
+                  + "#EXT-X-VERSION:3\n"
+                  + "#EXT-X-TARGETDURATION:4\n"
+                  + "#EXT-X-MEDIA-SEQUENCE:0\n");
+      if (encrypted) {
+        playlistString.append("#EXT-X-KEY:METHOD=AES-128,URI=\"key\"\n");
+        dataSourceFactory.data.put(
+            getKeyUri(variantIndex), TestUtil.buildTestData(KEY_LENGTH, /* seed= */ variantIndex));
+      }
+      for (int segmentIndex = 0; segmentIndex < SEGMENT_COUNT; segmentIndex++) {
+        playlistString.append("#EXTINF:4.0,\nsegment").append(segmentIndex).append(".ts\n");
+        dataSourceFactory.data.put(
+            getSegmentUri(variantIndex, segmentIndex),
+            TestUtil.buildTestData(SEGMENT_LENGTH, /* seed= */ segmentIndex));
+      }
+      playlistString.append("#EXT-X-ENDLIST\n");
+      playlistUris[variantIndex] =
+          Uri.parse("https://example.com/variant" + variantIndex + "/playlist.m3u8");
+      HlsMediaPlaylist playlist =
+          (HlsMediaPlaylist)
+              new HlsPlaylistParser()
+                  .parse(
+                      playlistUris[variantIndex],
+                      new ByteArrayInputStream(Util.getUtf8Bytes(playlistString.toString())));
+      when(playlistTracker.getPlaylistSnapshot(eq(playlistUris[variantIndex]), anyBoolean()))
+          .thenReturn(playlist);
+      when(playlistTracker.getInitialStartTimeUs()).thenReturn(playlist.startTimeUs);
+      playlistFormats[variantIndex] =
+          new Format.Builder()
+              .setId(variantIndex)
+              .setContainerMimeType(MimeTypes.APPLICATION_M3U8)
+              .setPeakBitrate((variantCount - variantIndex) * 1_000_000)
+              .build();
+    }
+    chunkSource =
+        new HlsChunkSource(
+            HlsExtractorFactory.DEFAULT,
+            playlistTracker,
+            playlistUris,
+            playlistFormats,
+            dataSourceFactory,
+            /* mediaTransferListener= */ null,
+            new TimestampAdjusterProvider(),
+            /* muxedCaptionFormats= */ null,
+            keyCache,
+            segmentPrefetchCount,
+            loaderThreadPool,
+            prefetchEncryptionKeys);
+  }
+
+  /** Excludes the first variant, so that the chunk source switches to the second one. */
+  private void switchToSecondVariant() {
+    checkNotNull(chunkSource)
+        .getTrackSelection()
+        .blacklist(/* index= */ 0, /* exclusionDurationMs= */ 60_000);
+  }
+
+  private void waitForKey(Uri keyUri) throws InterruptedException {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (!keyCache.containsUri(keyUri)) {
+      assertThat(System.currentTimeMillis()).isLessThan(deadlineMs);
+      Thread.sleep(1);
+    }
+  }
+
+  private static Uri getSegmentUri(int variantIndex, int segmentIndex) {
+    return Uri.parse(
+        "https://example.com/variant" + variantIndex + "/segment" + segmentIndex + ".ts");
+  }
+
+  private static Uri getKeyUri(int variantIndex) {
+    return Uri.parse("https://example.com/variant" + variantIndex + "/key");
+  }
+
+  /** Creates data sources that read from byte arrays, and records the data they open and read. */
+  private static final class TestDataSourceFactory implements HlsDataSourceFactory {
+
+    public final Map<Uri, byte[]> data;
+    public final ConditionVariable openAllowed;
+    public final AtomicInteger bytesRead;
+    private final List<Uri> openedUris;
+    private final AtomicInteger closeCount;
+
+    public TestDataSourceFactory() {
+      data = Collections.synchronizedMap(new HashMap<>());
+      openAllowed = new ConditionVariable();
+      openAllowed.open();
+      bytesRead = new AtomicInteger();
+      openedUris = Collections.synchronizedList(new ArrayList<>());
+      closeCount = new AtomicInteger();
+    }
+
+    @Override
+    public DataSource createDataSource(int dataType) {
+      return new TestDataSource();
+    }
+
+    public List<Uri> getOpenedUris() {
+      synchronized (openedUris) {
+        return new ArrayList<>(openedUris);
+      }
+    }
+
+    public void waitForOpenCount(int openCount) throws InterruptedException {
+      long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+      while (openedUris.size() < openCount) {
+        assertThat(System.currentTimeMillis()).isLessThan(deadlineMs);
+        Thread.sleep(1);
+      }
+    }
+
+    public void waitForCloseCount(int closeCount) throws InterruptedException {
+      long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+      while (this.closeCount.get() < closeCount) {
+        assertThat(System.currentTimeMillis()).isLessThan(deadlineMs);
+        Thread.sleep(1);
+      }
+    }
+
+    private final class TestDataSource implements DataSource {
+
+      @Nullable private ByteArrayDataSource byteArrayDataSource;
+
+      @Override
+      public void addTransferListener(TransferListener transferListener) {}
+
+      @Override
+      public long open(DataSpec dataSpec) throws IOException {
+        openedUris.add(dataSpec.uri);
+        openAllowed.blockUninterruptible();
+        byteArrayDataSource = new ByteArrayDataSource(checkNotNull(data.get(dataSpec.uri)));
+        return byteArrayDataSource.open(dataSpec);
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        int result = checkNotNull(byteArrayDataSource).read(buffer, offset, readLength);
+        if (result != C.RESULT_END_OF_INPUT) {
+          bytesRead.addAndGet(result);
+        }
+        return result;
+      }
+
+      @Override
+      @Nullable
+      public Uri getUri() {
+        return byteArrayDataSource != null ? byteArrayDataSource.getUri() : null;
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (byteArrayDataSource != null) {
+          byteArrayDataSource.close();
+          byteArrayDataSource = null;
+          closeCount.incrementAndGet();
+        }
+      }
+    }
+  }
+}
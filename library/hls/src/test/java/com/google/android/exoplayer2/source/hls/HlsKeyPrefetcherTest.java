@@ -0,0 +1,379 @@
+/*
+ * Copyright 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link HlsKeyPrefetcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class HlsKeyPrefetcherTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  private static final int VARIANT_COUNT = 3;
+  private static final int SEGMENT_COUNT = 12;
+  private static final int SEGMENTS_PER_KEY = 4;
+  private static final int PERIOD_COUNT = 2;
+  private static final int KEY_PREFETCH_SEGMENT_COUNT = 3;
+  private static final long SEGMENT_LOAD_DURATION_MS = 50;
+  private static final long KEY_LOAD_LATENCY_MS = 25;
+
+  private TestDataSourceFactory dataSourceFactory;
+  private FullSegmentEncryptionKeyCache keyCache;
+  private HlsKeyPrefetcher keyPrefetcher;
+
+  @Before
+  public void setUp() {
+    dataSourceFactory = new TestDataSourceFactory(/* openLatencyMs= */ 0);
+    keyCache = new FullSegmentEncryptionKeyCache(/* maxSize= */ 4);
+    keyPrefetcher =
+        new HlsKeyPrefetcher(dataSourceFactory, /* transferListener= */ null, keyCache);
+  }
+
+  @After
+  public void tearDown() {
+    dataSourceFactory.openAllowed.open();
+    keyPrefetcher.release();
+  }
+
+  @Test
+  public void prefetch_loadsKeysIntoCache() throws Exception {
+    Uri keyUri1 = Uri.parse("https://example.com/key1");
+    Uri keyUri2 = Uri.parse("https://example.com/key2");
+    byte[] key1 = setKey(keyUri1, /* seed= */ 1);
+    byte[] key2 = setKey(keyUri2, /* seed= */ 2);
+
+    keyPrefetcher.prefetch(ImmutableList.of(keyUri1, keyUri2));
+    waitForKey(keyCache, keyUri2);
+
+    assertThat(keyCache.get(keyUri1)).isEqualTo(key1);
+    assertThat(keyCache.get(keyUri2)).isEqualTo(key2);
+    assertThat(dataSourceFactory.getOpenedUris()).containsExactly(keyUri1, keyUri2).inOrder();
+    assertThat(dataSourceFactory.dataTypes).containsExactly(C.DATA_TYPE_DRM);
+  }
+
+  @Test
+  public void prefetch_withCachedKey_doesNotLoadIt() throws Exception {
+    Uri keyUri1 = Uri.parse("https://example.com/key1");
+    Uri keyUri2 = Uri.parse("https://example.com/key2");
+    byte[] key1 = setKey(keyUri1, /* seed= */ 1);
+    setKey(keyUri2, /* seed= */ 2);
+    keyCache.put(keyUri1, key1);
+
+    keyPrefetcher.prefetch(ImmutableList.of(keyUri1, keyUri2));
+    waitForKey(keyCache, keyUri2);
+
+    assertThat(dataSourceFactory.getOpenedUris()).containsExactly(keyUri2);
+  }
+
+  @Test
+  public void prefetch_withQueuedOrLoadingKey_loadsItOnce() throws Exception {
+    Uri keyUri1 = Uri.parse("https://example.com/key1");
+    Uri keyUri2 = Uri.parse("https://example.com/key2");
+    setKey(keyUri1, /* seed= */ 1);
+    setKey(keyUri2, /* seed= */ 2);
+    dataSourceFactory.openAllowed.close();
+
+    keyPrefetcher.prefetch(ImmutableList.of(keyUri1, keyUri2));
+    keyPrefetcher.prefetch(ImmutableList.of(keyUri2, keyUri1));
+    dataSourceFactory.openAllowed.open();
+    waitForKey(keyCache, keyUri2);
+    keyPrefetcher.prefetch(ImmutableList.of(keyUri1, keyUri2));
+
+    assertThat(dataSourceFactory.getOpenedUris()).containsExactly(keyUri1, keyUri2).inOrder();
+  }
+
+  @Test
+  public void prefetch_withFailingLoad_leavesKeyUncached() throws Exception {
+    Uri missingKeyUri = Uri.parse("https://example.com/missing");
+    Uri keyUri = Uri.parse("https://example.com/key");
+    setKey(keyUri, /* seed= */ 1);
+
+    keyPrefetcher.prefetch(ImmutableList.of(missingKeyUri, keyUri));
+    waitForKey(keyCache, keyUri);
+
+    assertThat(keyCache.containsUri(missingKeyUri)).isFalse();
+    assertThat(dataSourceFactory.getOpenedUris()).containsExactly(missingKeyUri, keyUri).inOrder();
+  }
+
+  /**
+   * Plays back the segments of a stream whose variants have distinct keys, which rotate every
+   * {@link #SEGMENTS_PER_KEY} segments, switching variant every few segments. The stream is played
+   * back in {@link #PERIOD_COUNT} periods, as it would be with a repeat mode. Each key load has a
+   * latency of {@link #KEY_LOAD_LATENCY_MS}.
+   *
+   * <p>Reports the number of key loads, and the latency that blocking key loads add to each
+   * segment, with a key cache per chunk source and on demand key loads, as before, and with a key
+   * cache shared by all the periods and prefetched keys. Which keys {@link HlsChunkSource}
+   * prefetches is covered by {@link HlsChunkSourceTest}.
+   */
+  @Test
+  public void playback_withVariantSwitches_reportsKeyLoadsAndAddedLatency() throws Exception {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+    TestDataSourceFactory onDemandDataSourceFactory =
+        new TestDataSourceFactory(KEY_LOAD_LATENCY_MS);
+    setStreamKeys(onDemandDataSourceFactory);
+    KeyLoadStats onDemandStats = new KeyLoadStats();
+    for (int i = 0; i < PERIOD_COUNT; i++) {
+      simulatePlayback(
+          onDemandDataSourceFactory,
+          new FullSegmentEncryptionKeyCache(/* maxSize= */ 4),
+          /* keyPrefetcher= */ null,
+          onDemandStats);
+    }
+    onDemandStats.loadCount = onDemandDataSourceFactory.getOpenedUris().size();
+
+    TestDataSourceFactory prefetchingDataSourceFactory =
+        new TestDataSourceFactory(KEY_LOAD_LATENCY_MS);
+    setStreamKeys(prefetchingDataSourceFactory);
+    FullSegmentEncryptionKeyCache sharedKeyCache =
+        new FullSegmentEncryptionKeyCache(/* maxSize= */ 32);
+    KeyLoadStats prefetchingStats = new KeyLoadStats();
+    for (int i = 0; i < PERIOD_COUNT; i++) {
+      HlsKeyPrefetcher periodKeyPrefetcher =
+          new HlsKeyPrefetcher(
+              prefetchingDataSourceFactory, /* transferListener= */ null, sharedKeyCache);
+      try {
+        simulatePlayback(
+            prefetchingDataSourceFactory, sharedKeyCache, periodKeyPrefetcher, prefetchingStats);
+      } finally {
+        periodKeyPrefetcher.release();
+      }
+    }
+    prefetchingStats.loadCount = prefetchingDataSourceFactory.getOpenedUris().size();
+
+    BenchmarkUtil.report(
+        "HlsKeyPrefetcher",
+        "on demand, cache per period: "
+            + onDemandStats
+            + ", prefetching, shared cache: "
+            + prefetchingStats);
+  }
+
+  private byte[] setKey(Uri keyUri, int seed) {
+    byte[] key = TestUtil.buildTestData(/* length= */ 16, seed);
+    dataSourceFactory.data.put(keyUri, key);
+    return key;
+  }
+
+  private static void setStreamKeys(TestDataSourceFactory dataSourceFactory) {
+    for (int variantIndex = 0; variantIndex < VARIANT_COUNT; variantIndex++) {
+      for (int segmentIndex = 0; segmentIndex < SEGMENT_COUNT; segmentIndex += SEGMENTS_PER_KEY) {
+        dataSourceFactory.data.put(
+            getKeyUri(variantIndex, segmentIndex),
+            TestUtil.buildTestData(/* length= */ 16, /* seed= */ variantIndex + segmentIndex));
+      }
+    }
+  }
+
+  private static void waitForKey(FullSegmentEncryptionKeyCache keyCache, Uri keyUri)
+      throws InterruptedException {
+    long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+    while (!keyCache.containsUri(keyUri)) {
+      assertThat(System.currentTimeMillis()).isLessThan(deadlineMs);
+      Thread.sleep(1);
+    }
+  }
+
+  /**
+   * Loads the segments of a period one after the other, as a chunk source would, loading the key
+   * of each segment on demand if it isn't cached.
+   */
+  private static void simulatePlayback(
+      TestDataSourceFactory dataSourceFactory,
+      FullSegmentEncryptionKeyCache keyCache,
+      @Nullable HlsKeyPrefetcher keyPrefetcher,
+      KeyLoadStats keyLoadStats)
+      throws Exception {
+    for (int segmentIndex = 0; segmentIndex < SEGMENT_COUNT; segmentIndex++) {
+      int variantIndex = getVariantIndex(segmentIndex);
+      if (keyPrefetcher != null) {
+        // The keys of the next segments of the selected variant are needed first.
+        List<Uri> keyUris = new ArrayList<>();
+        for (int i = 0; i < VARIANT_COUNT; i++) {
+          int prefetchVariantIndex = (variantIndex + i) % VARIANT_COUNT;
+          int endSegmentIndex = min(segmentIndex + KEY_PREFETCH_SEGMENT_COUNT, SEGMENT_COUNT);
+          for (int j = segmentIndex; j < endSegmentIndex; j++) {
+            Uri keyUri = getKeyUri(prefetchVariantIndex, j);
+            if (!keyUris.contains(keyUri)) {
+              keyUris.add(keyUri);
+            }
+          }
+        }
+        keyPrefetcher.prefetch(keyUris);
+      }
+      Uri keyUri = getKeyUri(variantIndex, segmentIndex);
+      @Nullable byte[] key = keyCache.getAndRefresh(keyUri);
+      if (key == null) {
+        long loadStartTimeMs = System.currentTimeMillis();
+        DataSource dataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_DRM);
+        try {
+          dataSource.open(new DataSpec(keyUri));
+          key = Util.readToEnd(dataSource);
+        } finally {
+          dataSource.close();
+        }
+        keyCache.put(keyUri, key);
+        keyLoadStats.blockingLoadCount++;
+        keyLoadStats.addedLatencyMs += System.currentTimeMillis() - loadStartTimeMs;
+      }
+      assertThat(key).isEqualTo(dataSourceFactory.data.get(keyUri));
+      keyLoadStats.segmentCount++;
+      // Simulates the load of the segment.
+      Thread.sleep(SEGMENT_LOAD_DURATION_MS);
+    }
+  }
+
+  private static int getVariantIndex(int segmentIndex) {
+    // Switches up a variant every 3 segments, and back down to the lowest one.
+    return (segmentIndex / 3) % VARIANT_COUNT;
+  }
+
+  private static Uri getKeyUri(int variantIndex, int segmentIndex) {
+    return Uri.parse(
+        "https://example.com/variant"
+            + variantIndex
+            + "/key"
+            + (segmentIndex / SEGMENTS_PER_KEY));
+  }
+
+  private static final class KeyLoadStats {
+
+    public int loadCount;
+    public int blockingLoadCount;
+    public int segmentCount;
+    public long addedLatencyMs;
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%d key loads, %d blocking, %.1f ms added latency per segment",
+          loadCount,
+          blockingLoadCount,
+          segmentCount > 0 ? (double) addedLatencyMs / segmentCount : 0);
+    }
+  }
+
+  /**
+   * Creates data sources that read keys from byte arrays after a latency, and records the keys they
+   * open.
+   */
+  private static final class TestDataSourceFactory implements HlsDataSourceFactory {
+
+    public final Map<Uri, byte[]> data;
+    public final List<Integer> dataTypes;
+    public final ConditionVariable openAllowed;
+    private final long openLatencyMs;
+    private final List<Uri> openedUris;
+
+    public TestDataSourceFactory(long openLatencyMs) {
+      this.openLatencyMs = openLatencyMs;
+      data = Collections.synchronizedMap(new HashMap<>());
+      dataTypes = Collections.synchronizedList(new ArrayList<>());
+      openAllowed = new ConditionVariable();
+      openAllowed.open();
+      openedUris = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @Override
+    public DataSource createDataSource(int dataType) {
+      dataTypes.add(dataType);
+      return new TestDataSource();
+    }
+
+    public List<Uri> getOpenedUris() {
+      synchronized (openedUris) {
+        return new ArrayList<>(openedUris);
+      }
+    }
+
+    private final class TestDataSource implements DataSource {
+
+      @Nullable private ByteArrayDataSource byteArrayDataSource;
+
+      @Override
+      public void addTransferListener(TransferListener transferListener) {}
+
+      @Override
+      public long open(DataSpec dataSpec) throws IOException {
+        openedUris.add(dataSpec.uri);
+        openAllowed.blockUninterruptible();
+        if (openLatencyMs > 0) {
+          try {
+            Thread.sleep(openLatencyMs);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+          }
+        }
+        @Nullable byte[] key = data.get(dataSpec.uri);
+        if (key == null) {
+          throw new FileNotFoundException(dataSpec.uri.toString());
+        }
+        byteArrayDataSource = new ByteArrayDataSource(key);
+        return byteArrayDataSource.open(dataSpec);
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        return checkNotNull(byteArrayDataSource).read(buffer, offset, readLength);
+      }
+
+      @Override
+      @Nullable
+      public Uri getUri() {
+        return byteArrayDataSource != null ? byteArrayDataSource.getUri() : null;
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (byteArrayDataSource != null) {
+          byteArrayDataSource.close();
+          byteArrayDataSource = null;
+        }
+      }
+    }
+  }
+}
@@ -21,6 +21,7 @@ import static org.mockito.Mockito.when;
 
 import android.net.Uri;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.drm.DrmSessionEventListener;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
@@ -92,7 +93,12 @@ public final class HlsMediaPeriodTest {
               mock(CompositeSequenceableLoaderFactory.class),
               /* allowChunklessPreparation= */ true,
               HlsMediaSource.METADATA_TYPE_ID3,
-              /* useSessionKeys= */ false);
+              /* useSessionKeys= */ false,
+              new FullSegmentEncryptionKeyCache(/* maxSize= */ 4),
+              /* segmentPrefetchCount= */ 0,
+              /* prefetchEncryptionKeys= */ false,
+              /* loaderThreadPool= */ null,
+              C.PRIORITY_PLAYBACK);
         };
 
     MediaPeriodAsserts.assertGetStreamKeysAndManifestFilterIntegration(
@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls;
+
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.testutil.WebServerDispatcher;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.upstream.LoaderThreadPool;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link HlsSegmentPrefetcher}. */
+@RunWith(AndroidJUnit4.class)
+public final class HlsSegmentPrefetcherTest {
+
+  private static final String THREAD_NAME = "HlsSegmentPrefetcherTest";
+  private static final int MAX_PARALLEL_LOADS = 4;
+  private static final int ALLOCATION_SIZE = 32 * 1024;
+
+  private static final int SEGMENT_COUNT = 12;
+  private static final int SEGMENT_LENGTH = 32 * 1024;
+  private static final long SEGMENT_DURATION_MS = 250;
+  private static final long RESPONSE_LATENCY_MS = 200;
+  private static final int THROTTLE_BYTES_PER_PERIOD = 16 * 1024;
+  private static final long THROTTLE_PERIOD_MS = 25;
+
+  private TestDataSourceFactory prefetchDataSourceFactory;
+  private TestDataSourceFactory upstreamDataSourceFactory;
+  private LoaderThreadPool threadPool;
+  private HlsSegmentPrefetcher prefetcher;
+
+  @Before
+  public void setUp() {
+    prefetchDataSourceFactory = new TestDataSourceFactory();
+    upstreamDataSourceFactory = new TestDataSourceFactory();
+    threadPool = new LoaderThreadPool(THREAD_NAME);
+    prefetcher =
+        new HlsSegmentPrefetcher(
+            prefetchDataSourceFactory,
+            /* transferListener= */ null,
+            threadPool,
+            MAX_PARALLEL_LOADS,
+            HlsSegmentPrefetcher.DEFAULT_MAX_BUFFER_BYTES);
+  }
+
+  @After
+  public void tearDown() {
+    prefetchDataSourceFactory.openAllowed.open();
+    prefetcher.release();
+  }
+
+  @Test
+  public void read_afterUpdate_readsPrefetchedData() throws IOException {
+    byte[] segment1 = TestUtil.buildTestData(/* length= */ 100_000, /* seed= */ 1);
+    byte[] segment2 = TestUtil.buildTestData(/* length= */ 1_000, /* seed= */ 2);
+    byte[] key = TestUtil.buildTestData(/* length= */ 16, /* seed= */ 3);
+    DataSpec segment1DataSpec = setData("https://example.com/segment1.ts", segment1);
+    DataSpec segment2DataSpec = setData("https://example.com/segment2.ts", segment2);
+    DataSpec keyDataSpec = setData("https://example.com/key", key);
+    DataSource mediaDataSource =
+        prefetcher.createDataSource(upstreamDataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA));
+    DataSource encryptionDataSource =
+        prefetcher.createDataSource(upstreamDataSourceFactory.createDataSource(C.DATA_TYPE_DRM));
+
+    prefetcher.update(
+        ImmutableList.of(segment1DataSpec, segment2DataSpec), ImmutableList.of(keyDataSpec));
+
+    assertThat(readData(encryptionDataSource, keyDataSpec)).isEqualTo(key);
+    assertThat(readData(mediaDataSource, segment1DataSpec)).isEqualTo(segment1);
+    assertThat(readData(mediaDataSource, segment2DataSpec)).isEqualTo(segment2);
+    assertThat(upstreamDataSourceFactory.getOpenedDataSpecs()).isEmpty();
+    assertThat(prefetchDataSourceFactory.getOpenedDataSpecs())
+        .containsExactly(keyDataSpec, segment1DataSpec, segment2DataSpec);
+    assertThat(prefetchDataSourceFactory.dataTypes)
+        .containsExactly(C.DATA_TYPE_DRM, C.DATA_TYPE_MEDIA, C.DATA_TYPE_MEDIA);
+  }
+
+  @Test
+  public void read_withByteRange_readsPrefetchedRange() throws IOException {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1_000);
+    setData("https://example.com/segments.ts", data);
+    DataSpec rangeDataSpec =
+        new DataSpec(
+            Uri.parse("https://example.com/segments.ts"), /* position= */ 100, /* length= */ 200);
+    DataSource dataSource =
+        prefetcher.createDataSource(upstreamDataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA));
+
+    prefetcher.update(ImmutableList.of(rangeDataSpec), ImmutableList.of());
+
+    assertThat(readData(dataSource, rangeDataSpec))
+        .isEqualTo(Arrays.copyOfRange(data, /* from= */ 100, /* to= */ 300));
+    assertThat(upstreamDataSourceFactory.getOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void read_withoutPrefetch_readsFromUpstream() throws IOException {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1_000);
+    DataSpec dataSpec = setData("https://example.com/segment1.ts", data);
+    DataSource dataSource =
+        prefetcher.createDataSource(upstreamDataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA));
+
+    assertThat(readData(dataSource, dataSpec)).isEqualTo(data);
+    assertThat(upstreamDataSourceFactory.getOpenedDataSpecs()).containsExactly(dataSpec);
+    assertThat(prefetchDataSourceFactory.getOpenedDataSpecs()).isEmpty();
+  }
+
+  @Test
+  public void update_withoutPreviousDataSpec_cancelsItsPrefetch() throws IOException {
+    byte[] segment1 = TestUtil.buildTestData(/* length= */ 1_000, /* seed= */ 1);
+    byte[] segment2 = TestUtil.buildTestData(/* length= */ 1_000, /* seed= */ 2);
+    DataSpec segment1DataSpec = setData("https://example.com/variant1/segment1.ts", segment1);
+    DataSpec segment2DataSpec = setData("https://example.com/variant2/segment1.ts", segment2);
+    DataSource dataSource =
+        prefetcher.createDataSource(upstreamDataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA));
+    prefetchDataSourceFactory.openAllowed.close();
+
+    prefetcher.update(ImmutableList.of(segment1DataSpec), ImmutableList.of());
+    // Switch to another variant.
+    prefetcher.update(ImmutableList.of(segment2DataSpec), ImmutableList.of());
+    byte[] readSegment1 = readData(dataSource, segment1DataSpec);
+    prefetchDataSourceFactory.openAllowed.open();
+    byte[] readSegment2 = readData(dataSource, segment2DataSpec);
+
+    assertThat(readSegment1).isEqualTo(segment1);
+    assertThat(readSegment2).isEqualTo(segment2);
+    assertThat(upstreamDataSourceFactory.getOpenedDataSpecs()).containsExactly(segment1DataSpec);
+  }
+
+  @Test
+  public void read_segmentLargerThanMaxBuffer_readsAllDataFromPrefetch() throws IOException {
+    int maxBufferBytes = 2 * ALLOCATION_SIZE;
+    prefetcher.release();
+    prefetcher =
+        new HlsSegmentPrefetcher(
+            prefetchDataSourceFactory,
+            /* transferListener= */ null,
+            threadPool,
+            MAX_PARALLEL_LOADS,
+            maxBufferBytes);
+    byte[] data = TestUtil.buildTestData(/* length= */ 10 * maxBufferBytes + 1_000);
+    DataSpec dataSpec = setData("https://example.com/segment1.ts", data);
+    DataSource dataSource =
+        prefetcher.createDataSource(upstreamDataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA));
+
+    prefetcher.update(ImmutableList.of(dataSpec), ImmutableList.of());
+    byte[] readData = new byte[data.length + 1];
+    int bytesRead = 0;
+    int maxBufferedBytes = 0;
+    dataSource.open(dataSpec);
+    try {
+      int result = 0;
+      while (result != C.RESULT_END_OF_INPUT) {
+        maxBufferedBytes = max(maxBufferedBytes, prefetcher.getBufferedBytes());
+        result = dataSource.read(readData, bytesRead, min(10_000, readData.length - bytesRead));
+        bytesRead += result != C.RESULT_END_OF_INPUT ? result : 0;
+      }
+    } finally {
+      dataSource.close();
+    }
+
+    assertThat(Arrays.copyOf(readData, bytesRead)).isEqualTo(data);
+    assertThat(upstreamDataSourceFactory.getOpenedDataSpecs()).isEmpty();
+    assertThat(maxBufferedBytes).isAtMost(maxBufferBytes);
+    assertThat(prefetcher.getBufferedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void read_withBufferHeldByAnotherPrefetch_readsFromUpstream() throws IOException {
+    prefetcher.release();
+    prefetcher =
+        new HlsSegmentPrefetcher(
+            prefetchDataSourceFactory,
+            /* transferListener= */ null,
+            threadPool,
+            /* maxParallelLoads= */ 1,
+            /* maxBufferBytes= */ 2 * ALLOCATION_SIZE);
+    byte[] segment1 = TestUtil.buildTestData(/* length= */ ALLOCATION_SIZE + 1_000, /* seed= */ 1);
+    byte[] segment2 = TestUtil.buildTestData(/* length= */ 100_000, /* seed= */ 2);
+    DataSpec segment1DataSpec = setData("https://example.com/segment1.ts", segment1);
+    DataSpec segment2DataSpec = setData("https://example.com/segment2.ts", segment2);
+    DataSource dataSource =
+        prefetcher.createDataSource(upstreamDataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA));
+
+    prefetcher.update(
+        ImmutableList.of(segment1DataSpec, segment2DataSpec), ImmutableList.of());
+    // Segment 1 holds the whole buffer until it's read, so segment 2 can't be prefetched.
+    byte[] readSegment2 = readData(dataSource, segment2DataSpec);
+    byte[] readSegment1 = readData(dataSource, segment1DataSpec);
+
+    assertThat(readSegment1).isEqualTo(segment1);
+    assertThat(readSegment2).isEqualTo(segment2);
+    List<DataSpec> upstreamDataSpecs = upstreamDataSourceFactory.getOpenedDataSpecs();
+    assertThat(upstreamDataSpecs).hasSize(1);
+    assertThat(upstreamDataSpecs.get(0).uri).isEqualTo(segment2DataSpec.uri);
+    assertThat(upstreamDataSpecs.get(0).position).isEqualTo(0);
+    assertThat(prefetcher.getBufferedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void read_afterRelease_readsFromUpstream() throws IOException {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1_000);
+    DataSpec dataSpec = setData("https://example.com/segment1.ts", data);
+    DataSource dataSource =
+        prefetcher.createDataSource(upstreamDataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA));
+    prefetchDataSourceFactory.openAllowed.close();
+    prefetcher.update(ImmutableList.of(dataSpec), ImmutableList.of());
+
+    prefetcher.release();
+
+    assertThat(readData(dataSource, dataSpec)).isEqualTo(data);
+    assertThat(upstreamDataSourceFactory.getOpenedDataSpecs()).containsExactly(dataSpec);
+  }
+
+  @Test
+  public void load_fromHighLatencyThrottledServer_reportsThroughputAndStalls() throws Exception {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+    MockWebServer mockWebServer = new MockWebServer();
+    List<WebServerDispatcher.Resource> resources = new ArrayList<>();
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      resources.add(
+          new WebServerDispatcher.Resource.Builder()
+              .setPath("/segment" + i + ".ts")
+              .setData(TestUtil.buildTestData(SEGMENT_LENGTH, /* seed= */ i))
+              .build());
+    }
+    mockWebServer.setDispatcher(
+        new HighLatencyThrottlingDispatcher(WebServerDispatcher.forResources(resources)));
+    mockWebServer.start();
+    List<DataSpec> dataSpecs = new ArrayList<>();
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      dataSpecs.add(new DataSpec(Uri.parse(mockWebServer.url("/segment" + i + ".ts").toString())));
+    }
+    HlsDataSourceFactory httpDataSourceFactory =
+        new DefaultHlsDataSourceFactory(new DefaultHttpDataSource.Factory());
+
+    try {
+      PlaybackStats sequentialStats =
+          simulatePlayback(
+              httpDataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA),
+              /* prefetcher= */ null,
+              dataSpecs);
+      assertThat(mockWebServer.getRequestCount()).isEqualTo(SEGMENT_COUNT);
+      HlsSegmentPrefetcher httpPrefetcher =
+          new HlsSegmentPrefetcher(
+              httpDataSourceFactory,
+              /* transferListener= */ null,
+              threadPool,
+              MAX_PARALLEL_LOADS,
+              HlsSegmentPrefetcher.DEFAULT_MAX_BUFFER_BYTES);
+      PlaybackStats prefetchingStats;
+      try {
+        prefetchingStats =
+            simulatePlayback(
+                httpPrefetcher.createDataSource(
+                    httpDataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA)),
+                httpPrefetcher,
+                dataSpecs);
+      } finally {
+        httpPrefetcher.release();
+      }
+
+      // Every segment is requested once, by the prefetcher.
+      assertThat(mockWebServer.getRequestCount()).isEqualTo(2 * SEGMENT_COUNT);
+      assertThat(sequentialStats.bytesLoaded).isEqualTo(SEGMENT_COUNT * SEGMENT_LENGTH);
+      assertThat(prefetchingStats.bytesLoaded).isEqualTo(SEGMENT_COUNT * SEGMENT_LENGTH);
+      BenchmarkUtil.report(
+          "HlsSegmentPrefetcher",
+          "sequential: "
+              + sequentialStats
+              + ", prefetching "
+              + (MAX_PARALLEL_LOADS - 1)
+              + " segments: "
+              + prefetchingStats);
+    } finally {
+      mockWebServer.shutdown();
+    }
+  }
+
+  private DataSpec setData(String uri, byte[] data) {
+    DataSpec dataSpec = new DataSpec(Uri.parse(uri));
+    prefetchDataSourceFactory.data.put(dataSpec.uri, data);
+    upstreamDataSourceFactory.data.put(dataSpec.uri, data);
+    return dataSpec;
+  }
+
+  private static byte[] readData(DataSource dataSource, DataSpec dataSpec) throws IOException {
+    try {
+      dataSource.open(dataSpec);
+      return Util.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  /**
+   * Loads the segments one after the other, as a chunk source would, and simulates the playback
+   * of each segment once it's loaded. Playback starts when the first segment is loaded, and
+   * stalls whenever it reaches a segment that isn't loaded yet.
+   */
+  private static PlaybackStats simulatePlayback(
+      DataSource dataSource, @Nullable HlsSegmentPrefetcher prefetcher, List<DataSpec> dataSpecs)
+      throws IOException {
+    PlaybackStats playbackStats = new PlaybackStats();
+    long startTimeMs = System.currentTimeMillis();
+    long playbackStartTimeMs = C.TIME_UNSET;
+    for (int i = 0; i < dataSpecs.size(); i++) {
+      if (prefetcher != null) {
+        prefetcher.update(
+            dataSpecs.subList(i, min(dataSpecs.size(), i + MAX_PARALLEL_LOADS)),
+            ImmutableList.of());
+      }
+      playbackStats.bytesLoaded += readData(dataSource, dataSpecs.get(i)).length;
+      long loadedTimeMs = System.currentTimeMillis();
+      if (playbackStartTimeMs == C.TIME_UNSET) {
+        playbackStartTimeMs = loadedTimeMs;
+        playbackStats.startupDurationMs = loadedTimeMs - startTimeMs;
+        continue;
+      }
+      long segmentPlaybackTimeMs = playbackStartTimeMs + i * SEGMENT_DURATION_MS;
+      if (loadedTimeMs > segmentPlaybackTimeMs) {
+        long stallDurationMs = loadedTimeMs - segmentPlaybackTimeMs;
+        playbackStats.stallCount++;
+        playbackStats.stallDurationMs += stallDurationMs;
+        playbackStartTimeMs += stallDurationMs;
+      }
+    }
+    playbackStats.loadDurationMs = System.currentTimeMillis() - startTimeMs;
+    return playbackStats;
+  }
+
+  private static final class PlaybackStats {
+
+    public long bytesLoaded;
+    public long loadDurationMs;
+    public long startupDurationMs;
+    public int stallCount;
+    public long stallDurationMs;
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%d kB/s, startup %d ms, %d stalls for %d ms",
+          loadDurationMs > 0 ? bytesLoaded / loadDurationMs : 0,
+          startupDurationMs,
+          stallCount,
+          stallDurationMs);
+    }
+  }
+
+  /** Delays and limits the rate of each response, to simulate a slow, high latency connection. */
+  private static final class HighLatencyThrottlingDispatcher extends Dispatcher {
+
+    private final Dispatcher dispatcher;
+
+    public HighLatencyThrottlingDispatcher(Dispatcher dispatcher) {
+      this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+      return dispatcher
+          .dispatch(request)
+          .setHeadersDelay(RESPONSE_LATENCY_MS, MILLISECONDS)
+          .throttleBody(THROTTLE_BYTES_PER_PERIOD, THROTTLE_PERIOD_MS, MILLISECONDS);
+    }
+  }
+
+  /** Creates data sources that read from byte arrays, and records the data they open. */
+  private static final class TestDataSourceFactory implements HlsDataSourceFactory {
+
+    public final Map<Uri, byte[]> data;
+    public final List<Integer> dataTypes;
+    public final ConditionVariable openAllowed;
+    private final List<DataSpec> openedDataSpecs;
+
+    public TestDataSourceFactory() {
+      data = Collections.synchronizedMap(new HashMap<>());
+      dataTypes = Collections.synchronizedList(new ArrayList<>());
+      openAllowed = new ConditionVariable();
+      openAllowed.open();
+      openedDataSpecs = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @Override
+    public DataSource createDataSource(int dataType) {
+      dataTypes.add(dataType);
+      return new TestDataSource();
+    }
+
+    public List<DataSpec> getOpenedDataSpecs() {
+      synchronized (openedDataSpecs) {
+        return new ArrayList<>(openedDataSpecs);
+      }
+    }
+
+    private final class TestDataSource implements DataSource {
+
+      @Nullable private ByteArrayDataSource byteArrayDataSource;
+
+      @Override
+      public void addTransferListener(TransferListener transferListener) {}
+
+      @Override
+      public long open(DataSpec dataSpec) throws IOException {
+        openedDataSpecs.add(dataSpec);
+        openAllowed.blockUninterruptible();
+        byteArrayDataSource = new ByteArrayDataSource(checkNotNull(data.get(dataSpec.uri)));
+        return byteArrayDataSource.open(dataSpec);
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        return checkNotNull(byteArrayDataSource).read(buffer, offset, readLength);
+      }
+
+      @Override
+      @Nullable
+      public Uri getUri() {
+        return byteArrayDataSource != null ? byteArrayDataSource.getUri() : null;
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (byteArrayDataSource != null) {
+          byteArrayDataSource.close();
+          byteArrayDataSource = null;
+        }
+      }
+    }
+  }
+}
@@ -15,9 +15,11 @@
  */
 package com.google.android.exoplayer2.source.hls.playlist;
 
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
 import static com.google.common.truth.Truth.assertThat;
 
 import android.net.Uri;
+import androidx.annotation.Nullable;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.robolectric.RobolectricUtil;
@@ -26,14 +28,21 @@ import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.Iterables;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
 import okio.Buffer;
 import org.junit.After;
 import org.junit.Before;
@@ -146,10 +155,11 @@ public class DefaultHlsPlaylistTrackerTest {
             getMockResponse(SAMPLE_M3U8_LIVE_MASTER),
             getMockResponse(SAMPLE_M3U8_LIVE_MEDIA_CAN_SKIP_UNTIL),
             getMockResponse(SAMPLE_M3U8_LIVE_MEDIA_CAN_SKIP_SKIPPED));
+    DefaultHlsPlaylistTracker tracker = createTracker(new DefaultHttpDataSource.Factory());
 
     List<HlsMediaPlaylist> mediaPlaylists =
         runPlaylistTrackerAndCollectMediaPlaylists(
-            new DefaultHttpDataSource.Factory(),
+            tracker,
             Uri.parse(mockWebServer.url("/master.m3u8").toString()),
             /* awaitedMediaPlaylistCount= */ 2);
 
@@ -157,7 +167,9 @@ public class DefaultHlsPlaylistTrackerTest {
     HlsMediaPlaylist initialPlaylistWithAllSegments = mediaPlaylists.get(0);
     assertThat(initialPlaylistWithAllSegments.mediaSequence).isEqualTo(10);
     assertThat(initialPlaylistWithAllSegments.segments).hasSize(6);
+    assertThat(initialPlaylistWithAllSegments.skippedSegmentCount).isEqualTo(0);
     HlsMediaPlaylist mergedPlaylist = mediaPlaylists.get(1);
+    assertThat(mergedPlaylist.skippedSegmentCount).isEqualTo(2);
     assertThat(mergedPlaylist.mediaSequence).isEqualTo(11);
     assertThat(mergedPlaylist.segments).hasSize(6);
     // First 2 segments of the merged playlist need to be copied from the previous playlist.
@@ -167,6 +179,10 @@ public class DefaultHlsPlaylistTrackerTest {
     assertThat(mergedPlaylist.segments.get(1).url)
         .isEqualTo(initialPlaylistWithAllSegments.segments.get(2).url);
     assertThat(mergedPlaylist.segments.get(1).relativeStartTimeUs).isEqualTo(4000000);
+    assertThat(tracker.getDeltaUpdateCount()).isEqualTo(1);
+    assertThat(tracker.getDeltaUpdateFailureCount()).isEqualTo(0);
+    // The full playlist has 6 segments in 324 bytes, and the delta update has 285 bytes.
+    assertThat(tracker.getDeltaUpdateBytesSaved()).isEqualTo(324 - 285);
   }
 
   @Test
@@ -184,10 +200,11 @@ public class DefaultHlsPlaylistTrackerTest {
             getMockResponse(SAMPLE_M3U8_LIVE_MEDIA_CAN_SKIP_UNTIL),
             getMockResponse(SAMPLE_M3U8_LIVE_MEDIA_CAN_SKIP_SKIPPED_MEDIA_SEQUENCE_NO_OVERLAPPING),
             getMockResponse(SAMPLE_M3U8_LIVE_MEDIA_CAN_SKIP_UNTIL_FULL_RELOAD_AFTER_ERROR));
+    DefaultHlsPlaylistTracker tracker = createTracker(new DefaultHttpDataSource.Factory());
 
     List<HlsMediaPlaylist> mediaPlaylists =
         runPlaylistTrackerAndCollectMediaPlaylists(
-            new DefaultHttpDataSource.Factory(),
+            tracker,
             Uri.parse(mockWebServer.url("/master.m3u8").toString()),
             /* awaitedMediaPlaylistCount= */ 2);
 
@@ -198,6 +215,94 @@ public class DefaultHlsPlaylistTrackerTest {
     HlsMediaPlaylist mergedPlaylist = mediaPlaylists.get(1);
     assertThat(mergedPlaylist.mediaSequence).isEqualTo(20);
     assertThat(mergedPlaylist.segments).hasSize(6);
+    assertThat(tracker.getDeltaUpdateCount()).isEqualTo(0);
+    assertThat(tracker.getDeltaUpdateFailureCount()).isEqualTo(1);
+    assertThat(tracker.getDeltaUpdateBytesSaved()).isEqualTo(0);
+  }
+
+  @Test
+  public void start_liveServerWithDeltaUpdates_requestsDeltaUpdatesAndCountsBytesSaved()
+      throws IOException, TimeoutException, InterruptedException {
+    DeltaUpdatingPlaylistDispatcher dispatcher =
+        new DeltaUpdatingPlaylistDispatcher(
+            getBytes(SAMPLE_M3U8_LIVE_MASTER), /* windowSegmentCount= */ 900);
+    mockWebServer.setDispatcher(dispatcher);
+    DefaultHlsPlaylistTracker tracker = createTracker(new DefaultHttpDataSource.Factory());
+
+    List<HlsMediaPlaylist> mediaPlaylists =
+        runPlaylistTrackerAndCollectMediaPlaylists(
+            tracker,
+            Uri.parse(mockWebServer.url("/master.m3u8").toString()),
+            /* awaitedMediaPlaylistCount= */ 10);
+
+    assertThat(mockWebServer.takeRequest().getPath()).isEqualTo("/master.m3u8");
+    assertThat(mockWebServer.takeRequest().getPath()).isEqualTo("/media0/playlist.m3u8");
+    for (int i = 1; i < mediaPlaylists.size(); i++) {
+      assertThat(mockWebServer.takeRequest().getPath())
+          .isEqualTo("/media0/playlist.m3u8?_HLS_skip=YES");
+    }
+    for (int i = 0; i < mediaPlaylists.size(); i++) {
+      HlsMediaPlaylist mediaPlaylist = mediaPlaylists.get(i);
+      assertThat(mediaPlaylist.mediaSequence).isEqualTo(i);
+      assertThat(mediaPlaylist.segments).hasSize(900);
+      assertThat(mediaPlaylist.segments.get(0).url).isEqualTo("fileSequence" + i + ".ts");
+      assertThat(Iterables.getLast(mediaPlaylist.segments).url)
+          .isEqualTo("fileSequence" + (i + 899) + ".ts");
+      assertThat(mediaPlaylist.skippedSegmentCount).isEqualTo(i == 0 ? 0 : 894);
+    }
+    assertThat(tracker.getDeltaUpdateCount()).isEqualTo(9);
+    assertThat(tracker.getDeltaUpdateFailureCount()).isEqualTo(0);
+    // Each delta update lists 6 of the 900 segments, so it saves most of a full playlist. The
+    // saving is estimated from the size of the first playlist, so it's only approximately right.
+    long deltaUpdateBytes = dispatcher.getBytesServed() - dispatcher.getFullPlaylistBytes();
+    double expectedBytesSaved = 9 * dispatcher.getFullPlaylistBytes() - deltaUpdateBytes;
+    assertThat((double) tracker.getDeltaUpdateBytesSaved())
+        .isWithin(expectedBytesSaved / 100)
+        .of(expectedBytesSaved);
+  }
+
+  @Test
+  public void refreshPlaylist_serverCanBlockReload_requestsNonBlockingDeltaUpdate()
+      throws IOException, TimeoutException, InterruptedException {
+    BlockingReloadPlaylistDispatcher dispatcher = new BlockingReloadPlaylistDispatcher();
+    mockWebServer.setDispatcher(dispatcher);
+    DefaultHlsPlaylistTracker tracker = createTracker(new DefaultHttpDataSource.Factory());
+    Uri secondaryPlaylistUrl = Uri.parse(mockWebServer.url("/media1/playlist.m3u8").toString());
+    List<HlsMediaPlaylist> primaryPlaylists = new ArrayList<>();
+    tracker.start(
+        Uri.parse(mockWebServer.url("/master.m3u8").toString()),
+        new MediaSourceEventListener.EventDispatcher(),
+        primaryPlaylists::add);
+    RobolectricUtil.runMainLooperUntil(
+        () -> dispatcher.getRequestPaths("/media0/playlist.m3u8").size() == 2);
+
+    // The first refresh loads the full playlist, the second one a delta update.
+    tracker.refreshPlaylist(secondaryPlaylistUrl);
+    RobolectricUtil.runMainLooperUntil(
+        () -> tracker.getPlaylistSnapshot(secondaryPlaylistUrl, /* isForPlayback= */ false) != null);
+    HlsMediaPlaylist firstPlaylist =
+        tracker.getPlaylistSnapshot(secondaryPlaylistUrl, /* isForPlayback= */ false);
+    tracker.refreshPlaylist(secondaryPlaylistUrl);
+    RobolectricUtil.runMainLooperUntil(
+        () ->
+            tracker.getPlaylistSnapshot(secondaryPlaylistUrl, /* isForPlayback= */ false)
+                != firstPlaylist);
+    HlsMediaPlaylist secondPlaylist =
+        checkNotNull(tracker.getPlaylistSnapshot(secondaryPlaylistUrl, /* isForPlayback= */ false));
+    tracker.stop();
+
+    // The primary playlist is reloaded with a blocking request, which the server holds.
+    assertThat(primaryPlaylists).hasSize(1);
+    assertThat(dispatcher.getRequestPaths("/media0/playlist.m3u8"))
+        .containsExactly(
+            "/media0/playlist.m3u8", "/media0/playlist.m3u8?_HLS_msn=10&_HLS_skip=YES")
+        .inOrder();
+    assertThat(dispatcher.getRequestPaths("/media1/playlist.m3u8"))
+        .containsExactly("/media1/playlist.m3u8", "/media1/playlist.m3u8?_HLS_skip=YES")
+        .inOrder();
+    assertThat(secondPlaylist.skippedSegmentCount).isEqualTo(4);
+    assertThat(secondPlaylist.segments).hasSize(10);
+    assertThat(tracker.getDeltaUpdateCount()).isEqualTo(1);
   }
 
   @Test
@@ -417,13 +522,22 @@ public class DefaultHlsPlaylistTrackerTest {
   private static List<HlsMediaPlaylist> runPlaylistTrackerAndCollectMediaPlaylists(
       DataSource.Factory dataSourceFactory, Uri masterPlaylistUri, int awaitedMediaPlaylistCount)
       throws TimeoutException {
+    return runPlaylistTrackerAndCollectMediaPlaylists(
+        createTracker(dataSourceFactory), masterPlaylistUri, awaitedMediaPlaylistCount);
+  }
 
-    DefaultHlsPlaylistTracker defaultHlsPlaylistTracker =
-        new DefaultHlsPlaylistTracker(
-            dataType -> dataSourceFactory.createDataSource(),
-            new DefaultLoadErrorHandlingPolicy(),
-            new DefaultHlsPlaylistParserFactory());
+  private static DefaultHlsPlaylistTracker createTracker(DataSource.Factory dataSourceFactory) {
+    return new DefaultHlsPlaylistTracker(
+        dataType -> dataSourceFactory.createDataSource(),
+        new DefaultLoadErrorHandlingPolicy(),
+        new DefaultHlsPlaylistParserFactory());
+  }
 
+  private static List<HlsMediaPlaylist> runPlaylistTrackerAndCollectMediaPlaylists(
+      DefaultHlsPlaylistTracker defaultHlsPlaylistTracker,
+      Uri masterPlaylistUri,
+      int awaitedMediaPlaylistCount)
+      throws TimeoutException {
     List<HlsMediaPlaylist> mediaPlaylists = new ArrayList<>();
     AtomicInteger playlistCounter = new AtomicInteger();
     defaultHlsPlaylistTracker.start(
@@ -447,4 +561,154 @@ public class DefaultHlsPlaylistTrackerTest {
   private static byte[] getBytes(String filename) throws IOException {
     return TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), filename);
   }
+
+  /**
+   * Serves a master playlist with two variants, and live media playlists that support blocking
+   * reloads and delta updates. The window of each media playlist advances by one segment with each
+   * non-blocking request. Blocking requests are never answered, as if the next segment was never
+   * published.
+   */
+  private static final class BlockingReloadPlaylistDispatcher extends Dispatcher {
+
+    private static final int WINDOW_SEGMENT_COUNT = 10;
+    private static final int SKIPPED_SEGMENT_COUNT = 4;
+
+    private final List<String> requestPaths;
+    private final Map<String, Integer> mediaSequences;
+
+    public BlockingReloadPlaylistDispatcher() {
+      requestPaths = new ArrayList<>();
+      mediaSequences = new HashMap<>();
+    }
+
+    /** Returns the paths, including the query, of the requests made for the given path. */
+    public synchronized List<String> getRequestPaths(String encodedPath) {
+      List<String> paths = new ArrayList<>();
+      for (String requestPath : requestPaths) {
+        if (requestPath.equals(encodedPath) || requestPath.startsWith(encodedPath + "?")) {
+          paths.add(requestPath);
+        }
+      }
+      return paths;
+    }
+
+    @Override
+    public synchronized MockResponse dispatch(RecordedRequest request) {
+      HttpUrl url = checkNotNull(request.getRequestUrl());
+      requestPaths.add(checkNotNull(request.getPath()));
+      if (url.encodedPath().equals("/master.m3u8")) {
+        return new MockResponse()
+            .setBody(
+                "#EXTM3U\n"
+                    + "#EXT-X-STREAM-INF:BANDWIDTH=2000000\n"
+                    + "media0/playlist.m3u8\n"
+                    + "#EXT-X-STREAM-INF:BANDWIDTH=1000000\n"
+                    + "media1/playlist.m3u8\n");
+      }
+      if (url.queryParameter("_HLS_msn") != null) {
+        return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+      }
+      boolean deltaUpdate = "YES".equals(url.queryParameter("_HLS_skip"));
+      int skippedSegmentCount = deltaUpdate ? SKIPPED_SEGMENT_COUNT : 0;
+      @Nullable Integer previousMediaSequence = mediaSequences.get(url.encodedPath());
+      int mediaSequence = previousMediaSequence == null ? 0 : previousMediaSequence + 1;
+      mediaSequences.put(url.encodedPath(), mediaSequence);
+      StringBuilder playlist =
+          new StringBuilder()
+              .append("#EXTM3U\n")
+              .append("#EXT-X-VERSION:9\n")
+              .append("#EXT-X-TARGETDURATION:4\n")
+              .append("#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,CAN-SKIP-UNTIL=24\n")
+              .append("#EXT-X-MEDIA-SEQUENCE:")
+              .append(mediaSequence)
+              .append('\n');
+      if (deltaUpdate) {
+        playlist.append("#EXT-X-SKIP:SKIPPED-SEGMENTS=").append(skippedSegmentCount).append('\n');
+      }
+      for (int i = skippedSegmentCount; i < WINDOW_SEGMENT_COUNT; i++) {
+        playlist
+            .append("#EXTINF:4.00000,\n")
+            .append("fileSequence")
+            .append(mediaSequence + i)
+            .append(".ts\n");
+      }
+      return new MockResponse().setBody(playlist.toString());
+    }
+  }
+
+  /**
+   * Serves a master playlist and a live media playlist whose window advances by one segment with
+   * each request. Requests with {@code _HLS_skip=YES} are served delta updates that skip all but
+   * the segments within the skip boundary.
+   */
+  private static final class DeltaUpdatingPlaylistDispatcher extends Dispatcher {
+
+    private static final int TARGET_DURATION_SECONDS = 4;
+    private static final int SKIP_UNTIL_SECONDS = 24;
+
+    private final byte[] masterPlaylist;
+    private final int windowSegmentCount;
+
+    private int mediaSequence;
+    private long fullPlaylistBytes;
+    private long bytesServed;
+
+    public DeltaUpdatingPlaylistDispatcher(byte[] masterPlaylist, int windowSegmentCount) {
+      this.masterPlaylist = masterPlaylist;
+      this.windowSegmentCount = windowSegmentCount;
+    }
+
+    /** Returns the size of the last full media playlist served. */
+    public synchronized long getFullPlaylistBytes() {
+      return fullPlaylistBytes;
+    }
+
+    /** Returns the total size of the media playlists and delta updates served. */
+    public synchronized long getBytesServed() {
+      return bytesServed;
+    }
+
+    @Override
+    public synchronized MockResponse dispatch(RecordedRequest request) {
+      HttpUrl url = checkNotNull(request.getRequestUrl());
+      if (url.encodedPath().equals("/master.m3u8")) {
+        return new MockResponse().setBody(new Buffer().write(masterPlaylist));
+      }
+      boolean deltaUpdate = "YES".equals(url.queryParameter("_HLS_skip"));
+      int skippedSegmentCount =
+          deltaUpdate ? windowSegmentCount - SKIP_UNTIL_SECONDS / TARGET_DURATION_SECONDS : 0;
+      StringBuilder playlist =
+          new StringBuilder()
+              .append("#EXTM3U\n")
+              .append("#EXT-X-VERSION:9\n")
+              .append("#EXT-X-TARGETDURATION:")
+              .append(TARGET_DURATION_SECONDS)
+              .append('\n')
+              .append("#EXT-X-SERVER-CONTROL:CAN-SKIP-UNTIL=")
+              .append(SKIP_UNTIL_SECONDS)
+              .append('\n')
+              .append("#EXT-X-MEDIA-SEQUENCE:")
+              .append(mediaSequence)
+              .append('\n');
+      if (deltaUpdate) {
+        playlist.append("#EXT-X-SKIP:SKIPPED-SEGMENTS=").append(skippedSegmentCount).append('\n');
+      }
+      for (int i = skippedSegmentCount; i < windowSegmentCount; i++) {
+        playlist
+            .append("#EXTINF:")
+            .append(TARGET_DURATION_SECONDS)
+            .append(".00000,\n")
+            .append("fileSequence")
+            .append(mediaSequence + i)
+            .append(".ts\n");
+      }
+      byte[] playlistBytes = Util.getUtf8Bytes(playlist.toString());
+      if (!deltaUpdate) {
+        fullPlaylistBytes = playlistBytes.length;
+      }
+      bytesServed += playlistBytes.length;
+      mediaSequence++;
+      return new MockResponse().setBody(new Buffer().write(playlistBytes));
+    }
+  }
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link HlsAttributeList}. */
+@RunWith(AndroidJUnit4.class)
+public final class HlsAttributeListTest {
+
+  @Test
+  public void reset_withQuotedAndUnquotedValues_tokenizesAttributes() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset(
+        "#EXT-X-STREAM-INF:BANDWIDTH=1280000,CODECS=\"mp4a.40.2,avc1.66.30\",RESOLUTION=304x128");
+
+    assertThat(attributes.getString("BANDWIDTH")).isEqualTo("1280000");
+    assertThat(attributes.getQuotedString("BANDWIDTH")).isNull();
+    assertThat(attributes.getQuotedString("CODECS")).isEqualTo("mp4a.40.2,avc1.66.30");
+    assertThat(attributes.getString("RESOLUTION")).isEqualTo("304x128");
+    assertThat(attributes.contains("AUDIO")).isFalse();
+  }
+
+  @Test
+  public void reset_withWhitespace_trimsNamesAndUnquotedValues() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset("#EXT-X-KEY: METHOD = AES-128 , URI= \" key uri \"");
+
+    assertThat(attributes.getString("METHOD")).isEqualTo("AES-128");
+    assertThat(attributes.getQuotedString("URI")).isEqualTo(" key uri ");
+  }
+
+  @Test
+  public void reset_withCharactersAfterClosingQuote_skipsToNextAttribute() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset("#EXT-X-MAP:URI=\"init.mp4\"junk,BYTERANGE=\"720@0\"");
+
+    assertThat(attributes.getQuotedString("URI")).isEqualTo("init.mp4");
+    assertThat(attributes.getQuotedString("BYTERANGE")).isEqualTo("720@0");
+  }
+
+  @Test
+  public void reset_withUnterminatedQuotedString_keepsPrecedingAttributes() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset("#EXT-X-MEDIA:TYPE=AUDIO,NAME=\"English,GROUP-ID=\"aac\"");
+
+    assertThat(attributes.getString("TYPE")).isEqualTo("AUDIO");
+    assertThat(attributes.getQuotedString("NAME")).isEqualTo("English,GROUP-ID=");
+    assertThat(attributes.contains("GROUP-ID")).isFalse();
+  }
+
+  @Test
+  public void reset_withAttributesAfterCommasInQuotedValue_tokenizesThemAfterQuotedAttribute() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset(
+        "#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part.ts,BYTERANGE-START=0,a=1\",BYTERANGE-START=5");
+
+    assertThat(attributes.getQuotedString("URI")).isEqualTo("part.ts,BYTERANGE-START=0,a=1");
+    assertThat(attributes.getLong("BYTERANGE-START", /* defaultValue= */ -1)).isEqualTo(0);
+    assertThat(attributes.getQuotedString("BYTERANGE-START")).isNull();
+    assertThat(attributes.contains("a")).isFalse();
+  }
+
+  @Test
+  public void reset_withMissingAndEmptyValues_treatsThemAsAbsent() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset("#EXT-X-MEDIA:AUTOSELECT,LANGUAGE=\"\",NAME=,DEFAULT=YES");
+
+    assertThat(attributes.contains("AUTOSELECT")).isFalse();
+    assertThat(attributes.contains("LANGUAGE")).isFalse();
+    assertThat(attributes.contains("NAME")).isFalse();
+    assertThat(attributes.getBoolean("DEFAULT", /* defaultValue= */ false)).isTrue();
+  }
+
+  @Test
+  public void reset_withRepeatedAttribute_usesFirstOccurrence() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset("#EXT-X-PART:DURATION=2,URI=\"part1.ts\",URI=\"part2.ts\"");
+
+    assertThat(attributes.getQuotedString("URI")).isEqualTo("part1.ts");
+  }
+
+  @Test
+  public void reset_withNameThatIsSuffixOfAnother_matchesWholeNames() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset("#EXT-X-STREAM-INF:AVERAGE-BANDWIDTH=1000,BANDWIDTH=2000");
+
+    assertThat(attributes.getLong("BANDWIDTH", /* defaultValue= */ -1)).isEqualTo(2000);
+    assertThat(attributes.getLong("AVERAGE-BANDWIDTH", /* defaultValue= */ -1)).isEqualTo(1000);
+  }
+
+  @Test
+  public void reset_withManyAttributes_growsAndIsReusable() {
+    HlsAttributeList attributes = new HlsAttributeList();
+    StringBuilder line = new StringBuilder("#EXT-X-TEST:");
+    for (int i = 0; i < 100; i++) {
+      line.append("A").append(i).append('=').append(i).append(',');
+    }
+
+    attributes.reset(line.toString());
+    assertThat(attributes.getLong("A99", /* defaultValue= */ -1)).isEqualTo(99);
+    attributes.reset("#EXT-X-TEST:B=1");
+
+    assertThat(attributes.contains("A0")).isFalse();
+    assertThat(attributes.getLong("B", /* defaultValue= */ -1)).isEqualTo(1);
+    assertThat(attributes.getLine()).isEqualTo("#EXT-X-TEST:B=1");
+  }
+
+  @Test
+  public void reset_withoutColon_hasNoAttributes() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset("#EXT-X-INDEPENDENT-SEGMENTS");
+
+    assertThat(attributes.contains("EXT-X-INDEPENDENT-SEGMENTS")).isFalse();
+  }
+
+  @Test
+  public void getLong_withMalformedValue_returnsDefault() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset("#EXT-X-TEST:A=12a,B=-1,C=99999999999999999999,D=\"3\"");
+
+    assertThat(attributes.getLong("A", /* defaultValue= */ 7)).isEqualTo(7);
+    assertThat(attributes.getLong("B", /* defaultValue= */ 7)).isEqualTo(7);
+    assertThat(attributes.getLong("C", /* defaultValue= */ 7)).isEqualTo(7);
+    assertThat(attributes.getLong("D", /* defaultValue= */ 7)).isEqualTo(3);
+  }
+
+  @Test
+  public void getDouble_parsesSignedDecimals() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset("#EXT-X-START:A=-25,B=0.1,C=6.006,D=1.2.3,E=1e3,F=.5,G=3.");
+
+    assertThat(attributes.getDouble("A", /* defaultValue= */ 0)).isEqualTo(-25d);
+    assertThat(attributes.getDouble("B", /* defaultValue= */ 0)).isEqualTo(0.1d);
+    assertThat(attributes.getDouble("C", /* defaultValue= */ 0)).isEqualTo(6.006d);
+    assertThat(attributes.getDouble("D", /* defaultValue= */ 0)).isEqualTo(0d);
+    assertThat(attributes.getDouble("E", /* defaultValue= */ 0)).isEqualTo(0d);
+    assertThat(attributes.getDouble("F", /* defaultValue= */ 0)).isEqualTo(0.5d);
+    assertThat(attributes.getDouble("G", /* defaultValue= */ 0)).isEqualTo(3d);
+  }
+
+  @Test
+  public void getBoolean_withOtherValue_returnsDefault() {
+    HlsAttributeList attributes = new HlsAttributeList();
+
+    attributes.reset("#EXT-X-TEST:A=YES,B=NO,C=yes");
+
+    assertThat(attributes.getBoolean("A", /* defaultValue= */ false)).isTrue();
+    assertThat(attributes.getBoolean("B", /* defaultValue= */ true)).isFalse();
+    assertThat(attributes.getBoolean("C", /* defaultValue= */ true)).isTrue();
+    assertThat(attributes.getBoolean("C", /* defaultValue= */ false)).isFalse();
+  }
+
+  @Test
+  public void parseDecimal_matchesParseDouble() {
+    String[] values =
+        new String[] {
+          "0", "10.010", "0.1", "0.3", "123456789.123456", "-0.0", "9007199254740993",
+          "0.12345678901234567890123", "1234567890123456789012345.5"
+        };
+    for (String value : values) {
+      assertThat(HlsAttributeList.parseDecimal(value, 0, value.length()))
+          .isEqualTo(Double.parseDouble(value));
+    }
+  }
+
+  @Test
+  public void parseDecimal_withMalformedValue_returnsNaN() {
+    String[] values = new String[] {"", "-", ".", "1..2", "1,2", "+1", "0x10", "NaN"};
+    for (String value : values) {
+      assertThat(HlsAttributeList.parseDecimal(value, 0, value.length())).isNaN();
+    }
+  }
+
+  @Test
+  public void parseDigits_parsesRange() {
+    assertThat(HlsAttributeList.parseDigits("1920x1080", 0, 4)).isEqualTo(1920);
+    assertThat(HlsAttributeList.parseDigits("1920x1080", 5, 9)).isEqualTo(1080);
+    assertThat(HlsAttributeList.parseDigits("1920x1080", 0, 9))
+        .isEqualTo(HlsAttributeList.DIGITS_MALFORMED);
+    assertThat(HlsAttributeList.parseDigits("1920x1080", 4, 4))
+        .isEqualTo(HlsAttributeList.DIGITS_MALFORMED);
+    assertThat(HlsAttributeList.parseDigits("9223372036854775807", 0, 19))
+        .isEqualTo(Long.MAX_VALUE);
+    assertThat(HlsAttributeList.parseDigits("9223372036854775808", 0, 19))
+        .isEqualTo(HlsAttributeList.DIGITS_MALFORMED);
+  }
+}
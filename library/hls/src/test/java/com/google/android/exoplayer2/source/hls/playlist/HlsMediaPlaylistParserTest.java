@@ -411,6 +411,123 @@ public class HlsMediaPlaylistParserTest {
     assertThat(playlist.trailingParts.get(0).relativeDiscontinuitySequence).isEqualTo(1);
   }
 
+  @Test
+  public void parseMediaPlaylist_withPreviousPlaylist_reusesUnchangedSegments() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence265.mp4\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence266.mp4\n";
+    String slidPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:265\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence266.mp4\n";
+    InputStream previousInputStream =
+        new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString));
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist) new HlsPlaylistParser().parse(playlistUri, previousInputStream);
+    HlsPlaylistParser parser = new HlsPlaylistParser(HlsMasterPlaylist.EMPTY, previousPlaylist);
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            parser.parse(
+                playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+    HlsMediaPlaylist slidPlaylist =
+        (HlsMediaPlaylist)
+            parser.parse(
+                playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(slidPlaylistString)));
+
+    assertThat(playlist.segments).hasSize(3);
+    assertThat(playlist.segments.get(0)).isSameInstanceAs(previousPlaylist.segments.get(0));
+    assertThat(playlist.segments.get(1)).isSameInstanceAs(previousPlaylist.segments.get(1));
+    assertThat(playlist.segments.get(2).url).isEqualTo("fileSequence266.mp4");
+    assertThat(playlist.segments.get(2).relativeStartTimeUs).isEqualTo(8000158);
+    assertThat(playlist.segments.get(2).initializationSegment)
+        .isSameInstanceAs(previousPlaylist.segments.get(1).initializationSegment);
+    assertThat(slidPlaylist.segments).hasSize(2);
+    Segment slidSegment = slidPlaylist.segments.get(0);
+    Segment previousSegment = previousPlaylist.segments.get(1);
+    assertThat(slidSegment).isNotSameInstanceAs(previousSegment);
+    assertThat(slidSegment.url).isSameInstanceAs(previousSegment.url);
+    assertThat(slidSegment.initializationSegment)
+        .isSameInstanceAs(previousSegment.initializationSegment);
+    assertThat(slidSegment.relativeStartTimeUs).isEqualTo(0);
+    assertThat(slidSegment.durationUs).isEqualTo(previousSegment.durationUs);
+    assertThat(slidPlaylist.segments.get(1).relativeStartTimeUs).isEqualTo(4000079);
+  }
+
+  @Test
+  public void parseMediaPlaylist_withPreviousPlaylist_doesNotReuseChangedSegments()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence265.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence266.mp4\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-VERSION:6\n"
+            + "#EXT-X-MEDIA-SEQUENCE:264\n"
+            + "#EXTINF:3.00000,\n"
+            + "fileSequence264.mp4\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence265b.mp4\n"
+            + "#EXT-X-GAP\n"
+            + "#EXTINF:4.00008,\n"
+            + "fileSequence266.mp4\n";
+    InputStream previousInputStream =
+        new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString));
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist) new HlsPlaylistParser().parse(playlistUri, previousInputStream);
+    InputStream inputStream = new ByteArrayInputStream(Util.getUtf8Bytes(playlistString));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(HlsMasterPlaylist.EMPTY, previousPlaylist)
+                .parse(playlistUri, inputStream);
+
+    assertThat(playlist.segments).hasSize(3);
+    assertThat(playlist.segments.get(0)).isNotSameInstanceAs(previousPlaylist.segments.get(0));
+    assertThat(playlist.segments.get(0).durationUs).isEqualTo(3000000);
+    assertThat(playlist.segments.get(1)).isNotSameInstanceAs(previousPlaylist.segments.get(1));
+    assertThat(playlist.segments.get(1).url).isEqualTo("fileSequence265b.mp4");
+    assertThat(playlist.segments.get(1).relativeStartTimeUs).isEqualTo(3000000);
+    assertThat(playlist.segments.get(2)).isNotSameInstanceAs(previousPlaylist.segments.get(2));
+    assertThat(playlist.segments.get(2).hasGapTag).isTrue();
+  }
+
   @Test
   public void parseMediaPlaylist_withParts_parsesPartWithAllAttributes() throws IOException {
     Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.hls.playlist;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.BenchmarkUtil;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.collect.Iterables;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the time taken and the memory allocated by {@link HlsPlaylistParser} to parse large
+ * VOD, live and low-latency media playlists, and to parse reloads of a live DVR window. Only runs
+ * when benchmarks are enabled, see {@link BenchmarkUtil}.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class HlsPlaylistParserBenchmarkTest {
+
+  private static final Uri PLAYLIST_URI = Uri.parse("https://example.com/test.m3u8");
+  private static final int WARM_UP_PARSE_COUNT = 20;
+  private static final int MEASURED_PARSE_COUNT = 20;
+
+  private static final int VOD_SEGMENT_COUNT = 10_000;
+  private static final int LIVE_SEGMENT_COUNT = 1_800;
+  private static final int LOW_LATENCY_SEGMENT_COUNT = 600;
+  private static final int LOW_LATENCY_PARTS_PER_SEGMENT = 4;
+  private static final int LOW_LATENCY_SEGMENTS_WITH_PARTS = 3;
+  /** A two hour DVR window of six second segments. */
+  private static final int DVR_SEGMENT_COUNT = 1_200;
+  private static final int DVR_FIRST_MEDIA_SEQUENCE = 20_000;
+
+  @Before
+  public void setUp() {
+    BenchmarkUtil.assumeBenchmarksEnabled();
+  }
+
+  @Test
+  public void parse_largePlaylists_reportsTimeAndAllocations() throws IOException {
+    StringBuilder report = new StringBuilder();
+
+    HlsMediaPlaylist vodPlaylist = measure("VOD", createVodPlaylist(), report);
+    assertThat(vodPlaylist.segments).hasSize(VOD_SEGMENT_COUNT);
+    assertThat(vodPlaylist.hasEndTag).isTrue();
+    assertThat(vodPlaylist.hasProgramDateTime).isFalse();
+
+    HlsMediaPlaylist livePlaylist = measure("live", createLivePlaylist(), report);
+    assertThat(livePlaylist.segments).hasSize(LIVE_SEGMENT_COUNT);
+    assertThat(livePlaylist.hasEndTag).isFalse();
+    assertThat(livePlaylist.hasProgramDateTime).isTrue();
+
+    HlsMediaPlaylist lowLatencyPlaylist =
+        measure("low-latency", createLowLatencyPlaylist(), report);
+    assertThat(lowLatencyPlaylist.segments).hasSize(LOW_LATENCY_SEGMENT_COUNT);
+    assertThat(lowLatencyPlaylist.segments.get(LOW_LATENCY_SEGMENT_COUNT - 1).parts)
+        .hasSize(LOW_LATENCY_PARTS_PER_SEGMENT);
+    // The preload hint is appended to the trailing parts.
+    assertThat(lowLatencyPlaylist.trailingParts).hasSize(LOW_LATENCY_PARTS_PER_SEGMENT + 1);
+    assertThat(Iterables.getLast(lowLatencyPlaylist.trailingParts).isPreload).isTrue();
+    assertThat(lowLatencyPlaylist.renditionReports).hasSize(2);
+    assertThat(lowLatencyPlaylist.serverControl.canBlockReload).isTrue();
+
+    BenchmarkUtil.report("HlsPlaylistParser", report.toString());
+  }
+
+  @Test
+  public void parse_dvrWindowReloads_reportsTimeAndAllocationsWithAndWithoutPreviousPlaylist()
+      throws IOException {
+    StringBuilder report = new StringBuilder();
+    String previousPlaylistString =
+        createDvrPlaylist(DVR_FIRST_MEDIA_SEQUENCE, DVR_SEGMENT_COUNT, /* isEvent= */ false);
+    HlsMediaPlaylist previousPlaylist =
+        parse(new HlsPlaylistParser(), Util.getUtf8Bytes(previousPlaylistString));
+    HlsPlaylistParser incrementalParser =
+        new HlsPlaylistParser(HlsMasterPlaylist.EMPTY, previousPlaylist);
+
+    // A sliding window reload removes the oldest segment and appends a new one.
+    String slidingPlaylistString =
+        createDvrPlaylist(DVR_FIRST_MEDIA_SEQUENCE + 1, DVR_SEGMENT_COUNT, /* isEvent= */ false);
+    HlsMediaPlaylist slidingPlaylist =
+        measure("sliding DVR reload, full", new HlsPlaylistParser(), slidingPlaylistString, report);
+    HlsMediaPlaylist incrementalSlidingPlaylist =
+        measure(
+            "sliding DVR reload, incremental", incrementalParser, slidingPlaylistString, report);
+    assertSameSegments(incrementalSlidingPlaylist, slidingPlaylist);
+    assertThat(incrementalSlidingPlaylist.segments.get(0).url)
+        .isSameInstanceAs(previousPlaylist.segments.get(1).url);
+    assertThat(Iterables.getLast(incrementalSlidingPlaylist.segments).initializationSegment)
+        .isSameInstanceAs(previousPlaylist.segments.get(0).initializationSegment);
+
+    // An event playlist reload only appends a new segment.
+    HlsMediaPlaylist previousEventPlaylist =
+        parse(
+            new HlsPlaylistParser(),
+            Util.getUtf8Bytes(
+                createDvrPlaylist(
+                    DVR_FIRST_MEDIA_SEQUENCE, DVR_SEGMENT_COUNT - 1, /* isEvent= */ true)));
+    String eventPlaylistString =
+        createDvrPlaylist(DVR_FIRST_MEDIA_SEQUENCE, DVR_SEGMENT_COUNT, /* isEvent= */ true);
+    HlsMediaPlaylist eventPlaylist =
+        measure("event DVR reload, full", new HlsPlaylistParser(), eventPlaylistString, report);
+    HlsMediaPlaylist incrementalEventPlaylist =
+        measure(
+            "event DVR reload, incremental",
+            new HlsPlaylistParser(HlsMasterPlaylist.EMPTY, previousEventPlaylist),
+            eventPlaylistString,
+            report);
+    assertSameSegments(incrementalEventPlaylist, eventPlaylist);
+    assertThat(incrementalEventPlaylist.segments.get(DVR_SEGMENT_COUNT - 2))
+        .isSameInstanceAs(previousEventPlaylist.segments.get(DVR_SEGMENT_COUNT - 2));
+
+    BenchmarkUtil.report("HlsPlaylistParser reloads", report.toString());
+  }
+
+  /**
+   * Parses {@code playlistString} repeatedly, and appends the mean time taken and memory allocated
+   * by each parse to {@code report}.
+   */
+  private static HlsMediaPlaylist measure(
+      String name, String playlistString, StringBuilder report) throws IOException {
+    return measure(name, new HlsPlaylistParser(), playlistString, report);
+  }
+
+  /**
+   * Parses {@code playlistString} repeatedly using {@code parser}, and appends the mean time taken
+   * and memory allocated by each parse to {@code report}.
+   */
+  private static HlsMediaPlaylist measure(
+      String name, HlsPlaylistParser parser, String playlistString, StringBuilder report)
+      throws IOException {
+    byte[] playlistBytes = Util.getUtf8Bytes(playlistString);
+    HlsMediaPlaylist playlist = parse(parser, playlistBytes);
+    for (int i = 1; i < WARM_UP_PARSE_COUNT; i++) {
+      playlist = parse(parser, playlistBytes);
+    }
+
+    ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+    boolean allocationsMeasured =
+        threadMxBean instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threadMxBean)
+                .isThreadAllocatedMemorySupported();
+    long threadId = Thread.currentThread().getId();
+    long startAllocatedBytes = 0;
+    if (allocationsMeasured) {
+      ((com.sun.management.ThreadMXBean) threadMxBean).setThreadAllocatedMemoryEnabled(true);
+      startAllocatedBytes =
+          ((com.sun.management.ThreadMXBean) threadMxBean).getThreadAllocatedBytes(threadId);
+    }
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < MEASURED_PARSE_COUNT; i++) {
+      playlist = parse(parser, playlistBytes);
+    }
+    long parseTimeNs = (System.nanoTime() - startTimeNs) / MEASURED_PARSE_COUNT;
+    long allocatedBytes =
+        allocationsMeasured
+            ? (((com.sun.management.ThreadMXBean) threadMxBean).getThreadAllocatedBytes(threadId)
+                    - startAllocatedBytes)
+                / MEASURED_PARSE_COUNT
+            : -1;
+
+    report.append(
+        String.format(
+            Locale.US,
+            "%s playlist, %d lines, %d bytes: %d us, %d bytes allocated per parse\n",
+            name,
+            playlistString.split("\n", -1).length,
+            playlistBytes.length,
+            parseTimeNs / 1_000,
+            allocatedBytes));
+    return playlist;
+  }
+
+  private static HlsMediaPlaylist parse(HlsPlaylistParser parser, byte[] playlistBytes)
+      throws IOException {
+    return (HlsMediaPlaylist) parser.parse(PLAYLIST_URI, new ByteArrayInputStream(playlistBytes));
+  }
+
+  private static void assertSameSegments(HlsMediaPlaylist playlist, HlsMediaPlaylist expected) {
+    assertThat(playlist.mediaSequence).isEqualTo(expected.mediaSequence);
+    assertThat(playlist.durationUs).isEqualTo(expected.durationUs);
+    assertThat(playlist.segments).hasSize(expected.segments.size());
+    for (int i = 0; i < expected.segments.size(); i++) {
+      HlsMediaPlaylist.Segment segment = playlist.segments.get(i);
+      HlsMediaPlaylist.Segment expectedSegment = expected.segments.get(i);
+      assertThat(segment.url).isEqualTo(expectedSegment.url);
+      assertThat(segment.durationUs).isEqualTo(expectedSegment.durationUs);
+      assertThat(segment.relativeStartTimeUs).isEqualTo(expectedSegment.relativeStartTimeUs);
+      assertThat(segment.relativeDiscontinuitySequence)
+          .isEqualTo(expectedSegment.relativeDiscontinuitySequence);
+      assertThat(segment.initializationSegment.url)
+          .isEqualTo(expectedSegment.initializationSegment.url);
+    }
+  }
+
+  private static String createVodPlaylist() {
+    StringBuilder playlist =
+        new StringBuilder()
+            .append("#EXTM3U\n")
+            .append("#EXT-X-VERSION:7\n")
+            .append("#EXT-X-PLAYLIST-TYPE:VOD\n")
+            .append("#EXT-X-TARGETDURATION:6\n")
+            .append("#EXT-X-MEDIA-SEQUENCE:0\n")
+            .append("#EXT-X-INDEPENDENT-SEGMENTS\n")
+            .append("#EXT-X-MAP:URI=\"init.mp4\",BYTERANGE=\"720@0\"\n");
+    long byteRangeOffset = 720;
+    for (int i = 0; i < VOD_SEGMENT_COUNT; i++) {
+      int byteRangeLength = 1_000_000 + i;
+      playlist
+          .append("#EXTINF:6.006,\n")
+          .append("#EXT-X-BYTERANGE:")
+          .append(byteRangeLength)
+          .append('@')
+          .append(byteRangeOffset)
+          .append('\n')
+          .append("media.mp4\n");
+      byteRangeOffset += byteRangeLength;
+    }
+    return playlist.append("#EXT-X-ENDLIST\n").toString();
+  }
+
+  private static String createLivePlaylist() {
+    StringBuilder playlist =
+        new StringBuilder()
+            .append("#EXTM3U\n")
+            .append("#EXT-X-VERSION:3\n")
+            .append("#EXT-X-TARGETDURATION:4\n")
+            .append("#EXT-X-MEDIA-SEQUENCE:100000\n")
+            .append("#EXT-X-DISCONTINUITY-SEQUENCE:12\n")
+            .append("#EXT-X-KEY:METHOD=AES-128,URI=\"https://keys.example.com/key?id=1\",")
+            .append("IV=0x1234567890ABCDEF1234567890ABCDEF\n");
+    for (int i = 0; i < LIVE_SEGMENT_COUNT; i++) {
+      int seconds = i * 4;
+      playlist
+          .append(
+              String.format(
+                  Locale.US,
+                  "#EXT-X-PROGRAM-DATE-TIME:2021-03-01T%02d:%02d:%02d.000Z\n",
+                  seconds / 3_600,
+                  seconds / 60 % 60,
+                  seconds % 60))
+          .append("#EXTINF:4.000,live segment\n")
+          .append("segment")
+          .append(100_000 + i)
+          .append(".ts\n");
+    }
+    return playlist.toString();
+  }
+
+  private static String createLowLatencyPlaylist() {
+    StringBuilder playlist =
+        new StringBuilder()
+            .append("#EXTM3U\n")
+            .append("#EXT-X-VERSION:9\n")
+            .append("#EXT-X-TARGETDURATION:4\n")
+            .append("#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,CAN-SKIP-UNTIL=24.0,")
+            .append("PART-HOLD-BACK=1.0\n")
+            .append("#EXT-X-PART-INF:PART-TARGET=1.0\n")
+            .append("#EXT-X-MEDIA-SEQUENCE:5000\n")
+            .append("#EXT-X-MAP:URI=\"init.mp4\"\n");
+    int firstSegmentWithParts = LOW_LATENCY_SEGMENT_COUNT - LOW_LATENCY_SEGMENTS_WITH_PARTS;
+    for (int i = 0; i < LOW_LATENCY_SEGMENT_COUNT; i++) {
+      int mediaSequence = 5_000 + i;
+      if (i >= firstSegmentWithParts) {
+        appendParts(playlist, mediaSequence);
+      }
+      playlist
+          .append("#EXT-X-PROGRAM-DATE-TIME:2021-03-01T00:00:00.000Z\n")
+          .append("#EXTINF:4.00000,\n")
+          .append("fileSequence")
+          .append(mediaSequence)
+          .append(".mp4\n");
+    }
+    int nextMediaSequence = 5_000 + LOW_LATENCY_SEGMENT_COUNT;
+    appendParts(playlist, nextMediaSequence);
+    return playlist
+        .append("#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"filePart")
+        .append(nextMediaSequence)
+        .append('.')
+        .append(LOW_LATENCY_PARTS_PER_SEGMENT)
+        .append(".mp4\"\n")
+        .append("#EXT-X-RENDITION-REPORT:URI=\"../1M/waitForMSN.php\",LAST-MSN=")
+        .append(nextMediaSequence)
+        .append(",LAST-PART=3\n")
+        .append("#EXT-X-RENDITION-REPORT:URI=\"../4M/waitForMSN.php\",LAST-MSN=")
+        .append(nextMediaSequence)
+        .append(",LAST-PART=3\n")
+        .toString();
+  }
+
+  private static String createDvrPlaylist(int mediaSequence, int segmentCount, boolean isEvent) {
+    StringBuilder playlist =
+        new StringBuilder()
+            .append("#EXTM3U\n")
+            .append("#EXT-X-VERSION:7\n")
+            .append(isEvent ? "#EXT-X-PLAYLIST-TYPE:EVENT\n" : "")
+            .append("#EXT-X-TARGETDURATION:6\n")
+            .append("#EXT-X-MEDIA-SEQUENCE:")
+            .append(mediaSequence)
+            .append('\n')
+            .append("#EXT-X-MAP:URI=\"init.mp4\"\n");
+    for (int i = 0; i < segmentCount; i++) {
+      playlist
+          .append("#EXTINF:6.000,\n")
+          .append("segment")
+          .append(mediaSequence + i)
+          .append(".m4s\n");
+    }
+    return playlist.toString();
+  }
+
+  private static void appendParts(StringBuilder playlist, int mediaSequence) {
+    for (int i = 0; i < LOW_LATENCY_PARTS_PER_SEGMENT; i++) {
+      playlist
+          .append("#EXT-X-PART:DURATION=1.00000,")
+          .append(i == 0 ? "INDEPENDENT=YES," : "")
+          .append("URI=\"filePart")
+          .append(mediaSequence)
+          .append('.')
+          .append(i)
+          .append(".mp4\"\n");
+    }
+  }
+}
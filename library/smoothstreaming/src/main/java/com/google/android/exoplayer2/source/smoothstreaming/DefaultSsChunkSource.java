@@ -52,8 +52,25 @@ public class DefaultSsChunkSource implements SsChunkSource {
 
     private final DataSource.Factory dataSourceFactory;
 
+    private int readAheadBlockSize;
+
     public Factory(DataSource.Factory dataSourceFactory) {
       this.dataSourceFactory = dataSourceFactory;
+      readAheadBlockSize = C.LENGTH_UNSET;
+    }
+
+    /**
+     * Sets the number of bytes that the inputs of the chunk extractors read at a time when less is
+     * requested. The default value is {@link C#LENGTH_UNSET}, for which only the requested data is
+     * read.
+     *
+     * @param readAheadBlockSize The read-ahead block size, in bytes, or {@link C#LENGTH_UNSET}.
+     * @return This factory, for convenience.
+     */
+    public Factory setReadAheadBlockSize(int readAheadBlockSize) {
+      Assertions.checkArgument(readAheadBlockSize > 0 || readAheadBlockSize == C.LENGTH_UNSET);
+      this.readAheadBlockSize = readAheadBlockSize;
+      return this;
     }
 
     @Override
@@ -68,7 +85,12 @@ public class DefaultSsChunkSource implements SsChunkSource {
         dataSource.addTransferListener(transferListener);
       }
       return new DefaultSsChunkSource(
-          manifestLoaderErrorThrower, manifest, elementIndex, trackSelection, dataSource);
+          manifestLoaderErrorThrower,
+          manifest,
+          elementIndex,
+          trackSelection,
+          dataSource,
+          readAheadBlockSize);
     }
 
   }
@@ -97,6 +119,31 @@ public class DefaultSsChunkSource implements SsChunkSource {
       int streamElementIndex,
       ExoTrackSelection trackSelection,
       DataSource dataSource) {
+    this(
+        manifestLoaderErrorThrower,
+        manifest,
+        streamElementIndex,
+        trackSelection,
+        dataSource,
+        /* readAheadBlockSize= */ C.LENGTH_UNSET);
+  }
+
+  /**
+   * @param manifestLoaderErrorThrower Throws errors affecting loading of manifests.
+   * @param manifest The initial manifest.
+   * @param streamElementIndex The index of the stream element in the manifest.
+   * @param trackSelection The track selection.
+   * @param dataSource A {@link DataSource} suitable for loading the media data.
+   * @param readAheadBlockSize The number of bytes that the inputs of the chunk extractors read at a
+   *     time when less is requested, or {@link C#LENGTH_UNSET} to read only the requested data.
+   */
+  public DefaultSsChunkSource(
+      LoaderErrorThrower manifestLoaderErrorThrower,
+      SsManifest manifest,
+      int streamElementIndex,
+      ExoTrackSelection trackSelection,
+      DataSource dataSource,
+      int readAheadBlockSize) {
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.manifest = manifest;
     this.streamElementIndex = streamElementIndex;
@@ -123,7 +170,8 @@ public class DefaultSsChunkSource implements SsChunkSource {
                   | FragmentedMp4Extractor.FLAG_WORKAROUND_IGNORE_TFDT_BOX,
               /* timestampAdjuster= */ null,
               track);
-      chunkExtractors[i] = new BundledChunkExtractor(extractor, streamElement.type, format);
+      chunkExtractors[i] =
+          new BundledChunkExtractor(extractor, streamElement.type, format, readAheadBlockSize);
     }
   }
 
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Utility methods for benchmarks.
+ *
+ * <p>Benchmarks measure timings or memory use that depend on the test environment, so they don't
+ * run with the other tests. To run them, set the {@link #BENCHMARKS_PROPERTY} system property to
+ * {@code true}, for example by passing {@code -Pexoplayer.benchmarks=true} to Gradle.
+ */
+public final class BenchmarkUtil {
+
+  /** The system property that enables benchmarks when set to {@code true}. */
+  public static final String BENCHMARKS_PROPERTY = "exoplayer.benchmarks";
+
+  private BenchmarkUtil() {}
+
+  /** Skips the calling test unless benchmarks are enabled. */
+  public static void assumeBenchmarksEnabled() {
+    assumeTrue(
+        "Benchmarks are enabled with the " + BENCHMARKS_PROPERTY + " system property",
+        Boolean.getBoolean(BENCHMARKS_PROPERTY));
+  }
+
+  /**
+   * Prints the results of a benchmark.
+   *
+   * @param benchmark The name of the benchmark.
+   * @param results The results to print.
+   */
+  public static void report(String benchmark, String results) {
+    System.out.println(benchmark + ": " + results);
+  }
+}
@@ -30,6 +30,7 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
@@ -194,6 +195,46 @@ public abstract class DataSourceContractTest {
     }
   }
 
+  @Test
+  public void dataSpecWithPositionAndLength_readToDirectBuffer_readExpectedRange()
+      throws Exception {
+    ImmutableList<TestResource> resources = getTestResources();
+    Assertions.checkArgument(!resources.isEmpty(), "Must provide at least one test resource.");
+
+    for (int i = 0; i < resources.size(); i++) {
+      additionalFailureInfo.setInfo(getFailureLabel(resources, i));
+      TestResource resource = resources.get(i);
+      DataSource dataSource = createDataSource();
+      try {
+        long length =
+            dataSource.open(
+                new DataSpec.Builder()
+                    .setUri(resource.getUri())
+                    .setPosition(2)
+                    .setLength(2)
+                    .build());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(2);
+        while (buffer.hasRemaining()) {
+          assertThat(dataSource.read(buffer)).isNotEqualTo(C.RESULT_END_OF_INPUT);
+        }
+        if (resource.isEndOfInputExpected()) {
+          assertThat(dataSource.read(ByteBuffer.allocateDirect(1)))
+              .isEqualTo(C.RESULT_END_OF_INPUT);
+        }
+
+        assertThat(length).isEqualTo(2);
+        byte[] data = new byte[2];
+        buffer.flip();
+        buffer.get(data);
+        byte[] expectedData = Arrays.copyOfRange(resource.getExpectedBytes(), 2, 4);
+        assertThat(data).isEqualTo(expectedData);
+      } finally {
+        dataSource.close();
+      }
+      additionalFailureInfo.setInfo(null);
+    }
+  }
+
   /**
    * {@link DataSpec#FLAG_ALLOW_GZIP} should either be ignored by {@link DataSource}
    * implementations, or correctly handled (i.e. the data is decompressed before being returned from